@@ -51,6 +51,9 @@ CREATE INDEX certificatedata_idx16 ON CertificateData (issuerDN,revocationDate);
 CREATE INDEX certificatedata_idx17 ON CertificateData (issuerDN, status, crlPartitionIndex);
 -- Index for delta CRL generation
 CREATE INDEX certificatedata_idx18 ON CertificateData (issuerDN, status, crlPartitionIndex, revocationDate);
+-- Index for reading revoked certificates in batches during CRL generation, ordered by (revocationDate, fingerprint).
+-- Each batch continues from the last row of the previous one, so with this index no earlier rows are scanned again.
+CREATE INDEX certificatedata_idx21 ON CertificateData (issuerDN, status, crlPartitionIndex, revocationDate, fingerprint);
 -- Optimized index for CRL generation on Microsoft SQL Server (should be used instead of certificatedata_idx17 and certificatedata_idx18).
 -- CREATE NONCLUSTERED INDEX certificatedata_idx19 ON CertificateData (issuerDN, status, revocationDate, fingerprint, crlPartitionIndex) INCLUDE (expireDate, revocationReason, serialNumber);
 -- Index useful when searching for certificates with an invalidity date.
@@ -70,6 +73,11 @@ CREATE INDEX certificatedata_idx_san ON CertificateData (subjectAltName(750));
 -- CREATE INDEX certificatedata_idx_exp ON CertificateData (expireDate);
 -- CREATE INDEX certificatedata_idx_rev ON CertificateData (revocationDate);
 -- CREATE INDEX certificatedata_idx_upd ON CertificateData (updateTime);
+-- Index used by the OCSP responder's in-memory revocation index (ocsp.revocationindex.enabled=true) to read changed certificate statuses.
+-- CREATE INDEX certificatedata_idx_ocsprev ON CertificateData (issuerDN, updateTime, fingerprint);
+-- Indexes used by incremental base CRL generation (crlgeneration.incremental=true), to read changed revocations with certificatedata_idx_ocsprev
+-- and expired revoked certificates with the following.
+-- CREATE INDEX certificatedata_idx_crlexp ON CertificateData (issuerDN, status, expireDate);
 
 CREATE INDEX historydata_idx1 ON CertReqHistoryData (username);
 CREATE INDEX historydata_idx3 ON CertReqHistoryData (serialNumber);
@@ -98,6 +106,8 @@ CREATE INDEX noconflictcertificatedata_idx4 ON NoConflictCertificateData (certif
 CREATE INDEX noconflictcertificatedata_idx5 ON NoConflictCertificateData (issuerDN, status, crlPartitionIndex);
 -- Index for delta CRL generation
 CREATE INDEX noconflictcertificatedata_idx6 ON NoConflictCertificateData (issuerDN, status, crlPartitionIndex, revocationDate);
+-- Index for reading revoked certificates in batches during CRL generation, ordered by (revocationDate, id)
+CREATE INDEX noconflictcertificatedata_idx8 ON NoConflictCertificateData (issuerDN, status, crlPartitionIndex, revocationDate, id);
 -- Optimized index for CRL generation on Microsoft SQL Server (should be used instead of noconflictcertificatedata_idx5 and noconflictcertificatedata_idx6).
 -- CREATE NONCLUSTERED INDEX noconflictcertificatedata_idx7 ON NoConflictCertificateData (issuerDN, status, revocationDate, fingerprint, crlPartitionIndex) INCLUDE (expireDate, revocationReason, serialNumber);
 
@@ -127,3 +137,6 @@ CREATE INDEX ocspresponsedata_idx1 ON OcspResponseData (cAId);
 CREATE INDEX ocspresponsedata_idx2 ON OcspResponseData (serialNumber);
 CREATE INDEX ocspresponsedata_idx3 ON OcspResponseData (producedAt);
 
+-- Index for reading the revocation change log during delta CRL generation
+CREATE INDEX revocationchangedata_idx1 ON RevocationChangeData (issuerDN, crlPartitionIndex, changeTime);
+
@@ -110,7 +110,8 @@ CREATE TABLE CAData (
 
 CREATE TABLE CRLData (
     fingerprint VARCHAR(254) NOT NULL,
-    base64Crl CLOB(100M) NOT NULL,
+    base64Crl CLOB(100M),
+    binaryCrl BLOB(100M),
     cAFingerprint VARCHAR(254) NOT NULL,
     crlPartitionIndex INTEGER,
     cRLNumber INTEGER NOT NULL,
@@ -472,6 +473,22 @@ CREATE TABLE IncompleteIssuanceJournalData (
     PRIMARY KEY (serialNumberAndCaId)
 );
 
+CREATE TABLE RevocationChangeData (
+    id VARCHAR(254) NOT NULL,
+    changeTime BIGINT NOT NULL,
+    crlPartitionIndex INTEGER NOT NULL,
+    expireDate BIGINT NOT NULL,
+    fingerprint VARCHAR(254),
+    invalidityDate BIGINT,
+    issuerDN VARCHAR(254) NOT NULL,
+    revocationDate BIGINT NOT NULL,
+    revocationReason INTEGER NOT NULL,
+    rowProtection CLOB(10K),
+    rowVersion INTEGER NOT NULL,
+    serialNumber VARCHAR(254),
+    PRIMARY KEY (id)
+);
+
 alter table AccessRulesData add constraint FKABB4C1DFDBBC970 foreign key (AdminGroupData_accessRules) references AdminGroupData;
 
 alter table AdminEntityData add constraint FKD9A99EBCB3A110AD foreign key (AdminGroupData_adminEntities) references AdminGroupData;
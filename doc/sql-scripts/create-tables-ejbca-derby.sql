@@ -110,7 +110,8 @@ CREATE TABLE CAData (
 
 CREATE TABLE CRLData (
     fingerprint VARCHAR(256) NOT NULL,
-    base64Crl CLOB NOT NULL,
+    base64Crl CLOB,
+    binaryCrl BLOB,
     cAFingerprint VARCHAR(256) NOT NULL,
     crlPartitionIndex INTEGER,
     cRLNumber INTEGER NOT NULL,
@@ -472,6 +473,22 @@ CREATE TABLE IncompleteIssuanceJournalData (
     PRIMARY KEY (serialNumberAndCaId)
 );
 
+CREATE TABLE RevocationChangeData (
+    id VARCHAR(256) NOT NULL,
+    changeTime BIGINT NOT NULL,
+    crlPartitionIndex INTEGER NOT NULL,
+    expireDate BIGINT NOT NULL,
+    fingerprint VARCHAR(256),
+    invalidityDate BIGINT,
+    issuerDN VARCHAR(256) NOT NULL,
+    revocationDate BIGINT NOT NULL,
+    revocationReason INTEGER NOT NULL,
+    rowProtection CLOB(10 K),
+    rowVersion INTEGER NOT NULL,
+    serialNumber VARCHAR(256),
+    PRIMARY KEY (id)
+);
+
 alter table AccessRulesData add constraint FKABB4C1DFDBBC970 foreign key (AdminGroupData_accessRules) references AdminGroupData;
 
 alter table AdminEntityData add constraint FKD9A99EBCB3A110AD foreign key (AdminGroupData_adminEntities) references AdminGroupData;
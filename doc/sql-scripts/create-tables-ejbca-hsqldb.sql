@@ -110,7 +110,8 @@ CREATE TABLE CAData (
 
 CREATE TABLE CRLData (
     fingerprint VARCHAR(256) NOT NULL,
-    base64Crl VARCHAR NOT NULL,
+    base64Crl VARCHAR,
+    binaryCrl VARBINARY,
     cAFingerprint VARCHAR(256) NOT NULL,
     crlPartitionIndex INTEGER,
     cRLNumber INTEGER NOT NULL,
@@ -476,3 +477,19 @@ CREATE TABLE IncompleteIssuanceJournalData (
     rowVersion INTEGER NOT NULL,
     PRIMARY KEY (serialNumberAndCaId)
 );
+
+CREATE TABLE RevocationChangeData (
+    id VARCHAR(256) NOT NULL,
+    changeTime BIGINT NOT NULL,
+    crlPartitionIndex INTEGER NOT NULL,
+    expireDate BIGINT NOT NULL,
+    fingerprint VARCHAR(256),
+    invalidityDate BIGINT,
+    issuerDN VARCHAR(256) NOT NULL,
+    revocationDate BIGINT NOT NULL,
+    revocationReason INTEGER NOT NULL,
+    rowProtection VARCHAR,
+    rowVersion INTEGER NOT NULL,
+    serialNumber VARCHAR(256),
+    PRIMARY KEY (id)
+);
@@ -110,7 +110,8 @@ CREATE TABLE CAData (
 
 CREATE TABLE CRLData (
     fingerprint VARCHAR(256) NOT NULL,
-    base64Crl LONG VARCHAR NOT NULL,
+    base64Crl LONG VARCHAR,
+    binaryCrl LONG BYTE,
     cAFingerprint VARCHAR(256) NOT NULL,
     crlPartitionIndex INT4 with null,
     cRLNumber INT4 NOT NULL,
@@ -476,3 +477,19 @@ CREATE TABLE IncompleteIssuanceJournalData (
     rowVersion INT4 NOT NULL,
     PRIMARY KEY (serialNumberAndCaId)
 );
+
+CREATE TABLE RevocationChangeData (
+    id VARCHAR(256) NOT NULL,
+    changeTime INT8 NOT NULL,
+    crlPartitionIndex INT4 NOT NULL,
+    expireDate INT8 NOT NULL,
+    fingerprint VARCHAR(256) with null,
+    invalidityDate INT8 with null,
+    issuerDN VARCHAR(256) NOT NULL,
+    revocationDate INT8 NOT NULL,
+    revocationReason INT4 NOT NULL,
+    rowProtection LONG VARCHAR,
+    rowVersion INT4 NOT NULL,
+    serialNumber VARCHAR(256) with null,
+    PRIMARY KEY (id)
+);
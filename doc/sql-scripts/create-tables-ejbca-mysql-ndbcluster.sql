@@ -113,7 +113,8 @@ CREATE TABLE CAData (
 
 CREATE TABLE CRLData (
     fingerprint VARCHAR(250) BINARY NOT NULL,
-    base64Crl LONGTEXT NOT NULL,
+    base64Crl LONGTEXT,
+    binaryCrl LONGBLOB,
     cAFingerprint VARCHAR(250) BINARY NOT NULL,
     crlPartitionIndex INT(11),
     cRLNumber INT(11) NOT NULL,
@@ -481,3 +482,19 @@ CREATE TABLE IncompleteIssuanceJournalData (
     rowVersion INT(11) NOT NULL,
     PRIMARY KEY (serialNumberAndCaId)
 ) TABLESPACE ejbca_ts STORAGE DISK ENGINE=NDB;
+
+CREATE TABLE RevocationChangeData (
+    id VARCHAR(250) BINARY NOT NULL,
+    changeTime BIGINT(20) NOT NULL,
+    crlPartitionIndex INT(11) NOT NULL,
+    expireDate BIGINT(20) NOT NULL,
+    fingerprint VARCHAR(250) BINARY,
+    invalidityDate BIGINT(20),
+    issuerDN VARCHAR(250) BINARY NOT NULL,
+    revocationDate BIGINT(20) NOT NULL,
+    revocationReason INT(11) NOT NULL,
+    rowProtection LONGTEXT,
+    rowVersion INT(11) NOT NULL,
+    serialNumber VARCHAR(250) BINARY,
+    PRIMARY KEY (id)
+) TABLESPACE ejbca_ts STORAGE DISK ENGINE=NDB;
@@ -110,7 +110,8 @@ CREATE TABLE CAData (
 
 CREATE TABLE CRLData (
     fingerprint VARCHAR2(255 byte) NOT NULL,
-    base64Crl CLOB NOT NULL,
+    base64Crl CLOB,
+    binaryCrl BLOB,
     cAFingerprint VARCHAR2(255 byte) NOT NULL,
     crlPartitionIndex NUMBER(10),
     cRLNumber NUMBER(10) NOT NULL,
@@ -476,3 +477,19 @@ CREATE TABLE IncompleteIssuanceJournalData (
     rowVersion NUMBER(10) NOT NULL,
     PRIMARY KEY (serialNumberAndCaId)
 );
+
+CREATE TABLE RevocationChangeData (
+    id VARCHAR2(255 byte) NOT NULL,
+    changeTime NUMBER(19) NOT NULL,
+    crlPartitionIndex NUMBER(10) NOT NULL,
+    expireDate NUMBER(19) NOT NULL,
+    fingerprint VARCHAR2(255 byte),
+    invalidityDate NUMBER(19),
+    issuerDN VARCHAR2(255 byte) NOT NULL,
+    revocationDate NUMBER(19) NOT NULL,
+    revocationReason NUMBER(10) NOT NULL,
+    rowProtection CLOB,
+    rowVersion NUMBER(10) NOT NULL,
+    serialNumber VARCHAR2(255 byte),
+    PRIMARY KEY (id)
+);
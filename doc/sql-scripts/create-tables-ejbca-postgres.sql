@@ -110,7 +110,8 @@ CREATE TABLE CAData (
 
 CREATE TABLE CRLData (
     fingerprint TEXT NOT NULL,
-    base64Crl TEXT NOT NULL,
+    base64Crl TEXT,
+    binaryCrl BYTEA,
     cAFingerprint TEXT NOT NULL,
     crlPartitionIndex INT4,
     cRLNumber INT4 NOT NULL,
@@ -473,6 +474,22 @@ CREATE TABLE IncompleteIssuanceJournalData (
     PRIMARY KEY (serialNumberAndCaId)
 );
 
+CREATE TABLE RevocationChangeData (
+    id TEXT NOT NULL,
+    changeTime INT8 NOT NULL,
+    crlPartitionIndex INT4 NOT NULL,
+    expireDate INT8 NOT NULL,
+    fingerprint TEXT,
+    invalidityDate INT8,
+    issuerDN TEXT NOT NULL,
+    revocationDate INT8 NOT NULL,
+    revocationReason INT4 NOT NULL,
+    rowProtection TEXT,
+    rowVersion INT4 NOT NULL,
+    serialNumber TEXT,
+    PRIMARY KEY (id)
+);
+
 alter table AccessRulesData add constraint FKABB4C1DFDBBC970 foreign key (AdminGroupData_accessRules) references AdminGroupData;
 
 alter table AdminEntityData add constraint FKD9A99EBCB3A110AD foreign key (AdminGroupData_adminEntities) references AdminGroupData;
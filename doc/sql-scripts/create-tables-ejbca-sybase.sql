@@ -110,7 +110,8 @@ CREATE TABLE CAData (
 
 CREATE TABLE CRLData (
     fingerprint VARCHAR(255) NOT NULL,
-    base64Crl TEXT NOT NULL,
+    base64Crl TEXT,
+    binaryCrl IMAGE,
     cAFingerprint VARCHAR(255) NOT NULL,
     crlPartitionIndex INTEGER,
     cRLNumber INTEGER NOT NULL,
@@ -476,3 +477,19 @@ CREATE TABLE IncompleteIssuanceJournalData (
     rowVersion INTEGER NOT NULL,
     PRIMARY KEY (serialNumberAndCaId)
 );
+
+CREATE TABLE RevocationChangeData (
+    id VARCHAR(255) NOT NULL,
+    changeTime DECIMAL(20,0) NOT NULL,
+    crlPartitionIndex INTEGER NOT NULL,
+    expireDate DECIMAL(20,0) NOT NULL,
+    fingerprint VARCHAR(255),
+    invalidityDate DECIMAL(20,0),
+    issuerDN VARCHAR(255) NOT NULL,
+    revocationDate DECIMAL(20,0) NOT NULL,
+    revocationReason INTEGER NOT NULL,
+    rowProtection TEXT,
+    rowVersion INTEGER NOT NULL,
+    serialNumber VARCHAR(255),
+    PRIMARY KEY (id)
+);
@@ -35,3 +35,4 @@ drop table AcmeOrderData;
 drop table SctData;
 drop table OcspResponseData;
 drop table IncompleteIssuanceJournalData;
+drop table RevocationChangeData;
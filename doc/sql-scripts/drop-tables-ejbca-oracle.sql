@@ -35,3 +35,4 @@ drop table AcmeOrderData cascade constraints;
 drop table SctData cascade constraints;
 drop table OcspResponseData cascade constraints;
 drop table IncompleteIssuanceJournalData cascade constraints;
+drop table RevocationChangeData cascade constraints;
@@ -27,6 +27,7 @@ DROP INDEX certificatedata_idx16 ON CertificateData;
 DROP INDEX certificatedata_idx17 ON CertificateData;
 DROP INDEX certificatedata_idx18 ON CertificateData;
 DROP INDEX certificatedata_idx19 ON CertificateData;
+DROP INDEX certificatedata_idx21 ON CertificateData;
 DROP INDEX certificatedata_idx20 ON CertificateData;
 
 DROP INDEX historydata_idx1 ON CertReqHistoryData;
@@ -50,6 +51,7 @@ DROP INDEX noconflictcertificatedata_idx4 ON NoConflictCertificateData;
 DROP INDEX noconflictcertificatedata_idx5 ON NoConflictCertificateData;
 DROP INDEX noconflictcertificatedata_idx6 ON NoConflictCertificateData;
 DROP INDEX noconflictcertificatedata_idx7 ON NoConflictCertificateData;
+DROP INDEX noconflictcertificatedata_idx8 ON NoConflictCertificateData;
 
 DROP INDEX acmeaccountdata_idx1 ON AcmeAccountData;
 DROP INDEX acmeorderdata_idx1 ON AcmeOrderData;
@@ -62,3 +64,5 @@ DROP INDEX acmechallengedata_idx1 ON AcmeChallengeData;
 DROP INDEX ocspresponsedata_idx1 ON OcspResponseData;
 DROP INDEX ocspresponsedata_idx2 ON OcspResponseData;
 DROP INDEX ocspresponsedata_idx3 ON OcspResponseData;
+
+DROP INDEX revocationchangedata_idx1 ON RevocationChangeData;
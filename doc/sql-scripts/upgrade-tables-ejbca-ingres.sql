@@ -0,0 +1,10 @@
+-- version: $Id$
+
+-- Upgrades an existing database, created with create-tables-ejbca-ingres.sql of an earlier EJBCA version, to the tables of this version.
+-- Run the statements of each version after the one the database was last upgraded to, before starting nodes of this version.
+
+-- EJBCA 8.3.0: CRLs can be stored as binary in CRLData.binaryCrl (database.crlstorage in cesecore.properties), in which case base64Crl is NULL.
+-- The mapping of CRLData reads both columns, so CRLData can't be read until binaryCrl has been added, even if CRLs are still stored as base64.
+ALTER TABLE CRLData ADD COLUMN binaryCrl LONG BYTE;
+ALTER TABLE CRLData ALTER COLUMN base64Crl LONG VARCHAR WITH NULL;
+MODIFY CRLData TO RECONSTRUCT;
@@ -0,0 +1,13 @@
+-- version: $Id$
+
+-- Upgrades an existing database, created with create-tables-ejbca-sybase.sql of an earlier EJBCA version, to the tables of this version.
+-- Run the statements of each version after the one the database was last upgraded to, before starting nodes of this version.
+
+-- EJBCA 8.3.0: CRLs can be stored as binary in CRLData.binaryCrl (database.crlstorage in cesecore.properties), in which case base64Crl is NULL.
+-- The mapping of CRLData reads both columns, so CRLData can't be read until binaryCrl has been added, even if CRLs are still stored as base64.
+ALTER TABLE CRLData ADD binaryCrl IMAGE NULL;
+-- A TEXT column can't be modified, so it's replaced by a copy that allows NULL
+ALTER TABLE CRLData ADD base64CrlNullable TEXT NULL;
+UPDATE CRLData SET base64CrlNullable = base64Crl;
+ALTER TABLE CRLData DROP base64Crl;
+EXEC sp_rename 'CRLData.base64CrlNullable', 'base64Crl';
@@ -14,6 +14,7 @@
 package org.ejbca.ui.web.admin.cainterface;
 
 import java.io.IOException;
+import java.io.InputStream;
 
 import javax.ejb.EJB;
 import javax.servlet.ServletException;
@@ -91,8 +92,8 @@ public class GetCRLServlet extends BaseAdminServlet {
     private void sendLatestCrl(final HttpServletRequest req, final HttpServletResponse res, final String issuerDn, final int crlPartitionIndex, final boolean deltaCrl) throws IOException {
         // Keep this for logging.
         final String remoteAddr = req.getRemoteAddr();
-        try {
-            final byte[] crl = crlStoreSession.getLastCRL(issuerDn, crlPartitionIndex, deltaCrl);
+        // The CRL is streamed to the client, so that a compressed CRL is never held in memory decompressed
+        try (final InputStream crl = crlStoreSession.getLastCRLStream(issuerDn, crlPartitionIndex, deltaCrl)) {
             if (crl == null) {
                 String errMsg = intres.getLocalizedMessage("certreq.errorsendcrl", remoteAddr, "CRL does not exist for CA");
                 log.info(errMsg);
@@ -113,8 +114,7 @@ public class GetCRLServlet extends BaseAdminServlet {
             ServletUtils.removeCacheHeaders(res);
             res.setHeader("Content-disposition", "attachment; filename=\"" +  StringTools.stripFilename(filename) + "\"");
             res.setContentType("application/pkix-crl");
-            res.setContentLength(crl.length);
-            res.getOutputStream().write(crl);
+            crl.transferTo(res.getOutputStream());
             final String infoMsg = intres.getLocalizedMessage(deltaCrl ? "certreq.sentlatestdeltacrl" : "certreq.sentlatestcrl", remoteAddr);
             log.info(infoMsg);
         } catch (Exception e) {
@@ -0,0 +1,148 @@
+/*************************************************************************
+ *                                                                       *
+ *  CESeCore: CE Security Core                                           *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.cesecore.certificates.ca;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.BufferedOutputStream;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.MemoryUsage;
+import java.math.BigInteger;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.bouncycastle.cert.X509CRLHolder;
+import org.cesecore.certificates.certificate.CertificateConstants;
+import org.cesecore.certificates.crl.RevokedCertInfo;
+import org.cesecore.certificates.crl.StreamingCrlEncoder;
+import org.junit.Ignore;
+import org.junit.Test;
+
+import com.keyfactor.util.keys.token.CryptoToken;
+
+/**
+ * Compares the wall-clock time and peak heap usage of building a CRL in memory with {@link X509CA#generateCRL(CryptoToken, int,
+ * java.util.Collection, int, java.security.cert.Certificate, Date)} and streaming it with
+ * {@link X509CA#generateCRL(CryptoToken, int, Iterator, int, int, java.security.cert.Certificate, Date, OutputStream)}.
+ * The peak heap usage is the largest amount of heap in use directly after a garbage collection, i.e. it doesn't include garbage.
+ * Run with a large heap, e.g. -Xmx8g, for the 10 million entry case.
+ */
+@Ignore //Set to ignore as to not be run on a regular basis
+public class X509CACrlPerformanceTest extends X509CAUnitTestBase {
+
+    @Test
+    public void generateCrlWithOneMillionEntries() throws Exception {
+        compare(1000000);
+    }
+
+    @Test
+    public void generateCrlWithTenMillionEntries() throws Exception {
+        compare(10000000);
+    }
+
+    private void compare(final int entries) throws Exception {
+        final CryptoToken cryptoToken = getNewCryptoToken();
+        final X509CA ca = createTestCA(cryptoToken, CADN);
+        final Date validFrom = new Date();
+        measure("Streamed CRL with " + entries + " entries", () -> {
+            final Path crlFile = Files.createTempFile("crl", ".der");
+            try (final OutputStream out = new BufferedOutputStream(Files.newOutputStream(crlFile))) {
+                final StreamingCrlEncoder encoder = ca.generateCRL(cryptoToken, CertificateConstants.NO_CRL_PARTITION, new RevokedCertInfoIterator(entries),
+                        1, -1, null, validFrom, out);
+                assertEquals(entries, encoder.getEntryCount());
+                return encoder.getLength();
+            } finally {
+                Files.delete(crlFile);
+            }
+        });
+        measure("CRL built in memory with " + entries + " entries", () -> {
+            final List<RevokedCertInfo> revokedCertInfos = new ArrayList<>(entries);
+            new RevokedCertInfoIterator(entries).forEachRemaining(revokedCertInfos::add);
+            final X509CRLHolder crl = ca.generateCRL(cryptoToken, CertificateConstants.NO_CRL_PARTITION, revokedCertInfos, 1, null, validFrom);
+            return (long) crl.getEncoded().length;
+        });
+    }
+
+    private static void measure(final String description, final Callable<Long> task) throws Exception {
+        System.gc();
+        final List<MemoryPoolMXBean> heapPools = new ArrayList<>();
+        for (final MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP && pool.isCollectionUsageThresholdSupported()) {
+                heapPools.add(pool);
+            }
+        }
+        final AtomicBoolean running = new AtomicBoolean(true);
+        final AtomicLong peakHeap = new AtomicLong();
+        final Thread sampler = new Thread(() -> {
+            while (running.get()) {
+                long used = 0;
+                for (final MemoryPoolMXBean pool : heapPools) {
+                    final MemoryUsage usage = pool.getCollectionUsage();
+                    used += usage == null ? 0 : usage.getUsed();
+                }
+                peakHeap.accumulateAndGet(used, Math::max);
+                try {
+                    Thread.sleep(10);
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+        });
+        sampler.start();
+        final long start = System.currentTimeMillis();
+        final long length;
+        try {
+            length = task.call();
+        } finally {
+            running.set(false);
+            sampler.join();
+        }
+        final long time = System.currentTimeMillis() - start;
+        System.err.println(description + ": " + length + " bytes in " + time + " ms, peak heap usage " + peakHeap.get() / (1024 * 1024) + " MiB.");
+    }
+
+    /** Creates revoked certificates on the fly, like a database cursor would. */
+    private static final class RevokedCertInfoIterator implements Iterator<RevokedCertInfo> {
+        private final int count;
+        private final long now = System.currentTimeMillis();
+        private int index;
+
+        private RevokedCertInfoIterator(final int count) {
+            this.count = count;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return index < count;
+        }
+
+        @Override
+        public RevokedCertInfo next() {
+            final int reason = index % 4 == 0 ? RevokedCertInfo.REVOCATION_REASON_UNSPECIFIED : RevokedCertInfo.REVOCATION_REASON_KEYCOMPROMISE;
+            final BigInteger serialNumber = BigInteger.valueOf(index).shiftLeft(96).or(BigInteger.valueOf(now));
+            final RevokedCertInfo revokedCertInfo = new RevokedCertInfo(null, serialNumber.toByteArray(), now - index, reason, now + 86400000L);
+            index++;
+            return revokedCertInfo;
+        }
+    }
+}
@@ -12,16 +12,21 @@
  *************************************************************************/
 package org.cesecore.certificates.ca;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
 import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.math.BigInteger;
 import java.security.cert.X509CRL;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Date;
 import java.util.List;
 
 import org.apache.log4j.Logger;
@@ -37,9 +42,12 @@ import org.bouncycastle.asn1.x509.IssuingDistributionPoint;
 import org.bouncycastle.cert.X509CRLHolder;
 import org.cesecore.certificates.certificate.CertificateConstants;
 import org.cesecore.certificates.crl.RevokedCertInfo;
+import org.cesecore.certificates.crl.StreamingCrlEncoder;
+import org.cesecore.certificates.util.cert.CrlExtensions;
 import org.junit.Test;
 
 import com.keyfactor.util.CertTools;
+import com.keyfactor.util.crypto.algorithm.AlgorithmConstants;
 import com.keyfactor.util.keys.token.CryptoToken;
 
 /**
@@ -412,5 +420,61 @@ public class X509CACrlUnitTest extends X509CAUnitTestBase {
         assertEquals("A list was returned without any values present.", 0, result.size());
     }
 
+    /** Tests that a streamed CRL is identical to one built in memory */
+    @Test
+    public void testStreamingCrl() throws Exception {
+        final CryptoToken cryptoToken = getNewCryptoToken();
+        final X509CA ca = createTestCA(cryptoToken, CADN);
+        final Date validFrom = new Date(System.currentTimeMillis() - 1000);
+        final List<RevokedCertInfo> revcerts = getRevokedCertInfos(300);
+        final X509CRLHolder expected = ca.generateCRL(cryptoToken, CertificateConstants.NO_CRL_PARTITION, revcerts, 7, null, validFrom);
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final StreamingCrlEncoder encoder = ca.generateCRL(cryptoToken, CertificateConstants.NO_CRL_PARTITION, revcerts.iterator(), 7, -1, null,
+                validFrom, out);
+        assertArrayEquals("A streamed CRL should be encoded exactly as a CRL built in memory.", expected.getEncoded(), out.toByteArray());
+        assertEquals(300, encoder.getEntryCount());
+        assertEquals(out.size(), encoder.getLength());
+        assertEquals(expected.getIssuer(), encoder.getIssuer());
+        assertEquals(expected.getThisUpdate(), encoder.getThisUpdate());
+        assertEquals(expected.getNextUpdate(), encoder.getNextUpdate());
+        final X509CRL xcrl = CertTools.getCRLfromByteArray(out.toByteArray());
+        xcrl.verify(ca.getCACertificate().getPublicKey());
+        assertEquals(300, xcrl.getRevokedCertificates().size());
+        assertEquals(BigInteger.valueOf(7), CrlExtensions.getCrlNumber(xcrl));
+    }
+
+    /** Tests streaming of empty CRLs and delta CRLs, and of CRLs with randomized signatures */
+    @Test
+    public void testStreamingCrlEmptyAndDelta() throws Exception {
+        final CryptoToken cryptoToken = getNewCryptoToken();
+        final X509CA ca = createTestCA(cryptoToken, "CN=Streaming CRL", AlgorithmConstants.SIGALG_SHA256_WITH_RSA_AND_MGF1, null, null);
+        final Date validFrom = new Date(System.currentTimeMillis() - 1000);
+        final X509CRLHolder expected = ca.generateCRL(cryptoToken, CertificateConstants.NO_CRL_PARTITION, Collections.emptyList(), 1, null, validFrom);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ca.generateCRL(cryptoToken, CertificateConstants.NO_CRL_PARTITION, Collections.emptyIterator(), 1, -1, null, validFrom, out);
+        X509CRLHolder crl = new X509CRLHolder(out.toByteArray());
+        assertArrayEquals("The signed part of an empty streamed CRL should be the same as for a CRL built in memory.",
+                expected.toASN1Structure().getTBSCertList().getEncoded(), crl.toASN1Structure().getTBSCertList().getEncoded());
+        assertTrue(crl.getRevokedCertificates().isEmpty());
+        CertTools.getCRLfromByteArray(out.toByteArray()).verify(ca.getCACertificate().getPublicKey());
+
+        out = new ByteArrayOutputStream();
+        ca.generateCRL(cryptoToken, CertificateConstants.NO_CRL_PARTITION, getRevokedCertInfos(2).iterator(), 2, 1, null, new Date(), out);
+        final X509CRL deltaCrl = CertTools.getCRLfromByteArray(out.toByteArray());
+        deltaCrl.verify(ca.getCACertificate().getPublicKey());
+        assertEquals("Expected a delta CRL.", BigInteger.ONE, CrlExtensions.getDeltaCRLIndicator(deltaCrl));
+        assertEquals(2, deltaCrl.getRevokedCertificates().size());
+    }
 
+    private static List<RevokedCertInfo> getRevokedCertInfos(final int count) {
+        final List<RevokedCertInfo> revcerts = new ArrayList<>();
+        final long now = System.currentTimeMillis();
+        for (int i = 0; i < count; i++) {
+            final int reason = i % 3 == 0 ? RevokedCertInfo.REVOCATION_REASON_UNSPECIFIED : RevokedCertInfo.REVOCATION_REASON_KEYCOMPROMISE;
+            final Long invalidityDate = i % 5 == 0 ? Long.valueOf(now - 86400000L) : null;
+            revcerts.add(new RevokedCertInfo(null, BigInteger.valueOf(1000000L + i * 7919L).toByteArray(), now - i * 1000L, reason,
+                    now + 86400000L, invalidityDate));
+        }
+        return revcerts;
+    }
 }
@@ -0,0 +1,158 @@
+/*************************************************************************
+ *                                                                       *
+ *  CESeCore: CE Security Core                                           *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.cesecore.certificates.crl;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+
+import org.junit.Test;
+
+/**
+ * Unit tests of {@link RevokedCertInfoCollection}.
+ */
+public class RevokedCertInfoCollectionTest {
+
+    private static final long NOW = 1700000000123L;
+
+    private static List<RevokedCertInfo> getEntries() {
+        return Arrays.asList(
+                new RevokedCertInfo("abcd0123".getBytes(), BigInteger.valueOf(0x1234ABCDL).toByteArray(), NOW, RevokedCertInfo.REVOCATION_REASON_UNSPECIFIED,
+                        NOW + 86400000L),
+                new RevokedCertInfo(null, new BigInteger("-129").toByteArray(), NOW + 1000L, RevokedCertInfo.REVOCATION_REASON_KEYCOMPROMISE,
+                        NOW + 2 * 86400000L, NOW - 3600000L),
+                new RevokedCertInfo("ef45".getBytes(), new byte[] { 0, 0, 0x7f }, NOW - 5000L, RevokedCertInfo.REVOCATION_REASON_REMOVEFROMCRL, 0, -1L),
+                new RevokedCertInfo("6789".getBytes(), new BigInteger(1, new byte[20]).setBit(159).toByteArray(), 0, RevokedCertInfo.REVOCATION_REASON_CERTIFICATEHOLD,
+                        NOW, NOW));
+    }
+
+    private static void assertEntriesEqual(final List<RevokedCertInfo> expected, final Iterator<RevokedCertInfo> actual) {
+        for (final RevokedCertInfo expectedEntry : expected) {
+            assertTrue(actual.hasNext());
+            final RevokedCertInfo actualEntry = actual.next();
+            assertEquals(expectedEntry.getCertificateFingerprint(), actualEntry.getCertificateFingerprint());
+            assertEquals(expectedEntry.getUserCertificate(), actualEntry.getUserCertificate());
+            assertEquals(expectedEntry.getRevocationDate(), actualEntry.getRevocationDate());
+            assertEquals(expectedEntry.getReason(), actualEntry.getReason());
+            assertEquals(expectedEntry.getExpireDate(), actualEntry.getExpireDate());
+            assertEquals(expectedEntry.getInvalidityDate(), actualEntry.getInvalidityDate());
+        }
+        assertFalse(actual.hasNext());
+    }
+
+    @Test
+    public void addAndIterate() {
+        final RevokedCertInfoCollection collection = new RevokedCertInfoCollection();
+        assertTrue(collection.isEmpty());
+        // Grow the arrays a few times
+        final List<RevokedCertInfo> expected = new ArrayList<>();
+        for (int i = 0; i < 25; i++) {
+            expected.addAll(getEntries());
+        }
+        collection.addAll(expected);
+        collection.closeForWrite();
+        assertEquals(expected.size(), collection.size());
+        assertEntriesEqual(expected, collection.iterator());
+        // Entries can still be added after closeForWrite
+        collection.add(expected.get(0));
+        assertEquals(expected.size() + 1, collection.size());
+        collection.clear();
+        assertTrue(collection.isEmpty());
+        assertFalse(collection.iterator().hasNext());
+    }
+
+    @Test
+    public void readWithCursor() {
+        final RevokedCertInfoCollection collection = new RevokedCertInfoCollection(1);
+        collection.add("abcd".getBytes(), BigInteger.valueOf(4711).toByteArray(), NOW, RevokedCertInfo.REVOCATION_REASON_SUPERSEDED, NOW + 1, null);
+        collection.add(null, BigInteger.valueOf(4712).toByteArray(), NOW + 2, RevokedCertInfo.REVOCATION_REASON_CACOMPROMISE, NOW + 3, NOW - 4);
+        final RevokedCertInfoCollection.Cursor cursor = collection.cursor();
+        assertTrue(cursor.advance());
+        assertEquals(BigInteger.valueOf(4711), cursor.getSerialNumber());
+        assertEquals("abcd", cursor.getCertificateFingerprint());
+        assertEquals(NOW, cursor.getRevocationDate());
+        assertEquals(RevokedCertInfo.REVOCATION_REASON_SUPERSEDED, cursor.getReason());
+        assertEquals(NOW + 1, cursor.getExpireDate());
+        assertFalse(cursor.isInvalidityDateSet());
+        assertTrue(cursor.advance());
+        assertEquals(BigInteger.valueOf(4712), cursor.getSerialNumber());
+        assertNull(cursor.getCertificateFingerprint());
+        assertTrue(cursor.isInvalidityDateSet());
+        assertEquals(NOW - 4, cursor.getInvalidityDate());
+        assertFalse(cursor.advance());
+    }
+
+    @Test
+    public void serializeAndDeserialize() throws Exception {
+        final RevokedCertInfoCollection collection = new RevokedCertInfoCollection();
+        final List<RevokedCertInfo> expected = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            expected.add(new RevokedCertInfo(("fingerprint" + i).getBytes(), BigInteger.valueOf(i).shiftLeft(64).toByteArray(), NOW + i * 1000L,
+                    RevokedCertInfo.REVOCATION_REASON_KEYCOMPROMISE, NOW + 86400000L, i % 2 == 0 ? null : NOW - i));
+        }
+        expected.addAll(getEntries());
+        collection.addAll(expected);
+        final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        try (final ObjectOutputStream oos = new ObjectOutputStream(baos)) {
+            oos.writeObject(collection);
+        }
+        // Sorted revocation dates take one or two bytes each
+        assertTrue("Serialized form is too large: " + baos.size(), baos.size() < 1000 * 40);
+        try (final ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(baos.toByteArray()))) {
+            final RevokedCertInfoCollection deserialized = (RevokedCertInfoCollection) ois.readObject();
+            assertEquals(expected.size(), deserialized.size());
+            assertEntriesEqual(expected, deserialized.iterator());
+        }
+    }
+
+    @Test
+    public void encodeEntriesFromCursor() throws Exception {
+        final long[] dates = { NOW, -631152000000L /* 1950 */, 2524607999999L /* last millisecond of 2049 */, 2524608000000L /* 2050 */,
+                253402300799000L /* 9999 */, -2208988800000L /* 1900 */, 1700000000999L };
+        final int[] reasons = { RevokedCertInfo.REVOCATION_REASON_UNSPECIFIED, RevokedCertInfo.REVOCATION_REASON_KEYCOMPROMISE,
+                RevokedCertInfo.REVOCATION_REASON_CERTIFICATEHOLD, RevokedCertInfo.REVOCATION_REASON_REMOVEFROMCRL };
+        final RevokedCertInfoCollection collection = new RevokedCertInfoCollection();
+        int serialNumber = 1;
+        for (final long date : dates) {
+            for (final int reason : reasons) {
+                collection.add(null, BigInteger.valueOf(serialNumber++).shiftLeft(serialNumber).toByteArray(), date, reason, NOW, null);
+                collection.add(null, BigInteger.valueOf(serialNumber++).negate().toByteArray(), date, reason, NOW, NOW);
+                collection.add(null, BigInteger.valueOf(serialNumber++).toByteArray(), NOW, reason, NOW, date);
+            }
+        }
+        final byte[] buffer = new byte[StreamingCrlEncoder.MAX_ENTRY_LENGTH];
+        int fallbacks = 0;
+        for (final RevokedCertInfoCollection.Cursor cursor = collection.cursor(); cursor.advance();) {
+            final byte[] expected = StreamingCrlEncoder.encodeEntry(cursor.get());
+            final int length = StreamingCrlEncoder.encodeEntry(cursor, buffer);
+            if (length == -1) {
+                fallbacks++;
+            } else {
+                assertArrayEquals("Wrong encoding of " + cursor, expected, Arrays.copyOf(buffer, length));
+            }
+        }
+        assertEquals("Only the entries with dates in 1900 should be left to BouncyCastle.", reasons.length * 3, fallbacks);
+    }
+}
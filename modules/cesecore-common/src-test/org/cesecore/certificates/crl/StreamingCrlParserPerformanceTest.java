@@ -0,0 +1,175 @@
+/*************************************************************************
+ *                                                                       *
+ *  CESeCore: CE Security Core                                           *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.cesecore.certificates.crl;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.BufferedOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.MemoryUsage;
+import java.math.BigInteger;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.KeyPair;
+import java.security.cert.X509CRL;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.bouncycastle.asn1.x500.X500Name;
+import org.bouncycastle.asn1.x509.CRLNumber;
+import org.bouncycastle.asn1.x509.Extension;
+import org.bouncycastle.asn1.x509.ExtensionsGenerator;
+import org.bouncycastle.operator.jcajce.JcaContentSignerBuilder;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Ignore;
+import org.junit.Test;
+
+import com.keyfactor.util.CertTools;
+import com.keyfactor.util.CryptoProviderTools;
+import com.keyfactor.util.crypto.algorithm.AlgorithmConstants;
+import com.keyfactor.util.keys.KeyTools;
+
+/**
+ * Compares the wall-clock time and peak heap usage of reading a synthetic CRL with 5 million entries with {@link StreamingCrlParser}, verifying
+ * the signature while reading and handing the entries on in chunks, and decoding it as an X509CRL. The peak heap usage is the largest amount of
+ * heap in use directly after a garbage collection, i.e. it doesn't include garbage. Run with a large heap, e.g. -Xmx8g, for the X509CRL case.
+ */
+@Ignore //Set to ignore as to not be run on a regular basis
+public class StreamingCrlParserPerformanceTest {
+
+    private static final int ENTRIES = 5000000;
+    private static final int CHUNK_SIZE = 1000;
+
+    private static KeyPair keyPair;
+    private static Path crlFile;
+
+    @BeforeClass
+    public static void beforeClass() throws Exception {
+        CryptoProviderTools.installBCProviderIfNotAvailable();
+        keyPair = KeyTools.genKeys("2048", AlgorithmConstants.KEYALGORITHM_RSA);
+        crlFile = Files.createTempFile("crl", ".der");
+        final ExtensionsGenerator extensionsGenerator = new ExtensionsGenerator();
+        extensionsGenerator.addExtension(Extension.cRLNumber, false, new CRLNumber(BigInteger.ONE));
+        final StreamingCrlEncoder encoder = new StreamingCrlEncoder(new X500Name("CN=Streaming CRL Parser Performance Test"), new Date(), null,
+                extensionsGenerator.generate());
+        try (final OutputStream out = new BufferedOutputStream(Files.newOutputStream(crlFile))) {
+            encoder.encode(new RevokedCertInfoIterator(ENTRIES), new JcaContentSignerBuilder("SHA256WithRSA").build(keyPair.getPrivate()), null, out);
+        }
+        System.err.println("Created CRL with " + encoder.getEntryCount() + " entries of " + encoder.getLength() + " bytes.");
+    }
+
+    @AfterClass
+    public static void afterClass() throws Exception {
+        Files.deleteIfExists(crlFile);
+    }
+
+    @Test
+    public void readCrlWithFiveMillionEntries() throws Exception {
+        measure("Streamed CRL with " + ENTRIES + " entries", () -> {
+            long entries = 0;
+            try (final InputStream in = Files.newInputStream(crlFile)) {
+                final StreamingCrlParser parser = new StreamingCrlParser(in, CertTools.genContentVerifierProvider(keyPair.getPublic()));
+                for (List<RevokedCertInfo> chunk = parser.readEntries(CHUNK_SIZE); !chunk.isEmpty(); chunk = parser.readEntries(CHUNK_SIZE)) {
+                    entries += chunk.size();
+                }
+                parser.readTrailer();
+                assertEquals(BigInteger.ONE, parser.getCrlNumber());
+            }
+            return entries;
+        });
+        measure("Verified CRL with " + ENTRIES + " entries, without reading the entries", () -> {
+            try (final InputStream in = Files.newInputStream(crlFile)) {
+                return new StreamingCrlParser(in, CertTools.genContentVerifierProvider(keyPair.getPublic())).parse().getEntryCount();
+            }
+        });
+        measure("X509CRL with " + ENTRIES + " entries", () -> {
+            final X509CRL crl = CertTools.getCRLfromByteArray(Files.readAllBytes(crlFile));
+            crl.verify(keyPair.getPublic());
+            return (long) crl.getRevokedCertificates().size();
+        });
+    }
+
+    private static void measure(final String description, final Callable<Long> task) throws Exception {
+        System.gc();
+        final List<MemoryPoolMXBean> heapPools = new ArrayList<>();
+        for (final MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP && pool.isCollectionUsageThresholdSupported()) {
+                heapPools.add(pool);
+            }
+        }
+        final AtomicBoolean running = new AtomicBoolean(true);
+        final AtomicLong peakHeap = new AtomicLong();
+        final Thread sampler = new Thread(() -> {
+            while (running.get()) {
+                long used = 0;
+                for (final MemoryPoolMXBean pool : heapPools) {
+                    final MemoryUsage usage = pool.getCollectionUsage();
+                    used += usage == null ? 0 : usage.getUsed();
+                }
+                peakHeap.accumulateAndGet(used, Math::max);
+                try {
+                    Thread.sleep(10);
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+        });
+        sampler.start();
+        final long start = System.currentTimeMillis();
+        final long entries;
+        try {
+            entries = task.call();
+        } finally {
+            running.set(false);
+            sampler.join();
+        }
+        final long time = System.currentTimeMillis() - start;
+        assertEquals(ENTRIES, entries);
+        System.err.println(description + ": " + entries + " entries in " + time + " ms, peak heap usage " + peakHeap.get() / (1024 * 1024) + " MiB.");
+    }
+
+    /** Creates revoked certificates on the fly, so that the CRL can be created without holding the entries in memory. */
+    private static final class RevokedCertInfoIterator implements Iterator<RevokedCertInfo> {
+        private final int count;
+        private final long now = System.currentTimeMillis();
+        private int index;
+
+        private RevokedCertInfoIterator(final int count) {
+            this.count = count;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return index < count;
+        }
+
+        @Override
+        public RevokedCertInfo next() {
+            final int reason = index % 4 == 0 ? RevokedCertInfo.REVOCATION_REASON_UNSPECIFIED : RevokedCertInfo.REVOCATION_REASON_KEYCOMPROMISE;
+            final BigInteger serialNumber = BigInteger.valueOf(index).shiftLeft(96).or(BigInteger.valueOf(now));
+            final RevokedCertInfo revokedCertInfo = new RevokedCertInfo(null, serialNumber.toByteArray(), now - index, reason, now + 86400000L);
+            index++;
+            return revokedCertInfo;
+        }
+    }
+}
@@ -0,0 +1,201 @@
+/*************************************************************************
+ *                                                                       *
+ *  CESeCore: CE Security Core                                           *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.cesecore.certificates.crl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.math.BigInteger;
+import java.security.KeyPair;
+import java.security.SignatureException;
+import java.security.cert.CRLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+
+import org.bouncycastle.asn1.x500.X500Name;
+import org.bouncycastle.asn1.x509.CRLNumber;
+import org.bouncycastle.asn1.x509.DistributionPointName;
+import org.bouncycastle.asn1.x509.Extension;
+import org.bouncycastle.asn1.x509.ExtensionsGenerator;
+import org.bouncycastle.asn1.x509.GeneralName;
+import org.bouncycastle.asn1.x509.GeneralNames;
+import org.bouncycastle.asn1.x509.IssuingDistributionPoint;
+import org.bouncycastle.cert.X509v2CRLBuilder;
+import org.bouncycastle.operator.ContentSigner;
+import org.bouncycastle.operator.jcajce.JcaContentSignerBuilder;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.keyfactor.util.CertTools;
+import com.keyfactor.util.CryptoProviderTools;
+import com.keyfactor.util.crypto.algorithm.AlgorithmConstants;
+import com.keyfactor.util.keys.KeyTools;
+
+/**
+ * Unit tests of {@link StreamingCrlParser}.
+ */
+public class StreamingCrlParserTest {
+
+    private static final X500Name ISSUER = new X500Name("CN=Streaming CRL Parser Test");
+    private static final Date THIS_UPDATE = new Date(1700000000000L);
+    private static final Date NEXT_UPDATE = new Date(1700086400000L);
+
+    private static KeyPair keyPair;
+
+    @BeforeClass
+    public static void beforeClass() throws Exception {
+        CryptoProviderTools.installBCProviderIfNotAvailable();
+        keyPair = KeyTools.genKeys("1024", AlgorithmConstants.KEYALGORITHM_RSA);
+    }
+
+    @Test
+    public void readCrlInChunks() throws Exception {
+        final X509v2CRLBuilder crlBuilder = new X509v2CRLBuilder(ISSUER, THIS_UPDATE);
+        crlBuilder.setNextUpdate(NEXT_UPDATE);
+        for (int i = 1; i <= 5; i++) {
+            crlBuilder.addCRLEntry(BigInteger.valueOf(i), new Date(THIS_UPDATE.getTime() - i * 1000L), RevokedCertInfo.REVOCATION_REASON_KEYCOMPROMISE);
+        }
+        crlBuilder.addCRLEntry(BigInteger.valueOf(6), new Date(THIS_UPDATE.getTime() - 6000L), RevokedCertInfo.REVOCATION_REASON_CERTIFICATEHOLD,
+                new Date(THIS_UPDATE.getTime() - 3600000L));
+        crlBuilder.addExtension(Extension.cRLNumber, false, new CRLNumber(BigInteger.valueOf(4711)));
+        crlBuilder.addExtension(Extension.issuingDistributionPoint, true, new IssuingDistributionPoint(new DistributionPointName(
+                new GeneralNames(new GeneralName(GeneralName.uniformResourceIdentifier, "http://example.com/crl3.crl"))), false, false));
+        final byte[] crl = sign(crlBuilder);
+
+        final StreamingCrlParser parser = new StreamingCrlParser(new ByteArrayInputStream(crl), CertTools.genContentVerifierProvider(keyPair.getPublic()));
+        parser.readHeader();
+        assertEquals(ISSUER, parser.getIssuer());
+        assertEquals(THIS_UPDATE, parser.getThisUpdate());
+        assertEquals(NEXT_UPDATE, parser.getNextUpdate());
+        final List<RevokedCertInfo> entries = new ArrayList<>();
+        final List<Integer> chunkSizes = new ArrayList<>();
+        for (List<RevokedCertInfo> chunk = parser.readEntries(4); !chunk.isEmpty(); chunk = parser.readEntries(4)) {
+            chunkSizes.add(chunk.size());
+            entries.addAll(chunk);
+        }
+        assertEquals(Arrays.asList(4, 2), chunkSizes);
+        parser.readTrailer();
+        assertEquals(6, parser.getEntryCount());
+        assertEquals(BigInteger.valueOf(4711), parser.getCrlNumber());
+        assertFalse(parser.isDeltaCrl());
+        assertEquals(Collections.singletonList("http://example.com/crl3.crl"), parser.getIssuingDistributionPointUris());
+        assertEquals(BigInteger.valueOf(1), entries.get(0).getUserCertificate());
+        assertEquals(THIS_UPDATE.getTime() - 1000L, entries.get(0).getRevocationDate().getTime());
+        assertEquals(RevokedCertInfo.REVOCATION_REASON_KEYCOMPROMISE, entries.get(0).getReason());
+        assertNull(entries.get(0).getInvalidityDate());
+        final RevokedCertInfo onHold = entries.get(5);
+        assertEquals(BigInteger.valueOf(6), onHold.getUserCertificate());
+        assertEquals(RevokedCertInfo.REVOCATION_REASON_CERTIFICATEHOLD, onHold.getReason());
+        assertEquals(THIS_UPDATE.getTime() - 3600000L, onHold.getInvalidityDate().getTime());
+    }
+
+    @Test
+    public void parseDeltaCrlWithoutEntries() throws Exception {
+        final X509v2CRLBuilder crlBuilder = new X509v2CRLBuilder(ISSUER, THIS_UPDATE);
+        crlBuilder.addExtension(Extension.cRLNumber, false, new CRLNumber(BigInteger.valueOf(12)));
+        crlBuilder.addExtension(Extension.deltaCRLIndicator, true, new CRLNumber(BigInteger.valueOf(10)));
+        final StreamingCrlParser parser = new StreamingCrlParser(new ByteArrayInputStream(sign(crlBuilder)),
+                CertTools.genContentVerifierProvider(keyPair.getPublic())).parse();
+        assertNull(parser.getNextUpdate());
+        assertEquals(0, parser.getEntryCount());
+        assertTrue(parser.isDeltaCrl());
+        assertEquals(BigInteger.valueOf(10), parser.getDeltaCrlIndicator());
+        assertTrue(parser.readEntries(10).isEmpty());
+    }
+
+    @Test
+    public void parseCrlWithoutExtensions() throws Exception {
+        final X509v2CRLBuilder crlBuilder = new X509v2CRLBuilder(ISSUER, THIS_UPDATE);
+        crlBuilder.setNextUpdate(NEXT_UPDATE);
+        final StreamingCrlParser parser = new StreamingCrlParser(new ByteArrayInputStream(sign(crlBuilder)), null).parse();
+        assertEquals(NEXT_UPDATE, parser.getNextUpdate());
+        assertNull(parser.getExtensions());
+        assertEquals(BigInteger.ZERO, parser.getCrlNumber());
+        assertEquals(BigInteger.valueOf(-1), parser.getDeltaCrlIndicator());
+    }
+
+    @Test
+    public void readCrlWrittenByStreamingCrlEncoder() throws Exception {
+        final List<RevokedCertInfo> revoked = Arrays.asList(
+                new RevokedCertInfo(null, BigInteger.valueOf(300).toByteArray(), 5000L, RevokedCertInfo.REVOCATION_REASON_UNSPECIFIED, 0),
+                new RevokedCertInfo(null, BigInteger.valueOf(301).toByteArray(), 6000L, RevokedCertInfo.REVOCATION_REASON_SUPERSEDED, 0, 2000L));
+        final ExtensionsGenerator extensionsGenerator = new ExtensionsGenerator();
+        extensionsGenerator.addExtension(Extension.cRLNumber, false, new CRLNumber(BigInteger.valueOf(2)));
+        final StreamingCrlEncoder encoder = new StreamingCrlEncoder(ISSUER, THIS_UPDATE, NEXT_UPDATE, extensionsGenerator.generate());
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        encoder.encode(revoked.iterator(), getSigner(), null, out);
+
+        final StreamingCrlParser parser = new StreamingCrlParser(new ByteArrayInputStream(out.toByteArray()),
+                CertTools.genContentVerifierProvider(keyPair.getPublic()));
+        final List<RevokedCertInfo> entries = parser.readEntries(10);
+        parser.readTrailer();
+        assertEquals(2, entries.size());
+        assertEquals(BigInteger.valueOf(301), entries.get(1).getUserCertificate());
+        assertEquals(6000L, entries.get(1).getRevocationDate().getTime());
+        assertEquals(RevokedCertInfo.REVOCATION_REASON_SUPERSEDED, entries.get(1).getReason());
+        assertEquals(2000L, entries.get(1).getInvalidityDate().getTime());
+        assertEquals(BigInteger.valueOf(2), parser.getCrlNumber());
+    }
+
+    @Test
+    public void rejectCrlWithInvalidSignature() throws Exception {
+        final X509v2CRLBuilder crlBuilder = new X509v2CRLBuilder(ISSUER, THIS_UPDATE);
+        crlBuilder.addCRLEntry(BigInteger.valueOf(0x1234), THIS_UPDATE, RevokedCertInfo.REVOCATION_REASON_KEYCOMPROMISE);
+        final byte[] crl = sign(crlBuilder);
+        // Change the serial number of the entry
+        for (int i = 0; i < crl.length - 1; i++) {
+            if (crl[i] == 0x12 && crl[i + 1] == 0x34) {
+                crl[i + 1] = 0x35;
+                break;
+            }
+        }
+        try {
+            new StreamingCrlParser(new ByteArrayInputStream(crl), CertTools.genContentVerifierProvider(keyPair.getPublic())).parse();
+            fail("The signature of a modified CRL should not be valid.");
+        } catch (SignatureException e) {
+            // Expected
+        }
+        assertEquals("The CRL should still be readable without verification.", 1,
+                new StreamingCrlParser(new ByteArrayInputStream(crl), null).parse().getEntryCount());
+    }
+
+    @Test
+    public void rejectTruncatedCrl() throws Exception {
+        final X509v2CRLBuilder crlBuilder = new X509v2CRLBuilder(ISSUER, THIS_UPDATE);
+        crlBuilder.addCRLEntry(BigInteger.valueOf(1), THIS_UPDATE, RevokedCertInfo.REVOCATION_REASON_KEYCOMPROMISE);
+        final byte[] crl = sign(crlBuilder);
+        try {
+            new StreamingCrlParser(new ByteArrayInputStream(Arrays.copyOf(crl, crl.length - 10)), null).parse();
+            fail("A truncated CRL should not be readable.");
+        } catch (CRLException | EOFException e) {
+            // Expected
+        }
+    }
+
+    private static ContentSigner getSigner() throws Exception {
+        return new JcaContentSignerBuilder("SHA256WithRSA").build(keyPair.getPrivate());
+    }
+
+    private static byte[] sign(final X509v2CRLBuilder crlBuilder) throws Exception {
+        return crlBuilder.build(getSigner()).getEncoded();
+    }
+}
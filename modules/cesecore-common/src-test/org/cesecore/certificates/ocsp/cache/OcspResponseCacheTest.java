@@ -0,0 +1,115 @@
+/*************************************************************************
+ *                                                                       *
+ *  CESeCore: CE Security Core                                           *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.cesecore.certificates.ocsp.cache;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.math.BigInteger;
+
+import org.bouncycastle.asn1.ASN1Integer;
+import org.bouncycastle.asn1.DEROctetString;
+import org.bouncycastle.asn1.nist.NISTObjectIdentifiers;
+import org.bouncycastle.asn1.ocsp.CertID;
+import org.bouncycastle.asn1.oiw.OIWObjectIdentifiers;
+import org.bouncycastle.asn1.x509.AlgorithmIdentifier;
+import org.bouncycastle.cert.ocsp.CertificateID;
+import org.cesecore.certificates.crl.RevokedCertInfo;
+import org.cesecore.config.ConfigurationHolder;
+import org.cesecore.config.OcspConfiguration;
+import org.junit.After;
+import org.junit.Test;
+
+/**
+ * Unit tests for {@link OcspResponseCache}.
+ *
+ * @version $Id$
+ */
+public class OcspResponseCacheTest {
+
+    private static final byte[] NAME_HASH = new byte[] { 1, 2, 3 };
+    private static final byte[] KEY_HASH = new byte[] { 4, 5, 6 };
+    private static final byte[] RESPONSE = new byte[] { 0x30, 0x03, 0x0a, 0x01, 0x00 };
+
+    @After
+    public void tearDown() {
+        OcspResponseCache.INSTANCE.clear();
+        ConfigurationHolder.updateConfiguration(OcspConfiguration.RESPONSE_CACHE_MAX_ENTRIES, "100000");
+    }
+
+    private static CertificateID createCertId(final AlgorithmIdentifier hashAlgorithm, final byte[] keyHash, final long serialNumber) {
+        return new CertificateID(new CertID(hashAlgorithm, new DEROctetString(NAME_HASH), new DEROctetString(keyHash),
+                new ASN1Integer(BigInteger.valueOf(serialNumber))));
+    }
+
+    private static CertificateID createCertId(final long serialNumber) {
+        return createCertId(new AlgorithmIdentifier(OIWObjectIdentifiers.idSHA1), KEY_HASH, serialNumber);
+    }
+
+    @Test
+    public void testHitAndMiss() {
+        final long hits = OcspResponseCache.INSTANCE.getHits();
+        final long misses = OcspResponseCache.INSTANCE.getMisses();
+        assertNull(OcspResponseCache.INSTANCE.get(createCertId(1)));
+        OcspResponseCache.INSTANCE.put(createCertId(1), RESPONSE, 60000L, System.currentTimeMillis() + 3600000L, null, 0, RevokedCertInfo.NOT_REVOKED);
+        final OcspResponseCache.CachedResponse cached = OcspResponseCache.INSTANCE.get(createCertId(1));
+        assertNotNull(cached);
+        assertArrayEquals(RESPONSE, cached.getEncodedResponse());
+        assertEquals(60000L, cached.getMaxAge());
+        assertTrue("Entry should expire at max-age when it is before nextUpdate", cached.getExpireTime() <= System.currentTimeMillis() + 60000L);
+        assertNull("Other CertID hash algorithm should not match", OcspResponseCache.INSTANCE.get(
+                createCertId(new AlgorithmIdentifier(NISTObjectIdentifiers.id_sha256), KEY_HASH, 1)));
+        assertNull("Other issuer should not match", OcspResponseCache.INSTANCE.get(
+                createCertId(new AlgorithmIdentifier(OIWObjectIdentifiers.idSHA1), NAME_HASH, 1)));
+        assertEquals(hits + 1, OcspResponseCache.INSTANCE.getHits());
+        assertEquals(misses + 3, OcspResponseCache.INSTANCE.getMisses());
+    }
+
+    @Test
+    public void testExpiredAndUncacheableResponses() {
+        OcspResponseCache.INSTANCE.put(createCertId(2), RESPONSE, 0L, System.currentTimeMillis() - 1, null, 0, RevokedCertInfo.NOT_REVOKED);
+        assertNull("Response past nextUpdate should not be returned", OcspResponseCache.INSTANCE.get(createCertId(2)));
+        OcspResponseCache.INSTANCE.put(createCertId(3), RESPONSE, 60000L, null, null, 0, RevokedCertInfo.NOT_REVOKED);
+        assertNull("Response without nextUpdate should not be cached", OcspResponseCache.INSTANCE.get(createCertId(3)));
+    }
+
+    @Test
+    public void testEvictionOnRevocation() {
+        final long nextUpdate = System.currentTimeMillis() + 3600000L;
+        final CertificateID sha256CertId = createCertId(new AlgorithmIdentifier(NISTObjectIdentifiers.id_sha256), KEY_HASH, 4);
+        OcspResponseCache.INSTANCE.put(createCertId(4), RESPONSE, 0L, nextUpdate, null, 0, RevokedCertInfo.NOT_REVOKED);
+        OcspResponseCache.INSTANCE.put(sha256CertId, RESPONSE, 0L, nextUpdate, null, 0, RevokedCertInfo.NOT_REVOKED);
+        OcspResponseCache.INSTANCE.put(createCertId(5), RESPONSE, 0L, nextUpdate, null, 0, RevokedCertInfo.NOT_REVOKED);
+        assertNotNull(OcspResponseCache.INSTANCE.get(sha256CertId));
+        final long evictions = OcspResponseCache.INSTANCE.getEvictions();
+        OcspResponseCache.INSTANCE.remove(BigInteger.valueOf(4));
+        assertNull(OcspResponseCache.INSTANCE.get(createCertId(4)));
+        assertNull("All CertIDs for the serial number should be evicted", OcspResponseCache.INSTANCE.get(sha256CertId));
+        assertNotNull(OcspResponseCache.INSTANCE.get(createCertId(5)));
+        assertEquals(evictions + 1, OcspResponseCache.INSTANCE.getEvictions());
+    }
+
+    @Test
+    public void testBoundedSize() {
+        ConfigurationHolder.updateConfiguration(OcspConfiguration.RESPONSE_CACHE_MAX_ENTRIES, "100");
+        final long nextUpdate = System.currentTimeMillis() + 3600000L;
+        for (int i = 0; i < 1000; i++) {
+            OcspResponseCache.INSTANCE.put(createCertId(i), RESPONSE, 0L, nextUpdate, null, 0, RevokedCertInfo.NOT_REVOKED);
+        }
+        assertTrue("Cache should not grow beyond its bound, size was " + OcspResponseCache.INSTANCE.getSize(), OcspResponseCache.INSTANCE.getSize() <= 100);
+        assertNotNull("The most recently added response should be cached", OcspResponseCache.INSTANCE.get(createCertId(999)));
+    }
+}
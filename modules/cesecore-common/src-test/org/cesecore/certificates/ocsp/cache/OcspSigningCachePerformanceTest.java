@@ -0,0 +1,115 @@
+/*************************************************************************
+ *                                                                       *
+ *  CESeCore: CE Security Core                                           *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.cesecore.certificates.ocsp.cache;
+
+import static org.junit.Assert.assertEquals;
+
+import java.security.KeyPair;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.bouncycastle.cert.ocsp.CertificateID;
+import org.cesecore.certificates.certificate.CertificateStatus;
+import org.cesecore.keybind.impl.OcspKeyBinding.ResponderIdType;
+import org.junit.Ignore;
+import org.junit.Test;
+
+import com.keyfactor.util.CertTools;
+import com.keyfactor.util.CryptoProviderTools;
+import com.keyfactor.util.crypto.algorithm.AlgorithmConstants;
+import com.keyfactor.util.keys.KeyTools;
+
+/**
+ * Measures {@link OcspSigningCache#getEntry(CertificateID)} throughput while another thread continuously reloads the cache, alternating
+ * full reloads and single CA updates.
+ */
+@Ignore //Set to ignore as to not be run on a regular basis
+public class OcspSigningCachePerformanceTest {
+
+    private static final int NUMBER_OF_CAS = 400;
+    private static final int READER_THREADS = 8;
+    private static final long DURATION_MS = 10000;
+
+    @Test
+    public void getEntryThroughputUnderConcurrentReload() throws Exception {
+        CryptoProviderTools.installBCProviderIfNotAvailable();
+        final KeyPair keyPair = KeyTools.genKeys("1024", AlgorithmConstants.KEYALGORITHM_RSA);
+        final List<OcspSigningCacheEntry> entries = new ArrayList<>();
+        final List<CertificateID> certificateIds = new ArrayList<>();
+        for (int i = 0; i < NUMBER_OF_CAS; i++) {
+            final X509Certificate caCertificate = CertTools.genSelfCert("CN=OcspSigningCachePerformanceTest CA" + i, 365, null, keyPair.getPrivate(),
+                    keyPair.getPublic(), AlgorithmConstants.SIGALG_SHA256_WITH_RSA, true);
+            final OcspSigningCacheEntry entry = new OcspSigningCacheEntry(caCertificate, CertificateStatus.OK, Collections.singletonList(caCertificate),
+                    null, keyPair.getPrivate(), null, null, ResponderIdType.KEYHASH);
+            entries.add(entry);
+            certificateIds.addAll(entry.getCertificateID());
+        }
+        fullReload(entries);
+        final AtomicBoolean running = new AtomicBoolean(true);
+        final AtomicLong lookups = new AtomicLong();
+        final AtomicLong reloads = new AtomicLong();
+        final CountDownLatch done = new CountDownLatch(READER_THREADS + 1);
+        for (int t = 0; t < READER_THREADS; t++) {
+            final int offset = t;
+            new Thread(() -> {
+                long count = 0;
+                int index = offset;
+                while (running.get()) {
+                    if (OcspSigningCache.INSTANCE.getEntry(certificateIds.get(index)) != null) {
+                        count++;
+                    }
+                    index = (index + 1) % certificateIds.size();
+                }
+                lookups.addAndGet(count);
+                done.countDown();
+            }).start();
+        }
+        new Thread(() -> {
+            int caId = 0;
+            while (running.get()) {
+                if (caId == 0) {
+                    fullReload(entries);
+                } else {
+                    OcspSigningCache.INSTANCE.updateCaEntries(caId, Collections.singletonList(entries.get(caId)));
+                }
+                caId = (caId + 1) % NUMBER_OF_CAS;
+                reloads.incrementAndGet();
+            }
+            done.countDown();
+        }).start();
+        Thread.sleep(DURATION_MS);
+        running.set(false);
+        done.await();
+        System.err.println("Performed " + lookups.get() + " successful lookups with " + READER_THREADS + " threads and " + reloads.get()
+                + " concurrent reloads of " + NUMBER_OF_CAS + " CAs in " + DURATION_MS + "ms.");
+        System.err.println("Average throughput: " + lookups.get() / DURATION_MS + " lookups per ms");
+        assertEquals(certificateIds.size(), OcspSigningCache.INSTANCE.getEntries().size());
+    }
+
+    private void fullReload(final List<OcspSigningCacheEntry> entries) {
+        OcspSigningCache.INSTANCE.stagingStart();
+        try {
+            for (int caId = 0; caId < entries.size(); caId++) {
+                OcspSigningCache.INSTANCE.stagingAdd(caId, entries.get(caId));
+            }
+            OcspSigningCache.INSTANCE.stagingCommit(null);
+        } finally {
+            OcspSigningCache.INSTANCE.stagingRelease();
+        }
+    }
+}
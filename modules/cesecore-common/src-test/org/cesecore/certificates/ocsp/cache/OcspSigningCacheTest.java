@@ -0,0 +1,160 @@
+/*************************************************************************
+ *                                                                       *
+ *  CESeCore: CE Security Core                                           *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.cesecore.certificates.ocsp.cache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.security.KeyPair;
+import java.security.cert.X509Certificate;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+
+import org.bouncycastle.cert.ocsp.CertificateID;
+import org.cesecore.certificates.certificate.CertificateStatus;
+import org.cesecore.keybind.InternalKeyBindingStatus;
+import org.cesecore.keybind.impl.OcspKeyBinding;
+import org.cesecore.keybind.impl.OcspKeyBinding.ResponderIdType;
+import org.junit.After;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.keyfactor.util.CertTools;
+import com.keyfactor.util.CryptoProviderTools;
+import com.keyfactor.util.crypto.algorithm.AlgorithmConstants;
+import com.keyfactor.util.keys.KeyTools;
+
+/**
+ * Unit tests of the staging and incremental updates of {@link OcspSigningCache}.
+ */
+public class OcspSigningCacheTest {
+
+    private static KeyPair keyPair;
+    private static X509Certificate caCertificate1;
+    private static X509Certificate caCertificate2;
+    private static X509Certificate ocspSigningCertificate;
+
+    @BeforeClass
+    public static void beforeClass() throws Exception {
+        CryptoProviderTools.installBCProviderIfNotAvailable();
+        keyPair = KeyTools.genKeys("1024", AlgorithmConstants.KEYALGORITHM_RSA);
+        caCertificate1 = CertTools.genSelfCert("CN=OcspSigningCacheTest CA1", 365, null, keyPair.getPrivate(), keyPair.getPublic(),
+                AlgorithmConstants.SIGALG_SHA256_WITH_RSA, true);
+        caCertificate2 = CertTools.genSelfCert("CN=OcspSigningCacheTest CA2", 365, null, keyPair.getPrivate(), keyPair.getPublic(),
+                AlgorithmConstants.SIGALG_SHA256_WITH_RSA, true);
+        ocspSigningCertificate = CertTools.genSelfCert("CN=OcspSigningCacheTest Signer", 365, null, keyPair.getPrivate(), keyPair.getPublic(),
+                AlgorithmConstants.SIGALG_SHA256_WITH_RSA, false);
+    }
+
+    @After
+    public void after() {
+        OcspSigningCache.INSTANCE.stagingStart();
+        try {
+            OcspSigningCache.INSTANCE.stagingCommit(null);
+        } finally {
+            OcspSigningCache.INSTANCE.stagingRelease();
+        }
+    }
+
+    @Test
+    public void testStagingCommit() {
+        final OcspSigningCacheEntry caEntry1 = createCaEntry(caCertificate1);
+        final OcspSigningCacheEntry caEntry2 = createCaEntry(caCertificate2);
+        OcspSigningCache.INSTANCE.stagingStart();
+        try {
+            OcspSigningCache.INSTANCE.stagingAdd(1, caEntry1);
+            OcspSigningCache.INSTANCE.stagingAdd(2, caEntry2);
+            assertNull("Staged entries should not be visible before commit.", OcspSigningCache.INSTANCE.getEntry(getCertificateId(caCertificate1)));
+            OcspSigningCache.INSTANCE.stagingCommit(CertTools.getSubjectDN(caCertificate2));
+        } finally {
+            OcspSigningCache.INSTANCE.stagingRelease();
+        }
+        assertSame(caEntry1, OcspSigningCache.INSTANCE.getEntry(getCertificateId(caCertificate1)));
+        assertSame(caEntry2, OcspSigningCache.INSTANCE.getEntry(getCertificateId(caCertificate2)));
+        assertSame("Default responder was not resolved.", caEntry2, OcspSigningCache.INSTANCE.getDefaultEntry());
+    }
+
+    @Test
+    public void testUpdateAndRemoveCaEntries() {
+        final OcspSigningCacheEntry caEntry1 = createCaEntry(caCertificate1);
+        final OcspSigningCacheEntry caEntry2 = createCaEntry(caCertificate2);
+        OcspSigningCache.INSTANCE.updateCaEntries(1, Collections.singletonList(caEntry1));
+        OcspSigningCache.INSTANCE.updateCaEntries(2, Collections.singletonList(caEntry2));
+        assertSame(caEntry1, OcspSigningCache.INSTANCE.getEntry(getCertificateId(caCertificate1)));
+        assertSame(caEntry2, OcspSigningCache.INSTANCE.getEntry(getCertificateId(caCertificate2)));
+        final OcspSigningCacheEntry replacedCaEntry1 = createCaEntry(caCertificate1);
+        OcspSigningCache.INSTANCE.updateCaEntries(1, Collections.singletonList(replacedCaEntry1));
+        assertSame("CA entry was not replaced.", replacedCaEntry1, OcspSigningCache.INSTANCE.getEntry(getCertificateId(caCertificate1)));
+        assertSame("Entry of other CA should not be touched.", caEntry2, OcspSigningCache.INSTANCE.getEntry(getCertificateId(caCertificate2)));
+        OcspSigningCache.INSTANCE.removeCaEntries(1);
+        assertNull("CA entry was not removed.", OcspSigningCache.INSTANCE.getEntry(getCertificateId(caCertificate1)));
+        assertSame("Entry of other CA should not be touched.", caEntry2, OcspSigningCache.INSTANCE.getEntry(getCertificateId(caCertificate2)));
+        assertEquals(caEntry2.getCertificateID().size(), OcspSigningCache.INSTANCE.getEntries().size());
+    }
+
+    @Test
+    public void testKeyBindingEntryOverridesCaEntry() {
+        final OcspSigningCacheEntry caEntry1 = createCaEntry(caCertificate1);
+        OcspSigningCache.INSTANCE.updateCaEntries(1, Collections.singletonList(caEntry1));
+        final OcspSigningCacheEntry keyBindingEntry = createKeyBindingEntry(caCertificate1, 4711);
+        OcspSigningCache.INSTANCE.updateKeyBindingEntry(keyBindingEntry);
+        assertSame("Key binding should take precedence over the CA.", keyBindingEntry,
+                OcspSigningCache.INSTANCE.getEntry(getCertificateId(caCertificate1)));
+        OcspSigningCache.INSTANCE.removeKeyBindingEntry(4711);
+        assertSame("CA entry should be used again when the key binding is removed.", caEntry1,
+                OcspSigningCache.INSTANCE.getEntry(getCertificateId(caCertificate1)));
+    }
+
+    @Test
+    public void testPlaceholderReplacedByDefaultResponder() {
+        final OcspSigningCacheEntry placeholder = new OcspSigningCacheEntry(caCertificate1, CertificateStatus.OK, null, null, null, null, null,
+                ResponderIdType.KEYHASH);
+        final OcspSigningCacheEntry caEntry2 = createCaEntry(caCertificate2);
+        OcspSigningCache.INSTANCE.stagingStart();
+        try {
+            OcspSigningCache.INSTANCE.stagingAdd(1, placeholder);
+            OcspSigningCache.INSTANCE.stagingCommit(null);
+            assertNull("Placeholder should be removed without a default responder.", OcspSigningCache.INSTANCE.getEntry(getCertificateId(caCertificate1)));
+        } finally {
+            OcspSigningCache.INSTANCE.stagingRelease();
+        }
+        OcspSigningCache.INSTANCE.stagingStart();
+        try {
+            OcspSigningCache.INSTANCE.stagingAdd(1, placeholder);
+            OcspSigningCache.INSTANCE.stagingAdd(2, caEntry2);
+            OcspSigningCache.INSTANCE.stagingCommit(CertTools.getSubjectDN(caCertificate2));
+        } finally {
+            OcspSigningCache.INSTANCE.stagingRelease();
+        }
+        final OcspSigningCacheEntry resolved = OcspSigningCache.INSTANCE.getEntry(getCertificateId(caCertificate1));
+        assertSame("Placeholder should be signed by the default responder.", caEntry2.getPrivateKey(), resolved.getPrivateKey());
+        assertSame(caCertificate1, resolved.getIssuerCaCertificate());
+    }
+
+    private OcspSigningCacheEntry createCaEntry(final X509Certificate caCertificate) {
+        return new OcspSigningCacheEntry(caCertificate, CertificateStatus.OK, Collections.singletonList(caCertificate), null, keyPair.getPrivate(),
+                null, null, ResponderIdType.KEYHASH);
+    }
+
+    private OcspSigningCacheEntry createKeyBindingEntry(final X509Certificate caCertificate, final int internalKeyBindingId) {
+        final OcspKeyBinding ocspKeyBinding = new OcspKeyBinding();
+        ocspKeyBinding.init(internalKeyBindingId, "OcspSigningCacheTest", InternalKeyBindingStatus.ACTIVE, null, 0, "signKey", new LinkedHashMap<>());
+        return new OcspSigningCacheEntry(caCertificate, CertificateStatus.OK, Collections.singletonList(caCertificate), ocspSigningCertificate,
+                keyPair.getPrivate(), null, ocspKeyBinding, ResponderIdType.KEYHASH);
+    }
+
+    private CertificateID getCertificateId(final X509Certificate caCertificate) {
+        return createCaEntry(caCertificate).getCertificateID().get(0);
+    }
+}
@@ -0,0 +1,194 @@
+/*************************************************************************
+ *                                                                       *
+ *  CESeCore: CE Security Core                                           *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.cesecore.certificates.ocsp.cache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.math.BigInteger;
+import java.util.Collections;
+
+import org.cesecore.certificates.certificate.CertificateConstants;
+import org.cesecore.certificates.certificate.CertificateStatus;
+import org.cesecore.certificates.crl.RevokedCertInfo;
+import org.junit.After;
+import org.junit.Test;
+
+/**
+ * Unit tests for {@link RevocationStatusIndex} and {@link OcspRevocationIndex}.
+ *
+ * @version $Id$
+ */
+public class RevocationStatusIndexTest {
+
+    private static final String ISSUER_DN = "CN=RevocationStatusIndexTest";
+
+    @After
+    public void tearDown() {
+        OcspRevocationIndex.INSTANCE.clear();
+    }
+
+    @Test
+    public void testLookupAfterInitialLoad() {
+        final RevocationStatusIndex.Updates updates = new RevocationStatusIndex.Updates();
+        updates.add(BigInteger.valueOf(3), CertificateConstants.CERT_ACTIVE, RevokedCertInfo.NOT_REVOKED, 0L, 3000L, 7);
+        updates.add(BigInteger.valueOf(1), CertificateConstants.CERT_REVOKED, RevokedCertInfo.REVOCATION_REASON_KEYCOMPROMISE, 1000L, 1001L, 7);
+        updates.add(new BigInteger("7fffffffffffffffffffffffffffffffffffffff", 16), CertificateConstants.CERT_ACTIVE, RevokedCertInfo.NOT_REVOKED, 0L, 4000L, 8);
+        final RevocationStatusIndex index = RevocationStatusIndex.EMPTY.withUpdates(updates, 500L);
+        assertEquals(500L, index.getHighestUpdateTime());
+        assertEquals(3, index.getSize());
+        final CertificateStatus revoked = index.getStatus(BigInteger.ONE);
+        assertTrue(revoked.isRevoked());
+        assertEquals(RevokedCertInfo.REVOCATION_REASON_KEYCOMPROMISE, revoked.revocationReason);
+        assertEquals(1000L, revoked.revocationDate.getTime());
+        assertEquals(1001L, revoked.getExpirationDate());
+        assertEquals(7, revoked.certificateProfileId);
+        final CertificateStatus ok = index.getStatus(BigInteger.valueOf(3));
+        assertEquals(CertificateStatus.OK, ok);
+        assertEquals(3000L, ok.getExpirationDate());
+        assertEquals(8, index.getStatus(new BigInteger("7fffffffffffffffffffffffffffffffffffffff", 16)).certificateProfileId);
+        assertNull("Unknown serial number should not be found", index.getStatus(BigInteger.valueOf(2)));
+        assertNull("Serial number wider than any in the index should not be found", index.getStatus(BigInteger.ONE.shiftLeft(200)));
+        assertNull("Negative serial numbers are never indexed", index.getStatus(BigInteger.valueOf(-1)));
+    }
+
+    @Test
+    public void testArchivedStatus() {
+        final RevocationStatusIndex.Updates updates = new RevocationStatusIndex.Updates();
+        updates.add(BigInteger.valueOf(10), CertificateConstants.CERT_ARCHIVED, RevokedCertInfo.REVOCATION_REASON_SUPERSEDED, 1000L, 2000L, 1);
+        updates.add(BigInteger.valueOf(11), CertificateConstants.CERT_ARCHIVED, RevokedCertInfo.NOT_REVOKED, 0L, 2000L, 1);
+        updates.add(BigInteger.valueOf(12), CertificateConstants.CERT_ARCHIVED, RevokedCertInfo.REVOCATION_REASON_REMOVEFROMCRL, 1000L, 2000L, 1);
+        assertFalse(updates.add(BigInteger.valueOf(-12), CertificateConstants.CERT_ACTIVE, RevokedCertInfo.NOT_REVOKED, 0L, 2000L, 1));
+        final RevocationStatusIndex index = RevocationStatusIndex.EMPTY.withUpdates(updates, 1L);
+        assertTrue("Archived revoked certificate should be revoked", index.getStatus(BigInteger.valueOf(10)).isRevoked());
+        assertFalse("Archived unrevoked certificate should be OK", index.getStatus(BigInteger.valueOf(11)).isRevoked());
+        assertFalse("Archived certificate removed from CRL should be OK", index.getStatus(BigInteger.valueOf(12)).isRevoked());
+    }
+
+    @Test
+    public void testUpdatesOverrideEarlierRows() {
+        final RevocationStatusIndex.Updates initial = new RevocationStatusIndex.Updates();
+        for (int i = 0; i < 10000; i++) {
+            initial.add(BigInteger.valueOf(i * 3L), CertificateConstants.CERT_ACTIVE, RevokedCertInfo.NOT_REVOKED, 0L, 5000L, 1);
+        }
+        final RevocationStatusIndex loaded = RevocationStatusIndex.EMPTY.withUpdates(initial, 100L);
+        final RevocationStatusIndex.Updates changes = new RevocationStatusIndex.Updates();
+        changes.add(BigInteger.valueOf(300), CertificateConstants.CERT_REVOKED, RevokedCertInfo.REVOCATION_REASON_UNSPECIFIED, 150L, 5000L, 1);
+        changes.add(BigInteger.valueOf(301), CertificateConstants.CERT_ACTIVE, RevokedCertInfo.NOT_REVOKED, 0L, 6000L, 2);
+        // The last row for a serial number wins
+        changes.add(BigInteger.valueOf(303), CertificateConstants.CERT_REVOKED, RevokedCertInfo.REVOCATION_REASON_CERTIFICATEHOLD, 150L, 5000L, 1);
+        changes.add(BigInteger.valueOf(303), CertificateConstants.CERT_ACTIVE, RevokedCertInfo.NOT_REVOKED, 0L, 5000L, 1);
+        final RevocationStatusIndex updated = loaded.withUpdates(changes, 160L);
+        assertEquals(160L, updated.getHighestUpdateTime());
+        assertTrue(updated.getStatus(BigInteger.valueOf(300)).isRevoked());
+        assertEquals(6000L, updated.getStatus(BigInteger.valueOf(301)).getExpirationDate());
+        assertFalse(updated.getStatus(BigInteger.valueOf(303)).isRevoked());
+        assertFalse("Earlier index should not be modified", loaded.getStatus(BigInteger.valueOf(300)).isRevoked());
+        assertNull(loaded.getStatus(BigInteger.valueOf(301)));
+        // Re-applying the same changes gives the same result
+        final RevocationStatusIndex reapplied = updated.withUpdates(changes, 160L);
+        assertTrue(reapplied.getStatus(BigInteger.valueOf(300)).isRevoked());
+        assertFalse(reapplied.getStatus(BigInteger.valueOf(303)).isRevoked());
+        // No changes and no new update time gives the same instance
+        assertSame(updated, updated.withUpdates(new RevocationStatusIndex.Updates(), 10L));
+    }
+
+    @Test
+    public void testCompactionKeepsAllEntries() {
+        RevocationStatusIndex index = RevocationStatusIndex.EMPTY;
+        for (int round = 0; round < 20; round++) {
+            final RevocationStatusIndex.Updates updates = new RevocationStatusIndex.Updates();
+            for (int i = 0; i < 1000; i++) {
+                // Mix of widths, so merged segments with different slot widths are exercised
+                final BigInteger serialNumber = BigInteger.valueOf(round * 1000L + i).shiftLeft(round % 2 == 0 ? 0 : 64);
+                updates.add(serialNumber, CertificateConstants.CERT_REVOKED, round, round, round, round);
+            }
+            index = index.withUpdates(updates, round);
+        }
+        for (int round = 0; round < 20; round++) {
+            for (int i = 0; i < 1000; i += 97) {
+                final BigInteger serialNumber = BigInteger.valueOf(round * 1000L + i).shiftLeft(round % 2 == 0 ? 0 : 64);
+                assertEquals("Wrong entry for " + serialNumber, round, index.getStatus(serialNumber).certificateProfileId);
+            }
+        }
+    }
+
+    @Test
+    public void testRemovedCertificatesAreNotFound() {
+        final RevocationStatusIndex.Updates initial = new RevocationStatusIndex.Updates();
+        for (int i = 0; i < 10000; i++) {
+            initial.add(BigInteger.valueOf(i), CertificateConstants.CERT_REVOKED, RevokedCertInfo.REVOCATION_REASON_KEYCOMPROMISE, 1L, 5000L, 1);
+        }
+        final RevocationStatusIndex loaded = RevocationStatusIndex.EMPTY.withUpdates(initial, 100L);
+        final RevocationStatusIndex.Updates removals = new RevocationStatusIndex.Updates();
+        removals.remove(BigInteger.valueOf(5));
+        removals.remove(BigInteger.valueOf(20000));
+        final RevocationStatusIndex removed = loaded.withUpdates(removals, -1L);
+        assertEquals(100L, removed.getHighestUpdateTime());
+        assertNull("Removed certificate should not be found in the base segment", removed.getStatus(BigInteger.valueOf(5)));
+        assertNull(removed.getStatus(BigInteger.valueOf(20000)));
+        assertTrue(removed.getStatus(BigInteger.valueOf(6)).isRevoked());
+        // A certificate that is stored again after it was removed is found again
+        final RevocationStatusIndex.Updates readded = new RevocationStatusIndex.Updates();
+        readded.add(BigInteger.valueOf(5), CertificateConstants.CERT_ACTIVE, RevokedCertInfo.NOT_REVOKED, 0L, 5000L, 1);
+        assertFalse(removed.withUpdates(readded, 200L).getStatus(BigInteger.valueOf(5)).isRevoked());
+        // The markers are dropped when the recent segment is folded into the base
+        final RevocationStatusIndex.Updates many = new RevocationStatusIndex.Updates();
+        for (int i = 0; i < 5000; i++) {
+            many.remove(BigInteger.valueOf(i * 2L));
+        }
+        final RevocationStatusIndex compacted = removed.withUpdates(many, 300L);
+        assertEquals("Removed certificates and their markers should be dropped at compaction", 4999, compacted.getSize());
+        assertNull(compacted.getStatus(BigInteger.valueOf(5)));
+        assertNull(compacted.getStatus(BigInteger.valueOf(4)));
+        assertTrue(compacted.getStatus(BigInteger.valueOf(7)).isRevoked());
+    }
+
+    @Test
+    public void testRemovalsDuringRebuildAreApplied() {
+        final RevocationStatusIndex.Updates updates = new RevocationStatusIndex.Updates();
+        updates.add(BigInteger.ONE, CertificateConstants.CERT_REVOKED, RevokedCertInfo.REVOCATION_REASON_KEYCOMPROMISE, 1L, 2L, 0);
+        updates.add(BigInteger.TEN, CertificateConstants.CERT_REVOKED, RevokedCertInfo.REVOCATION_REASON_KEYCOMPROMISE, 1L, 2L, 0);
+        OcspRevocationIndex.INSTANCE.setIndex(ISSUER_DN, RevocationStatusIndex.EMPTY.withUpdates(updates, 1L));
+        assertEquals(-1L, OcspRevocationIndex.INSTANCE.getRebuildTime(ISSUER_DN));
+        OcspRevocationIndex.INSTANCE.startRebuild(ISSUER_DN);
+        // Removed after the rebuild has read it from the database
+        OcspRevocationIndex.INSTANCE.removeCertificates(ISSUER_DN, Collections.singleton(BigInteger.TEN));
+        assertNull("The current index should be updated at once", OcspRevocationIndex.INSTANCE.getStatus(ISSUER_DN, BigInteger.TEN));
+        OcspRevocationIndex.INSTANCE.finishRebuild(ISSUER_DN, RevocationStatusIndex.EMPTY.withUpdates(updates, 1L), 1234L);
+        assertNull("The rebuilt index should not contain the removed certificate", OcspRevocationIndex.INSTANCE.getStatus(ISSUER_DN, BigInteger.TEN));
+        assertTrue(OcspRevocationIndex.INSTANCE.getStatus(ISSUER_DN, BigInteger.ONE).isRevoked());
+        assertEquals(1234L, OcspRevocationIndex.INSTANCE.getRebuildTime(ISSUER_DN));
+        // Changes are applied to the latest index
+        final RevocationStatusIndex.Updates changes = new RevocationStatusIndex.Updates();
+        changes.add(BigInteger.ONE, CertificateConstants.CERT_ACTIVE, RevokedCertInfo.NOT_REVOKED, 0L, 2L, 0);
+        OcspRevocationIndex.INSTANCE.update(ISSUER_DN, changes, 2L);
+        assertFalse(OcspRevocationIndex.INSTANCE.getStatus(ISSUER_DN, BigInteger.ONE).isRevoked());
+        assertNull(OcspRevocationIndex.INSTANCE.getStatus(ISSUER_DN, BigInteger.TEN));
+        assertNull("Issuers that are not indexed should not be updated", OcspRevocationIndex.INSTANCE.update("CN=Other", changes, 2L));
+    }
+
+    @Test
+    public void testIssuerRegistry() {
+        final RevocationStatusIndex.Updates updates = new RevocationStatusIndex.Updates();
+        updates.add(BigInteger.TEN, CertificateConstants.CERT_REVOKED, RevokedCertInfo.REVOCATION_REASON_KEYCOMPROMISE, 1L, 2L, 0);
+        OcspRevocationIndex.INSTANCE.setIndex(ISSUER_DN, RevocationStatusIndex.EMPTY.withUpdates(updates, 1L));
+        assertTrue(OcspRevocationIndex.INSTANCE.getStatus(ISSUER_DN, BigInteger.TEN).isRevoked());
+        assertNull("Other issuers should not be answered from the index", OcspRevocationIndex.INSTANCE.getStatus("CN=Other", BigInteger.TEN));
+        OcspRevocationIndex.INSTANCE.retainIssuers(Collections.singleton("CN=Other"));
+        assertNull(OcspRevocationIndex.INSTANCE.getIndex(ISSUER_DN));
+    }
+}
@@ -0,0 +1,79 @@
+/*************************************************************************
+ *                                                                       *
+ *  CESeCore: CE Security Core                                           *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.cesecore.certificates.ocsp.logging;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Collections;
+
+import org.apache.log4j.Logger;
+import org.junit.Test;
+
+/**
+ * Test of {@link AsyncPatternLogWriter}
+ */
+public class AsyncPatternLogWriterTest {
+
+    private static final Logger log = Logger.getLogger(AsyncPatternLogWriterTest.class);
+
+    @Test
+    public void testShutdownWritesQueuedRecordsAndStopsWriter() {
+        final AsyncPatternLogWriter writer = AsyncPatternLogWriter.INSTANCE;
+        final long writtenBefore = writer.getWritten();
+        for (int i = 0; i < 100; i++) {
+            assertTrue(writer.submit(record(i)));
+        }
+        assertTrue("The writer thread should have been started.", isWriterThreadAlive());
+        writer.shutdown();
+        assertFalse("The writer thread should have stopped.", isWriterThreadAlive());
+        assertEquals(0, writer.getQueueSize());
+        assertEquals("All queued records should be written before the writer stops.", 100, writer.getWritten() - writtenBefore);
+        // Records submitted after shutdown are written by the calling thread, without starting the writer again
+        final long writtenAfterShutdown = writer.getWritten();
+        assertTrue(writer.submit(record(100)));
+        assertEquals(writtenAfterShutdown + 1, writer.getWritten());
+        assertFalse(isWriterThreadAlive());
+    }
+
+    @Test
+    public void testStartAfterShutdownStartsWriterAgain() {
+        final AsyncPatternLogWriter writer = AsyncPatternLogWriter.INSTANCE;
+        writer.shutdown();
+        writer.start();
+        final long writtenBefore = writer.getWritten();
+        assertTrue(writer.submit(record(0)));
+        assertTrue("The writer thread should be started again after a redeploy.", isWriterThreadAlive());
+        writer.shutdown();
+        assertFalse(isWriterThreadAlive());
+        assertEquals(1, writer.getWritten() - writtenBefore);
+        writer.start();
+    }
+
+    private static AsyncPatternLogWriter.Record record(final int number) {
+        final PatternLogTemplate template = PatternLogTemplate.getInstance("\\$\\{(.+?)\\}", "${NUMBER}");
+        final String[] values = new String[template.getSlotCount()];
+        values[template.getSlot("NUMBER")] = String.valueOf(number);
+        return new AsyncPatternLogWriter.Record(log, template, Collections.singletonList(values), "0", "0");
+    }
+
+    private static boolean isWriterThreadAlive() {
+        for (final Thread thread : Thread.getAllStackTraces().keySet()) {
+            if ("OcspLogWriter".equals(thread.getName()) && thread.isAlive()) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -13,6 +13,7 @@
 
 package org.cesecore.certificates.ocsp.logging;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 
 import java.lang.reflect.Method;
@@ -43,6 +44,36 @@ public class PatternLoggerTest {
         log.trace("<testPatternLogger");
     }
 
+    /** Keys without value are kept as placeholders, values are written literally and repeated keys get the same value. */
+    @Test
+    public void testInterpolateTemplate() {
+        final PatternLogger patternLogger = new TestPatternLogger("\\$\\{(.+?)\\}", "a=${A};b=${B};a again=${A};c=${C}", "yyyy-MM-dd", "GMT");
+        patternLogger.paramPut("A", "$1\\x");
+        patternLogger.paramPut("C", (String) null);
+        patternLogger.paramPut("NOT_LOGGED", new byte[] { 1, 2 });
+        assertEquals("a=$1\\x;b=${B};a again=$1\\x;c=", patternLogger.interpolate());
+        patternLogger.paramPut("B", Integer.valueOf(7));
+        patternLogger.paramPut("A", new byte[] { 0x0a, (byte) 0xff });
+        assertEquals("a=0aff;b=7;a again=0aff;c=", patternLogger.interpolate());
+    }
+
+    /** Reply and process time markers are replaced when the rows are formatted, not when they are added. */
+    @Test
+    public void testTemplateTimeMarkers() {
+        final PatternLogTemplate template = PatternLogTemplate.getInstance("\\$\\{(.+?)\\}", "${" + PatternLogger.REPLY_TIME + "};${"
+                + PatternLogger.PROCESS_TIME + "};${X}");
+        final String[] values = new String[template.getSlotCount()];
+        values[template.getSlot(PatternLogger.REPLY_TIME)] = PatternLogger.REPLY_TIME;
+        values[template.getSlot(PatternLogger.PROCESS_TIME)] = PatternLogger.PROCESS_TIME;
+        assertEquals(-1, template.getSlot("Y"));
+        final StringBuilder sb = new StringBuilder();
+        template.appendTo(sb, values, "12", "5");
+        assertEquals("12;5;${X}", sb.toString());
+        sb.setLength(0);
+        template.appendTo(sb, values, "12", null);
+        assertEquals("Process time should be kept when it was never started", "12;" + PatternLogger.PROCESS_TIME + ";${X}", sb.toString());
+    }
+
     /** Helper method that replaces all ${VARx} where x={0..10} with "contentx" and asserts that the result is the expected using regexp. */
     private void testPatternLoggerInternal(String pattern, String dateFormat, String timeZone, String expected) throws Exception {
         log.trace(">testPatternLoggerInternal");
@@ -0,0 +1,120 @@
+/*************************************************************************
+ *                                                                       *
+ *  CESeCore: CE Security Core                                           *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.cesecore.certificates.ocsp.metrics;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.management.ManagementFactory;
+import java.util.Date;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import javax.management.ObjectName;
+
+import org.bouncycastle.cert.ocsp.OCSPResp;
+import org.bouncycastle.cert.ocsp.RevokedStatus;
+import org.bouncycastle.cert.ocsp.UnknownStatus;
+import org.junit.Test;
+
+/**
+ * Tests the OCSP responder metrics and their latency histograms.
+ *
+ * @version $Id$
+ */
+public class OcspMetricsTest {
+
+    @Test
+    public void testHistogramBuckets() {
+        // Every value maps to a bucket whose highest value is at least the value, and within 1/32 of it
+        for (long value = 0; value < 1L << 20; value += 1 + value / 7) {
+            final long highest = LatencyHistogram.getHighestEquivalentValue(LatencyHistogram.getIndex(value));
+            assertTrue("Bucket of " + value + " ends below it at " + highest, highest >= value);
+            assertTrue("Bucket of " + value + " ends too far above it at " + highest, highest - value <= value / 32);
+        }
+        // Values that are too large are recorded as the largest value
+        final LatencyHistogram histogram = new LatencyHistogram();
+        histogram.recordMicros(Long.MAX_VALUE);
+        assertEquals(histogram.getSnapshot().getMaxMicros(), histogram.getSnapshot().getValueAtPercentile(50));
+    }
+
+    @Test
+    public void testHistogramPercentiles() {
+        final LatencyHistogram histogram = new LatencyHistogram();
+        assertEquals(0, histogram.getSnapshot().getValueAtPercentile(99));
+        for (int micros = 1; micros <= 10000; micros++) {
+            histogram.recordMicros(micros);
+        }
+        histogram.recordNanos(TimeUnit.SECONDS.toNanos(2));
+        final LatencyHistogram.Snapshot snapshot = histogram.getSnapshot();
+        assertEquals(10001, snapshot.getCount());
+        assertEquals(10000L * 10001 / 2 + 2000000, snapshot.getSumMicros());
+        assertEquals(2000000, snapshot.getMaxMicros());
+        assertWithin(5000, snapshot.getValueAtPercentile(50));
+        assertWithin(9000, snapshot.getValueAtPercentile(90));
+        assertWithin(9900, snapshot.getValueAtPercentile(99));
+        assertEquals(2000000, snapshot.getValueAtPercentile(100));
+    }
+
+    @Test
+    public void testResponderMetrics() {
+        final OcspResponderMetrics metrics = OcspMetrics.INSTANCE.getResponderMetrics("CN=OcspMetricsTest", "");
+        assertSame(metrics, OcspMetrics.INSTANCE.getResponderMetrics("CN=OcspMetricsTest", null));
+        metrics.response(OCSPResp.SUCCESSFUL, 1000);
+        metrics.response(OCSPResp.UNAUTHORIZED, 1000);
+        metrics.response(4, 1000);
+        metrics.certificateStatus((org.bouncycastle.cert.ocsp.CertificateStatus) null);
+        metrics.certificateStatus(new RevokedStatus(new Date(), 1));
+        metrics.certificateStatus(new UnknownStatus());
+        metrics.certificateStatus(1);
+        metrics.cacheLookup(OcspResponderMetrics.Cache.RESPONSE, true);
+        metrics.cacheLookup(OcspResponderMetrics.Cache.RESPONSE, false);
+        metrics.cacheLookup(OcspResponderMetrics.Cache.RESPONSE, false);
+        assertEquals(1, metrics.getResponses(OCSPResp.SUCCESSFUL));
+        assertEquals("Unknown statuses should be counted as internal errors.", 1, metrics.getResponses(OCSPResp.INTERNAL_ERROR));
+        assertEquals(3, metrics.getResponseLatency().getSnapshot().getCount());
+        assertEquals(1, metrics.getCertificateStatuses(0));
+        assertEquals(2, metrics.getCertificateStatuses(1));
+        assertEquals(1, metrics.getCertificateStatuses(2));
+        assertEquals(1, metrics.getCacheLookups(OcspResponderMetrics.Cache.RESPONSE, true));
+        assertEquals(2, metrics.getCacheLookups(OcspResponderMetrics.Cache.RESPONSE, false));
+    }
+
+    @Test
+    public void testExport() throws Exception {
+        final OcspResponderMetrics metrics = OcspMetrics.INSTANCE.getResponderMetrics("CN=Export \"Test\",O=Back\\slash", "Key Binding");
+        metrics.response(OCSPResp.SUCCESSFUL, TimeUnit.MILLISECONDS.toNanos(3));
+        metrics.signingLatency(TimeUnit.MILLISECONDS.toNanos(2));
+        OcspMetrics.INSTANCE.setSigningQueueDepth("4711;OcspMetricsTestKey", () -> 7);
+        OcspMetrics.INSTANCE.httpResponse("POST", OCSPResp.TRY_LATER, TimeUnit.MILLISECONDS.toNanos(1));
+        final String labels = "ca=\"CN=Export \\\"Test\\\",O=Back\\\\slash\",keybinding=\"Key Binding\"";
+        final String text = OcspMetrics.INSTANCE.getPrometheusText();
+        assertTrue(text, text.contains("# TYPE ocsp_responses_total counter\n"));
+        assertTrue(text, text.contains("\nocsp_responses_total{" + labels + ",status=\"successful\"} 1\n"));
+        assertTrue(text, text.contains("\nocsp_responses_total{" + labels + ",status=\"malformedRequest\"} 0\n"));
+        assertTrue(text, text.contains("\nocsp_signing_latency_seconds_count{" + labels + "} 1\n"));
+        assertTrue(text, text.contains("\nocsp_signing_queue_depth{signing_key=\"4711;OcspMetricsTestKey\"} 7\n"));
+        assertTrue(text, text.contains("\nocsp_log_queue_size "));
+        final Map<String, Double> samples = OcspMetrics.INSTANCE.getSamples();
+        assertEquals(0.002, samples.get("ocsp_signing_latency_seconds{" + labels + ",quantile=\"0.5\"}"), 0.0001);
+        assertEquals(0.003, samples.get("ocsp_response_latency_seconds_sum{" + labels + "}"), 0.0000001);
+        assertTrue(samples.get("ocsp_http_responses_total{method=\"POST\",status=\"tryLater\"}") >= 1);
+        assertTrue(OcspMetrics.INSTANCE.getSigningQueueDepth() >= 7);
+        assertTrue(ManagementFactory.getPlatformMBeanServer().isRegistered(new ObjectName(OcspMetrics.OBJECT_NAME)));
+    }
+
+    private static void assertWithin(final long expected, final long actual) {
+        assertTrue("Expected about " + expected + " but was " + actual, actual >= expected && actual <= expected + expected / 32);
+    }
+}
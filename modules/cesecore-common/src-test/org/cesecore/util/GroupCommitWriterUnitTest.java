@@ -0,0 +1,117 @@
+/*************************************************************************
+ *                                                                       *
+ *  CESeCore: CE Security Core                                           *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.cesecore.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Test;
+
+/**
+ * Test of {@link GroupCommitWriter}
+ */
+public class GroupCommitWriterUnitTest {
+
+    private static final int THREADS = 8;
+    private static final int ITEMS_PER_THREAD = 50;
+
+    /** Records the batches written, and returns each item in upper case */
+    private static class RecordingBatchWriter implements GroupCommitWriter.BatchWriter<String, String> {
+        private final List<Integer> batchSizes = Collections.synchronizedList(new ArrayList<>());
+
+        @Override
+        public List<String> write(final List<String> items) {
+            batchSizes.add(items.size());
+            final List<String> results = new ArrayList<>();
+            for (final String item : items) {
+                if (items.size() > 1 && item.startsWith("fail")) {
+                    throw new IllegalStateException("Duplicate key");
+                } else if (item.startsWith("fail")) {
+                    throw new IllegalArgumentException(item);
+                }
+                results.add(item.toUpperCase());
+            }
+            return results;
+        }
+    }
+
+    @Test
+    public void testSingleItemIsWrittenAfterMaxDelay() {
+        final RecordingBatchWriter batchWriter = new RecordingBatchWriter();
+        final GroupCommitWriter<String, String> writer = new GroupCommitWriter<>(100, 0);
+        assertEquals("A", writer.write("a", batchWriter));
+        assertEquals("B", writer.write("b", batchWriter));
+        assertEquals(2, batchWriter.batchSizes.size());
+    }
+
+    @Test
+    public void testConcurrentItemsAreWrittenInBatches() throws InterruptedException, ExecutionException {
+        final RecordingBatchWriter batchWriter = new RecordingBatchWriter();
+        final GroupCommitWriter<String, String> writer = new GroupCommitWriter<>(THREADS, 100);
+        final ExecutorService executorService = Executors.newFixedThreadPool(THREADS);
+        try {
+            final List<Future<Boolean>> results = new ArrayList<>();
+            for (int thread = 0; thread < THREADS; thread++) {
+                final int threadIndex = thread;
+                results.add(executorService.submit(() -> {
+                    for (int i = 0; i < ITEMS_PER_THREAD; i++) {
+                        final String item = "item-" + threadIndex + "-" + i;
+                        assertEquals(item.toUpperCase(), writer.write(item, batchWriter));
+                    }
+                    return true;
+                }));
+            }
+            for (final Future<Boolean> result : results) {
+                assertTrue(result.get());
+            }
+        } finally {
+            executorService.shutdown();
+        }
+        int items = 0;
+        for (final int batchSize : batchWriter.batchSizes) {
+            assertTrue("Batches should not exceed the maximum size.", batchSize <= THREADS);
+            items += batchSize;
+        }
+        assertEquals(THREADS * ITEMS_PER_THREAD, items);
+        assertTrue("Concurrent items should have been written together.", batchWriter.batchSizes.size() < items);
+    }
+
+    @Test
+    public void testFailedBatchIsWrittenItemByItem() throws InterruptedException, ExecutionException {
+        final RecordingBatchWriter batchWriter = new RecordingBatchWriter();
+        final GroupCommitWriter<String, String> writer = new GroupCommitWriter<>(3, 10000);
+        final ExecutorService executorService = Executors.newFixedThreadPool(3);
+        try {
+            final Future<String> first = executorService.submit(() -> writer.write("a", batchWriter));
+            final Future<String> failing = executorService.submit(() -> writer.write("fail", batchWriter));
+            final Future<String> last = executorService.submit(() -> writer.write("c", batchWriter));
+            assertEquals("A", first.get());
+            assertEquals("C", last.get());
+            final ExecutionException e = assertThrows(ExecutionException.class, () -> failing.get());
+            assertTrue("Only the failing item should fail.", e.getCause() instanceof IllegalArgumentException);
+        } finally {
+            executorService.shutdown();
+        }
+        assertEquals(Integer.valueOf(3), batchWriter.batchSizes.get(0));
+        assertEquals("The items of the failed batch should have been written one by one.", 4, batchWriter.batchSizes.size());
+    }
+}
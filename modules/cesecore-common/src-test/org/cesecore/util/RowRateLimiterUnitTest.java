@@ -0,0 +1,47 @@
+/*************************************************************************
+ *                                                                       *
+ *  CESeCore: CE Security Core                                           *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.cesecore.util;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+/**
+ * Test of {@link RowRateLimiter}
+ */
+public class RowRateLimiterUnitTest {
+
+    @Test
+    public void testRowsAreSpreadOverTime() throws InterruptedException {
+        final RowRateLimiter rateLimiter = new RowRateLimiter(1000);
+        final long startTime = System.nanoTime();
+        for (int i = 0; i < 5; i++) {
+            rateLimiter.acquire(100);
+        }
+        final long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime);
+        // The first 100 rows start right away, and each following 100 rows start 100 ms after the previous
+        assertTrue("500 rows at 1000 rows per second should take at least 400 ms, took " + elapsedMillis + " ms.", elapsedMillis >= 400);
+    }
+
+    @Test
+    public void testNoLimit() throws InterruptedException {
+        final RowRateLimiter rateLimiter = new RowRateLimiter(0);
+        assertFalse(rateLimiter.isLimited());
+        final long startTime = System.nanoTime();
+        rateLimiter.acquire(Integer.MAX_VALUE);
+        assertTrue("An unlimited rate should not wait.", TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime) < 1000);
+    }
+}
@@ -648,6 +648,16 @@ public abstract class CAInfo implements Serializable {
         return CertificateConstants.NO_CRL_PARTITION;
     }
 
+    /**
+     * Determines which CRL Partition Index a given CRL belongs to, like {@link #determineCrlPartitionIndex(X509CRL)}, for a CRL that is not decoded as a whole.
+     * @param crlDistributionPointUris the URIs in the Issuing Distribution Point extension of the CRL
+     * @return Partition number, or {@link CertificateConstants#NO_CRL_PARTITION} if partitioning is not enabled / not applicable.
+     */
+    public int determineCrlPartitionIndex(final Collection<String> crlDistributionPointUris) {
+        // Overridden in X509CAInfo
+        return CertificateConstants.NO_CRL_PARTITION;
+    }
+
     /**
      * Returns the CRL partitions' indexes for a given CA, or null if the CRL is not partitioned or the CA type does not support CRLs (e.g. CVC CA).
      * This includes suspended partitions, suspended partitions will just not have new certificates assigned to them.
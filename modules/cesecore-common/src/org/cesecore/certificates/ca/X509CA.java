@@ -13,7 +13,11 @@
 package org.cesecore.certificates.ca;
 
 import java.io.IOException;
+import java.io.OutputStream;
+import java.security.SignatureException;
 import java.security.cert.Certificate;
+import java.util.Date;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 
@@ -22,6 +26,8 @@ import org.bouncycastle.asn1.x509.ExtensionsGenerator;
 import org.cesecore.certificates.certificate.certextensions.AvailableCustomCertificateExtensionsConfiguration;
 import org.cesecore.certificates.certificateprofile.CertificatePolicy;
 import org.cesecore.certificates.certificateprofile.CertificateProfile;
+import org.cesecore.certificates.crl.RevokedCertInfo;
+import org.cesecore.certificates.crl.StreamingCrlEncoder;
 
 import com.keyfactor.util.keys.token.CryptoToken;
 import com.keyfactor.util.keys.token.CryptoTokenOfflineException;
@@ -155,6 +161,25 @@ public interface X509CA extends CA {
 
     void setSuspendedCrlPartitions(int suspendedCrlPartitions);
 
+    /**
+     * Generates a CRL or delta CRL and writes it to a stream, without keeping the revoked certificates or the encoded CRL in memory.
+     * The CRL is the same as the one returned by {@link #generateCRL(CryptoToken, int, java.util.Collection, int, Certificate, Date)}
+     * or {@link #generateDeltaCRL(CryptoToken, int, java.util.Collection, int, int, Certificate)}.
+     *
+     * @param cryptoToken the crypto token with the key used to sign the CRL
+     * @param crlPartitionIndex CRL partition index, or CertificateConstants.NO_CRL_PARTITION if partitioning is not used
+     * @param certs the revoked certificates to include, read only once
+     * @param crlnumber CRL number of this CRL
+     * @param basecrlnumber CRL number of the base CRL for a delta CRL, or -1 for a full CRL
+     * @param partitionCaCert CA certificate to verify the CRL against (mainly used for MS compatible CAs)
+     * @param validFrom the thisUpdate time of the CRL
+     * @param out where the DER encoded CRL is written. It is not closed.
+     * @return the encoder that wrote the CRL, with the issuer, validity and size of the CRL
+     * @throws SignatureException if the signature of the CRL could not be verified with the CA certificate
+     */
+    StreamingCrlEncoder generateCRL(CryptoToken cryptoToken, int crlPartitionIndex, Iterator<RevokedCertInfo> certs, int crlnumber, int basecrlnumber,
+            Certificate partitionCaCert, Date validFrom, OutputStream out) throws CryptoTokenOfflineException, IOException, SignatureException;
+
     /**
      * Constructs the SubjectAlternativeName extension that will end up on the generated certificate.
      *
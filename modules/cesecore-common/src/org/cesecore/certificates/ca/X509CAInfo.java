@@ -361,7 +361,16 @@ public class X509CAInfo extends CAInfo {
       return CertificateConstants.NO_CRL_PARTITION;
   }
 
-  private int determineCrlPartitionIndex(final Collection<String> uris) {
+  /**
+   * Determines which CRL Partition Index a given CRL belongs to. This check is based on the URIs of its Issuing Distribution Point extension.
+   * @param uris the URIs in the Issuing Distribution Point extension
+   * @return Partition number, or {@link CertificateConstants#NO_CRL_PARTITION} if partitioning is not enabled / not applicable.
+   */
+  @Override
+  public int determineCrlPartitionIndex(final Collection<String> uris) {
+      if (!getUsePartitionedCrl()) {
+          return CertificateConstants.NO_CRL_PARTITION;
+      }
       for (final String uri : uris) {
           final int partition = determineCrlPartitionIndex(uri);
           if (partition != CertificateConstants.NO_CRL_PARTITION) {
@@ -0,0 +1,97 @@
+/*************************************************************************
+ *                                                                       *
+ *  CESeCore: CE Security Core                                           *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.cesecore.certificates.certificate;
+
+import java.io.Serializable;
+
+/**
+ * Immutable holder of the status columns of a certificate in CertificateData, for status lookups that don't need the certificate itself.
+ * Reading only these columns avoids transferring the encoded certificate and the other large columns, and doesn't create a managed entity.
+ */
+public final class CertificateStatusInfo implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private final String fingerprint;
+    private final String serialNumber;
+    private final int status;
+    private final long revocationDate;
+    private final int revocationReason;
+    private final Long invalidityDate;
+    private final long expireDate;
+    private final Integer certificateProfileId;
+
+    /**
+     * @param fingerprint fingerprint of the certificate
+     * @param serialNumber serial number of the certificate in decimal form
+     * @param status status of the certificate, one of the CertificateConstants.CERT_ constants
+     * @param revocationDate revocation date in epoch millis, or -1 if not revoked
+     * @param revocationReason revocation reason, or RevokedCertInfo.NOT_REVOKED
+     * @param invalidityDate invalidity date in epoch millis, or null or -1 if not set
+     * @param expireDate expiration date in epoch millis
+     * @param certificateProfileId certificate profile id, or null if not set
+     */
+    public CertificateStatusInfo(final String fingerprint, final String serialNumber, final int status, final long revocationDate, final int revocationReason,
+            final Long invalidityDate, final long expireDate, final Integer certificateProfileId) {
+        this.fingerprint = fingerprint;
+        this.serialNumber = serialNumber;
+        this.status = status;
+        this.revocationDate = revocationDate;
+        this.revocationReason = revocationReason;
+        this.invalidityDate = invalidityDate == null || invalidityDate == -1L ? null : invalidityDate;
+        this.expireDate = expireDate;
+        this.certificateProfileId = certificateProfileId;
+    }
+
+    public String getFingerprint() {
+        return fingerprint;
+    }
+
+    /** @return serial number of the certificate in decimal form */
+    public String getSerialNumber() {
+        return serialNumber;
+    }
+
+    /** @return status of the certificate, one of the CertificateConstants.CERT_ constants */
+    public int getStatus() {
+        return status;
+    }
+
+    public long getRevocationDate() {
+        return revocationDate;
+    }
+
+    public int getRevocationReason() {
+        return revocationReason;
+    }
+
+    /** @return invalidity date in epoch millis, or null if not set */
+    public Long getInvalidityDate() {
+        return invalidityDate;
+    }
+
+    public long getExpireDate() {
+        return expireDate;
+    }
+
+    /** @return certificate profile id, or null if not set */
+    public Integer getCertificateProfileId() {
+        return certificateProfileId;
+    }
+
+    @Override
+    public String toString() {
+        return "CertificateStatusInfo [fingerprint=" + fingerprint + ", serialNumber=" + serialNumber + ", status=" + status + ", revocationDate="
+                + revocationDate + ", revocationReason=" + revocationReason + "]";
+    }
+}
@@ -64,6 +64,26 @@ public class IncompletelyIssuedCertificateInfo extends UpgradeableDataHashMap {
         initDataFromEndEntityInformation(endEntity, cert, cacert, crlPartitionIndex);
     }
 
+    /** Constructor that is called before storing a certificate in a transaction of its own, that needs to be "journaled" until it's issued */
+    public IncompletelyIssuedCertificateInfo(final int caId, final BigInteger serialNumber, final Date startTime, final Certificate cert, final String username,
+            final String caFingerprint, final int certProfileId, final int endEntityProfileId, final int crlPartitionIndex, final String accountBindingId) {
+        super();
+        this.caId = caId;
+        this.serialNumber = serialNumber;
+        this.startTime = startTime;
+        try {
+            data.put(KEY_CERTBYTES, cert.getEncoded());
+        } catch (CertificateEncodingException e) {
+            throw new IllegalStateException("Failed to encode newly created certificate");
+        }
+        data.put(KEY_USERNAME, username);
+        data.put(KEY_CAFINGERPRINT, caFingerprint);
+        data.put(KEY_CERTPROFILEID, certProfileId);
+        data.put(KEY_ENDENTITYPROFILEID, endEntityProfileId);
+        data.put(KEY_CRLPARTITIONINDEX, crlPartitionIndex);
+        data.put(KEY_ACCOUNTBINDINGID, accountBindingId);
+    }
+
     private void initDataFromEndEntityInformation(final EndEntityInformation endEntity, final Certificate cert, final Certificate cacert, final int crlPartitionIndex) {
         try {
             data.put(KEY_CERTBYTES, cert.getEncoded());
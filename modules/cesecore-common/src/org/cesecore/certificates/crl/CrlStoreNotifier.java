@@ -0,0 +1,61 @@
+/*************************************************************************
+ *                                                                       *
+ *  CESeCore: CE Security Core                                           *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.cesecore.certificates.crl;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Notifies caches of CRLs in this JVM when a CRL is stored in the database, so that they can refresh it without waiting for
+ * their refresh interval. Other nodes in a cluster are not notified, their caches pick up the new CRL when they are refreshed.
+ *
+ * @version $Id$
+ */
+public enum CrlStoreNotifier {
+    INSTANCE;
+
+    private static final Logger log = Logger.getLogger(CrlStoreNotifier.class);
+
+    /** Notified when a CRL is stored. */
+    public interface Listener {
+        /**
+         * @param issuerDn the DN of the CA that issued the CRL
+         * @param crlPartitionIndex the CRL partition, or {@link org.cesecore.certificates.certificate.CertificateConstants#NO_CRL_PARTITION}
+         * @param deltaCrl true if it's a delta CRL
+         */
+        void crlStored(String issuerDn, int crlPartitionIndex, boolean deltaCrl);
+    }
+
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+
+    public void addListener(final Listener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(final Listener listener) {
+        listeners.remove(listener);
+    }
+
+    /** Notifies all listeners that a CRL was stored. A failing listener doesn't stop the others from being notified. */
+    public void crlStored(final String issuerDn, final int crlPartitionIndex, final boolean deltaCrl) {
+        for (final Listener listener : listeners) {
+            try {
+                listener.crlStored(issuerDn, crlPartitionIndex, deltaCrl);
+            } catch (RuntimeException e) {
+                log.warn("Failed to notify that a CRL of '" + issuerDn + "' was stored: " + e.getMessage(), e);
+            }
+        }
+    }
+}
@@ -23,7 +23,6 @@ import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
 import org.apache.log4j.Logger;
-import org.cesecore.util.CompressedCollection;
 
 /**
  * Holds information about a revoked certificate. The information kept here is the
@@ -224,6 +223,31 @@ public class RevokedCertInfo implements Serializable {
         this.reason = reason;
     }
 
+    /** @return the fingerprint as stored, without creating a String. Used by {@link RevokedCertInfoCollection}. */
+    byte[] getFingerprintBytes() {
+        return fingerprint;
+    }
+
+    /** @return the serial number as stored, without creating a BigInteger. Used by {@link RevokedCertInfoCollection}. */
+    byte[] getUserCertificateBytes() {
+        return userCertificate;
+    }
+
+    /** @return the revocation date in milliseconds since epoch, or 0 if it isn't set */
+    long getRevocationDateMillis() {
+        return revocationDate;
+    }
+
+    /** @return the expiration date in milliseconds since epoch, or 0 if it isn't set */
+    long getExpireDateMillis() {
+        return expireDate;
+    }
+
+    /** @return the invalidity date in milliseconds since epoch, or null if it isn't set */
+    Long getInvalidityDateMillis() {
+        return invalidityDate;
+    }
+
     @Override
     public String toString() {
         return String.format("(serial = %s, reason = %s)", 
@@ -307,7 +331,7 @@ public class RevokedCertInfo implements Serializable {
      * @param a First collection of RevokedCertInfo. May <b>not</b> contain duplicates for the same serial number.
      * @param b Second collection of RevokedCertInfo. May contain duplicates
      * @param lastBaseCrlDate Entries in unrevoked state will only be included if they are more recent than this date. (<= 0 means never include them)
-     * @return CompressionCollection of certificates. May simply be a reference to <code>a</code> if <code>b</code> is empty, or a new merged CompressedCollection with any duplicates removed.
+     * @return Collection of certificates. May simply be a reference to <code>a</code> if <code>b</code> is empty, or a new merged RevokedCertInfoCollection with any duplicates removed.
      */
     public static Collection<RevokedCertInfo> mergeByDateAndStatus(final Collection<RevokedCertInfo> a, final Collection<RevokedCertInfo> b, final long lastBaseCrlDate) {
         // We can optimize this case, but not the reverse, since b can contain duplicates that should be filtered.
@@ -349,7 +373,7 @@ public class RevokedCertInfo implements Serializable {
                 tempRevoked.put(serial, revoked);
             }
         }
-        final CompressedCollection<RevokedCertInfo> mergedRevokedData = new CompressedCollection<>(RevokedCertInfo.class);
+        final RevokedCertInfoCollection mergedRevokedData = new RevokedCertInfoCollection(permRevoked.size() + tempRevoked.size());
         mergedRevokedData.addAll(permRevoked.values()); // Permanently revoked entries are always added
         for (final RevokedCertInfo revoked : tempRevoked.values()) {
             if (!revoked.isRevoked() && (lastBaseCrlDate <= 0 || revoked.getRevocationDate().getTime() <= lastBaseCrlDate)) {
@@ -0,0 +1,416 @@
+/*************************************************************************
+ *                                                                       *
+ *  CESeCore: CE Security Core                                           *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.cesecore.certificates.crl;
+
+import java.io.IOException;
+import java.io.InvalidObjectException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.math.BigInteger;
+import java.util.AbstractCollection;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Collection of revoked certificates stored column by column in primitive arrays, instead of one object per certificate. The serial
+ * numbers and fingerprints are packed into one byte array each, and the dates and reasons are kept in arrays of longs and bytes.
+ * <p>
+ * A CRL with millions of entries is created by going through the entries once with a {@link Cursor}, which reads the columns in
+ * place without allocating anything per entry. The ordinary {@link #iterator()} creates a new RevokedCertInfo for each entry, so that
+ * the entries can be kept or modified by the caller. Changes to these objects are not written back to the collection.
+ * <p>
+ * The serialized form is compact: the dates are written as variable length differences to the previous entry, which is small
+ * since the entries are usually sorted by revocation date.
+ * <p>
+ * The implementation is not thread safe. Entries can't be removed, other than with {@link #clear()}.
+ */
+public class RevokedCertInfoCollection extends AbstractCollection<RevokedCertInfo> implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private static final int INITIAL_CAPACITY = 16;
+    private static final byte FLAG_NO_SERIAL_NUMBER = 0x01;
+    private static final byte FLAG_NO_FINGERPRINT = 0x02;
+    private static final byte FLAG_INVALIDITY_DATE = 0x04;
+
+    private transient int size;
+    private transient byte[] serialNumbers;
+    /** End offset of the serial number of each entry in {@link #serialNumbers} */
+    private transient int[] serialNumberEnds;
+    private transient byte[] fingerprints;
+    /** End offset of the fingerprint of each entry in {@link #fingerprints} */
+    private transient int[] fingerprintEnds;
+    private transient long[] revocationDates;
+    private transient long[] expireDates;
+    private transient long[] invalidityDates;
+    private transient byte[] reasons;
+    private transient byte[] flags;
+
+    public RevokedCertInfoCollection() {
+        clear();
+    }
+
+    /** @param capacity the number of entries to allocate room for */
+    public RevokedCertInfoCollection(final int capacity) {
+        allocate(Math.max(capacity, 1), 0, 0);
+    }
+
+    private void allocate(final int capacity, final int serialNumbersCapacity, final int fingerprintsCapacity) {
+        size = 0;
+        serialNumbers = new byte[serialNumbersCapacity];
+        serialNumberEnds = new int[capacity];
+        fingerprints = new byte[fingerprintsCapacity];
+        fingerprintEnds = new int[capacity];
+        revocationDates = new long[capacity];
+        expireDates = new long[capacity];
+        invalidityDates = new long[capacity];
+        reasons = new byte[capacity];
+        flags = new byte[capacity];
+    }
+
+    @Override
+    public boolean add(final RevokedCertInfo revokedCertInfo) {
+        if (revokedCertInfo == null) {
+            return false;
+        }
+        add(revokedCertInfo.getFingerprintBytes(), revokedCertInfo.getUserCertificateBytes(), revokedCertInfo.getRevocationDateMillis(),
+                revokedCertInfo.getReason(), revokedCertInfo.getExpireDateMillis(), revokedCertInfo.getInvalidityDateMillis());
+        return true;
+    }
+
+    /**
+     * Adds an entry without creating a RevokedCertInfo. The parameters are the same as those of the RevokedCertInfo constructor.
+     *
+     * @param fingerprint fingerprint in byte format, String.getBytes(), or null
+     * @param serialNumber serial number in byte format, BigInteger.toByteArray()
+     * @param revocationDate revocation date in milliseconds since epoch
+     * @param reason revocation reason, see the constants in {@link RevokedCertInfo}
+     * @param expireDate expiration date of the certificate in milliseconds since epoch
+     * @param invalidityDate invalidity date in milliseconds since epoch, or null if there is none
+     */
+    public void add(final byte[] fingerprint, final byte[] serialNumber, final long revocationDate, final int reason, final long expireDate,
+            final Long invalidityDate) {
+        ensureCapacity(size + 1);
+        byte entryFlags = 0;
+        if (serialNumber == null) {
+            entryFlags |= FLAG_NO_SERIAL_NUMBER;
+            serialNumberEnds[size] = size == 0 ? 0 : serialNumberEnds[size - 1];
+        } else {
+            serialNumberEnds[size] = append(serialNumber, true);
+        }
+        if (fingerprint == null) {
+            entryFlags |= FLAG_NO_FINGERPRINT;
+            fingerprintEnds[size] = size == 0 ? 0 : fingerprintEnds[size - 1];
+        } else {
+            fingerprintEnds[size] = append(fingerprint, false);
+        }
+        if (invalidityDate != null) {
+            entryFlags |= FLAG_INVALIDITY_DATE;
+            invalidityDates[size] = invalidityDate;
+        }
+        revocationDates[size] = revocationDate;
+        expireDates[size] = expireDate;
+        reasons[size] = (byte) reason;
+        flags[size] = entryFlags;
+        size++;
+    }
+
+    /** Appends a serial number or fingerprint to the packed array. Serial numbers are stored in the minimal form that DER requires. */
+    private int append(final byte[] value, final boolean serialNumber) {
+        int offset = 0;
+        if (serialNumber) {
+            while (offset < value.length - 1 && ((value[offset] == 0 && value[offset + 1] >= 0) || (value[offset] == -1 && value[offset + 1] < 0))) {
+                offset++;
+            }
+        }
+        final int length = value.length - offset;
+        if (serialNumber) {
+            final int start = size == 0 ? 0 : serialNumberEnds[size - 1];
+            serialNumbers = ensureCapacity(serialNumbers, start + length);
+            System.arraycopy(value, offset, serialNumbers, start, length);
+            return start + length;
+        }
+        final int start = size == 0 ? 0 : fingerprintEnds[size - 1];
+        fingerprints = ensureCapacity(fingerprints, start + length);
+        System.arraycopy(value, offset, fingerprints, start, length);
+        return start + length;
+    }
+
+    private static byte[] ensureCapacity(final byte[] array, final int capacity) {
+        return capacity <= array.length ? array : Arrays.copyOf(array, Math.max(capacity, array.length * 2));
+    }
+
+    private void ensureCapacity(final int capacity) {
+        if (capacity > reasons.length) {
+            resize(Math.max(capacity, reasons.length * 2));
+        }
+    }
+
+    private void resize(final int capacity) {
+        serialNumberEnds = Arrays.copyOf(serialNumberEnds, capacity);
+        fingerprintEnds = Arrays.copyOf(fingerprintEnds, capacity);
+        revocationDates = Arrays.copyOf(revocationDates, capacity);
+        expireDates = Arrays.copyOf(expireDates, capacity);
+        invalidityDates = Arrays.copyOf(invalidityDates, capacity);
+        reasons = Arrays.copyOf(reasons, capacity);
+        flags = Arrays.copyOf(flags, capacity);
+    }
+
+    /** Releases the memory allocated for entries that were never added. Entries can still be added afterwards. */
+    public void closeForWrite() {
+        if (size < reasons.length) {
+            resize(Math.max(size, 1));
+        }
+        final int serialNumbersLength = size == 0 ? 0 : serialNumberEnds[size - 1];
+        if (serialNumbersLength < serialNumbers.length) {
+            serialNumbers = Arrays.copyOf(serialNumbers, serialNumbersLength);
+        }
+        final int fingerprintsLength = size == 0 ? 0 : fingerprintEnds[size - 1];
+        if (fingerprintsLength < fingerprints.length) {
+            fingerprints = Arrays.copyOf(fingerprints, fingerprintsLength);
+        }
+    }
+
+    @Override
+    public void clear() {
+        allocate(INITIAL_CAPACITY, INITIAL_CAPACITY * 20, INITIAL_CAPACITY * 40);
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /** @return an iterator that creates a new RevokedCertInfo for each entry */
+    @Override
+    public Cursor iterator() {
+        return new Cursor();
+    }
+
+    /** @return a cursor positioned before the first entry */
+    public Cursor cursor() {
+        return new Cursor();
+    }
+
+    /**
+     * Moves over the entries of the collection without allocating anything per entry. {@link #advance()} moves to the next entry,
+     * whose columns are then read with the getters. It is also an Iterator, whose {@link #next()} moves to the next entry and
+     * returns a new RevokedCertInfo for it.
+     */
+    public final class Cursor implements Iterator<RevokedCertInfo> {
+        private int index = -1;
+
+        private Cursor() {
+        }
+
+        /** @return true if the cursor moved to the next entry, or false if there are no more entries */
+        public boolean advance() {
+            if (index + 1 >= size) {
+                return false;
+            }
+            index++;
+            return true;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return index + 1 < size;
+        }
+
+        @Override
+        public RevokedCertInfo next() {
+            if (!advance()) {
+                throw new NoSuchElementException();
+            }
+            return get();
+        }
+
+        /** @return a new RevokedCertInfo with the contents of the current entry */
+        RevokedCertInfo get() {
+            return new RevokedCertInfo(isFlagSet(FLAG_NO_FINGERPRINT) ? null : copy(fingerprints, getFingerprintOffset(), getFingerprintLength()),
+                    isFlagSet(FLAG_NO_SERIAL_NUMBER) ? null : copy(serialNumbers, getSerialNumberOffset(), getSerialNumberLength()),
+                    getRevocationDate(), getReason(), getExpireDate(), isInvalidityDateSet() ? Long.valueOf(getInvalidityDate()) : null);
+        }
+
+        private boolean isFlagSet(final byte flag) {
+            return (flags[index] & flag) != 0;
+        }
+
+        private byte[] copy(final byte[] array, final int offset, final int length) {
+            return Arrays.copyOfRange(array, offset, offset + length);
+        }
+
+        /** @return the serial number of the current entry, or null if it has none */
+        public BigInteger getSerialNumber() {
+            return isFlagSet(FLAG_NO_SERIAL_NUMBER) ? null : new BigInteger(serialNumbers, getSerialNumberOffset(), getSerialNumberLength());
+        }
+
+        /** @return the array holding the serial number of the current entry in two's complement form */
+        byte[] getSerialNumberData() {
+            return serialNumbers;
+        }
+
+        /** @return the offset of the serial number of the current entry in {@link #getSerialNumberData()} */
+        int getSerialNumberOffset() {
+            return index == 0 ? 0 : serialNumberEnds[index - 1];
+        }
+
+        /** @return the length of the serial number of the current entry, or 0 if it has none */
+        int getSerialNumberLength() {
+            return serialNumberEnds[index] - getSerialNumberOffset();
+        }
+
+        private int getFingerprintOffset() {
+            return index == 0 ? 0 : fingerprintEnds[index - 1];
+        }
+
+        private int getFingerprintLength() {
+            return fingerprintEnds[index] - getFingerprintOffset();
+        }
+
+        /** @return the fingerprint of the current entry, or null if it has none */
+        public String getCertificateFingerprint() {
+            return isFlagSet(FLAG_NO_FINGERPRINT) ? null : new String(fingerprints, getFingerprintOffset(), getFingerprintLength());
+        }
+
+        /** @return the revocation date of the current entry in milliseconds since epoch */
+        public long getRevocationDate() {
+            return revocationDates[index];
+        }
+
+        /** @return the revocation reason of the current entry */
+        public int getReason() {
+            return reasons[index];
+        }
+
+        /** @return the expiration date of the certificate of the current entry in milliseconds since epoch */
+        public long getExpireDate() {
+            return expireDates[index];
+        }
+
+        /** @return true if the current entry has an invalidity date */
+        public boolean isInvalidityDateSet() {
+            return isFlagSet(FLAG_INVALIDITY_DATE);
+        }
+
+        /** @return the invalidity date of the current entry in milliseconds since epoch. Only valid if {@link #isInvalidityDateSet()}. */
+        public long getInvalidityDate() {
+            return invalidityDates[index];
+        }
+
+        @Override
+        public String toString() {
+            return "RevokedCertInfoCollection.Cursor(" + getSerialNumber() + ", " + new Date(getRevocationDate()) + ", " + getReason() + ")";
+        }
+    }
+
+    private void writeObject(final ObjectOutputStream out) throws IOException {
+        out.defaultWriteObject();
+        out.writeInt(size);
+        long previousRevocationDate = 0;
+        long previousExpireDate = 0;
+        long previousInvalidityDate = 0;
+        for (int i = 0; i < size; i++) {
+            final int serialNumberStart = i == 0 ? 0 : serialNumberEnds[i - 1];
+            final int fingerprintStart = i == 0 ? 0 : fingerprintEnds[i - 1];
+            out.writeByte(flags[i]);
+            out.writeByte(reasons[i]);
+            writeVarLong(out, serialNumberEnds[i] - serialNumberStart);
+            out.write(serialNumbers, serialNumberStart, serialNumberEnds[i] - serialNumberStart);
+            writeVarLong(out, fingerprintEnds[i] - fingerprintStart);
+            out.write(fingerprints, fingerprintStart, fingerprintEnds[i] - fingerprintStart);
+            writeVarLong(out, zigZag(revocationDates[i] - previousRevocationDate));
+            previousRevocationDate = revocationDates[i];
+            writeVarLong(out, zigZag(expireDates[i] - previousExpireDate));
+            previousExpireDate = expireDates[i];
+            if ((flags[i] & FLAG_INVALIDITY_DATE) != 0) {
+                writeVarLong(out, zigZag(invalidityDates[i] - previousInvalidityDate));
+                previousInvalidityDate = invalidityDates[i];
+            }
+        }
+    }
+
+    private void readObject(final ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        final int count = in.readInt();
+        if (count < 0) {
+            throw new InvalidObjectException("Negative size " + count);
+        }
+        // Don't trust the size for the initial allocation, the arrays grow as the entries are read
+        allocate(Math.min(Math.max(count, 1), 65536), 0, 0);
+        long revocationDate = 0;
+        long expireDate = 0;
+        long invalidityDate = 0;
+        for (int i = 0; i < count; i++) {
+            final byte entryFlags = in.readByte();
+            final byte reason = in.readByte();
+            final byte[] serialNumber = readBytes(in);
+            final byte[] fingerprint = readBytes(in);
+            revocationDate += unZigZag(readVarLong(in));
+            expireDate += unZigZag(readVarLong(in));
+            final boolean hasInvalidityDate = (entryFlags & FLAG_INVALIDITY_DATE) != 0;
+            if (hasInvalidityDate) {
+                invalidityDate += unZigZag(readVarLong(in));
+            }
+            add((entryFlags & FLAG_NO_FINGERPRINT) != 0 ? null : fingerprint, (entryFlags & FLAG_NO_SERIAL_NUMBER) != 0 ? null : serialNumber,
+                    revocationDate, reason, expireDate, hasInvalidityDate ? Long.valueOf(invalidityDate) : null);
+        }
+        closeForWrite();
+    }
+
+    private static byte[] readBytes(final ObjectInputStream in) throws IOException {
+        final long length = readVarLong(in);
+        if (length < 0 || length > 1024) {
+            throw new InvalidObjectException("Invalid length " + length);
+        }
+        final byte[] bytes = new byte[(int) length];
+        in.readFully(bytes);
+        return bytes;
+    }
+
+    private static void writeVarLong(final ObjectOutputStream out, long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            out.writeByte((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.writeByte((int) value);
+    }
+
+    private static long readVarLong(final ObjectInputStream in) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            final byte b = in.readByte();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new InvalidObjectException("Too long variable length number");
+    }
+
+    private static long zigZag(final long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private static long unZigZag(final long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+}
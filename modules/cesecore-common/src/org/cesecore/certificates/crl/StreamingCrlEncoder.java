@@ -0,0 +1,389 @@
+/*************************************************************************
+ *                                                                       *
+ *  CESeCore: CE Security Core                                           *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.cesecore.certificates.crl;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.SignatureException;
+import java.util.Date;
+import java.util.Iterator;
+
+import org.apache.log4j.Logger;
+import org.bouncycastle.asn1.ASN1EncodableVector;
+import org.bouncycastle.asn1.ASN1Encoding;
+import org.bouncycastle.asn1.ASN1GeneralizedTime;
+import org.bouncycastle.asn1.ASN1Integer;
+import org.bouncycastle.asn1.DERBitString;
+import org.bouncycastle.asn1.DERSequence;
+import org.bouncycastle.asn1.DERTaggedObject;
+import org.bouncycastle.asn1.x500.X500Name;
+import org.bouncycastle.asn1.x509.AlgorithmIdentifier;
+import org.bouncycastle.asn1.x509.CRLReason;
+import org.bouncycastle.asn1.x509.Extension;
+import org.bouncycastle.asn1.x509.Extensions;
+import org.bouncycastle.asn1.x509.ExtensionsGenerator;
+import org.bouncycastle.asn1.x509.Time;
+import org.bouncycastle.operator.ContentSigner;
+import org.bouncycastle.operator.ContentVerifier;
+
+/**
+ * Writes a DER encoded X.509 CRL without holding the revoked certificates in memory. The entries are read once from an
+ * iterator and encoded one at a time to a temporary file, whose contents are then streamed through the signer and copied
+ * to the output. The encoding is identical to that of BouncyCastle's X509v2CRLBuilder.
+ * <p>
+ * An instance writes one CRL.
+ *
+ * @version $Id$
+ */
+public final class StreamingCrlEncoder {
+
+    private static final Logger log = Logger.getLogger(StreamingCrlEncoder.class);
+
+    private static final int SEQUENCE = 0x30;
+    private static final int BUFFER_SIZE = 65536;
+    /** Longer serial numbers are left to BouncyCastle. RFC 5280 allows at most 20 octets. */
+    private static final int MAX_SERIAL_NUMBER_LENGTH = 64;
+    /** Extension ::= SEQUENCE { extnID 2.5.29.21, extnValue OCTET STRING { ENUMERATED } }, followed by the reason */
+    private static final byte[] REASON_CODE_EXTENSION_PREFIX = { 0x30, 0x0a, 0x06, 0x03, 0x55, 0x1d, 0x15, 0x04, 0x03, 0x0a, 0x01 };
+    private static final int REASON_CODE_EXTENSION_LENGTH = REASON_CODE_EXTENSION_PREFIX.length + 1;
+    /** Extension ::= SEQUENCE { extnID 2.5.29.24, extnValue OCTET STRING { GeneralizedTime } }, followed by the time */
+    private static final byte[] INVALIDITY_DATE_EXTENSION_PREFIX = { 0x30, 0x18, 0x06, 0x03, 0x55, 0x1d, 0x18, 0x04, 0x11 };
+    private static final int INVALIDITY_DATE_EXTENSION_LENGTH = INVALIDITY_DATE_EXTENSION_PREFIX.length + 17;
+    static final int MAX_ENTRY_LENGTH = 3 + 2 + MAX_SERIAL_NUMBER_LENGTH + 17 + 2 + REASON_CODE_EXTENSION_LENGTH + INVALIDITY_DATE_EXTENSION_LENGTH;
+
+    private final X500Name issuer;
+    private final Time thisUpdate;
+    private final Time nextUpdate;
+    private final Extensions extensions;
+    private long entryCount;
+    private long length;
+
+    /**
+     * @param issuer the name of the CA issuing the CRL
+     * @param thisUpdate the thisUpdate time of the CRL
+     * @param nextUpdate the nextUpdate time of the CRL, or null to leave it out
+     * @param extensions the CRL extensions, or null if there are none
+     */
+    public StreamingCrlEncoder(final X500Name issuer, final Date thisUpdate, final Date nextUpdate, final Extensions extensions) {
+        this.issuer = issuer;
+        this.thisUpdate = new Time(thisUpdate);
+        this.nextUpdate = nextUpdate == null ? null : new Time(nextUpdate);
+        this.extensions = extensions;
+    }
+
+    /**
+     * Encodes, signs and writes the CRL.
+     *
+     * @param entries the revoked certificates, read only once. If this is the iterator of a {@link RevokedCertInfoCollection}, the entries
+     *      are encoded without creating any objects per entry.
+     * @param signer signs the CRL. The to-be-signed part is written to it as a stream.
+     * @param verifier if not null, the signature is verified with this before the CRL is written
+     * @param out where the CRL is written. It is not closed.
+     * @throws IOException if the entries can't be buffered, or the CRL can't be written
+     * @throws SignatureException if the signature of the CRL could not be verified
+     */
+    public void encode(final Iterator<RevokedCertInfo> entries, final ContentSigner signer, final ContentVerifier verifier, final OutputStream out)
+            throws IOException, SignatureException {
+        final Path entriesFile = Files.createTempFile("crlentries", ".der");
+        try {
+            long entriesLength = 0;
+            try (final OutputStream entriesOut = new BufferedOutputStream(Files.newOutputStream(entriesFile), BUFFER_SIZE)) {
+                if (entries instanceof RevokedCertInfoCollection.Cursor) {
+                    // Encode the entries directly from the columns of the collection
+                    final RevokedCertInfoCollection.Cursor cursor = (RevokedCertInfoCollection.Cursor) entries;
+                    final byte[] buffer = new byte[MAX_ENTRY_LENGTH];
+                    while (cursor.advance()) {
+                        final int entryLength = encodeEntry(cursor, buffer);
+                        if (entryLength != -1) {
+                            entriesOut.write(buffer, 0, entryLength);
+                            entriesLength += entryLength;
+                        } else {
+                            final byte[] entry = encodeEntry(cursor.get());
+                            entriesOut.write(entry);
+                            entriesLength += entry.length;
+                        }
+                        entryCount++;
+                    }
+                } else {
+                    while (entries.hasNext()) {
+                        final byte[] entry = encodeEntry(entries.next());
+                        entriesOut.write(entry);
+                        entriesLength += entry.length;
+                        entryCount++;
+                    }
+                }
+            }
+            if (log.isDebugEnabled()) {
+                log.debug("Encoded " + entryCount + " CRL entries into " + entriesLength + " bytes.");
+            }
+            final AlgorithmIdentifier signatureAlgorithm = signer.getAlgorithmIdentifier();
+            final byte[] signatureAlgorithmBytes = signatureAlgorithm.getEncoded(ASN1Encoding.DER);
+            final ASN1EncodableVector header = new ASN1EncodableVector();
+            header.add(new ASN1Integer(1));
+            header.add(signatureAlgorithm);
+            header.add(issuer);
+            header.add(thisUpdate);
+            if (nextUpdate != null) {
+                header.add(nextUpdate);
+            }
+            // The fields of the to-be-signed SEQUENCE before and after the list of revoked certificates
+            final byte[] prefix = getContents(new DERSequence(header).getEncoded(ASN1Encoding.DER));
+            final byte[] suffix = extensions == null ? new byte[0] : new DERTaggedObject(true, 0, extensions).getEncoded(ASN1Encoding.DER);
+            final byte[] entriesHeader = entryCount == 0 ? new byte[0] : getHeader(SEQUENCE, entriesLength);
+            final long tbsContentLength = prefix.length + entriesHeader.length + (entryCount == 0 ? 0 : entriesLength) + suffix.length;
+            final byte[] tbsHeader = getHeader(SEQUENCE, tbsContentLength);
+            final long tbsLength = tbsHeader.length + tbsContentLength;
+
+            try (final OutputStream signerOut = signer.getOutputStream()) {
+                final OutputStream tbsOut = verifier == null ? signerOut : new TeeOutputStream(signerOut, verifier.getOutputStream());
+                writeTbs(tbsOut, tbsHeader, prefix, entriesHeader, entriesFile, suffix);
+            }
+            final byte[] signature = signer.getSignature();
+            if (verifier != null && !verifier.verify(signature)) {
+                throw new SignatureException("The signature of the CRL could not be verified.");
+            }
+            final byte[] signatureBytes = new DERBitString(signature).getEncoded(ASN1Encoding.DER);
+            final byte[] crlHeader = getHeader(SEQUENCE, tbsLength + signatureAlgorithmBytes.length + signatureBytes.length);
+            out.write(crlHeader);
+            writeTbs(out, tbsHeader, prefix, entriesHeader, entriesFile, suffix);
+            out.write(signatureAlgorithmBytes);
+            out.write(signatureBytes);
+            out.flush();
+            length = crlHeader.length + tbsLength + signatureAlgorithmBytes.length + signatureBytes.length;
+        } finally {
+            Files.deleteIfExists(entriesFile);
+        }
+    }
+
+    private void writeTbs(final OutputStream out, final byte[] tbsHeader, final byte[] prefix, final byte[] entriesHeader, final Path entriesFile,
+            final byte[] suffix) throws IOException {
+        out.write(tbsHeader);
+        out.write(prefix);
+        if (entryCount > 0) {
+            out.write(entriesHeader);
+            try (final InputStream in = new BufferedInputStream(Files.newInputStream(entriesFile), BUFFER_SIZE)) {
+                final byte[] buffer = new byte[BUFFER_SIZE];
+                int read;
+                while ((read = in.read(buffer)) != -1) {
+                    out.write(buffer, 0, read);
+                }
+            }
+        }
+        out.write(suffix);
+    }
+
+    /** @return the DER encoding of a CRL entry, the same as X509v2CRLBuilder.addCRLEntry produces */
+    static byte[] encodeEntry(final RevokedCertInfo entry) throws IOException {
+        final ASN1EncodableVector fields = new ASN1EncodableVector(3);
+        fields.add(new ASN1Integer(entry.getUserCertificate()));
+        fields.add(new Time(entry.getRevocationDate()));
+        final int reason = entry.getReason();
+        final Date invalidityDate = entry.getInvalidityDate();
+        if (reason != 0 || invalidityDate != null) {
+            final ExtensionsGenerator extensionsGenerator = new ExtensionsGenerator();
+            if (reason != 0) {
+                extensionsGenerator.addExtension(Extension.reasonCode, false, CRLReason.lookup(reason));
+            }
+            if (invalidityDate != null) {
+                extensionsGenerator.addExtension(Extension.invalidityDate, false, new ASN1GeneralizedTime(invalidityDate));
+            }
+            fields.add(extensionsGenerator.generate());
+        }
+        return new DERSequence(fields).getEncoded(ASN1Encoding.DER);
+    }
+
+    /**
+     * Encodes the current entry of a cursor into a buffer, with the same result as {@link #encodeEntry(RevokedCertInfo)}.
+     *
+     * @param cursor positioned on the entry to encode
+     * @param buffer at least {@link #MAX_ENTRY_LENGTH} bytes long
+     * @return the length of the encoding, or -1 if the entry has to be encoded with {@link #encodeEntry(RevokedCertInfo)} instead,
+     *      because it has an unusual serial number, date or reason
+     */
+    static int encodeEntry(final RevokedCertInfoCollection.Cursor cursor, final byte[] buffer) {
+        final int serialNumberLength = cursor.getSerialNumberLength();
+        final int reason = cursor.getReason();
+        final long revocationDate = cursor.getRevocationDate();
+        final boolean hasInvalidityDate = cursor.isInvalidityDateSet();
+        final long invalidityDate = cursor.getInvalidityDate();
+        if (serialNumberLength == 0 || serialNumberLength > MAX_SERIAL_NUMBER_LENGTH || reason < 0 || reason > 127
+                || !isEncodableYear(getYear(revocationDate)) || (hasInvalidityDate && !isEncodableYear(getYear(invalidityDate)))) {
+            return -1;
+        }
+        final boolean utcTime = getYear(revocationDate) <= 2049;
+        final int extensionsLength = (reason != 0 ? REASON_CODE_EXTENSION_LENGTH : 0) + (hasInvalidityDate ? INVALIDITY_DATE_EXTENSION_LENGTH : 0);
+        final int contentLength = 2 + serialNumberLength + (utcTime ? 15 : 17) + (extensionsLength == 0 ? 0 : 2 + extensionsLength);
+        int pos = 0;
+        buffer[pos++] = SEQUENCE;
+        if (contentLength >= 0x80) {
+            buffer[pos++] = (byte) 0x81;
+        }
+        buffer[pos++] = (byte) contentLength;
+        buffer[pos++] = 0x02; // INTEGER
+        buffer[pos++] = (byte) serialNumberLength;
+        System.arraycopy(cursor.getSerialNumberData(), cursor.getSerialNumberOffset(), buffer, pos, serialNumberLength);
+        pos += serialNumberLength;
+        pos = writeTime(buffer, pos, revocationDate, utcTime);
+        if (extensionsLength != 0) {
+            buffer[pos++] = SEQUENCE;
+            buffer[pos++] = (byte) extensionsLength;
+            if (reason != 0) {
+                System.arraycopy(REASON_CODE_EXTENSION_PREFIX, 0, buffer, pos, REASON_CODE_EXTENSION_PREFIX.length);
+                pos += REASON_CODE_EXTENSION_PREFIX.length;
+                buffer[pos++] = (byte) reason;
+            }
+            if (hasInvalidityDate) {
+                System.arraycopy(INVALIDITY_DATE_EXTENSION_PREFIX, 0, buffer, pos, INVALIDITY_DATE_EXTENSION_PREFIX.length);
+                pos += INVALIDITY_DATE_EXTENSION_PREFIX.length;
+                pos = writeTime(buffer, pos, invalidityDate, false);
+            }
+        }
+        return pos;
+    }
+
+    /** Years before 1950 are left to BouncyCastle, since the Julian calendar is used for old dates when formatting them. */
+    private static boolean isEncodableYear(final long year) {
+        return year >= 1950 && year <= 9999;
+    }
+
+    /** @return the year in UTC of a time in milliseconds since epoch, in the proleptic Gregorian calendar */
+    private static long getYear(final long time) {
+        return getCivilDate(Math.floorDiv(time, 86400000L))[0];
+    }
+
+    /**
+     * Writes a UTCTime or a GeneralizedTime in whole seconds, as BouncyCastle's Time and ASN1GeneralizedTime do.
+     *
+     * @return the position after the written time
+     */
+    private static int writeTime(final byte[] buffer, int pos, final long time, final boolean utcTime) {
+        final long seconds = Math.floorDiv(time, 1000L);
+        final long days = Math.floorDiv(seconds, 86400L);
+        final int secondOfDay = (int) (seconds - days * 86400L);
+        final long[] date = getCivilDate(days);
+        buffer[pos++] = (byte) (utcTime ? 0x17 : 0x18);
+        buffer[pos++] = (byte) (utcTime ? 13 : 15);
+        if (!utcTime) {
+            pos = writeDigits(buffer, pos, (int) (date[0] / 100));
+        }
+        pos = writeDigits(buffer, pos, (int) (date[0] % 100));
+        pos = writeDigits(buffer, pos, (int) date[1]);
+        pos = writeDigits(buffer, pos, (int) date[2]);
+        pos = writeDigits(buffer, pos, secondOfDay / 3600);
+        pos = writeDigits(buffer, pos, secondOfDay / 60 % 60);
+        pos = writeDigits(buffer, pos, secondOfDay % 60);
+        buffer[pos++] = 'Z';
+        return pos;
+    }
+
+    private static int writeDigits(final byte[] buffer, int pos, final int value) {
+        buffer[pos++] = (byte) ('0' + value / 10);
+        buffer[pos++] = (byte) ('0' + value % 10);
+        return pos;
+    }
+
+    /**
+     * Converts days since epoch to year, month and day, see "chrono-Compatible Low-Level Date Algorithms" by Howard Hinnant.
+     * The array is small enough to be allocated on the stack after escape analysis.
+     */
+    private static long[] getCivilDate(final long epochDay) {
+        final long z = epochDay + 719468;
+        final long era = Math.floorDiv(z, 146097);
+        final long dayOfEra = z - era * 146097;
+        final long yearOfEra = (dayOfEra - dayOfEra / 1460 + dayOfEra / 36524 - dayOfEra / 146096) / 365;
+        final long dayOfYear = dayOfEra - (365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100);
+        final long mp = (5 * dayOfYear + 2) / 153;
+        final long day = dayOfYear - (153 * mp + 2) / 5 + 1;
+        final long month = mp < 10 ? mp + 3 : mp - 9;
+        return new long[] { yearOfEra + era * 400 + (month <= 2 ? 1 : 0), month, day };
+    }
+
+    /** @return the contents of a DER encoded element, without its tag and length */
+    private static byte[] getContents(final byte[] encoded) {
+        final int lengthOctets = (encoded[1] & 0x80) == 0 ? 1 : 1 + (encoded[1] & 0x7f);
+        final byte[] contents = new byte[encoded.length - 1 - lengthOctets];
+        System.arraycopy(encoded, 1 + lengthOctets, contents, 0, contents.length);
+        return contents;
+    }
+
+    /** @return the DER tag and length octets of an element with contents of the given length */
+    static byte[] getHeader(final int tag, final long contentLength) {
+        if (contentLength < 0x80) {
+            return new byte[] { (byte) tag, (byte) contentLength };
+        }
+        int lengthOctets = 1;
+        while ((contentLength >>> (8 * lengthOctets)) != 0) {
+            lengthOctets++;
+        }
+        final byte[] header = new byte[2 + lengthOctets];
+        header[0] = (byte) tag;
+        header[1] = (byte) (0x80 | lengthOctets);
+        for (int i = 0; i < lengthOctets; i++) {
+            header[2 + i] = (byte) (contentLength >>> (8 * (lengthOctets - 1 - i)));
+        }
+        return header;
+    }
+
+    /** @return the name of the CA issuing the CRL */
+    public X500Name getIssuer() {
+        return issuer;
+    }
+
+    /** @return the thisUpdate time of the CRL as encoded, i.e. in whole seconds */
+    public Date getThisUpdate() {
+        return thisUpdate.getDate();
+    }
+
+    /** @return the nextUpdate time of the CRL as encoded, or null if it is left out */
+    public Date getNextUpdate() {
+        return nextUpdate == null ? null : nextUpdate.getDate();
+    }
+
+    /** @return the number of revoked certificates written to the CRL */
+    public long getEntryCount() {
+        return entryCount;
+    }
+
+    /** @return the length of the encoded CRL in bytes, after it has been written */
+    public long getLength() {
+        return length;
+    }
+
+    /** Writes to two streams, without closing the second one. */
+    private static final class TeeOutputStream extends OutputStream {
+        private final OutputStream first;
+        private final OutputStream second;
+
+        private TeeOutputStream(final OutputStream first, final OutputStream second) {
+            this.first = first;
+            this.second = second;
+        }
+
+        @Override
+        public void write(final int b) throws IOException {
+            first.write(b);
+            second.write(b);
+        }
+
+        @Override
+        public void write(final byte[] b, final int off, final int len) throws IOException {
+            first.write(b, off, len);
+            second.write(b, off, len);
+        }
+    }
+}
@@ -0,0 +1,473 @@
+/*************************************************************************
+ *                                                                       *
+ *  CESeCore: CE Security Core                                           *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.cesecore.certificates.crl;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.math.BigInteger;
+import java.security.SignatureException;
+import java.security.cert.CRLException;
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+
+import org.apache.log4j.Logger;
+import org.bouncycastle.asn1.ASN1BitString;
+import org.bouncycastle.asn1.ASN1Enumerated;
+import org.bouncycastle.asn1.ASN1GeneralizedTime;
+import org.bouncycastle.asn1.ASN1Integer;
+import org.bouncycastle.asn1.ASN1Primitive;
+import org.bouncycastle.asn1.ASN1TaggedObject;
+import org.bouncycastle.asn1.DERIA5String;
+import org.bouncycastle.asn1.x500.X500Name;
+import org.bouncycastle.asn1.x509.AlgorithmIdentifier;
+import org.bouncycastle.asn1.x509.CRLNumber;
+import org.bouncycastle.asn1.x509.DistributionPointName;
+import org.bouncycastle.asn1.x509.Extension;
+import org.bouncycastle.asn1.x509.Extensions;
+import org.bouncycastle.asn1.x509.GeneralName;
+import org.bouncycastle.asn1.x509.GeneralNames;
+import org.bouncycastle.asn1.x509.IssuingDistributionPoint;
+import org.bouncycastle.asn1.x509.TBSCertList;
+import org.bouncycastle.asn1.x509.Time;
+import org.bouncycastle.operator.ContentVerifier;
+import org.bouncycastle.operator.ContentVerifierProvider;
+import org.bouncycastle.operator.OperatorCreationException;
+
+/**
+ * Reads a DER encoded X.509 CRL from a stream without holding the revoked certificates in memory. The counterpart of
+ * {@link StreamingCrlEncoder}.
+ * <p>
+ * The fields before the revoked certificates are read by {@link #readHeader()}, the revoked certificates are then read in
+ * chunks by {@link #readEntries(int)}, and the CRL extensions and the signature by {@link #readTrailer()}. If a verifier
+ * is given, the to-be-signed part is passed through it while it is read, and {@link #readTrailer()} verifies the signature.
+ * Since the CRL number and the delta CRL indicator are at the end of the CRL, and the signature can only be verified when all
+ * of it has been read, a CRL that is to be applied is normally read twice: first with {@link #parse()} to verify it and read
+ * its extensions, then again to read its entries.
+ * <p>
+ * An instance reads one CRL, and does not close the stream.
+ *
+ * @version $Id$
+ */
+public final class StreamingCrlParser {
+
+    private static final Logger log = Logger.getLogger(StreamingCrlParser.class);
+
+    private static final int INTEGER = 0x02;
+    private static final int BIT_STRING = 0x03;
+    private static final int UTC_TIME = 0x17;
+    private static final int GENERALIZED_TIME = 0x18;
+    private static final int SEQUENCE = 0x30;
+    private static final int EXTENSIONS = 0xa0;
+    private static final int BUFFER_SIZE = 65536;
+    /** No single field of a CRL, other than the list of revoked certificates, should be anywhere near this long */
+    private static final int MAX_ELEMENT_LENGTH = 16 * 1024 * 1024;
+
+    private final InputStream in;
+    private final ContentVerifierProvider verifierProvider;
+    /** Where the to-be-signed part is written while it is read, or null */
+    private OutputStream tbsOut;
+    /** Holds the start of the to-be-signed part until the signature algorithm is known */
+    private ByteArrayOutputStream tbsStart;
+    private ContentVerifier verifier;
+    private long position;
+    private long tbsEnd;
+    private long entriesEnd;
+    private boolean headerRead;
+    private boolean trailerRead;
+
+    private AlgorithmIdentifier signatureAlgorithm;
+    private X500Name issuer;
+    private Date thisUpdate;
+    private Date nextUpdate;
+    private Extensions extensions;
+    private long entryCount;
+
+    /**
+     * @param in the DER encoded CRL
+     * @param verifierProvider provides the verifier of the signature of the CRL, i.e. the public key of the CA, or null to not verify the signature
+     */
+    public StreamingCrlParser(final InputStream in, final ContentVerifierProvider verifierProvider) {
+        this.in = new BufferedInputStream(in, BUFFER_SIZE);
+        this.verifierProvider = verifierProvider;
+    }
+
+    /**
+     * Reads the whole CRL, and verifies its signature if there is a verifier. The revoked certificates are counted but not decoded.
+     *
+     * @return this parser, with all fields except the revoked certificates read
+     * @throws CRLException if the CRL is not a well formed DER encoded CRL
+     * @throws IOException if the CRL could not be read
+     * @throws SignatureException if the signature of the CRL is not valid
+     */
+    public StreamingCrlParser parse() throws CRLException, IOException, SignatureException {
+        readHeader();
+        readTrailer();
+        return this;
+    }
+
+    /**
+     * Reads the fields of the CRL before the revoked certificates.
+     *
+     * @throws CRLException if the CRL is not a well formed DER encoded CRL
+     * @throws IOException if the CRL could not be read
+     * @throws SignatureException if the signature algorithm of the CRL is not supported by the verifier
+     */
+    public void readHeader() throws CRLException, IOException, SignatureException {
+        if (headerRead) {
+            return;
+        }
+        headerRead = true;
+        try {
+            readHeaderFields();
+        } catch (IllegalArgumentException | ArithmeticException e) {
+            throw new CRLException("Malformed CRL: " + e.getMessage(), e);
+        }
+    }
+
+    private void readHeaderFields() throws CRLException, IOException, SignatureException {
+        readHeader(SEQUENCE);
+        if (verifierProvider != null) {
+            tbsStart = new ByteArrayOutputStream();
+            tbsOut = tbsStart;
+        }
+        tbsEnd = readHeader(SEQUENCE) + position;
+        byte[] element = readElement();
+        if ((element[0] & 0xff) == INTEGER) {
+            final int version = ASN1Integer.getInstance(toPrimitive(element)).intValueExact();
+            if (version != 1) {
+                throw new CRLException("Unsupported CRL version " + (version + 1) + ".");
+            }
+            element = readElement();
+        }
+        signatureAlgorithm = AlgorithmIdentifier.getInstance(toPrimitive(element));
+        if (verifierProvider != null) {
+            try {
+                verifier = verifierProvider.get(signatureAlgorithm);
+            } catch (OperatorCreationException e) {
+                throw new SignatureException("Unsupported CRL signature algorithm " + signatureAlgorithm.getAlgorithm().getId() + ".", e);
+            }
+            tbsOut = verifier.getOutputStream();
+            tbsOut.write(tbsStart.toByteArray());
+            tbsStart = null;
+        }
+        issuer = X500Name.getInstance(toPrimitive(readElement()));
+        thisUpdate = Time.getInstance(toPrimitive(readElement())).getDate();
+        int tag = peekTbsTag();
+        if (tag == UTC_TIME || tag == GENERALIZED_TIME) {
+            nextUpdate = Time.getInstance(toPrimitive(readElement())).getDate();
+            tag = peekTbsTag();
+        }
+        if (tag == SEQUENCE) {
+            entriesEnd = readHeader(SEQUENCE) + position;
+        } else {
+            entriesEnd = position;
+        }
+    }
+
+    /**
+     * Reads the next revoked certificates of the CRL. The fingerprints and expire dates of the returned entries are not set, since they are
+     * not on the CRL.
+     *
+     * @param maxEntries the maximum number of entries to read
+     * @return the entries, or an empty list if all have been read
+     * @throws CRLException if the CRL is not a well formed DER encoded CRL
+     * @throws IOException if the CRL could not be read
+     * @throws SignatureException if the signature algorithm of the CRL is not supported by the verifier
+     */
+    public List<RevokedCertInfo> readEntries(final int maxEntries) throws CRLException, IOException, SignatureException {
+        readHeader();
+        if (position >= entriesEnd) {
+            return Collections.emptyList();
+        }
+        final List<RevokedCertInfo> entries = new ArrayList<>(maxEntries);
+        while (entries.size() < maxEntries && position < entriesEnd) {
+            try {
+                entries.add(toRevokedCertInfo(TBSCertList.CRLEntry.getInstance(toPrimitive(readElement(SEQUENCE)))));
+            } catch (IllegalArgumentException | ArithmeticException e) {
+                throw new CRLException("Malformed entry in the CRL: " + e.getMessage(), e);
+            }
+            entryCount++;
+        }
+        return entries;
+    }
+
+    /**
+     * Skips the revoked certificates that have not been read, and reads the CRL extensions and the signature. The signature is verified if
+     * there is a verifier.
+     *
+     * @throws CRLException if the CRL is not a well formed DER encoded CRL
+     * @throws IOException if the CRL could not be read
+     * @throws SignatureException if the signature of the CRL is not valid
+     */
+    public void readTrailer() throws CRLException, IOException, SignatureException {
+        readHeader();
+        if (trailerRead) {
+            return;
+        }
+        trailerRead = true;
+        while (position < entriesEnd) {
+            // Only the length of each entry is needed to skip it
+            skipContents(readHeader(SEQUENCE));
+            entryCount++;
+        }
+        final ASN1BitString signature;
+        try {
+            if (position < tbsEnd) {
+                final ASN1TaggedObject taggedExtensions = ASN1TaggedObject.getInstance(toPrimitive(readElement(EXTENSIONS)));
+                extensions = Extensions.getInstance(taggedExtensions.getExplicitBaseObject());
+            }
+            if (position != tbsEnd) {
+                throw new CRLException("Unexpected data at the end of the to-be-signed part of the CRL.");
+            }
+            tbsOut = null;
+            final AlgorithmIdentifier outerSignatureAlgorithm = AlgorithmIdentifier.getInstance(toPrimitive(readElement(SEQUENCE)));
+            if (!outerSignatureAlgorithm.equals(signatureAlgorithm)) {
+                throw new CRLException("Signature algorithm mismatch in the CRL.");
+            }
+            signature = ASN1BitString.getInstance(toPrimitive(readElement(BIT_STRING)));
+        } catch (IllegalArgumentException e) {
+            throw new CRLException("Malformed CRL: " + e.getMessage(), e);
+        }
+        if (verifier != null) {
+            verifier.getOutputStream().close();
+            if (!verifier.verify(signature.getOctets())) {
+                throw new SignatureException("The signature of the CRL could not be verified.");
+            }
+        }
+        if (log.isDebugEnabled()) {
+            log.debug("Read CRL of '" + issuer + "' with " + entryCount + " entries in " + position + " bytes.");
+        }
+    }
+
+    private RevokedCertInfo toRevokedCertInfo(final TBSCertList.CRLEntry crlEntry) {
+        final BigInteger serialNumber = crlEntry.getUserCertificate().getValue();
+        int reasonCode = RevokedCertInfo.REVOCATION_REASON_UNSPECIFIED;
+        Long invalidityDate = null;
+        final Extensions entryExtensions = crlEntry.getExtensions();
+        if (entryExtensions != null) {
+            final Extension reasonCodeExtension = entryExtensions.getExtension(Extension.reasonCode);
+            if (reasonCodeExtension != null) {
+                reasonCode = ASN1Enumerated.getInstance(reasonCodeExtension.getParsedValue()).intValueExact();
+            }
+            final Extension invalidityDateExtension = entryExtensions.getExtension(Extension.invalidityDate);
+            if (invalidityDateExtension != null) {
+                try {
+                    invalidityDate = ASN1GeneralizedTime.getInstance(invalidityDateExtension.getParsedValue()).getDate().getTime();
+                } catch (ParseException | IllegalArgumentException e) {
+                    log.info("Failed to parse invalidityDate for crl entry with serial number " + serialNumber);
+                }
+            }
+            final Extension certificateIssuerExtension = entryExtensions.getExtension(Extension.certificateIssuer);
+            if (certificateIssuerExtension != null) {
+                for (final GeneralName name : GeneralNames.getInstance(certificateIssuerExtension.getParsedValue()).getNames()) {
+                    if (name.getTagNo() == GeneralName.directoryName && !issuer.equals(X500Name.getInstance(name.getName()))) {
+                        log.warn("CRL issuer does not match CRL entry's issuerDn '" + name.getName() + "' of entry with serialNumber " + serialNumber + ".");
+                    }
+                }
+            }
+        }
+        return new RevokedCertInfo(null, serialNumber.toByteArray(), crlEntry.getRevocationDate().getDate().getTime(), reasonCode, 0, invalidityDate);
+    }
+
+    /** @return the signature algorithm of the CRL */
+    public AlgorithmIdentifier getSignatureAlgorithm() {
+        return signatureAlgorithm;
+    }
+
+    /** @return the name of the CA that issued the CRL */
+    public X500Name getIssuer() {
+        return issuer;
+    }
+
+    /** @return the thisUpdate time of the CRL */
+    public Date getThisUpdate() {
+        return thisUpdate;
+    }
+
+    /** @return the nextUpdate time of the CRL, or null if it is left out */
+    public Date getNextUpdate() {
+        return nextUpdate;
+    }
+
+    /** @return the CRL extensions, or null if there are none or the trailer has not been read */
+    public Extensions getExtensions() {
+        return extensions;
+    }
+
+    /** @return the number of revoked certificates that have been read or skipped */
+    public long getEntryCount() {
+        return entryCount;
+    }
+
+    /** @return the CRL number, or 0 if the CRL has no CRL number extension */
+    public BigInteger getCrlNumber() {
+        final Extension crlNumber = extensions == null ? null : extensions.getExtension(Extension.cRLNumber);
+        return crlNumber == null ? BigInteger.ZERO : CRLNumber.getInstance(crlNumber.getParsedValue()).getCRLNumber();
+    }
+
+    /** @return the base CRL number of a delta CRL, or -1 if the CRL has no delta CRL indicator extension */
+    public BigInteger getDeltaCrlIndicator() {
+        final Extension deltaCrlIndicator = extensions == null ? null : extensions.getExtension(Extension.deltaCRLIndicator);
+        return deltaCrlIndicator == null ? BigInteger.valueOf(-1) : CRLNumber.getInstance(deltaCrlIndicator.getParsedValue()).getCRLNumber();
+    }
+
+    /** @return true if the CRL is a delta CRL */
+    public boolean isDeltaCrl() {
+        return extensions != null && extensions.getExtension(Extension.deltaCRLIndicator) != null;
+    }
+
+    /** @return the URIs in the Issuing Distribution Point extension, or an empty list if there are none */
+    public List<String> getIssuingDistributionPointUris() {
+        final List<String> uris = new ArrayList<>();
+        final Extension idpExtension = extensions == null ? null : extensions.getExtension(Extension.issuingDistributionPoint);
+        if (idpExtension != null) {
+            final DistributionPointName distributionPoint = IssuingDistributionPoint.getInstance(idpExtension.getParsedValue()).getDistributionPoint();
+            if (distributionPoint != null && distributionPoint.getType() == DistributionPointName.FULL_NAME) {
+                for (final GeneralName name : GeneralNames.getInstance(distributionPoint.getName()).getNames()) {
+                    if (name.getTagNo() == GeneralName.uniformResourceIdentifier) {
+                        uris.add(DERIA5String.getInstance(name.getName()).getString());
+                    }
+                }
+            }
+        }
+        return uris;
+    }
+
+    /** Reads the tag and length of an element with the expected tag, and returns the length of its contents */
+    private long readHeader(final int expectedTag) throws CRLException, IOException {
+        final int tag = readByte();
+        if (tag != expectedTag) {
+            throw new CRLException("Unexpected tag 0x" + Integer.toHexString(tag) + " at offset " + (position - 1) + " of the CRL.");
+        }
+        return readLength();
+    }
+
+    private long readLength() throws CRLException, IOException {
+        final int first = readByte();
+        if ((first & 0x80) == 0) {
+            return first;
+        }
+        final int lengthOctets = first & 0x7f;
+        if (lengthOctets == 0) {
+            throw new CRLException("Indefinite length encoding is not allowed in a DER encoded CRL.");
+        }
+        if (lengthOctets > 7) {
+            throw new CRLException("Unsupported length of element at offset " + position + " of the CRL.");
+        }
+        long length = 0;
+        for (int i = 0; i < lengthOctets; i++) {
+            length = (length << 8) | readByte();
+        }
+        return length;
+    }
+
+    /** @return the encoding of the next element, whatever its tag is */
+    private byte[] readElement() throws CRLException, IOException {
+        return readElement(peekTag());
+    }
+
+    /** @return the encoding of the next element, which must have the expected tag */
+    private byte[] readElement(final int expectedTag) throws CRLException, IOException {
+        final long start = position;
+        final long length = readHeader(expectedTag);
+        if (length > MAX_ELEMENT_LENGTH) {
+            throw new CRLException("Element of " + length + " bytes at offset " + start + " of the CRL is too long.");
+        }
+        final byte[] header = StreamingCrlEncoder.getHeader(expectedTag, length);
+        final byte[] element = new byte[header.length + (int) length];
+        System.arraycopy(header, 0, element, 0, header.length);
+        readFully(element, header.length, (int) length);
+        return element;
+    }
+
+    /** @return the tag of the next element of the to-be-signed part, or -1 at its end */
+    private int peekTbsTag() throws IOException {
+        return position < tbsEnd ? peekTag() : -1;
+    }
+
+    private int peekTag() throws IOException {
+        in.mark(1);
+        final int tag = in.read();
+        in.reset();
+        return tag;
+    }
+
+    private int readByte() throws IOException {
+        final int b = in.read();
+        if (b == -1) {
+            throw new EOFException("Unexpected end of CRL at offset " + position + ".");
+        }
+        position++;
+        if (tbsOut != null) {
+            tbsOut.write(b);
+        }
+        return b;
+    }
+
+    private void readFully(final byte[] b, final int off, final int len) throws IOException {
+        int read = 0;
+        while (read < len) {
+            final int count = in.read(b, off + read, len - read);
+            if (count == -1) {
+                throw new EOFException("Unexpected end of CRL at offset " + (position + read) + ".");
+            }
+            read += count;
+        }
+        position += len;
+        if (tbsOut != null) {
+            tbsOut.write(b, off, len);
+        }
+    }
+
+    /** Skips the contents of an element. They are still passed through the verifier, if there is one. */
+    private void skipContents(final long length) throws IOException {
+        if (tbsOut == null) {
+            long skipped = 0;
+            while (skipped < length) {
+                final long count = in.skip(length - skipped);
+                if (count <= 0) {
+                    if (in.read() == -1) {
+                        throw new EOFException("Unexpected end of CRL at offset " + (position + skipped) + ".");
+                    }
+                    skipped++;
+                } else {
+                    skipped += count;
+                }
+            }
+            position += length;
+        } else {
+            final byte[] buffer = new byte[(int) Math.min(length, BUFFER_SIZE)];
+            long remaining = length;
+            while (remaining > 0) {
+                final int count = (int) Math.min(remaining, buffer.length);
+                readFully(buffer, 0, count);
+                remaining -= count;
+            }
+        }
+    }
+
+    private static ASN1Primitive toPrimitive(final byte[] encoded) throws CRLException {
+        try {
+            return ASN1Primitive.fromByteArray(encoded);
+        } catch (IOException | IllegalArgumentException e) {
+            throw new CRLException("Malformed element in the CRL: " + e.getMessage(), e);
+        }
+    }
+}
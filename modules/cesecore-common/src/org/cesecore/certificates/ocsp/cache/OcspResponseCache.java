@@ -0,0 +1,247 @@
+/*************************************************************************
+ *                                                                       *
+ *  CESeCore: CE Security Core                                           *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.cesecore.certificates.ocsp.cache;
+
+import java.math.BigInteger;
+import java.security.cert.X509Certificate;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.apache.log4j.Logger;
+import org.bouncycastle.cert.ocsp.CertificateID;
+import org.cesecore.config.OcspConfiguration;
+
+/**
+ * Cache of signed OCSP responses for single CertID requests that can be answered with the same response to every client,
+ * i.e. requests without a nonce (or where nonces are not echoed) and responses without request specific extensions.
+ * <p>
+ * Entries are keyed on the CertID (hash algorithm, issuer name and key hashes and serial number) and expire at the nextUpdate of
+ * the response or when max-age has passed, whichever comes first. Entries are grouped by serial number, so that all responses for
+ * a certificate can be evicted at once when it is revoked. The number of certificates in the cache is bounded by
+ * {@link OcspConfiguration#getResponseCacheMaxEntries()}.
+ *
+ * @version $Id$
+ */
+public enum OcspResponseCache {
+    INSTANCE;
+
+    private static final Logger log = Logger.getLogger(OcspResponseCache.class);
+
+    /** A cached response for one CertID. */
+    public static final class CachedResponse {
+        private final String hashAlgorithmOid;
+        private final byte[] issuerNameHash;
+        private final byte[] issuerKeyHash;
+        private final byte[] encodedResponse;
+        private final long maxAge;
+        private final long expireTime;
+        private final X509Certificate signerCertificate;
+        private final int certificateStatus;
+        private final int revocationReason;
+
+        private CachedResponse(final CertificateID certId, final byte[] encodedResponse, final long maxAge, final long expireTime,
+                final X509Certificate signerCertificate, final int certificateStatus, final int revocationReason) {
+            this.hashAlgorithmOid = certId.getHashAlgOID().getId();
+            this.issuerNameHash = certId.getIssuerNameHash();
+            this.issuerKeyHash = certId.getIssuerKeyHash();
+            this.encodedResponse = encodedResponse;
+            this.maxAge = maxAge;
+            this.expireTime = expireTime;
+            this.signerCertificate = signerCertificate;
+            this.certificateStatus = certificateStatus;
+            this.revocationReason = revocationReason;
+        }
+
+        private boolean matches(final CertificateID certId) {
+            return hashAlgorithmOid.equals(certId.getHashAlgOID().getId()) && Arrays.equals(issuerNameHash, certId.getIssuerNameHash())
+                    && Arrays.equals(issuerKeyHash, certId.getIssuerKeyHash());
+        }
+
+        /** @return the DER encoded OCSPResp */
+        public byte[] getEncodedResponse() {
+            return encodedResponse;
+        }
+
+        /** @return the max-age of the response in milliseconds */
+        public long getMaxAge() {
+            return maxAge;
+        }
+
+        /** @return the time when this entry may no longer be used */
+        public long getExpireTime() {
+            return expireTime;
+        }
+
+        /** @return the certificate that signed the response */
+        public X509Certificate getSignerCertificate() {
+            return signerCertificate;
+        }
+
+        /** @return the certificate status of the single response, one of OCSPResponseItem.OCSP_GOOD, OCSP_REVOKED or OCSP_UNKNOWN */
+        public int getCertificateStatus() {
+            return certificateStatus;
+        }
+
+        /** @return the revocation reason of the single response, or RevokedCertInfo.NOT_REVOKED */
+        public int getRevocationReason() {
+            return revocationReason;
+        }
+    }
+
+    /** Responses by serial number. A certificate normally only has one entry, but clients may use different CertID hash algorithms. */
+    private final Map<BigInteger, CachedResponse[]> cache = new ConcurrentHashMap<>();
+    private final AtomicBoolean evictionInProgress = new AtomicBoolean();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    /**
+     * @param certId the CertID of the request
+     * @return a cached response that is still valid, or null if there is none
+     */
+    public CachedResponse get(final CertificateID certId) {
+        final CachedResponse[] responses = cache.get(certId.getSerialNumber());
+        if (responses != null) {
+            for (final CachedResponse response : responses) {
+                if (response.matches(certId)) {
+                    if (response.getExpireTime() > System.currentTimeMillis()) {
+                        hits.increment();
+                        return response;
+                    }
+                    break;
+                }
+            }
+        }
+        misses.increment();
+        return null;
+    }
+
+    /**
+     * Cache a response. Responses without nextUpdate are never cached, since newer information is always available for them.
+     *
+     * @param certId the CertID of the request
+     * @param encodedResponse the DER encoded OCSPResp
+     * @param maxAge the max-age of the response in milliseconds, or 0 if not used
+     * @param nextUpdate the nextUpdate of the single response, or null
+     * @param signerCertificate the certificate that signed the response
+     * @param certificateStatus the certificate status, for transaction logging of cache hits
+     * @param revocationReason the revocation reason, for transaction logging of cache hits
+     */
+    public void put(final CertificateID certId, final byte[] encodedResponse, final long maxAge, final Long nextUpdate,
+            final X509Certificate signerCertificate, final int certificateStatus, final int revocationReason) {
+        if (nextUpdate == null) {
+            return;
+        }
+        long expireTime = nextUpdate;
+        if (maxAge > 0) {
+            expireTime = Math.min(expireTime, System.currentTimeMillis() + maxAge);
+        }
+        if (signerCertificate != null) {
+            expireTime = Math.min(expireTime, signerCertificate.getNotAfter().getTime());
+        }
+        if (cache.size() >= OcspConfiguration.getResponseCacheMaxEntries()) {
+            evict();
+        }
+        final CachedResponse response = new CachedResponse(certId, encodedResponse, maxAge, expireTime, signerCertificate, certificateStatus,
+                revocationReason);
+        cache.compute(certId.getSerialNumber(), (serialNumber, responses) -> {
+            if (responses == null) {
+                return new CachedResponse[] { response };
+            }
+            for (int i = 0; i < responses.length; i++) {
+                if (responses[i].matches(certId)) {
+                    final CachedResponse[] updated = responses.clone();
+                    updated[i] = response;
+                    return updated;
+                }
+            }
+            final CachedResponse[] updated = Arrays.copyOf(responses, responses.length + 1);
+            updated[responses.length] = response;
+            return updated;
+        });
+    }
+
+    /** Remove all responses for certificates with the given serial number, e.g. when the certificate has been revoked. */
+    public void remove(final BigInteger serialNumber) {
+        if (cache.remove(serialNumber) != null) {
+            evictions.increment();
+        }
+    }
+
+    /** Remove all responses, e.g. when the signing keys or configuration have changed. */
+    public void clear() {
+        cache.clear();
+    }
+
+    /**
+     * Make room for new entries. Expired entries are removed first, and if that is not enough, arbitrary entries are removed until
+     * the cache is below 90% of its capacity. Only one thread evicts at a time, other threads proceed without waiting.
+     */
+    private void evict() {
+        if (!evictionInProgress.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            final int maxEntries = OcspConfiguration.getResponseCacheMaxEntries();
+            final long now = System.currentTimeMillis();
+            int evicted = 0;
+            for (final Iterator<CachedResponse[]> iterator = cache.values().iterator(); iterator.hasNext();) {
+                final CachedResponse[] responses = iterator.next();
+                boolean expired = true;
+                for (final CachedResponse response : responses) {
+                    expired &= response.getExpireTime() <= now;
+                }
+                if (expired) {
+                    iterator.remove();
+                    evicted++;
+                }
+            }
+            // ConcurrentHashMap iterates in hash order, so this removes entries that are effectively random
+            for (final Iterator<CachedResponse[]> iterator = cache.values().iterator(); iterator.hasNext() && cache.size() > maxEntries * 9L / 10;) {
+                iterator.next();
+                iterator.remove();
+                evicted++;
+            }
+            evictions.add(evicted);
+            if (log.isDebugEnabled()) {
+                log.debug("Evicted " + evicted + " certificates from the OCSP response cache.");
+            }
+        } finally {
+            evictionInProgress.set(false);
+        }
+    }
+
+    /** @return the number of certificates with cached responses */
+    public int getSize() {
+        return cache.size();
+    }
+
+    /** @return the number of requests that were answered from the cache */
+    public long getHits() {
+        return hits.sum();
+    }
+
+    /** @return the number of lookups that did not find a valid response */
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    /** @return the number of certificates whose responses were removed because of revocation, expiry or to make room */
+    public long getEvictions() {
+        return evictions.sum();
+    }
+}
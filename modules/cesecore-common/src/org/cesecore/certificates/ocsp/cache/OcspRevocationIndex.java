@@ -0,0 +1,149 @@
+/*************************************************************************
+ *                                                                       *
+ *  CESeCore: CE Security Core                                           *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.cesecore.certificates.ocsp.cache;
+
+import java.math.BigInteger;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.cesecore.certificates.certificate.CertificateStatus;
+
+/**
+ * In-memory index of certificate statuses for the CAs served by the OCSP responder, so that status lookups don't
+ * have to hit the database. Each issuer has its own immutable {@link RevocationStatusIndex} that is replaced as a
+ * whole when it is refreshed, so readers never block.
+ * <p>
+ * Issuers are keyed on their subject DN in the normalized form used in CertificateData.issuerDN.
+ * <p>
+ * The index of an issuer is rebuilt from the database from time to time, which corrects it for certificates that were
+ * deleted on other nodes and for changes that the refreshes missed. Certificates removed on this node while the index is
+ * being rebuilt are removed from the rebuilt index too.
+ *
+ * @version $Id$
+ */
+public enum OcspRevocationIndex {
+    INSTANCE;
+
+    private final Map<String, RevocationStatusIndex> indexes = new ConcurrentHashMap<>();
+    /** The time each index was last rebuilt from the database */
+    private final Map<String, Long> rebuildTimes = new ConcurrentHashMap<>();
+    /** Certificates removed since a rebuild was started, by issuer. Guarded by this. */
+    private final Map<String, RevocationStatusIndex.Updates> removedDuringRebuild = new HashMap<>();
+
+    /**
+     * @param issuerDn the normalized issuer DN
+     * @param serialNumber the certificate serial number
+     * @return the status of the certificate, or null if the issuer is not indexed or the certificate is not in the index
+     */
+    public CertificateStatus getStatus(final String issuerDn, final BigInteger serialNumber) {
+        final RevocationStatusIndex index = indexes.get(issuerDn);
+        return index == null ? null : index.getStatus(serialNumber);
+    }
+
+    /** @return the current index for the issuer or null if there is none */
+    public RevocationStatusIndex getIndex(final String issuerDn) {
+        return indexes.get(issuerDn);
+    }
+
+    /** @return the time the index of the issuer was last rebuilt in epoch milliseconds, or -1 if it has not been built */
+    public long getRebuildTime(final String issuerDn) {
+        final Long rebuildTime = rebuildTimes.get(issuerDn);
+        return rebuildTime == null ? -1L : rebuildTime;
+    }
+
+    /** Publish a new index for the issuer. Should only be called with a fully loaded index. */
+    public synchronized void setIndex(final String issuerDn, final RevocationStatusIndex index) {
+        indexes.put(issuerDn, index);
+    }
+
+    /**
+     * Apply changes to the current index of the issuer.
+     *
+     * @return the updated index, or null if the issuer is not indexed
+     * @see RevocationStatusIndex#withUpdates
+     */
+    public synchronized RevocationStatusIndex update(final String issuerDn, final RevocationStatusIndex.Updates updates, final long highestUpdateTime) {
+        final RevocationStatusIndex index = indexes.get(issuerDn);
+        if (index == null) {
+            return null;
+        }
+        final RevocationStatusIndex updated = index.withUpdates(updates, highestUpdateTime);
+        indexes.put(issuerDn, updated);
+        return updated;
+    }
+
+    /** Remove certificates that have been deleted from the database, so that their lookups go to the database. */
+    public synchronized void removeCertificates(final String issuerDn, final Collection<BigInteger> serialNumbers) {
+        final RevocationStatusIndex.Updates rebuildRemovals = removedDuringRebuild.get(issuerDn);
+        final RevocationStatusIndex index = indexes.get(issuerDn);
+        if (index == null && rebuildRemovals == null) {
+            return;
+        }
+        final RevocationStatusIndex.Updates removals = new RevocationStatusIndex.Updates();
+        for (final BigInteger serialNumber : serialNumbers) {
+            removals.remove(serialNumber);
+            if (rebuildRemovals != null) {
+                rebuildRemovals.remove(serialNumber);
+            }
+        }
+        if (index != null) {
+            indexes.put(issuerDn, index.withUpdates(removals, -1L));
+        }
+    }
+
+    /** Start recording the certificates removed from the issuer, before its index is read from the database. */
+    public synchronized void startRebuild(final String issuerDn) {
+        removedDuringRebuild.put(issuerDn, new RevocationStatusIndex.Updates());
+    }
+
+    /**
+     * Publish an index that has been read from the database since {@link #startRebuild} was called, without the certificates that
+     * were removed in the meantime.
+     *
+     * @param rebuildTime the time the rebuild was started
+     * @return the published index
+     */
+    public synchronized RevocationStatusIndex finishRebuild(final String issuerDn, final RevocationStatusIndex index, final long rebuildTime) {
+        final RevocationStatusIndex.Updates removals = removedDuringRebuild.remove(issuerDn);
+        final RevocationStatusIndex rebuilt = removals == null ? index : index.withUpdates(removals, -1L);
+        indexes.put(issuerDn, rebuilt);
+        rebuildTimes.put(issuerDn, rebuildTime);
+        return rebuilt;
+    }
+
+    /** Stop recording removed certificates for a rebuild that failed. The current index of the issuer is kept. */
+    public synchronized void cancelRebuild(final String issuerDn) {
+        removedDuringRebuild.remove(issuerDn);
+    }
+
+    /** Drop the index of the issuer, its lookups go to the database until the index has been loaded again. */
+    public synchronized void removeIssuer(final String issuerDn) {
+        indexes.remove(issuerDn);
+        rebuildTimes.remove(issuerDn);
+    }
+
+    /** Drop the indexes of all issuers that are not in the given collection. */
+    public synchronized void retainIssuers(final Collection<String> issuerDns) {
+        indexes.keySet().retainAll(issuerDns);
+        rebuildTimes.keySet().retainAll(issuerDns);
+    }
+
+    /** Drop all indexes, all lookups will go to the database until the indexes have been rebuilt. */
+    public synchronized void clear() {
+        indexes.clear();
+        rebuildTimes.clear();
+        removedDuringRebuild.clear();
+    }
+}
@@ -33,27 +33,34 @@ import java.security.cert.CertificateEncodingException;
 import java.security.cert.X509Certificate;
 import java.util.ArrayList;
 import java.util.Collection;
-import java.util.HashMap;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * Hold information needed to create OCSP responses without database lookups.
+ * <p>
+ * Readers always see an immutable snapshot that is published through a volatile field, so lookups never block. Writers (a full reload
+ * through the staging methods, or an incremental update of the entries of a single CA or OcspKeyBinding) are serialized by a lock and
+ * build a new snapshot from the entries of each source, which is then swapped in.
  */
 public enum OcspSigningCache {
     INSTANCE;
     
-    private Map<Integer, OcspSigningCacheEntry> cache = new HashMap<>();
-    private Map<Integer, OcspSigningCacheEntry> staging = new HashMap<>();
-    private OcspSigningCacheEntry defaultResponderCacheEntry = null;
+    private volatile Snapshot snapshot = Snapshot.EMPTY;
+    private Map<Integer, List<OcspSigningCacheEntry>> stagingCaEntries = new LinkedHashMap<>();
+    private Map<Integer, OcspSigningCacheEntry> stagingKeyBindingEntries = new LinkedHashMap<>();
     private final ReentrantLock lock = new ReentrantLock(false);
     private final static Logger log = Logger.getLogger(OcspSigningCache.class);
     /** Flag to detect and log non-existence of a default responder once. */
     private boolean logDefaultHasRunOnce = false;
  
     public OcspSigningCacheEntry getEntry(final CertificateID certID) {
-        return cache.get(getCacheIdFromCertificateID(certID));
+        return snapshot.entries.get(getCacheIdFromCertificateID(certID));
     }
 
     /**
@@ -61,36 +68,161 @@ public enum OcspSigningCache {
      * @return the entry corresponding to the default responder, or null if it wasn't found.
      */
     public OcspSigningCacheEntry getDefaultEntry() {
-        return defaultResponderCacheEntry;
+        return snapshot.defaultResponderCacheEntry;
     }
 
     /** WARNING: This method potentially exports references to CAs private keys! */
     public Collection<OcspSigningCacheEntry> getEntries() {
-        return cache.values();
+        return snapshot.values;
     }
 
     public void stagingStart() {
         lock.lock();
-        staging = new HashMap<>();
+        stagingCaEntries = new LinkedHashMap<>();
+        stagingKeyBindingEntries = new LinkedHashMap<>();
     }
 
+    /**
+     * Adds an entry to the staging area. Entries with an OcspKeyBinding are staged for that key binding, other entries are staged for the CA
+     * with the id derived from the subject DN of the issuer CA certificate.
+     * 
+     * @param ocspSigningCacheEntry the entry to stage
+     */
     public void stagingAdd(OcspSigningCacheEntry ocspSigningCacheEntry) {
-        for (CertificateID certID : ocspSigningCacheEntry.getCertificateID()) {
-            staging.put(getCacheIdFromCertificateID(certID), ocspSigningCacheEntry);            
+        if (ocspSigningCacheEntry.getOcspKeyBinding() != null) {
+            stagingKeyBindingEntries.put(ocspSigningCacheEntry.getOcspKeyBinding().getId(), ocspSigningCacheEntry);
+        } else {
+            stagingAdd(getCaIdFromEntry(ocspSigningCacheEntry), ocspSigningCacheEntry);
         }
-        for (CertificateID certID : ocspSigningCacheEntry.getSignedBehalfOfCaIds()) {
-            // override cache only if no OCSP key binding present or the entry is a placeholder
-            int cacheId = getCacheIdFromCertificateID(certID);
-            if(!staging.containsKey(cacheId) || staging.get(cacheId).isPlaceholder() 
-                            || staging.get(cacheId).getOcspKeyBinding()==null ) {
-                staging.put(cacheId, ocspSigningCacheEntry);
-            }      
+    }
+
+    /**
+     * Adds an entry that is signed by (or acts as placeholder for) the CA with the given id to the staging area.
+     * 
+     * @param caId the id of the CA the entry belongs to
+     * @param ocspSigningCacheEntry the entry to stage
+     */
+    public void stagingAdd(final int caId, final OcspSigningCacheEntry ocspSigningCacheEntry) {
+        List<OcspSigningCacheEntry> caEntries = stagingCaEntries.get(caId);
+        if (caEntries == null) {
+            caEntries = new ArrayList<>();
+            stagingCaEntries.put(caId, caEntries);
         }
+        caEntries.add(ocspSigningCacheEntry);
     }
 
     public void stagingCommit(final String defaultResponderSubjectDn) {
+        publish(stagingCaEntries, stagingKeyBindingEntries, defaultResponderSubjectDn);
+        stagingCaEntries = new LinkedHashMap<>();
+        stagingKeyBindingEntries = new LinkedHashMap<>();
+    }
+
+    public void stagingRelease() {
+        lock.unlock();
+    }
+
+    /**
+     * Adds or replaces all entries of a single CA without rebuilding the entries of any other CA or OcspKeyBinding.
+     * 
+     * @param caId the id of the CA
+     * @param ocspSigningCacheEntries the new entries of the CA. An empty collection removes the CA from the cache.
+     */
+    public void updateCaEntries(final int caId, final Collection<OcspSigningCacheEntry> ocspSigningCacheEntries) {
+        lock.lock();
+        try {
+            final Snapshot current = snapshot;
+            final Map<Integer, List<OcspSigningCacheEntry>> caEntries = new LinkedHashMap<>(current.caEntries);
+            if (ocspSigningCacheEntries == null || ocspSigningCacheEntries.isEmpty()) {
+                caEntries.remove(caId);
+            } else {
+                caEntries.put(caId, new ArrayList<>(ocspSigningCacheEntries));
+            }
+            publish(caEntries, current.keyBindingEntries, current.defaultResponderSubjectDn);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Removes all entries of a single CA. Entries of OcspKeyBindings that respond for the CA are kept.
+     * 
+     * @param caId the id of the CA
+     */
+    public void removeCaEntries(final int caId) {
+        updateCaEntries(caId, null);
+    }
+
+    /**
+     * Adds or replaces the entry of a single OcspKeyBinding without rebuilding the entries of any CA or other OcspKeyBinding.
+     * 
+     * @param ocspSigningCacheEntry the entry to add, must reference an OcspKeyBinding
+     */
+    public void updateKeyBindingEntry(final OcspSigningCacheEntry ocspSigningCacheEntry) {
+        if (ocspSigningCacheEntry.getOcspKeyBinding() == null) {
+            throw new IllegalArgumentException("OCSP signing cache entry does not reference an OcspKeyBinding.");
+        }
+        lock.lock();
+        try {
+            final Snapshot current = snapshot;
+            final Map<Integer, OcspSigningCacheEntry> keyBindingEntries = new LinkedHashMap<>(current.keyBindingEntries);
+            keyBindingEntries.put(ocspSigningCacheEntry.getOcspKeyBinding().getId(), ocspSigningCacheEntry);
+            publish(current.caEntries, keyBindingEntries, current.defaultResponderSubjectDn);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Removes the entry of a single OcspKeyBinding. Requests for the CAs it responded for will be served by the CA entries again, if any.
+     * 
+     * @param internalKeyBindingId the id of the OcspKeyBinding
+     */
+    public void removeKeyBindingEntry(final int internalKeyBindingId) {
+        lock.lock();
+        try {
+            final Snapshot current = snapshot;
+            if (!current.keyBindingEntries.containsKey(internalKeyBindingId)) {
+                return;
+            }
+            final Map<Integer, OcspSigningCacheEntry> keyBindingEntries = new LinkedHashMap<>(current.keyBindingEntries);
+            keyBindingEntries.remove(internalKeyBindingId);
+            publish(current.caEntries, keyBindingEntries, current.defaultResponderSubjectDn);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Resolves the entries of every source into a lookup table and publishes it as the new snapshot. Must be invoked while holding the lock.
+     */
+    private void publish(final Map<Integer, List<OcspSigningCacheEntry>> caEntries, final Map<Integer, OcspSigningCacheEntry> keyBindingEntries,
+            final String defaultResponderSubjectDn) {
+        final Map<Integer, OcspSigningCacheEntry> resolved = new LinkedHashMap<>();
+        for (final List<OcspSigningCacheEntry> entries : caEntries.values()) {
+            for (final OcspSigningCacheEntry entry : entries) {
+                for (final CertificateID certID : entry.getCertificateID()) {
+                    resolved.put(getCacheIdFromCertificateID(certID), entry);
+                }
+            }
+        }
+        // OcspKeyBindings take precedence over the CA that issued the OCSP signing certificate
+        for (final OcspSigningCacheEntry entry : keyBindingEntries.values()) {
+            for (final CertificateID certID : entry.getCertificateID()) {
+                resolved.put(getCacheIdFromCertificateID(certID), entry);
+            }
+        }
+        for (final OcspSigningCacheEntry entry : keyBindingEntries.values()) {
+            for (final CertificateID certID : entry.getSignedBehalfOfCaIds()) {
+                // override cache only if no OCSP key binding present or the entry is a placeholder
+                final int cacheId = getCacheIdFromCertificateID(certID);
+                final OcspSigningCacheEntry existing = resolved.get(cacheId);
+                if (existing == null || existing.isPlaceholder() || existing.getOcspKeyBinding() == null) {
+                    resolved.put(cacheId, entry);
+                }
+            }
+        }
         OcspSigningCacheEntry stagedDefaultResponder = null;
-        for (final OcspSigningCacheEntry entry : staging.values()) {
+        for (final OcspSigningCacheEntry entry : resolved.values()) {
             if (entry.getOcspSigningCertificate() != null) {
                 final X509Certificate signingCertificate = entry.getOcspSigningCertificate();
                 if (CertTools.getIssuerDN(signingCertificate).equals(defaultResponderSubjectDn)) {
@@ -106,37 +238,37 @@ public enum OcspSigningCache {
             }
         }
         //Lastly, walk through the list of entries and replace all placeholders with the default responder
-        Map<Integer, OcspSigningCacheEntry> modifiedEntries = new HashMap<>();
-        List<Integer> removedEntries = new ArrayList<>();
-        for (Integer key : staging.keySet()) {
-            OcspSigningCacheEntry entry = staging.get(key);
+        final Map<OcspSigningCacheEntry, OcspSigningCacheEntry> replacedPlaceholders = new IdentityHashMap<>();
+        for (final Iterator<Map.Entry<Integer, OcspSigningCacheEntry>> iterator = resolved.entrySet().iterator(); iterator.hasNext();) {
+            final Map.Entry<Integer, OcspSigningCacheEntry> mapEntry = iterator.next();
+            final OcspSigningCacheEntry entry = mapEntry.getValue();
             //If entry has been created without a private key, replace it with the default responder.
             if (entry.isPlaceholder()) {
                 if (stagedDefaultResponder != null) {
-                    entry = new OcspSigningCacheEntry(entry.getIssuerCaCertificate(), entry.getIssuerCaCertificateStatus(),
-                            stagedDefaultResponder.getCaCertificateChain(), stagedDefaultResponder.getOcspSigningCertificate(),
-                            stagedDefaultResponder.getPrivateKey(), stagedDefaultResponder.getSignatureProviderName(),
-                            stagedDefaultResponder.getOcspKeyBinding(), stagedDefaultResponder.getResponderIdType());
-                    entry.setCrlSigningAlgorithm(stagedDefaultResponder.getCrlSigningAlgorithm());
-                    modifiedEntries.put(key, entry);
+                    OcspSigningCacheEntry replacement = replacedPlaceholders.get(entry);
+                    if (replacement == null) {
+                        replacement = new OcspSigningCacheEntry(entry.getIssuerCaCertificate(), entry.getIssuerCaCertificateStatus(),
+                                stagedDefaultResponder.getCaCertificateChain(), stagedDefaultResponder.getOcspSigningCertificate(),
+                                stagedDefaultResponder.getPrivateKey(), stagedDefaultResponder.getSignatureProviderName(),
+                                stagedDefaultResponder.getOcspKeyBinding(), stagedDefaultResponder.getResponderIdType());
+                        replacement.setCrlSigningAlgorithm(stagedDefaultResponder.getCrlSigningAlgorithm());
+                        replacement.setSigningKeyReference(stagedDefaultResponder.getSigningKeyReference());
+                        replacedPlaceholders.put(entry, replacement);
+                    }
+                    mapEntry.setValue(replacement);
                 } else {
                     //If no default responder is defined, remove placeholder. 
-                    removedEntries.add(key);
+                    iterator.remove();
                 }
             }
         }
-        staging.putAll(modifiedEntries);
-        for (Integer removedKey : removedEntries) {
-            staging.remove(removedKey);
-        }
-        logDefaultResponderChanges(defaultResponderCacheEntry, stagedDefaultResponder, defaultResponderSubjectDn);
-        cache = staging;
-        defaultResponderCacheEntry = stagedDefaultResponder;
+        logDefaultResponderChanges(snapshot.defaultResponderCacheEntry, stagedDefaultResponder, defaultResponderSubjectDn);
+        snapshot = new Snapshot(resolved, stagedDefaultResponder, caEntries, keyBindingEntries, defaultResponderSubjectDn);
         if (log.isDebugEnabled()) {
             log.debug("Committing the following to OCSP cache:");
-            for (final Integer key : staging.keySet()) {
-                final OcspSigningCacheEntry entry = staging.get(key);
-                log.debug(" KeyBindingId: " + key + ", SubjectDN '" + LogRedactionUtils.getSubjectDnLogSafe(entry.getFullCertificateChain().get(0))
+            for (final Map.Entry<Integer, OcspSigningCacheEntry> mapEntry : resolved.entrySet()) {
+                final OcspSigningCacheEntry entry = mapEntry.getValue();
+                log.debug(" KeyBindingId: " + mapEntry.getKey() + ", SubjectDN '" + LogRedactionUtils.getSubjectDnLogSafe(entry.getFullCertificateChain().get(0))
                         + "', IssuerDN '" + CertTools.getIssuerDN(entry.getFullCertificateChain().get(0)) + "', SerialNumber "
                         + entry.getFullCertificateChain().get(0).getSerialNumber().toString() + "/"
                         + entry.getFullCertificateChain().get(0).getSerialNumber().toString(16));
@@ -147,10 +279,6 @@ public enum OcspSigningCache {
         }
     }
 
-    public void stagingRelease() {
-        lock.unlock();
-    }
-
     /** Log any change in default responder */
     private void logDefaultResponderChanges(final OcspSigningCacheEntry currentEntry, final OcspSigningCacheEntry stagedEntry, final String defaultResponderSubjectDn) {
         String msg = null;
@@ -205,29 +333,37 @@ public enum OcspSigningCache {
      * @param ocspSigningCacheEntry the entry to add
      */
     public void addSingleEntry(OcspSigningCacheEntry ocspSigningCacheEntry) {
-        List<CertificateID> certIDs = ocspSigningCacheEntry.getCertificateID();
-        for (CertificateID certID : certIDs) {
-            int cacheId = getCacheIdFromCertificateID(certID);
-            lock.lock();
-            try {
-                //Make sure that another thread didn't add the same entry while this one was waiting.
-                if (!cache.containsKey(cacheId)) {
-                    cache.put(cacheId, ocspSigningCacheEntry);
-                }
-                for (CertificateID certIDOnBehalf : ocspSigningCacheEntry.getSignedBehalfOfCaIds()) {
-                    // override cache only if no OCSP key binding present or the entry is a placeholder
-                    int cacheIdOnBehalf = getCacheIdFromCertificateID(certIDOnBehalf);
-                    if(!cache.containsKey(cacheIdOnBehalf) || cache.get(cacheIdOnBehalf).isPlaceholder() 
-                                    || cache.get(cacheIdOnBehalf).getOcspKeyBinding()==null ) {
-                        cache.put(cacheIdOnBehalf, ocspSigningCacheEntry);
-                    }      
+        lock.lock();
+        try {
+            final Snapshot current = snapshot;
+            //Make sure that another thread didn't add the same entry while this one was waiting.
+            for (final CertificateID certID : ocspSigningCacheEntry.getCertificateID()) {
+                if (current.entries.get(getCacheIdFromCertificateID(certID)) != null) {
+                    return;
                 }
-            } finally {
-                lock.unlock();
             }
+            if (ocspSigningCacheEntry.getOcspKeyBinding() != null) {
+                final Map<Integer, OcspSigningCacheEntry> keyBindingEntries = new LinkedHashMap<>(current.keyBindingEntries);
+                keyBindingEntries.put(ocspSigningCacheEntry.getOcspKeyBinding().getId(), ocspSigningCacheEntry);
+                publish(current.caEntries, keyBindingEntries, current.defaultResponderSubjectDn);
+            } else {
+                final int caId = getCaIdFromEntry(ocspSigningCacheEntry);
+                final Map<Integer, List<OcspSigningCacheEntry>> caEntries = new LinkedHashMap<>(current.caEntries);
+                final List<OcspSigningCacheEntry> entries = caEntries.containsKey(caId) ? new ArrayList<>(caEntries.get(caId)) : new ArrayList<>();
+                entries.add(ocspSigningCacheEntry);
+                caEntries.put(caId, entries);
+                publish(caEntries, current.keyBindingEntries, current.defaultResponderSubjectDn);
+            }
+        } finally {
+            lock.unlock();
         }
     }
 
+    /** @return the CA id derived from the subject DN of the issuer CA certificate of the entry, the same way CA ids are assigned to X.509 CAs */
+    private static int getCaIdFromEntry(final OcspSigningCacheEntry ocspSigningCacheEntry) {
+        return CertTools.getSubjectDN(ocspSigningCacheEntry.getIssuerCaCertificate()).hashCode();
+    }
+
     private static BigInteger bigIntFromBytes(final byte[] bytes) {
         if (ArrayUtils.isEmpty(bytes)) {
             return BigInteger.valueOf(0);
@@ -248,4 +384,75 @@ public enum OcspSigningCache {
         return result;
     }
 
+    /** Immutable view of the cache contents, replaced as a whole on every update. */
+    private static final class Snapshot {
+        private static final Snapshot EMPTY = new Snapshot(Collections.emptyMap(), null, Collections.emptyMap(), Collections.emptyMap(), null);
+
+        private final IntEntryTable entries;
+        private final Collection<OcspSigningCacheEntry> values;
+        private final OcspSigningCacheEntry defaultResponderCacheEntry;
+        private final Map<Integer, List<OcspSigningCacheEntry>> caEntries;
+        private final Map<Integer, OcspSigningCacheEntry> keyBindingEntries;
+        private final String defaultResponderSubjectDn;
+
+        private Snapshot(final Map<Integer, OcspSigningCacheEntry> resolved, final OcspSigningCacheEntry defaultResponderCacheEntry,
+                final Map<Integer, List<OcspSigningCacheEntry>> caEntries, final Map<Integer, OcspSigningCacheEntry> keyBindingEntries,
+                final String defaultResponderSubjectDn) {
+            this.entries = new IntEntryTable(resolved);
+            this.values = Collections.unmodifiableList(new ArrayList<>(resolved.values()));
+            this.defaultResponderCacheEntry = defaultResponderCacheEntry;
+            final Map<Integer, List<OcspSigningCacheEntry>> caEntriesCopy = new LinkedHashMap<>();
+            for (final Map.Entry<Integer, List<OcspSigningCacheEntry>> caEntry : caEntries.entrySet()) {
+                caEntriesCopy.put(caEntry.getKey(), Collections.unmodifiableList(new ArrayList<>(caEntry.getValue())));
+            }
+            this.caEntries = Collections.unmodifiableMap(caEntriesCopy);
+            this.keyBindingEntries = Collections.unmodifiableMap(new LinkedHashMap<>(keyBindingEntries));
+            this.defaultResponderSubjectDn = defaultResponderSubjectDn;
+        }
+    }
+
+    /** Read-only open addressing hash table from primitive int cache ids to entries, avoiding boxing on lookup. */
+    private static final class IntEntryTable {
+        private final int[] keys;
+        private final OcspSigningCacheEntry[] values;
+        private final int mask;
+
+        private IntEntryTable(final Map<Integer, OcspSigningCacheEntry> source) {
+            // Keep the load factor at or below 0.5 so that probe sequences stay short
+            int capacity = 2;
+            while (capacity < source.size() * 2) {
+                capacity <<= 1;
+            }
+            keys = new int[capacity];
+            values = new OcspSigningCacheEntry[capacity];
+            mask = capacity - 1;
+            for (final Map.Entry<Integer, OcspSigningCacheEntry> entry : source.entrySet()) {
+                final int key = entry.getKey();
+                int index = mix(key) & mask;
+                while (values[index] != null) {
+                    index = (index + 1) & mask;
+                }
+                keys[index] = key;
+                values[index] = entry.getValue();
+            }
+        }
+
+        private OcspSigningCacheEntry get(final int key) {
+            int index = mix(key) & mask;
+            OcspSigningCacheEntry value;
+            while ((value = values[index]) != null) {
+                if (keys[index] == key) {
+                    return value;
+                }
+                index = (index + 1) & mask;
+            }
+            return null;
+        }
+
+        private static int mix(final int key) {
+            final int h = key * 0x9E3779B9;
+            return h ^ (h >>> 16);
+        }
+    }
+
 }
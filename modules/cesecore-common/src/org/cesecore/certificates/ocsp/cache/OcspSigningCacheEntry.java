@@ -20,6 +20,8 @@ import org.bouncycastle.cert.ocsp.OCSPException;
 import org.bouncycastle.cert.ocsp.RespID;
 import org.bouncycastle.cert.ocsp.jcajce.JcaRespID;
 import org.cesecore.certificates.certificate.CertificateStatus;
+import org.cesecore.certificates.ocsp.metrics.OcspMetrics;
+import org.cesecore.certificates.ocsp.metrics.OcspResponderMetrics;
 import org.cesecore.certificates.util.cert.CertificateUtils;
 import org.cesecore.config.OcspConfiguration;
 import org.cesecore.keybind.impl.OcspKeyBinding;
@@ -60,9 +62,12 @@ public class OcspSigningCacheEntry {
     private RespID respId;
     private final X509Certificate[] responseCertChain;
     private final boolean signingCertificateForOcspSigning;
+    /** Looked up the first time a response is signed with this entry */
+    private volatile OcspResponderMetrics metrics;
     
     // only relevant if CA itself signs the OCSP response
     private String crlSigningAlgorithm;
+    private String signingKeyReference;
     
     // we flatten the CertificateIds SHA(1/256/384/512) for simpler lookup
     // references to each CA X509Certificate is stored for each hash mechanism
@@ -202,6 +207,18 @@ public class OcspSigningCacheEntry {
     /** @return true if this entry is just a temporary placeholder that should be replaced with the default responder when rebuilding the cache. */
     public boolean isPlaceholder() { return privateKey == null; }
 
+    /** @return the metrics of the responses for the CA and OCSP key binding of this entry */
+    public OcspResponderMetrics getMetrics() {
+        OcspResponderMetrics ret = metrics;
+        if (ret == null) {
+            // A race here only means that the same instance is looked up more than once
+            ret = OcspMetrics.INSTANCE.getResponderMetrics(issuerCaCertificate == null ? "" : CertTools.getSubjectDN(issuerCaCertificate),
+                    ocspKeyBinding == null ? "" : ocspKeyBinding.getName());
+            metrics = ret;
+        }
+        return ret;
+    }
+
     /** @return false for the first thread that invokes this method (a caller that gets a false return value should verify the response signature) */
     public boolean checkResponseSignatureVerified() {
         // There is a small race condition here, so multiple callers might get a "false" return value, but since this
@@ -295,4 +312,17 @@ public class OcspSigningCacheEntry {
         this.crlSigningAlgorithm = crlSigningAlgorithm;
     }
 
+    /** @return the ID of the crypto token and the alias of the signing key, separated by ';', or null if not set */
+    public String getSigningKeyReference() {
+        return signingKeyReference;
+    }
+
+    public void setSigningKeyReference(final String signingKeyReference) {
+        this.signingKeyReference = signingKeyReference;
+    }
+
+    public void setSigningKeyReference(final int cryptoTokenId, final String keyAlias) {
+        this.signingKeyReference = cryptoTokenId + ";" + keyAlias;
+    }
+
 }
@@ -0,0 +1,413 @@
+/*************************************************************************
+ *                                                                       *
+ *  CESeCore: CE Security Core                                           *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.cesecore.certificates.ocsp.cache;
+
+import java.math.BigInteger;
+import java.util.Arrays;
+
+import org.cesecore.certificates.certificate.CertificateConstants;
+import org.cesecore.certificates.certificate.CertificateStatus;
+import org.cesecore.certificates.crl.RevokedCertInfo;
+
+/**
+ * Immutable index of the certificate statuses of a single issuer, keyed on serial number.
+ * <p>
+ * Serial numbers are stored as fixed width, left zero padded, unsigned big-endian slots in one byte array and the
+ * status columns in parallel primitive arrays, so millions of certificates can be kept without a per-certificate
+ * object. Lookups are a binary search over the slots.
+ * <p>
+ * Updates produce a new instance. Changed rows are merged into a small "recent" segment that is searched before the
+ * large "base" segment, and the recent segment is only folded into the base once it has grown to a fraction of it.
+ * This keeps the cost of a periodic refresh proportional to the number of changes rather than to the size of the index.
+ * Removed certificates are kept as markers in the recent segment, so that they aren't found in the base segment, and are
+ * dropped when the recent segment is folded into the base.
+ *
+ * @version $Id$
+ */
+public final class RevocationStatusIndex {
+
+    /** An index without any entries, to be used as a starting point when building a new index. */
+    public static final RevocationStatusIndex EMPTY = new RevocationStatusIndex(Segment.EMPTY, Segment.EMPTY, -1L);
+
+    /** The recent segment is folded into the base segment when it is larger than this or than 1/16 of the base. */
+    private static final int MIN_COMPACTION_SIZE = 4096;
+
+    /** Value of the revoked column for a certificate that has been removed */
+    private static final byte REMOVED = 2;
+
+    private final Segment base;
+    private final Segment recent;
+    private final long highestUpdateTime;
+
+    private RevocationStatusIndex(final Segment base, final Segment recent, final long highestUpdateTime) {
+        this.base = base;
+        this.recent = recent;
+        this.highestUpdateTime = highestUpdateTime;
+    }
+
+    /**
+     * Look up the status of a certificate. The status is derived the same way as for a database lookup, see
+     * CertificateStatusHelper.
+     *
+     * @param serialNumber the certificate serial number
+     * @return the status of the certificate with the expiration date set, or null if the serial number is not in the index
+     */
+    public CertificateStatus getStatus(final BigInteger serialNumber) {
+        if (serialNumber.signum() < 0) {
+            return null;
+        }
+        final byte[] key = getMagnitude(serialNumber);
+        int index = recent.indexOf(key);
+        if (index >= 0) {
+            return recent.revoked[index] == REMOVED ? null : recent.getStatus(index);
+        }
+        index = base.indexOf(key);
+        if (index >= 0) {
+            return base.getStatus(index);
+        }
+        return null;
+    }
+
+    /** @return the highest CertificateData.updateTime that has been applied to this index, or -1 if nothing has been applied */
+    public long getHighestUpdateTime() {
+        return highestUpdateTime;
+    }
+
+    /**
+     * @return the number of index slots in use. A certificate that has been updated or removed since the last compaction is counted twice.
+     */
+    public int getSize() {
+        return base.size + recent.size;
+    }
+
+    /**
+     * Apply a set of changes. Applying the same row more than once is harmless, so callers can re-read an overlapping
+     * window of changes to be safe against rows committed out of updateTime order.
+     *
+     * @param updates the changed rows. Where a serial number occurs more than once, the row added last wins.
+     * @param highestUpdateTime the highest CertificateData.updateTime of the applied rows, or of the index so far if higher
+     * @return a new index with the updates applied
+     */
+    public RevocationStatusIndex withUpdates(final Updates updates, final long highestUpdateTime) {
+        final long newHighestUpdateTime = Math.max(this.highestUpdateTime, highestUpdateTime);
+        if (updates.isEmpty()) {
+            return newHighestUpdateTime == this.highestUpdateTime ? this : new RevocationStatusIndex(base, recent, newHighestUpdateTime);
+        }
+        final Segment updated = updates.toSegment();
+        if (base.size == 0) {
+            // Initial load, go straight to the base segment
+            return new RevocationStatusIndex(Segment.merge(recent, updated, true), Segment.EMPTY, newHighestUpdateTime);
+        }
+        final Segment newRecent = Segment.merge(recent, updated, false);
+        if (newRecent.size > Math.max(MIN_COMPACTION_SIZE, base.size / 16)) {
+            return new RevocationStatusIndex(Segment.merge(base, newRecent, true), Segment.EMPTY, newHighestUpdateTime);
+        }
+        return new RevocationStatusIndex(base, newRecent, newHighestUpdateTime);
+    }
+
+    /** @return the unsigned big-endian magnitude of a non-negative serial number without leading zero bytes */
+    private static byte[] getMagnitude(final BigInteger serialNumber) {
+        final byte[] encoded = serialNumber.toByteArray();
+        int offset = 0;
+        while (offset < encoded.length && encoded[offset] == 0) {
+            offset++;
+        }
+        return offset == 0 ? encoded : Arrays.copyOfRange(encoded, offset, encoded.length);
+    }
+
+    /** Compare two magnitudes without leading zero bytes as unsigned numbers. */
+    private static int compareMagnitudes(final byte[] a, final byte[] b) {
+        if (a.length != b.length) {
+            return a.length < b.length ? -1 : 1;
+        }
+        for (int i = 0; i < a.length; i++) {
+            final int diff = (a[i] & 0xff) - (b[i] & 0xff);
+            if (diff != 0) {
+                return diff;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Mutable collection of changed rows, in the order they were read from the database.
+     * Not thread safe.
+     */
+    public static final class Updates {
+        private byte[][] serials = new byte[64][];
+        private byte[] revoked = new byte[64];
+        private byte[] revocationReasons = new byte[64];
+        private long[] revocationDates = new long[64];
+        private long[] expireDates = new long[64];
+        private int[] certificateProfileIds = new int[64];
+        private int size = 0;
+        private int width = 1;
+
+        /**
+         * Add a row as read from CertificateData.
+         *
+         * @return false if the serial number can not be indexed (negative serial numbers are looked up in the database)
+         */
+        public boolean add(final BigInteger serialNumber, final int status, final int revocationReason, final long revocationDate,
+                final long expireDate, final int certificateProfileId) {
+            return add(serialNumber, (byte) (isRevoked(status, revocationReason) ? 1 : 0), revocationReason, revocationDate, expireDate,
+                    certificateProfileId);
+        }
+
+        /**
+         * Add a certificate that has been removed from CertificateData, so that it is no longer found in the index.
+         *
+         * @return false if the serial number can not be indexed
+         */
+        public boolean remove(final BigInteger serialNumber) {
+            return add(serialNumber, REMOVED, RevokedCertInfo.NOT_REVOKED, 0L, 0L, 0);
+        }
+
+        private boolean add(final BigInteger serialNumber, final byte revokedValue, final int revocationReason, final long revocationDate,
+                final long expireDate, final int certificateProfileId) {
+            if (serialNumber.signum() < 0) {
+                return false;
+            }
+            if (size == serials.length) {
+                final int capacity = size * 2;
+                serials = Arrays.copyOf(serials, capacity);
+                revoked = Arrays.copyOf(revoked, capacity);
+                revocationReasons = Arrays.copyOf(revocationReasons, capacity);
+                revocationDates = Arrays.copyOf(revocationDates, capacity);
+                expireDates = Arrays.copyOf(expireDates, capacity);
+                certificateProfileIds = Arrays.copyOf(certificateProfileIds, capacity);
+            }
+            final byte[] magnitude = getMagnitude(serialNumber);
+            width = Math.max(width, magnitude.length);
+            serials[size] = magnitude;
+            revoked[size] = revokedValue;
+            revocationReasons[size] = (byte) revocationReason;
+            revocationDates[size] = revocationDate;
+            expireDates[size] = expireDate;
+            certificateProfileIds[size] = certificateProfileId;
+            size++;
+            return true;
+        }
+
+        public boolean isEmpty() {
+            return size == 0;
+        }
+
+        public int size() {
+            return size;
+        }
+
+        /** @see org.cesecore.certificates.certificate.CertificateStatusHelper#getCertificateStatus */
+        private static boolean isRevoked(final int status, final int revocationReason) {
+            if (status == CertificateConstants.CERT_REVOKED) {
+                return true;
+            }
+            return status == CertificateConstants.CERT_ARCHIVED && revocationReason != RevokedCertInfo.REVOCATION_REASON_REMOVEFROMCRL
+                    && revocationReason != RevokedCertInfo.NOT_REVOKED;
+        }
+
+        /** @return a sorted segment where the last added row wins for duplicate serial numbers */
+        private Segment toSegment() {
+            final int[] order = new int[size];
+            for (int i = 0; i < size; i++) {
+                order[i] = i;
+            }
+            // Stable sort, so the last of a run of equal serial numbers is the last one added
+            mergeSort(order, new int[size], 0, size);
+            final Segment segment = new Segment(width, size);
+            int count = 0;
+            for (int i = 0; i < size; i++) {
+                if (i + 1 < size && compareMagnitudes(serials[order[i]], serials[order[i + 1]]) == 0) {
+                    continue;
+                }
+                final int row = order[i];
+                final byte[] magnitude = serials[row];
+                System.arraycopy(magnitude, 0, segment.serials, count * width + width - magnitude.length, magnitude.length);
+                segment.revoked[count] = revoked[row];
+                segment.revocationReasons[count] = revocationReasons[row];
+                segment.revocationDates[count] = revocationDates[row];
+                segment.expireDates[count] = expireDates[row];
+                segment.certificateProfileIds[count] = certificateProfileIds[row];
+                count++;
+            }
+            return segment.trim(count);
+        }
+
+        private void mergeSort(final int[] order, final int[] buffer, final int from, final int to) {
+            if (to - from < 2) {
+                return;
+            }
+            final int middle = (from + to) >>> 1;
+            mergeSort(order, buffer, from, middle);
+            mergeSort(order, buffer, middle, to);
+            if (compareMagnitudes(serials[order[middle - 1]], serials[order[middle]]) <= 0) {
+                return;
+            }
+            System.arraycopy(order, from, buffer, from, to - from);
+            int left = from;
+            int right = middle;
+            for (int i = from; i < to; i++) {
+                if (right >= to || (left < middle && compareMagnitudes(serials[buffer[left]], serials[buffer[right]]) <= 0)) {
+                    order[i] = buffer[left++];
+                } else {
+                    order[i] = buffer[right++];
+                }
+            }
+        }
+    }
+
+    /** Sorted, column oriented storage of index entries. Never modified once published. */
+    private static final class Segment {
+        private static final Segment EMPTY = new Segment(1, 0);
+
+        private final int width;
+        private final int size;
+        private final byte[] serials;
+        private final byte[] revoked;
+        private final byte[] revocationReasons;
+        private final long[] revocationDates;
+        private final long[] expireDates;
+        private final int[] certificateProfileIds;
+
+        private Segment(final int width, final int size) {
+            this(width, size, new byte[width * size], new byte[size], new byte[size], new long[size], new long[size], new int[size]);
+        }
+
+        private Segment(final int width, final int size, final byte[] serials, final byte[] revoked, final byte[] revocationReasons,
+                final long[] revocationDates, final long[] expireDates, final int[] certificateProfileIds) {
+            this.width = width;
+            this.size = size;
+            this.serials = serials;
+            this.revoked = revoked;
+            this.revocationReasons = revocationReasons;
+            this.revocationDates = revocationDates;
+            this.expireDates = expireDates;
+            this.certificateProfileIds = certificateProfileIds;
+        }
+
+        /** @return a segment holding only the first count entries */
+        private Segment trim(final int count) {
+            if (count == size) {
+                return this;
+            }
+            return new Segment(width, count, Arrays.copyOf(serials, count * width), Arrays.copyOf(revoked, count),
+                    Arrays.copyOf(revocationReasons, count), Arrays.copyOf(revocationDates, count), Arrays.copyOf(expireDates, count),
+                    Arrays.copyOf(certificateProfileIds, count));
+        }
+
+        /** @return the slot of the magnitude or -1 if it is not present */
+        private int indexOf(final byte[] key) {
+            if (key.length > width) {
+                return -1;
+            }
+            int low = 0;
+            int high = size - 1;
+            while (low <= high) {
+                final int middle = (low + high) >>> 1;
+                final int cmp = compareSlot(middle, key);
+                if (cmp < 0) {
+                    low = middle + 1;
+                } else if (cmp > 0) {
+                    high = middle - 1;
+                } else {
+                    return middle;
+                }
+            }
+            return -1;
+        }
+
+        /** Compare the serial number in a slot with a magnitude that is no wider than the slot. */
+        private int compareSlot(final int index, final byte[] key) {
+            final int offset = index * width;
+            final int padding = width - key.length;
+            for (int i = 0; i < padding; i++) {
+                if (serials[offset + i] != 0) {
+                    return 1;
+                }
+            }
+            for (int i = 0; i < key.length; i++) {
+                final int diff = (serials[offset + padding + i] & 0xff) - (key[i] & 0xff);
+                if (diff != 0) {
+                    return diff;
+                }
+            }
+            return 0;
+        }
+
+        /** Compare slot a of this segment with slot b of another segment of possibly different width. */
+        private int compareSlot(final int a, final Segment other, final int b) {
+            final int maxWidth = Math.max(width, other.width);
+            for (int i = 0; i < maxWidth; i++) {
+                final int diff = getPaddedByte(a, i, maxWidth) - other.getPaddedByte(b, i, maxWidth);
+                if (diff != 0) {
+                    return diff;
+                }
+            }
+            return 0;
+        }
+
+        private int getPaddedByte(final int index, final int position, final int paddedWidth) {
+            final int i = position - (paddedWidth - width);
+            return i < 0 ? 0 : serials[index * width + i] & 0xff;
+        }
+
+        private CertificateStatus getStatus(final int index) {
+            final String name = revoked[index] != 0 ? CertificateStatus.REVOKED.toString() : CertificateStatus.OK.toString();
+            final CertificateStatus status = new CertificateStatus(name, revocationDates[index], revocationReasons[index], certificateProfileIds[index]);
+            status.setExpirationDate(expireDates[index]);
+            return status;
+        }
+
+        private void copyEntry(final int from, final Segment target, final int to) {
+            System.arraycopy(serials, from * width, target.serials, to * target.width + target.width - width, width);
+            target.revoked[to] = revoked[from];
+            target.revocationReasons[to] = revocationReasons[from];
+            target.revocationDates[to] = revocationDates[from];
+            target.expireDates[to] = expireDates[from];
+            target.certificateProfileIds[to] = certificateProfileIds[from];
+        }
+
+        /**
+         * @param dropRemoved true if the markers of removed certificates should be left out, i.e. when nothing older is searched after the result
+         * @return a new segment with the entries of both segments, where newer wins for duplicate serial numbers
+         */
+        private static Segment merge(final Segment older, final Segment newer, final boolean dropRemoved) {
+            if (older.size == 0 && !dropRemoved) {
+                return newer;
+            }
+            final Segment merged = new Segment(Math.max(older.width, newer.width), older.size + newer.size);
+            int i = 0;
+            int j = 0;
+            int count = 0;
+            while (i < older.size || j < newer.size) {
+                final int cmp;
+                if (i >= older.size) {
+                    cmp = 1;
+                } else if (j >= newer.size) {
+                    cmp = -1;
+                } else {
+                    cmp = older.compareSlot(i, newer, j);
+                }
+                final Segment source = cmp < 0 ? older : newer;
+                final int index = cmp < 0 ? i++ : j++;
+                if (cmp == 0) {
+                    i++;
+                }
+                if (!dropRemoved || source.revoked[index] != REMOVED) {
+                    source.copyEntry(index, merged, count++);
+                }
+            }
+            return merged.trim(count);
+        }
+    }
+}
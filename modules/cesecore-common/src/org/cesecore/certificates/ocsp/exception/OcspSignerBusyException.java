@@ -0,0 +1,32 @@
+/*************************************************************************
+ *                                                                       *
+ *  CESeCore: CE Security Core                                           *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.cesecore.certificates.ocsp.exception;
+
+/**
+ * Thrown when an OCSP response can't be signed because too many signings are already waiting for the signing key.
+ * The client should be asked to try again later.
+ *
+ * @version $Id$
+ */
+public class OcspSignerBusyException extends OcspFailureException {
+
+    private static final long serialVersionUID = 1L;
+
+    public OcspSignerBusyException(String msg) {
+        super(msg);
+    }
+
+    public OcspSignerBusyException(String msg, Throwable t) {
+        super(msg, t);
+    }
+}
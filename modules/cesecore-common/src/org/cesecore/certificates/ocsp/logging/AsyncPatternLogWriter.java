@@ -0,0 +1,310 @@
+/*************************************************************************
+ *                                                                       *
+ *  CESeCore: CE Security Core                                           *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+
+package org.cesecore.certificates.ocsp.logging;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+import org.apache.log4j.Logger;
+import org.cesecore.config.OcspConfiguration;
+
+/**
+ * Writes OCSP transaction and audit log rows to log4j from a background thread, so that formatting and appending don't add to
+ * the response time. Request threads put finished records into a bounded lock-free ring buffer, which the writer thread drains.
+ * <p>
+ * When the buffer is full, records are dropped, or if {@link OcspConfiguration#isAsyncLogBlockWhenFull()} is set, the request
+ * thread waits up to {@link #MAX_BLOCK_MILLIS} for space before the record is dropped. Dropped records are counted.
+ * <p>
+ * The writer thread is started by the first record and stopped by {@link #shutdown()}, which the OCSP servlet calls when it is
+ * destroyed. Records submitted after that are written by the request thread, until {@link #start()} is called when the servlet
+ * is initialized again, e.g. after a redeploy.
+ *
+ * @version $Id$
+ */
+public enum AsyncPatternLogWriter {
+    INSTANCE;
+
+    private static final Logger log = Logger.getLogger(AsyncPatternLogWriter.class);
+
+    /** The longest time a request thread waits for space in the buffer, when blocking is enabled */
+    public static final long MAX_BLOCK_MILLIS = 1000;
+    /** How long the writer thread sleeps when the buffer is empty */
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(5);
+    /** The longest time {@link #shutdown()} waits for the queued records to be written */
+    private static final long SHUTDOWN_TIMEOUT_MILLIS = 10000;
+
+    /** A flushed log entry, formatted by the writer thread. */
+    static final class Record {
+        private final Logger logger;
+        private final PatternLogTemplate template;
+        private final List<String[]> rows;
+        private final String replyTime;
+        private final String processTime;
+
+        Record(final Logger logger, final PatternLogTemplate template, final List<String[]> rows, final String replyTime, final String processTime) {
+            this.logger = logger;
+            this.template = template;
+            this.rows = rows;
+            this.replyTime = replyTime;
+            this.processTime = processTime;
+        }
+
+        String format() {
+            final StringBuilder sb = new StringBuilder();
+            for (final String[] row : rows) {
+                if (sb.length() > 0) {
+                    sb.append(System.lineSeparator());
+                }
+                template.appendTo(sb, row, replyTime, processTime);
+            }
+            return sb.toString();
+        }
+    }
+
+    /**
+     * Bounded multi-producer ring buffer. Each slot has a sequence number telling whether it is free for the producer claiming
+     * position p (sequence == p) or holds a record for the consumer at position p (sequence == p + 1).
+     */
+    private static final class RingBuffer {
+        private final int mask;
+        private final AtomicReferenceArray<Record> records;
+        private final AtomicLongArray sequences;
+        private final AtomicLong tail = new AtomicLong();
+        /** Only written by the writer thread */
+        private volatile long head = 0;
+        /** Set when the writer thread should exit once the buffer is empty */
+        private volatile boolean closed = false;
+        /** The thread draining the buffer */
+        private volatile Thread writer;
+
+        private RingBuffer(final int requestedCapacity) {
+            final int capacity = Integer.highestOneBit(Math.max(2, requestedCapacity - 1)) << 1;
+            mask = capacity - 1;
+            records = new AtomicReferenceArray<>(capacity);
+            sequences = new AtomicLongArray(capacity);
+            for (int i = 0; i < capacity; i++) {
+                sequences.set(i, i);
+            }
+        }
+
+        private boolean offer(final Record record) {
+            while (true) {
+                final long position = tail.get();
+                final int index = (int) (position & mask);
+                final long difference = sequences.get(index) - position;
+                if (difference == 0) {
+                    if (tail.compareAndSet(position, position + 1)) {
+                        records.set(index, record);
+                        sequences.set(index, position + 1);
+                        return true;
+                    }
+                } else if (difference < 0) {
+                    // The slot has not been consumed since the last lap, i.e. the buffer is full
+                    return false;
+                }
+                // Another producer claimed the position, try the next one
+            }
+        }
+
+        private Record poll() {
+            final long position = head;
+            final int index = (int) (position & mask);
+            if (sequences.get(index) != position + 1) {
+                return null;
+            }
+            final Record record = records.get(index);
+            records.set(index, null);
+            sequences.set(index, position + mask + 1);
+            head = position + 1;
+            return record;
+        }
+
+        private int size() {
+            return (int) Math.max(0, tail.get() - head);
+        }
+    }
+
+    private final LongAdder written = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+    private volatile RingBuffer buffer;
+    private volatile Thread writerThread;
+    private volatile boolean shutDown = false;
+
+    /**
+     * Queue a record for writing.
+     *
+     * @return false if the record was dropped because the buffer was full
+     */
+    boolean submit(final Record record) {
+        final RingBuffer ringBuffer = getBuffer();
+        if (ringBuffer == null) {
+            write(record);
+            return true;
+        }
+        if (ringBuffer.offer(record)) {
+            writeIfClosed(ringBuffer);
+            return true;
+        }
+        if (OcspConfiguration.isAsyncLogBlockWhenFull()) {
+            final long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(MAX_BLOCK_MILLIS);
+            do {
+                LockSupport.parkNanos(TimeUnit.MICROSECONDS.toNanos(100));
+                if (ringBuffer.offer(record)) {
+                    writeIfClosed(ringBuffer);
+                    return true;
+                }
+            } while (System.nanoTime() < deadline);
+        }
+        dropped.increment();
+        return false;
+    }
+
+    /**
+     * A record may be queued in a buffer that was closed by {@link #shutdown()} concurrently, after the writer thread checked the
+     * buffer for the last time. Such records are written by the calling thread once the writer thread has exited.
+     */
+    private void writeIfClosed(final RingBuffer ringBuffer) {
+        if (ringBuffer.closed) {
+            writeRemaining(ringBuffer, MAX_BLOCK_MILLIS);
+        }
+    }
+
+    /**
+     * Writes the records left in a closed buffer, after waiting for the writer thread to exit. Records that can't be written
+     * because the writer thread is still busy are left to the writer thread.
+     *
+     * @param waitMillis the longest time to wait for the writer thread to exit
+     */
+    private void writeRemaining(final RingBuffer ringBuffer, final long waitMillis) {
+        final Thread thread = ringBuffer.writer;
+        try {
+            thread.join(waitMillis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (thread.isAlive()) {
+            return;
+        }
+        // Only one thread at a time may take records from the buffer
+        synchronized (ringBuffer) {
+            Record record;
+            while ((record = ringBuffer.poll()) != null) {
+                write(record);
+            }
+        }
+    }
+
+    /** @return the buffer, after starting the writer thread if needed, or null if the writer has been shut down */
+    private RingBuffer getBuffer() {
+        RingBuffer ringBuffer = buffer;
+        if (ringBuffer == null) {
+            synchronized (this) {
+                ringBuffer = buffer;
+                if (ringBuffer == null && !shutDown) {
+                    ringBuffer = new RingBuffer(OcspConfiguration.getAsyncLogBufferSize());
+                    buffer = ringBuffer;
+                    final RingBuffer drained = ringBuffer;
+                    final Thread thread = new Thread(() -> drain(drained), "OcspLogWriter");
+                    thread.setDaemon(true);
+                    drained.writer = thread;
+                    thread.start();
+                    writerThread = thread;
+                }
+            }
+        }
+        return ringBuffer;
+    }
+
+    private void drain(final RingBuffer ringBuffer) {
+        while (true) {
+            // Read before polling, so that the records queued before the buffer was closed are written before the thread exits
+            final boolean closed = ringBuffer.closed;
+            final Record record = ringBuffer.poll();
+            if (record == null) {
+                if (closed || Thread.currentThread().isInterrupted()) {
+                    return;
+                }
+                LockSupport.parkNanos(IDLE_PARK_NANOS);
+                continue;
+            }
+            write(record);
+        }
+    }
+
+    private void write(final Record record) {
+        try {
+            record.logger.debug(record.format());
+            written.increment();
+        } catch (RuntimeException e) {
+            log.error("Failed to write OCSP log record.", e);
+        }
+    }
+
+    /**
+     * Lets the writer thread be started again by the next record, after {@link #shutdown()}. Called when the OCSP servlet is
+     * initialized.
+     */
+    public void start() {
+        synchronized (this) {
+            shutDown = false;
+        }
+    }
+
+    /**
+     * Writes the records in the buffer and stops the writer thread. Waits up to {@link #SHUTDOWN_TIMEOUT_MILLIS} for the
+     * queued records to be written. Records submitted afterwards are written by the calling thread, until {@link #start()}
+     * is called.
+     */
+    public void shutdown() {
+        final RingBuffer ringBuffer;
+        final Thread thread;
+        synchronized (this) {
+            shutDown = true;
+            ringBuffer = buffer;
+            thread = writerThread;
+            buffer = null;
+            writerThread = null;
+        }
+        if (ringBuffer == null) {
+            return;
+        }
+        ringBuffer.closed = true;
+        LockSupport.unpark(thread);
+        writeRemaining(ringBuffer, SHUTDOWN_TIMEOUT_MILLIS);
+        if (thread.isAlive()) {
+            log.warn("The OCSP log writer did not finish within " + SHUTDOWN_TIMEOUT_MILLIS + " ms, " + ringBuffer.size() + " records were not written.");
+        }
+    }
+
+    /** @return the number of records written to log4j */
+    public long getWritten() {
+        return written.sum();
+    }
+
+    /** @return the number of records dropped because the buffer was full */
+    public long getDropped() {
+        return dropped.sum();
+    }
+
+    /** @return the approximate number of records waiting to be written */
+    public int getQueueSize() {
+        final RingBuffer ringBuffer = buffer;
+        return ringBuffer == null ? 0 : ringBuffer.size();
+    }
+}
@@ -0,0 +1,102 @@
+/*************************************************************************
+ *                                                                       *
+ *  CESeCore: CE Security Core                                           *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+
+package org.cesecore.certificates.ocsp.logging;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * A log order string compiled with its match pattern into literal text and numbered value slots, so that a log row can be produced
+ * by appending values from an array instead of running the regular expression for every row. Templates are immutable and
+ * shared by all loggers using the same pattern and order string.
+ *
+ * @version $Id$
+ */
+final class PatternLogTemplate {
+
+    private static final Map<String, PatternLogTemplate> templates = new ConcurrentHashMap<>();
+
+    /** Literal text before each slot, and after the last slot */
+    private final String[] literals;
+    /** The slot of each placeholder in the order string. The same key may occur more than once. */
+    private final int[] placeholderSlots;
+    /** The text of each placeholder, written when the slot has no value */
+    private final String[] placeholders;
+    private final Map<String, Integer> slots;
+    private final int length;
+
+    private PatternLogTemplate(final String matchPattern, final String matchString) {
+        final List<String> literalList = new ArrayList<>();
+        final List<Integer> slotList = new ArrayList<>();
+        final List<String> placeholderList = new ArrayList<>();
+        slots = new HashMap<>();
+        final Matcher matcher = Pattern.compile(matchPattern).matcher(matchString);
+        int position = 0;
+        while (matcher.find()) {
+            literalList.add(matchString.substring(position, matcher.start()));
+            // when the pattern is ${identifier}, group 1 is 'identifier'
+            slotList.add(slots.computeIfAbsent(matcher.group(1), key -> slots.size()));
+            placeholderList.add(matcher.group(0));
+            position = matcher.end();
+        }
+        literalList.add(matchString.substring(position));
+        literals = literalList.toArray(new String[0]);
+        placeholderSlots = slotList.stream().mapToInt(Integer::intValue).toArray();
+        placeholders = placeholderList.toArray(new String[0]);
+        length = matchString.length();
+    }
+
+    /** @return the template for the pattern and order string, compiled the first time it is requested */
+    static PatternLogTemplate getInstance(final String matchPattern, final String matchString) {
+        return templates.computeIfAbsent(matchPattern + '\0' + matchString, key -> new PatternLogTemplate(matchPattern, matchString));
+    }
+
+    /** @return the number of distinct keys in the order string */
+    int getSlotCount() {
+        return slots.size();
+    }
+
+    /** @return the slot of the key, or -1 if the key is not used in the order string */
+    int getSlot(final String key) {
+        final Integer slot = slots.get(key);
+        return slot == null ? -1 : slot;
+    }
+
+    /**
+     * Appends a log row to the builder. Slots without value are written as the placeholder itself. Values equal to the
+     * {@link PatternLogger#REPLY_TIME} and {@link PatternLogger#PROCESS_TIME} markers are replaced with the given times, if not null.
+     */
+    void appendTo(final StringBuilder sb, final String[] values, final String replyTime, final String processTime) {
+        sb.ensureCapacity(sb.length() + length);
+        for (int i = 0; i < placeholderSlots.length; i++) {
+            sb.append(literals[i]);
+            final String value = values[placeholderSlots[i]];
+            if (value == null) {
+                sb.append(placeholders[i]);
+            } else if (replyTime != null && PatternLogger.REPLY_TIME.equals(value)) {
+                sb.append(replyTime);
+            } else if (processTime != null && PatternLogger.PROCESS_TIME.equals(value)) {
+                sb.append(processTime);
+            } else {
+                sb.append(value);
+            }
+        }
+        sb.append(literals[literals.length - 1]);
+    }
+}
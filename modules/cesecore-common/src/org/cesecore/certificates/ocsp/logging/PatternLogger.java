@@ -17,23 +17,23 @@ import org.apache.commons.lang.StringUtils;
 import org.apache.commons.lang.time.FastDateFormat;
 import org.apache.log4j.Logger;
 import org.bouncycastle.util.encoders.Hex;
+import org.cesecore.config.OcspConfiguration;
 
-import java.io.PrintWriter;
 import java.io.Serializable;
-import java.io.StringWriter;
+import java.util.ArrayList;
 import java.util.Date;
-import java.util.HashMap;
-import java.util.Map;
+import java.util.List;
 import java.util.TimeZone;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 /**
- * This class can be extended to create highly configurable log classes. Values that are to be logged are stored in a Hashmap and the output is
- * configured using a Java.util.regex.Matcher and a sortString. The extending classes also need to supply a Logger and a String specifying how to log
- * Dates.
+ * This class can be extended to create highly configurable log classes. The output is configured using a regular expression and a sortString,
+ * which are compiled once into a {@link PatternLogTemplate}. Values that are to be logged are stored in an array with one slot per key in the
+ * sortString, and values for keys that are not logged are ignored. The extending classes also need to supply a Logger and a String specifying
+ * how to log Dates.
  * 
  * Use paramPut(String key, String value) to add values, Use writeln() to log all the stored values and then use flush() to store them to file.
+ * If {@link OcspConfiguration#isAsyncLogEnabled()} is set, flush() hands the rows to {@link AsyncPatternLogWriter} instead of writing them on
+ * the calling thread.
  * 
  * Roughly based on PatternLogger.java 8663 2010-02-17 10:42:41Z anatom from EJBCA
  * 
@@ -82,12 +82,11 @@ public abstract class PatternLogger implements Serializable {
      */
     public static final String PROCESS_TIME = "PROCESS_TIME";
 
-    private final Map<String, String> valuepairs = new HashMap<>();
     private final String matchString;
     private final String matchPattern;
-    // Matcher is not Serializable
-    private transient Matcher m;
-    private final String orderString;
+    // The template is shared between loggers and is rebuilt from matchPattern and matchString after deserialization
+    private transient PatternLogTemplate template;
+    private final String[] values;
     private final Date startTime;
     private Date startProcessTime = null;
     private boolean doLogging;
@@ -95,9 +94,8 @@ public abstract class PatternLogger implements Serializable {
     // Logger is not Serializable
     private transient Logger logger;
 
-    // for writing the output
-    private transient StringWriter sw;
-    private transient PrintWriter pw;
+    // Rows added by writeln() that have not been flushed yet
+    private transient List<String[]> rows;
 
     /**
      * @param doLogging
@@ -116,7 +114,7 @@ public abstract class PatternLogger implements Serializable {
         this.doLogging = doLogging;
         this.matchString = matchString;
         this.matchPattern = matchPattern;
-        this.orderString = matchString;
+        this.values = new String[getTemplate().getSlotCount()];
         this.loggerClass = loggerClass;
         this.startTime = new Date();
         final FastDateFormat dateformat;
@@ -130,13 +128,12 @@ public abstract class PatternLogger implements Serializable {
         this.paramPut(LOG_ID, "0");
     }
     
-    private Matcher getMatcher() {
-        if (this.m == null) {
-            // We have to instantiate the Matcher in the class and can not have it as an instance variable.
-            // This is because we are sending this object to a remote EJB (at least in system tests)
-            this.m = Pattern.compile(matchPattern).matcher(matchString);
+    private PatternLogTemplate getTemplate() {
+        if (this.template == null) {
+            // The template is not Serializable, since we are sending this object to a remote EJB (at least in system tests)
+            this.template = PatternLogTemplate.getInstance(matchPattern, matchString);
         }
-        return this.m;
+        return this.template;
     }
 
     private Logger getLogger() {
@@ -148,40 +145,13 @@ public abstract class PatternLogger implements Serializable {
         return this.logger;
     }
 
-    private PrintWriter getPrintWriter() {
-        if (this.pw == null) {
-            this.sw = new StringWriter();
-            this.pw = new PrintWriter(this.sw);
-        }
-        return pw;
-    }
-    
     /**
      * 
-     * @return output to be logged
+     * @return output to be logged. Keys without value are left as they are in the pattern.
      */
     public String interpolate() {
-        final StringBuffer sb = new StringBuffer(this.orderString.length());
-        final Matcher matcher = getMatcher();
-        matcher.reset();
-        while (matcher.find()) {
-            // when the pattern is ${identifier}, group 0 is 'identifier'
-            final String key = matcher.group(1);
-            final String value = this.valuepairs.get(key);
-
-            // if the pattern does exists, replace it by its value
-            // otherwise keep the pattern ( it is group(0) )
-            if (value != null) {
-                matcher.appendReplacement(sb, value);
-            } else {
-                // I'm doing this to avoid the backreference problem as there will be a $
-                // if I replace directly with the group 0 (which is also a pattern)
-                matcher.appendReplacement(sb, "");
-                final String unknown = matcher.group(0);
-                sb.append(unknown);
-            }
-        }
-        matcher.appendTail(sb);
+        final StringBuilder sb = new StringBuilder();
+        getTemplate().appendTo(sb, values, null, null);
         return sb.toString();
     }
 
@@ -192,7 +162,10 @@ public abstract class PatternLogger implements Serializable {
      * @param value
      */
     public void paramPut(String key, byte[] value) {
-        paramPut(key, new String(Hex.encode(value)));
+        // Don't encode values that are not logged
+        if (getTemplate().getSlot(key) >= 0) {
+            paramPut(key, new String(Hex.encode(value)));
+        }
     }
 
     /**
@@ -201,11 +174,9 @@ public abstract class PatternLogger implements Serializable {
      * @param value
      */
     public void paramPut(String key, String value) {
-        // logger.debug("paramput: "+ key+ ";" +value +";" +valuepairs.toString());
-        if (value == null) {
-            this.valuepairs.put(key, "");
-        } else {
-            this.valuepairs.put(key, value);
+        final int slot = getTemplate().getSlot(key);
+        if (slot >= 0) {
+            this.values[slot] = value == null ? "" : value;
         }
         if (StringUtils.equals(key, PROCESS_TIME)) {
             startProcessTime = new Date();
@@ -218,10 +189,9 @@ public abstract class PatternLogger implements Serializable {
      * @param value
      */
     public void paramPut(String key, Integer value) {
-        if (value == null) {
-            this.valuepairs.put(key, "");
-        } else {
-            this.valuepairs.put(key, value.toString());
+        final int slot = getTemplate().getSlot(key);
+        if (slot >= 0) {
+            this.values[slot] = value == null ? "" : value.toString();
         }
     }
 
@@ -230,7 +200,11 @@ public abstract class PatternLogger implements Serializable {
      */
     public void writeln() {
         if (doLogging) {
-            getPrintWriter().println(interpolate());
+            if (rows == null) {
+                rows = new ArrayList<>(1);
+            }
+            // The row is formatted when flushed, so keep the values as they are now
+            rows.add(values.clone());
         }
     }
 
@@ -238,18 +212,17 @@ public abstract class PatternLogger implements Serializable {
      * Writes all the rows created by writeln() to the Logger
      */
     public void flush() {
-        if (doLogging) {
-            getPrintWriter().flush();
-            String output = this.sw.toString();
-            output = output.replaceAll(REPLY_TIME, String.valueOf(new Date().getTime() - this.startTime.getTime()));
-            if (startProcessTime != null) {
-                output = output.replaceAll(PROCESS_TIME, String.valueOf(new Date().getTime() - this.startProcessTime.getTime()));
-            }
-            //Remove an extra linebreak between flushes.
-            if(output.endsWith(System.getProperty("line.separator"))) {
-                output = output.substring(0, output.length()-1);
+        if (doLogging && rows != null && !rows.isEmpty() && getLogger().isDebugEnabled()) {
+            final long now = System.currentTimeMillis();
+            final String replyTime = String.valueOf(now - this.startTime.getTime());
+            final String processTime = startProcessTime == null ? null : String.valueOf(now - this.startProcessTime.getTime());
+            final AsyncPatternLogWriter.Record record = new AsyncPatternLogWriter.Record(getLogger(), getTemplate(), rows, replyTime, processTime);
+            rows = null;
+            if (OcspConfiguration.isAsyncLogEnabled()) {
+                AsyncPatternLogWriter.INSTANCE.submit(record);
+            } else {
+                getLogger().debug(record.format()); // Finally output the log row to the logging device
             }
-            getLogger().debug(output); // Finally output the log row to the logging device
         }
     }
 
@@ -0,0 +1,133 @@
+/*************************************************************************
+ *                                                                       *
+ *  CESeCore: CE Security Core                                           *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+
+package org.cesecore.certificates.ocsp.metrics;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Histogram of durations in the style of HdrHistogram: values are counted in buckets of exponentially growing size, each split into
+ * 32 linear sub-buckets, so percentiles are reported with a relative error of at most about 3% regardless of the magnitude.
+ * Values are recorded in microseconds, up to about three days. Recording is lock-free and never allocates.
+ *
+ * @version $Id$
+ */
+public final class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 5;
+    private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+    /** Index of the highest bit of the largest value that can be recorded. Larger values are recorded as the largest value. */
+    private static final int MAX_MAGNITUDE = 37;
+    private static final long MAX_VALUE = (1L << (MAX_MAGNITUDE + 1)) - 1;
+    private static final int BUCKET_COUNT = (MAX_MAGNITUDE - SUB_BUCKET_BITS + 2) * SUB_BUCKET_COUNT;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT);
+    private final LongAdder sum = new LongAdder();
+    private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+    /** A consistent enough copy of the histogram, taken when metrics are read. */
+    public static final class Snapshot {
+        private final long[] counts;
+        private final long count;
+        private final long sumMicros;
+        private final long maxMicros;
+
+        private Snapshot(final long[] counts, final long count, final long sumMicros, final long maxMicros) {
+            this.counts = counts;
+            this.count = count;
+            this.sumMicros = sumMicros;
+            this.maxMicros = maxMicros;
+        }
+
+        /** @return the number of recorded values */
+        public long getCount() {
+            return count;
+        }
+
+        /** @return the sum of the recorded values in microseconds */
+        public long getSumMicros() {
+            return sumMicros;
+        }
+
+        /** @return the largest recorded value in microseconds */
+        public long getMaxMicros() {
+            return maxMicros;
+        }
+
+        /**
+         * @param percentile a percentile between 0 and 100
+         * @return the highest value in microseconds that is within the given percentage of recorded values, or 0 if no values are recorded
+         */
+        public long getValueAtPercentile(final double percentile) {
+            if (count == 0) {
+                return 0;
+            }
+            final long rank = Math.max(1, (long) Math.ceil(Math.min(100, percentile) / 100 * count));
+            long seen = 0;
+            for (int i = 0; i < counts.length; i++) {
+                seen += counts[i];
+                if (seen >= rank) {
+                    return Math.min(getHighestEquivalentValue(i), maxMicros);
+                }
+            }
+            return maxMicros;
+        }
+    }
+
+    /** Records a duration measured with {@link System#nanoTime()}. */
+    public void recordNanos(final long nanos) {
+        recordMicros(TimeUnit.NANOSECONDS.toMicros(nanos));
+    }
+
+    /** Records a duration in microseconds. Negative values are recorded as 0. */
+    public void recordMicros(final long micros) {
+        final long value = Math.min(Math.max(0, micros), MAX_VALUE);
+        counts.incrementAndGet(getIndex(value));
+        sum.add(value);
+        max.accumulate(value);
+    }
+
+    /** @return a copy of the recorded values */
+    public Snapshot getSnapshot() {
+        final long[] copy = new long[BUCKET_COUNT];
+        long count = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            copy[i] = counts.get(i);
+            count += copy[i];
+        }
+        return new Snapshot(copy, count, sum.sum(), max.get());
+    }
+
+    static int getIndex(final long value) {
+        if (value < SUB_BUCKET_COUNT) {
+            return (int) value;
+        }
+        final int magnitude = 63 - Long.numberOfLeadingZeros(value);
+        final int subBucket = (int) (value >>> (magnitude - SUB_BUCKET_BITS)) & (SUB_BUCKET_COUNT - 1);
+        return (magnitude - SUB_BUCKET_BITS + 1) * SUB_BUCKET_COUNT + subBucket;
+    }
+
+    /** @return the largest value that is counted in the bucket with the given index */
+    static long getHighestEquivalentValue(final int index) {
+        if (index < SUB_BUCKET_COUNT) {
+            return index;
+        }
+        final int magnitude = index / SUB_BUCKET_COUNT + SUB_BUCKET_BITS - 1;
+        final int shift = magnitude - SUB_BUCKET_BITS;
+        final long lowestValue = (1L << magnitude) | ((long) (index % SUB_BUCKET_COUNT) << shift);
+        return lowestValue + (1L << shift) - 1;
+    }
+}
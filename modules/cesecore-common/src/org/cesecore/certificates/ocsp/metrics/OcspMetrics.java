@@ -0,0 +1,304 @@
+/*************************************************************************
+ *                                                                       *
+ *  CESeCore: CE Security Core                                           *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+
+package org.cesecore.certificates.ocsp.metrics;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntSupplier;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.apache.log4j.Logger;
+import org.cesecore.certificates.ocsp.logging.AsyncPatternLogWriter;
+
+/**
+ * Metrics of the OCSP responder: responses, certificate statuses, cache hit ratios and latencies per CA and OCSP key binding, the
+ * depth of the signing queues, and the responses written by the OCSP servlet. Recording is lock-free. The metrics are read in the
+ * Prometheus text exposition format by the healthcheck servlet, and through JMX as {@value #OBJECT_NAME}.
+ * <p>
+ * Counters are never reset, so rates are computed by the monitoring system from the difference between two scrapes.
+ *
+ * @version $Id$
+ */
+public enum OcspMetrics implements OcspMetricsMXBean {
+    INSTANCE;
+
+    /** The name of the MBean in the platform MBean server */
+    public static final String OBJECT_NAME = "org.cesecore:type=OcspMetrics";
+
+    private static final Logger log = Logger.getLogger(OcspMetrics.class);
+
+    private static final double[] QUANTILES = { 0.5, 0.9, 0.99, 0.999 };
+    private static final String[] HTTP_METHODS = { "GET", "POST", "OTHER" };
+    /** A constant, since the enum constant is created before the array is */
+    private static final int HTTP_METHOD_COUNT = 3;
+    private static final int OTHER_METHOD = HTTP_METHOD_COUNT - 1;
+
+    static {
+        INSTANCE.registerMBean();
+    }
+
+    /** Receives the metrics when they are read, one family at a time. */
+    private interface SampleWriter {
+        void family(String name, String type, String help);
+
+        void sample(String name, String labels, double value);
+    }
+
+    private final Map<String, Map<String, OcspResponderMetrics>> responders = new ConcurrentHashMap<>();
+    private final OcspResponderMetrics unknownResponder = new OcspResponderMetrics("", "");
+    private final Map<String, IntSupplier> signingQueueDepths = new ConcurrentHashMap<>();
+    private final LongAdder[][] httpResponses = new LongAdder[HTTP_METHOD_COUNT][OcspResponderMetrics.RESPONSE_STATUS_NAMES.length];
+    private final LatencyHistogram httpLatency = new LatencyHistogram();
+
+    private OcspMetrics() {
+        for (final LongAdder[] statuses : httpResponses) {
+            for (int i = 0; i < statuses.length; i++) {
+                statuses[i] = new LongAdder();
+            }
+        }
+    }
+
+    private void registerMBean() {
+        try {
+            final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            final ObjectName objectName = new ObjectName(OBJECT_NAME);
+            if (server.isRegistered(objectName)) {
+                // Left behind by a previous deployment of the application
+                server.unregisterMBean(objectName);
+            }
+            server.registerMBean(this, objectName);
+        } catch (JMException | RuntimeException e) {
+            log.warn("Unable to register OCSP metrics in JMX: " + e.getMessage());
+        }
+    }
+
+    /**
+     * @param caSubjectDn the subject DN of the CA the response is for
+     * @param keyBindingName the name of the OCSP key binding signing the response, or an empty String if the CA signs it
+     * @return the metrics of the CA and key binding, created the first time they are requested
+     */
+    public OcspResponderMetrics getResponderMetrics(final String caSubjectDn, final String keyBindingName) {
+        final String ca = caSubjectDn == null ? "" : caSubjectDn;
+        final String keyBinding = keyBindingName == null ? "" : keyBindingName;
+        Map<String, OcspResponderMetrics> keyBindings = responders.get(ca);
+        if (keyBindings == null) {
+            keyBindings = responders.computeIfAbsent(ca, key -> new ConcurrentHashMap<>());
+        }
+        final OcspResponderMetrics metrics = keyBindings.get(keyBinding);
+        return metrics != null ? metrics : keyBindings.computeIfAbsent(keyBinding, key -> new OcspResponderMetrics(ca, key));
+    }
+
+    /** @return the metrics of requests that could not be attributed to a CA, for example because the CA is not known to this responder */
+    public OcspResponderMetrics getUnknownResponderMetrics() {
+        return unknownResponder;
+    }
+
+    /**
+     * Registers the queue of signing tasks of a signing key, so its depth is reported with the metrics.
+     *
+     * @param signingKey the ID of the crypto token and the alias of the key, separated by ';'
+     * @param queueDepth returns the number of responses waiting to be signed
+     */
+    public void setSigningQueueDepth(final String signingKey, final IntSupplier queueDepth) {
+        signingQueueDepths.put(signingKey, queueDepth);
+    }
+
+    /**
+     * Counts a response written by the OCSP servlet.
+     *
+     * @param method the HTTP method of the request
+     * @param status the OCSP response status
+     * @param nanos the time from the start of the request until the response was written, measured with {@link System#nanoTime()}
+     */
+    public void httpResponse(final String method, final int status, final long nanos) {
+        int methodIndex = OTHER_METHOD;
+        for (int i = 0; i < OTHER_METHOD; i++) {
+            if (HTTP_METHODS[i].equals(method)) {
+                methodIndex = i;
+            }
+        }
+        final boolean knownStatus = status >= 0 && status < OcspResponderMetrics.RESPONSE_STATUS_NAMES.length
+                && OcspResponderMetrics.RESPONSE_STATUS_NAMES[status] != null;
+        httpResponses[methodIndex][knownStatus ? status : 2].increment();
+        httpLatency.recordNanos(nanos);
+    }
+
+    @Override
+    public long getResponses() {
+        long responses = 0;
+        for (final OcspResponderMetrics metrics : getAllResponderMetrics()) {
+            for (int status = 0; status < OcspResponderMetrics.RESPONSE_STATUS_NAMES.length; status++) {
+                if (OcspResponderMetrics.RESPONSE_STATUS_NAMES[status] != null) {
+                    responses += metrics.getResponses(status);
+                }
+            }
+        }
+        return responses;
+    }
+
+    @Override
+    public int getSigningQueueDepth() {
+        int depth = 0;
+        for (final IntSupplier queueDepth : signingQueueDepths.values()) {
+            depth += queueDepth.getAsInt();
+        }
+        return depth;
+    }
+
+    @Override
+    public Map<String, Double> getSamples() {
+        final Map<String, Double> samples = new LinkedHashMap<>();
+        collect(new SampleWriter() {
+            @Override
+            public void family(final String name, final String type, final String help) {
+                // Not included
+            }
+
+            @Override
+            public void sample(final String name, final String labels, final double value) {
+                samples.put(labels.isEmpty() ? name : name + "{" + labels + "}", value);
+            }
+        });
+        return samples;
+    }
+
+    @Override
+    public String getPrometheusText() {
+        final StringBuilder sb = new StringBuilder(8192);
+        collect(new SampleWriter() {
+            @Override
+            public void family(final String name, final String type, final String help) {
+                sb.append("# HELP ").append(name).append(' ').append(help).append('\n');
+                sb.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+            }
+
+            @Override
+            public void sample(final String name, final String labels, final double value) {
+                sb.append(name);
+                if (!labels.isEmpty()) {
+                    sb.append('{').append(labels).append('}');
+                }
+                sb.append(' ');
+                if (value == Math.rint(value) && Math.abs(value) < 1e15) {
+                    sb.append((long) value);
+                } else {
+                    sb.append(value);
+                }
+                sb.append('\n');
+            }
+        });
+        return sb.toString();
+    }
+
+    /** @return the metrics of all responders, the unknown responder first and the others ordered by CA and key binding */
+    private List<OcspResponderMetrics> getAllResponderMetrics() {
+        final List<OcspResponderMetrics> all = new ArrayList<>();
+        for (final Map<String, OcspResponderMetrics> keyBindings : responders.values()) {
+            all.addAll(keyBindings.values());
+        }
+        all.sort(Comparator.comparing(OcspResponderMetrics::getCaSubjectDn).thenComparing(OcspResponderMetrics::getKeyBindingName));
+        all.add(0, unknownResponder);
+        return all;
+    }
+
+    private void collect(final SampleWriter writer) {
+        final List<OcspResponderMetrics> all = getAllResponderMetrics();
+        final List<String> responderLabels = new ArrayList<>(all.size());
+        for (final OcspResponderMetrics metrics : all) {
+            responderLabels.add("ca=\"" + escape(metrics.getCaSubjectDn()) + "\",keybinding=\"" + escape(metrics.getKeyBindingName()) + "\"");
+        }
+        writer.family("ocsp_responses_total", "counter", "OCSP responses by CA, key binding and response status.");
+        for (int i = 0; i < all.size(); i++) {
+            for (int status = 0; status < OcspResponderMetrics.RESPONSE_STATUS_NAMES.length; status++) {
+                if (OcspResponderMetrics.RESPONSE_STATUS_NAMES[status] != null) {
+                    writer.sample("ocsp_responses_total", responderLabels.get(i) + ",status=\"" + OcspResponderMetrics.RESPONSE_STATUS_NAMES[status] + "\"",
+                            all.get(i).getResponses(status));
+                }
+            }
+        }
+        writer.family("ocsp_certificate_statuses_total", "counter", "Certificate statuses in signed OCSP responses by CA and key binding.");
+        for (int i = 0; i < all.size(); i++) {
+            for (int status = 0; status < OcspResponderMetrics.CERTIFICATE_STATUS_NAMES.length; status++) {
+                writer.sample("ocsp_certificate_statuses_total", responderLabels.get(i) + ",status=\"" + OcspResponderMetrics.CERTIFICATE_STATUS_NAMES[status] + "\"",
+                        all.get(i).getCertificateStatuses(status));
+            }
+        }
+        writer.family("ocsp_cache_lookups_total", "counter", "Lookups answered from memory (hit) or not (miss) by CA and key binding.");
+        for (int i = 0; i < all.size(); i++) {
+            for (final OcspResponderMetrics.Cache cache : OcspResponderMetrics.Cache.values()) {
+                final String labels = responderLabels.get(i) + ",cache=\"" + cache.getLabel() + "\",result=";
+                writer.sample("ocsp_cache_lookups_total", labels + "\"hit\"", all.get(i).getCacheLookups(cache, true));
+                writer.sample("ocsp_cache_lookups_total", labels + "\"miss\"", all.get(i).getCacheLookups(cache, false));
+            }
+        }
+        writer.family("ocsp_response_latency_seconds", "summary", "Time to produce an OCSP response, by CA and key binding.");
+        for (int i = 0; i < all.size(); i++) {
+            writeSummary(writer, "ocsp_response_latency_seconds", responderLabels.get(i), all.get(i).getResponseLatency());
+        }
+        writer.family("ocsp_signing_latency_seconds", "summary", "Time to sign an OCSP response including waiting for the crypto token, by CA and key binding.");
+        for (int i = 0; i < all.size(); i++) {
+            writeSummary(writer, "ocsp_signing_latency_seconds", responderLabels.get(i), all.get(i).getSigningLatency());
+        }
+        writer.family("ocsp_database_latency_seconds", "summary", "Time of database lookups of certificate statuses, by CA and key binding.");
+        for (int i = 0; i < all.size(); i++) {
+            writeSummary(writer, "ocsp_database_latency_seconds", responderLabels.get(i), all.get(i).getDatabaseLatency());
+        }
+        writer.family("ocsp_signing_queue_depth", "gauge", "OCSP responses waiting to be signed, by crypto token ID and key alias.");
+        for (final Map.Entry<String, IntSupplier> entry : new TreeMap<>(signingQueueDepths).entrySet()) {
+            writer.sample("ocsp_signing_queue_depth", "signing_key=\"" + escape(entry.getKey()) + "\"", entry.getValue().getAsInt());
+        }
+        writer.family("ocsp_http_responses_total", "counter", "OCSP responses written by the OCSP servlet, by HTTP method and response status.");
+        for (int method = 0; method < HTTP_METHODS.length; method++) {
+            for (int status = 0; status < OcspResponderMetrics.RESPONSE_STATUS_NAMES.length; status++) {
+                if (OcspResponderMetrics.RESPONSE_STATUS_NAMES[status] != null) {
+                    writer.sample("ocsp_http_responses_total", "method=\"" + HTTP_METHODS[method] + "\",status=\""
+                            + OcspResponderMetrics.RESPONSE_STATUS_NAMES[status] + "\"", httpResponses[method][status].sum());
+                }
+            }
+        }
+        writer.family("ocsp_http_latency_seconds", "summary", "Time from the start of an OCSP request until the response was written by the OCSP servlet.");
+        writeSummary(writer, "ocsp_http_latency_seconds", "", httpLatency);
+        writer.family("ocsp_log_records_written_total", "counter", "OCSP log records written by the background log writer.");
+        writer.sample("ocsp_log_records_written_total", "", AsyncPatternLogWriter.INSTANCE.getWritten());
+        writer.family("ocsp_log_records_dropped_total", "counter", "OCSP log records dropped because the background log writer was behind.");
+        writer.sample("ocsp_log_records_dropped_total", "", AsyncPatternLogWriter.INSTANCE.getDropped());
+        writer.family("ocsp_log_queue_size", "gauge", "OCSP log records waiting for the background log writer.");
+        writer.sample("ocsp_log_queue_size", "", AsyncPatternLogWriter.INSTANCE.getQueueSize());
+    }
+
+    private static void writeSummary(final SampleWriter writer, final String name, final String labels, final LatencyHistogram histogram) {
+        final LatencyHistogram.Snapshot snapshot = histogram.getSnapshot();
+        final String separator = labels.isEmpty() ? "" : ",";
+        for (final double quantile : QUANTILES) {
+            writer.sample(name, labels + separator + "quantile=\"" + quantile + "\"", snapshot.getValueAtPercentile(quantile * 100) / 1e6);
+        }
+        writer.sample(name + "_sum", labels, snapshot.getSumMicros() / 1e6);
+        writer.sample(name + "_count", labels, snapshot.getCount());
+    }
+
+    /** Escapes a label value as required by the text exposition format */
+    private static String escape(final String value) {
+        return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+}
@@ -0,0 +1,39 @@
+/*************************************************************************
+ *                                                                       *
+ *  CESeCore: CE Security Core                                           *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+
+package org.cesecore.certificates.ocsp.metrics;
+
+import java.util.Map;
+
+/**
+ * JMX view of the OCSP responder metrics, registered as {@value OcspMetrics#OBJECT_NAME}.
+ *
+ * @version $Id$
+ */
+public interface OcspMetricsMXBean {
+
+    /** @return the total number of OCSP responses produced, with any status */
+    long getResponses();
+
+    /** @return the total number of responses waiting to be signed, over all crypto tokens */
+    int getSigningQueueDepth();
+
+    /**
+     * @return all metrics, with the same names and labels as in the text exposition from {@link OcspMetrics#getPrometheusText()},
+     *  e.g. <code>ocsp_responses_total{ca="CN=ManagementCA",keybinding="",status="successful"}</code>. Durations are in seconds.
+     */
+    Map<String, Double> getSamples();
+
+    /** @return the metrics in the Prometheus text exposition format */
+    String getPrometheusText();
+}
@@ -0,0 +1,159 @@
+/*************************************************************************
+ *                                                                       *
+ *  CESeCore: CE Security Core                                           *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+
+package org.cesecore.certificates.ocsp.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+import org.bouncycastle.cert.ocsp.CertificateStatus;
+import org.bouncycastle.cert.ocsp.OCSPResp;
+import org.bouncycastle.cert.ocsp.RevokedStatus;
+
+/**
+ * Counters and latency histograms of the OCSP responses signed for one CA, either by the CA itself or by one of its OCSP key bindings.
+ * All methods are lock-free. Instances are created by {@link OcspMetrics#getResponderMetrics(String, String)}.
+ *
+ * @version $Id$
+ */
+public final class OcspResponderMetrics {
+
+    /** The lookups that are answered from memory when possible */
+    public enum Cache {
+        /** Lookup of the signing key and certificate for the requested CA */
+        SIGNING("signing"),
+        /** Lookup of a signed response to an identical request */
+        RESPONSE("response"),
+        /** Lookup of a pre-produced response in the database */
+        PRE_PRODUCED("preproduced"),
+        /** Lookup of the revocation status in the in-memory revocation index, a miss is a database lookup */
+        REVOCATION_STATUS("revocationstatus");
+
+        private final String label;
+
+        private Cache(final String label) {
+            this.label = label;
+        }
+
+        /** @return the name used in exported metrics */
+        public String getLabel() {
+            return label;
+        }
+    }
+
+    /** Names of the OCSP response statuses in RFC 6960 section 4.2.1, indexed by status code. Code 4 is not used. */
+    static final String[] RESPONSE_STATUS_NAMES = { "successful", "malformedRequest", "internalError", "tryLater", null, "sigRequired", "unauthorized" };
+    static final String[] CERTIFICATE_STATUS_NAMES = { "good", "revoked", "unknown" };
+    private static final int GOOD = 0;
+    private static final int REVOKED = 1;
+    private static final int UNKNOWN = 2;
+
+    private final String caSubjectDn;
+    private final String keyBindingName;
+    private final LongAdder[] responses = createAdders(RESPONSE_STATUS_NAMES.length);
+    private final LongAdder[] certificateStatuses = createAdders(CERTIFICATE_STATUS_NAMES.length);
+    private final LongAdder[] cacheHits = createAdders(Cache.values().length);
+    private final LongAdder[] cacheMisses = createAdders(Cache.values().length);
+    private final LatencyHistogram responseLatency = new LatencyHistogram();
+    private final LatencyHistogram signingLatency = new LatencyHistogram();
+    private final LatencyHistogram databaseLatency = new LatencyHistogram();
+
+    OcspResponderMetrics(final String caSubjectDn, final String keyBindingName) {
+        this.caSubjectDn = caSubjectDn;
+        this.keyBindingName = keyBindingName;
+    }
+
+    private static LongAdder[] createAdders(final int size) {
+        final LongAdder[] adders = new LongAdder[size];
+        for (int i = 0; i < size; i++) {
+            adders[i] = new LongAdder();
+        }
+        return adders;
+    }
+
+    /** @return the subject DN of the CA, or an empty String for requests that could not be attributed to a CA */
+    public String getCaSubjectDn() {
+        return caSubjectDn;
+    }
+
+    /** @return the name of the OCSP key binding, or an empty String if responses are signed by the CA */
+    public String getKeyBindingName() {
+        return keyBindingName;
+    }
+
+    /**
+     * Counts a response to a request.
+     *
+     * @param status the OCSP response status, e.g. {@link OCSPResp#SUCCESSFUL}
+     * @param nanos the time it took to produce the response, measured with {@link System#nanoTime()}
+     */
+    public void response(final int status, final long nanos) {
+        final int index = status >= 0 && status < RESPONSE_STATUS_NAMES.length && RESPONSE_STATUS_NAMES[status] != null ? status : OCSPResp.INTERNAL_ERROR;
+        responses[index].increment();
+        responseLatency.recordNanos(nanos);
+    }
+
+    /** Counts the status of a certificate in a response, where null means good as in {@link CertificateStatus#GOOD}. */
+    public void certificateStatus(final CertificateStatus status) {
+        if (status == null) {
+            certificateStatuses[GOOD].increment();
+        } else if (status instanceof RevokedStatus) {
+            certificateStatuses[REVOKED].increment();
+        } else {
+            certificateStatuses[UNKNOWN].increment();
+        }
+    }
+
+    /** Counts the status of a certificate in a response, given as in the transaction log: 0 for good, 1 for revoked and 2 for unknown. */
+    public void certificateStatus(final int status) {
+        certificateStatuses[status == GOOD || status == REVOKED ? status : UNKNOWN].increment();
+    }
+
+    /** Counts a lookup that was, or was not, answered from memory. */
+    public void cacheLookup(final Cache cache, final boolean hit) {
+        (hit ? cacheHits : cacheMisses)[cache.ordinal()].increment();
+    }
+
+    /** Records the time it took to sign a response, including the time waiting for the crypto token. */
+    public void signingLatency(final long nanos) {
+        signingLatency.recordNanos(nanos);
+    }
+
+    /** Records the time of a database lookup of certificate statuses. */
+    public void databaseLatency(final long nanos) {
+        databaseLatency.recordNanos(nanos);
+    }
+
+    long getResponses(final int status) {
+        return responses[status].sum();
+    }
+
+    long getCertificateStatuses(final int index) {
+        return certificateStatuses[index].sum();
+    }
+
+    long getCacheLookups(final Cache cache, final boolean hit) {
+        return (hit ? cacheHits : cacheMisses)[cache.ordinal()].sum();
+    }
+
+    LatencyHistogram getResponseLatency() {
+        return responseLatency;
+    }
+
+    LatencyHistogram getSigningLatency() {
+        return signingLatency;
+    }
+
+    LatencyHistogram getDatabaseLatency() {
+        return databaseLatency;
+    }
+}
@@ -32,6 +32,7 @@ import org.bouncycastle.asn1.x509.CRLDistPoint;
 import org.bouncycastle.asn1.x509.CRLNumber;
 import org.bouncycastle.asn1.x509.DistributionPoint;
 import org.bouncycastle.asn1.x509.Extension;
+import org.bouncycastle.asn1.x509.Extensions;
 import org.bouncycastle.asn1.x509.GeneralNames;
 import org.bouncycastle.cert.jcajce.JcaX509ExtensionUtils;
 import org.cesecore.certificates.crl.RevokedCertInfo;
@@ -130,15 +131,28 @@ public class CrlExtensions {
             if (asn1OctetString!=null) {
                 final ASN1Sequence asn1Sequence = getAsn1ObjectFromBytes(asn1OctetString.getOctets(), ASN1Sequence.class);
                 if (asn1Sequence!=null) {
-                    final CRLDistPoint cdp = CRLDistPoint.getInstance(asn1Sequence);
-                    for (final DistributionPoint distributionPoint : cdp.getDistributionPoints()) {
-                        freshestCdpUrls.add(((DERIA5String) ((GeneralNames) distributionPoint.getDistributionPoint().getName()).getNames()[0].getName()).getString());
-                    }
+                    addFreshestCrlDistributionPoints(freshestCdpUrls, CRLDistPoint.getInstance(asn1Sequence));
                 }
             }
         }
         return freshestCdpUrls;
     }
+
+    /** @return a list of URLs in String format with present freshest CRL extensions or an empty List */
+    public static List<String> extractFreshestCrlDistributionPoints(final Extensions crlExtensions) {
+        final List<String> freshestCdpUrls = new ArrayList<>();
+        final Extension extension = crlExtensions == null ? null : crlExtensions.getExtension(Extension.freshestCRL);
+        if (extension!=null) {
+            addFreshestCrlDistributionPoints(freshestCdpUrls, CRLDistPoint.getInstance(extension.getParsedValue()));
+        }
+        return freshestCdpUrls;
+    }
+
+    private static void addFreshestCrlDistributionPoints(final List<String> freshestCdpUrls, final CRLDistPoint cdp) {
+        for (final DistributionPoint distributionPoint : cdp.getDistributionPoints()) {
+            freshestCdpUrls.add(((DERIA5String) ((GeneralNames) distributionPoint.getDistributionPoint().getName()).getNames()[0].getName()).getString());
+        }
+    }
     
     /** @return the first object found when treating the provided byte array as an ASN1InputStream */
     private static <T> T getAsn1ObjectFromBytes(final byte[] bytes, final Class<T> clazz) {
@@ -314,6 +314,50 @@ public final class CesecoreConfiguration {
         return Boolean.parseBoolean(ConfigurationHolder.getString("ca.keepocspextendedservice").toLowerCase());
     }
 
+    /**
+     * @return true if CRLs should be stored as binary in the binaryCrl column instead of Base64 encoded in the base64Crl column,
+     * either compressed or not.
+     */
+    public static boolean isDatabaseCrlStorageBinary() {
+        final String value = ConfigurationHolder.getString("database.crlstorage");
+        return "binary".equalsIgnoreCase(value) || isDatabaseCrlStorageCompressed();
+    }
+
+    /** @return true if CRLs should be stored as binary and GZIP compressed. */
+    public static boolean isDatabaseCrlStorageCompressed() {
+        return "compressed".equalsIgnoreCase(ConfigurationHolder.getString("database.crlstorage"));
+    }
+
+    /** @return true if certificates stored by concurrent issuance threads should be committed together in shared transactions. */
+    public static boolean isDatabaseGroupCommitEnabled() {
+        return Boolean.TRUE.toString().equalsIgnoreCase(ConfigurationHolder.getString("database.groupcommit.enabled"));
+    }
+
+    /** @return the maximum number of certificates committed together when group commit is enabled. */
+    public static int getDatabaseGroupCommitMaxRows() {
+        return (int) getLongValue("database.groupcommit.maxrows", 100L, "rows");
+    }
+
+    /** @return the maximum time in milliseconds the first certificate of a group commit waits for more certificates. */
+    public static long getDatabaseGroupCommitMaxDelay() {
+        return getLongValue("database.groupcommit.maxdelay", 10L, "milliseconds");
+    }
+
+    /** @return the number of partitions of expired certificates that are deleted in parallel. */
+    public static int getDatabasePurgeThreads() {
+        return Math.max(1, (int) getLongValue("database.purge.threads", 4L, "threads"));
+    }
+
+    /** @return the maximum number of expired certificates deleted per second by all purge threads together, or 0 for no limit. */
+    public static long getDatabasePurgeMaxRowsPerSecond() {
+        return getLongValue("database.purge.maxrowspersecond", 0L, "rows per second");
+    }
+
+    /** @return the width in days of the expiration date ranges that expired certificates of each issuer are purged in, or 0 for one range. */
+    public static long getDatabasePurgePartitionDays() {
+        return getLongValue("database.purge.partitiondays", 0L, "days");
+    }
+
     /** @return the number of rows that should be fetched at the time when creating CRLs. */
     public static int getDatabaseRevokedCertInfoFetchSize() {
         return (int) getLongValue("database.crlgenfetchsize", 500000L, "rows");
@@ -322,7 +366,9 @@ public final class CesecoreConfiguration {
     /**
      * Whether EJBCA should request ordered fetching of revoked certificates when generating CRLs.
      * This is a workaround for MS-SQL.
+     * @deprecated revoked certificates are always fetched in order, with keyset pagination
      */
+    @Deprecated
     public static boolean getDatabaseRevokedCertInfoFetchOrdered() {
         return Boolean.TRUE.toString().equalsIgnoreCase(ConfigurationHolder.getString("database.crlgenfetchordered"));
     }
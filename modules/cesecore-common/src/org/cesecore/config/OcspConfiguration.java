@@ -62,6 +62,21 @@ public class OcspConfiguration {
     public static final String REVOKED_MAX_AGE = "ocsp.revoked.maxAge";
     public static final String INCLUDE_SIGNING_CERT = "ocsp.includesignercert";
     public static final String INCLUDE_CERT_CHAIN = "ocsp.includecertchain";
+    public static final String REVOCATION_INDEX_ENABLED = "ocsp.revocationindex.enabled";
+    public static final String REVOCATION_INDEX_REFRESH_TIME = "ocsp.revocationindex.refreshtime";
+    public static final String REVOCATION_INDEX_BATCH_SIZE = "ocsp.revocationindex.batchsize";
+    public static final String REVOCATION_INDEX_REBUILD_TIME = "ocsp.revocationindex.rebuildtime";
+    public static final String RESPONSE_UPDATER_THREADS = "ocsp.responseupdater.threads";
+    public static final String RESPONSE_CACHE_ENABLED = "ocsp.responsecache.enabled";
+    public static final String RESPONSE_CACHE_MAX_ENTRIES = "ocsp.responsecache.maxentries";
+    public static final String SIGNING_THREADS = "ocsp.signing.threads";
+    public static final String SIGNING_QUEUE_SIZE = "ocsp.signing.queuesize";
+    public static final String ASYNC_ENABLED = "ocsp.async.enabled";
+    public static final String ASYNC_THREADS = "ocsp.async.threads";
+    public static final String ASYNC_QUEUE_SIZE = "ocsp.async.queuesize";
+    public static final String LOG_ASYNC_ENABLED = "ocsp.log.async.enabled";
+    public static final String LOG_ASYNC_BUFFER_SIZE = "ocsp.log.async.buffersize";
+    public static final String LOG_ASYNC_BLOCK_WHEN_FULL = "ocsp.log.async.blockwhenfull";
     
     @Deprecated //Remove this value once upgrading to 6.7.0 has been dropped
     public static final String RESPONDER_ID_TYPE = "ocsp.responderidtype";
@@ -155,6 +170,196 @@ public class OcspConfiguration {
         return timeInSeconds;
     }
 
+    /**
+     * If set to true the responder keeps an in-memory index of certificate statuses for the CAs it serves
+     */
+    public static boolean isRevocationIndexEnabled() {
+        final String value = ConfigurationHolder.getString(REVOCATION_INDEX_ENABLED);
+        return "true".equalsIgnoreCase(value) || "yes".equalsIgnoreCase(value);
+    }
+
+    /**
+     * The interval on which changed certificate statuses are read into the in-memory revocation index in milliseconds
+     */
+    public static long getRevocationIndexRefreshTimeInMilliseconds() {
+        long timeInSeconds;
+        final long defaultTimeInSeconds = 10;
+        try {
+            timeInSeconds = Long.parseLong(ConfigurationHolder.getString(REVOCATION_INDEX_REFRESH_TIME));
+        } catch (NumberFormatException e) {
+            timeInSeconds = defaultTimeInSeconds;
+            log.warn(REVOCATION_INDEX_REFRESH_TIME + " is not a decimal long. Using default " + defaultTimeInSeconds + " seconds.");
+        }
+        return timeInSeconds * 1000L;
+    }
+
+    /**
+     * The interval on which the revocation index of each CA is rebuilt from the database in milliseconds, or 0 if it is never rebuilt
+     */
+    public static long getRevocationIndexRebuildTimeInMilliseconds() {
+        long timeInSeconds;
+        final long defaultTimeInSeconds = 3600;
+        try {
+            timeInSeconds = Long.parseLong(ConfigurationHolder.getString(REVOCATION_INDEX_REBUILD_TIME));
+        } catch (NumberFormatException e) {
+            timeInSeconds = defaultTimeInSeconds;
+            log.warn(REVOCATION_INDEX_REBUILD_TIME + " is not a decimal long. Using default " + defaultTimeInSeconds + " seconds.");
+        }
+        return Math.max(0L, timeInSeconds) * 1000L;
+    }
+
+    /**
+     * The maximum number of rows read from the database in one query when building or refreshing the revocation index
+     */
+    public static int getRevocationIndexBatchSize() {
+        int batchSize;
+        final int defaultBatchSize = 50000;
+        try {
+            batchSize = Integer.parseInt(ConfigurationHolder.getString(REVOCATION_INDEX_BATCH_SIZE));
+        } catch (NumberFormatException e) {
+            batchSize = defaultBatchSize;
+            log.warn(REVOCATION_INDEX_BATCH_SIZE + " is not a decimal integer. Using default " + defaultBatchSize + ".");
+        }
+        return batchSize > 0 ? batchSize : defaultBatchSize;
+    }
+
+    /**
+     * The maximum number of OCSP responses signed at the same time with one key, e.g. the number of HSM sessions
+     */
+    public static int getSigningThreads() {
+        int threads;
+        final int defaultThreads = 16;
+        try {
+            threads = Integer.parseInt(ConfigurationHolder.getString(SIGNING_THREADS));
+        } catch (NumberFormatException e) {
+            threads = defaultThreads;
+            log.warn(SIGNING_THREADS + " is not a decimal integer. Using default " + defaultThreads + ".");
+        }
+        return threads > 0 ? threads : defaultThreads;
+    }
+
+    /**
+     * The maximum number of OCSP responses waiting to be signed with one key, before tryLater is returned
+     */
+    public static int getSigningQueueSize() {
+        int queueSize;
+        final int defaultQueueSize = 1000;
+        try {
+            queueSize = Integer.parseInt(ConfigurationHolder.getString(SIGNING_QUEUE_SIZE));
+        } catch (NumberFormatException e) {
+            queueSize = defaultQueueSize;
+            log.warn(SIGNING_QUEUE_SIZE + " is not a decimal integer. Using default " + defaultQueueSize + ".");
+        }
+        return queueSize > 0 ? queueSize : defaultQueueSize;
+    }
+
+    /**
+     * If set to true, OCSP requests are read and answered asynchronously and processed on a dedicated pool of threads
+     */
+    public static boolean isAsyncEnabled() {
+        final String value = ConfigurationHolder.getString(ASYNC_ENABLED);
+        return "true".equalsIgnoreCase(value) || "yes".equalsIgnoreCase(value);
+    }
+
+    /**
+     * The number of threads processing asynchronous OCSP requests
+     */
+    public static int getAsyncThreads() {
+        int threads;
+        final int defaultThreads = 32;
+        try {
+            threads = Integer.parseInt(ConfigurationHolder.getString(ASYNC_THREADS));
+        } catch (NumberFormatException e) {
+            threads = defaultThreads;
+            log.warn(ASYNC_THREADS + " is not a decimal integer. Using default " + defaultThreads + ".");
+        }
+        return threads > 0 ? threads : defaultThreads;
+    }
+
+    /**
+     * The maximum number of asynchronous OCSP requests waiting to be processed, before tryLater is returned
+     */
+    public static int getAsyncQueueSize() {
+        int queueSize;
+        final int defaultQueueSize = 10000;
+        try {
+            queueSize = Integer.parseInt(ConfigurationHolder.getString(ASYNC_QUEUE_SIZE));
+        } catch (NumberFormatException e) {
+            queueSize = defaultQueueSize;
+            log.warn(ASYNC_QUEUE_SIZE + " is not a decimal integer. Using default " + defaultQueueSize + ".");
+        }
+        return queueSize > 0 ? queueSize : defaultQueueSize;
+    }
+
+    /**
+     * If set to true, OCSP transaction and audit log rows are formatted and written by a background thread
+     */
+    public static boolean isAsyncLogEnabled() {
+        final String value = ConfigurationHolder.getString(LOG_ASYNC_ENABLED);
+        return "true".equalsIgnoreCase(value) || "yes".equalsIgnoreCase(value);
+    }
+
+    /**
+     * The number of OCSP log records that can wait for the background writer
+     */
+    public static int getAsyncLogBufferSize() {
+        int bufferSize;
+        final int defaultBufferSize = 8192;
+        try {
+            bufferSize = Integer.parseInt(ConfigurationHolder.getString(LOG_ASYNC_BUFFER_SIZE));
+        } catch (NumberFormatException e) {
+            bufferSize = defaultBufferSize;
+            log.warn(LOG_ASYNC_BUFFER_SIZE + " is not a decimal integer. Using default " + defaultBufferSize + ".");
+        }
+        return bufferSize > 0 ? bufferSize : defaultBufferSize;
+    }
+
+    /**
+     * If set to true, request threads wait for the background writer when the log buffer is full, instead of dropping the record
+     */
+    public static boolean isAsyncLogBlockWhenFull() {
+        final String value = ConfigurationHolder.getString(LOG_ASYNC_BLOCK_WHEN_FULL);
+        return "true".equalsIgnoreCase(value) || "yes".equalsIgnoreCase(value);
+    }
+
+    /**
+     * If set to true, signed responses to single requests without a nonce are cached in memory until nextUpdate or max-age
+     */
+    public static boolean isResponseCacheEnabled() {
+        final String value = ConfigurationHolder.getString(RESPONSE_CACHE_ENABLED);
+        return "true".equalsIgnoreCase(value) || "yes".equalsIgnoreCase(value);
+    }
+
+    /**
+     * The maximum number of certificates to keep cached OCSP responses for
+     */
+    public static int getResponseCacheMaxEntries() {
+        int maxEntries;
+        final int defaultMaxEntries = 100000;
+        try {
+            maxEntries = Integer.parseInt(ConfigurationHolder.getString(RESPONSE_CACHE_MAX_ENTRIES));
+        } catch (NumberFormatException e) {
+            maxEntries = defaultMaxEntries;
+            log.warn(RESPONSE_CACHE_MAX_ENTRIES + " is not a decimal integer. Using default " + defaultMaxEntries + ".");
+        }
+        return maxEntries > 0 ? maxEntries : defaultMaxEntries;
+    }
+
+    /**
+     * The maximum number of OCSP responses signed in parallel when pre-producing responses for a whole CA
+     */
+    public static int getResponseUpdaterThreads() {
+        int threads;
+        final int defaultThreads = 4;
+        try {
+            threads = Integer.parseInt(ConfigurationHolder.getString(RESPONSE_UPDATER_THREADS));
+        } catch (NumberFormatException e) {
+            threads = defaultThreads;
+            log.warn(RESPONSE_UPDATER_THREADS + " is not a decimal integer. Using default " + defaultThreads + ".");
+        }
+        return threads > 0 ? threads : defaultThreads;
+    }
+
     /**
      * If set to true the responder will enforce OCSP request signing
      */
@@ -0,0 +1,145 @@
+/*************************************************************************
+ *                                                                       *
+ *  CESeCore: CE Security Core                                           *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.cesecore.util;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Coalesces writes from concurrent threads into batches that are written in a single transaction.
+ * <p>
+ * The first thread that hands over an item when no batch is open becomes the leader of a new batch. It waits until the
+ * batch has reached the maximum number of items or the maximum delay has passed, and then writes the whole batch. The other
+ * threads block until the batch they joined has been written, so every caller returns only after its own item has been
+ * committed. New items go into the next batch while a batch is being written.
+ * <p>
+ * If a batch can't be written, each caller writes its own item on its own, so that only the item causing the failure fails.
+ *
+ * @param <T> type of the items to write
+ * @param <R> type of the result of writing an item
+ */
+public class GroupCommitWriter<T, R> {
+
+    private static final Logger log = Logger.getLogger(GroupCommitWriter.class);
+
+    /** Writes a batch of items in one transaction. */
+    @FunctionalInterface
+    public interface BatchWriter<T, R> {
+        /**
+         * @param items the items to write
+         * @return the result of each item, in the same order as the items
+         */
+        List<R> write(List<T> items);
+    }
+
+    private static class Batch<T, R> {
+        private final List<T> items = new ArrayList<>();
+        private final CompletableFuture<List<R>> results = new CompletableFuture<>();
+    }
+
+    private final int maxRows;
+    private final long maxDelayNanos;
+    private final Object lock = new Object();
+    /** The batch that new items are added to, or null if a new batch should be started. Guarded by lock. */
+    private Batch<T, R> openBatch = null;
+
+    /**
+     * @param maxRows the maximum number of items in a batch
+     * @param maxDelayMillis the maximum time in milliseconds the first item of a batch waits for more items
+     */
+    public GroupCommitWriter(final int maxRows, final long maxDelayMillis) {
+        this.maxRows = Math.max(1, maxRows);
+        this.maxDelayNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, maxDelayMillis));
+    }
+
+    /**
+     * Writes an item together with the items handed over by other threads at about the same time.
+     *
+     * @param item the item to write
+     * @param batchWriter writes a batch in a transaction that is committed before it returns
+     * @return the result of writing the item
+     * @throws RuntimeException the exception thrown by batchWriter when writing the item on its own
+     */
+    public R write(final T item, final BatchWriter<T, R> batchWriter) {
+        final Batch<T, R> batch;
+        final int index;
+        final boolean leader;
+        synchronized (lock) {
+            leader = openBatch == null;
+            if (leader) {
+                openBatch = new Batch<>();
+            }
+            batch = openBatch;
+            index = batch.items.size();
+            batch.items.add(item);
+            if (batch.items.size() >= maxRows) {
+                openBatch = null;
+                lock.notifyAll();
+            }
+        }
+        if (leader) {
+            awaitBatch(batch);
+            try {
+                final List<R> results = batchWriter.write(Collections.unmodifiableList(batch.items));
+                batch.results.complete(results);
+            } catch (RuntimeException e) {
+                if (log.isDebugEnabled()) {
+                    log.debug("Failed to write a batch of " + batch.items.size() + " items, writing them one by one: " + e.getMessage());
+                }
+                batch.results.completeExceptionally(e);
+            } finally {
+                // Never leave the other threads of the batch waiting
+                if (!batch.results.isDone()) {
+                    batch.results.completeExceptionally(new IllegalStateException("The batch was not written."));
+                }
+            }
+        }
+        try {
+            return batch.results.join().get(index);
+        } catch (CompletionException e) {
+            // The batch was rolled back, so the item has not been written
+            return batchWriter.write(Collections.singletonList(item)).get(0);
+        }
+    }
+
+    /** Waits until the batch is full or the maximum delay has passed, and closes it for new items. */
+    private void awaitBatch(final Batch<T, R> batch) {
+        boolean interrupted = false;
+        synchronized (lock) {
+            final long deadline = System.nanoTime() + maxDelayNanos;
+            long remaining = maxDelayNanos;
+            while (openBatch == batch && remaining > 0) {
+                try {
+                    TimeUnit.NANOSECONDS.timedWait(lock, remaining);
+                } catch (InterruptedException e) {
+                    // Stop waiting for more items, but still write the ones that other threads are waiting for
+                    interrupted = true;
+                    break;
+                }
+                remaining = deadline - System.nanoTime();
+            }
+            if (openBatch == batch) {
+                openBatch = null;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
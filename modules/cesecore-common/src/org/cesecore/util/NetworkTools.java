@@ -15,8 +15,11 @@ package org.cesecore.util;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Path;
 
 import org.apache.log4j.Logger;
 
@@ -70,4 +73,36 @@ public abstract class NetworkTools {
         }
         return baos.toByteArray();
     }
+
+    /**
+     * Downloads the data found at the provided URL to a file, without holding it in memory.
+     *
+     * @param url where to download the data from
+     * @param maxSize the maximum number of bytes to download
+     * @param file where the data is written. It is replaced if it exists.
+     * @return true if the data was downloaded, false if it was not available or larger than maxSize
+     */
+    public static boolean downloadDataFromUrl(final URL url, final long maxSize, final Path file) {
+        final byte data[] = new byte[32768];    // 32KiB at the time
+        long downloadedBytes = 0;
+        try (final InputStream is = url.openStream(); final OutputStream os = Files.newOutputStream(file)) {
+            int count;
+            while ((count = is.read(data)) != -1) {
+                downloadedBytes += count;
+                if (downloadedBytes>maxSize) {
+                    if (log.isDebugEnabled()) {
+                        log.debug("Failed to download data from " + url.toString() + ". Size exceedes " + maxSize + " bytes.");
+                    }
+                    return false;
+                }
+                os.write(data, 0, count);
+            }
+        } catch (IOException e) {
+            if (log.isDebugEnabled()) {
+                log.debug("Failed to download data from " + url.toString(), e);
+            }
+            return false;
+        }
+        return true;
+    }
 }
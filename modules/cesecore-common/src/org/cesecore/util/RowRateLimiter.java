@@ -0,0 +1,60 @@
+/*************************************************************************
+ *                                                                       *
+ *  CESeCore: CE Security Core                                           *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.cesecore.util;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Limits the number of database rows processed per second by any number of threads together.
+ * <p>
+ * Each caller reserves the time its rows take at the configured rate, after the rows reserved before it, and sleeps until
+ * its reservation starts. Time that nobody used is not saved up, so a limiter that has been idle doesn't allow a burst.
+ */
+public class RowRateLimiter {
+
+    private final long rowsPerSecond;
+    /** The time when the rows reserved so far have been processed, in System.nanoTime(). Guarded by this. */
+    private long nextFreeNanos = System.nanoTime();
+
+    /** @param rowsPerSecond the maximum number of rows per second, or 0 or less for no limit */
+    public RowRateLimiter(final long rowsPerSecond) {
+        this.rowsPerSecond = rowsPerSecond;
+    }
+
+    /** @return true if the number of rows per second is limited */
+    public boolean isLimited() {
+        return rowsPerSecond > 0;
+    }
+
+    /**
+     * Waits until the given number of rows may be processed.
+     *
+     * @param rows the number of rows that are about to be processed
+     * @throws InterruptedException if the thread was interrupted while waiting
+     */
+    public void acquire(final int rows) throws InterruptedException {
+        if (!isLimited() || rows <= 0) {
+            return;
+        }
+        final long waitNanos;
+        synchronized (this) {
+            final long now = System.nanoTime();
+            final long start = Math.max(now, nextFreeNanos);
+            nextFreeNanos = start + TimeUnit.SECONDS.toNanos(rows) / rowsPerSecond;
+            waitNanos = start - now;
+        }
+        if (waitNanos > 0) {
+            TimeUnit.NANOSECONDS.sleep(waitNanos);
+        }
+    }
+}
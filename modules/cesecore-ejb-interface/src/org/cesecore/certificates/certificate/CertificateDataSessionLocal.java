@@ -44,6 +44,16 @@ public interface CertificateDataSessionLocal extends CertificateDataSession {
     /** @return return the query results as a List. */
     List<CertificateData> findByIssuerDNSerialNumber(String issuerDN, String serialNumber);
 
+    /**
+     * Fetch the certificates from an issuer with the given serial numbers. The serial numbers are sent as an IN list, so callers should
+     * split long lists.
+     *
+     * @param issuerDN the issuer DN
+     * @param serialNumbers the serial numbers in decimal form
+     * @return the certificates that were found, in no specified order
+     */
+    List<CertificateData> findByIssuerDNSerialNumbers(String issuerDN, Collection<String> serialNumbers);
+
     /** @return the quantity of all the certificates saved within the CA lifecycle. */
     Long findQuantityOfAllCertificates();
 
@@ -75,6 +85,62 @@ public interface CertificateDataSessionLocal extends CertificateDataSession {
     
     /** @return return the query results as a List<String>. */
     List<String> findFingerprintsByIssuerDN(String issuerDN);
+
+    /**
+     * Fetch the status columns of certificates from an issuer that have been updated after a position given by
+     * (updateTime, fingerprint), ordered by that position. Used for keyset paging when building and refreshing an
+     * in-memory status index.
+     *
+     * @param issuerDN the issuer DN
+     * @param updateTimeAfter only rows with a later updateTime, or the same updateTime and a greater fingerprint, are returned. Use -1 to start from the beginning.
+     * @param fingerprintAfter fingerprint of the last row of the previous page, or an empty String
+     * @param maxResults the maximum number of rows to return
+     * @return [0] = (String) fingerprint, [1] = (String) serialNumber, [2] = status, [3] = revocationDate, [4] = revocationReason,
+     *  [5] = expireDate, [6] = certificateProfileId (may be null), [7] = updateTime. Numeric values should be read with ValueExtractor.
+     */
+    List<Object[]> findStatusesByIssuerDNUpdatedAfter(String issuerDN, long updateTimeAfter, String fingerprintAfter, int maxResults);
+
+    /**
+     * Fetch the status columns of certificates from an issuer that have no updateTime, ordered by fingerprint. These are certificates
+     * that have not been changed since before the updateTime column was added, which {@link #findStatusesByIssuerDNUpdatedAfter} can't find.
+     *
+     * @param issuerDN the issuer DN
+     * @param fingerprintAfter fingerprint of the last row of the previous page, or an empty String
+     * @param maxResults the maximum number of rows to return
+     * @return the same columns as {@link #findStatusesByIssuerDNUpdatedAfter}, with a null updateTime
+     */
+    List<Object[]> findStatusesByIssuerDNWithoutUpdateTime(String issuerDN, String fingerprintAfter, int maxResults);
+
+    /**
+     * Fetch the fingerprints and serial numbers of the certificates from an issuer that expire after a given time,
+     * ordered by fingerprint. Used for keyset paging over all certificates of a CA.
+     *
+     * @param issuerDN the issuer DN
+     * @param expireDateAfter only certificates that expire after this time are returned
+     * @param fingerprintAfter fingerprint of the last row of the previous page, or an empty String
+     * @param maxResults the maximum number of rows to return
+     * @return [0] = (String) fingerprint, [1] = (String) serialNumber
+     */
+    List<Object[]> findFingerprintsAndSerialNumbersByIssuerDN(String issuerDN, long expireDateAfter, String fingerprintAfter, int maxResults);
+
+    /**
+     * Fetch only the status columns of the certificates from an issuer with the given serial numbers, without loading the
+     * certificates themselves. The serial numbers are sent as an IN list, so callers should split long lists.
+     *
+     * @param issuerDN the issuer DN
+     * @param serialNumbers the serial numbers in decimal form
+     * @return the status columns of each certificate that was found
+     */
+    List<CertificateStatusInfo> findStatusesByIssuerDNAndSerialNumbers(String issuerDN, Collection<String> serialNumbers);
+
+    /**
+     * Fetch the issuer DNs of the certificates with the given serial numbers, from any issuer. The serial numbers are sent as
+     * an IN list, so callers should split long lists.
+     *
+     * @param serialNumbers the serial numbers in decimal form
+     * @return [0] = (String) serialNumber, [1] = (String) issuerDN
+     */
+    List<Object[]> findIssuerDNsBySerialNumbers(Collection<String> serialNumbers);
     
     /**
      * 
@@ -99,6 +165,16 @@ public interface CertificateDataSessionLocal extends CertificateDataSession {
     
     /** @return return the query results as a Collection<RevokedCertInfo>. */
     Collection<RevokedCertInfo> getRevokedCertInfos(String issuerDN, boolean deltaCrl, int crlPartitionIndex, long lastBaseCrlDate, boolean allowInvalidityDate);
+
+    /**
+     * Lists the revoked certificates of a CA, or CRL partition, that expired before a given time and have not been archived yet.
+     *
+     * @param issuerDN the DN of the CA issuing the CRL
+     * @param crlPartitionIndex the CRL partition, or {@link CertificateConstants#NO_CRL_PARTITION}
+     * @param expiredBefore certificates expiring before this time (milliseconds since epoch) are listed
+     * @return return the query results as a Collection<RevokedCertInfo>.
+     */
+    Collection<RevokedCertInfo> getExpiredRevokedCertInfos(String issuerDN, int crlPartitionIndex, long expiredBefore);
     
     /** @return return the query results as a List. */
     List<CertificateData> findByExpireDateWithLimit(long expireDate, int maxNumberOfResults);
@@ -18,6 +18,7 @@ import java.security.cert.X509Certificate;
 import java.util.Collection;
 import java.util.Date;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import org.cesecore.authentication.tokens.AuthenticationToken;
@@ -340,6 +341,8 @@ public interface CertificateStoreSession {
     /**
      * Method revoking all certificates generated by the specified issuerdn. Sets revocationDate to current time. 
      * Should only be called by when a CA is about to be revoked.
+     * The certificates are revoked in chunks that are committed separately, so if this fails some of the certificates have
+     * been revoked. Calling it again revokes the rest.
      * 
      * @param admin    the administrator performing the event.
      * @param issuerdn the dn of CA about to be revoked
@@ -363,6 +366,24 @@ public interface CertificateStoreSession {
      */
     CertificateStatus getStatus(String issuerDN, BigInteger serno);
 
+    /**
+     * Get the status of several certificates from the same issuer at once, for example for an OCSP request with many CertIDs.
+     * Only the status columns are read, with one database query per few hundred serial numbers.
+     *
+     * @param issuerDN the DN of the issuer
+     * @param sernos the serial numbers of the certificates
+     * @return the status of each serial number, CertificateStatus.NOT_AVAILABLE for the certificates that are not found. Never null.
+     */
+    Map<BigInteger, CertificateStatus> getStatuses(String issuerDN, Collection<BigInteger> sernos);
+
+    /**
+     * Finds the issuers of the certificates with the given serial numbers, without loading the certificates.
+     *
+     * @param sernos the serial numbers of the certificates
+     * @return the DNs of the issuers that have issued a certificate with each serial number. Serial numbers that are not found are left out.
+     */
+    Map<BigInteger, List<String>> getIssuerDNsBySernos(Collection<BigInteger> sernos);
+
     /**
      * Performs the same operation as getStatus, but returns a richer object which also contains the certificate, in order to save on database 
      * lookups when both objects are required. Issuer + serial number are always unique. 
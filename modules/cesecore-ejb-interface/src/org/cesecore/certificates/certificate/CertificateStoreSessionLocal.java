@@ -16,6 +16,7 @@ import org.cesecore.authentication.tokens.AuthenticationToken;
 import org.cesecore.authorization.AuthorizationDeniedException;
 import org.cesecore.certificates.certificate.request.RequestMessage;
 import org.cesecore.certificates.crl.RevocationReasons;
+import org.cesecore.certificates.crl.RevokedCertInfo;
 
 import javax.ejb.Local;
 import java.math.BigInteger;
@@ -23,6 +24,7 @@ import java.security.cert.Certificate;
 import java.util.Collection;
 import java.util.Date;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 /**
@@ -114,6 +116,57 @@ public interface CertificateStoreSessionLocal extends CertificateStoreSession {
             String certificateRequest, int status, int type, int certificateProfileId, int endEntityProfileId, int crlPartitionIndex, String tag,
             long updateTime, String accountBindingId);
 
+    /**
+     * Stores a certificate without checking authorization, in a new transaction that is shared with the certificates stored by other
+     * threads at about the same time, when group commit is enabled with database.groupcommit.enabled in cesecore.properties. Returns
+     * when the transaction has been committed. If group commit is disabled this is the same as {@link #storeCertificateNoAuthNewTransaction}.
+     *
+     * The certificate is committed separately from the transaction of the caller, together with an entry in IncompleteIssuanceJournalData
+     * that is removed in the transaction of the caller. If the transaction of the caller is rolled back, the certificate is removed again
+     * with {@link #removeRolledBackCertificate} once the rollback has completed. If that fails, or this node stops before the transaction of
+     * the caller has completed, the entry is left in the journal, and the certificate is revoked by the incomplete issuance service.
+     *
+     * @see #storeCertificateNoAuthNewTransaction
+     * @return CertificateDataWrapper with the certificate just stored that can be used for further publishing
+     */
+    CertificateDataWrapper storeCertificateNoAuthGroupCommit(AuthenticationToken admin, Certificate incert, String username, String cafp,
+            String certificateRequest, int status, int type, int certificateProfileId, int endEntityProfileId, int crlPartitionIndex, String tag,
+            long updateTime, String accountBindingId);
+
+    /**
+     * Stores certificates without checking authorization, in a new transaction. Used by {@link #storeCertificateNoAuthGroupCommit}.
+     *
+     * @param certificates the certificates to store
+     * @return CertificateDataWrapper with each certificate stored, in the same order as the certificates
+     */
+    List<CertificateDataWrapper> storeCertificatesNoAuthNewTransaction(List<StoreCertificateParameters> certificates);
+
+    /**
+     * Removes a certificate stored by {@link #storeCertificateNoAuthGroupCommit}, in a new transaction, when the transaction that issued it
+     * was rolled back. No authorization check is done.
+     *
+     * @param adminForLogging the administrator to use in the log message
+     * @param fingerprint the fingerprint of the certificate
+     * @param removeFromJournal true to also remove the entry of the certificate from IncompleteIssuanceJournalData
+     */
+    void removeRolledBackCertificate(AuthenticationToken adminForLogging, String fingerprint, boolean removeFromJournal);
+
+    /**
+     * Revokes the certificates of a CA that are not revoked, archived or expired, in a range of fingerprints, in a new transaction.
+     * Used by {@link #revokeAllCertByCA} to revoke the certificates in chunks. Writes one audit log entry for the range.
+     * The updateTime of the rows is set to the current time rather than the revocation date.
+     *
+     * @param admin authentication token of the admin performing the operation
+     * @param issuerDN issuer DN of the CA, in the same form as in CertificateData.
+     * @param afterFingerprint the range starts after this fingerprint, or "" to start from the first
+     * @param lastFingerprint the last fingerprint in the range
+     * @param reason the revocation reason
+     * @param revocationDate revocation date in epoch millis
+     * @return the number of certificates revoked
+     */
+    int revokeCertificatesInRangeNoAuth(AuthenticationToken admin, String issuerDN, String afterFingerprint, String lastFingerprint, int reason,
+            long revocationDate);
+
     /**
      * Stores a certificate in revoked state.
      * @see #storeCertificateNoAuth
@@ -235,6 +288,24 @@ public interface CertificateStoreSessionLocal extends CertificateStoreSession {
      */
     void updateLimitedCertificateDataStatus(final AuthenticationToken admin, final int caId, final String issuerDn, final String subjectDn, final String username, final BigInteger serialNumber,
             final int status, final Date revocationDate, final int reasonCode, final String caFingerprint, Date invalidityDate) throws AuthorizationDeniedException;
+
+    /**
+     * Batch version of {@link #updateLimitedCertificateDataStatus(AuthenticationToken, int, String, BigInteger, Date, int, String, Date)}, used when
+     * importing CRLs. The existing limited entries are read with a few queries, and the created and changed entries are flushed together, so that
+     * they are written as JDBC batches. Entries that already have the given revocation are left as they are. One audit log event summarizes the
+     * changes.
+     *
+     * @param admin an admin that is authorized to the CA that issued the certificates
+     * @param caId the CA identifier
+     * @param issuerDn the BC normalized version of the issuer DN
+     * @param caFingerprint the SHA-1 of the CA Certificate that issued the certificates
+     * @param revokedCertInfos serial numbers, revocation dates, reasons and invalidity dates of certificates that have no full entry in the database.
+     *        The reason RevokedCertInfo.REVOCATION_REASON_REMOVEFROMCRL removes the limited entry.
+     * @return the number of limited entries that were created, changed or removed
+     * @throws AuthorizationDeniedException if admin is not authorized to the CA
+     */
+    int updateLimitedCertificateDataStatuses(AuthenticationToken admin, int caId, String issuerDn, String caFingerprint,
+            Collection<RevokedCertInfo> revokedCertInfos) throws AuthorizationDeniedException;
     
     /** Reloads the cache containing CA certificates */
     void reloadCaCertificateCache();
@@ -276,6 +347,17 @@ public interface CertificateStoreSessionLocal extends CertificateStoreSession {
      */
     List<CertificateDataWrapper> getCertificateDatasBySubject(String subjectDN);
 
+    /**
+     * Gets full certificate meta data for the certificates from an issuer with the given serial numbers, with one query per
+     * 500 serial numbers rather than one query per certificate.
+     *
+     * @param issuerDN issuer DN of the desired certificates.
+     * @param sernos serial numbers of the desired certificates.
+     * @return the certificates that were found by serial number. If several certificates have the same serial number, the one that
+     *      {@link #getCertificateDataByIssuerAndSerno(String, BigInteger)} would return is used.
+     */
+    Map<BigInteger, CertificateDataWrapper> getCertificateDatasByIssuerAndSernos(String issuerDN, Collection<BigInteger> sernos);
+
     /**
      * Method to set the status of certificate to revoked or active, without checking for authorization. 
      * This is why it is important that this method is _local only_. 
@@ -369,4 +451,55 @@ public interface CertificateStoreSessionLocal extends CertificateStoreSession {
      */
     Set<String> deleteExpiredCertificatesInSeparateTransactions(List<String> issuerDns, Date maximumExpirationDate, int batchSize,
             AuthenticationToken adminForLogging, Set<String> previousDeletedFingerprints);
+
+    /**
+     * Deletes end entity and SSH certificates expiring on or before the given date, together with their Base64CertData and
+     * CertReqHistoryData rows. The certificates are split into partitions by issuer, and by ranges of expiration dates if
+     * database.purge.partitiondays is configured, and the partitions are purged in parallel. Each partition is deleted in ranges of
+     * fingerprints, with one delete statement per table and 500 certificates in a transaction per range, at no more than database.purge.maxrowspersecond
+     * certificates per second in total. No authorization check is done.
+     *
+     * @param issuerDns The issuer DNs, or null for all.
+     * @param maximumExpirationDate Expiration date must be on or before this date, which must be in the past.
+     * @param batchSize The maximum number of certificates deleted in each transaction.
+     * @param maxDurationMillis The time after which no more ranges are started, or 0 to run until all partitions are done.
+     * @param adminForLogging The administrator to use in the log messages.
+     * @param checkpoint The checkpoint returned by a previous purge that wasn't complete, or null to start from the beginning. A
+     * checkpoint with another maximum expiration date is ignored.
+     * @return the checkpoint to resume the purge from, which is complete if all partitions were purged.
+     */
+    ExpiredCertificatePurgeCheckpoint purgeExpiredCertificates(List<String> issuerDns, Date maximumExpirationDate, int batchSize,
+            long maxDurationMillis, AuthenticationToken adminForLogging, ExpiredCertificatePurgeCheckpoint checkpoint);
+
+    /**
+     * Finds the next range of expired end entity and SSH certificates of an issuer in a range of expiration dates, in fingerprint order.
+     * Used by {@link #purgeExpiredCertificates} to find the ranges to delete with {@link #deleteExpiredCertificatesInRangeNoAuth}.
+     *
+     * @param issuerDN issuer DN of the CA, in the same form as in CertificateData.
+     * @param expireDateFrom the first expiration date in the range, in epoch millis
+     * @param expireDateTo the end of the range of expiration dates, exclusive, in epoch millis
+     * @param afterFingerprint the range starts after this fingerprint, or "" to start from the first
+     * @param maxResults the maximum number of fingerprints to return
+     * @return the fingerprints in ascending order, or an empty list if there are no more certificates in the range
+     */
+    List<String> findExpiredCertificateFingerprintsInRange(String issuerDN, long expireDateFrom, long expireDateTo, String afterFingerprint,
+            int maxResults);
+
+    /**
+     * Deletes the expired end entity and SSH certificates of an issuer in a range of expiration dates and fingerprints, with their
+     * Base64CertData and CertReqHistoryData rows, in a new transaction. Used by {@link #purgeExpiredCertificates} to delete the
+     * certificates in chunks. Writes one audit log entry for the range, with the fingerprint, serial number and username of each
+     * deleted certificate. No authorization check is done.
+     *
+     * @param adminForLogging The administrator to use in the log message.
+     * @param issuerDN issuer DN of the CA, in the same form as in CertificateData.
+     * @param expireDateFrom the first expiration date in the range, in epoch millis
+     * @param expireDateTo the end of the range of expiration dates, exclusive, in epoch millis. Must not be in the future.
+     * @param afterFingerprint the range starts after this fingerprint, or "" to start from the first
+     * @param lastFingerprint the last fingerprint in the range
+     * @return the number of certificates deleted
+     * @throws IllegalStateException if the range contains certificates that are not yet expired
+     */
+    int deleteExpiredCertificatesInRangeNoAuth(AuthenticationToken adminForLogging, String issuerDN, long expireDateFrom, long expireDateTo,
+            String afterFingerprint, String lastFingerprint);
 }
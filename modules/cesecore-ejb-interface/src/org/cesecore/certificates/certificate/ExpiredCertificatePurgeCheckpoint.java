@@ -0,0 +1,89 @@
+/*************************************************************************
+ *                                                                       *
+ *  CESeCore: CE Security Core                                           *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.cesecore.certificates.certificate;
+
+import java.io.Serializable;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The progress of {@link CertificateStoreSessionLocal#purgeExpiredCertificates}, so that a purge that was stopped can be
+ * resumed where it left off. The expired certificates are purged in partitions of one issuer and a range of expiration dates,
+ * and the checkpoint holds the last fingerprint deleted in each partition and which partitions are done.
+ * <p>
+ * The partitions are purged in parallel, so the checkpoint may be updated by several threads at the same time.
+ */
+public final class ExpiredCertificatePurgeCheckpoint implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private final long maximumExpirationDate;
+    private final Map<String, String> lastFingerprints = new ConcurrentHashMap<>();
+    private final Set<String> completedPartitions = ConcurrentHashMap.newKeySet();
+    private final AtomicLong deletedCertificates = new AtomicLong();
+    private volatile boolean complete = false;
+
+    /** @param maximumExpirationDate the expiration date that certificates expiring on or before are purged, in milliseconds since epoch */
+    public ExpiredCertificatePurgeCheckpoint(final long maximumExpirationDate) {
+        this.maximumExpirationDate = maximumExpirationDate;
+    }
+
+    /** @return the expiration date that certificates expiring on or before are purged, in milliseconds since epoch */
+    public long getMaximumExpirationDate() {
+        return maximumExpirationDate;
+    }
+
+    /** @return the last fingerprint deleted in the partition, or an empty string if the partition hasn't been started */
+    public String getLastFingerprint(final String issuerDN, final long expireDateFrom) {
+        return lastFingerprints.getOrDefault(getPartitionKey(issuerDN, expireDateFrom), "");
+    }
+
+    public void setLastFingerprint(final String issuerDN, final long expireDateFrom, final String lastFingerprint) {
+        lastFingerprints.put(getPartitionKey(issuerDN, expireDateFrom), lastFingerprint);
+    }
+
+    /** @return true if all expired certificates of the partition have been deleted */
+    public boolean isPartitionCompleted(final String issuerDN, final long expireDateFrom) {
+        return completedPartitions.contains(getPartitionKey(issuerDN, expireDateFrom));
+    }
+
+    public void setPartitionCompleted(final String issuerDN, final long expireDateFrom) {
+        final String partitionKey = getPartitionKey(issuerDN, expireDateFrom);
+        completedPartitions.add(partitionKey);
+        lastFingerprints.remove(partitionKey);
+    }
+
+    /** @return the number of certificates deleted since the purge was started, over all resumptions */
+    public long getDeletedCertificates() {
+        return deletedCertificates.get();
+    }
+
+    public void addDeletedCertificates(final int count) {
+        deletedCertificates.addAndGet(count);
+    }
+
+    /** @return true if all partitions have been purged, false if the purge was stopped before it was done */
+    public boolean isComplete() {
+        return complete;
+    }
+
+    public void setComplete(final boolean complete) {
+        this.complete = complete;
+    }
+
+    private static String getPartitionKey(final String issuerDN, final long expireDateFrom) {
+        return expireDateFrom + ";" + issuerDN;
+    }
+}
@@ -0,0 +1,127 @@
+/*************************************************************************
+ *                                                                       *
+ *  CESeCore: CE Security Core                                           *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.cesecore.certificates.certificate;
+
+import java.security.cert.Certificate;
+
+import org.cesecore.authentication.tokens.AuthenticationToken;
+
+/**
+ * The parameters of {@link CertificateStoreSessionLocal#storeCertificateNoAuth}, for storing several certificates in one transaction.
+ */
+public final class StoreCertificateParameters {
+
+    private final AuthenticationToken admin;
+    private final Certificate certificate;
+    private final String username;
+    private final String cafp;
+    private final String certificateRequest;
+    private final int status;
+    private final int type;
+    private final int certificateProfileId;
+    private final int endEntityProfileId;
+    private final int crlPartitionIndex;
+    private final String tag;
+    private final long updateTime;
+    private final String accountBindingId;
+    private final IncompletelyIssuedCertificateInfo journalEntry;
+
+    /** @see CertificateStoreSessionLocal#storeCertificateNoAuth */
+    public StoreCertificateParameters(final AuthenticationToken admin, final Certificate certificate, final String username, final String cafp,
+            final String certificateRequest, final int status, final int type, final int certificateProfileId, final int endEntityProfileId,
+            final int crlPartitionIndex, final String tag, final long updateTime, final String accountBindingId) {
+        this(admin, certificate, username, cafp, certificateRequest, status, type, certificateProfileId, endEntityProfileId, crlPartitionIndex, tag,
+                updateTime, accountBindingId, null);
+    }
+
+    /**
+     * @see CertificateStoreSessionLocal#storeCertificateNoAuth
+     * @param journalEntry entry to add to IncompleteIssuanceJournalData in the same transaction as the certificate, or null
+     */
+    public StoreCertificateParameters(final AuthenticationToken admin, final Certificate certificate, final String username, final String cafp,
+            final String certificateRequest, final int status, final int type, final int certificateProfileId, final int endEntityProfileId,
+            final int crlPartitionIndex, final String tag, final long updateTime, final String accountBindingId,
+            final IncompletelyIssuedCertificateInfo journalEntry) {
+        this.admin = admin;
+        this.certificate = certificate;
+        this.username = username;
+        this.cafp = cafp;
+        this.certificateRequest = certificateRequest;
+        this.status = status;
+        this.type = type;
+        this.certificateProfileId = certificateProfileId;
+        this.endEntityProfileId = endEntityProfileId;
+        this.crlPartitionIndex = crlPartitionIndex;
+        this.tag = tag;
+        this.updateTime = updateTime;
+        this.accountBindingId = accountBindingId;
+        this.journalEntry = journalEntry;
+    }
+
+    public AuthenticationToken getAdmin() {
+        return admin;
+    }
+
+    public Certificate getCertificate() {
+        return certificate;
+    }
+
+    public String getUsername() {
+        return username;
+    }
+
+    public String getCafp() {
+        return cafp;
+    }
+
+    public String getCertificateRequest() {
+        return certificateRequest;
+    }
+
+    public int getStatus() {
+        return status;
+    }
+
+    public int getType() {
+        return type;
+    }
+
+    public int getCertificateProfileId() {
+        return certificateProfileId;
+    }
+
+    public int getEndEntityProfileId() {
+        return endEntityProfileId;
+    }
+
+    public int getCrlPartitionIndex() {
+        return crlPartitionIndex;
+    }
+
+    public String getTag() {
+        return tag;
+    }
+
+    public long getUpdateTime() {
+        return updateTime;
+    }
+
+    public String getAccountBindingId() {
+        return accountBindingId;
+    }
+
+    /** @return the entry to add to IncompleteIssuanceJournalData together with the certificate, or null */
+    public IncompletelyIssuedCertificateInfo getJournalEntry() {
+        return journalEntry;
+    }
+}
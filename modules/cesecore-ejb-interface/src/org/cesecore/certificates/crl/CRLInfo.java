@@ -15,6 +15,7 @@ package org.cesecore.certificates.crl;
 
 import org.cesecore.certificates.certificate.CertificateConstants;
 
+import java.io.InputStream;
 import java.io.Serializable;
 import java.security.cert.X509CRL;
 import java.util.Date;
@@ -118,4 +119,13 @@ public final class CRLInfo implements Serializable {
     public X509CRL getCrl() {
         return crlData.getCRL();
     }
+
+    /**
+     * Returns the DER encoded CRL, without decoding it. Large CRLs can then be read a part at the time.
+     *
+     * @return a stream of the encoded CRL, that should be closed by the caller
+     */
+    public InputStream getCrlStream() {
+        return crlData.getCRLStream();
+    }
 }
@@ -162,5 +162,17 @@ public interface CrlStoreSession {
      */
     void storeCRL(AuthenticationToken admin, byte[] incrl, String cafp, int number, String issuerDN, int crlPartitionIndex, Date thisUpdate, Date nextUpdate, int deltaCRLIndicator)
     	throws CrlStoreException, AuthorizationDeniedException;
+
+    /**
+     * Converts stored CRLs to the storage format configured with database.crlstorage in cesecore.properties, i.e. CRLs stored Base64
+     * encoded are converted to binary, or the other way around. Switching between compressed and uncompressed binary storage only
+     * affects CRLs stored afterwards. Call repeatedly until it returns 0 to convert all CRLs, each call runs in its own transaction.
+     *
+     * @param admin Administrator performing the operation, must be authorized to /
+     * @param maxRows the maximum number of CRLs to convert
+     * @return the number of converted CRLs
+     * @throws AuthorizationDeniedException if admin was not authorized to /
+     */
+    int convertCrlStorage(AuthenticationToken admin, int maxRows) throws AuthorizationDeniedException;
 	
 }
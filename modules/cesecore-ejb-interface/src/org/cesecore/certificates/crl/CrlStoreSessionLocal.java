@@ -12,6 +12,8 @@
  *************************************************************************/
 package org.cesecore.certificates.crl;
 
+import java.io.InputStream;
+
 import javax.ejb.Local;
 
 /**
@@ -20,4 +22,26 @@ import javax.ejb.Local;
  */
 @Local
 public interface CrlStoreSessionLocal extends CrlStoreSession {
+
+    /**
+     * Reads the latest CRL issued by this CA. Unlike {@link #getLastCRL(String, int, boolean)}, a CRL stored compressed is decompressed
+     * while it's read, which avoids holding both the stored and the DER encoded CRL in memory. The stream doesn't hold any database
+     * resources, so it can be read after the transaction has ended.
+     *
+     * @param issuerdn the CRL issuers DN (CAs subject DN)
+     * @param crlPartitionIndex CRL partition index, or CertificateConstants.NO_CRL_PARTITION if partitioning is not used.
+     * @param deltaCRL true to get the latest deltaCRL, false to get the latest complete CRL
+     * @return a stream of the DER encoded X509CRL, or null if no CRLs have been issued.
+     */
+    InputStream getLastCRLStream(String issuerdn, int crlPartitionIndex, boolean deltaCRL);
+
+    /**
+     * Reads a specific CRL issued by this CA, like {@link #getLastCRLStream(String, int, boolean)}.
+     *
+     * @param issuerdn the CRL issuers DN (CAs subject DN)
+     * @param crlPartitionIndex CRL partition index, or CertificateConstants.NO_CRL_PARTITION if partitioning is not used.
+     * @param crlNumber a crlNumber of a complete, or delta, CRL
+     * @return a stream of the DER encoded X509CRL, or null if there is no such CRL.
+     */
+    InputStream getCRLStream(String issuerdn, int crlPartitionIndex, int crlNumber);
 }
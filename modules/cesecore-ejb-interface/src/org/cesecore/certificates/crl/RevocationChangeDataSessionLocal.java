@@ -0,0 +1,79 @@
+/*************************************************************************
+ *                                                                       *
+ *  CESeCore: CE Security Core                                           *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.cesecore.certificates.crl;
+
+import java.util.Collection;
+
+import javax.ejb.Local;
+
+import org.cesecore.certificates.certificate.BaseCertificateData;
+
+/**
+ * Data session for RevocationChangeData, the log of revocation status changes that delta CRLs are created from.
+ */
+@Local
+public interface RevocationChangeDataSessionLocal {
+
+    /**
+     * Adds the current revocation status of a certificate to the log. Must be called in the same transaction as the status change.
+     *
+     * @param certificateData certificate whose revocation status has changed. The update time must be the time of the change.
+     */
+    void addRevocationChange(BaseCertificateData certificateData);
+
+    /**
+     * Lists the certificates whose revocation status has changed since the last base CRL, with the same result as
+     * {@link org.cesecore.certificates.certificate.CertificateDataSessionLocal#getRevokedCertInfos} for a delta CRL, as long as all
+     * status changes since the last base CRL are in the log.
+     *
+     * @param issuerDN issuer DN of the CA, in the same form as in CertificateData.
+     * @param crlPartitionIndex CRL partition, or CertificateConstants.NO_CRL_PARTITION if partitioning is not used.
+     * @param lastBaseCrlDate the thisUpdate time of the last base CRL in epoch millis.
+     * @param allowInvalidityDate true to include the invalidity dates and certificates where only the invalidity date has changed
+     * @return the most recent status of each certificate that has changed, or null if the log isn't complete since the last base CRL
+     */
+    Collection<RevokedCertInfo> getRevokedCertInfos(String issuerDN, int crlPartitionIndex, long lastBaseCrlDate, boolean allowInvalidityDate);
+
+    /**
+     * Removes the changes that are included in a new base CRL, and marks the log as complete from its thisUpdate time. The log is not marked
+     * as complete if a revoke-all of the CA is running, or finished after the thisUpdate time, since the base CRL may then be missing some of
+     * the revoked certificates.
+     *
+     * @param issuerDN issuer DN of the CA, in the same form as in CertificateData.
+     * @param crlPartitionIndex CRL partition, or CertificateConstants.NO_CRL_PARTITION if partitioning is not used.
+     * @param baseCrlDate the thisUpdate time of the new base CRL in epoch millis.
+     */
+    void truncate(String issuerDN, int crlPartitionIndex, long baseCrlDate);
+
+    /**
+     * Removes the whole log of a CA, before all of its certificates are revoked without logging the changes, and keeps the log from being
+     * started again until {@link #finishRevokeAll} is called. Delta CRLs are created from CertificateData until then. If finishRevokeAll is
+     * never called, e.g. because the node stopped, this lasts until the next revoke-all of the CA finishes.
+     *
+     * @param issuerDN issuer DN of the CA, in the same form as in CertificateData.
+     * @param revocationReason the revocation reason that the certificates are given.
+     * @param revocationDate the revocation date that the certificates are given, in epoch millis.
+     */
+    void startRevokeAll(String issuerDN, int revocationReason, long revocationDate);
+
+    /**
+     * Removes the whole log of a CA after all of its certificates have been revoked, also if the revocation failed part way. Delta CRLs are
+     * created from CertificateData until the next base CRL has been created.
+     *
+     * @param issuerDN issuer DN of the CA, in the same form as in CertificateData.
+     * @param revocationReason the revocation reason that the certificates were given.
+     * @param revocationDate the revocation date that the certificates were given, in epoch millis.
+     */
+    void finishRevokeAll(String issuerDN, int revocationReason, long revocationDate);
+
+}
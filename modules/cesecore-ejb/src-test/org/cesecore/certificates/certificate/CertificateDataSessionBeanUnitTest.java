@@ -0,0 +1,121 @@
+/*************************************************************************
+ *                                                                       *
+ *  CESeCore: CE Security Core                                           *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.cesecore.certificates.certificate;
+
+import static org.easymock.EasyMock.anyObject;
+import static org.easymock.EasyMock.anyString;
+import static org.easymock.EasyMock.capture;
+import static org.easymock.EasyMock.eq;
+import static org.easymock.EasyMock.expect;
+import static org.easymock.EasyMock.expectLastCall;
+import static org.easymock.EasyMock.niceMock;
+import static org.easymock.EasyMock.replay;
+import static org.easymock.EasyMock.verify;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import javax.persistence.EntityManager;
+import javax.persistence.Query;
+
+import org.cesecore.certificates.crl.RevokedCertInfo;
+import org.cesecore.config.ConfigurationHolder;
+import org.easymock.Capture;
+import org.easymock.EasyMockRunner;
+import org.easymock.Mock;
+import org.easymock.TestSubject;
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/**
+ * Unit test of the batched reading of revoked certificates in {@link CertificateDataSessionBean}.
+ */
+@RunWith(EasyMockRunner.class)
+public class CertificateDataSessionBeanUnitTest {
+
+    @Mock
+    private EntityManager entityManager;
+
+    @TestSubject
+    private final CertificateDataSessionBean certificateDataSession = new CertificateDataSessionBean();
+
+    @After
+    public void tearDown() {
+        ConfigurationHolder.updateConfiguration("database.crlgenfetchsize", "500000");
+    }
+
+    @Test
+    public void shouldReadRevokedCertificatesWithKeysetPagination() {
+        ConfigurationHolder.updateConfiguration("database.crlgenfetchsize", "2");
+        final Query firstBatch = niceMock(Query.class);
+        expect(firstBatch.getResultList()).andReturn(Arrays.asList(row("aa", 1, 100), row("bb", 2, 100)));
+        final Query secondBatch = niceMock(Query.class);
+        expect(secondBatch.setParameter("lastRevocationDate", 100L)).andReturn(secondBatch);
+        expect(secondBatch.setParameter("lastKey", "bb")).andReturn(secondBatch);
+        expect(secondBatch.getResultList()).andReturn(Arrays.asList(row("cc", 3, 100), row("aa", 4, 200)));
+        final Query thirdBatch = niceMock(Query.class);
+        expect(thirdBatch.setParameter("lastRevocationDate", 200L)).andReturn(thirdBatch);
+        expect(thirdBatch.setParameter("lastKey", "aa")).andReturn(thirdBatch);
+        expect(thirdBatch.getResultList()).andReturn(Collections.singletonList(row("dd", 5, 300)));
+        final List<Capture<String>> sqls = new ArrayList<>();
+        for (final Query query : Arrays.asList(firstBatch, secondBatch, thirdBatch)) {
+            final Capture<String> sql = Capture.newInstance();
+            expect(entityManager.createNativeQuery(capture(sql), eq("RevokedCertInfoSubset"))).andReturn(query);
+            query.setMaxResults(2);
+            expectLastCall().andReturn(query);
+            expect(query.setParameter(eq("issuerDN"), anyObject())).andReturn(query);
+            sqls.add(sql);
+        }
+        replay(entityManager, firstBatch, secondBatch, thirdBatch);
+
+        final List<RevokedCertInfo> revokedCertInfos = new ArrayList<>();
+        for (final RevokedCertInfo revokedCertInfo : certificateDataSession.getRevokedCertInfos("CN=Test", false, CertificateConstants.NO_CRL_PARTITION, 0,
+                false)) {
+            revokedCertInfos.add(revokedCertInfo);
+        }
+
+        verify(entityManager, firstBatch, secondBatch, thirdBatch);
+        assertEquals("All rows of the three batches should be read once.", 5, revokedCertInfos.size());
+        for (int i = 0; i < revokedCertInfos.size(); i++) {
+            assertEquals(i + 1, revokedCertInfos.get(i).getUserCertificate().intValue());
+        }
+        assertFalse("The first batch should start from the beginning.", sqls.get(0).getValue().contains(":lastKey"));
+        for (final Capture<String> sql : sqls) {
+            assertFalse("Batches should not be read with an offset.", sql.getValue().contains("OFFSET"));
+            assertTrue(sql.getValue(), sql.getValue().endsWith(" ORDER BY a.revocationDate, a.fingerprint"));
+        }
+        assertTrue(sqls.get(1).getValue(), sqls.get(1).getValue().contains(
+                " AND (a.revocationDate>:lastRevocationDate OR (a.revocationDate=:lastRevocationDate AND a.fingerprint>:lastKey))"));
+    }
+
+    @Test
+    public void shouldStopAfterEmptyBatch() {
+        ConfigurationHolder.updateConfiguration("database.crlgenfetchsize", "2");
+        final Query query = niceMock(Query.class);
+        expect(entityManager.createNativeQuery(anyString(), eq("RevokedCertInfoSubset"))).andReturn(query);
+        expect(query.getResultList()).andReturn(Collections.emptyList());
+        replay(entityManager, query);
+        assertTrue(certificateDataSession.getRevokedCertInfos("CN=Test", true, 1, 0, true).isEmpty());
+        verify(entityManager, query);
+    }
+
+    private static Object[] row(final String fingerprint, final int serialNumber, final long revocationDate) {
+        return new Object[] { fingerprint, String.valueOf(serialNumber), 1000L, revocationDate, 0, null };
+    }
+}
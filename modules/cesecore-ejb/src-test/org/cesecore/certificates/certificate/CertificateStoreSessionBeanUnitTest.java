@@ -0,0 +1,382 @@
+/*************************************************************************
+ *                                                                       *
+ *  CESeCore: CE Security Core                                           *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.cesecore.certificates.certificate;
+
+import static org.easymock.EasyMock.anyLong;
+import static org.easymock.EasyMock.anyObject;
+import static org.easymock.EasyMock.anyString;
+import static org.easymock.EasyMock.capture;
+import static org.easymock.EasyMock.eq;
+import static org.easymock.EasyMock.expect;
+import static org.easymock.EasyMock.expectLastCall;
+import static org.easymock.EasyMock.isNull;
+import static org.easymock.EasyMock.mock;
+import static org.easymock.EasyMock.niceMock;
+import static org.easymock.EasyMock.replay;
+import static org.easymock.EasyMock.verify;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.math.BigInteger;
+import java.security.KeyPair;
+import java.security.cert.X509Certificate;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+
+import javax.ejb.EJBException;
+import javax.persistence.EntityManager;
+import javax.persistence.Query;
+import javax.persistence.TypedQuery;
+import javax.transaction.Status;
+import javax.transaction.Synchronization;
+import javax.transaction.TransactionSynchronizationRegistry;
+
+import org.cesecore.audit.enums.EventStatus;
+import org.cesecore.audit.enums.EventTypes;
+import org.cesecore.audit.enums.ModuleTypes;
+import org.cesecore.audit.enums.ServiceTypes;
+import org.cesecore.audit.log.SecurityEventsLoggerSessionLocal;
+import org.cesecore.authentication.tokens.AlwaysAllowLocalAuthenticationToken;
+import org.cesecore.authentication.tokens.AuthenticationToken;
+import org.cesecore.authentication.tokens.UsernamePrincipal;
+import org.cesecore.authorization.AuthorizationDeniedException;
+import org.cesecore.authorization.AuthorizationSessionLocal;
+import org.cesecore.certificates.ca.CaSessionLocal;
+import org.cesecore.certificates.crl.RevocationChangeDataSessionLocal;
+import org.cesecore.certificates.crl.RevokedCertInfo;
+import org.cesecore.certificates.ocsp.cache.OcspResponseCache;
+import org.cesecore.certificates.ocsp.cache.OcspRevocationIndex;
+import org.cesecore.certificates.ocsp.cache.RevocationStatusIndex;
+import org.cesecore.config.ConfigurationHolder;
+import org.easymock.Capture;
+import org.easymock.CaptureType;
+import org.easymock.EasyMockRunner;
+import org.easymock.Mock;
+import org.easymock.MockType;
+import org.easymock.TestSubject;
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import com.keyfactor.util.CertTools;
+import com.keyfactor.util.CryptoProviderTools;
+import com.keyfactor.util.crypto.algorithm.AlgorithmConstants;
+import com.keyfactor.util.keys.KeyTools;
+
+/**
+ * Unit test of revoking all certificates of a CA, and purging expired certificates, in chunks in {@link CertificateStoreSessionBean}.
+ */
+@RunWith(EasyMockRunner.class)
+public class CertificateStoreSessionBeanUnitTest {
+
+    private static final String ISSUER_DN = "CN=Test";
+    private static final int REASON = RevokedCertInfo.REVOCATION_REASON_CACOMPROMISE;
+    private static final long EXPIRED_BEFORE = 1000000L;
+    private static final AuthenticationToken admin = new AlwaysAllowLocalAuthenticationToken(new UsernamePrincipal("CertificateStoreSessionBeanUnitTest"));
+
+    @Mock
+    private EntityManager entityManager;
+    @Mock
+    private AuthorizationSessionLocal authorizationSession;
+    @Mock
+    private CertificateStoreSessionLocal certificateStoreSession;
+    @Mock
+    private RevocationChangeDataSessionLocal revocationChangeDataSession;
+    @Mock(type = MockType.NICE)
+    private SecurityEventsLoggerSessionLocal logSession;
+    @Mock(type = MockType.NICE)
+    private CaSessionLocal caSession;
+    @Mock
+    private TransactionSynchronizationRegistry registry;
+    @Mock
+    private IncompleteIssuanceJournalDataSessionLocal incompleteIssuanceJournalDataSession;
+
+    @TestSubject
+    private final CertificateStoreSessionBean certificateStoreSessionBean = new CertificateStoreSessionBean();
+
+    @After
+    public void tearDown() {
+        ConfigurationHolder.updateConfiguration("databaseprotection.enablesign.CertificateData", "false");
+    }
+
+    @Test
+    public void shouldRevokeAllCertificatesInFingerprintRanges() throws AuthorizationDeniedException {
+        expect(authorizationSession.isAuthorized(eq(admin), anyString())).andReturn(true);
+        @SuppressWarnings("unchecked")
+        final TypedQuery<String> fingerprintQuery = niceMock(TypedQuery.class);
+        expect(entityManager.createQuery(anyString(), eq(String.class))).andReturn(fingerprintQuery).times(3);
+        final Capture<Object> afterFingerprints = Capture.newInstance(CaptureType.ALL);
+        expect(fingerprintQuery.setParameter(eq("afterFingerprint"), capture(afterFingerprints))).andReturn(fingerprintQuery).times(3);
+        expect(fingerprintQuery.getResultList()).andReturn(Arrays.asList("aa", "bb")).andReturn(Collections.singletonList("cc"))
+                .andReturn(Collections.emptyList());
+        expect(certificateStoreSession.revokeCertificatesInRangeNoAuth(eq(admin), eq(ISSUER_DN), eq(""), eq("bb"), eq(REASON), anyLong())).andReturn(2);
+        expect(certificateStoreSession.revokeCertificatesInRangeNoAuth(eq(admin), eq(ISSUER_DN), eq("bb"), eq("cc"), eq(REASON), anyLong())).andReturn(1);
+        revocationChangeDataSession.startRevokeAll(eq(ISSUER_DN), eq(REASON), anyLong());
+        revocationChangeDataSession.finishRevokeAll(eq(ISSUER_DN), eq(REASON), anyLong());
+        replay(entityManager, authorizationSession, certificateStoreSession, revocationChangeDataSession, fingerprintQuery);
+        OcspRevocationIndex.INSTANCE.setIndex(ISSUER_DN, RevocationStatusIndex.EMPTY);
+
+        certificateStoreSessionBean.revokeAllCertByCA(admin, ISSUER_DN, REASON);
+
+        verify(entityManager, authorizationSession, certificateStoreSession, revocationChangeDataSession, fingerprintQuery);
+        assertNull("The revocation index of the CA should be reloaded after the certificates were revoked.",
+                OcspRevocationIndex.INSTANCE.getIndex(ISSUER_DN));
+        assertEquals("Each range should start after the last fingerprint of the previous one.", Arrays.asList("", "bb", "cc"),
+                afterFingerprints.getValues());
+    }
+
+    @Test
+    public void shouldFinishRevokeAllInChangeLogIfRevocationFails() throws AuthorizationDeniedException {
+        expect(authorizationSession.isAuthorized(eq(admin), anyString())).andReturn(true);
+        @SuppressWarnings("unchecked")
+        final TypedQuery<String> fingerprintQuery = niceMock(TypedQuery.class);
+        expect(entityManager.createQuery(anyString(), eq(String.class))).andReturn(fingerprintQuery);
+        expect(fingerprintQuery.getResultList()).andReturn(Arrays.asList("aa", "bb"));
+        expect(certificateStoreSession.revokeCertificatesInRangeNoAuth(eq(admin), eq(ISSUER_DN), eq(""), eq("bb"), eq(REASON), anyLong()))
+                .andThrow(new IllegalStateException("Database failure"));
+        revocationChangeDataSession.startRevokeAll(eq(ISSUER_DN), eq(REASON), anyLong());
+        // Otherwise the change log of the CA would stay disabled
+        revocationChangeDataSession.finishRevokeAll(eq(ISSUER_DN), eq(REASON), anyLong());
+        replay(entityManager, authorizationSession, certificateStoreSession, revocationChangeDataSession, fingerprintQuery);
+
+        try {
+            certificateStoreSessionBean.revokeAllCertByCA(admin, ISSUER_DN, REASON);
+            fail("The failure should be passed on.");
+        } catch (EJBException e) {
+            // Expected
+        }
+
+        verify(entityManager, authorizationSession, certificateStoreSession, revocationChangeDataSession, fingerprintQuery);
+    }
+
+    @Test
+    public void shouldRevokeRangeWithBulkUpdate() {
+        final Query updateQuery = niceMock(Query.class);
+        final Capture<String> jpql = Capture.newInstance();
+        expect(entityManager.createQuery(capture(jpql))).andReturn(updateQuery);
+        expect(updateQuery.executeUpdate()).andReturn(5);
+        replay(entityManager, updateQuery);
+
+        assertEquals(5, certificateStoreSessionBean.revokeCertificatesInRangeNoAuth(admin, ISSUER_DN, "aa", "bb", REASON, 1000L));
+
+        verify(entityManager, updateQuery);
+        assertTrue(jpql.getValue(), jpql.getValue().startsWith("UPDATE CertificateData a SET a.status=:status"));
+        assertTrue("The row version must be updated for optimistic locking.", jpql.getValue().contains("a.rowVersion=a.rowVersion+1"));
+    }
+
+    @Test
+    public void shouldRevokeRangeThroughEntitiesWithIntegrityProtection() {
+        ConfigurationHolder.updateConfiguration("databaseprotection.enablesign.CertificateData", "true");
+        @SuppressWarnings("unchecked")
+        final TypedQuery<CertificateData> entityQuery = niceMock(TypedQuery.class);
+        expect(entityManager.createQuery(anyString(), eq(CertificateData.class))).andReturn(entityQuery);
+        final CertificateData certificateData = new CertificateData();
+        certificateData.setStatus(CertificateConstants.CERT_ACTIVE);
+        final List<CertificateData> certificateDatas = Collections.singletonList(certificateData);
+        expect(entityQuery.getResultList()).andReturn(certificateDatas);
+        replay(entityManager, entityQuery);
+        final long startTime = System.currentTimeMillis();
+
+        assertEquals(1, certificateStoreSessionBean.revokeCertificatesInRangeNoAuth(admin, ISSUER_DN, "aa", "bb", REASON, 1000L));
+
+        verify(entityManager, entityQuery);
+        assertEquals(CertificateConstants.CERT_REVOKED, certificateData.getStatus());
+        assertEquals(REASON, certificateData.getRevocationReason());
+        assertEquals(1000L, certificateData.getRevocationDate());
+        assertTrue("The update time should be the time of the transaction, not the revocation date.", certificateData.getUpdateTime() >= startTime);
+    }
+
+    @Test
+    public void shouldRemoveSeparatelyCommittedCertificateWhenIssuanceIsRolledBack() throws Exception {
+        final X509Certificate certificate = createCertificate();
+        final int caId = ISSUER_DN.hashCode();
+        final BigInteger serialNumber = certificate.getSerialNumber();
+        final Capture<List<StoreCertificateParameters>> batches = Capture.newInstance(CaptureType.ALL);
+        expect(certificateStoreSession.storeCertificatesNoAuthNewTransaction(capture(batches))).andReturn(storedCertificate("fp1")).times(2);
+        expect(registry.getTransactionKey()).andReturn(new Object()).times(2);
+        expect(incompleteIssuanceJournalDataSession.presentInJournal(caId, serialNumber)).andReturn(false).times(2);
+        // Removed in the transaction of the caller, so that the entry is only left if the caller doesn't commit
+        incompleteIssuanceJournalDataSession.removeFromJournal(caId, serialNumber);
+        expectLastCall().times(2);
+        final Capture<Synchronization> synchronizations = Capture.newInstance(CaptureType.ALL);
+        registry.registerInterposedSynchronization(capture(synchronizations));
+        expectLastCall().times(2);
+        certificateStoreSession.removeRolledBackCertificate(admin, "fp1", true);
+        expectLastCall();
+        replay(certificateStoreSession, registry, incompleteIssuanceJournalDataSession);
+
+        for (int i = 0; i < 2; i++) {
+            certificateStoreSessionBean.storeCertificateNoAuthGroupCommit(admin, certificate, "user", "cafp", null, CertificateConstants.CERT_ACTIVE,
+                    CertificateConstants.CERTTYPE_ENDENTITY, 1, 1, CertificateConstants.NO_CRL_PARTITION, null, 1000L, null);
+        }
+        synchronizations.getValues().get(0).afterCompletion(Status.STATUS_COMMITTED);
+        synchronizations.getValues().get(1).afterCompletion(Status.STATUS_ROLLEDBACK);
+
+        verify(certificateStoreSession, registry, incompleteIssuanceJournalDataSession);
+        for (final List<StoreCertificateParameters> batch : batches.getValues()) {
+            final IncompletelyIssuedCertificateInfo journalEntry = batch.get(0).getJournalEntry();
+            assertNotNull("The certificate should be journaled in the transaction that stores it.", journalEntry);
+            assertEquals(caId, journalEntry.getCaId());
+            assertEquals(serialNumber, journalEntry.getSerialNumber());
+            assertEquals("user", journalEntry.getUsername());
+        }
+    }
+
+    @Test
+    public void shouldLeaveJournalEntryOfCtSubmittedCertificateToCaller() throws Exception {
+        final X509Certificate certificate = createCertificate();
+        final Capture<List<StoreCertificateParameters>> batch = Capture.newInstance();
+        expect(certificateStoreSession.storeCertificatesNoAuthNewTransaction(capture(batch))).andReturn(storedCertificate("fp1"));
+        expect(registry.getTransactionKey()).andReturn(new Object());
+        expect(incompleteIssuanceJournalDataSession.presentInJournal(ISSUER_DN.hashCode(), certificate.getSerialNumber())).andReturn(true);
+        final Capture<Synchronization> synchronization = Capture.newInstance();
+        registry.registerInterposedSynchronization(capture(synchronization));
+        certificateStoreSession.removeRolledBackCertificate(admin, "fp1", false);
+        expectLastCall();
+        replay(certificateStoreSession, registry, incompleteIssuanceJournalDataSession);
+
+        certificateStoreSessionBean.storeCertificateNoAuthGroupCommit(admin, certificate, "user", "cafp", null, CertificateConstants.CERT_ACTIVE,
+                CertificateConstants.CERTTYPE_ENDENTITY, 1, 1, CertificateConstants.NO_CRL_PARTITION, null, 1000L, null);
+        synchronization.getValue().afterCompletion(Status.STATUS_ROLLEDBACK);
+
+        verify(certificateStoreSession, registry, incompleteIssuanceJournalDataSession);
+        assertNull(batch.getValue().get(0).getJournalEntry());
+    }
+
+    private static X509Certificate createCertificate() throws Exception {
+        CryptoProviderTools.installBCProviderIfNotAvailable();
+        final KeyPair keyPair = KeyTools.genKeys("secp256r1", AlgorithmConstants.KEYALGORITHM_EC);
+        return CertTools.genSelfCert(ISSUER_DN, 1, null, keyPair.getPrivate(), keyPair.getPublic(), AlgorithmConstants.SIGALG_SHA256_WITH_ECDSA, false);
+    }
+
+    private static List<CertificateDataWrapper> storedCertificate(final String fingerprint) {
+        final CertificateData certificateData = new CertificateData();
+        certificateData.setFingerprint(fingerprint);
+        return Collections.singletonList(new CertificateDataWrapper(certificateData, null));
+    }
+
+    @Test
+    public void shouldPurgeExpiredCertificatesInFingerprintRanges() {
+        expect(certificateStoreSession.findExpiredCertificateFingerprintsInRange(ISSUER_DN, Long.MIN_VALUE, EXPIRED_BEFORE + 1, "", 2))
+                .andReturn(Arrays.asList("aa", "bb"));
+        expect(certificateStoreSession.deleteExpiredCertificatesInRangeNoAuth(admin, ISSUER_DN, Long.MIN_VALUE, EXPIRED_BEFORE + 1, "", "bb"))
+                .andReturn(2);
+        expect(certificateStoreSession.findExpiredCertificateFingerprintsInRange(ISSUER_DN, Long.MIN_VALUE, EXPIRED_BEFORE + 1, "bb", 2))
+                .andReturn(Collections.singletonList("cc"));
+        expect(certificateStoreSession.deleteExpiredCertificatesInRangeNoAuth(admin, ISSUER_DN, Long.MIN_VALUE, EXPIRED_BEFORE + 1, "bb", "cc"))
+                .andReturn(1);
+        expect(certificateStoreSession.findExpiredCertificateFingerprintsInRange(ISSUER_DN, Long.MIN_VALUE, EXPIRED_BEFORE + 1, "cc", 2))
+                .andReturn(Collections.emptyList());
+        replay(entityManager, certificateStoreSession);
+
+        final ExpiredCertificatePurgeCheckpoint checkpoint = certificateStoreSessionBean.purgeExpiredCertificates(
+                Collections.singletonList(ISSUER_DN), new Date(EXPIRED_BEFORE), 2, 0, admin, null);
+
+        verify(entityManager, certificateStoreSession);
+        assertTrue("All partitions should have been purged.", checkpoint.isComplete());
+        assertEquals(3, checkpoint.getDeletedCertificates());
+    }
+
+    @Test
+    public void shouldResumePurgeFromCheckpoint() {
+        final ExpiredCertificatePurgeCheckpoint previousCheckpoint = new ExpiredCertificatePurgeCheckpoint(EXPIRED_BEFORE);
+        previousCheckpoint.setLastFingerprint(ISSUER_DN, Long.MIN_VALUE, "bb");
+        previousCheckpoint.setPartitionCompleted("CN=Done", Long.MIN_VALUE);
+        expect(certificateStoreSession.findExpiredCertificateFingerprintsInRange(ISSUER_DN, Long.MIN_VALUE, EXPIRED_BEFORE + 1, "bb", 2))
+                .andReturn(Collections.singletonList("cc"));
+        expect(certificateStoreSession.deleteExpiredCertificatesInRangeNoAuth(admin, ISSUER_DN, Long.MIN_VALUE, EXPIRED_BEFORE + 1, "bb", "cc"))
+                .andReturn(1);
+        expect(certificateStoreSession.findExpiredCertificateFingerprintsInRange(ISSUER_DN, Long.MIN_VALUE, EXPIRED_BEFORE + 1, "cc", 2))
+                .andReturn(Collections.emptyList());
+        replay(entityManager, certificateStoreSession);
+
+        final ExpiredCertificatePurgeCheckpoint checkpoint = certificateStoreSessionBean.purgeExpiredCertificates(
+                Arrays.asList(ISSUER_DN, "CN=Done"), new Date(EXPIRED_BEFORE), 2, 0, admin, previousCheckpoint);
+
+        verify(entityManager, certificateStoreSession);
+        assertTrue(checkpoint.isComplete());
+        assertTrue(checkpoint.isPartitionCompleted(ISSUER_DN, Long.MIN_VALUE));
+        assertEquals("", checkpoint.getLastFingerprint(ISSUER_DN, Long.MIN_VALUE));
+    }
+
+    @Test
+    public void shouldDeleteExpiredRangeWithBulkDeletes() {
+        @SuppressWarnings("unchecked")
+        final TypedQuery<Object[]> selectQuery = niceMock(TypedQuery.class);
+        expect(entityManager.createQuery(anyString(), eq(Object[].class))).andReturn(selectQuery);
+        expect(selectQuery.getResultList()).andReturn(Arrays.asList(new Object[] { "ab", "26", "user1" }, new Object[] { "bb", "255", null }));
+        final Query deleteQuery = niceMock(Query.class);
+        final Capture<String> jpql = Capture.newInstance(CaptureType.ALL);
+        expect(entityManager.createQuery(capture(jpql))).andReturn(deleteQuery).times(3);
+        expect(deleteQuery.executeUpdate()).andReturn(0).andReturn(2).andReturn(2);
+        final Capture<Map<String, Object>> details = Capture.newInstance();
+        logSession.log(eq(EventTypes.CERT_CLEANUP), eq(EventStatus.SUCCESS), eq(ModuleTypes.CERTIFICATE), eq(ServiceTypes.CORE), eq(admin.toString()),
+                eq(String.valueOf(ISSUER_DN.hashCode())), isNull(), isNull(), capture(details));
+        expectLastCall();
+        replay(entityManager, selectQuery, deleteQuery, logSession);
+
+        assertEquals(2, certificateStoreSessionBean.deleteExpiredCertificatesInRangeNoAuth(admin, ISSUER_DN, 0L, EXPIRED_BEFORE, "aa", "bb"));
+
+        verify(entityManager, selectQuery, deleteQuery, logSession);
+        final List<String> statements = jpql.getValues();
+        assertEquals("DELETE FROM CertReqHistoryData h WHERE h.fingerprint IN (:fingerprints)", statements.get(0));
+        assertEquals("DELETE FROM Base64CertData b WHERE b.fingerprint IN (:fingerprints)", statements.get(1));
+        assertEquals("DELETE FROM CertificateData a WHERE a.fingerprint IN (:fingerprints)", statements.get(2));
+        assertEquals("The audit record should list the deleted certificates.", Arrays.asList("ab", "bb"), details.getValue().get("fingerprints"));
+        assertEquals(Arrays.asList("1A", "FF"), details.getValue().get("serialNumbers"));
+        assertEquals(Arrays.asList("user1", null), details.getValue().get("usernames"));
+    }
+
+    @Test
+    public void shouldEvictCachedOcspResponsesAgainAfterCompletion() throws CertificateRevokeException {
+        final Object transactionKey = new Object();
+        expect(registry.getTransactionKey()).andReturn(transactionKey).times(2);
+        final Capture<Object> serialNumbers = Capture.newInstance();
+        expect(registry.getResource(OcspResponseCache.class)).andAnswer(() -> serialNumbers.hasCaptured() ? serialNumbers.getValue() : null).times(2);
+        registry.putResource(eq(OcspResponseCache.class), capture(serialNumbers));
+        expectLastCall();
+        final Capture<Synchronization> synchronization = Capture.newInstance();
+        registry.registerInterposedSynchronization(capture(synchronization));
+        expectLastCall();
+        expect(entityManager.merge(anyObject())).andReturn(null).times(2);
+        revocationChangeDataSession.addRevocationChange(anyObject());
+        expectLastCall().times(2);
+        replay(registry, entityManager, revocationChangeDataSession, caSession);
+
+        // Two certificates revoked in the same transaction
+        certificateStoreSessionBean.setRevokeStatusNoAuth(admin, activeCertificateData("123"), new Date(), null, REASON);
+        certificateStoreSessionBean.setRevokeStatusNoAuth(admin, activeCertificateData("456"), new Date(), null, REASON);
+        synchronization.getValue().afterCompletion(Status.STATUS_COMMITTED);
+
+        verify(registry, entityManager, revocationChangeDataSession);
+        assertEquals("Both certificates should be evicted again by a single synchronization after the commit.",
+                new HashSet<>(Arrays.asList(BigInteger.valueOf(123), BigInteger.valueOf(456))), serialNumbers.getValue());
+    }
+
+    private static CertificateData activeCertificateData(final String serialNumber) {
+        final CertificateData certificateData = mock(MockType.NICE, CertificateData.class);
+        expect(certificateData.getSerialNumber()).andReturn(serialNumber).anyTimes();
+        expect(certificateData.getIssuerDN()).andReturn(ISSUER_DN).anyTimes();
+        expect(certificateData.getStatus()).andReturn(CertificateConstants.CERT_ACTIVE).anyTimes();
+        expect(certificateData.getRevocationReason()).andReturn(RevokedCertInfo.NOT_REVOKED).anyTimes();
+        replay(certificateData);
+        return certificateData;
+    }
+}
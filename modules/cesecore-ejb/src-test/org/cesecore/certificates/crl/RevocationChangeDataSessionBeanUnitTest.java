@@ -0,0 +1,223 @@
+/*************************************************************************
+ *                                                                       *
+ *  CESeCore: CE Security Core                                           *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.cesecore.certificates.crl;
+
+import static org.easymock.EasyMock.anyObject;
+import static org.easymock.EasyMock.anyString;
+import static org.easymock.EasyMock.capture;
+import static org.easymock.EasyMock.eq;
+import static org.easymock.EasyMock.expect;
+import static org.easymock.EasyMock.expectLastCall;
+import static org.easymock.EasyMock.niceMock;
+import static org.easymock.EasyMock.replay;
+import static org.easymock.EasyMock.verify;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import javax.persistence.EntityManager;
+import javax.persistence.Query;
+import javax.persistence.TypedQuery;
+
+import org.cesecore.certificates.certificate.CertificateConstants;
+import org.easymock.Capture;
+import org.easymock.CaptureType;
+import org.easymock.EasyMockRunner;
+import org.easymock.Mock;
+import org.easymock.TestSubject;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/**
+ * Unit test of reading delta CRL entries from, and truncating, the revocation change log in {@link RevocationChangeDataSessionBean}.
+ */
+@RunWith(EasyMockRunner.class)
+public class RevocationChangeDataSessionBeanUnitTest {
+
+    private static final String ISSUER_DN = "CN=Test";
+    private static final long LAST_BASE_CRL_DATE = 10000L;
+
+    @Mock
+    private EntityManager entityManager;
+
+    @TestSubject
+    private final RevocationChangeDataSessionBean revocationChangeDataSession = new RevocationChangeDataSessionBean();
+
+    @Test
+    public void shouldFallBackIfLogIsIncomplete() {
+        final TypedQuery<Long> startQuery = expectStartQuery(0L);
+        replay(entityManager, startQuery);
+        assertNull("The log doesn't go back to the last base CRL.", revocationChangeDataSession.getRevokedCertInfos(ISSUER_DN,
+                CertificateConstants.NO_CRL_PARTITION, LAST_BASE_CRL_DATE, false));
+        verify(entityManager, startQuery);
+    }
+
+    @Test
+    public void shouldReturnMostRecentChangeOfEachCertificate() {
+        final TypedQuery<Long> startQuery = expectStartQuery(1L);
+        @SuppressWarnings("unchecked")
+        final TypedQuery<RevocationChangeData> changeQuery = niceMock(TypedQuery.class);
+        expect(entityManager.createQuery(anyString(), eq(RevocationChangeData.class))).andReturn(changeQuery);
+        expect(changeQuery.getResultList()).andReturn(Arrays.asList(
+                change("aa", 1, 10500L, RevokedCertInfo.REVOCATION_REASON_CERTIFICATEHOLD, 10500L, null),
+                change("bb", 2, 11000L, RevokedCertInfo.REVOCATION_REASON_KEYCOMPROMISE, 11000L, 9000L),
+                change("aa", 1, 12000L, RevokedCertInfo.NOT_REVOKED, 12000L, null),
+                // Revoked before the last base CRL, and later only had the invalidity date changed
+                change("cc", 3, 5000L, RevokedCertInfo.REVOCATION_REASON_KEYCOMPROMISE, 13000L, 4000L)));
+        replay(entityManager, startQuery, changeQuery);
+
+        final List<RevokedCertInfo> changes = new ArrayList<>(revocationChangeDataSession.getRevokedCertInfos(ISSUER_DN,
+                CertificateConstants.NO_CRL_PARTITION, LAST_BASE_CRL_DATE, false));
+        assertEquals(2, changes.size());
+        assertEquals(BigInteger.valueOf(2), changes.get(0).getUserCertificate());
+        assertEquals(RevokedCertInfo.REVOCATION_REASON_KEYCOMPROMISE, changes.get(0).getReason());
+        assertNull("Invalidity dates should only be included if allowed.", changes.get(0).getInvalidityDate());
+        assertEquals("The certificate was reactivated after being put on hold.", BigInteger.valueOf(1), changes.get(1).getUserCertificate());
+        assertEquals(RevokedCertInfo.REVOCATION_REASON_REMOVEFROMCRL, changes.get(1).getReason());
+        assertEquals(12000L, changes.get(1).getRevocationDate().getTime());
+        verify(entityManager, startQuery, changeQuery);
+    }
+
+    @Test
+    public void shouldIncludeInvalidityDateChangesIfAllowed() {
+        final TypedQuery<Long> startQuery = expectStartQuery(1L);
+        @SuppressWarnings("unchecked")
+        final TypedQuery<RevocationChangeData> changeQuery = niceMock(TypedQuery.class);
+        expect(entityManager.createQuery(anyString(), eq(RevocationChangeData.class))).andReturn(changeQuery);
+        expect(changeQuery.getResultList()).andReturn(Arrays.asList(
+                change("bb", 2, 11000L, RevokedCertInfo.REVOCATION_REASON_KEYCOMPROMISE, 11000L, -1L),
+                change("cc", 3, 5000L, RevokedCertInfo.REVOCATION_REASON_KEYCOMPROMISE, 13000L, 4000L)));
+        replay(entityManager, startQuery, changeQuery);
+
+        final List<RevokedCertInfo> changes = new ArrayList<>(revocationChangeDataSession.getRevokedCertInfos(ISSUER_DN,
+                CertificateConstants.NO_CRL_PARTITION, LAST_BASE_CRL_DATE, true));
+        assertEquals(2, changes.size());
+        assertEquals("Entries should be ordered by revocation date.", BigInteger.valueOf(3), changes.get(0).getUserCertificate());
+        assertEquals(4000L, changes.get(0).getInvalidityDate().getTime());
+        assertNull(changes.get(1).getInvalidityDate());
+        verify(entityManager, startQuery, changeQuery);
+    }
+
+    @Test
+    public void shouldIgnoreLogStartsFromBeforeRevokeAll() {
+        final Capture<String> jpql = Capture.newInstance();
+        @SuppressWarnings("unchecked")
+        final TypedQuery<Long> startQuery = niceMock(TypedQuery.class);
+        expect(entityManager.createQuery(capture(jpql), eq(Long.class))).andReturn(startQuery);
+        expect(startQuery.getSingleResult()).andReturn(0L);
+        replay(entityManager, startQuery);
+
+        assertNull(revocationChangeDataSession.getRevokedCertInfos(ISSUER_DN, CertificateConstants.NO_CRL_PARTITION, LAST_BASE_CRL_DATE, false));
+
+        verify(entityManager, startQuery);
+        assertTrue("Start rows older than the revoke-all row of the CA should not count.",
+                jpql.getValue().contains("NOT EXISTS (SELECT b.id FROM RevocationChangeData b WHERE b.issuerDN=:issuerDN AND b.fingerprint IS NULL "
+                        + "AND b.revocationReason<>:notRevoked AND b.changeTime>a.changeTime)"));
+    }
+
+    @Test
+    public void shouldAddLogStartWhenTruncating() {
+        final Capture<String> jpql = Capture.newInstance();
+        final Query deleteQuery = expectTruncate(jpql, 0L);
+        final Capture<RevocationChangeData> logStart = Capture.newInstance();
+        entityManager.persist(capture(logStart));
+        replay(entityManager, deleteQuery);
+
+        revocationChangeDataSession.truncate(ISSUER_DN, 2, LAST_BASE_CRL_DATE);
+
+        verify(entityManager, deleteQuery);
+        assertTrue(jpql.getValue(), jpql.getValue().startsWith("DELETE FROM RevocationChangeData a WHERE "));
+        assertTrue("The revoke-all row should be kept.", jpql.getValue().contains("(a.fingerprint IS NOT NULL OR a.revocationReason=:notRevoked)"));
+        assertTrue(logStart.getValue().isLogStart());
+        assertEquals(ISSUER_DN, logStart.getValue().getIssuerDN());
+        assertEquals(2, logStart.getValue().getCrlPartitionIndex());
+        assertEquals(LAST_BASE_CRL_DATE, logStart.getValue().getChangeTime());
+    }
+
+    @Test
+    public void shouldNotAddLogStartDuringRevokeAll() {
+        final Query deleteQuery = expectTruncate(Capture.newInstance(), 1L);
+        // No persist is expected
+        replay(entityManager, deleteQuery);
+
+        revocationChangeDataSession.truncate(ISSUER_DN, 2, LAST_BASE_CRL_DATE);
+
+        verify(entityManager, deleteQuery);
+    }
+
+    @Test
+    public void shouldReplaceRunningRevokeAllWhenFinished() {
+        final Query deleteQuery = niceMock(Query.class);
+        expect(entityManager.createQuery("DELETE FROM RevocationChangeData a WHERE a.issuerDN=:issuerDN")).andReturn(deleteQuery).times(2);
+        final Capture<RevocationChangeData> revokeAlls = Capture.newInstance(CaptureType.ALL);
+        entityManager.persist(capture(revokeAlls));
+        expectLastCall().times(2);
+        replay(entityManager, deleteQuery);
+        final long startTime = System.currentTimeMillis();
+
+        revocationChangeDataSession.startRevokeAll(ISSUER_DN, RevokedCertInfo.REVOCATION_REASON_CACOMPROMISE, 5000L);
+        revocationChangeDataSession.finishRevokeAll(ISSUER_DN, RevokedCertInfo.REVOCATION_REASON_CACOMPROMISE, 5000L);
+
+        verify(entityManager, deleteQuery);
+        final RevocationChangeData running = revokeAlls.getValues().get(0);
+        assertTrue(running.isRevokeAll());
+        assertFalse(running.isLogStart());
+        assertEquals("A running revoke-all should block all start rows.", Long.MAX_VALUE, running.getChangeTime());
+        final RevocationChangeData finished = revokeAlls.getValues().get(1);
+        assertTrue(finished.isRevokeAll());
+        assertTrue(finished.getChangeTime() >= startTime && finished.getChangeTime() < Long.MAX_VALUE);
+        assertEquals(RevokedCertInfo.REVOCATION_REASON_CACOMPROMISE, finished.getRevocationReason());
+    }
+
+    private Query expectTruncate(final Capture<String> deleteJpql, final long revokeAllRows) {
+        final Query deleteQuery = niceMock(Query.class);
+        expect(entityManager.createQuery(capture(deleteJpql))).andReturn(deleteQuery);
+        expect(deleteQuery.setParameter("baseCrlDate", LAST_BASE_CRL_DATE)).andReturn(deleteQuery);
+        expect(deleteQuery.executeUpdate()).andReturn(3);
+        @SuppressWarnings("unchecked")
+        final TypedQuery<Long> revokeAllQuery = niceMock(TypedQuery.class);
+        expect(entityManager.createQuery(anyString(), eq(Long.class))).andReturn(revokeAllQuery);
+        expect(revokeAllQuery.getSingleResult()).andReturn(revokeAllRows);
+        replay(revokeAllQuery);
+        return deleteQuery;
+    }
+
+    private TypedQuery<Long> expectStartQuery(final long startRows) {
+        @SuppressWarnings("unchecked")
+        final TypedQuery<Long> startQuery = niceMock(TypedQuery.class);
+        expect(entityManager.createQuery(anyString(), eq(Long.class))).andReturn(startQuery);
+        expect(startQuery.setParameter(eq("lastBaseCrlDate"), anyObject())).andReturn(startQuery);
+        expect(startQuery.getSingleResult()).andReturn(startRows);
+        return startQuery;
+    }
+
+    private static RevocationChangeData change(final String fingerprint, final int serialNumber, final long revocationDate, final int reason,
+            final long changeTime, final Long invalidityDate) {
+        final RevocationChangeData change = new RevocationChangeData();
+        change.setIssuerDN(ISSUER_DN);
+        change.setFingerprint(fingerprint);
+        change.setSerialNumber(String.valueOf(serialNumber));
+        change.setExpireDate(100000L);
+        change.setRevocationDate(revocationDate);
+        change.setRevocationReason(reason);
+        change.setChangeTime(changeTime);
+        change.setInvalidityDate(invalidityDate);
+        return change;
+    }
+}
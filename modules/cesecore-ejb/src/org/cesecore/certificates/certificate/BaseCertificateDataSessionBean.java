@@ -15,14 +15,15 @@ package org.cesecore.certificates.certificate;
 import java.math.BigInteger;
 import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 
 import javax.persistence.EntityManager;
 import javax.persistence.Query;
 
 import org.apache.log4j.Logger;
 import org.cesecore.certificates.crl.RevokedCertInfo;
+import org.cesecore.certificates.crl.RevokedCertInfoCollection;
 import org.cesecore.config.CesecoreConfiguration;
-import org.cesecore.util.CompressedCollection;
 import org.cesecore.util.ValueExtractor;
 
 /**
@@ -35,13 +36,39 @@ public abstract class BaseCertificateDataSessionBean {
     /** Returns the entity manager to use. */
     protected abstract EntityManager getEntityManager();
     
-    protected Collection<RevokedCertInfo> getRevokedCertInfosInternal(final Query query, final boolean allowInvalidityDate) {
+    /**
+     * Reads revoked certificates in batches of database.crlgenfetchsize rows. The rows are ordered by revocation date and a
+     * unique key column, and each batch is read with keyset pagination, i.e. it continues after the last row of the previous
+     * batch. Unlike an offset, this doesn't make the database scan through all earlier rows again for every batch, and rows
+     * that are updated during the CRL generation can't shift between batches.
+     *
+     * @param sql native query selecting from a table aliased "a", with a WHERE clause but no ordering
+     * @param resultSetMapping result set mapping with fingerprint, serialNumber, expireDate, revocationDate, revocationReason and
+     *      invalidityDate as the first columns
+     * @param keyColumn column that is unique together with revocationDate
+     * @param keyIndex the index of keyColumn in the result set mapping
+     * @param parameters the parameters of the query
+     * @param allowInvalidityDate true if the invalidity date should be included in the results
+     */
+    protected Collection<RevokedCertInfo> getRevokedCertInfosInternal(final String sql, final String resultSetMapping, final String keyColumn,
+            final int keyIndex, final Map<String, Object> parameters, final boolean allowInvalidityDate) {
         final int maxResults = CesecoreConfiguration.getDatabaseRevokedCertInfoFetchSize();
-        query.setMaxResults(maxResults);
-        int firstResult = 0;
-        final CompressedCollection<RevokedCertInfo> revokedCertInfos = new CompressedCollection<>(RevokedCertInfo.class);
+        final String ordering = " ORDER BY a.revocationDate, a." + keyColumn;
+        final String keysetExpression = " AND (a.revocationDate>:lastRevocationDate OR (a.revocationDate=:lastRevocationDate AND a." + keyColumn
+                + ">:lastKey))";
+        final RevokedCertInfoCollection revokedCertInfos = new RevokedCertInfoCollection();
+        Long lastRevocationDate = null;
+        Object lastKey = null;
         while (true) {
-            query.setFirstResult(firstResult);
+            final Query query = getEntityManager().createNativeQuery(sql + (lastKey == null ? "" : keysetExpression) + ordering, resultSetMapping);
+            for (final Map.Entry<String, Object> parameter : parameters.entrySet()) {
+                query.setParameter(parameter.getKey(), parameter.getValue());
+            }
+            if (lastKey != null) {
+                query.setParameter("lastRevocationDate", lastRevocationDate);
+                query.setParameter("lastKey", lastKey);
+            }
+            query.setMaxResults(maxResults);
             @SuppressWarnings("unchecked")
             final List<Object[]> incompleteCertificateDatas = query.getResultList();
             if (incompleteCertificateDatas.isEmpty()) {
@@ -60,17 +87,19 @@ public abstract class BaseCertificateDataSessionBean {
                 if (revocationReason == -1) {
                     revocationReason = RevokedCertInfo.REVOCATION_REASON_REMOVEFROMCRL;
                 }
-                if (allowInvalidityDate) {
-                    Long invalidityDate = null;
-                    if (current[5] != null && ValueExtractor.extractLongValue(current[5]) != -1L){
-                        invalidityDate = ValueExtractor.extractLongValue(current[5]);
-                    }
-                    revokedCertInfos.add(new RevokedCertInfo(fingerprint, serialNumber, revocationDate, revocationReason, expireDate, invalidityDate));
-                } else {
-                    revokedCertInfos.add(new RevokedCertInfo(fingerprint, serialNumber, revocationDate, revocationReason, expireDate));
+                Long invalidityDate = null;
+                if (allowInvalidityDate && current[5] != null && ValueExtractor.extractLongValue(current[5]) != -1L) {
+                    invalidityDate = ValueExtractor.extractLongValue(current[5]);
                 }
+                // Stored in columns, without creating a RevokedCertInfo
+                revokedCertInfos.add(fingerprint, serialNumber, revocationDate, revocationReason, expireDate, invalidityDate);
+            }
+            final Object[] last = incompleteCertificateDatas.get(incompleteCertificateDatas.size() - 1);
+            lastRevocationDate = ValueExtractor.extractLongValue(last[3]);
+            lastKey = last[keyIndex];
+            if (incompleteCertificateDatas.size() < maxResults) {
+                break;
             }
-            firstResult += maxResults;
         }
         revokedCertInfos.closeForWrite();
         return revokedCertInfos;
@@ -100,6 +100,7 @@ import org.cesecore.certificates.crl.RevokedCertInfo;
 import org.cesecore.certificates.endentity.EndEntityInformation;
 import org.cesecore.certificates.endentity.EndEntityTypes;
 import org.cesecore.certificates.endentity.ExtendedInformation;
+import org.cesecore.config.CesecoreConfiguration;
 import org.cesecore.configuration.LogRedactionConfigurationCache;
 import org.cesecore.configuration.GlobalConfigurationSessionLocal;
 import org.cesecore.internal.InternalResources;
@@ -634,7 +635,12 @@ public class CertificateCreateSessionBean implements CertificateCreateSessionLoc
                     
                     // Authorization was already checked by since this is a private method, the CA parameter should
                     // not be possible to get without authorization
-                    if (ctLogException == null) {
+                    if (ctLogException == null && CesecoreConfiguration.isDatabaseGroupCommitEnabled()) {
+                        // Committed together with the certificates issued by other threads, and removed again if this transaction is rolled back
+                        result = certificateStoreSession.storeCertificateNoAuthGroupCommit(admin, cert, endEntityInformation.getUsername(), cafingerprint,
+                                certificateRequest, CertificateConstants.CERT_ACTIVE, certProfile.getType(), certProfileId,
+                                endEntityInformation.getEndEntityProfileId(), crlPartitionIndex, tag, updateTime, accountBindingId);
+                    } else if (ctLogException == null) {
                         result = certificateStoreSession.storeCertificateNoAuth(admin, cert, endEntityInformation.getUsername(), cafingerprint, certificateRequest, 
                                 CertificateConstants.CERT_ACTIVE, certProfile.getType(), certProfileId, endEntityInformation.getEndEntityProfileId(),
                                 crlPartitionIndex, tag, updateTime, accountBindingId);
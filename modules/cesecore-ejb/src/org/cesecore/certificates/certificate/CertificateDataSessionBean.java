@@ -32,12 +32,15 @@ import javax.persistence.Query;
 import javax.persistence.TypedQuery;
 import java.math.BigInteger;
 import java.security.cert.Certificate;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.TimeZone;
 
@@ -108,6 +111,15 @@ public class CertificateDataSessionBean extends BaseCertificateDataSessionBean i
         return query.getResultList();
     }
 
+    @Override
+    public List<CertificateData> findByIssuerDNSerialNumbers(final String issuerDN, final Collection<String> serialNumbers) {
+        final TypedQuery<CertificateData> query = entityManager.createQuery("SELECT a FROM CertificateData a WHERE a.issuerDN=:issuerDN "
+                + "AND a.serialNumber IN (:serialNumbers)", CertificateData.class);
+        query.setParameter("issuerDN", issuerDN);
+        query.setParameter("serialNumbers", serialNumbers);
+        return query.getResultList();
+    }
+
     @Override
     public Long findQuantityOfAllCertificates() {
         Query query = entityManager.createQuery("SELECT count(cd) FROM CertificateData cd");
@@ -252,6 +264,73 @@ public class CertificateDataSessionBean extends BaseCertificateDataSessionBean i
         return query.getResultList();
     }
 
+    @Override
+    @SuppressWarnings("unchecked")
+    public List<Object[]> findStatusesByIssuerDNUpdatedAfter(final String issuerDN, final long updateTimeAfter, final String fingerprintAfter,
+            final int maxResults) {
+        final Query query = entityManager.createNativeQuery("SELECT a.fingerprint as fingerprint, a.serialNumber as serialNumber, a.status as status, "
+                + "a.revocationDate as revocationDate, a.revocationReason as revocationReason, a.expireDate as expireDate, "
+                + "a.certificateProfileId as certificateProfileId, a.updateTime as updateTime FROM CertificateData a WHERE a.issuerDN=:issuerDN AND "
+                + "(a.updateTime>:updateTime OR (a.updateTime=:updateTime AND a.fingerprint>:fingerprint)) ORDER BY a.updateTime, a.fingerprint",
+                "CertificateStatusSubset");
+        query.setParameter("issuerDN", issuerDN);
+        query.setParameter("updateTime", updateTimeAfter);
+        query.setParameter("fingerprint", fingerprintAfter);
+        query.setMaxResults(maxResults);
+        return query.getResultList();
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public List<Object[]> findStatusesByIssuerDNWithoutUpdateTime(final String issuerDN, final String fingerprintAfter, final int maxResults) {
+        final Query query = entityManager.createNativeQuery("SELECT a.fingerprint as fingerprint, a.serialNumber as serialNumber, a.status as status, "
+                + "a.revocationDate as revocationDate, a.revocationReason as revocationReason, a.expireDate as expireDate, "
+                + "a.certificateProfileId as certificateProfileId, a.updateTime as updateTime FROM CertificateData a WHERE a.issuerDN=:issuerDN AND "
+                + "a.updateTime IS NULL AND a.fingerprint>:fingerprint ORDER BY a.fingerprint", "CertificateStatusSubset");
+        query.setParameter("issuerDN", issuerDN);
+        query.setParameter("fingerprint", fingerprintAfter);
+        query.setMaxResults(maxResults);
+        return query.getResultList();
+    }
+
+    @Override
+    public List<Object[]> findFingerprintsAndSerialNumbersByIssuerDN(final String issuerDN, final long expireDateAfter, final String fingerprintAfter,
+            final int maxResults) {
+        final TypedQuery<Object[]> query = entityManager.createQuery("SELECT a.fingerprint, a.serialNumber FROM CertificateData a WHERE a.issuerDN=:issuerDN "
+                + "AND a.expireDate>:expireDate AND a.fingerprint>:fingerprint ORDER BY a.fingerprint", Object[].class);
+        query.setParameter("issuerDN", issuerDN);
+        query.setParameter("expireDate", expireDateAfter);
+        query.setParameter("fingerprint", fingerprintAfter);
+        query.setMaxResults(maxResults);
+        return query.getResultList();
+    }
+
+    @Override
+    public List<CertificateStatusInfo> findStatusesByIssuerDNAndSerialNumbers(final String issuerDN, final Collection<String> serialNumbers) {
+        // Only the status columns are selected, so neither the encoded certificate nor a managed entity is loaded
+        final TypedQuery<Object[]> query = entityManager.createQuery("SELECT a.fingerprint, a.serialNumber, a.status, a.revocationDate, a.revocationReason, "
+                + "a.invalidityDate, a.expireDate, a.certificateProfileId FROM CertificateData a WHERE a.issuerDN=:issuerDN AND a.serialNumber IN (:serialNumbers)",
+                Object[].class);
+        query.setParameter("issuerDN", issuerDN);
+        query.setParameter("serialNumbers", serialNumbers);
+        final List<Object[]> rows = query.getResultList();
+        final List<CertificateStatusInfo> ret = new ArrayList<>(rows.size());
+        for (final Object[] row : rows) {
+            ret.add(new CertificateStatusInfo((String) row[0], (String) row[1], ValueExtractor.extractIntValue(row[2]), ValueExtractor.extractLongValue(row[3]),
+                    ValueExtractor.extractIntValue(row[4]), row[5] == null ? null : ValueExtractor.extractLongValue(row[5]),
+                    ValueExtractor.extractLongValue(row[6]), row[7] == null ? null : ValueExtractor.extractIntValue(row[7])));
+        }
+        return ret;
+    }
+
+    @Override
+    public List<Object[]> findIssuerDNsBySerialNumbers(final Collection<String> serialNumbers) {
+        final TypedQuery<Object[]> query = entityManager.createQuery("SELECT a.serialNumber, a.issuerDN FROM CertificateData a "
+                + "WHERE a.serialNumber IN (:serialNumbers)", Object[].class);
+        query.setParameter("serialNumbers", serialNumbers);
+        return query.getResultList();
+    }
+
     @Override
     public Collection<RevokedCertInfo> getRevokedCertInfos(final String issuerDN, final boolean deltaCrl, final int crlPartitionIndex, final long lastBaseCrlDate, 
             final boolean allowInvalidityDate) {
@@ -262,55 +341,64 @@ public class CertificateDataSessionBean extends BaseCertificateDataSessionBean i
                     ", Allow Invalidity Date: " + allowInvalidityDate);
         }
         final String crlPartitionExpression;
-        final String ordering;
-        final Query query;
+        final String sql;
+        final Map<String, Object> parameters = new HashMap<>();
         if (crlPartitionIndex != 0) {
             crlPartitionExpression = " AND crlPartitionIndex = :crlPartitionIndex";
         } else {
             crlPartitionExpression = " AND (crlPartitionIndex = :crlPartitionIndex OR crlPartitionIndex IS NULL)";
         }
-        if (CesecoreConfiguration.getDatabaseRevokedCertInfoFetchOrdered()) {
-            ordering = " ORDER BY revocationDate, fingerprint ASC";
-        } else {
-            ordering = "";
-        }
         if (allowInvalidityDate && deltaCrl) {
             // For delta CRL generation with invalidityDate. Results will be filtered later. This is needed since we will need to compare the results with the revoked cert entries
             // in the last base CRL in order to figure out which certificates had their invalidity date changed since the last base CRL. We can't determine that in the query here.
-            query = getEntityManager().createNativeQuery(
-                    "SELECT a.fingerprint as fingerprint, a.serialNumber as serialNumber, a.expireDate as expireDate, a.revocationDate as revocationDate, a.revocationReason as revocationReason, a.invalidityDate as invalidityDate  FROM CertificateData a WHERE "
-                            + "a.issuerDN=:issuerDN AND a.revocationDate>:revocationDate AND a.updateTime>:lastBaseCrlDate AND (a.status=:status1 OR a.status=:status2 OR a.status=:status3)"
-                            + crlPartitionExpression + ordering,
-                    "RevokedCertInfoSubset");
-            query.setParameter("lastBaseCrlDate", lastBaseCrlDate);
-            query.setParameter("revocationDate", -1L);
-            query.setParameter("status1", CertificateConstants.CERT_REVOKED);
-            query.setParameter("status2", CertificateConstants.CERT_ACTIVE); // in case the certificate has been changed from on hold, we need to include it as "removeFromCRL" in the Delta CRL
-            query.setParameter("status3", CertificateConstants.CERT_NOTIFIEDABOUTEXPIRATION); // could happen if a cert is re-activated just before expiration            
+            sql = "SELECT a.fingerprint as fingerprint, a.serialNumber as serialNumber, a.expireDate as expireDate, a.revocationDate as revocationDate, a.revocationReason as revocationReason, a.invalidityDate as invalidityDate  FROM CertificateData a WHERE "
+                    + "a.issuerDN=:issuerDN AND a.revocationDate>:revocationDate AND a.updateTime>:lastBaseCrlDate AND (a.status=:status1 OR a.status=:status2 OR a.status=:status3)"
+                    + crlPartitionExpression;
+            parameters.put("lastBaseCrlDate", lastBaseCrlDate);
+            parameters.put("revocationDate", -1L);
+            parameters.put("status1", CertificateConstants.CERT_REVOKED);
+            parameters.put("status2", CertificateConstants.CERT_ACTIVE); // in case the certificate has been changed from on hold, we need to include it as "removeFromCRL" in the Delta CRL
+            parameters.put("status3", CertificateConstants.CERT_NOTIFIEDABOUTEXPIRATION); // could happen if a cert is re-activated just before expiration
         }
         else if (deltaCrl) {
             // Delta CRL
-            query = getEntityManager().createNativeQuery(
-                    "SELECT a.fingerprint as fingerprint, a.serialNumber as serialNumber, a.expireDate as expireDate, a.revocationDate as revocationDate, a.revocationReason as revocationReason, a.invalidityDate as invalidityDate  FROM CertificateData a WHERE "
-                            + "a.issuerDN=:issuerDN AND a.revocationDate>:revocationDate AND (a.status=:status1 OR a.status=:status2 OR a.status=:status3)"
-                            + crlPartitionExpression + ordering,
-                    "RevokedCertInfoSubset");
-            query.setParameter("revocationDate", lastBaseCrlDate);
-            query.setParameter("status1", CertificateConstants.CERT_REVOKED);
-            query.setParameter("status2", CertificateConstants.CERT_ACTIVE); // in case the certificate has been changed from on hold, we need to include it as "removeFromCRL" in the Delta CRL
-            query.setParameter("status3", CertificateConstants.CERT_NOTIFIEDABOUTEXPIRATION); // could happen if a cert is re-activated just before expiration
+            sql = "SELECT a.fingerprint as fingerprint, a.serialNumber as serialNumber, a.expireDate as expireDate, a.revocationDate as revocationDate, a.revocationReason as revocationReason, a.invalidityDate as invalidityDate  FROM CertificateData a WHERE "
+                    + "a.issuerDN=:issuerDN AND a.revocationDate>:revocationDate AND (a.status=:status1 OR a.status=:status2 OR a.status=:status3)"
+                    + crlPartitionExpression;
+            parameters.put("revocationDate", lastBaseCrlDate);
+            parameters.put("status1", CertificateConstants.CERT_REVOKED);
+            parameters.put("status2", CertificateConstants.CERT_ACTIVE); // in case the certificate has been changed from on hold, we need to include it as "removeFromCRL" in the Delta CRL
+            parameters.put("status3", CertificateConstants.CERT_NOTIFIEDABOUTEXPIRATION); // could happen if a cert is re-activated just before expiration
         } else {
             // Base CRL
-            query = getEntityManager().createNativeQuery(
-                    "SELECT a.fingerprint as fingerprint, a.serialNumber as serialNumber, a.expireDate as expireDate, a.revocationDate as revocationDate, a.revocationReason as revocationReason, a.invalidityDate as invalidityDate FROM CertificateData a WHERE "
-                            + "a.issuerDN=:issuerDN AND a.status=:status"
-                            + crlPartitionExpression + ordering,
-                    "RevokedCertInfoSubset");
-            query.setParameter("status", CertificateConstants.CERT_REVOKED);
+            sql = "SELECT a.fingerprint as fingerprint, a.serialNumber as serialNumber, a.expireDate as expireDate, a.revocationDate as revocationDate, a.revocationReason as revocationReason, a.invalidityDate as invalidityDate FROM CertificateData a WHERE "
+                    + "a.issuerDN=:issuerDN AND a.status=:status"
+                    + crlPartitionExpression;
+            parameters.put("status", CertificateConstants.CERT_REVOKED);
         }
-        query.setParameter("issuerDN", issuerDN);
-        query.setParameter("crlPartitionIndex", crlPartitionIndex);
-        return getRevokedCertInfosInternal(query, allowInvalidityDate);
+        parameters.put("issuerDN", issuerDN);
+        parameters.put("crlPartitionIndex", crlPartitionIndex);
+        // The fingerprint is the primary key, so (revocationDate, fingerprint) is unique
+        return getRevokedCertInfosInternal(sql, "RevokedCertInfoSubset", "fingerprint", 0, parameters, allowInvalidityDate);
+    }
+
+    @Override
+    public Collection<RevokedCertInfo> getExpiredRevokedCertInfos(final String issuerDN, final int crlPartitionIndex, final long expiredBefore) {
+        final String crlPartitionExpression;
+        if (crlPartitionIndex != 0) {
+            crlPartitionExpression = " AND crlPartitionIndex = :crlPartitionIndex";
+        } else {
+            crlPartitionExpression = " AND (crlPartitionIndex = :crlPartitionIndex OR crlPartitionIndex IS NULL)";
+        }
+        final String sql = "SELECT a.fingerprint as fingerprint, a.serialNumber as serialNumber, a.expireDate as expireDate, a.revocationDate as revocationDate, a.revocationReason as revocationReason, a.invalidityDate as invalidityDate FROM CertificateData a WHERE "
+                + "a.issuerDN=:issuerDN AND a.status=:status AND a.expireDate<:expiredBefore"
+                + crlPartitionExpression;
+        final Map<String, Object> parameters = new HashMap<>();
+        parameters.put("issuerDN", issuerDN);
+        parameters.put("status", CertificateConstants.CERT_REVOKED);
+        parameters.put("expiredBefore", expiredBefore);
+        parameters.put("crlPartitionIndex", crlPartitionIndex);
+        return getRevokedCertInfosInternal(sql, "RevokedCertInfoSubset", "fingerprint", 0, parameters, false);
     }
 
     @Override
@@ -41,9 +41,12 @@ import org.cesecore.certificates.certificate.request.RequestMessage;
 import org.cesecore.certificates.certificateprofile.CertificateProfile;
 import org.cesecore.certificates.certificateprofile.CertificateProfileConstants;
 import org.cesecore.certificates.certificateprofile.CertificateProfileSessionLocal;
+import org.cesecore.certificates.crl.RevocationChangeDataSessionLocal;
 import org.cesecore.certificates.crl.RevocationReasons;
 import org.cesecore.certificates.crl.RevokedCertInfo;
 import org.cesecore.certificates.endentity.EndEntityConstants;
+import org.cesecore.certificates.ocsp.cache.OcspResponseCache;
+import org.cesecore.certificates.ocsp.cache.OcspRevocationIndex;
 import org.cesecore.config.CesecoreConfiguration;
 import org.cesecore.config.GlobalCesecoreConfiguration;
 import org.cesecore.config.OcspConfiguration;
@@ -51,7 +54,10 @@ import org.cesecore.configuration.GlobalConfigurationSessionLocal;
 import org.cesecore.internal.InternalResources;
 import org.cesecore.jndi.JndiConstants;
 import org.cesecore.keys.util.CvcKeyTools;
+import org.cesecore.util.GroupCommitWriter;
+import org.cesecore.util.JdbcBatching;
 import org.cesecore.util.LogRedactionUtils;
+import org.cesecore.util.RowRateLimiter;
 import org.cesecore.util.ValueExtractor;
 import org.ejbca.cvc.PublicKeyEC;
 
@@ -70,6 +76,10 @@ import javax.ejb.TransactionAttributeType;
 import javax.persistence.EntityManager;
 import javax.persistence.PersistenceContext;
 import javax.persistence.Query;
+import javax.persistence.TypedQuery;
+import javax.transaction.Status;
+import javax.transaction.Synchronization;
+import javax.transaction.TransactionSynchronizationRegistry;
 import java.math.BigInteger;
 import java.security.PublicKey;
 import java.security.cert.CertPathValidatorException;
@@ -83,13 +93,21 @@ import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.HashSet;
-import java.util.Iterator;
 import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 @Stateless(mappedName = JndiConstants.APP_JNDI_PREFIX + "CertificateStoreSessionRemote")
 @TransactionAttribute(TransactionAttributeType.SUPPORTS)
@@ -99,6 +117,23 @@ public class CertificateStoreSessionBean implements CertificateStoreSessionRemot
     /** Internal localization of logs and errors */
     private static final InternalResources INTRES = InternalResources.getInstance();
     private static final int TIMERID_CACERTIFICATECACHE = 1;
+    /** Keep the IN clause of batched status lookups within the limits of all supported databases */
+    private static final int MAX_SERIALNUMBERS_IN_QUERY = 500;
+    /** Number of certificates revoked in each transaction when all certificates of a CA are revoked */
+    private static final int REVOKE_ALL_CHUNK_SIZE = 10000;
+    /**
+     * Coalesces the certificates stored by concurrent threads into shared transactions, when group commit is enabled. The sizes of the
+     * transactions, database.groupcommit.maxrows and database.groupcommit.maxdelay, are read when the class is loaded, so changing them
+     * requires a restart. Whether group commit is enabled is read for each certificate.
+     */
+    private static final GroupCommitWriter<StoreCertificateParameters, CertificateDataWrapper> groupCommitWriter = new GroupCommitWriter<>(
+            CesecoreConfiguration.getDatabaseGroupCommitMaxRows(), CesecoreConfiguration.getDatabaseGroupCommitMaxDelay());
+    /** Purges the partitions of expired certificates in parallel, with database.purge.threads threads */
+    // NOTE: Should be replaced by a ManagedExecutorService when we drop support for JEE 6
+    private static final ExecutorService purgeExecutorService = createPurgeExecutorService();
+    /** Selects the expired end entity and SSH certificates of a partition after a fingerprint, in all queries of the purge */
+    private static final String EXPIRED_PARTITION_CONDITION = "a.issuerDN=:issuerDN AND a.expireDate>=:expireDateFrom AND a.expireDate<:expireDateTo"
+            + " AND a.type IN (:types) AND a.fingerprint>:afterFingerprint";
 
     @PersistenceContext(unitName = CesecoreConfiguration.PERSISTENCE_UNIT)
     private EntityManager entityManager;
@@ -114,10 +149,16 @@ public class CertificateStoreSessionBean implements CertificateStoreSessionRemot
     @EJB
     private GlobalConfigurationSessionLocal globalConfigurationSession;
     @EJB
+    private IncompleteIssuanceJournalDataSessionLocal incompleteIssuanceJournalDataSession;
+    @EJB
     private SecurityEventsLoggerSessionLocal logSession;
+    @EJB
+    private RevocationChangeDataSessionLocal revocationChangeDataSession;
     // Myself needs to be looked up in postConstruct
     @Resource
     private SessionContext sessionContext;
+    @Resource
+    private TransactionSynchronizationRegistry registry;
     private CertificateStoreSessionLocal certificateStoreSession;
     /* When the sessionContext is injected, the timerService should be looked up.
      * This is due to the Glassfish EJB verifier complaining.
@@ -203,6 +244,105 @@ public class CertificateStoreSessionBean implements CertificateStoreSessionRemot
         return ret;
     }
 
+    @Override
+    @TransactionAttribute(TransactionAttributeType.SUPPORTS)
+    public CertificateDataWrapper storeCertificateNoAuthGroupCommit(AuthenticationToken adminForLogging, Certificate incert, String username, String cafp,
+            String certificateRequest, int status, int type, int certificateProfileId, final int endEntityProfileId, final int crlPartitionIndex, String tag,
+            long updateTime, String accountBindingId) {
+        final boolean inTransaction = registry != null && registry.getTransactionKey() != null;
+        final int caId = CertTools.getIssuerDN(incert).hashCode();
+        final BigInteger serialNumber = CertTools.getSerialNumber(incert);
+        // The certificate is added to the journal in the transaction that stores it, and removed from it in the transaction of the caller. If the
+        // caller doesn't commit, the entry is left for the incomplete issuance service to revoke the certificate, also if this node stops before
+        // the caller has completed. A certificate that was submitted to CT is already in the journal, and is removed from it by the caller.
+        final IncompletelyIssuedCertificateInfo journalEntry = inTransaction && !incompleteIssuanceJournalDataSession.presentInJournal(caId, serialNumber)
+                ? new IncompletelyIssuedCertificateInfo(caId, serialNumber, new Date(), incert, username, cafp, certificateProfileId, endEntityProfileId,
+                        crlPartitionIndex, accountBindingId)
+                : null;
+        final StoreCertificateParameters parameters = new StoreCertificateParameters(adminForLogging, incert, username, cafp, certificateRequest, status,
+                type, certificateProfileId, endEntityProfileId, crlPartitionIndex, tag, updateTime, accountBindingId, journalEntry);
+        final CertificateDataWrapper ret;
+        if (!CesecoreConfiguration.isDatabaseGroupCommitEnabled()) {
+            ret = certificateStoreSession.storeCertificatesNoAuthNewTransaction(Collections.singletonList(parameters)).get(0);
+        } else {
+            // The batch is written through the business interface, to get a new transaction from the container
+            ret = groupCommitWriter.write(parameters, certificateStoreSession::storeCertificatesNoAuthNewTransaction);
+        }
+        if (inTransaction) {
+            if (journalEntry != null) {
+                incompleteIssuanceJournalDataSession.removeFromJournal(caId, serialNumber);
+            }
+            removeIfRolledBack(adminForLogging, ret.getBaseCertificateData().getFingerprint(), journalEntry != null);
+        }
+        return ret;
+    }
+
+    /**
+     * The certificate was committed in a transaction of its own, so it's removed again if the transaction of the caller, that issued it,
+     * is rolled back. If this fails, or this node stops first, the certificate is revoked by the incomplete issuance service instead.
+     */
+    private void removeIfRolledBack(final AuthenticationToken adminForLogging, final String fingerprint, final boolean removeFromJournal) {
+        registry.registerInterposedSynchronization(new Synchronization() {
+            @Override
+            public void beforeCompletion() {
+            }
+            @Override
+            public void afterCompletion(final int transactionStatus) {
+                if (transactionStatus == Status.STATUS_ROLLEDBACK) {
+                    try {
+                        certificateStoreSession.removeRolledBackCertificate(adminForLogging, fingerprint, removeFromJournal);
+                    } catch (RuntimeException e) {
+                        log.error("Failed to remove certificate with fingerprint " + fingerprint + " after its issuance was rolled back.", e);
+                    }
+                }
+            }
+        });
+    }
+
+    @Override
+    @TransactionAttribute(TransactionAttributeType.REQUIRES_NEW)
+    public void removeRolledBackCertificate(final AuthenticationToken adminForLogging, final String fingerprint, final boolean removeFromJournal) {
+        final CertificateData certificateData = certificateDataSession.findByFingerprint(fingerprint);
+        if (certificateData == null) {
+            return;
+        }
+        final Query deleteQuery = entityManager.createQuery("DELETE FROM Base64CertData a WHERE a.fingerprint = :fingerprint");
+        deleteQuery.setParameter("fingerprint", fingerprint);
+        deleteQuery.executeUpdate();
+        entityManager.remove(certificateData);
+        evictCachedOcspResponses(certificateData.getSerialNumber());
+        removeFromRevocationIndex(certificateData.getIssuerDN(), Collections.singletonList(certificateData.getSerialNumber()));
+        if (removeFromJournal) {
+            incompleteIssuanceJournalDataSession.removeFromJournal(certificateData.getIssuerDN().hashCode(), new BigInteger(certificateData.getSerialNumber()));
+        }
+        final String caIdString = String.valueOf(certificateData.getIssuerDN().hashCode());
+        final String serialNumberHex = certificateData.getSerialNumberHex();
+        final String msg = INTRES.getLocalizedMessage("store.removedrolledbackcert", caIdString, serialNumberHex);
+        log.info(msg);
+        logSession.log(EventTypes.CERT_CLEANUP, EventStatus.SUCCESS, ModuleTypes.CERTIFICATE, ServiceTypes.CORE, adminForLogging.toString(),
+                caIdString, serialNumberHex, certificateData.getUsername(), msg);
+    }
+
+    @Override
+    @TransactionAttribute(TransactionAttributeType.REQUIRES_NEW)
+    public List<CertificateDataWrapper> storeCertificatesNoAuthNewTransaction(final List<StoreCertificateParameters> certificates) {
+        if (log.isDebugEnabled()) {
+            log.debug("Storing " + certificates.size() + " certificates in one transaction.");
+        }
+        JdbcBatching.enable(entityManager);
+        final List<CertificateDataWrapper> ret = new ArrayList<>(certificates.size());
+        for (final StoreCertificateParameters parameters : certificates) {
+            ret.add(storeCertificateNoAuthInternal(parameters.getAdmin(), parameters.getCertificate(), parameters.getUsername(), parameters.getCafp(),
+                    parameters.getCertificateRequest(), parameters.getStatus(), parameters.getType(), parameters.getCertificateProfileId(),
+                    parameters.getEndEntityProfileId(), parameters.getCrlPartitionIndex(), parameters.getTag(), parameters.getUpdateTime(), true,
+                    parameters.getAccountBindingId(), RevocationReasons.NOT_REVOKED, null));
+            if (parameters.getJournalEntry() != null) {
+                entityManager.persist(new IncompleteIssuanceJournalData(parameters.getJournalEntry()));
+            }
+        }
+        return ret;
+    }
+
     @Override
     @TransactionAttribute(TransactionAttributeType.REQUIRED)
     public CertificateDataWrapper storeCertificateRevokedNoAuth(AuthenticationToken adminForLogging, Certificate incert, String username, String cafp, String certificateRequest,
@@ -213,6 +353,7 @@ public class CertificateStoreSessionBean implements CertificateStoreSessionRemot
         }
         final CertificateDataWrapper ret = storeCertificateNoAuthInternal(adminForLogging, incert, username, cafp, certificateRequest, status, type, certificateProfileId,
                 endEntityProfileId, crlPartitionIndex, tag, updateTime, true, accountBindingId, revocationReason, revocationDate);
+        evictCachedOcspResponses(ret.getBaseCertificateData().getSerialNumber());
         if (log.isTraceEnabled()) {
             log.trace("<storeCertificateRevokedNoAuth()");
         }
@@ -265,6 +406,9 @@ public class CertificateStoreSessionBean implements CertificateStoreSessionRemot
             certificateData.setRevocationReason(revocationReason.getDatabaseValue());
         }
         entityManager.persist(certificateData);
+        if (revocationReason != RevocationReasons.NOT_REVOKED) {
+            revocationChangeDataSession.addRevocationChange(certificateData);
+        }
         if (doAuditLog) {
             final String serialNo = CertTools.getSerialNumberAsString(incert);
             final String msg = INTRES.getLocalizedMessage("store.storecertwithaccountbindingid", username, certificateData.getFingerprint(), 
@@ -411,7 +555,15 @@ public class CertificateStoreSessionBean implements CertificateStoreSessionRemot
         if (log.isTraceEnabled()) {
             log.trace(">listRevokedCertInfo()");
         }
-        return certificateDataSession.getRevokedCertInfos(CertTools.stringToBCDNString(StringTools.strip(issuerDN)), deltaCrl, crlPartitionIndex, lastBaseCrlDate, allowInvalidityDate);
+        final String bcdn = CertTools.stringToBCDNString(StringTools.strip(issuerDN));
+        if (deltaCrl && lastBaseCrlDate > 0) {
+            // Read the changes since the last base CRL from the revocation change log, if it goes back that far
+            final Collection<RevokedCertInfo> changes = revocationChangeDataSession.getRevokedCertInfos(bcdn, crlPartitionIndex, lastBaseCrlDate, allowInvalidityDate);
+            if (changes != null) {
+                return changes;
+            }
+        }
+        return certificateDataSession.getRevokedCertInfos(bcdn, deltaCrl, crlPartitionIndex, lastBaseCrlDate, allowInvalidityDate);
     }
 
     @Override
@@ -804,6 +956,7 @@ public class CertificateStoreSessionBean implements CertificateStoreSessionRemot
         final Query deleteQuery = entityManager.createQuery("DELETE FROM CertificateData a WHERE a.fingerprint = :fingerprint");
         deleteQuery.setParameter("fingerprint", certInfo.getFingerprint());
         deleteQuery.executeUpdate();
+        removeFromRevocationIndex(certInfo.getIssuerDN(), Collections.singletonList(certInfo.getSerialNumber().toString()));
 
         final String caIdString = (certInfo.getIssuerDN() != null ? String.valueOf(certInfo.getIssuerDN().hashCode()) : null);
         final String detailsMsg = InternalResources.getInstance().getLocalizedMessage("store.deletedexpiredcert",
@@ -832,6 +985,221 @@ public class CertificateStoreSessionBean implements CertificateStoreSessionRemot
         return currentlyDeletedFingerprints;
     }
 
+    /** A partition of the expired certificates, with the certificates of one issuer expiring in a range of dates */
+    private static final class ExpiredCertificatePartition {
+        private final String issuerDN;
+        private final long expireDateFrom;
+        /** Exclusive */
+        private final long expireDateTo;
+
+        private ExpiredCertificatePartition(final String issuerDN, final long expireDateFrom, final long expireDateTo) {
+            this.issuerDN = issuerDN;
+            this.expireDateFrom = expireDateFrom;
+            this.expireDateTo = expireDateTo;
+        }
+
+        @Override
+        public String toString() {
+            return "issuer '" + issuerDN + "' expiring from " + expireDateFrom + " to " + expireDateTo;
+        }
+    }
+
+    private static ExecutorService createPurgeExecutorService() {
+        final int threads = CesecoreConfiguration.getDatabasePurgeThreads();
+        final ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 60L, TimeUnit.SECONDS, new LinkedBlockingQueue<>());
+        // Purges typically run once a day, so don't keep the threads in between
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    @Override
+    @TransactionAttribute(TransactionAttributeType.NOT_SUPPORTED)
+    public ExpiredCertificatePurgeCheckpoint purgeExpiredCertificates(final List<String> issuerDns, final Date maximumExpirationDate, final int batchSize,
+            final long maxDurationMillis, final AuthenticationToken adminForLogging, final ExpiredCertificatePurgeCheckpoint checkpoint) {
+        Preconditions.checkArgument(issuerDns == null || !issuerDns.isEmpty(), "List of issuerDNs cannot be empty (but it can be null)");
+        Preconditions.checkArgument(maximumExpirationDate.getTime() <= System.currentTimeMillis(), "maximumExpirationDate must be in the past");
+        Preconditions.checkArgument(batchSize > 0, "batchSize must be positive");
+        final long startTime = System.currentTimeMillis();
+        final long deadline = maxDurationMillis > 0 ? startTime + maxDurationMillis : Long.MAX_VALUE;
+        final ExpiredCertificatePurgeCheckpoint progress = checkpoint != null
+                && checkpoint.getMaximumExpirationDate() == maximumExpirationDate.getTime() ? checkpoint
+                        : new ExpiredCertificatePurgeCheckpoint(maximumExpirationDate.getTime());
+        // Shared by all partitions, so the limit is for the purge as a whole
+        final RowRateLimiter rateLimiter = new RowRateLimiter(CesecoreConfiguration.getDatabasePurgeMaxRowsPerSecond());
+        final List<ExpiredCertificatePartition> partitions = getExpiredCertificatePartitions(issuerDns, progress);
+        final List<Future<Boolean>> results = new ArrayList<>();
+        for (final ExpiredCertificatePartition partition : partitions) {
+            results.add(purgeExecutorService.submit(
+                    () -> purgeExpiredCertificatePartition(partition, batchSize, deadline, rateLimiter, adminForLogging, progress)));
+        }
+        boolean complete = true;
+        for (int i = 0; i < results.size(); i++) {
+            try {
+                complete &= results.get(i).get();
+            } catch (ExecutionException e) {
+                // The partition is resumed from its last committed range the next time
+                complete = false;
+                log.error("Failed to purge expired certificates of " + partitions.get(i) + ": " + e.getCause().getMessage(), e.getCause());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                for (final Future<Boolean> result : results) {
+                    result.cancel(true);
+                }
+                complete = false;
+                break;
+            }
+        }
+        progress.setComplete(complete);
+        log.info("Deleted " + progress.getDeletedCertificates() + " certificates expiring before " + maximumExpirationDate + " in "
+                + partitions.size() + " partitions in " + (System.currentTimeMillis() - startTime) + " ms. "
+                + (complete ? "All expired certificates have been deleted." : "The purge is not complete, and will be resumed."));
+        return progress;
+    }
+
+    /**
+     * @return the partitions of expired certificates that are not yet purged. The ranges of expiration dates are aligned with epoch,
+     * so the same partitions are found when a purge is resumed.
+     */
+    private List<ExpiredCertificatePartition> getExpiredCertificatePartitions(final List<String> issuerDns,
+            final ExpiredCertificatePurgeCheckpoint checkpoint) {
+        final long expireDateTo = checkpoint.getMaximumExpirationDate() + 1;
+        final long partitionMillis = TimeUnit.DAYS.toMillis(CesecoreConfiguration.getDatabasePurgePartitionDays());
+        final Collection<String> issuers;
+        if (issuerDns != null) {
+            issuers = issuerDns;
+        } else {
+            final TypedQuery<String> query = entityManager.createQuery("SELECT DISTINCT a.issuerDN FROM CertificateData a WHERE"
+                    + " a.expireDate<:expireDateTo AND a.type IN (:types)", String.class);
+            query.setParameter("expireDateTo", expireDateTo);
+            query.setParameter("types", Arrays.asList(CertificateConstants.CERTTYPE_ENDENTITY, CertificateConstants.CERTTYPE_SSH));
+            issuers = query.getResultList();
+        }
+        final List<ExpiredCertificatePartition> partitions = new ArrayList<>();
+        for (final String issuerDN : issuers) {
+            if (partitionMillis <= 0) {
+                if (!checkpoint.isPartitionCompleted(issuerDN, Long.MIN_VALUE)) {
+                    partitions.add(new ExpiredCertificatePartition(issuerDN, Long.MIN_VALUE, expireDateTo));
+                }
+                continue;
+            }
+            final TypedQuery<Long> query = entityManager.createQuery("SELECT MIN(a.expireDate) FROM CertificateData a WHERE a.issuerDN=:issuerDN"
+                    + " AND a.type IN (:types)", Long.class);
+            query.setParameter("issuerDN", issuerDN);
+            query.setParameter("types", Arrays.asList(CertificateConstants.CERTTYPE_ENDENTITY, CertificateConstants.CERTTYPE_SSH));
+            final Long oldestExpireDate = query.getSingleResult();
+            if (oldestExpireDate == null) {
+                continue;
+            }
+            for (long from = Math.floorDiv(oldestExpireDate, partitionMillis) * partitionMillis; from < expireDateTo; from += partitionMillis) {
+                if (!checkpoint.isPartitionCompleted(issuerDN, from)) {
+                    partitions.add(new ExpiredCertificatePartition(issuerDN, from, Math.min(from + partitionMillis, expireDateTo)));
+                }
+            }
+        }
+        return partitions;
+    }
+
+    /**
+     * Deletes the certificates of a partition in ranges of fingerprints, each committed in a transaction of its own, starting after
+     * the last range committed according to the checkpoint.
+     *
+     * @return true if the partition was completed, false if the deadline passed first
+     */
+    private boolean purgeExpiredCertificatePartition(final ExpiredCertificatePartition partition, final int batchSize, final long deadline,
+            final RowRateLimiter rateLimiter, final AuthenticationToken adminForLogging, final ExpiredCertificatePurgeCheckpoint checkpoint)
+            throws InterruptedException {
+        String lastFingerprint = checkpoint.getLastFingerprint(partition.issuerDN, partition.expireDateFrom);
+        while (System.currentTimeMillis() < deadline) {
+            // This runs on a thread of the purge executor, so the database is only accessed through the bean
+            final List<String> fingerprints = certificateStoreSession.findExpiredCertificateFingerprintsInRange(partition.issuerDN,
+                    partition.expireDateFrom, partition.expireDateTo, lastFingerprint, batchSize);
+            if (fingerprints.isEmpty()) {
+                checkpoint.setPartitionCompleted(partition.issuerDN, partition.expireDateFrom);
+                return true;
+            }
+            final String nextLastFingerprint = fingerprints.get(fingerprints.size() - 1);
+            rateLimiter.acquire(fingerprints.size());
+            checkpoint.addDeletedCertificates(certificateStoreSession.deleteExpiredCertificatesInRangeNoAuth(adminForLogging, partition.issuerDN,
+                    partition.expireDateFrom, partition.expireDateTo, lastFingerprint, nextLastFingerprint));
+            lastFingerprint = nextLastFingerprint;
+            checkpoint.setLastFingerprint(partition.issuerDN, partition.expireDateFrom, lastFingerprint);
+        }
+        return false;
+    }
+
+    @Override
+    @TransactionAttribute(TransactionAttributeType.SUPPORTS)
+    public List<String> findExpiredCertificateFingerprintsInRange(final String issuerDN, final long expireDateFrom, final long expireDateTo,
+            final String afterFingerprint, final int maxResults) {
+        final TypedQuery<String> query = entityManager.createQuery("SELECT a.fingerprint FROM CertificateData a WHERE "
+                + EXPIRED_PARTITION_CONDITION + " ORDER BY a.fingerprint", String.class);
+        setExpiredPartitionParameters(query, issuerDN, expireDateFrom, expireDateTo, afterFingerprint);
+        query.setMaxResults(maxResults);
+        return query.getResultList();
+    }
+
+    @Override
+    @TransactionAttribute(TransactionAttributeType.REQUIRES_NEW)
+    public int deleteExpiredCertificatesInRangeNoAuth(final AuthenticationToken adminForLogging, final String issuerDN, final long expireDateFrom,
+            final long expireDateTo, final String afterFingerprint, final String lastFingerprint) {
+        if (expireDateTo - 1 > System.currentTimeMillis()) {
+            throw new IllegalStateException("Certificates expiring before " + new Date(expireDateTo) + " are not yet expired");
+        }
+        // The certificates are selected first, so the audit log shows which ones were deleted
+        final TypedQuery<Object[]> select = entityManager.createQuery("SELECT a.fingerprint, a.serialNumber, a.username FROM CertificateData a WHERE "
+                + EXPIRED_PARTITION_CONDITION + " AND a.fingerprint<=:lastFingerprint ORDER BY a.fingerprint", Object[].class);
+        setExpiredPartitionParameters(select, issuerDN, expireDateFrom, expireDateTo, afterFingerprint);
+        select.setParameter("lastFingerprint", lastFingerprint);
+        final List<Object[]> rows = select.getResultList();
+        // In the same order, one entry per certificate
+        final List<String> fingerprints = new ArrayList<>(rows.size());
+        final List<String> serialNumbers = new ArrayList<>(rows.size());
+        final List<String> usernames = new ArrayList<>(rows.size());
+        final List<String> decimalSerialNumbers = new ArrayList<>(rows.size());
+        for (final Object[] row : rows) {
+            fingerprints.add((String) row[0]);
+            decimalSerialNumbers.add((String) row[1]);
+            serialNumbers.add(new BigInteger((String) row[1]).toString(16).toUpperCase());
+            usernames.add((String) row[2]);
+        }
+        int deleted = 0;
+        for (int i = 0; i < fingerprints.size(); i += MAX_SERIALNUMBERS_IN_QUERY) {
+            final List<String> chunk = fingerprints.subList(i, Math.min(i + MAX_SERIALNUMBERS_IN_QUERY, fingerprints.size()));
+            // The rows of the other tables belong to the certificates, so they are deleted first
+            for (final String jpql : Arrays.asList("DELETE FROM CertReqHistoryData h WHERE h.fingerprint IN (:fingerprints)",
+                    "DELETE FROM Base64CertData b WHERE b.fingerprint IN (:fingerprints)")) {
+                final Query query = entityManager.createQuery(jpql);
+                query.setParameter("fingerprints", chunk);
+                query.executeUpdate();
+            }
+            final Query query = entityManager.createQuery("DELETE FROM CertificateData a WHERE a.fingerprint IN (:fingerprints)");
+            query.setParameter("fingerprints", chunk);
+            deleted += query.executeUpdate();
+        }
+        removeFromRevocationIndex(issuerDN, decimalSerialNumbers);
+
+        final String caIdString = String.valueOf(issuerDN.hashCode());
+        final String msg = INTRES.getLocalizedMessage("store.deletedexpiredcertrange", caIdString, deleted, new Date(expireDateTo),
+                afterFingerprint, lastFingerprint);
+        final Map<String, Object> details = new LinkedHashMap<>();
+        details.put("msg", msg);
+        details.put("fingerprints", fingerprints);
+        details.put("serialNumbers", serialNumbers);
+        details.put("usernames", usernames);
+        logSession.log(EventTypes.CERT_CLEANUP, EventStatus.SUCCESS, ModuleTypes.CERTIFICATE, ServiceTypes.CORE, adminForLogging.toString(),
+                caIdString, null, null, details);
+        return deleted;
+    }
+
+    private void setExpiredPartitionParameters(final Query query, final String issuerDN, final long expireDateFrom, final long expireDateTo,
+            final String afterFingerprint) {
+        query.setParameter("issuerDN", issuerDN);
+        query.setParameter("expireDateFrom", expireDateFrom);
+        query.setParameter("expireDateTo", expireDateTo);
+        query.setParameter("types", Arrays.asList(CertificateConstants.CERTTYPE_ENDENTITY, CertificateConstants.CERTTYPE_SSH));
+        query.setParameter("afterFingerprint", afterFingerprint);
+    }
+
     @Override
     public boolean existsByIssuerAndSerno(String issuerDN, BigInteger serno) {
         if (log.isTraceEnabled()) {
@@ -919,6 +1287,50 @@ public class CertificateStoreSessionBean implements CertificateStoreSessionRemot
         return cdws.get(0);
     }
 
+    @Override
+    public Map<BigInteger, CertificateDataWrapper> getCertificateDatasByIssuerAndSernos(final String issuerDN, final Collection<BigInteger> sernos) {
+        final String dn = CertTools.stringToBCDNString(StringTools.strip(issuerDN));
+        final List<String> serialNumbers = new ArrayList<>(sernos.size());
+        for (final BigInteger serno : new LinkedHashSet<>(sernos)) {
+            serialNumbers.add(serno.toString());
+        }
+        final Map<BigInteger, CertificateDataWrapper> ret = new HashMap<>();
+        for (int i = 0; i < serialNumbers.size(); i += MAX_SERIALNUMBERS_IN_QUERY) {
+            final List<CertificateData> certificateDatas = certificateDataSession.findByIssuerDNSerialNumbers(dn,
+                    serialNumbers.subList(i, Math.min(i + MAX_SERIALNUMBERS_IN_QUERY, serialNumbers.size())));
+            final Map<String, Base64CertData> base64CertDatas = new HashMap<>();
+            if (CesecoreConfiguration.useBase64CertTable() && !certificateDatas.isEmpty()) {
+                final List<String> fingerprints = new ArrayList<>(certificateDatas.size());
+                for (final CertificateData certificateData : certificateDatas) {
+                    fingerprints.add(certificateData.getFingerprint());
+                }
+                final TypedQuery<Base64CertData> query = entityManager.createQuery("SELECT a FROM Base64CertData a WHERE a.fingerprint IN (:fingerprints)",
+                        Base64CertData.class);
+                query.setParameter("fingerprints", fingerprints);
+                for (final Base64CertData base64CertData : query.getResultList()) {
+                    base64CertDatas.put(base64CertData.getFingerprint(), base64CertData);
+                }
+            }
+            for (final CertificateData certificateData : certificateDatas) {
+                final BigInteger serno = new BigInteger(certificateData.getSerialNumber());
+                final CertificateDataWrapper cdw = new CertificateDataWrapper(certificateData, base64CertDatas.get(certificateData.getFingerprint()));
+                final CertificateDataWrapper previous = ret.get(serno);
+                if (previous != null) {
+                    log.error(INTRES.getLocalizedMessage("store.errorseveralissuerserno", issuerDN, serno.toString(16)));
+                }
+                // Same choice as getCertificateDataByIssuerAndSerno, which returns the first one in sort order
+                if (previous == null || cdw.compareTo(previous) < 0) {
+                    ret.put(serno, cdw);
+                }
+            }
+        }
+        if (log.isDebugEnabled()) {
+            log.debug("Found " + ret.size() + " of " + serialNumbers.size() + " certificates with (transformed) issuer DN: "
+                    + LogRedactionUtils.getSubjectDnLogSafe(dn));
+        }
+        return ret;
+    }
+
     @Override
     public CertificateInfo findFirstCertificateInfo(final String issuerDN, final BigInteger serno) {
         return certificateDataSession.findFirstCertificateInfo(CertTools.stringToBCDNString(issuerDN), serno.toString());
@@ -1320,11 +1732,14 @@ public class CertificateStoreSessionBean implements CertificateStoreSessionRemot
             returnVal = false; // we did _not_ change status in the database
         }
         if (returnVal) {
+            evictCachedOcspResponses(certificateData.getSerialNumber());
             // Persist changes
             if (certificateData instanceof NoConflictCertificateData) {
                 entityManager.persist(certificateData); // Ensure append-only operation
             } else {
                 entityManager.merge(certificateData);
+                // Delta CRLs are created from the log. NoConflictCertificateData is append-only, so it is searched directly.
+                revocationChangeDataSession.addRevocationChange(certificateData);
             }
         }
         if (log.isTraceEnabled()) {
@@ -1333,8 +1748,70 @@ public class CertificateStoreSessionBean implements CertificateStoreSessionRemot
         return returnVal;
     }
 
+    /**
+     * Make sure that the OCSP responder on this node doesn't answer with a cached response after a status change. The responses are
+     * evicted right away, and again when the transaction has completed, since a request served before the commit may have cached
+     * a response with the old status.
+     */
+    @SuppressWarnings("unchecked")
+    private void evictCachedOcspResponses(final String serialNumber) {
+        final BigInteger certificateSerialNumber;
+        try {
+            certificateSerialNumber = new BigInteger(serialNumber);
+        } catch (NumberFormatException e) {
+            // Not an X.509 certificate, so never in the OCSP response cache
+            return;
+        }
+        OcspResponseCache.INSTANCE.remove(certificateSerialNumber);
+        if (registry == null || registry.getTransactionKey() == null) {
+            return;
+        }
+        // Evict all the certificates changed in the transaction from one synchronization
+        Set<BigInteger> serialNumbersToEvict = (Set<BigInteger>) registry.getResource(OcspResponseCache.class);
+        if (serialNumbersToEvict == null) {
+            final Set<BigInteger> serialNumbers = new HashSet<>();
+            registry.putResource(OcspResponseCache.class, serialNumbers);
+            registry.registerInterposedSynchronization(new Synchronization() {
+                @Override
+                public void beforeCompletion() {
+                }
+                @Override
+                public void afterCompletion(final int transactionStatus) {
+                    for (final BigInteger evictedSerialNumber : serialNumbers) {
+                        OcspResponseCache.INSTANCE.remove(evictedSerialNumber);
+                    }
+                }
+            });
+            serialNumbersToEvict = serialNumbers;
+        }
+        serialNumbersToEvict.add(certificateSerialNumber);
+    }
+
+    /**
+     * Removes deleted certificates from the OCSP revocation index of this node, so that they are looked up in the database. The indexes
+     * of other nodes are corrected when they are rebuilt.
+     *
+     * @param serialNumbers the decimal serial numbers, as in CertificateData.serialNumber
+     */
+    private void removeFromRevocationIndex(final String issuerDn, final Collection<String> serialNumbers) {
+        if (issuerDn == null) {
+            return;
+        }
+        final List<BigInteger> removed = new ArrayList<>(serialNumbers.size());
+        for (final String serialNumber : serialNumbers) {
+            try {
+                removed.add(new BigInteger(serialNumber));
+            } catch (NumberFormatException e) {
+                // Not an X.509 certificate, so never in the index
+            }
+        }
+        if (!removed.isEmpty()) {
+            OcspRevocationIndex.INSTANCE.removeCertificates(issuerDn, removed);
+        }
+    }
+
     @Override
-    @TransactionAttribute(TransactionAttributeType.REQUIRED)
+    @TransactionAttribute(TransactionAttributeType.NOT_SUPPORTED)
     public void revokeAllCertByCA(AuthenticationToken admin, String issuerdn, int reason) throws AuthorizationDeniedException {
         int revoked = 0;
 
@@ -1343,21 +1820,28 @@ public class CertificateStoreSessionBean implements CertificateStoreSessionRemot
     	int caid = bcdn.hashCode();
         authorizedToCA(admin, caid);
         try {
-            final int maxRows = 10000;
-            int firstResult = 0;
-            // Revoking all non revoked certificates.
-            // Update 10000 records at a time
-            List<CertificateData> list = findAllNonRevokedCertificates(bcdn, firstResult, maxRows);
-            while (list.size() > 0) {
-            	for (int i = 0; i<list.size(); i++) {
-                	CertificateData d = list.get(i);
-                	d.setStatus(CertificateConstants.CERT_REVOKED);
-                	d.setRevocationDate(System.currentTimeMillis());
-                	d.setRevocationReason(reason);
-                	revoked++;
-            	}
-            	firstResult += maxRows;
-            	list = findAllNonRevokedCertificates(bcdn, firstResult, maxRows);
+            final long revocationDate = System.currentTimeMillis();
+            final long startTime = System.nanoTime();
+            // The changes are too many to log, so delta CRLs are created from CertificateData until the first base CRL created after the run
+            revocationChangeDataSession.startRevokeAll(bcdn, reason, revocationDate);
+            try {
+                // Revoke the certificates in ranges of fingerprints, each committed in a transaction of its own. The next range starts after
+                // the last fingerprint of the previous one, so no certificates are skipped when the set of non revoked certificates shrinks.
+                String lastFingerprint = "";
+                List<String> fingerprints = findNonRevokedFingerprints(bcdn, lastFingerprint, revocationDate);
+                while (!fingerprints.isEmpty()) {
+                    final String nextLastFingerprint = fingerprints.get(fingerprints.size() - 1);
+                    revoked += certificateStoreSession.revokeCertificatesInRangeNoAuth(admin, bcdn, lastFingerprint, nextLastFingerprint, reason, revocationDate);
+                    lastFingerprint = nextLastFingerprint;
+                    OcspResponseCache.INSTANCE.clear();
+                    // The index is reloaded from the database by its next refresh, lookups go to the database until then
+                    OcspRevocationIndex.INSTANCE.removeIssuer(bcdn);
+                    log.info("Revoked " + revoked + " certificates issued by '" + issuerdn + "' in " + (System.nanoTime() - startTime) / 1000000L + " ms.");
+                    fingerprints = findNonRevokedFingerprints(bcdn, lastFingerprint, revocationDate);
+                }
+            } finally {
+                // Base CRLs created while the certificates were revoked don't include all of them
+                revocationChangeDataSession.finishRevokeAll(bcdn, reason, revocationDate);
             }
             final String msg = INTRES.getLocalizedMessage("store.revokedallbyca", issuerdn, revoked, reason);
     		Map<String, Object> details = new LinkedHashMap<>();
@@ -1370,24 +1854,72 @@ public class CertificateStoreSessionBean implements CertificateStoreSessionRemot
         }
     }
 
+    @Override
+    @TransactionAttribute(TransactionAttributeType.REQUIRES_NEW)
+    public int revokeCertificatesInRangeNoAuth(final AuthenticationToken admin, final String issuerDN, final String afterFingerprint,
+            final String lastFingerprint, final int reason, final long revocationDate) {
+        // All certificates get the same revocation date, but updateTime is the time of this transaction, so that the changes of chunks that
+        // commit late in a long run are still found by readers that look for changes since some time before they last looked
+        final long updateTime = System.currentTimeMillis();
+        final int revoked;
+        if (CesecoreConfiguration.useDatabaseIntegrityProtection(CertificateData.class.getSimpleName())) {
+            // The row protection covers the status, so each row has to be updated through its entity
+            final TypedQuery<CertificateData> query = entityManager.createQuery("SELECT a FROM CertificateData a WHERE a.issuerDN=:issuerDN"
+                    + " AND a.status NOT IN (:statusExcluded) AND a.expireDate>:currentTime AND a.fingerprint>:afterFingerprint"
+                    + " AND a.fingerprint<=:lastFingerprint", CertificateData.class);
+            setNonRevokedRangeParameters(query, issuerDN, afterFingerprint, lastFingerprint, revocationDate);
+            final List<CertificateData> certificateDatas = query.getResultList();
+            for (final CertificateData certificateData : certificateDatas) {
+                certificateData.setStatus(CertificateConstants.CERT_REVOKED);
+                certificateData.setRevocationDate(revocationDate);
+                certificateData.setRevocationReason(reason);
+                certificateData.setUpdateTime(updateTime);
+            }
+            revoked = certificateDatas.size();
+        } else {
+            final Query query = entityManager.createQuery("UPDATE CertificateData a SET a.status=:status, a.revocationDate=:revocationDate,"
+                    + " a.revocationReason=:reason, a.updateTime=:updateTime, a.rowVersion=a.rowVersion+1 WHERE a.issuerDN=:issuerDN"
+                    + " AND a.status NOT IN (:statusExcluded) AND a.expireDate>:currentTime AND a.fingerprint>:afterFingerprint"
+                    + " AND a.fingerprint<=:lastFingerprint");
+            query.setParameter("status", CertificateConstants.CERT_REVOKED);
+            query.setParameter("revocationDate", revocationDate);
+            query.setParameter("reason", reason);
+            query.setParameter("updateTime", updateTime);
+            setNonRevokedRangeParameters(query, issuerDN, afterFingerprint, lastFingerprint, revocationDate);
+            revoked = query.executeUpdate();
+        }
+        final String msg = INTRES.getLocalizedMessage("store.revokedrangebyca", issuerDN, revoked, reason, afterFingerprint, lastFingerprint);
+        final Map<String, Object> details = new LinkedHashMap<>();
+        details.put("msg", msg);
+        logSession.log(EventTypes.CERT_REVOKED, EventStatus.SUCCESS, ModuleTypes.CERTIFICATE, ServiceTypes.CORE, admin.toString(),
+                String.valueOf(issuerDN.hashCode()), null, null, details);
+        return revoked;
+    }
+
     /**
-     * @return the certificates that have CertificateConstants.CERT_REVOKED.
-     * @param firstResult pagination variable, 0 for the first call, insrease by maxRows for further calls if return value is == maxRows
-     * @param maxRows pagination variable max number of rows that should be returned, used in order to make it somewhat efficient on large data
-     *            volumes
-     * */
-    @SuppressWarnings("unchecked")
-    private List<CertificateData> findAllNonRevokedCertificates(String issuerDN, int firstResult, int maxRows) {
-        final Query query = entityManager.createQuery("SELECT a FROM CertificateData a WHERE a.issuerDN=:issuerDN AND a.status  NOT IN (:statusExcluded) AND " +
-                " a.expireDate > :currentTime");
+     * @return the fingerprints of the next certificates that are not revoked, in order, after the given fingerprint. At most
+     * REVOKE_ALL_CHUNK_SIZE fingerprints are returned, and an empty list when there are no more.
+     */
+    private List<String> findNonRevokedFingerprints(final String issuerDN, final String afterFingerprint, final long currentTime) {
+        final TypedQuery<String> query = entityManager.createQuery("SELECT a.fingerprint FROM CertificateData a WHERE a.issuerDN=:issuerDN"
+                + " AND a.status NOT IN (:statusExcluded) AND a.expireDate>:currentTime AND a.fingerprint>:afterFingerprint ORDER BY a.fingerprint",
+                String.class);
         query.setParameter("issuerDN", issuerDN);
         query.setParameter("statusExcluded", Arrays.asList(CertificateConstants.CERT_ARCHIVED, CertificateConstants.CERT_REVOKED));
-        query.setParameter("currentTime", System.currentTimeMillis());
-        query.setFirstResult(firstResult);
-        query.setMaxResults(maxRows);
+        query.setParameter("currentTime", currentTime);
+        query.setParameter("afterFingerprint", afterFingerprint);
+        query.setMaxResults(REVOKE_ALL_CHUNK_SIZE);
         return query.getResultList();
     }
 
+    private void setNonRevokedRangeParameters(final Query query, final String issuerDN, final String afterFingerprint, final String lastFingerprint,
+            final long currentTime) {
+        query.setParameter("issuerDN", issuerDN);
+        query.setParameter("statusExcluded", Arrays.asList(CertificateConstants.CERT_ARCHIVED, CertificateConstants.CERT_REVOKED));
+        query.setParameter("currentTime", currentTime);
+        query.setParameter("afterFingerprint", afterFingerprint);
+        query.setParameter("lastFingerprint", lastFingerprint);
+    }
 
     @Override
     public boolean isRevoked(String issuerDN, BigInteger serno) {
@@ -1398,17 +1930,15 @@ public class CertificateStoreSessionBean implements CertificateStoreSessionRemot
         String dn = CertTools.stringToBCDNString(issuerDN);
         boolean ret = false;
         try {
-            Collection<CertificateData> coll = certificateDataSession.findByIssuerDNSerialNumber(dn, serno.toString());
-            if (coll.size() > 0) {
-                if (coll.size() > 1) {
+            final List<CertificateStatusInfo> statuses = certificateDataSession.findStatusesByIssuerDNAndSerialNumbers(dn, Collections.singletonList(serno.toString()));
+            if (statuses.size() > 0) {
+                if (statuses.size() > 1) {
                     final String msg = INTRES.getLocalizedMessage("store.errorseveralissuerserno", issuerDN, serno.toString(16));
                     log.error(msg);
                 }
-                Iterator<CertificateData> iter = coll.iterator();
-                while (iter.hasNext()) {
-                    CertificateData data = iter.next();
+                for (final CertificateStatusInfo statusInfo : statuses) {
                     // if any of the certificates with this serno is revoked, return true
-                    if (data.getStatus() == CertificateConstants.CERT_REVOKED) {
+                    if (statusInfo.getStatus() == CertificateConstants.CERT_REVOKED) {
                         ret = true;
                         break;
                     }
@@ -1438,20 +1968,16 @@ public class CertificateStoreSessionBean implements CertificateStoreSessionRemot
         final String dn = CertTools.stringToBCDNString(issuerDN);
 
         try {
-            Collection<CertificateData> coll = certificateDataSession.findByIssuerDNSerialNumber(dn, serno.toString());
-
-
-            if (coll.size() > 1) {
+            final List<CertificateStatusInfo> statuses = certificateDataSession.findStatusesByIssuerDNAndSerialNumbers(dn, Collections.singletonList(serno.toString()));
+            if (statuses.size() > 1) {
                 final String msg = INTRES.getLocalizedMessage("store.errorseveralissuerserno", issuerDN, serno.toString(16));
                 log.error(msg);
             }
-
-            for(CertificateData data : coll) {
-                final CertificateStatus result = CertificateStatusHelper.getCertificateStatus(data);
+            for (final CertificateStatusInfo statusInfo : statuses) {
+                final CertificateStatus result = CertificateStatusHelper.getCertificateStatus(statusInfo);
                 if (log.isTraceEnabled()) {
                     log.trace("<getStatus() returned " + result + " for cert number " + serno.toString(16));
                 }
-                result.setExpirationDate(data.getExpireDate());
                 return result;
             }
             if (log.isTraceEnabled()) {
@@ -1463,6 +1989,56 @@ public class CertificateStoreSessionBean implements CertificateStoreSessionRemot
         return CertificateStatus.NOT_AVAILABLE;
     }
 
+    @Override
+    public Map<BigInteger, CertificateStatus> getStatuses(final String issuerDN, final Collection<BigInteger> sernos) {
+        if (log.isTraceEnabled()) {
+            log.trace(">getStatuses(), dn:" + issuerDN + ", " + sernos.size() + " serial numbers");
+        }
+        final String dn = CertTools.stringToBCDNString(issuerDN);
+        final Map<BigInteger, CertificateStatus> ret = new LinkedHashMap<>();
+        final List<String> serialNumbers = new ArrayList<>(sernos.size());
+        for (final BigInteger serno : sernos) {
+            if (ret.put(serno, CertificateStatus.NOT_AVAILABLE) == null) {
+                serialNumbers.add(serno.toString());
+            }
+        }
+        try {
+            for (int i = 0; i < serialNumbers.size(); i += MAX_SERIALNUMBERS_IN_QUERY) {
+                final List<CertificateStatusInfo> statuses = certificateDataSession.findStatusesByIssuerDNAndSerialNumbers(dn,
+                        serialNumbers.subList(i, Math.min(i + MAX_SERIALNUMBERS_IN_QUERY, serialNumbers.size())));
+                for (final CertificateStatusInfo statusInfo : statuses) {
+                    final BigInteger serno = new BigInteger(statusInfo.getSerialNumber());
+                    if (ret.put(serno, CertificateStatusHelper.getCertificateStatus(statusInfo)) != CertificateStatus.NOT_AVAILABLE) {
+                        final String msg = INTRES.getLocalizedMessage("store.errorseveralissuerserno", issuerDN, serno.toString(16));
+                        log.error(msg);
+                    }
+                }
+            }
+        } catch (Exception e) {
+            throw new EJBException(e);
+        }
+        if (log.isTraceEnabled()) {
+            log.trace("<getStatuses()");
+        }
+        return ret;
+    }
+
+    @Override
+    public Map<BigInteger, List<String>> getIssuerDNsBySernos(final Collection<BigInteger> sernos) {
+        final Map<BigInteger, List<String>> ret = new LinkedHashMap<>();
+        final List<String> serialNumbers = new ArrayList<>(sernos.size());
+        for (final BigInteger serno : new LinkedHashSet<>(sernos)) {
+            serialNumbers.add(serno.toString());
+        }
+        for (int i = 0; i < serialNumbers.size(); i += MAX_SERIALNUMBERS_IN_QUERY) {
+            for (final Object[] row : certificateDataSession.findIssuerDNsBySerialNumbers(
+                    serialNumbers.subList(i, Math.min(i + MAX_SERIALNUMBERS_IN_QUERY, serialNumbers.size())))) {
+                ret.computeIfAbsent(new BigInteger((String) row[0]), serno -> new ArrayList<>()).add((String) row[1]);
+            }
+        }
+        return ret;
+    }
+
     @Override
     public CertificateStatusHolder getCertificateAndStatus(String issuerDN, BigInteger serno) {
         if (log.isTraceEnabled()) {
@@ -1763,6 +2339,7 @@ public class CertificateStoreSessionBean implements CertificateStoreSessionRemot
         }
         final String limitedFingerprint = getLimitedCertificateDataFingerprint(issuerDn, serialNumber);
         final CertificateDataWrapper cdw = getCertificateDataByIssuerAndSerno(issuerDn, serialNumber);
+        OcspResponseCache.INSTANCE.remove(serialNumber);
         if (cdw==null) {
             if (reasonCode==RevokedCertInfo.REVOCATION_REASON_REMOVEFROMCRL) {
                 deleteLimitedCertificateData(limitedFingerprint);
@@ -1787,6 +2364,7 @@ public class CertificateStoreSessionBean implements CertificateStoreSessionRemot
         } else if (limitedFingerprint.equals(cdw.getCertificateData().getFingerprint())) {
         	if (reasonCode==RevokedCertInfo.REVOCATION_REASON_REMOVEFROMCRL) {
                 deleteLimitedCertificateData(limitedFingerprint);
+                removeFromRevocationIndex(issuerDn, Collections.singletonList(serialNumber.toString()));
         	} else {
         	    final CertificateData limitedCertificateData = cdw.getCertificateData();
                 if (cdw.getCertificateData().getRevocationDate() != revocationDate.getTime() || cdw.getCertificateData().getRevocationReason() != reasonCode
@@ -1811,6 +2389,97 @@ public class CertificateStoreSessionBean implements CertificateStoreSessionRemot
         }
     }
 
+    @Override
+    @TransactionAttribute(TransactionAttributeType.REQUIRED)
+    public int updateLimitedCertificateDataStatuses(final AuthenticationToken admin, final int caId, final String issuerDn, final String caFingerprint,
+            final Collection<RevokedCertInfo> revokedCertInfos) throws AuthorizationDeniedException {
+        if (!authorizationSession.isAuthorizedNoLogging(admin, StandardRules.CAACCESS.resource() + caId)) {
+            final String msg = INTRES.getLocalizedMessage("caadmin.notauthorizedtoca", admin.toString(), caId);
+            throw new AuthorizationDeniedException(msg);
+        }
+        JdbcBatching.enable(entityManager);
+        final Map<String, RevokedCertInfo> revokedCertInfosByFingerprint = new LinkedHashMap<>();
+        for (final RevokedCertInfo revokedCertInfo : revokedCertInfos) {
+            revokedCertInfosByFingerprint.put(getLimitedCertificateDataFingerprint(issuerDn, revokedCertInfo.getUserCertificate()), revokedCertInfo);
+        }
+        final List<String> fingerprints = new ArrayList<>(revokedCertInfosByFingerprint.keySet());
+        final Map<String, CertificateData> existingEntries = new HashMap<>();
+        for (int i = 0; i < fingerprints.size(); i += MAX_SERIALNUMBERS_IN_QUERY) {
+            final TypedQuery<CertificateData> query = entityManager.createQuery("SELECT a FROM CertificateData a WHERE a.fingerprint IN (:fingerprints)",
+                    CertificateData.class);
+            query.setParameter("fingerprints", fingerprints.subList(i, Math.min(i + MAX_SERIALNUMBERS_IN_QUERY, fingerprints.size())));
+            for (final CertificateData certificateData : query.getResultList()) {
+                existingEntries.put(certificateData.getFingerprint(), certificateData);
+            }
+        }
+        final List<String> removedFingerprints = new ArrayList<>();
+        final List<String> removedSerialNumbers = new ArrayList<>();
+        int created = 0;
+        int updated = 0;
+        final long now = System.currentTimeMillis();
+        for (final Map.Entry<String, RevokedCertInfo> entry : revokedCertInfosByFingerprint.entrySet()) {
+            final String limitedFingerprint = entry.getKey();
+            final RevokedCertInfo revokedCertInfo = entry.getValue();
+            final BigInteger serialNumber = revokedCertInfo.getUserCertificate();
+            final Long invalidityDate = revokedCertInfo.getInvalidityDate() == null ? null : revokedCertInfo.getInvalidityDate().getTime();
+            final CertificateData limitedCertificateData = existingEntries.get(limitedFingerprint);
+            // Only the certificates whose status changes are evicted from the OCSP response cache
+            if (revokedCertInfo.getReason() == RevokedCertInfo.REVOCATION_REASON_REMOVEFROMCRL) {
+                if (limitedCertificateData != null) {
+                    removedFingerprints.add(limitedFingerprint);
+                    removedSerialNumbers.add(serialNumber.toString());
+                    evictCachedOcspResponses(serialNumber.toString());
+                }
+            } else if (limitedCertificateData == null) {
+                final CertificateData newCertificateData = new CertificateData();
+                newCertificateData.setFingerprint(limitedFingerprint);
+                newCertificateData.setSerialNumber(serialNumber.toString());
+                newCertificateData.setIssuer(issuerDn);
+                // See updateLimitedCertificateDataStatus for why this isn't an empty String
+                newCertificateData.setSubjectDN("CN=limited");
+                newCertificateData.setCertificateProfileId(CertificateProfileConstants.CERTPROFILE_NO_PROFILE);
+                newCertificateData.setStatus(CertificateConstants.CERT_REVOKED);
+                newCertificateData.setRevocationReason(revokedCertInfo.getReason());
+                newCertificateData.setRevocationDate(revokedCertInfo.getRevocationDate());
+                newCertificateData.setInvalidityDate(revokedCertInfo.getInvalidityDate());
+                newCertificateData.setUpdateTime(now);
+                newCertificateData.setCaFingerprint(caFingerprint);
+                entityManager.persist(newCertificateData);
+                evictCachedOcspResponses(serialNumber.toString());
+                created++;
+            } else if (limitedCertificateData.getStatus() != CertificateConstants.CERT_REVOKED
+                    || limitedCertificateData.getRevocationDate() != revokedCertInfo.getRevocationDate().getTime()
+                    || limitedCertificateData.getRevocationReason() != revokedCertInfo.getReason()
+                    || !Objects.equals(limitedCertificateData.getInvalidityDate(), invalidityDate)) {
+                limitedCertificateData.setStatus(CertificateConstants.CERT_REVOKED);
+                limitedCertificateData.setRevocationReason(revokedCertInfo.getReason());
+                limitedCertificateData.setRevocationDate(revokedCertInfo.getRevocationDate());
+                limitedCertificateData.setInvalidityDate(revokedCertInfo.getInvalidityDate());
+                limitedCertificateData.setUpdateTime(now);
+                evictCachedOcspResponses(serialNumber.toString());
+                updated++;
+            }
+        }
+        for (int i = 0; i < removedFingerprints.size(); i += MAX_SERIALNUMBERS_IN_QUERY) {
+            final Query query = entityManager.createQuery("DELETE FROM CertificateData a WHERE a.fingerprint IN (:fingerprints) AND subjectKeyId IS NULL");
+            query.setParameter("fingerprints", removedFingerprints.subList(i, Math.min(i + MAX_SERIALNUMBERS_IN_QUERY, removedFingerprints.size())));
+            query.executeUpdate();
+        }
+        removeFromRevocationIndex(issuerDn, removedSerialNumbers);
+        // The new and changed entries are written together, in JDBC batches
+        entityManager.flush();
+        final int changed = created + updated + removedFingerprints.size();
+        if (changed > 0) {
+            final String msg = INTRES.getLocalizedMessage("store.updatedlimitedcerts", created, updated, removedFingerprints.size(), issuerDn);
+            log.info(msg);
+            final Map<String, Object> details = new LinkedHashMap<>();
+            details.put("msg", msg);
+            logSession.log(EventTypes.CERT_REVOKED, EventStatus.SUCCESS, ModuleTypes.CERTIFICATE, ServiceTypes.CORE, admin.toString(),
+                    String.valueOf(caId), null, null, details);
+        }
+        return changed;
+    }
+
     @Override
     @TransactionAttribute(TransactionAttributeType.SUPPORTS)
     public void reloadCaCertificateCache() {
@@ -13,7 +13,9 @@
 package org.cesecore.certificates.certificate;
 
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.TimeZone;
 
 import javax.ejb.Stateless;
@@ -21,7 +23,6 @@ import javax.ejb.TransactionAttribute;
 import javax.ejb.TransactionAttributeType;
 import javax.persistence.EntityManager;
 import javax.persistence.PersistenceContext;
-import javax.persistence.Query;
 import javax.persistence.TypedQuery;
 
 import org.apache.commons.lang.time.FastDateFormat;
@@ -96,8 +97,8 @@ public class NoConflictCertificateDataSessionBean extends BaseCertificateDataSes
         }
         final String crlPartitionExpression;
         final String excludeExpiredExpression;
-        final String ordering;
-        final Query query;
+        final String sql;
+        final Map<String, Object> parameters = new HashMap<>();
         if (crlPartitionIndex != 0) {
             crlPartitionExpression = " AND crlPartitionIndex = :crlPartitionIndex";
         } else {
@@ -108,36 +109,28 @@ public class NoConflictCertificateDataSessionBean extends BaseCertificateDataSes
         } else {
             excludeExpiredExpression = " AND a.expireDate >= :expiredAfter";
         }
-        if (CesecoreConfiguration.getDatabaseRevokedCertInfoFetchOrdered()) {
-            ordering = " ORDER BY revocationDate, fingerprint ASC";
-        } else {
-            ordering = "";
-        }
         if (deltaCrl) {
             // Delta CRL
-            query = getEntityManager().createNativeQuery(
-                    "SELECT a.fingerprint as fingerprint, a.serialNumber as serialNumber, a.expireDate as expireDate, a.revocationDate as revocationDate, a.revocationReason as revocationReason, a.invalidityDate as invalidityDate FROM NoConflictCertificateData a WHERE "
-                            + "a.issuerDN=:issuerDN AND a.revocationDate>:revocationDate AND (a.status=:status1 OR a.status=:status2 OR a.status=:status3)"
-                            + crlPartitionExpression + ordering,
-                    "RevokedCertInfoSubset");
-            query.setParameter("revocationDate", lastBaseCrlDate);
+            sql = "SELECT a.fingerprint as fingerprint, a.serialNumber as serialNumber, a.expireDate as expireDate, a.revocationDate as revocationDate, a.revocationReason as revocationReason, a.invalidityDate as invalidityDate, a.id as id FROM NoConflictCertificateData a WHERE "
+                    + "a.issuerDN=:issuerDN AND a.revocationDate>:revocationDate AND (a.status=:status1 OR a.status=:status2 OR a.status=:status3)"
+                    + crlPartitionExpression;
+            parameters.put("revocationDate", lastBaseCrlDate);
         } else {
             // Base CRL
-            query = getEntityManager().createNativeQuery(
-                    "SELECT a.fingerprint as fingerprint, a.serialNumber as serialNumber, a.expireDate as expireDate, a.revocationDate as revocationDate, a.revocationReason as revocationReason, a.invalidityDate as invalidityDate FROM NoConflictCertificateData a WHERE "
-                            + "a.issuerDN=:issuerDN AND (a.status=:status1 OR a.status=:status2 OR a.status=:status3)"
-                            + crlPartitionExpression + excludeExpiredExpression + ordering,
-                    "RevokedCertInfoSubset");
+            sql = "SELECT a.fingerprint as fingerprint, a.serialNumber as serialNumber, a.expireDate as expireDate, a.revocationDate as revocationDate, a.revocationReason as revocationReason, a.invalidityDate as invalidityDate, a.id as id FROM NoConflictCertificateData a WHERE "
+                    + "a.issuerDN=:issuerDN AND (a.status=:status1 OR a.status=:status2 OR a.status=:status3)"
+                    + crlPartitionExpression + excludeExpiredExpression;
             if (!keepExpiredCertsOnCrl) {
-                query.setParameter("expiredAfter", lastBaseCrlDate);
+                parameters.put("expiredAfter", lastBaseCrlDate);
             }
         }
-        query.setParameter("issuerDN", issuerDN);
-        query.setParameter("crlPartitionIndex", crlPartitionIndex);
-        query.setParameter("status1", CertificateConstants.CERT_REVOKED);
-        query.setParameter("status2", CertificateConstants.CERT_ACTIVE); // in case the certificate has been changed from on hold, we need to include it as "removeFromCRL" in the Delta CRL
-        query.setParameter("status3", CertificateConstants.CERT_NOTIFIEDABOUTEXPIRATION); // could happen if a cert is re-activated just before expiration
-        return getRevokedCertInfosInternal(query, allowInvalidityDate);
+        parameters.put("issuerDN", issuerDN);
+        parameters.put("crlPartitionIndex", crlPartitionIndex);
+        parameters.put("status1", CertificateConstants.CERT_REVOKED);
+        parameters.put("status2", CertificateConstants.CERT_ACTIVE); // in case the certificate has been changed from on hold, we need to include it as "removeFromCRL" in the Delta CRL
+        parameters.put("status3", CertificateConstants.CERT_NOTIFIEDABOUTEXPIRATION); // could happen if a cert is re-activated just before expiration
+        // The table may have several rows for the same certificate, so the unique id is used instead of the fingerprint
+        return getRevokedCertInfosInternal(sql, "RevokedNoConflictCertInfoSubset", "id", 6, parameters, allowInvalidityDate);
     }
     
 }
@@ -12,8 +12,14 @@
  *************************************************************************/
 package org.cesecore.certificates.crl;
 
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.security.cert.Certificate;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Date;
 import java.util.LinkedHashMap;
 import java.util.Map;
@@ -48,6 +54,7 @@ import org.cesecore.keys.token.CryptoTokenManagementSessionLocal;
 
 import com.keyfactor.util.CertTools;
 import com.keyfactor.util.CryptoProviderTools;
+import com.keyfactor.util.StringTools;
 import com.keyfactor.util.keys.token.CryptoToken;
 import com.keyfactor.util.keys.token.CryptoTokenOfflineException;
 
@@ -72,6 +79,8 @@ public class CrlCreateSessionBean implements CrlCreateSessionLocal, CrlCreateSes
     @EJB
     private CryptoTokenManagementSessionLocal cryptoTokenManagementSession;
     @EJB
+    private RevocationChangeDataSessionLocal revocationChangeDataSession;
+    @EJB
     private SecurityEventsLoggerSessionLocal logSession;
 
     @PostConstruct
@@ -106,8 +115,6 @@ public class CrlCreateSessionBean implements CrlCreateSessionLocal, CrlCreateSes
     			String msg = intres.getLocalizedMessage("createcert.canotactive", ca.getSubjectDN());
     			throw new CryptoTokenOfflineException(msg);
     		}
-    		final X509CRLHolder crl;
-    		
     		boolean deltaCRL = (basecrlnumber > -1);
     		final CryptoToken cryptoToken = cryptoTokenManagementSession.getCryptoToken(ca.getCAToken().getCryptoTokenId());
     		if (cryptoToken==null) {
@@ -143,23 +150,62 @@ public class CrlCreateSessionBean implements CrlCreateSessionLocal, CrlCreateSes
     			if (nextCrlNumber == basecrlnumber) {
     				nextCrlNumber++;
     			}
-    			crl = ca.generateDeltaCRL(cryptoToken, crlPartitionIndex, certs, nextCrlNumber, basecrlnumber, latestCaCertForPartition);       
+    		}
+    		final byte[] tmpcrlBytes;
+    		final String issuer;
+    		final Date thisUpdate;
+    		final Date nextUpdate;
+    		if (ca instanceof X509CA) {
+    		    // Stream the CRL, so that neither the revoked certificates nor the ASN.1 structure of the CRL are held in memory
+    		    final Path crlFile = Files.createTempFile("crl", ".der");
+    		    try {
+    		        final StreamingCrlEncoder encoder;
+    		        try (final OutputStream out = new BufferedOutputStream(Files.newOutputStream(crlFile))) {
+    		            encoder = ((X509CA) ca).generateCRL(cryptoToken, crlPartitionIndex, certs == null ? Collections.emptyIterator() : certs.iterator(),
+    		                    nextCrlNumber, deltaCRL ? basecrlnumber : -1, latestCaCertForPartition, deltaCRL ? new Date() : validFrom, out);
+    		        }
+    		        tmpcrlBytes = Files.readAllBytes(crlFile);
+    		        issuer = encoder.getIssuer().toString();
+    		        thisUpdate = encoder.getThisUpdate();
+    		        nextUpdate = encoder.getNextUpdate();
+    		    } finally {
+    		        deleteTemporaryFile(crlFile);
+    		    }
     		} else {
-    			crl = ca.generateCRL(cryptoToken, crlPartitionIndex, certs, nextCrlNumber, latestCaCertForPartition, validFrom);
+    		    final X509CRLHolder crl;
+    		    if (deltaCRL) {
+    		        crl = ca.generateDeltaCRL(cryptoToken, crlPartitionIndex, certs, nextCrlNumber, basecrlnumber, latestCaCertForPartition);
+    		    } else {
+    		        crl = ca.generateCRL(cryptoToken, crlPartitionIndex, certs, nextCrlNumber, latestCaCertForPartition, validFrom);
+    		    }
+    		    if (crl == null) {
+    		        tmpcrlBytes = null;
+    		        issuer = null;
+    		        thisUpdate = null;
+    		        nextUpdate = null;
+    		    } else {
+    		        if (log.isDebugEnabled()) {
+    		            log.debug("Encoding CRL to byte array. Free memory="+Runtime.getRuntime().freeMemory());
+    		        }
+    		        tmpcrlBytes = crl.getEncoded();
+    		        issuer = crl.getIssuer().toString();
+    		        thisUpdate = crl.toASN1Structure().getThisUpdate().getDate();
+    		        nextUpdate = crl.toASN1Structure().getNextUpdate().getDate();
+    		    }
     		}
-    		if (crl != null) {
+    		if (tmpcrlBytes != null) {
     			// Store CRL in the database, this can still fail so the whole thing is rolled back
     			String cafp = CertTools.getFingerprintAsString(ca.getCACertificate());
     			if (log.isDebugEnabled()) {
-    			    log.debug("Encoding CRL to byte array. Free memory="+Runtime.getRuntime().freeMemory());
-    			}          
-    			byte[] tmpcrlBytes = crl.getEncoded();                    
-    			if (log.isDebugEnabled()) {
-    			    log.debug("Finished encoding CRL to byte array. Free memory="+Runtime.getRuntime().freeMemory());
-    				log.debug("Storing CRL in certificate store.");
+    			    log.debug("Storing CRL of " + tmpcrlBytes.length + " bytes in certificate store. Free memory="+Runtime.getRuntime().freeMemory());
+    			}
+    			crlSession.storeCRL(admin, tmpcrlBytes, cafp, nextCrlNumber, issuer, crlPartitionIndex,
+    			        thisUpdate, nextUpdate, (deltaCRL ? 1 : -1));
+    			if (!deltaCRL && ca.getCACertificate() != null) {
+    			    // The next delta CRLs only need the revocation status changes made after this base CRL
+    			    revocationChangeDataSession.truncate(CertTools.stringToBCDNString(StringTools.strip(CertTools.getSubjectDN(ca.getCACertificate()))),
+    			            crlPartitionIndex, thisUpdate.getTime());
     			}
-    			crlSession.storeCRL(admin, tmpcrlBytes, cafp, nextCrlNumber, crl.getIssuer().toString(), crlPartitionIndex,
-    			        crl.toASN1Structure().getThisUpdate().getDate(), crl.toASN1Structure().getNextUpdate().getDate(), (deltaCRL ? 1 : -1));
     			String msg = intres.getLocalizedMessage("createcrl.createdcrl", Integer.valueOf(nextCrlNumber), ca.getName(), ca.getSubjectDN());
     			Map<String, Object> details = new LinkedHashMap<String, Object>();
     			details.put("msg", msg);
@@ -192,6 +238,14 @@ public class CrlCreateSessionBean implements CrlCreateSessionLocal, CrlCreateSes
     	return crlBytes;
     }
 
+    private void deleteTemporaryFile(final Path file) {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            log.warn("Could not delete temporary CRL file " + file + ": " + e.getMessage());
+        }
+    }
+
     private void authorizedToCreateCRL(final AuthenticationToken admin, final int caid) throws AuthorizationDeniedException {
     	if (!authorizationSession.isAuthorized(admin, StandardRules.CREATECRL.resource())) {
     		final String msg = intres.getLocalizedMessage("createcrl.notauthorized", admin.toString(), caid);
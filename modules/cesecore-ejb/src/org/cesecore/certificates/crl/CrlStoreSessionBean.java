@@ -12,6 +12,7 @@
  *************************************************************************/
 package org.cesecore.certificates.crl;
 
+import com.keyfactor.util.Base64;
 import com.keyfactor.util.CertTools;
 import org.apache.log4j.Logger;
 import org.cesecore.audit.enums.EventStatus;
@@ -30,6 +31,7 @@ import org.cesecore.jndi.JndiConstants;
 import org.cesecore.util.QueryResultWrapper;
 import org.cesecore.util.ValueExtractor;
 
+import javax.annotation.Resource;
 import javax.ejb.EJB;
 import javax.ejb.EJBException;
 import javax.ejb.Stateless;
@@ -39,6 +41,10 @@ import javax.persistence.EntityManager;
 import javax.persistence.PersistenceContext;
 import javax.persistence.Query;
 import javax.persistence.TypedQuery;
+import javax.transaction.Status;
+import javax.transaction.Synchronization;
+import javax.transaction.TransactionSynchronizationRegistry;
+import java.io.InputStream;
 import java.util.Date;
 import java.util.LinkedHashMap;
 import java.util.List;
@@ -73,6 +79,8 @@ public class CrlStoreSessionBean implements CrlStoreSessionLocal, CrlStoreSessio
     private AuthorizationSessionLocal authorizationSession;
     @EJB
     private SecurityEventsLoggerSessionLocal logSession;
+    @Resource
+    private TransactionSynchronizationRegistry registry;
     
 
     @Override
@@ -94,12 +102,15 @@ public class CrlStoreSessionBean implements CrlStoreSessionLocal, CrlStoreSessio
                 final String msg = intres.getLocalizedMessage("store.errorstorecrlwrongnumber", Integer.valueOf(number), Integer.valueOf(lastNo), issuerDN);
                 throw new CrlStoreException(msg);
             }
-            CRLData data = new CRLData(incrl, number, crlPartitionIndex, issuerDN, thisUpdate, nextUpdate, cafp, deltaCRLIndicator);
+            CRLData data = new CRLData(incrl, number, crlPartitionIndex, issuerDN, thisUpdate, nextUpdate, cafp, deltaCRLIndicator,
+                    CesecoreConfiguration.isDatabaseCrlStorageBinary(), CesecoreConfiguration.isDatabaseCrlStorageCompressed());
             this.entityManager.persist(data);
             String msg = intres.getLocalizedMessage("store.storecrl", Integer.valueOf(number), data.getFingerprint(), data.getIssuerDN());
             Map<String, Object> details = new LinkedHashMap<>();
             details.put("msg", msg);
             logSession.log(EventTypes.CRL_STORED, EventStatus.SUCCESS, ModuleTypes.CRL, ServiceTypes.CORE, admin.toString(), String.valueOf(caid), null, null, details);
+            // Lets the CRL Store cache in this JVM serve the new CRL without waiting for its refresh interval
+            notifyCrlStored(data.getIssuerDN(), crlPartitionIndex, deltaCRL);
         } catch (Exception e) {
             String msg = intres.getLocalizedMessage("store.errorstorecrl", Integer.valueOf(number), issuerDN);
             log.error(msg, e);
@@ -110,6 +121,28 @@ public class CrlStoreSessionBean implements CrlStoreSessionLocal, CrlStoreSessio
         }
     }
     
+    /**
+     * Notifies the CRL caches once the transaction that stored the CRL has committed, since a cache that is refreshed before the commit
+     * would read the previous CRL. Nothing is notified if the transaction is rolled back.
+     */
+    private void notifyCrlStored(final String issuerDn, final int crlPartitionIndex, final boolean deltaCrl) {
+        if (registry == null || registry.getTransactionKey() == null) {
+            CrlStoreNotifier.INSTANCE.crlStored(issuerDn, crlPartitionIndex, deltaCrl);
+            return;
+        }
+        registry.registerInterposedSynchronization(new Synchronization() {
+            @Override
+            public void beforeCompletion() {
+            }
+            @Override
+            public void afterCompletion(final int transactionStatus) {
+                if (transactionStatus == Status.STATUS_COMMITTED) {
+                    CrlStoreNotifier.INSTANCE.crlStored(issuerDn, crlPartitionIndex, deltaCrl);
+                }
+            }
+        });
+    }
+
     /** @return the found entity instance or null if the entity does not exist */
     @Override
     @TransactionAttribute(TransactionAttributeType.SUPPORTS)
@@ -300,18 +333,62 @@ public class CrlStoreSessionBean implements CrlStoreSessionLocal, CrlStoreSessio
         if (log.isTraceEnabled()) {
             log.trace(">getLastCRL(" + issuerdn + ", " + deltaCRL + ")");
         }
+        final CRLData crlData = findLastCRL(issuerdn, crlPartitionIndex, deltaCRL);
+        if (log.isTraceEnabled()) {
+            log.trace("<getLastCRL()");
+        }
+        return crlData == null ? null : crlData.getCRLBytes();
+    }
+
+    @Override
+    @TransactionAttribute(TransactionAttributeType.SUPPORTS)
+    public InputStream getLastCRLStream(final String issuerdn, final int crlPartitionIndex, boolean deltaCRL) {
+        if (log.isTraceEnabled()) {
+            log.trace(">getLastCRLStream(" + issuerdn + ", " + deltaCRL + ")");
+        }
+        final CRLData crlData = findLastCRL(issuerdn, crlPartitionIndex, deltaCRL);
+        if (log.isTraceEnabled()) {
+            log.trace("<getLastCRLStream()");
+        }
+        return crlData == null ? null : crlData.getCRLStream();
+    }
+
+    @Override
+    @TransactionAttribute(TransactionAttributeType.SUPPORTS)
+    public byte[] getCRL(final String issuerdn, final int crlPartitionIndex, final int crlNumber) {
+        if (log.isTraceEnabled()) {
+            log.trace(">getCRL(" + issuerdn + ", " + crlNumber + ")");
+        }
+        final CRLData crlData = findCRL(issuerdn, crlPartitionIndex, crlNumber);
+        if (log.isTraceEnabled()) {
+            log.trace("<getCRL()");
+        }
+        return crlData == null ? null : crlData.getCRLBytes();
+    }
+
+    @Override
+    @TransactionAttribute(TransactionAttributeType.SUPPORTS)
+    public InputStream getCRLStream(final String issuerdn, final int crlPartitionIndex, final int crlNumber) {
+        if (log.isTraceEnabled()) {
+            log.trace(">getCRLStream(" + issuerdn + ", " + crlNumber + ")");
+        }
+        final CRLData crlData = findCRL(issuerdn, crlPartitionIndex, crlNumber);
+        if (log.isTraceEnabled()) {
+            log.trace("<getCRLStream()");
+        }
+        return crlData == null ? null : crlData.getCRLStream();
+    }
+
+    /** @return the latest CRL issued by the CA, or null if no CRLs have been issued */
+    private CRLData findLastCRL(final String issuerdn, final int crlPartitionIndex, final boolean deltaCRL) {
         int maxnumber = 0;
         try {
             maxnumber = getLastCRLNumber(issuerdn, crlPartitionIndex, deltaCRL);
-            byte[] crlbytes = null;
             final CRLData crlData = findByIssuerDNAndCRLNumber(issuerdn, crlPartitionIndex, maxnumber);
             if (Objects.nonNull(crlData)) {
-                crlbytes = crlData.getCRLBytes();
-                if (crlbytes != null) {
-                    final String msg = getMessageWithPartitionIndex(crlPartitionIndex, "store.getcrl", issuerdn, Integer.valueOf(maxnumber));
-                    log.info(msg);
-                    return crlbytes;
-                }
+                final String msg = getMessageWithPartitionIndex(crlPartitionIndex, "store.getcrl", issuerdn, Integer.valueOf(maxnumber));
+                log.info(msg);
+                return crlData;
             }
         } catch (Exception e) {
             final String msg = getMessageWithPartitionIndex(crlPartitionIndex, "store.errorgetcrl", issuerdn);
@@ -320,36 +397,57 @@ public class CrlStoreSessionBean implements CrlStoreSessionLocal, CrlStoreSessio
         }
         final String msg = getMessageWithPartitionIndex(crlPartitionIndex, "store.errorgetcrl", issuerdn, Integer.valueOf(maxnumber));
         log.info(msg);
-        if (log.isTraceEnabled()) {
-            log.trace("<getLastCRL()");
-        }
         return null;
     }
-    
-    @Override
-    @TransactionAttribute(TransactionAttributeType.SUPPORTS)
-    public byte[] getCRL(final String issuerdn, final int crlPartitionIndex, final int crlNumber) {
-        if (log.isTraceEnabled()) {
-            log.trace(">getCRL(" + issuerdn + ", " + crlNumber + ")");
-        }
-        byte[] crlbytes = null;
+
+    /** @return the CRL with the given CRL number, or null if there is no such CRL */
+    private CRLData findCRL(final String issuerdn, final int crlPartitionIndex, final int crlNumber) {
         final CRLData crlData = findByIssuerDNAndCRLNumber(issuerdn, crlPartitionIndex, crlNumber);
         if (Objects.nonNull(crlData)) {
-            crlbytes = crlData.getCRLBytes();
-            if (crlbytes != null) {
-                final String msg = getMessageWithPartitionIndex(crlPartitionIndex, "store.getcrl", issuerdn, Integer.valueOf(crlNumber));
-                log.info(msg);
-                return crlbytes;
-            }
+            final String msg = getMessageWithPartitionIndex(crlPartitionIndex, "store.getcrl", issuerdn, Integer.valueOf(crlNumber));
+            log.info(msg);
+            return crlData;
         }
         final String msg = getMessageWithPartitionIndex(crlPartitionIndex, "store.errorgetcrl", issuerdn, Integer.valueOf(crlNumber));
         log.info(msg);
-        if (log.isTraceEnabled()) {
-            log.trace("<getCRL()");
-        }
         return null;
     }
-    
+
+    @Override
+    public int convertCrlStorage(final AuthenticationToken admin, final int maxRows) throws AuthorizationDeniedException {
+        if (!authorizationSession.isAuthorized(admin, StandardRules.ROLE_ROOT.resource())) {
+            final String msg = intres.getLocalizedMessage("authorization.notauthorizedtoresource", StandardRules.ROLE_ROOT.resource(), admin.toString());
+            throw new AuthorizationDeniedException(msg);
+        }
+        final boolean binary = CesecoreConfiguration.isDatabaseCrlStorageBinary();
+        final boolean compress = CesecoreConfiguration.isDatabaseCrlStorageCompressed();
+        // Only the fingerprints are read up front, so that no more than one CRL at a time is held in memory
+        final TypedQuery<String> query = entityManager.createQuery("SELECT a.fingerprint FROM CRLData a WHERE "
+                + (binary ? "a.binaryCrl IS NULL" : "a.base64Crl IS NULL"), String.class);
+        query.setMaxResults(maxRows);
+        int converted = 0;
+        for (final String fingerprint : query.getResultList()) {
+            final CRLData crlData = entityManager.find(CRLData.class, fingerprint);
+            if (crlData == null) {
+                continue; // Removed meanwhile
+            }
+            final byte[] crl = crlData.getCRLBytes();
+            if (binary) {
+                crlData.setCRLBytes(crl, compress);
+            } else {
+                crlData.setBase64Crl(new String(Base64.encode(crl)));
+                crlData.setBinaryCrl(null);
+            }
+            entityManager.flush();
+            entityManager.detach(crlData);
+            converted++;
+        }
+        if (converted > 0) {
+            log.info("Converted " + converted + " CRLs to " + (binary ? (compress ? "compressed binary" : "binary") : "Base64") + " storage.");
+        }
+        return converted;
+    }
+
     @Override
     public void removeByIssuerDN(final String issuerDN) {
         List<CRLData> crls = findByIssuerDN(issuerDN);
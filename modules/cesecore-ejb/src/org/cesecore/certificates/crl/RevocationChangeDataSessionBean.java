@@ -0,0 +1,171 @@
+/*************************************************************************
+ *                                                                       *
+ *  CESeCore: CE Security Core                                           *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.cesecore.certificates.crl;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.ejb.Stateless;
+import javax.ejb.TransactionAttribute;
+import javax.ejb.TransactionAttributeType;
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import javax.persistence.Query;
+import javax.persistence.TypedQuery;
+
+import org.apache.log4j.Logger;
+import org.cesecore.certificates.certificate.BaseCertificateData;
+import org.cesecore.config.CesecoreConfiguration;
+
+/**
+ * Data session bean for RevocationChangeData
+ */
+@Stateless
+public class RevocationChangeDataSessionBean implements RevocationChangeDataSessionLocal {
+
+    private static final Logger log = Logger.getLogger(RevocationChangeDataSessionBean.class);
+
+    /** Same order as the revoked certificates read from CertificateData */
+    private static final Comparator<RevocationChangeData> REVOCATION_DATE_ORDER = Comparator.comparingLong(RevocationChangeData::getRevocationDate)
+            .thenComparing(RevocationChangeData::getFingerprint);
+
+    @PersistenceContext(unitName = CesecoreConfiguration.PERSISTENCE_UNIT)
+    private EntityManager entityManager;
+
+    @TransactionAttribute(TransactionAttributeType.REQUIRED)
+    @Override
+    public void addRevocationChange(final BaseCertificateData certificateData) {
+        if (log.isTraceEnabled()) {
+            log.trace("Adding revocation status change of certificate with fingerprint " + certificateData.getFingerprint() + " to RevocationChangeData");
+        }
+        entityManager.persist(new RevocationChangeData(certificateData));
+    }
+
+    @Override
+    public Collection<RevokedCertInfo> getRevokedCertInfos(final String issuerDN, final int crlPartitionIndex, final long lastBaseCrlDate,
+            final boolean allowInvalidityDate) {
+        // A start row written by a base CRL created before a revoke-all of the CA had finished doesn't count
+        final TypedQuery<Long> startQuery = entityManager.createQuery("SELECT COUNT(a) FROM RevocationChangeData a WHERE a.issuerDN=:issuerDN "
+                + "AND a.crlPartitionIndex=:crlPartitionIndex AND a.fingerprint IS NULL AND a.revocationReason=:notRevoked "
+                + "AND a.changeTime<=:lastBaseCrlDate AND NOT EXISTS (SELECT b.id FROM RevocationChangeData b WHERE b.issuerDN=:issuerDN "
+                + "AND b.fingerprint IS NULL AND b.revocationReason<>:notRevoked AND b.changeTime>a.changeTime)", Long.class);
+        startQuery.setParameter("issuerDN", issuerDN);
+        startQuery.setParameter("crlPartitionIndex", crlPartitionIndex);
+        startQuery.setParameter("notRevoked", RevokedCertInfo.NOT_REVOKED);
+        startQuery.setParameter("lastBaseCrlDate", lastBaseCrlDate);
+        if (startQuery.getSingleResult() == 0) {
+            if (log.isDebugEnabled()) {
+                log.debug("Revocation change log of '" + issuerDN + "' partition " + crlPartitionIndex + " is not complete since " + lastBaseCrlDate + ".");
+            }
+            return null;
+        }
+        final TypedQuery<RevocationChangeData> query = entityManager.createQuery("SELECT a FROM RevocationChangeData a WHERE a.issuerDN=:issuerDN "
+                + "AND a.crlPartitionIndex=:crlPartitionIndex AND a.fingerprint IS NOT NULL AND a.changeTime>:lastBaseCrlDate ORDER BY a.changeTime",
+                RevocationChangeData.class);
+        query.setParameter("issuerDN", issuerDN);
+        query.setParameter("crlPartitionIndex", crlPartitionIndex);
+        query.setParameter("lastBaseCrlDate", lastBaseCrlDate);
+        // The most recent change of each certificate is its current status
+        final Map<String, RevocationChangeData> latestChanges = new LinkedHashMap<>();
+        for (final RevocationChangeData change : query.getResultList()) {
+            latestChanges.put(change.getFingerprint(), change);
+        }
+        // Like in CertificateData, changes to certificates revoked before the last base CRL are only included if the invalidity date is used
+        final long minRevocationDate = allowInvalidityDate ? -1L : lastBaseCrlDate;
+        final List<RevocationChangeData> changes = new ArrayList<>(latestChanges.size());
+        for (final RevocationChangeData change : latestChanges.values()) {
+            if (change.getRevocationDate() > minRevocationDate) {
+                changes.add(change);
+            }
+        }
+        latestChanges.clear();
+        changes.sort(REVOCATION_DATE_ORDER);
+        final RevokedCertInfoCollection revokedCertInfos = new RevokedCertInfoCollection(changes.size());
+        for (final RevocationChangeData change : changes) {
+            int revocationReason = change.getRevocationReason();
+            if (revocationReason == RevokedCertInfo.NOT_REVOKED) {
+                revocationReason = RevokedCertInfo.REVOCATION_REASON_REMOVEFROMCRL;
+            }
+            Long invalidityDate = null;
+            if (allowInvalidityDate && change.getInvalidityDate() != null && change.getInvalidityDate() != -1L) {
+                invalidityDate = change.getInvalidityDate();
+            }
+            revokedCertInfos.add(change.getFingerprint().getBytes(), new BigInteger(change.getSerialNumber()).toByteArray(), change.getRevocationDate(),
+                    revocationReason, change.getExpireDate(), invalidityDate);
+        }
+        if (log.isDebugEnabled()) {
+            log.debug("Read " + revokedCertInfos.size() + " revocation status changes of '" + issuerDN + "' partition " + crlPartitionIndex
+                    + " from the revocation change log.");
+        }
+        return revokedCertInfos;
+    }
+
+    @TransactionAttribute(TransactionAttributeType.REQUIRED)
+    @Override
+    public void truncate(final String issuerDN, final int crlPartitionIndex, final long baseCrlDate) {
+        // The revoke-all row of the CA is kept, since it applies to all partitions
+        final Query query = entityManager.createQuery("DELETE FROM RevocationChangeData a WHERE a.issuerDN=:issuerDN "
+                + "AND a.crlPartitionIndex=:crlPartitionIndex AND a.changeTime<=:baseCrlDate AND (a.fingerprint IS NOT NULL OR a.revocationReason=:notRevoked)");
+        query.setParameter("issuerDN", issuerDN);
+        query.setParameter("crlPartitionIndex", crlPartitionIndex);
+        query.setParameter("baseCrlDate", baseCrlDate);
+        query.setParameter("notRevoked", RevokedCertInfo.NOT_REVOKED);
+        final int removed = query.executeUpdate();
+        if (log.isDebugEnabled()) {
+            log.debug("Removed " + removed + " rows from the revocation change log of '" + issuerDN + "' partition " + crlPartitionIndex + ".");
+        }
+        final TypedQuery<Long> revokeAllQuery = entityManager.createQuery("SELECT COUNT(a) FROM RevocationChangeData a WHERE a.issuerDN=:issuerDN "
+                + "AND a.fingerprint IS NULL AND a.revocationReason<>:notRevoked AND a.changeTime>:baseCrlDate", Long.class);
+        revokeAllQuery.setParameter("issuerDN", issuerDN);
+        revokeAllQuery.setParameter("notRevoked", RevokedCertInfo.NOT_REVOKED);
+        revokeAllQuery.setParameter("baseCrlDate", baseCrlDate);
+        if (revokeAllQuery.getSingleResult() > 0) {
+            // The base CRL may be missing certificates that are revoked by a revoke-all that is running, or finished after it was created
+            log.info("Not starting the revocation change log of '" + issuerDN + "' partition " + crlPartitionIndex
+                    + ", since the certificates of the CA were revoked after the base CRL was created.");
+            return;
+        }
+        // Changes made after the base CRL are logged, so the log is complete from here on
+        entityManager.persist(RevocationChangeData.createLogStart(issuerDN, crlPartitionIndex, baseCrlDate));
+    }
+
+    @TransactionAttribute(TransactionAttributeType.REQUIRED)
+    @Override
+    public void startRevokeAll(final String issuerDN, final int revocationReason, final long revocationDate) {
+        removeAll(issuerDN);
+        entityManager.persist(RevocationChangeData.createRevokeAll(issuerDN, revocationReason, revocationDate, Long.MAX_VALUE));
+    }
+
+    @TransactionAttribute(TransactionAttributeType.REQUIRED)
+    @Override
+    public void finishRevokeAll(final String issuerDN, final int revocationReason, final long revocationDate) {
+        // Also removes any start row written by a base CRL that was created while the certificates were revoked
+        removeAll(issuerDN);
+        entityManager.persist(RevocationChangeData.createRevokeAll(issuerDN, revocationReason, revocationDate, System.currentTimeMillis()));
+    }
+
+    private void removeAll(final String issuerDN) {
+        final Query query = entityManager.createQuery("DELETE FROM RevocationChangeData a WHERE a.issuerDN=:issuerDN");
+        query.setParameter("issuerDN", issuerDN);
+        final int removed = query.executeUpdate();
+        if (log.isDebugEnabled()) {
+            log.debug("Invalidated the revocation change log of '" + issuerDN + "' by removing " + removed + " rows.");
+        }
+    }
+
+}
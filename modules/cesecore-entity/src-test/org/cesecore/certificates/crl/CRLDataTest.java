@@ -0,0 +1,111 @@
+/*************************************************************************
+ *                                                                       *
+ *  CESeCore: CE Security Core                                           *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.cesecore.certificates.crl;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.InputStream;
+import java.util.Date;
+
+import org.cesecore.certificates.certificate.CertificateConstants;
+import org.junit.Test;
+
+/**
+ * Unit tests of the Base64 encoded, binary and compressed storage of CRLs in {@link CRLData}.
+ */
+public class CRLDataTest {
+
+    /** Not a valid CRL, but starts with a SEQUENCE tag like one, and compresses like the serial numbers and dates of one */
+    private static final byte[] CRL = getCrl();
+
+    @Test
+    public void readBase64EncodedCrl() throws Exception {
+        final CRLData crlData = newCrlData();
+        assertNotNull(crlData.getBase64Crl());
+        assertNull(crlData.getBinaryCrl());
+        assertArrayEquals(CRL, crlData.getCRLBytes());
+        try (final InputStream crlStream = crlData.getCRLStream()) {
+            assertArrayEquals(CRL, crlStream.readAllBytes());
+        }
+    }
+
+    @Test
+    public void readBinaryCrl() throws Exception {
+        final CRLData crlData = newCrlData();
+        crlData.setCRLBytes(CRL, false);
+        assertNull("Only one of the columns should be set.", crlData.getBase64Crl());
+        assertArrayEquals(CRL, crlData.getBinaryCrl());
+        assertArrayEquals(CRL, crlData.getCRLBytes());
+        try (final InputStream crlStream = crlData.getCRLStream()) {
+            assertArrayEquals(CRL, crlStream.readAllBytes());
+        }
+    }
+
+    @Test
+    public void readCompressedCrl() throws Exception {
+        final CRLData crlData = newCrlData();
+        crlData.setCRLBytes(CRL, true);
+        assertNull("Only one of the columns should be set.", crlData.getBase64Crl());
+        assertTrue("The CRL should be smaller compressed, but was " + crlData.getBinaryCrl().length + " bytes.",
+                crlData.getBinaryCrl().length < CRL.length / 2);
+        assertArrayEquals(CRL, crlData.getCRLBytes());
+        try (final InputStream crlStream = crlData.getCRLStream()) {
+            assertArrayEquals(CRL, crlStream.readAllBytes());
+        }
+    }
+
+    @Test
+    public void createCrlInStorageForm() throws Exception {
+        final CRLData binary = new CRLData(CRL, 1, CertificateConstants.NO_CRL_PARTITION, "CN=CRLDataTest", new Date(1700000000000L),
+                new Date(1700086400000L), "cafingerprint", -1, true, false);
+        assertNull("The CRL should not be Base64 encoded when it's stored as binary.", binary.getBase64Crl());
+        assertArrayEquals(CRL, binary.getBinaryCrl());
+        final CRLData compressed = new CRLData(CRL, 1, CertificateConstants.NO_CRL_PARTITION, "CN=CRLDataTest", new Date(1700000000000L),
+                new Date(1700086400000L), "cafingerprint", -1, true, true);
+        assertNull(compressed.getBase64Crl());
+        assertTrue(compressed.getBinaryCrl().length < CRL.length / 2);
+        assertArrayEquals(CRL, compressed.getCRLBytes());
+        assertEquals("The fingerprint should not depend on the storage form.", newCrlData().getFingerprint(), compressed.getFingerprint());
+    }
+
+    @Test
+    public void protectBinaryCrl() {
+        final CRLData crlData = newCrlData();
+        assertEquals("The binary CRL should not be protected in older protection versions.", crlData.getProtectString(2),
+                newCrlData().getProtectString(2));
+        crlData.setCRLBytes(CRL, true);
+        final String compressed = crlData.getProtectString(3);
+        crlData.setCRLBytes(CRL, false);
+        assertNotEquals("A changed binary CRL should change the protection string.", compressed, crlData.getProtectString(3));
+        assertTrue("The protection string should not contain the whole CRL.", compressed.length() < CRL.length);
+    }
+
+    private static CRLData newCrlData() {
+        return new CRLData(CRL, 1, CertificateConstants.NO_CRL_PARTITION, "CN=CRLDataTest", new Date(1700000000000L), new Date(1700086400000L),
+                "cafingerprint", -1);
+    }
+
+    private static byte[] getCrl() {
+        final byte[] crl = new byte[100000];
+        crl[0] = 0x30;
+        for (int i = 1; i < crl.length; i++) {
+            crl[i] = (byte) (i % 37 == 0 ? i * 31 : i % 11);
+        }
+        return crl;
+    }
+}
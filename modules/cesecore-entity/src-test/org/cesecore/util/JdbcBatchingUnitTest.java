@@ -0,0 +1,53 @@
+/*************************************************************************
+ *                                                                       *
+ *  CESeCore: CE Security Core                                           *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.cesecore.util;
+
+import static org.easymock.EasyMock.createMock;
+import static org.easymock.EasyMock.expect;
+import static org.easymock.EasyMock.expectLastCall;
+import static org.easymock.EasyMock.replay;
+import static org.easymock.EasyMock.verify;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceException;
+
+import org.hibernate.Session;
+import org.junit.Test;
+
+/**
+ * Test of {@link JdbcBatching}
+ */
+public class JdbcBatchingUnitTest {
+
+    @Test
+    public void testBatchSizeIsSetOnSession() {
+        final EntityManager entityManager = createMock(EntityManager.class);
+        final Session session = createMock(Session.class);
+        expect(entityManager.unwrap(Session.class)).andReturn(session);
+        session.setJdbcBatchSize(JdbcBatching.DEFAULT_BATCH_SIZE);
+        expectLastCall();
+        replay(entityManager, session);
+        JdbcBatching.enable(entityManager);
+        verify(entityManager, session);
+    }
+
+    @Test
+    public void testOtherPersistenceProviderIsIgnored() {
+        final EntityManager entityManager = createMock(EntityManager.class);
+        expect(entityManager.unwrap(Session.class)).andThrow(new PersistenceException("Not a Hibernate session"));
+        replay(entityManager);
+        // Should not throw, the statements are then just not batched
+        JdbcBatching.enable(entityManager);
+        verify(entityManager);
+    }
+}
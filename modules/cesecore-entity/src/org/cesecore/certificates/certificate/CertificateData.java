@@ -97,6 +97,15 @@ import com.keyfactor.util.keys.KeyTools;
                 @ColumnResult(name = "subjectKeyId"),
                 @ColumnResult(name = "subjectAltName"),
                 @ColumnResult(name = "accountBindingId") }),
+        @SqlResultSetMapping(name = "CertificateStatusSubset", columns = {
+                @ColumnResult(name = "fingerprint"),
+                @ColumnResult(name = "serialNumber"),
+                @ColumnResult(name = "status"),
+                @ColumnResult(name = "revocationDate"),
+                @ColumnResult(name = "revocationReason"),
+                @ColumnResult(name = "expireDate"),
+                @ColumnResult(name = "certificateProfileId"),
+                @ColumnResult(name = "updateTime") }),
         @SqlResultSetMapping(name = "FingerprintUsernameSubset", columns = {
                 @ColumnResult(name = "fingerprint"),
                 @ColumnResult(name = "username") }) })
@@ -35,14 +35,37 @@ public abstract class CertificateStatusHelper {
         if (certificateData == null) {
             return CertificateStatus.NOT_AVAILABLE;
         }
-        final int certProfileId;
-        {
-            final Integer tmp = certificateData.getCertificateProfileId();
-            certProfileId = tmp != null ? tmp.intValue() : CertificateProfileConstants.CERTPROFILE_NO_PROFILE;
+        return getCertificateStatus(certificateData.getStatus(), certificateData.getRevocationDate(), certificateData.getRevocationReason(),
+                certificateData.getCertificateProfileId());
+    }
+
+    /**
+     * Same as {@link #getCertificateStatus(BaseCertificateData)}, for when only the status columns have been read from the database.
+     * The expiration date and the invalidity date of revoked certificates are also set.
+     *
+     * @param statusInfo status columns of a certificate, or null
+     */
+    public static CertificateStatus getCertificateStatus(final CertificateStatusInfo statusInfo) {
+        if (statusInfo == null) {
+            return CertificateStatus.NOT_AVAILABLE;
         }
-        final int status = certificateData.getStatus();
-        final int revReason = certificateData.getRevocationReason();
-        final long revDate = certificateData.getRevocationDate();
+        CertificateStatus result = getCertificateStatus(statusInfo.getStatus(), statusInfo.getRevocationDate(), statusInfo.getRevocationReason(),
+                statusInfo.getCertificateProfileId());
+        if (statusInfo.getInvalidityDate() != null && result.equals(CertificateStatus.REVOKED)) {
+            result = new CertificateStatus(result.toString(), statusInfo.getRevocationDate(), statusInfo.getInvalidityDate(),
+                    statusInfo.getRevocationReason(), result.certificateProfileId);
+        }
+        result.setExpirationDate(statusInfo.getExpireDate());
+        return result;
+    }
+
+    /**
+     * Same as {@link #getCertificateStatus(BaseCertificateData)}, for when only the status columns have been read from the database.
+     *
+     * @param certificateProfileId the certificate profile id, or null if not set
+     */
+    public static CertificateStatus getCertificateStatus(final int status, final long revDate, final int revReason, final Integer certificateProfileId) {
+        final int certProfileId = certificateProfileId != null ? certificateProfileId.intValue() : CertificateProfileConstants.CERTPROFILE_NO_PROFILE;
         if (status == CertificateConstants.CERT_REVOKED) {
             return new CertificateStatus(CertificateStatus.REVOKED.toString(), revDate, revReason, certProfileId);
         }
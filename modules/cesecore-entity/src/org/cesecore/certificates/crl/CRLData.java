@@ -30,13 +30,23 @@ import javax.persistence.SqlResultSetMapping;
 import javax.persistence.SqlResultSetMappings;
 import javax.persistence.Table;
 import javax.persistence.Transient;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
 import java.io.Serializable;
 import java.security.cert.CRLException;
 import java.security.cert.X509CRL;
 import java.util.Date;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
 
 /**
  * Representation of a CRL.
+ * <p>
+ * The CRL is stored either Base64 encoded in base64Crl, or as binary in binaryCrl, which holds the DER encoded CRL or the GZIP
+ * compressed DER encoded CRL. Only one of them is set. A DER encoded CRL always starts with a SEQUENCE tag, so the GZIP header
+ * tells the two binary formats apart. Rows written before the binaryCrl column was added are read from base64Crl.
  */
 @Entity
 @Table(name = "CRLData")
@@ -50,7 +60,7 @@ public class CRLData extends ProtectedData implements Serializable {
 
     private static final Logger log = Logger.getLogger(CRLData.class);
 
-    private static final int LATEST_PROTECT_VERSION = 2;
+    private static final int LATEST_PROTECT_VERSION = 3;
 
     private int cRLNumber;
     private int deltaCRLIndicator;
@@ -60,7 +70,8 @@ public class CRLData extends ProtectedData implements Serializable {
     private String cAFingerprint;
     private long thisUpdate;
     private long nextUpdate;
-    private String base64Crl; 
+    private String base64Crl;
+    private byte[] binaryCrl; // Since EJBCA 8.3.0
     private int rowVersion = 0;
     private String rowProtection;
 
@@ -77,8 +88,23 @@ public class CRLData extends ProtectedData implements Serializable {
      *            -1 for a normal CRL and 1 for a deltaCRL
      */
     public CRLData(byte[] incrl, int number, int crlPartitionIndex, String issuerDN, Date thisUpdate, Date nextUpdate, String cafingerprint, int deltaCRLIndicator) {
-        String b64Crl = new String(Base64.encode(incrl));
-        setBase64Crl(b64Crl);
+        this(incrl, number, crlPartitionIndex, issuerDN, thisUpdate, nextUpdate, cafingerprint, deltaCRLIndicator, false, false);
+    }
+
+    /**
+     * Entity holding info about a CRL, stored in the given form. The CRL is only encoded in the form it's stored in, see {@link #setCRLBytes(byte[], boolean)}.
+     *
+     * @param binary true to store the CRL as binary, false to store it Base64 encoded
+     * @param compress true to GZIP compress a CRL stored as binary
+     * @see #CRLData(byte[], int, int, String, Date, Date, String, int)
+     */
+    public CRLData(byte[] incrl, int number, int crlPartitionIndex, String issuerDN, Date thisUpdate, Date nextUpdate, String cafingerprint, int deltaCRLIndicator,
+            boolean binary, boolean compress) {
+        if (binary) {
+            setCRLBytes(incrl, compress);
+        } else {
+            setBase64Crl(new String(Base64.encode(incrl)));
+        }
         String fp = CertTools.getFingerprintAsString(incrl);
         setFingerprint(fp);
         // Make sure names are always looking the same
@@ -210,6 +236,19 @@ public class CRLData extends ProtectedData implements Serializable {
         this.base64Crl = base64Crl;
     }
 
+    /**
+     * @since EJBCA 8.3.0
+     * @return the DER encoded CRL, optionally GZIP compressed, or null if the CRL is stored Base64 encoded.
+     */
+    // @Column
+    public byte[] getBinaryCrl() {
+        return binaryCrl;
+    }
+
+    public void setBinaryCrl(byte[] binaryCrl) {
+        this.binaryCrl = binaryCrl;
+    }
+
     // @Version @Column
     public int getRowVersion() {
         return rowVersion;
@@ -236,7 +275,7 @@ public class CRLData extends ProtectedData implements Serializable {
     @Transient
     public X509CRL getCRL() {
         try {
-            return CertTools.getCRLfromByteArray(Base64.decode(this.base64Crl.getBytes()));
+            return CertTools.getCRLfromByteArray(getCRLBytes());
         } catch (CRLException ce) {
             log.error("Can't decode CRL.", ce);
         }
@@ -245,16 +284,78 @@ public class CRLData extends ProtectedData implements Serializable {
 
     public void setCRL(X509CRL incrl) {
         try {
-            String b64Crl = new String(Base64.encode((incrl).getEncoded()));
-            setBase64Crl(b64Crl);
+            if (getBinaryCrl() == null) {
+                String b64Crl = new String(Base64.encode((incrl).getEncoded()));
+                setBase64Crl(b64Crl);
+            } else {
+                setCRLBytes(incrl.getEncoded(), isCompressed(getBinaryCrl()));
+            }
         } catch (CRLException ce) {
             log.error("Can't extract DER encoded CRL.", ce);
         }
     }
 
+    /** @return the DER encoded CRL */
     @Transient
     public byte[] getCRLBytes() {
-        return Base64.decode(this.base64Crl.getBytes());
+        if (binaryCrl == null) {
+            return Base64.decode(this.base64Crl.getBytes());
+        }
+        if (!isCompressed(binaryCrl)) {
+            return binaryCrl;
+        }
+        try (final InputStream crlStream = getCRLStream()) {
+            return crlStream.readAllBytes();
+        } catch (IOException e) {
+            throw new IllegalStateException("Can't decompress CRL with fingerprint " + getFingerprint() + ".", e);
+        }
+    }
+
+    /**
+     * Reads the DER encoded CRL. A compressed CRL is decompressed while it's read, so the whole DER encoded CRL is never held in memory.
+     *
+     * @return a stream of the DER encoded CRL
+     */
+    @Transient
+    public InputStream getCRLStream() {
+        if (binaryCrl == null) {
+            return new ByteArrayInputStream(getCRLBytes());
+        }
+        if (!isCompressed(binaryCrl)) {
+            return new ByteArrayInputStream(binaryCrl);
+        }
+        try {
+            return new GZIPInputStream(new ByteArrayInputStream(binaryCrl));
+        } catch (IOException e) {
+            throw new IllegalStateException("Can't decompress CRL with fingerprint " + getFingerprint() + ".", e);
+        }
+    }
+
+    /**
+     * Stores the CRL as binary instead of Base64 encoded, which takes a quarter less space and doesn't have to be decoded when read.
+     * Rows stored as binary can't be read by EJBCA versions before 8.3.0.
+     *
+     * @param incrl the DER encoded CRL
+     * @param compress true to GZIP compress the CRL
+     */
+    public void setCRLBytes(final byte[] incrl, final boolean compress) {
+        if (compress) {
+            final ByteArrayOutputStream compressed = new ByteArrayOutputStream(incrl.length / 2);
+            try (final GZIPOutputStream gzip = new GZIPOutputStream(compressed, 65536)) {
+                gzip.write(incrl);
+            } catch (IOException e) {
+                throw new IllegalStateException(e); // Can't happen when writing to memory
+            }
+            setBinaryCrl(compressed.toByteArray());
+        } else {
+            setBinaryCrl(incrl);
+        }
+        setBase64Crl(null);
+    }
+
+    /** @return true if the data starts with the GZIP header, which a DER encoded CRL can't since it starts with a SEQUENCE tag */
+    private static boolean isCompressed(final byte[] data) {
+        return data.length > 1 && data[0] == (byte) (GZIPInputStream.GZIP_MAGIC & 0xff) && data[1] == (byte) (GZIPInputStream.GZIP_MAGIC >> 8);
     }
 
     public void setIssuer(String dn) {
@@ -293,6 +394,10 @@ public class CRLData extends ProtectedData implements Serializable {
             // Build the database protection string using CertificateConstants.NO_CRL_PARTITION instead of -1.
             build.append(getCrlPartitionIndex() == -1 ? 0 : getCrlPartitionIndex());
         }
+        if (version >= 3) {
+            // Binary CRL added in EJBCA 8.3.0. The hash keeps the protection string small for large CRLs.
+            build.append(getBinaryCrl() == null ? null : CertTools.getSHA256FingerprintAsString(getBinaryCrl()));
+        }
         return build.toString();
     }
 
@@ -0,0 +1,279 @@
+/*************************************************************************
+ *                                                                       *
+ *  CESeCore: CE Security Core                                           *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.cesecore.certificates.crl;
+
+import java.io.Serializable;
+import java.util.UUID;
+
+import javax.persistence.Entity;
+import javax.persistence.PostLoad;
+import javax.persistence.PrePersist;
+import javax.persistence.PreUpdate;
+import javax.persistence.Table;
+import javax.persistence.Transient;
+
+import org.cesecore.certificates.certificate.BaseCertificateData;
+import org.cesecore.certificates.certificate.CertificateConstants;
+import org.cesecore.dbprotection.DatabaseProtectionException;
+import org.cesecore.dbprotection.ProtectedData;
+import org.cesecore.dbprotection.ProtectionStringBuilder;
+
+/**
+ * Append-only log of the revocation status changes of the certificates issued by a CA, used for creating delta CRLs without searching
+ * CertificateData. Rows are never updated, only inserted and deleted.
+ * <p>
+ * The log of a CA and CRL partition is only complete from the time of its start row, which is written when the log is truncated after a base CRL
+ * has been created. Start rows are recognized by the fingerprint being null.
+ * <p>
+ * While all certificates of a CA are revoked without logging the changes, the CA has a revoke-all row, recognized by the fingerprint being null
+ * and the revocation reason being set. Its change time is when the revocation finished, or Long.MAX_VALUE while it's running, and start rows
+ * from before that time don't make the log complete.
+ */
+@Entity
+@Table(name = "RevocationChangeData")
+public class RevocationChangeData extends ProtectedData implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+    private static final int LATEST_PROTECT_VERSON = 1;
+
+    private String id;
+    private String issuerDN;
+    private int crlPartitionIndex;
+    private String fingerprint;
+    private String serialNumber;
+    private long expireDate;
+    private long revocationDate;
+    private int revocationReason;
+    private Long invalidityDate;
+    private long changeTime;
+    private int rowVersion;
+    private String rowProtection;
+
+    public RevocationChangeData() { }
+
+    /**
+     * Creates a log entry with the current revocation status of a certificate.
+     *
+     * @param certificateData certificate whose revocation status has changed. The update time must be the time of the change.
+     */
+    public RevocationChangeData(final BaseCertificateData certificateData) {
+        this(certificateData.getIssuerDN(), getCrlPartitionIndex(certificateData), certificateData.getUpdateTime());
+        this.fingerprint = certificateData.getFingerprint();
+        this.serialNumber = certificateData.getSerialNumber();
+        this.expireDate = certificateData.getExpireDate();
+        this.revocationDate = certificateData.getRevocationDate();
+        this.revocationReason = certificateData.getRevocationReason();
+        this.invalidityDate = certificateData.getInvalidityDate();
+    }
+
+    private RevocationChangeData(final String issuerDN, final int crlPartitionIndex, final long changeTime) {
+        this.id = UUID.randomUUID().toString();
+        this.issuerDN = issuerDN;
+        this.crlPartitionIndex = crlPartitionIndex;
+        this.changeTime = changeTime;
+        this.revocationDate = -1L;
+        this.revocationReason = RevokedCertInfo.NOT_REVOKED;
+    }
+
+    /**
+     * Creates a start row, which marks that the log contains all revocation status changes after the given time.
+     *
+     * @param issuerDN issuer DN of the CA, in the same form as in CertificateData.
+     * @param crlPartitionIndex CRL partition, or CertificateConstants.NO_CRL_PARTITION if partitioning is not used.
+     * @param changeTime epoch millis from when the log is complete, i.e. the thisUpdate time of the latest base CRL.
+     * @return new log start row
+     */
+    public static RevocationChangeData createLogStart(final String issuerDN, final int crlPartitionIndex, final long changeTime) {
+        return new RevocationChangeData(issuerDN, crlPartitionIndex, changeTime);
+    }
+
+    /**
+     * Creates a revoke-all row, which marks that the certificates of a CA have been revoked without logging the changes.
+     *
+     * @param issuerDN issuer DN of the CA, in the same form as in CertificateData.
+     * @param revocationReason the revocation reason that the certificates were given, not RevokedCertInfo.NOT_REVOKED.
+     * @param revocationDate the revocation date that the certificates were given, in epoch millis.
+     * @param changeTime epoch millis when the revocation finished, or Long.MAX_VALUE while it's running.
+     * @return new revoke-all row
+     */
+    public static RevocationChangeData createRevokeAll(final String issuerDN, final int revocationReason, final long revocationDate,
+            final long changeTime) {
+        final RevocationChangeData revokeAll = new RevocationChangeData(issuerDN, CertificateConstants.NO_CRL_PARTITION, changeTime);
+        revokeAll.revocationReason = revocationReason;
+        revokeAll.revocationDate = revocationDate;
+        return revokeAll;
+    }
+
+    private static int getCrlPartitionIndex(final BaseCertificateData certificateData) {
+        final Integer crlPartitionIndex = certificateData.getCrlPartitionIndex();
+        return crlPartitionIndex == null ? CertificateConstants.NO_CRL_PARTITION : crlPartitionIndex;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public void setId(final String id) {
+        this.id = id;
+    }
+
+    public String getIssuerDN() {
+        return issuerDN;
+    }
+
+    public void setIssuerDN(final String issuerDN) {
+        this.issuerDN = issuerDN;
+    }
+
+    public int getCrlPartitionIndex() {
+        return crlPartitionIndex;
+    }
+
+    public void setCrlPartitionIndex(final int crlPartitionIndex) {
+        this.crlPartitionIndex = crlPartitionIndex;
+    }
+
+    /** @return fingerprint of the certificate, or null for the start row of the log and the revoke-all row */
+    public String getFingerprint() {
+        return fingerprint;
+    }
+
+    public void setFingerprint(final String fingerprint) {
+        this.fingerprint = fingerprint;
+    }
+
+    /** @return serial number of the certificate formatted as a decimal number, as in CertificateData, or null for the start and revoke-all rows */
+    public String getSerialNumber() {
+        return serialNumber;
+    }
+
+    public void setSerialNumber(final String serialNumber) {
+        this.serialNumber = serialNumber;
+    }
+
+    public long getExpireDate() {
+        return expireDate;
+    }
+
+    public void setExpireDate(final long expireDate) {
+        this.expireDate = expireDate;
+    }
+
+    public long getRevocationDate() {
+        return revocationDate;
+    }
+
+    public void setRevocationDate(final long revocationDate) {
+        this.revocationDate = revocationDate;
+    }
+
+    /** @return revocation reason after the change, or RevokedCertInfo.NOT_REVOKED if the certificate was reactivated */
+    public int getRevocationReason() {
+        return revocationReason;
+    }
+
+    public void setRevocationReason(final int revocationReason) {
+        this.revocationReason = revocationReason;
+    }
+
+    /** @return invalidity date in epoch millis, or null or -1 if not set */
+    public Long getInvalidityDate() {
+        return invalidityDate;
+    }
+
+    public void setInvalidityDate(final Long invalidityDate) {
+        this.invalidityDate = invalidityDate;
+    }
+
+    /** @return epoch millis when the revocation status was changed, i.e. the update time of the certificate */
+    public long getChangeTime() {
+        return changeTime;
+    }
+
+    public void setChangeTime(final long changeTime) {
+        this.changeTime = changeTime;
+    }
+
+    public int getRowVersion() {
+        return rowVersion;
+    }
+
+    public void setRowVersion(final int rowVersion) {
+        this.rowVersion = rowVersion;
+    }
+
+    @Override
+    public String getRowProtection() {
+        return rowProtection;
+    }
+
+    @Override
+    public void setRowProtection(final String rowProtection) {
+        this.rowProtection = rowProtection;
+    }
+
+    /** @return true if this is the start row of the log */
+    @Transient
+    public boolean isLogStart() {
+        return fingerprint == null && revocationReason == RevokedCertInfo.NOT_REVOKED;
+    }
+
+    /** @return true if this is the revoke-all row of the CA */
+    @Transient
+    public boolean isRevokeAll() {
+        return fingerprint == null && revocationReason != RevokedCertInfo.NOT_REVOKED;
+    }
+
+    //
+    // Start Database integrity protection methods
+    //
+
+    @Transient
+    @Override
+    protected String getProtectString(final int version) {
+        // rowVersion is automatically updated by JPA, so it's not important, it is only used for optimistic locking so we will not include that in the database protection
+        return new ProtectionStringBuilder().append(getId()).append(getIssuerDN()).append(getCrlPartitionIndex()).append(getFingerprint())
+                .append(getSerialNumber()).append(getExpireDate()).append(getRevocationDate()).append(getRevocationReason())
+                .append(getInvalidityDate()).append(getChangeTime()).toString();
+    }
+
+    @Transient
+    @Override
+    protected int getProtectVersion() {
+        return LATEST_PROTECT_VERSON;
+    }
+
+    @PrePersist
+    @PreUpdate
+    @Override
+    protected void protectData() throws DatabaseProtectionException {
+        super.protectData();
+    }
+
+    @PostLoad
+    @Override
+    protected void verifyData() throws DatabaseProtectionException {
+        super.verifyData();
+    }
+
+    @Override
+    @Transient
+    protected String getRowId() {
+        return new ProtectionStringBuilder().append(getId()).toString();
+    }
+
+    //
+    // End Database integrity protection methods
+    //
+
+}
@@ -0,0 +1,54 @@
+/*************************************************************************
+ *                                                                       *
+ *  CESeCore: CE Security Core                                           *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.cesecore.util;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceException;
+
+import org.apache.log4j.Logger;
+import org.hibernate.Session;
+
+/**
+ * Enables JDBC batching for the operations that write many rows of the same kind in one transaction, without turning it on for
+ * the whole persistence unit. JPA has no standard way to do this, so the batch size is set on the Hibernate session.
+ */
+public final class JdbcBatching {
+
+    private static final Logger log = Logger.getLogger(JdbcBatching.class);
+
+    /** Number of statements sent to the database in each JDBC batch */
+    public static final int DEFAULT_BATCH_SIZE = 50;
+
+    private JdbcBatching() {}
+
+    /**
+     * Sends the inserts, updates and deletes of the entity manager's current persistence context in JDBC batches of
+     * {@link #DEFAULT_BATCH_SIZE}. With a container managed entity manager this lasts until the end of the transaction.
+     * Rows of different entities should be persisted one entity at the time, since a batch is sent as soon as another table is written.
+     *
+     * @param entityManager an entity manager in a transaction
+     */
+    public static void enable(final EntityManager entityManager) {
+        try {
+            final Session session = entityManager.unwrap(Session.class);
+            if (session != null) {
+                session.setJdbcBatchSize(DEFAULT_BATCH_SIZE);
+            }
+        } catch (PersistenceException e) {
+            // Not Hibernate, so the statements are sent one at the time as before
+            if (log.isDebugEnabled()) {
+                log.debug("JDBC batching is not available: " + e.getMessage());
+            }
+        }
+    }
+}
@@ -13,6 +13,7 @@
 package org.cesecore.certificates.ca;
 
 import java.io.IOException;
+import java.io.OutputStream;
 import java.io.Serializable;
 import java.math.BigInteger;
 import java.security.InvalidKeyException;
@@ -103,6 +104,7 @@ import org.bouncycastle.jcajce.provider.asymmetric.ec.BCECPublicKey;
 import org.bouncycastle.jce.provider.BouncyCastleProvider;
 import org.bouncycastle.operator.BufferingContentSigner;
 import org.bouncycastle.operator.ContentSigner;
+import org.bouncycastle.operator.ContentVerifier;
 import org.bouncycastle.operator.ContentVerifierProvider;
 import org.bouncycastle.operator.OperatorCreationException;
 import org.bouncycastle.operator.jcajce.JcaContentSignerBuilder;
@@ -135,6 +137,8 @@ import org.cesecore.certificates.certificatetransparency.CTLogInfo;
 import org.cesecore.certificates.certificatetransparency.CertificateTransparency;
 import org.cesecore.certificates.certificatetransparency.CertificateTransparencyFactory;
 import org.cesecore.certificates.crl.RevokedCertInfo;
+import org.cesecore.certificates.crl.RevokedCertInfoCollection;
+import org.cesecore.certificates.crl.StreamingCrlEncoder;
 import org.cesecore.certificates.endentity.EndEntityInformation;
 import org.cesecore.certificates.endentity.EndEntityType;
 import org.cesecore.certificates.endentity.EndEntityTypes;
@@ -2051,21 +2055,133 @@ public class X509CAImpl extends CABase implements Serializable, X509CA {
      */
     private X509CRLHolder generateCRL(CryptoToken cryptoToken, int crlPartitionIndex, Collection<RevokedCertInfo> certs, long crlPeriod, int crlnumber, 
             boolean isDeltaCRL, int basecrlnumber, Certificate partitionCaCert, final Date validFrom) throws CryptoTokenOfflineException, IOException, SignatureException {
-        final String sigAlg = getCAInfo().getCAToken().getSignatureAlgorithm();
-
         if (log.isDebugEnabled()) {
             log.debug("generateCRL(crlPartitionIndex=" + crlPartitionIndex + ", certs.size=" + certs.size() + ", crlPeriod=" + crlPeriod + ", crlNumber=" + crlnumber + ", isDeltaCRL=" + isDeltaCRL + ", baseCRLNumber=" + basecrlnumber);
         }
+        final X509Certificate cacert = getCrlCaCertificate(partitionCaCert);
+        final X500Name issuer = getCrlIssuer(cacert);
+        final Date thisUpdate = (validFrom != null ? validFrom : new Date());
+        final X509v2CRLBuilder crlgen = new X509v2CRLBuilder(issuer, thisUpdate);
+        crlgen.setNextUpdate(getCrlNextUpdate(thisUpdate, crlPeriod));
+        if (certs != null) {
+            if (log.isDebugEnabled()) {
+                log.debug("Adding "+certs.size()+" revoked certificates to CRL. Free memory="+Runtime.getRuntime().freeMemory());
+            }
+            if (certs instanceof RevokedCertInfoCollection) {
+                // Read the entries in place, instead of creating a RevokedCertInfo for each of them
+                final RevokedCertInfoCollection.Cursor cursor = ((RevokedCertInfoCollection) certs).cursor();
+                while (cursor.advance()) {
+                    if (cursor.isInvalidityDateSet()) {
+                        crlgen.addCRLEntry(cursor.getSerialNumber(), new Date(cursor.getRevocationDate()), cursor.getReason(), new Date(cursor.getInvalidityDate()));
+                    } else {
+                        crlgen.addCRLEntry(cursor.getSerialNumber(), new Date(cursor.getRevocationDate()), cursor.getReason());
+                    }
+                }
+            } else {
+                for (final RevokedCertInfo certinfo : certs) {
+                    if (certinfo.getInvalidityDate() != null) {
+                        crlgen.addCRLEntry(certinfo.getUserCertificate(), certinfo.getRevocationDate(), certinfo.getReason(), certinfo.getInvalidityDate());
+                    } else {
+                        crlgen.addCRLEntry(certinfo.getUserCertificate(), certinfo.getRevocationDate(), certinfo.getReason());
+                    }
+                }
+            }
+            if (log.isDebugEnabled()) {
+                log.debug("Finished adding "+certs.size()+" revoked certificates to CRL. Free memory="+Runtime.getRuntime().freeMemory());
+            }
+        }
+        final Extensions crlExtensions = getCrlExtensions(cryptoToken, crlPartitionIndex, cacert, crlnumber, isDeltaCRL, basecrlnumber);
+        if (crlExtensions != null) {
+            for (final ASN1ObjectIdentifier oid : crlExtensions.getExtensionOIDs()) {
+                crlgen.addExtension(crlExtensions.getExtension(oid));
+            }
+        }
 
-        
-        // Make DNs
-        X509Certificate cacert = (X509Certificate) getCACertificate();
-        final X500Name issuer;
+        final X509CRLHolder crl;
+        if (log.isDebugEnabled()) {
+            log.debug("Signing CRL. Free memory="+Runtime.getRuntime().freeMemory());
+        }
+        final String alias = getCrlSignKeyAlias(cryptoToken, partitionCaCert);
+        crl = crlgen.build(getCrlSigner(cryptoToken, alias));
+        if (log.isDebugEnabled()) {
+            log.debug("Finished signing CRL. Free memory="+Runtime.getRuntime().freeMemory());
+        }
+
+        // Verify using the CA certificate before returning
+        // If we can not verify the issued CRL using the CA certificate we don't want to issue this CRL
+        // because something is wrong...
+        final PublicKey verifyKey = getCrlVerifyKey(cryptoToken, cacert, alias);
+        try {
+            final ContentVerifierProvider verifier = CertTools.genContentVerifierProvider(verifyKey);
+            if (!crl.isSignatureValid(verifier)) {
+                if (log.isTraceEnabled()) {
+                    log.trace("The public key used to verify the CRL:" + System.lineSeparator() + KeyTools.getAsPem(verifyKey));
+                    log.trace("The CRL whose signature could not be verified:" + System.lineSeparator() + KeyTools.getAsPem(crl));
+                }
+                throw new SignatureException(getCrlVerificationFailureMessage(cryptoToken, issuer, verifyKey));
+            }
+        } catch (OperatorCreationException e) {
+            // Very fatal error
+            throw new RuntimeException("Can not create Jca content signer: ", e);
+        } catch (CertException e) {
+            throw new SignatureException(e.getMessage(), e);
+        }
+        if (log.isDebugEnabled()) {
+            log.debug("Returning CRL. Free memory="+Runtime.getRuntime().freeMemory());
+        }
+        return crl;
+    }
 
+    @Override
+    public StreamingCrlEncoder generateCRL(final CryptoToken cryptoToken, final int crlPartitionIndex, final Iterator<RevokedCertInfo> certs,
+            final int crlnumber, final int basecrlnumber, final Certificate partitionCaCert, final Date validFrom, final OutputStream out)
+            throws CryptoTokenOfflineException, IOException, SignatureException {
+        final boolean isDeltaCRL = basecrlnumber > -1;
+        final long crlPeriod = isDeltaCRL ? getDeltaCRLPeriod() : getCRLPeriod();
+        if (log.isDebugEnabled()) {
+            log.debug("generateCRL(crlPartitionIndex=" + crlPartitionIndex + ", crlPeriod=" + crlPeriod + ", crlNumber=" + crlnumber + ", isDeltaCRL="
+                    + isDeltaCRL + ", baseCRLNumber=" + basecrlnumber + ") streaming");
+        }
+        final X509Certificate cacert = getCrlCaCertificate(partitionCaCert);
+        final X500Name issuer = getCrlIssuer(cacert);
+        final Date thisUpdate = (validFrom != null ? validFrom : new Date());
+        final StreamingCrlEncoder encoder = new StreamingCrlEncoder(issuer, thisUpdate, getCrlNextUpdate(thisUpdate, crlPeriod),
+                getCrlExtensions(cryptoToken, crlPartitionIndex, cacert, crlnumber, isDeltaCRL, isDeltaCRL ? basecrlnumber : 0));
+        final String alias = getCrlSignKeyAlias(cryptoToken, partitionCaCert);
+        final ContentSigner signer = getCrlSigner(cryptoToken, alias);
+        // Verify the signature with the CA certificate while signing, since we don't want to issue a CRL that can't be verified
+        final PublicKey verifyKey = getCrlVerifyKey(cryptoToken, cacert, alias);
+        final ContentVerifier verifier;
+        try {
+            verifier = CertTools.genContentVerifierProvider(verifyKey).get(signer.getAlgorithmIdentifier());
+        } catch (OperatorCreationException e) {
+            // Very fatal error
+            throw new RuntimeException("Can not create Jca content verifier: ", e);
+        }
+        try {
+            encoder.encode(certs, signer, verifier, out);
+        } catch (SignatureException e) {
+            if (log.isTraceEnabled()) {
+                log.trace("The public key used to verify the CRL:" + System.lineSeparator() + KeyTools.getAsPem(verifyKey));
+            }
+            throw new SignatureException(getCrlVerificationFailureMessage(cryptoToken, issuer, verifyKey), e);
+        }
+        if (log.isDebugEnabled()) {
+            log.debug("Wrote CRL with " + encoder.getEntryCount() + " entries and " + encoder.getLength() + " bytes. Free memory="
+                    + Runtime.getRuntime().freeMemory());
+        }
+        return encoder;
+    }
+
+    /** @return the CA certificate the CRL is issued under, the partition certificate for MS compatible CAs, or null for a CA without certificate */
+    private X509Certificate getCrlCaCertificate(final Certificate partitionCaCert) {
         if (isMsCaCompatible() && partitionCaCert != null) {
-            cacert = (X509Certificate) partitionCaCert;
+            return (X509Certificate) partitionCaCert;
         }
-        
+        return (X509Certificate) getCACertificate();
+    }
+
+    private X500Name getCrlIssuer(final X509Certificate cacert) {
         if (cacert == null) {
             // This is an initial root CA, since no CA-certificate exists
             // (I don't think we can ever get here!!!)
@@ -2075,11 +2191,12 @@ public class X509CAImpl extends CABase implements Serializable, X509CA {
             } else {
                 nameStyle = CeSecoreNameStyle.INSTANCE;
             }
-            issuer = CertTools.stringToBcX500Name(getSubjectDN(), nameStyle, getUseLdapDNOrder());
-        } else {
-            issuer = X500Name.getInstance(cacert.getSubjectX500Principal().getEncoded());
+            return CertTools.stringToBcX500Name(getSubjectDN(), nameStyle, getUseLdapDNOrder());
         }
-        final Date thisUpdate = (validFrom != null ? validFrom : new Date());
+        return X500Name.getInstance(cacert.getSubjectX500Principal().getEncoded());
+    }
+
+    private Date getCrlNextUpdate(final Date thisUpdate, final long crlPeriod) {
         final Date nextUpdate = new Date();
         nextUpdate.setTime( thisUpdate.getTime() );
         // Set standard nextUpdate time
@@ -2095,26 +2212,13 @@ public class X509CAImpl extends CABase implements Serializable, X509CA {
                 log.debug("nextUpdate is larger than 9999-12-31:23.59.59 GMT, limiting value as specified in RFC5280 4.1.2.5: " + ValidityDate.formatAsUTC(nextUpdate));
             }
         }
+        return nextUpdate;
+    }
 
-        final X509v2CRLBuilder crlgen = new X509v2CRLBuilder(issuer, thisUpdate);
-        crlgen.setNextUpdate(nextUpdate);
-        if (certs != null) {
-            if (log.isDebugEnabled()) {
-                log.debug("Adding "+certs.size()+" revoked certificates to CRL. Free memory="+Runtime.getRuntime().freeMemory());
-            }
-            for (final RevokedCertInfo certinfo : certs) {
-                if (certinfo.getInvalidityDate() != null) {
-                    crlgen.addCRLEntry(certinfo.getUserCertificate(), certinfo.getRevocationDate(), certinfo.getReason(), certinfo.getInvalidityDate());
-                } else {
-                    crlgen.addCRLEntry(certinfo.getUserCertificate(), certinfo.getRevocationDate(), certinfo.getReason());
-                }
-            }
-            if (log.isDebugEnabled()) {
-                log.debug("Finished adding "+certs.size()+" revoked certificates to CRL. Free memory="+Runtime.getRuntime().freeMemory());
-            }
-        }
-
-
+    /** @return the extensions of a CRL or delta CRL, or null if there are none */
+    private Extensions getCrlExtensions(final CryptoToken cryptoToken, final int crlPartitionIndex, final X509Certificate cacert, final int crlnumber,
+            final boolean isDeltaCRL, final int basecrlnumber) throws CryptoTokenOfflineException, IOException {
+        final ExtensionsGenerator crlgen = new ExtensionsGenerator();
         // Authority key identifier
         if (getUseAuthorityKeyIdentifier()) {
             byte[] caSkid = (cacert != null ? CertTools.getSubjectKeyId(cacert) : null);
@@ -2223,67 +2327,48 @@ public class X509CAImpl extends CABase implements Serializable, X509CA {
             }
         }
 
-        final X509CRLHolder crl;
-        if (log.isDebugEnabled()) {
-            log.debug("Signing CRL. Free memory="+Runtime.getRuntime().freeMemory());
-        }
-        String alias = getCAToken().getAliasFromPurpose(CATokenConstants.CAKEYPURPOSE_CRLSIGN);
+        return crlgen.isEmpty() ? null : crlgen.generate();
+    }
+
+    private String getCrlSignKeyAlias(final CryptoToken cryptoToken, final Certificate partitionCaCert) throws CryptoTokenOfflineException {
         if (isMsCaCompatible() && partitionCaCert != null) {
-            alias = getSignKeyAliasFromSubjectKeyId(cryptoToken, CertTools.getSubjectKeyId(partitionCaCert));
+            return getSignKeyAliasFromSubjectKeyId(cryptoToken, CertTools.getSubjectKeyId(partitionCaCert));
         }
-        
+        return getCAToken().getAliasFromPurpose(CATokenConstants.CAKEYPURPOSE_CRLSIGN);
+    }
+
+    private ContentSigner getCrlSigner(final CryptoToken cryptoToken, final String alias) throws CryptoTokenOfflineException {
+        final String sigAlg = getCAInfo().getCAToken().getSignatureAlgorithm();
         try {
             String prov = cryptoToken.getSignProviderName();
             if (BouncyCastleProvider.PROVIDER_NAME.equals(prov)) {
                 prov = CryptoProviderTools.getProviderNameFromAlg(sigAlg);
             }
-            final ContentSigner signer = new BufferingContentSigner(new JcaContentSignerBuilder(sigAlg).setProvider(prov).build(cryptoToken.getPrivateKey(alias)), X509CAImpl.SIGN_BUFFER_SIZE);
-            crl = crlgen.build(signer);
+            return new BufferingContentSigner(new JcaContentSignerBuilder(sigAlg).setProvider(prov).build(cryptoToken.getPrivateKey(alias)), X509CAImpl.SIGN_BUFFER_SIZE);
         } catch (OperatorCreationException e) {
             // Very fatal error
             throw new RuntimeException("Can not create Jca content signer: ", e);
         }
-        if (log.isDebugEnabled()) {
-            log.debug("Finished signing CRL. Free memory="+Runtime.getRuntime().freeMemory());
-        }
+    }
 
-        // Verify using the CA certificate before returning
-        // If we can not verify the issued CRL using the CA certificate we don't want to issue this CRL
-        // because something is wrong...
-        final PublicKey verifyKey;
+    private PublicKey getCrlVerifyKey(final CryptoToken cryptoToken, final X509Certificate cacert, final String alias) throws CryptoTokenOfflineException {
         if (cacert != null) {
-            verifyKey = cacert.getPublicKey();
             if (log.isTraceEnabled()) {
                 log.trace("Got the verify key from the CA certificate.");
             }
-        } else {
-            verifyKey = cryptoToken.getPublicKey(alias);
-            if (log.isTraceEnabled()) {
-                log.trace("Got the verify key from the CA token.");
-            }
+            return cacert.getPublicKey();
         }
-        try {
-            final ContentVerifierProvider verifier = CertTools.genContentVerifierProvider(verifyKey);
-            if (!crl.isSignatureValid(verifier)) {
-                if (log.isTraceEnabled()) {
-                    log.trace("The public key used to verify the CRL:" + System.lineSeparator() + KeyTools.getAsPem(verifyKey));
-                    log.trace("The CRL whose signature could not be verified:" + System.lineSeparator() + KeyTools.getAsPem(crl));
-                }
-                throw new SignatureException("Cannot verify the signature of the CRL for issuer " + "'" + issuer
-                        + "' using the public key with SHA-1 fingerprint " + CertTools.createPublicKeyFingerprint(verifyKey, "SHA-1")
-                        + ". The CRL signature was created with a private key stored in the token " + cryptoToken.getTokenName()
-                        + ". The most likely reason for this error is that the private key stored on the token does not correspond to the public key found in the issuer certificate.");
-            }
-        } catch (OperatorCreationException e) {
-            // Very fatal error
-            throw new RuntimeException("Can not create Jca content signer: ", e);
-        } catch (CertException e) {
-            throw new SignatureException(e.getMessage(), e);
-        }
-        if (log.isDebugEnabled()) {
-            log.debug("Returning CRL. Free memory="+Runtime.getRuntime().freeMemory());
+        if (log.isTraceEnabled()) {
+            log.trace("Got the verify key from the CA token.");
         }
-        return crl;
+        return cryptoToken.getPublicKey(alias);
+    }
+
+    private static String getCrlVerificationFailureMessage(final CryptoToken cryptoToken, final X500Name issuer, final PublicKey verifyKey) {
+        return "Cannot verify the signature of the CRL for issuer " + "'" + issuer
+                + "' using the public key with SHA-1 fingerprint " + CertTools.createPublicKeyFingerprint(verifyKey, "SHA-1")
+                + ". The CRL signature was created with a private key stored in the token " + cryptoToken.getTokenName()
+                + ". The most likely reason for this error is that the private key stored on the token does not correspond to the public key found in the issuer certificate.";
     }
 
     private String getSignKeyAliasFromSubjectKeyId(CryptoToken cryptoToken, byte[] crlSubjectKeyIdentifier) throws CryptoTokenOfflineException {
@@ -0,0 +1,255 @@
+/*************************************************************************
+ *                                                                       *
+ *  EJBCA Community: The OpenSource Certificate Authority                *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.ejbca.ui.web.protocol;
+
+import static org.easymock.EasyMock.anyInt;
+import static org.easymock.EasyMock.anyObject;
+import static org.easymock.EasyMock.anyString;
+import static org.easymock.EasyMock.createMock;
+import static org.easymock.EasyMock.createNiceMock;
+import static org.easymock.EasyMock.eq;
+import static org.easymock.EasyMock.expect;
+import static org.easymock.EasyMock.expectLastCall;
+import static org.easymock.EasyMock.getCurrentArguments;
+import static org.easymock.EasyMock.replay;
+import static org.easymock.EasyMock.verify;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.lang.reflect.Constructor;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.cesecore.certificates.certificate.CertificateConstants;
+import org.easymock.EasyMockRunner;
+import org.easymock.Mock;
+import org.easymock.TestSubject;
+import org.ejbca.core.protocol.crlstore.CRLCache;
+import org.ejbca.core.protocol.crlstore.CRLCache.CachedCrl;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/**
+ * Unit test of the entity tags and conditional requests of {@link CRLStoreServlet}.
+ */
+@RunWith(EasyMockRunner.class)
+public class CRLStoreServletUnitTest {
+
+    /** Base64 of a 20 byte hash, without the padding */
+    private static final String HASH = "AAAAAAAAAAAAAAAAAAAAAAAAAAA";
+    private static final byte[] CRL = { 0x30, 0x03, 0x02, 0x01, 0x05 };
+
+    @Mock
+    private CRLCache crlCache;
+
+    @TestSubject
+    private final CRLStoreServlet servlet = new CRLStoreServlet();
+
+    private final CapturingOutputStream out = new CapturingOutputStream();
+
+    @Test
+    public void eTagIsQuotedCrlNumber() {
+        assertEquals("\"17\"", CRLStoreServlet.getETag(17));
+    }
+
+    @Test
+    public void matchesETag() {
+        final String eTag = CRLStoreServlet.getETag(17);
+        assertFalse(CRLStoreServlet.matchesETag(null, eTag));
+        assertTrue(CRLStoreServlet.matchesETag("\"17\"", eTag));
+        assertTrue("Weak entity tags should match.", CRLStoreServlet.matchesETag("W/\"17\"", eTag));
+        assertTrue(CRLStoreServlet.matchesETag("\"16\", \"17\"", eTag));
+        assertTrue(CRLStoreServlet.matchesETag("*", eTag));
+        assertFalse(CRLStoreServlet.matchesETag("\"16\"", eTag));
+        assertFalse("The tag must be quoted.", CRLStoreServlet.matchesETag("17", eTag));
+        assertFalse(CRLStoreServlet.matchesETag("\"170\"", eTag));
+    }
+
+    @Test
+    public void crlNumberIsNotModifiedWhenClientHasIt() throws Exception {
+        final TrackingInputStream crl = new TrackingInputStream(CRL);
+        expect(crlCache.findStreamByIssuerDN(anyObject(), eq(CertificateConstants.NO_CRL_PARTITION), eq(17))).andReturn(crl);
+        replay(crlCache);
+        final Map<String, String> headers = new HashMap<>();
+        final HttpServletResponse resp = response(headers, HttpServletResponse.SC_NOT_MODIFIED);
+
+        servlet.iHash(HASH, resp, request("17", "\"17\"", -1));
+
+        verify(crlCache, resp);
+        assertEquals("\"17\"", headers.get("ETag"));
+        assertEquals("Nothing should be written for a CRL that the client has.", 0, out.size());
+        assertTrue("The CRL stream should be closed.", crl.closed);
+    }
+
+    @Test
+    public void missingCrlNumberIsNotFoundEvenIfETagMatches() throws Exception {
+        expect(crlCache.findStreamBySubjectKeyIdentifier(anyObject(), eq(CertificateConstants.NO_CRL_PARTITION), eq(17))).andReturn(null);
+        replay(crlCache);
+        final HttpServletResponse resp = createMock(HttpServletResponse.class);
+        resp.sendError(eq(HttpServletResponse.SC_NO_CONTENT), anyString());
+        expectLastCall();
+        replay(resp);
+
+        servlet.sKIDHash(HASH, resp, request("17", "*", -1));
+
+        verify(crlCache, resp);
+    }
+
+    @Test
+    public void crlNumberIsReturnedWhenETagDiffers() throws Exception {
+        expect(crlCache.findStreamByIssuerDN(anyObject(), eq(CertificateConstants.NO_CRL_PARTITION), eq(17))).andReturn(new TrackingInputStream(CRL));
+        replay(crlCache);
+        final Map<String, String> headers = new HashMap<>();
+
+        servlet.iHash(HASH, response(headers, -1), request("17", "\"16\"", -1));
+
+        verify(crlCache);
+        assertEquals("\"17\"", headers.get("ETag"));
+        assertArrayEquals(CRL, out.toByteArray());
+    }
+
+    @Test
+    public void latestCrlIsNotModifiedWhenETagMatches() throws Exception {
+        expect(crlCache.findByIssuerDN(anyObject(), eq(CertificateConstants.NO_CRL_PARTITION), eq(false), eq(-1)))
+                .andReturn(cachedCrl(17, new Date(), new Date(System.currentTimeMillis() + 3600000L)));
+        replay(crlCache);
+        final Map<String, String> headers = new HashMap<>();
+        final HttpServletResponse resp = response(headers, HttpServletResponse.SC_NOT_MODIFIED);
+
+        servlet.iHash(HASH, resp, request(null, "\"17\"", -1));
+
+        verify(crlCache, resp);
+        assertEquals("The caching headers should be sent with the 304 response.", "\"17\"", headers.get("ETag"));
+        assertEquals(0, out.size());
+    }
+
+    @Test
+    public void latestCrlIsNotModifiedSinceThisUpdate() throws Exception {
+        final Date thisUpdate = new Date(1700000000123L);
+        expect(crlCache.findByIssuerDN(anyObject(), eq(CertificateConstants.NO_CRL_PARTITION), eq(false), eq(-1)))
+                .andReturn(cachedCrl(17, thisUpdate, null));
+        replay(crlCache);
+        final HttpServletResponse resp = response(new HashMap<>(), HttpServletResponse.SC_NOT_MODIFIED);
+
+        // HTTP dates are in whole seconds
+        servlet.iHash(HASH, resp, request(null, null, 1700000000000L));
+
+        verify(crlCache, resp);
+        assertEquals(0, out.size());
+    }
+
+    @Test
+    public void newerLatestCrlIsReturned() throws Exception {
+        expect(crlCache.findByIssuerDN(anyObject(), eq(CertificateConstants.NO_CRL_PARTITION), eq(false), eq(-1)))
+                .andReturn(cachedCrl(18, new Date(1700000000123L), null));
+        replay(crlCache);
+        final Map<String, String> headers = new HashMap<>();
+
+        servlet.iHash(HASH, response(headers, -1), request(null, "\"17\"", 1700000000000L));
+
+        verify(crlCache);
+        assertEquals("\"18\"", headers.get("ETag"));
+        assertArrayEquals(CRL, out.toByteArray());
+    }
+
+    private static HttpServletRequest request(final String crlNumber, final String ifNoneMatch, final long ifModifiedSince) {
+        final HttpServletRequest req = createNiceMock(HttpServletRequest.class);
+        expect(req.getParameter("crlnumber")).andStubReturn(crlNumber);
+        expect(req.getParameter("partition")).andStubReturn(null);
+        expect(req.getParameterMap()).andStubReturn(new HashMap<>());
+        expect(req.getHeader("If-None-Match")).andStubReturn(ifNoneMatch);
+        expect(req.getDateHeader("If-Modified-Since")).andStubReturn(ifModifiedSince);
+        replay(req);
+        return req;
+    }
+
+    /**
+     * @param headers the headers that are set on the response
+     * @param expectedStatus the status that must be set, or -1 if none is expected
+     */
+    private HttpServletResponse response(final Map<String, String> headers, final int expectedStatus) throws Exception {
+        final HttpServletResponse resp = createNiceMock(HttpServletResponse.class);
+        resp.setHeader(anyString(), anyString());
+        expectLastCall().andStubAnswer(() -> {
+            final Object[] arguments = getCurrentArguments();
+            headers.put((String) arguments[0], (String) arguments[1]);
+            return null;
+        });
+        if (expectedStatus != -1) {
+            resp.setStatus(expectedStatus);
+            expectLastCall();
+        }
+        resp.setStatus(anyInt());
+        expectLastCall().andStubThrow(new AssertionError("Unexpected status"));
+        expect(resp.getOutputStream()).andStubReturn(out);
+        replay(resp);
+        return resp;
+    }
+
+    private static CachedCrl cachedCrl(final int crlNumber, final Date thisUpdate, final Date nextUpdate) throws ReflectiveOperationException {
+        final Constructor<CachedCrl> constructor = CachedCrl.class.getDeclaredConstructor(byte[].class, int.class, Date.class, Date.class, long.class);
+        constructor.setAccessible(true);
+        return constructor.newInstance(CRL, crlNumber, thisUpdate, nextUpdate, Long.MAX_VALUE);
+    }
+
+    /** CRL read from the database, which remembers if it was closed */
+    private static final class TrackingInputStream extends ByteArrayInputStream {
+        private boolean closed;
+
+        private TrackingInputStream(final byte[] bytes) {
+            super(bytes);
+        }
+
+        @Override
+        public void close() {
+            closed = true;
+        }
+    }
+
+    /** Output stream of the mocked response, which keeps what is written */
+    private static final class CapturingOutputStream extends ServletOutputStream {
+        private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+
+        @Override
+        public boolean isReady() {
+            return true;
+        }
+
+        @Override
+        public void setWriteListener(final WriteListener writeListener) {
+        }
+
+        @Override
+        public void write(final int b) {
+            bytes.write(b);
+        }
+
+        private int size() {
+            return bytes.size();
+        }
+
+        private byte[] toByteArray() {
+            return bytes.toByteArray();
+        }
+    }
+}
@@ -13,72 +13,124 @@
 
 package org.ejbca.core.protocol.crlstore;
 
+import java.io.InputStream;
 import java.security.cert.X509Certificate;
-import java.util.HashMap;
+import java.util.Date;
 import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
 
+import org.apache.commons.lang.ArrayUtils;
 import org.apache.log4j.Logger;
 import org.cesecore.certificates.ca.internal.CaCertificateCache;
 import org.cesecore.certificates.certificate.HashID;
 import org.cesecore.certificates.crl.CRLInfo;
+import org.cesecore.certificates.crl.CrlStoreNotifier;
 import org.cesecore.certificates.crl.CrlStoreSessionLocal;
+import org.ejbca.config.VAConfiguration;
 
 import com.keyfactor.util.CertTools;
 
 /**
- * An implementation of this is managing a cache of CRLs. The implementation should be optimized for quick lookups of CRLs that the 
+ * An implementation of this is managing a cache of CRLs. The implementation should be optimized for quick lookups of CRLs that the
  * VA responder needs to fetch.
+ * <p>
+ * The latest CRL of each CA, CRL partition and delta/full is cached. A cache hit takes no lock and makes no database query. A cached CRL
+ * is checked against the database when {@link VAConfiguration#getCrlStoreCacheRefreshTime()} has passed, or at once when a CRL is
+ * stored on this node. Only one thread checks an entry at a time, while the other threads are served the cached CRL.
  *
  */
 public class CRLCache {
 	private static final Logger log = Logger.getLogger(CRLCache.class);
-	
+
     private static CRLCache instance = null;
     private static final Lock lock = new ReentrantLock();
-	
+
 	private final CrlStoreSessionLocal crlStoreSession;
 	private final CaCertificateCache certCache;
-	private final Map<Integer, CRLEntity> crls = new HashMap<>();
-	private final Map<Integer, CRLEntity> deltaCrls = new HashMap<>();
-	private class CRLEntity {
-		final CRLInfo crlInfo;
-		final byte[] encoded;
-		/**
-		 * @param crlInfo
-		 * @param encoded
-		 */
-		CRLEntity(CRLInfo crlInfo, byte[] encoded) {
-			super();
-			this.crlInfo = crlInfo;
-			this.encoded = encoded;
+	private final Map<CacheKey, CachedCrl> crls = new ConcurrentHashMap<>();
+	/** Held while an entry is loaded or refreshed from the database */
+	private final Map<CacheKey, Lock> refreshLocks = new ConcurrentHashMap<>();
+	/** The subject DNs of the CA certificates, to avoid parsing the DN on every request */
+	private final Map<X509Certificate, String> issuerDns = new ConcurrentHashMap<>();
+
+	/** Identifies the latest CRL of a CA, CRL partition and delta/full. */
+	private static final class CacheKey {
+		private final String issuerDn;
+		private final int crlPartitionIndex;
+		private final boolean delta;
+
+		private CacheKey(final String issuerDn, final int crlPartitionIndex, final boolean delta) {
+			this.issuerDn = issuerDn;
+			this.crlPartitionIndex = crlPartitionIndex;
+			this.delta = delta;
 		}
 
 		@Override
-		public boolean equals(Object o) {
-			if (o == this)
+		public boolean equals(final Object o) {
+			if (o == this) {
 				return true;
-			if (!(o instanceof CRLEntity)) {
+			}
+			if (!(o instanceof CacheKey)) {
 				return false;
 			}
-			CRLEntity crlEntity = (CRLEntity) o;
-			return Objects.equals(crlInfo.getSubjectDN(), crlEntity.crlInfo.getSubjectDN()) && crlInfo.getCrlPartitionIndex() == crlEntity.crlInfo.getCrlPartitionIndex();
+			final CacheKey cacheKey = (CacheKey) o;
+			return issuerDn.equals(cacheKey.issuerDn) && crlPartitionIndex == cacheKey.crlPartitionIndex && delta == cacheKey.delta;
 		}
 
 		@Override
 		public int hashCode() {
-			// Ignore CRL number. Always overwrite cache with latest CRL for the partition.
-			return Objects.hash(crlInfo.getSubjectDN(), crlInfo.getCrlPartitionIndex());
+			return Objects.hash(issuerDn, crlPartitionIndex, delta);
+		}
+	}
+
+	/** An encoded CRL and the information needed for the HTTP caching headers. Immutable, so the same instance is served to all threads. */
+	public static final class CachedCrl {
+		private final byte[] encoded;
+		private final int crlNumber;
+		private final Date thisUpdate;
+		private final Date nextUpdate;
+		private final long refreshTime;
+
+		private CachedCrl(final byte[] encoded, final int crlNumber, final Date thisUpdate, final Date nextUpdate, final long refreshTime) {
+			this.encoded = encoded;
+			this.crlNumber = crlNumber;
+			this.thisUpdate = thisUpdate;
+			this.nextUpdate = nextUpdate;
+			this.refreshTime = refreshTime;
 		}
 
+		/** @return the DER encoded CRL. Must not be modified. */
+		public byte[] getEncoded() {
+			return encoded;
+		}
+
+		/** @return the CRL number */
+		public int getCrlNumber() {
+			return crlNumber;
+		}
+
+		/** @return the thisUpdate time of the CRL, or null if it's unknown */
+		public Date getThisUpdate() {
+			return thisUpdate;
+		}
+
+		/** @return the nextUpdate time of the CRL, or null if it's unknown */
+		public Date getNextUpdate() {
+			return nextUpdate;
+		}
+
+		private boolean isStale(final long now) {
+			return now >= refreshTime;
+		}
+
+		/** @return the same CRL, to be checked against the database again after the refresh time */
+		private CachedCrl withRefreshTime(final long refreshTime) {
+			return new CachedCrl(encoded, crlNumber, thisUpdate, nextUpdate, refreshTime);
+		}
 	}
-	/** We need an object to synchronize around when rebuilding and reading the cache. When rebuilding the cache no thread
-	 * can be allowed to read the cache, since the cache will be in an inconsistent state. In the normal case we want to use
-	 * as fast objects as possible (HashMap) for reading fast.
-	 */
-	private final Lock rebuildlock = new ReentrantLock();
 
 	 /**
      * @return  {@link CRLCache} for the CA.
@@ -97,7 +149,7 @@ public class CRLCache {
              lock.unlock();
          }
      }
-	
+
 	/**
 	 * @param crlSession reference to CRLStoreSession
 	 * @param certStore references to needed CA certificates.
@@ -106,15 +158,18 @@ public class CRLCache {
 		super();
 		this.crlStoreSession = crlStoreSession;
 		this.certCache = certCache;
+		// Make a newly stored CRL be checked for on the next request
+		CrlStoreNotifier.INSTANCE.addListener((issuerDn, crlPartitionIndex, deltaCrl) ->
+				crls.computeIfPresent(new CacheKey(issuerDn, crlPartitionIndex, deltaCrl), (key, cachedCrl) -> cachedCrl.withRefreshTime(0)));
 	}
 
 	/**
      * @param id The ID of the subject key identifier.
      * @param isDelta true if delta CRL
      * @param crlNumber specific crlNumber of the CRL to be retrieved, when not the latest, or -1 for the latest
-     * @return CRL or null if the CRL does not exist in the cache.
+     * @return CRL or null if the CRL does not exist.
      */
-	public byte[] findBySubjectKeyIdentifier(HashID id, int crlPartitionIndex, boolean isDelta, int crlNumber) {
+	public CachedCrl findBySubjectKeyIdentifier(HashID id, int crlPartitionIndex, boolean isDelta, int crlNumber) {
 		return findCRL(certCache.findBySubjectKeyIdentifier(id), crlPartitionIndex, isDelta, crlNumber);
 	}
 
@@ -122,58 +177,109 @@ public class CRLCache {
      * @param id The ID of the issuer DN.
      * @param isDelta true if delta CRL
      * @param crlNumber specific crlNumber of the CRL to be retrieved, when not the latest, or -1 for the latest
-     * @return CRL or null if the CRL does not exist in the cache.
+     * @return CRL or null if the CRL does not exist.
      */
-	public byte[] findByIssuerDN(HashID id, int crlPartitionIndex, boolean isDelta, int crlNumber) {
+	public CachedCrl findByIssuerDN(HashID id, int crlPartitionIndex, boolean isDelta, int crlNumber) {
 		return findCRL(certCache.findLatestBySubjectDN(id), crlPartitionIndex, isDelta, crlNumber);
 	}
 
-	private byte[] findCRL(final X509Certificate caCert, final int crlPartitionIndex, final boolean isDelta, final int crlNumber) {
+	/**
+	 * @param id The ID of the subject key identifier.
+	 * @param crlNumber specific crlNumber of the CRL to be retrieved
+	 * @return a stream of the DER encoded CRL, or null if the CRL does not exist.
+	 */
+	public InputStream findStreamBySubjectKeyIdentifier(HashID id, int crlPartitionIndex, int crlNumber) {
+		return findCRLStream(certCache.findBySubjectKeyIdentifier(id), crlPartitionIndex, crlNumber);
+	}
+
+	/**
+	 * @param id The ID of the issuer DN.
+	 * @param crlNumber specific crlNumber of the CRL to be retrieved
+	 * @return a stream of the DER encoded CRL, or null if the CRL does not exist.
+	 */
+	public InputStream findStreamByIssuerDN(HashID id, int crlPartitionIndex, int crlNumber) {
+		return findCRLStream(certCache.findLatestBySubjectDN(id), crlPartitionIndex, crlNumber);
+	}
+
+	/** Old CRLs are not cached, but streamed from the database, so that a compressed CRL is never held in memory decompressed. */
+	private InputStream findCRLStream(final X509Certificate caCert, final int crlPartitionIndex, final int crlNumber) {
 		if ( caCert==null ) {
 			if (log.isDebugEnabled()) {
 				log.debug("No CA certificate, returning null.");
 			}
-			return new byte[0];
+			return null;
 		}
-		final String issuerDN = CertTools.getSubjectDN(caCert);
-		this.rebuildlock.lock();
-		try {
-			final CRLInfo crlInfo = this.crlStoreSession.getLastCRLInfo(issuerDN, crlPartitionIndex, isDelta);
-			if ( crlInfo==null ) {
-				if (log.isDebugEnabled()) {
-					log.debug("No CRL found with issuerDN '"+issuerDN+"', returning null.");
-				}
-				return new byte[0];
+		if (log.isDebugEnabled()) {
+			log.debug("Getting CRL with CRL number "+crlNumber);
+		}
+		return this.crlStoreSession.getCRLStream(issuerDns.computeIfAbsent(caCert, CertTools::getSubjectDN), crlPartitionIndex, crlNumber);
+	}
+
+	private CachedCrl findCRL(final X509Certificate caCert, final int crlPartitionIndex, final boolean isDelta, final int crlNumber) {
+		if ( caCert==null ) {
+			if (log.isDebugEnabled()) {
+				log.debug("No CA certificate, returning null.");
 			}
-			final Integer cacheId = new CRLEntity(crlInfo, null).hashCode();
-            final Map<Integer, CRLEntity> usedCrls = isDelta ? this.deltaCrls : this.crls;
-			// If we have not specified a crlNumber we can try to find the latest CRL in the cache
-			if (crlNumber == -1) {
-			    final CRLEntity cachedCRL = usedCrls.get(cacheId);
-			    if ( cachedCRL!=null && !crlInfo.getCreateDate().after(cachedCRL.crlInfo.getCreateDate()) ) {
-			        if (log.isDebugEnabled()) {
-			            log.debug("Retrieved CRL (from cache) with issuerDN '"+issuerDN+"', with CRL number "+crlInfo.getLastCRLNumber() + " and partition " + crlInfo.getCrlPartitionIndex());
-			        }
-			        return cachedCRL.encoded;
-			    }
+			return null;
+		}
+		final String issuerDN = issuerDns.computeIfAbsent(caCert, CertTools::getSubjectDN);
+		if (crlNumber > -1) {
+			// Only latest CRLs are cached, these should be the ones accessed regularly, and we don't want to fill the cache with old CRLs
+			if (log.isDebugEnabled()) {
+				log.debug("Getting CRL with CRL number "+crlNumber);
 			}
-			final CRLEntity entry;
-			if (crlNumber > -1) {
-			    if (log.isDebugEnabled()) {
-			        log.debug("Getting CRL with CRL number "+crlNumber);
-			    }
-			    entry = new CRLEntity( crlInfo, this.crlStoreSession.getCRL(issuerDN, crlPartitionIndex, crlNumber) );
+			final byte[] encoded = this.crlStoreSession.getCRL(issuerDN, crlPartitionIndex, crlNumber);
+			return ArrayUtils.isEmpty(encoded) ? null : new CachedCrl(encoded, crlNumber, null, null, 0);
+		}
+		final CacheKey cacheKey = new CacheKey(issuerDN, crlPartitionIndex, isDelta);
+		CachedCrl cachedCrl = crls.get(cacheKey);
+		if (cachedCrl != null && !cachedCrl.isStale(System.currentTimeMillis())) {
+			return cachedCrl;
+		}
+		final Lock refreshLock = refreshLocks.computeIfAbsent(cacheKey, key -> new ReentrantLock());
+		if (cachedCrl == null) {
+			refreshLock.lock();
+		} else if (!refreshLock.tryLock()) {
+			// Another thread is checking for a newer CRL, serve the one we have meanwhile
+			return cachedCrl;
+		}
+		try {
+			final long now = System.currentTimeMillis();
+			cachedCrl = crls.get(cacheKey);
+			if (cachedCrl != null && !cachedCrl.isStale(now)) {
+				return cachedCrl;
+			}
+			final CachedCrl refreshedCrl = loadCRL(cacheKey, cachedCrl, now + VAConfiguration.getCrlStoreCacheRefreshTime());
+			if (refreshedCrl == null) {
+				crls.remove(cacheKey);
 			} else {
-			    entry = new CRLEntity( crlInfo, this.crlStoreSession.getLastCRL(issuerDN, crlPartitionIndex, isDelta) );
-			    // Only cache latest CRLs, these should be the ones accessed regularly, and we don't want to fill the cache with old CRLs
-	            usedCrls.put(cacheId, entry);
+				crls.put(cacheKey, refreshedCrl);
 			}
+			return refreshedCrl;
+		} finally {
+			refreshLock.unlock();
+		}
+	}
+
+	/** @return the latest CRL, which is the cached one if the CRL number is unchanged, or null if there is no CRL */
+	private CachedCrl loadCRL(final CacheKey cacheKey, final CachedCrl cachedCrl, final long refreshTime) {
+		final CRLInfo crlInfo = this.crlStoreSession.getLastCRLInfoLightWeight(cacheKey.issuerDn, cacheKey.crlPartitionIndex, cacheKey.delta);
+		if ( crlInfo==null ) {
 			if (log.isDebugEnabled()) {
-				log.debug("Retrieved CRL (not from cache) with issuerDN '"+issuerDN+"', with CRL number "+crlInfo.getLastCRLNumber() + " and partition " + crlInfo.getCrlPartitionIndex());
+				log.debug("No CRL found with issuerDN '"+cacheKey.issuerDn+"', returning null.");
 			}
-			return entry.encoded;
-		} finally {
-			this.rebuildlock.unlock();
+			return null;
+		}
+		if (cachedCrl != null && cachedCrl.getCrlNumber() == crlInfo.getLastCRLNumber()) {
+			return cachedCrl.withRefreshTime(refreshTime);
+		}
+		final byte[] encoded = this.crlStoreSession.getCRL(cacheKey.issuerDn, cacheKey.crlPartitionIndex, crlInfo.getLastCRLNumber());
+		if (ArrayUtils.isEmpty(encoded)) {
+			return null;
+		}
+		if (log.isDebugEnabled()) {
+			log.debug("Retrieved CRL (not from cache) with issuerDN '"+cacheKey.issuerDn+"', with CRL number "+crlInfo.getLastCRLNumber() + " and partition " + crlInfo.getCrlPartitionIndex());
 		}
+		return new CachedCrl(encoded, crlInfo.getLastCRLNumber(), crlInfo.getCreateDate(), crlInfo.getExpireDate(), refreshTime);
 	}
 }
@@ -14,6 +14,7 @@
 package org.ejbca.ui.web.protocol;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.PrintWriter;
 import java.security.cert.X509Certificate;
 
@@ -23,13 +24,13 @@ import javax.servlet.ServletException;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
-import org.apache.commons.lang.ArrayUtils;
 import org.apache.commons.lang.StringUtils;
 import org.apache.log4j.Logger;
 import org.cesecore.certificates.certificate.CertificateConstants;
 import org.cesecore.certificates.certificate.HashID;
 import org.cesecore.certificates.crl.CrlStoreSessionLocal;
 import org.ejbca.core.protocol.crlstore.CRLCache;
+import org.ejbca.core.protocol.crlstore.CRLCache.CachedCrl;
 import org.ejbca.util.HTMLTools;
 
 import com.keyfactor.util.StringTools;
@@ -72,8 +73,14 @@ public class CRLStoreServlet extends StoreServletBase {
 	@Override
 	public void iHash(String iHash, HttpServletResponse resp, HttpServletRequest req) throws IOException, ServletException {
 	    final int crlPartitionIndex = getCrlPartitionIndex(req);
-	    final byte[] crlBytes = crlCache.findByIssuerDN(HashID.getFromB64(iHash), crlPartitionIndex, isDelta(req), getCrlNumber(req));
-		returnCrl(crlBytes, resp, iHash, crlPartitionIndex, isDelta(req));
+	    final int crlNumber = getCrlNumber(req);
+	    if (crlNumber > -1) {
+	        returnCrl(crlCache.findStreamByIssuerDN(HashID.getFromB64(iHash), crlPartitionIndex, crlNumber), crlNumber, req, resp, iHash, crlPartitionIndex,
+	                isDelta(req));
+	        return;
+	    }
+	    final CachedCrl crl = crlCache.findByIssuerDN(HashID.getFromB64(iHash), crlPartitionIndex, isDelta(req), crlNumber);
+		returnCrl(crl, req, resp, iHash, crlPartitionIndex, isDelta(req));
 	}
 
 	@Override
@@ -84,8 +91,14 @@ public class CRLStoreServlet extends StoreServletBase {
 	@Override
 	public void sKIDHash(String sKIDHash, HttpServletResponse resp, HttpServletRequest req, String name) throws IOException, ServletException {
 	    final int crlPartitionIndex = getCrlPartitionIndex(req);
-	    final byte[] crlBytes = crlCache.findBySubjectKeyIdentifier(HashID.getFromB64(sKIDHash), crlPartitionIndex, isDelta(req), getCrlNumber(req));
-		returnCrl(crlBytes, resp, name, crlPartitionIndex, isDelta(req));
+	    final int crlNumber = getCrlNumber(req);
+	    if (crlNumber > -1) {
+	        returnCrl(crlCache.findStreamBySubjectKeyIdentifier(HashID.getFromB64(sKIDHash), crlPartitionIndex, crlNumber), crlNumber, req, resp, name,
+	                crlPartitionIndex, isDelta(req));
+	        return;
+	    }
+	    final CachedCrl crl = crlCache.findBySubjectKeyIdentifier(HashID.getFromB64(sKIDHash), crlPartitionIndex, isDelta(req), crlNumber);
+		returnCrl(crl, req, resp, name, crlPartitionIndex, isDelta(req));
 	}
 
 	@Override
@@ -123,21 +136,118 @@ public class CRLStoreServlet extends StoreServletBase {
         return CertificateConstants.NO_CRL_PARTITION;
     }
 
-	private void returnCrl(final byte[] crl, HttpServletResponse resp, String name, final int crlPartitionIndex, boolean isDelta) throws IOException {
-		if (ArrayUtils.isEmpty(crl)) {
-		    if (log.isDebugEnabled()) {
-		        log.debug("CRL was not found. Hash=" + name + ", DeltaCRL=" + isDelta + ", Partition=" + crlPartitionIndex);
-		    }
-			resp.sendError(HttpServletResponse.SC_NO_CONTENT, "No CRL with hash: "+HTMLTools.htmlescape(name));
+	/** @return a strong entity tag for a CRL. The CRL number identifies the CRL among the ones of the CA, CRL partition and delta/full in the URL. */
+	static String getETag(final int crlNumber) {
+	    return "\"" + crlNumber + "\"";
+	}
+
+	/**
+	 * Compares the entity tags in an If-None-Match header with the weak comparison of RFC 7232 section 2.3.2.
+	 *
+	 * @return true if the header is "*" or contains the entity tag
+	 */
+	static boolean matchesETag(final String ifNoneMatch, final String eTag) {
+	    if (ifNoneMatch == null) {
+	        return false;
+	    }
+	    for (String tag : ifNoneMatch.split(",")) {
+	        tag = tag.trim();
+	        if (tag.startsWith("W/")) {
+	            tag = tag.substring(2);
+	        }
+	        if (tag.equals("*") || tag.equals(eTag)) {
+	            return true;
+	        }
+	    }
+	    return false;
+	}
+
+	/** @return true if the client already has the latest CRL, according to the If-None-Match or, if it's missing, If-Modified-Since header */
+	private boolean isNotModified(final HttpServletRequest req, final CachedCrl crl) {
+	    final String ifNoneMatch = req.getHeader("If-None-Match");
+	    if (ifNoneMatch != null) {
+	        return matchesETag(ifNoneMatch, getETag(crl.getCrlNumber()));
+	    }
+	    if (crl.getThisUpdate() != null) {
+	        try {
+	            final long ifModifiedSince = req.getDateHeader("If-Modified-Since");
+	            // HTTP dates are in whole seconds
+	            return ifModifiedSince != -1 && crl.getThisUpdate().getTime() / 1000 <= ifModifiedSince / 1000;
+	        } catch (IllegalArgumentException e) {
+	            // An invalid date is ignored, see RFC 7232 section 3.3
+	        }
+	    }
+	    return false;
+	}
+
+	/**
+	 * Sets the caching headers of a CRL. The CRL may be cached until its nextUpdate, after which a new CRL should have been issued, and
+	 * the entity tag and last modification time let clients and proxies revalidate it cheaply.
+	 */
+	private void setCacheHeaders(final HttpServletResponse resp, final CachedCrl crl) {
+	    resp.setHeader("ETag", getETag(crl.getCrlNumber()));
+	    if (crl.getThisUpdate() != null) {
+	        resp.setDateHeader("Last-Modified", crl.getThisUpdate().getTime());
+	    }
+	    if (crl.getNextUpdate() != null) {
+	        final long maxAge = Math.max(0, (crl.getNextUpdate().getTime() - System.currentTimeMillis()) / 1000);
+	        resp.setHeader("Cache-Control", "public, max-age=" + maxAge + ", no-transform");
+	        resp.setDateHeader("Expires", crl.getNextUpdate().getTime());
+	    }
+	}
+
+	private void returnCrl(final CachedCrl crl, final HttpServletRequest req, final HttpServletResponse resp, String name, final int crlPartitionIndex,
+	        boolean isDelta) throws IOException {
+		if (crl == null) {
+		    sendNotFound(resp, name, crlPartitionIndex, isDelta);
 			return;
 		}
-		resp.setContentType("application/pkix-crl");
-		resp.setHeader("Content-disposition", "attachment; filename=\"" + 
-		        (isDelta?"delta":"") +
-		        StringTools.stripFilename(name) +
-		        (crlPartitionIndex != CertificateConstants.NO_CRL_PARTITION ? "_partition" + crlPartitionIndex : "") +
-		        ".crl\"");
-		resp.setContentLength(crl.length);
-		resp.getOutputStream().write(crl);
+		setCacheHeaders(resp, crl);
+		if (isNotModified(req, crl)) {
+		    resp.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+		    return;
+		}
+		setContentHeaders(resp, name, crlPartitionIndex, isDelta);
+		// The cached encoding is written as it is, without copying it for each request
+		final byte[] encoded = crl.getEncoded();
+		resp.setContentLength(encoded.length);
+		resp.getOutputStream().write(encoded);
+	}
+
+	/**
+	 * Streams a CRL with a specific CRL number, which is not cached, to the client as it's read from the database. A CRL with a given CRL
+	 * number never changes, so a client that has it is told so by its entity tag, once the CRL is known to exist.
+	 */
+	private void returnCrl(final InputStream crl, final int crlNumber, final HttpServletRequest req, final HttpServletResponse resp, String name,
+	        final int crlPartitionIndex, boolean isDelta) throws IOException {
+	    if (crl == null) {
+	        sendNotFound(resp, name, crlPartitionIndex, isDelta);
+	        return;
+	    }
+	    try (final InputStream in = crl) {
+	        resp.setHeader("ETag", getETag(crlNumber));
+	        if (matchesETag(req.getHeader("If-None-Match"), getETag(crlNumber))) {
+	            resp.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+	            return;
+	        }
+	        setContentHeaders(resp, name, crlPartitionIndex, isDelta);
+	        in.transferTo(resp.getOutputStream());
+	    }
+	}
+
+	private void sendNotFound(final HttpServletResponse resp, final String name, final int crlPartitionIndex, final boolean isDelta) throws IOException {
+	    if (log.isDebugEnabled()) {
+	        log.debug("CRL was not found. Hash=" + name + ", DeltaCRL=" + isDelta + ", Partition=" + crlPartitionIndex);
+	    }
+	    resp.sendError(HttpServletResponse.SC_NO_CONTENT, "No CRL with hash: "+HTMLTools.htmlescape(name));
+	}
+
+	private void setContentHeaders(final HttpServletResponse resp, final String name, final int crlPartitionIndex, final boolean isDelta) {
+	    resp.setContentType("application/pkix-crl");
+	    resp.setHeader("Content-disposition", "attachment; filename=\"" +
+	            (isDelta?"delta":"") +
+	            StringTools.stripFilename(name) +
+	            (crlPartitionIndex != CertificateConstants.NO_CRL_PARTITION ? "_partition" + crlPartitionIndex : "") +
+	            ".crl\"");
 	}
 }
@@ -0,0 +1,122 @@
+/*************************************************************************
+ *                                                                       *
+ *  EJBCA Community: The OpenSource Certificate Authority                *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.ejbca.core.model.services.workers;
+
+import static org.easymock.EasyMock.anyObject;
+import static org.easymock.EasyMock.createMock;
+import static org.easymock.EasyMock.eq;
+import static org.easymock.EasyMock.expect;
+import static org.easymock.EasyMock.replay;
+import static org.easymock.EasyMock.verify;
+import static org.junit.Assert.assertEquals;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+
+import org.cesecore.authentication.tokens.AlwaysAllowLocalAuthenticationToken;
+import org.cesecore.authentication.tokens.AuthenticationToken;
+import org.cesecore.authentication.tokens.UsernamePrincipal;
+import org.cesecore.certificates.ca.CADoesntExistsException;
+import org.cesecore.certificates.ca.CaSessionLocal;
+import org.ejbca.core.ejb.ocsp.OcspResponseUpdateResult;
+import org.ejbca.core.ejb.ocsp.OcspResponseUpdaterSessionLocal;
+import org.ejbca.core.model.services.IWorker;
+import org.ejbca.core.model.services.ServiceConfiguration;
+import org.ejbca.core.model.services.ServiceExecutionResult;
+import org.ejbca.core.model.services.ServiceExecutionResult.Result;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Unit test of {@link OcspResponseUpdaterWorker}
+ */
+public class OcspResponseUpdaterWorkerUnitTest {
+
+    private static final AuthenticationToken admin = new AlwaysAllowLocalAuthenticationToken(new UsernamePrincipal("OcspResponseUpdaterWorkerUnitTest"));
+    private static final long ONE_HOUR = 3600000L;
+    // Not 1, which is the ID that selects all CAs
+    private static final int CA_ID_1 = 11;
+    private static final int CA_ID_2 = 12;
+
+    private CaSessionLocal caSession;
+    private OcspResponseUpdaterSessionLocal ocspResponseUpdaterSession;
+    private Map<Class<?>, Object> ejbs;
+
+    @Before
+    public void setUp() {
+        caSession = createMock(CaSessionLocal.class);
+        ocspResponseUpdaterSession = createMock(OcspResponseUpdaterSessionLocal.class);
+        ejbs = new HashMap<>();
+        ejbs.put(CaSessionLocal.class, caSession);
+        ejbs.put(OcspResponseUpdaterSessionLocal.class, ocspResponseUpdaterSession);
+        final Map<Integer, String> caNames = new HashMap<>();
+        caNames.put(CA_ID_1, "CA1");
+        caNames.put(CA_ID_2, "CA2");
+        expect(caSession.getCAIdToNameMap()).andReturn(caNames);
+    }
+
+    @Test
+    public void shouldPageThroughEachCaUntilDone() throws Exception {
+        expect(ocspResponseUpdaterSession.updateOcspResponses(admin, CA_ID_1, ONE_HOUR, "", 2)).andReturn(new OcspResponseUpdateResult(2, 2, 0, "fp2", false));
+        expect(ocspResponseUpdaterSession.updateOcspResponses(admin, CA_ID_1, ONE_HOUR, "fp2", 2)).andReturn(new OcspResponseUpdateResult(1, 0, 0, "fp3", true));
+        expect(ocspResponseUpdaterSession.updateOcspResponses(admin, CA_ID_2, ONE_HOUR, "", 2)).andReturn(new OcspResponseUpdateResult(0, 0, 0, "", true));
+        replay(caSession, ocspResponseUpdaterSession);
+
+        final ServiceExecutionResult result = createWorker(CA_ID_1 + ";" + CA_ID_2, "2").work(ejbs);
+
+        verify(caSession, ocspResponseUpdaterSession);
+        assertEquals(Result.SUCCESS, result.getResult());
+    }
+
+    @Test
+    public void shouldReportNoActionWhenNothingWasRenewed() throws Exception {
+        expect(ocspResponseUpdaterSession.updateOcspResponses(admin, CA_ID_1, ONE_HOUR, "", OcspResponseUpdaterWorker.DEFAULT_BATCH_SIZE))
+                .andReturn(new OcspResponseUpdateResult(10, 0, 0, "fp10", true));
+        replay(caSession, ocspResponseUpdaterSession);
+
+        final ServiceExecutionResult result = createWorker(String.valueOf(CA_ID_1), null).work(ejbs);
+
+        verify(caSession, ocspResponseUpdaterSession);
+        assertEquals(Result.NO_ACTION, result.getResult());
+    }
+
+    @Test
+    public void shouldReportFailuresAndContinueWithNextCa() throws Exception {
+        expect(ocspResponseUpdaterSession.updateOcspResponses(eq(admin), eq(CA_ID_1), eq(ONE_HOUR), anyObject(), eq(5)))
+                .andThrow(new CADoesntExistsException("CA was removed"));
+        expect(ocspResponseUpdaterSession.updateOcspResponses(admin, CA_ID_2, ONE_HOUR, "", 5)).andReturn(new OcspResponseUpdateResult(3, 2, 1, "fp3", true));
+        replay(caSession, ocspResponseUpdaterSession);
+
+        final ServiceExecutionResult result = createWorker(CA_ID_1 + ";" + CA_ID_2, "5").work(ejbs);
+
+        verify(caSession, ocspResponseUpdaterSession);
+        assertEquals(Result.FAILURE, result.getResult());
+    }
+
+    private static OcspResponseUpdaterWorker createWorker(final String caIds, final String batchSize) {
+        final Properties properties = new Properties();
+        properties.setProperty(IWorker.PROP_CAIDSTOCHECK, caIds);
+        properties.setProperty(IWorker.PROP_TIMEUNIT, IWorker.UNIT_HOURS);
+        properties.setProperty(IWorker.PROP_TIMEBEFOREEXPIRING, "1");
+        if (batchSize != null) {
+            properties.setProperty(OcspResponseUpdaterWorker.PROP_BATCH_SIZE, batchSize);
+        }
+        final ServiceConfiguration serviceConfiguration = new ServiceConfiguration();
+        serviceConfiguration.setWorkerProperties(properties);
+        final OcspResponseUpdaterWorker worker = new OcspResponseUpdaterWorker();
+        worker.init(admin, serviceConfiguration, "OcspResponseUpdaterWorkerUnitTest", 0, 0);
+        return worker;
+    }
+}
@@ -13,6 +13,7 @@
 
 package org.ejbca.config;
 
+import org.apache.log4j.Logger;
 import org.cesecore.config.ConfigurationHolder;
 
 /**
@@ -21,7 +22,11 @@ import org.cesecore.config.ConfigurationHolder;
  * @version $Id$
  */
 public class VAConfiguration {
+	private static final Logger log = Logger.getLogger(VAConfiguration.class);
+
 	private final static String S_HASH_ALIAS_PREFIX = "va.sKIDHash.alias.";
+	private final static String CRLSTORE_CACHE_REFRESH_TIME = "crlstore.cache.refreshtime";
+	private final static long CRLSTORE_CACHE_REFRESH_TIME_DEFAULT = 5000;
 
 	public static String sKIDHashFromName(String name) {
 		return ConfigurationHolder.getString(S_HASH_ALIAS_PREFIX+name);
@@ -31,4 +36,18 @@ public class VAConfiguration {
 		return ConfigurationHolder.updateConfiguration(S_HASH_ALIAS_PREFIX+name, hash);
 	}
 
+	/** @return the time in milliseconds that the CRL Store serves a cached CRL before checking the database for a newer one. 0 checks on every request. */
+	public static long getCrlStoreCacheRefreshTime() {
+		final String value = ConfigurationHolder.getString(CRLSTORE_CACHE_REFRESH_TIME);
+		if (value == null) {
+			return CRLSTORE_CACHE_REFRESH_TIME_DEFAULT;
+		}
+		try {
+			return Math.max(0, Long.parseLong(value.trim()));
+		} catch (NumberFormatException e) {
+			log.warn("Invalid value '" + value + "' of " + CRLSTORE_CACHE_REFRESH_TIME + ", using the default " + CRLSTORE_CACHE_REFRESH_TIME_DEFAULT + ".");
+			return CRLSTORE_CACHE_REFRESH_TIME_DEFAULT;
+		}
+	}
+
 }
@@ -12,9 +12,13 @@
  *************************************************************************/
 package org.ejbca.core.model.services.workers;
 
+import java.io.IOException;
+import java.io.InputStream;
 import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.SignatureException;
 import java.security.cert.CRLException;
-import java.security.cert.X509CRL;
 import java.security.cert.X509Certificate;
 import java.util.ArrayList;
 import java.util.Collection;
@@ -33,6 +37,7 @@ import org.cesecore.certificates.certificate.CertificateConstants;
 import org.cesecore.certificates.crl.CrlImportException;
 import org.cesecore.certificates.crl.CrlStoreException;
 import org.cesecore.certificates.crl.CrlStoreSessionLocal;
+import org.cesecore.certificates.crl.StreamingCrlParser;
 import org.cesecore.certificates.util.cert.CrlExtensions;
 import org.cesecore.util.NetworkTools;
 import org.cesecore.util.PropertyTools;
@@ -154,13 +159,13 @@ public class CRLDownloadWorker extends BaseWorker {
             final String issuerDn = CertTools.getSubjectDN(caCertificate);
             final boolean ignoreNextUpdate = PropertyTools.get(properties, PROP_IGNORE_NEXT_UPDATE, false);
             // Get last known CRL (if any) and check when the next update will be
-            final X509CRL lastFullCrl = getCRLFromBytes(crlStoreSession.getLastCRL(issuerDn, crlPartitionIndex, false));
-            final X509CRL newestFullCrl;
+            final StreamingCrlParser lastFullCrl = getCRLFromStream(crlStoreSession.getLastCRLStream(issuerDn, crlPartitionIndex, false));
+            final StreamingCrlParser newestFullCrl;
             if (!ignoreNextUpdate && lastFullCrl != null && now.before(lastFullCrl.getNextUpdate())) {
                 log.info("Next full CRL update for CA '" + caInfo.getName() + "' will be " + ValidityDate.formatAsISO8601(lastFullCrl.getNextUpdate(), null) + ". Skipping download.");
                 newestFullCrl = lastFullCrl;
             } else {
-                final X509CRL downloadedFullCrl = getAndProcessCrl(url, caCertificate, caInfo, importCrlSession, crlPartitionIndex);
+                final StreamingCrlParser downloadedFullCrl = getAndProcessCrl(url, caCertificate, caInfo, importCrlSession, crlPartitionIndex);
                 if (downloadedFullCrl == null) {
                     newestFullCrl = lastFullCrl;
                 } else {
@@ -168,10 +173,10 @@ public class CRLDownloadWorker extends BaseWorker {
                 }
             }
             if (newestFullCrl != null) {
-                final List<String> freshestCdps = CrlExtensions.extractFreshestCrlDistributionPoints(newestFullCrl);
+                final List<String> freshestCdps = CrlExtensions.extractFreshestCrlDistributionPoints(newestFullCrl.getExtensions());
                 if (!freshestCdps.isEmpty()) {
                     // Delta CRLs are used and we might already have a valid one stored
-                    X509CRL lastDeltaCrl = getCRLFromBytes(crlStoreSession.getLastCRL(issuerDn, crlPartitionIndex, true));
+                    StreamingCrlParser lastDeltaCrl = getCRLFromStream(crlStoreSession.getLastCRLStream(issuerDn, crlPartitionIndex, true));
                     if (lastDeltaCrl != null && lastDeltaCrl.getThisUpdate().before(newestFullCrl.getThisUpdate())) {
                         // The last known delta CRL info is already included in the latest full CRL, so treat the last delta as non-existent
                         lastDeltaCrl = null;
@@ -186,7 +191,7 @@ public class CRLDownloadWorker extends BaseWorker {
                                 log.info("Unusable Freshest CDP HTTP URL '" + freshestCdp + "' in CRL. Skipping download.");
                                 continue;
                             }
-                            final X509CRL newDeltaCrl = getAndProcessCrl(freshestCdpUrl, caCertificate, caInfo, importCrlSession, crlPartitionIndex);
+                            final StreamingCrlParser newDeltaCrl = getAndProcessCrl(freshestCdpUrl, caCertificate, caInfo, importCrlSession, crlPartitionIndex);
                             if (newDeltaCrl != null) {
                                 break;
                             }
@@ -203,36 +208,60 @@ public class CRLDownloadWorker extends BaseWorker {
         } 
     }
 
-    private X509CRL getCRLFromBytes(final byte[] crlBytes) throws CRLException {
-        if (crlBytes != null) {
-            return CertTools.getCRLfromByteArray(crlBytes);
+    /** @return the CRL, read without its entries, or null if there is no CRL */
+    private StreamingCrlParser getCRLFromStream(final InputStream crlStream) throws CRLException {
+        if (crlStream != null) {
+            try (final InputStream in = crlStream) {
+                return new StreamingCrlParser(in, null).parse();
+            } catch (IOException | SignatureException e) {
+                throw new CRLException(e.getMessage(), e);
+            }
         }
         return null;
     }
 
-    private X509CRL getAndProcessCrl(final URL cdpUrl, final X509Certificate caCertificate, final CAInfo caInfo,
+    /**
+     * Downloads the CRL to a temporary file and imports it from there, so that the CRL is never held in memory as a whole while it is processed.
+     *
+     * @return the downloaded CRL, read without its entries
+     */
+    private StreamingCrlParser getAndProcessCrl(final URL cdpUrl, final X509Certificate caCertificate, final CAInfo caInfo,
                                      final ImportCrlSessionLocal importCrlSession, final int crlPartitionIndex) throws CrlStoreException, CrlImportException, ServiceExecutionFailedException {
-        final int maxSize = PropertyTools.get(properties, PROP_MAX_DOWNLOAD_SIZE, DEFAULT_MAX_DOWNLOAD_SIZE);
-        X509CRL newCrl = null;
-        final byte[] crlBytesNew = NetworkTools.downloadDataFromUrl(cdpUrl, maxSize);
-        if (crlBytesNew == null) {
-            String msg = "Unable to download CRL for " + CertTools.getSubjectDN(caCertificate) + "  with url: " + cdpUrl;
-            log.warn(msg);
-            throw new ServiceExecutionFailedException(msg);
-        } else {
-            try {
-                newCrl = CertTools.getCRLfromByteArray(crlBytesNew);
-                importCrlSession.importCrl(admin, caInfo, crlBytesNew, crlPartitionIndex);
-            } catch (CRLException e) {
-                String msg = "Unable to decode downloaded CRL for '" + caInfo.getSubjectDN() + "'.";
-                log.warn(msg, e);
-                throw new ServiceExecutionFailedException(msg, e);
-            } catch (AuthorizationDeniedException e) {
-                log.error("Internal authentication token was deneied access to importing CRLs or revoking certificates.", e);
-                return null;
+        final long maxSize = PropertyTools.get(properties, PROP_MAX_DOWNLOAD_SIZE, DEFAULT_MAX_DOWNLOAD_SIZE);
+        Path crlFile = null;
+        try {
+            crlFile = Files.createTempFile("crldownload", ".crl");
+            if (!NetworkTools.downloadDataFromUrl(cdpUrl, maxSize, crlFile)) {
+                String msg = "Unable to download CRL for " + CertTools.getSubjectDN(caCertificate) + "  with url: " + cdpUrl;
+                log.warn(msg);
+                throw new ServiceExecutionFailedException(msg);
+            }
+            final StreamingCrlParser newCrl;
+            try (final InputStream in = Files.newInputStream(crlFile)) {
+                newCrl = new StreamingCrlParser(in, null).parse();
+            }
+            importCrlSession.importCrl(admin, caInfo, crlFile, crlPartitionIndex);
+            return newCrl;
+        } catch (CRLException | SignatureException e) {
+            String msg = "Unable to decode downloaded CRL for '" + caInfo.getSubjectDN() + "'.";
+            log.warn(msg, e);
+            throw new ServiceExecutionFailedException(msg, e);
+        } catch (AuthorizationDeniedException e) {
+            log.error("Internal authentication token was deneied access to importing CRLs or revoking certificates.", e);
+            return null;
+        } catch (IOException e) {
+            String msg = "Unable to store downloaded CRL for '" + caInfo.getSubjectDN() + "' in a temporary file.";
+            log.warn(msg, e);
+            throw new ServiceExecutionFailedException(msg, e);
+        } finally {
+            if (crlFile != null) {
+                try {
+                    Files.deleteIfExists(crlFile);
+                } catch (IOException e) {
+                    log.warn("Failed to delete temporary file " + crlFile + ": " + e.getMessage());
+                }
             }
         }
-        return newCrl;
     }
 
 
@@ -0,0 +1,112 @@
+/*************************************************************************
+ *                                                                       *
+ *  EJBCA Community: The OpenSource Certificate Authority                *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.ejbca.core.model.services.workers;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.log4j.Logger;
+import org.cesecore.authorization.AuthorizationDeniedException;
+import org.cesecore.certificates.ca.CADoesntExistsException;
+import org.cesecore.certificates.ca.CaSessionLocal;
+import org.cesecore.util.PropertyTools;
+import org.ejbca.core.ejb.ocsp.OcspResponseUpdateResult;
+import org.ejbca.core.ejb.ocsp.OcspResponseUpdaterSessionLocal;
+import org.ejbca.core.model.services.BaseWorker;
+import org.ejbca.core.model.services.ServiceExecutionFailedException;
+import org.ejbca.core.model.services.ServiceExecutionResult;
+import org.ejbca.core.model.services.ServiceExecutionResult.Result;
+
+/**
+ * Worker that pre-produces OCSP responses for all non-expired certificates of the selected CAs, renewing responses that
+ * reach nextUpdate within the configured time before expiring (worker.timeunit and worker.timebeforeexpiring). Only CAs
+ * with pre-production of OCSP responses enabled are processed.
+ * <p>
+ * Certificates are processed in chunks of worker.batchsize, with progress logged after each chunk. A run that is interrupted
+ * is resumed by the next run, since responses that were already renewed are skipped.
+ */
+public class OcspResponseUpdaterWorker extends BaseWorker {
+
+    private static final Logger log = Logger.getLogger(OcspResponseUpdaterWorker.class);
+
+    public static final String PROP_BATCH_SIZE = "worker.batchsize";
+    public static final int DEFAULT_BATCH_SIZE = 1000;
+
+    /** CAs that are currently being processed on this node, so that slow runs are not started several times for the same CA. */
+    private static final Set<Integer> lockedCas = ConcurrentHashMap.newKeySet();
+
+    @Override
+    public void canWorkerRun(final Map<Class<?>, Object> ejbs) throws ServiceExecutionFailedException {
+        // Always allowed to run. CAs with offline crypto tokens only fail to produce their responses.
+    }
+
+    @Override
+    public ServiceExecutionResult work(final Map<Class<?>, Object> ejbs) throws ServiceExecutionFailedException {
+        final CaSessionLocal caSession = (CaSessionLocal) ejbs.get(CaSessionLocal.class);
+        final OcspResponseUpdaterSessionLocal ocspResponseUpdaterSession = (OcspResponseUpdaterSessionLocal) ejbs.get(OcspResponseUpdaterSessionLocal.class);
+        final long renewBefore = getTimeBeforeExpire();
+        final int batchSize = Math.max(1, PropertyTools.get(properties, PROP_BATCH_SIZE, DEFAULT_BATCH_SIZE));
+        final Map<Integer, String> caNameMap = caSession.getCAIdToNameMap();
+        final List<String> updatedCaNames = new ArrayList<>();
+        int totalRenewed = 0;
+        int totalFailures = 0;
+        for (final int caId : getAllCAIdsToCheck(caSession, true)) {
+            if (Thread.currentThread().isInterrupted()) {
+                log.info("OCSP Response Updater Worker " + serviceName + " was interrupted and did not check the remaining CAs.");
+                break;
+            }
+            if (!lockedCas.add(caId)) {
+                log.info("OCSP Response Updater Worker " + serviceName + " skipped CA '" + caNameMap.get(caId) + "' which is already being processed.");
+                continue;
+            }
+            try {
+                int checked = 0;
+                int renewed = 0;
+                int failures = 0;
+                String fingerprint = "";
+                OcspResponseUpdateResult result;
+                do {
+                    result = ocspResponseUpdaterSession.updateOcspResponses(getAdmin(), caId, renewBefore, fingerprint, batchSize);
+                    fingerprint = result.getLastFingerprint();
+                    checked += result.getCertificatesChecked();
+                    renewed += result.getResponsesRenewed();
+                    failures += result.getFailures();
+                    if (result.getCertificatesChecked() > 0) {
+                        log.info("OCSP Response Updater Worker " + serviceName + " checked " + checked + " certificates of CA '" + caNameMap.get(caId)
+                                + "', renewed " + renewed + " OCSP responses with " + failures + " failures.");
+                    }
+                } while (!result.isDone());
+                if (renewed > 0) {
+                    updatedCaNames.add(caNameMap.get(caId));
+                }
+                totalRenewed += renewed;
+                totalFailures += failures;
+            } catch (AuthorizationDeniedException e) {
+                log.error("Internal authentication token was denied access to CA with ID " + caId + ".", e);
+            } catch (CADoesntExistsException e) {
+                log.info("CA with ID " + caId + " was removed while its OCSP responses were updated.");
+            } finally {
+                lockedCas.remove(caId);
+            }
+        }
+        if (updatedCaNames.isEmpty() && totalFailures == 0) {
+            return new ServiceExecutionResult(Result.NO_ACTION, "OCSP Response Updater Worker " + serviceName + " ran, but no OCSP responses needed renewal.");
+        }
+        return new ServiceExecutionResult(totalFailures == 0 ? Result.SUCCESS : Result.FAILURE, "OCSP Response Updater Worker " + serviceName
+                + " renewed " + totalRenewed + " OCSP responses for the CAs " + constructNameList(updatedCaNames) + ", " + totalFailures
+                + " responses could not be produced.");
+    }
+}
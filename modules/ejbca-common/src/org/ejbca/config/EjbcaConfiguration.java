@@ -302,6 +302,54 @@ public final class EjbcaConfiguration {
         return getBooleanProperty("publish.parallel.enabled", true);
     }
 
+    /**
+     * @return the maximum number of CRLs, including CRL partitions, to generate in parallel with the keys of a crypto token.
+     *  1 means that they are generated one at the time.
+     */
+    public static int getCrlGenerationConcurrency(final int cryptoTokenId) {
+        return Math.max(1, getIntProperty("crlgeneration.concurrency." + cryptoTokenId, getIntProperty("crlgeneration.concurrency", 4)));
+    }
+
+    /** @return the maximum number of CAs to generate CRLs for in parallel. 1 means that the CAs are processed one at the time. */
+    public static int getCrlGenerationCaConcurrency() {
+        return Math.max(1, getIntProperty("crlgeneration.caconcurrency", 4));
+    }
+
+    /**
+     * @return the maximum number of threads generating CRL partitions, shared by all CAs. When all are busy, the partitions of a
+     *  CA are generated by the thread of the CA.
+     */
+    public static int getCrlGenerationPartitionThreads() {
+        return Math.max(1, getIntProperty("crlgeneration.partitionthreads", 16));
+    }
+
+    /** @return true if a base CRL should be created from the previous base CRL and the revocations that changed since it was issued. */
+    public static boolean isCrlGenerationIncremental() {
+        return getBooleanProperty("crlgeneration.incremental", false);
+    }
+
+    /**
+     * @return how often, counted in CRL numbers, a base CRL is created from all revoked certificates instead of incrementally, so that
+     *  any difference from the database is corrected, and the incremental result is verified. 1 means that every base CRL is created from
+     *  all revoked certificates.
+     */
+    public static int getCrlGenerationFullRebuildInterval() {
+        return Math.max(1, getIntProperty("crlgeneration.incremental.fullrebuildinterval", 10));
+    }
+
+    /**
+     * @return the number of milliseconds before the last base CRL was issued that revocation changes are read from, when a base CRL
+     *  is created incrementally. Covers revocations that were committed after the last base CRL read the revoked certificates.
+     */
+    public static long getCrlGenerationIncrementalSafetyMargin() {
+        return Math.max(0, getIntProperty("crlgeneration.incremental.safetymargin", 600)) * 1000L;
+    }
+
+    /** @return the number of CRL entries that are applied in each transaction when a CRL is imported. */
+    public static int getCrlImportBatchSize() {
+        return Math.max(1, getIntProperty("crlimport.batchsize", 1000));
+    }
+
     /** @return true if TCP keep alive should be used for outgoing peer connections. */
     @Deprecated // EJBCA 6.3.0 safety for the new PeerConnector feature. Remove when default is considered stable.
     public static boolean isPeerSoKeepAlive() {
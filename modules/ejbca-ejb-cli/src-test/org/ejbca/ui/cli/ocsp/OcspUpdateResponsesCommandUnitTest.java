@@ -0,0 +1,130 @@
+/*************************************************************************
+ *                                                                       *
+ *  EJBCA Community: The OpenSource Certificate Authority                *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.ejbca.ui.cli.ocsp;
+
+import static org.easymock.EasyMock.anyObject;
+import static org.easymock.EasyMock.createMock;
+import static org.easymock.EasyMock.expect;
+import static org.easymock.EasyMock.replay;
+import static org.easymock.EasyMock.reset;
+import static org.easymock.EasyMock.verify;
+import static org.junit.Assert.assertEquals;
+
+import org.cesecore.authentication.tokens.AuthenticationSubject;
+import org.cesecore.certificates.ca.CAInfo;
+import org.cesecore.certificates.ca.CaSessionRemote;
+import org.cesecore.jndi.JndiHelper;
+import org.ejbca.core.ejb.authentication.cli.CliAuthenticationProviderSessionRemote;
+import org.ejbca.core.ejb.authentication.cli.CliAuthenticationToken;
+import org.ejbca.core.ejb.ocsp.OcspResponseUpdateResult;
+import org.ejbca.core.ejb.ocsp.OcspResponseUpdaterSessionRemote;
+import org.ejbca.ui.cli.infrastructure.command.CommandResult;
+import org.ejbca.ui.cli.infrastructure.parameter.ParameterContainer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.powermock.api.easymock.PowerMock;
+import org.powermock.core.classloader.annotations.PowerMockIgnore;
+import org.powermock.core.classloader.annotations.PrepareForTest;
+import org.powermock.modules.junit4.PowerMockRunner;
+
+/**
+ * Unit tests for the OcspUpdateResponsesCommand class.
+ */
+@RunWith(PowerMockRunner.class)
+@PrepareForTest({JndiHelper.class})
+@PowerMockIgnore(value = {"com.sun.org.apache.xerces.*", "javax.management.*" })
+public class OcspUpdateResponsesCommandUnitTest {
+
+    private static final String CA_NAME = "OcspTestCA";
+    private static final int CA_ID = 4711;
+
+    private static CaSessionRemote caSessionRemoteMock = createMock(CaSessionRemote.class);
+    private static CliAuthenticationProviderSessionRemote cliAuthenticationProviderSessionMock = createMock(CliAuthenticationProviderSessionRemote.class);
+    private static CliAuthenticationToken cliAuthenticationToken = createMock(CliAuthenticationToken.class);
+    private static OcspResponseUpdaterSessionRemote ocspResponseUpdaterSessionMock = createMock(OcspResponseUpdaterSessionRemote.class);
+    private static CAInfo caInfoMock = createMock(CAInfo.class);
+
+    private OcspUpdateResponsesCommand command;
+
+    @Before
+    public void setUp() {
+        PowerMock.mockStatic(JndiHelper.class);
+        expect(JndiHelper.getRemoteSession(CaSessionRemote.class, "cesecore-ejb")).andReturn(caSessionRemoteMock).anyTimes();
+        expect(JndiHelper.getRemoteSession(CliAuthenticationProviderSessionRemote.class, "ejbca-ejb")).andReturn(cliAuthenticationProviderSessionMock).anyTimes();
+        expect(JndiHelper.getRemoteSession(OcspResponseUpdaterSessionRemote.class, "ejbca-ejb")).andReturn(ocspResponseUpdaterSessionMock).anyTimes();
+        expect(cliAuthenticationProviderSessionMock.authenticate(anyObject(AuthenticationSubject.class))).andReturn(cliAuthenticationToken).anyTimes();
+        expect(caInfoMock.getCAId()).andReturn(CA_ID).anyTimes();
+        PowerMock.replay(JndiHelper.class);
+        replay(cliAuthenticationProviderSessionMock, caInfoMock);
+        command = new OcspUpdateResponsesCommand();
+    }
+
+    @After
+    public void tearDown() {
+        reset(caSessionRemoteMock);
+        reset(cliAuthenticationProviderSessionMock);
+        reset(ocspResponseUpdaterSessionMock);
+        reset(caInfoMock);
+    }
+
+    @Test
+    public void shouldFailOnInvalidBatchSize() {
+        final ParameterContainer parameterContainer = new ParameterContainer();
+        parameterContainer.put("--caname", CA_NAME, true);
+        parameterContainer.put("--batchsize", "many", true);
+        assertEquals("CLI return code mismatch.", CommandResult.CLI_FAILURE, command.execute(parameterContainer));
+        parameterContainer.put("--batchsize", "0", true);
+        assertEquals("CLI return code mismatch.", CommandResult.CLI_FAILURE, command.execute(parameterContainer));
+    }
+
+    @Test
+    public void shouldFailOnNonExistingCa() throws Exception {
+        final ParameterContainer parameterContainer = new ParameterContainer();
+        parameterContainer.put("--caname", CA_NAME, true);
+        expect(caSessionRemoteMock.getCAInfo(cliAuthenticationToken, CA_NAME)).andReturn(null);
+        replay(caSessionRemoteMock, ocspResponseUpdaterSessionMock);
+        assertEquals("CLI return code mismatch.", CommandResult.FUNCTIONAL_FAILURE, command.execute(parameterContainer));
+        verify(caSessionRemoteMock, ocspResponseUpdaterSessionMock);
+    }
+
+    @Test
+    public void shouldResumeAndPageUntilDone() throws Exception {
+        final ParameterContainer parameterContainer = new ParameterContainer();
+        parameterContainer.put("--caname", CA_NAME, true);
+        parameterContainer.put("--renewbefore", "60", true);
+        parameterContainer.put("--batchsize", "2", true);
+        parameterContainer.put("--resume", "fp0", true);
+        expect(caSessionRemoteMock.getCAInfo(cliAuthenticationToken, CA_NAME)).andReturn(caInfoMock);
+        expect(ocspResponseUpdaterSessionMock.updateOcspResponses(cliAuthenticationToken, CA_ID, 60000L, "fp0", 2))
+                .andReturn(new OcspResponseUpdateResult(2, 1, 0, "fp2", false));
+        expect(ocspResponseUpdaterSessionMock.updateOcspResponses(cliAuthenticationToken, CA_ID, 60000L, "fp2", 2))
+                .andReturn(new OcspResponseUpdateResult(1, 1, 0, "fp3", true));
+        replay(caSessionRemoteMock, ocspResponseUpdaterSessionMock);
+        assertEquals("CLI return code mismatch.", CommandResult.SUCCESS, command.execute(parameterContainer));
+        verify(caSessionRemoteMock, ocspResponseUpdaterSessionMock);
+    }
+
+    @Test
+    public void shouldReportFunctionalFailureOnFailedResponses() throws Exception {
+        final ParameterContainer parameterContainer = new ParameterContainer();
+        parameterContainer.put("--caname", CA_NAME, true);
+        expect(caSessionRemoteMock.getCAInfo(cliAuthenticationToken, CA_NAME)).andReturn(caInfoMock);
+        expect(ocspResponseUpdaterSessionMock.updateOcspResponses(cliAuthenticationToken, CA_ID, 3600000L, "", 1000))
+                .andReturn(new OcspResponseUpdateResult(5, 3, 2, "fp5", true));
+        replay(caSessionRemoteMock, ocspResponseUpdaterSessionMock);
+        assertEquals("CLI return code mismatch.", CommandResult.FUNCTIONAL_FAILURE, command.execute(parameterContainer));
+        verify(caSessionRemoteMock, ocspResponseUpdaterSessionMock);
+    }
+}
@@ -0,0 +1,91 @@
+/*************************************************************************
+ *                                                                       *
+ *  EJBCA Community: The OpenSource Certificate Authority                *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.ejbca.ui.cli.ca;
+
+import org.apache.log4j.Logger;
+import org.cesecore.authorization.AuthorizationDeniedException;
+import org.cesecore.certificates.crl.CrlStoreSessionRemote;
+import org.cesecore.util.EjbRemoteHelper;
+import org.ejbca.ui.cli.infrastructure.command.CommandResult;
+import org.ejbca.ui.cli.infrastructure.parameter.Parameter;
+import org.ejbca.ui.cli.infrastructure.parameter.ParameterContainer;
+import org.ejbca.ui.cli.infrastructure.parameter.enums.MandatoryMode;
+import org.ejbca.ui.cli.infrastructure.parameter.enums.ParameterMode;
+import org.ejbca.ui.cli.infrastructure.parameter.enums.StandaloneMode;
+
+/**
+ * Converts the stored CRLs to the storage format configured with database.crlstorage in cesecore.properties.
+ */
+public class CaConvertCrlStorageCommand extends BaseCaAdminCommand {
+
+    private static final Logger log = Logger.getLogger(CaConvertCrlStorageCommand.class);
+
+    private static final String BATCH_SIZE_KEY = "--batchsize";
+    private static final int DEFAULT_BATCH_SIZE = 100;
+
+    {
+        registerParameter(new Parameter(BATCH_SIZE_KEY, "Number of CRLs", MandatoryMode.OPTIONAL, StandaloneMode.FORBID, ParameterMode.ARGUMENT,
+                "The number of CRLs to convert in each transaction. Default: " + DEFAULT_BATCH_SIZE));
+    }
+
+    @Override
+    public String getMainCommand() {
+        return "convertcrlstorage";
+    }
+
+    @Override
+    public CommandResult execute(ParameterContainer parameters) {
+        final int batchSize;
+        try {
+            batchSize = parameters.get(BATCH_SIZE_KEY) == null ? DEFAULT_BATCH_SIZE : Integer.parseInt(parameters.get(BATCH_SIZE_KEY));
+        } catch (NumberFormatException e) {
+            log.error("Batch size '" + parameters.get(BATCH_SIZE_KEY) + "' is not a number.");
+            return CommandResult.CLI_FAILURE;
+        }
+        if (batchSize < 1) {
+            log.error("Batch size must be at least 1.");
+            return CommandResult.CLI_FAILURE;
+        }
+        final CrlStoreSessionRemote crlStoreSession = EjbRemoteHelper.INSTANCE.getRemoteSession(CrlStoreSessionRemote.class);
+        long total = 0;
+        try {
+            int converted;
+            do {
+                converted = crlStoreSession.convertCrlStorage(getAuthenticationToken(), batchSize);
+                total += converted;
+            } while (converted > 0);
+        } catch (AuthorizationDeniedException e) {
+            log.error("CLI user not authorized to convert CRLs: " + e.getMessage());
+            return CommandResult.AUTHORIZATION_FAILURE;
+        }
+        log.info("Converted " + total + " CRLs.");
+        return CommandResult.SUCCESS;
+    }
+
+    @Override
+    public String getCommandDescription() {
+        return "Converts the stored CRLs to the storage format configured in cesecore.properties.";
+    }
+
+    @Override
+    public String getFullHelpText() {
+        return getCommandDescription() + " CRLs stored Base64 encoded are converted to binary when database.crlstorage is binary or compressed, "
+                + "and CRLs stored as binary are converted to Base64 when it's base64. CRLs can be read whichever way they are stored, so this is "
+                + "only needed to make use of the smaller binary storage for existing CRLs, or before downgrading to an EJBCA version earlier than 8.3.0.";
+    }
+
+    @Override
+    protected Logger getLogger() {
+        return log;
+    }
+}
@@ -0,0 +1,148 @@
+/*************************************************************************
+ *                                                                       *
+ *  EJBCA Community: The OpenSource Certificate Authority                *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.ejbca.ui.cli.ocsp;
+
+import org.apache.log4j.Logger;
+import org.cesecore.authorization.AuthorizationDeniedException;
+import org.cesecore.certificates.ca.CADoesntExistsException;
+import org.cesecore.certificates.ca.CAInfo;
+import org.cesecore.certificates.ca.CaSessionRemote;
+import org.cesecore.util.EjbRemoteHelper;
+import org.ejbca.core.ejb.ocsp.OcspResponseUpdateResult;
+import org.ejbca.core.ejb.ocsp.OcspResponseUpdaterSessionRemote;
+import org.ejbca.ui.cli.infrastructure.command.CommandResult;
+import org.ejbca.ui.cli.infrastructure.command.EjbcaCliUserCommandBase;
+import org.ejbca.ui.cli.infrastructure.parameter.Parameter;
+import org.ejbca.ui.cli.infrastructure.parameter.ParameterContainer;
+import org.ejbca.ui.cli.infrastructure.parameter.enums.MandatoryMode;
+import org.ejbca.ui.cli.infrastructure.parameter.enums.ParameterMode;
+import org.ejbca.ui.cli.infrastructure.parameter.enums.StandaloneMode;
+
+/**
+ * Implements the CLI command <code>./ejbca.sh ocsp updateresponses</code>.
+ */
+public class OcspUpdateResponsesCommand extends EjbcaCliUserCommandBase {
+    private static final Logger log = Logger.getLogger(OcspUpdateResponsesCommand.class);
+    private static final String CA_NAME_KEY = "--caname";
+    private static final String RENEW_BEFORE_KEY = "--renewbefore";
+    private static final String BATCH_SIZE_KEY = "--batchsize";
+    private static final String RESUME_KEY = "--resume";
+
+    private static final long DEFAULT_RENEW_BEFORE_SECONDS = 3600;
+    private static final int DEFAULT_BATCH_SIZE = 1000;
+
+    {
+        registerParameter(new Parameter(CA_NAME_KEY,
+                "CA Name",
+                MandatoryMode.MANDATORY,
+                StandaloneMode.ALLOW,
+                ParameterMode.ARGUMENT,
+                "The name of the CA to pre-produce OCSP responses for."));
+        registerParameter(new Parameter(RENEW_BEFORE_KEY,
+                "Seconds",
+                MandatoryMode.OPTIONAL,
+                StandaloneMode.FORBID,
+                ParameterMode.ARGUMENT,
+                "Renew stored OCSP responses that reach nextUpdate within this many seconds. Default is " + DEFAULT_RENEW_BEFORE_SECONDS + "."));
+        registerParameter(new Parameter(BATCH_SIZE_KEY,
+                "Batch size",
+                MandatoryMode.OPTIONAL,
+                StandaloneMode.FORBID,
+                ParameterMode.ARGUMENT,
+                "The number of certificates checked and stored in each transaction. Default is " + DEFAULT_BATCH_SIZE + "."));
+        registerParameter(new Parameter(RESUME_KEY,
+                "Fingerprint",
+                MandatoryMode.OPTIONAL,
+                StandaloneMode.FORBID,
+                ParameterMode.ARGUMENT,
+                "Resume an interrupted run after the certificate with this fingerprint, as printed in the progress output."));
+    }
+
+    @Override
+    public String[] getCommandPath() {
+        return new String[] { "ocsp" };
+    }
+
+    @Override
+    public String getMainCommand() {
+        return "updateresponses";
+    }
+
+    @Override
+    public CommandResult execute(final ParameterContainer parameters) {
+        final String caName = parameters.get(CA_NAME_KEY);
+        final long renewBefore;
+        final int batchSize;
+        try {
+            renewBefore = parameters.containsKey(RENEW_BEFORE_KEY) ? Long.parseLong(parameters.get(RENEW_BEFORE_KEY)) : DEFAULT_RENEW_BEFORE_SECONDS;
+            batchSize = parameters.containsKey(BATCH_SIZE_KEY) ? Integer.parseInt(parameters.get(BATCH_SIZE_KEY)) : DEFAULT_BATCH_SIZE;
+        } catch (NumberFormatException e) {
+            log.error("ERROR: " + RENEW_BEFORE_KEY + " and " + BATCH_SIZE_KEY + " must be numbers.");
+            return CommandResult.CLI_FAILURE;
+        }
+        if (renewBefore < 0 || batchSize < 1) {
+            log.error("ERROR: " + RENEW_BEFORE_KEY + " can not be negative and " + BATCH_SIZE_KEY + " must be at least 1.");
+            return CommandResult.CLI_FAILURE;
+        }
+        try {
+            final CAInfo caInfo = EjbRemoteHelper.INSTANCE.getRemoteSession(CaSessionRemote.class).getCAInfo(getAuthenticationToken(), caName);
+            if (caInfo == null) {
+                log.error("ERROR: CA '" + caName + "' does not exist.");
+                return CommandResult.FUNCTIONAL_FAILURE;
+            }
+            final OcspResponseUpdaterSessionRemote ocspResponseUpdaterSession = EjbRemoteHelper.INSTANCE.getRemoteSession(OcspResponseUpdaterSessionRemote.class);
+            String fingerprint = parameters.containsKey(RESUME_KEY) ? parameters.get(RESUME_KEY) : "";
+            int checked = 0;
+            int renewed = 0;
+            int failures = 0;
+            OcspResponseUpdateResult result;
+            do {
+                result = ocspResponseUpdaterSession.updateOcspResponses(getAuthenticationToken(), caInfo.getCAId(), renewBefore * 1000L, fingerprint, batchSize);
+                fingerprint = result.getLastFingerprint();
+                checked += result.getCertificatesChecked();
+                renewed += result.getResponsesRenewed();
+                failures += result.getFailures();
+                if (result.getCertificatesChecked() > 0) {
+                    log.info("Checked " + checked + " certificates, renewed " + renewed + " OCSP responses, " + failures + " failures. "
+                            + "Resume with " + RESUME_KEY + " " + fingerprint);
+                }
+            } while (!result.isDone());
+            log.info("Done. Checked " + checked + " certificates of CA '" + caName + "', renewed " + renewed + " OCSP responses, " + failures + " failures.");
+            return failures == 0 ? CommandResult.SUCCESS : CommandResult.FUNCTIONAL_FAILURE;
+        } catch (AuthorizationDeniedException e) {
+            log.error("ERROR: CLI user not authorized to CA '" + caName + "'.");
+            return CommandResult.AUTHORIZATION_FAILURE;
+        } catch (CADoesntExistsException e) {
+            log.error("ERROR: CA '" + caName + "' does not exist.");
+            return CommandResult.FUNCTIONAL_FAILURE;
+        }
+    }
+
+    @Override
+    public String getCommandDescription() {
+        return "Pre-produce OCSP responses for all certificates of a CA.";
+    }
+
+    @Override
+    public String getFullHelpText() {
+        return getCommandDescription() + " Responses are produced for all non-expired certificates of the CA that have no stored OCSP response,"
+                + " or whose latest stored response reaches nextUpdate within the given time. Certificates are processed in batches, and the"
+                + " progress printed after each batch includes a fingerprint that can be used to resume an interrupted run."
+                + " Pre-production of OCSP responses must be enabled for the CA.";
+    }
+
+    @Override
+    protected Logger getLogger() {
+        return log;
+    }
+}
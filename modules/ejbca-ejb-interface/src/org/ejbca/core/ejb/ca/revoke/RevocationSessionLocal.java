@@ -13,6 +13,7 @@
 
 package org.ejbca.core.ejb.ca.revoke;
 
+import java.math.BigInteger;
 import java.util.Collection;
 import java.util.Date;
 import java.util.List;
@@ -51,6 +52,29 @@ public interface RevocationSessionLocal extends RevocationSession {
     void revokeCertificate(AuthenticationToken admin, CertificateDataWrapper cdw, Collection<Integer> publishers, Date revocationDate, Date invalidityDate, int reason,
             String userDataDN) throws CertificateRevokeException, AuthorizationDeniedException;
 
+    /**
+     * Revokes a certificate, in the database and in publishers, optionally without the post-revocation actions, i.e. pre-signing an OCSP
+     * response and generating a new CRL if the CA is configured to do so. Used when revoking many certificates, to perform these actions
+     * once per CA with {@link #postRevokeCertificates} after all of them have been revoked.
+     *
+     * @see RevocationSessionLocal#revokeCertificate(AuthenticationToken, CertificateDataWrapper, Collection, Date, Date, int, String)
+     * @param postRevokeCertificate false to skip the post-revocation actions
+     */
+    void revokeCertificate(AuthenticationToken admin, CertificateDataWrapper cdw, Collection<Integer> publishers, Date revocationDate, Date invalidityDate, int reason,
+            String userDataDN, boolean postRevokeCertificate) throws CertificateRevokeException, AuthorizationDeniedException;
+
+    /**
+     * Performs the post-revocation actions for certificates of a CA that were revoked without them. Pre-signs OCSP responses for the
+     * certificates if the CA pre-produces responses upon revocation, and generates a new CRL and delta CRL if the CA is configured to
+     * generate CRLs upon revocation.
+     *
+     * @param admin Administrator performing the operation
+     * @param caId ID of the CA
+     * @param serialNumbers serial numbers of the revoked certificates
+     * @throws AuthorizationDeniedException (rollback) if not authorized to the CA
+     */
+    void postRevokeCertificates(AuthenticationToken admin, int caId, Collection<BigInteger> serialNumbers) throws AuthorizationDeniedException;
+
     /**
      * Revokes a list of certificates, in the database and in publishers. Also handles re-activation of suspended certificates.
      *
@@ -92,7 +116,8 @@ public interface RevocationSessionLocal extends RevocationSession {
 
     /**
      * Revokes incompletely issued certificates, that have been submitted to CT logs and/or published, but
-     * where a rollback has happened after the submission/publication.
+     * where a rollback has happened after the submission/publication. Certificates that were stored by a group commit, but whose issuance
+     * was never completed, are revoked where they are stored.
      * <p>
      * This method works in batches of 100 certificates, and returns 0 when there are no more certificates to revoke.
      *
@@ -12,9 +12,50 @@
  *************************************************************************/
 package org.ejbca.core.ejb.crl;
 
+import java.nio.file.Path;
+import java.security.cert.CRLException;
+import java.util.List;
+
 import javax.ejb.Local;
 
+import org.cesecore.authentication.tokens.AuthenticationToken;
+import org.cesecore.authorization.AuthorizationDeniedException;
+import org.cesecore.certificates.ca.CAInfo;
+import org.cesecore.certificates.crl.CrlImportException;
+import org.cesecore.certificates.crl.CrlStoreException;
+import org.cesecore.certificates.crl.RevokedCertInfo;
+
 @Local
 public interface ImportCrlSessionLocal extends ImportCrlSession {
 
+    /**
+     * Method used to import a CRL from a file to the database if it is newer than any CRL it already has. The CRL is read as a stream, so that
+     * its entries are never all held in memory.
+     *
+     * @param authenticationToken The administrator performing the operation
+     * @param cainfo of the CA that issued the CRL
+     * @param crlFile the DER encoded CRL
+     * @param crlPartitionIndex CRL partition index. Should be 0 if partitions are not used
+     * @throws CrlImportException If a problem occurs when processing the imported CRL, or it could not be read
+     * @throws CrlStoreException If a problem occurs when adding the imported CRL to the database
+     * @throws CRLException If a problem occurs when parsing the CRL
+     * @throws AuthorizationDeniedException If the administrator is not authorized to perform the required operations
+     */
+    void importCrl(AuthenticationToken authenticationToken, CAInfo cainfo, Path crlFile, int crlPartitionIndex)
+            throws CrlImportException, CrlStoreException, CRLException, AuthorizationDeniedException;
+
+    /**
+     * Applies a batch of the entries of an imported CRL in a new transaction. Only for use by {@link #importCrl}.
+     *
+     * @param authenticationToken The administrator performing the operation
+     * @param cainfo of the CA that issued the CRL
+     * @param issuerDn the subject DN of the CA certificate
+     * @param caFingerprint the fingerprint of the CA certificate
+     * @param crlEntries serial numbers, revocation dates, reasons and invalidity dates of the CRL entries
+     * @return the number of certificates whose status was changed
+     * @throws CrlImportException if a certificate could not be revoked
+     * @throws AuthorizationDeniedException If the administrator is not authorized to perform the required operations
+     */
+    int importCrlEntries(AuthenticationToken authenticationToken, CAInfo cainfo, String issuerDn, String caFingerprint, List<RevokedCertInfo> crlEntries)
+            throws CrlImportException, AuthorizationDeniedException;
 }
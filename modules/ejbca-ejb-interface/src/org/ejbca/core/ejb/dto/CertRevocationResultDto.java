@@ -0,0 +1,85 @@
+/*************************************************************************
+ *                                                                       *
+ *  EJBCA Community: The OpenSource Certificate Authority                *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.ejbca.core.ejb.dto;
+
+import java.io.Serializable;
+
+/**
+ * Result of revoking one certificate in a revokeCertsWithMetadata operation.
+ */
+public class CertRevocationResultDto implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    /** Outcome of the revocation of a single certificate. */
+    public enum Status {
+        /** The certificate status was changed */
+        REVOKED,
+        /** The certificate does not exist */
+        NOT_FOUND,
+        /** The certificate is already revoked, or the status change is not allowed */
+        ALREADY_REVOKED,
+        /** The administrator is not authorized to revoke the certificate */
+        NOT_AUTHORIZED,
+        /** A revocation approval request has been created */
+        WAITING_FOR_APPROVAL,
+        /** A revocation approval request for the certificate already exists */
+        APPROVAL_EXISTS,
+        /** The CA of the certificate is not handled by this instance */
+        CA_NOT_FOUND,
+        /** The certificate profile does not allow back dated revocation */
+        BACKDATING_NOT_ALLOWED,
+        /** The requested certificate profile does not exist */
+        CERTIFICATE_PROFILE_NOT_FOUND,
+        /** The request was invalid or an unexpected error occurred */
+        FAILED
+    }
+
+    private final String issuerDN;
+    private final String certificateSN;
+    private final Status status;
+    private final String message;
+
+    public CertRevocationResultDto(final String issuerDN, final String certificateSN, final Status status, final String message) {
+        this.issuerDN = issuerDN;
+        this.certificateSN = certificateSN;
+        this.status = status;
+        this.message = message;
+    }
+
+    public CertRevocationResultDto(final CertRevocationDto certRevocationDto, final Status status, final String message) {
+        this(certRevocationDto.getIssuerDN(), certRevocationDto.getCertificateSN(), status, message);
+    }
+
+    public String getIssuerDN() {
+        return issuerDN;
+    }
+
+    /** @return the serial number in hex, as given in the request */
+    public String getCertificateSN() {
+        return certificateSN;
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    /** @return a message describing why the certificate was not revoked, or null */
+    public String getMessage() {
+        return message;
+    }
+
+    public boolean isRevoked() {
+        return status == Status.REVOKED;
+    }
+}
@@ -12,6 +12,10 @@
  *************************************************************************/
 package org.ejbca.core.ejb.ocsp;
 
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
 import javax.ejb.Local;
 
 import org.cesecore.oscp.OcspResponseData;
@@ -36,6 +40,20 @@ public interface OcspDataSessionLocal extends OcspDataSession {
      * @param ocspResponseData
      */
     void storeOcspData(final OcspResponseData ocspResponseData);
+
+    /**
+     * Saves a batch of OCSP data in the table in a single transaction.
+     * @param ocspResponseData the responses to persist
+     */
+    void storeOcspDataBatch(final List<OcspResponseData> ocspResponseData);
+
+    /**
+     * Returns the nextUpdate of the latest produced OCSP response of each of the given certificates.
+     * @param caId of the CA which signed the OCSP responses
+     * @param serialNumbers of the certificates, as decimal Strings
+     * @return map from serial number to the nextUpdate of its latest response. Certificates without any stored response are not included.
+     */
+    Map<String, Long> findLatestNextUpdates(final Integer caId, final Collection<String> serialNumbers);
     
     /**
      * Deletes all the OCSP data from table corresponding to serialNumber.
@@ -14,9 +14,12 @@ package org.ejbca.core.ejb.ocsp;
 
 import java.math.BigInteger;
 import java.security.cert.X509Certificate;
+import java.util.concurrent.Future;
 
 import javax.ejb.Local;
 
+import org.cesecore.oscp.OcspResponseData;
+
 
 /**
  * Local interface for OcspResponseGeneratorSession
@@ -50,6 +53,14 @@ public interface OcspResponseGeneratorSessionLocal extends OcspResponseGenerator
      */
     void deleteOcspDataByCaIdSerialNumber(final int caId, final String serialNumber);
 
+    /**
+     * Reloads the OCSP signing cache entry of a single OcspKeyBinding, leaving the entries of all CAs and other key bindings untouched.
+     * The entry is removed from the cache if the key binding no longer exists, is inactive or can't be used for signing.
+     *
+     * @param internalKeyBindingId the id of the OcspKeyBinding
+     */
+    void reloadOcspSigningCacheEntry(int internalKeyBindingId);
+
     /** @see org.cesecore.certificates.ocsp.cache.OcspRequestSignerStatusCache#flush() */
     void clearOcspRequestSignerRevocationStatusCache();
 
@@ -67,4 +78,18 @@ public interface OcspResponseGeneratorSessionLocal extends OcspResponseGenerator
      * @param certIDHashAlgorithm of the certId
      */
     void preSignOcspResponse(X509Certificate cacert, BigInteger serialNr, boolean issueFinalResponse, boolean includeExpiredCertificates, String certIDHashAlgorithm);
+
+    /**
+     * Pre-produces an OCSP response like {@link #preSignOcspResponse(X509Certificate, BigInteger, boolean, boolean, String)}, but returns the
+     * response instead of storing and publishing it, so that responses for many certificates can be persisted in one batch.
+     * The method runs asynchronously, which lets the caller sign several responses in parallel.
+     *
+     * @param cacert of the CA which signs the OCSP response
+     * @param serialNr of the certificate to produce a response for.
+     * @param includeExpiredCertificates to include expired certificates in presigned OCSP responses
+     * @param certIDHashAlgorithm of the certId
+     * @return the response to persist, or null if no response should be stored for the certificate (for example if pre-production
+     *      is disabled for the CA, a final response has been issued or the certificate has expired)
+     */
+    Future<OcspResponseData> createPreSignedOcspResponse(X509Certificate cacert, BigInteger serialNr, boolean includeExpiredCertificates, String certIDHashAlgorithm);
 }
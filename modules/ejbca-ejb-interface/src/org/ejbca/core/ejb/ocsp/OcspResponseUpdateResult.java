@@ -0,0 +1,70 @@
+/*************************************************************************
+ *                                                                       *
+ *  EJBCA Community: The OpenSource Certificate Authority                *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.ejbca.core.ejb.ocsp;
+
+import java.io.Serializable;
+
+/**
+ * Progress of one chunk of OCSP response pre-production for a CA, see {@link OcspResponseUpdaterSession}.
+ *
+ * @version $Id$
+ */
+public class OcspResponseUpdateResult implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private final int certificatesChecked;
+    private final int responsesRenewed;
+    private final int failures;
+    private final String lastFingerprint;
+    private final boolean done;
+
+    public OcspResponseUpdateResult(final int certificatesChecked, final int responsesRenewed, final int failures, final String lastFingerprint,
+            final boolean done) {
+        this.certificatesChecked = certificatesChecked;
+        this.responsesRenewed = responsesRenewed;
+        this.failures = failures;
+        this.lastFingerprint = lastFingerprint;
+        this.done = done;
+    }
+
+    /** @return the number of certificates that were checked for a response to renew */
+    public int getCertificatesChecked() {
+        return certificatesChecked;
+    }
+
+    /** @return the number of responses that were produced and stored */
+    public int getResponsesRenewed() {
+        return responsesRenewed;
+    }
+
+    /** @return the number of certificates whose stored response was still valid long enough */
+    public int getResponsesUpToDate() {
+        return certificatesChecked - responsesRenewed - failures;
+    }
+
+    /** @return the number of certificates that were due for renewal but for which no response was produced */
+    public int getFailures() {
+        return failures;
+    }
+
+    /** @return the fingerprint of the last checked certificate, to continue from with the next call */
+    public String getLastFingerprint() {
+        return lastFingerprint;
+    }
+
+    /** @return true if there are no more certificates to check for the CA */
+    public boolean isDone() {
+        return done;
+    }
+}
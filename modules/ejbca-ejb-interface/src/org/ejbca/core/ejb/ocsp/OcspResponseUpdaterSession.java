@@ -0,0 +1,45 @@
+/*************************************************************************
+ *                                                                       *
+ *  EJBCA Community: The OpenSource Certificate Authority                *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.ejbca.core.ejb.ocsp;
+
+import org.cesecore.authentication.tokens.AuthenticationToken;
+import org.cesecore.authorization.AuthorizationDeniedException;
+import org.cesecore.certificates.ca.CADoesntExistsException;
+
+/**
+ * Pre-produces OCSP responses for all certificates of a CA, so that stored responses are renewed before they reach nextUpdate.
+ *
+ * @version $Id$
+ */
+public interface OcspResponseUpdaterSession {
+
+    /**
+     * Renews the pre-produced OCSP responses of one chunk of the non-expired certificates issued by a CA. Certificates are
+     * processed in fingerprint order, and a response is only produced for certificates that have no stored response, or whose
+     * latest stored response reaches nextUpdate within renewBefore milliseconds. Calling the method again with
+     * {@link OcspResponseUpdateResult#getLastFingerprint()} continues with the next chunk, until {@link OcspResponseUpdateResult#isDone()}.
+     * <p>
+     * Nothing is done if pre-production of OCSP responses is disabled for the CA.
+     *
+     * @param admin administrator performing the operation
+     * @param caId the ID of the CA
+     * @param renewBefore renew responses that reach nextUpdate within this many milliseconds from now
+     * @param fingerprintAfter only process certificates with a greater fingerprint, or an empty String to start from the beginning
+     * @param maxCertificates the maximum number of certificates to check in this call
+     * @return the progress of this chunk
+     * @throws AuthorizationDeniedException if the administrator isn't authorized to the CA
+     * @throws CADoesntExistsException if the CA doesn't exist
+     */
+    OcspResponseUpdateResult updateOcspResponses(AuthenticationToken admin, int caId, long renewBefore, String fingerprintAfter, int maxCertificates)
+            throws AuthorizationDeniedException, CADoesntExistsException;
+}
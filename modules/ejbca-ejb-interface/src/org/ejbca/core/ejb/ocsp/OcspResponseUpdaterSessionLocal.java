@@ -0,0 +1,25 @@
+/*************************************************************************
+ *                                                                       *
+ *  EJBCA Community: The OpenSource Certificate Authority                *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.ejbca.core.ejb.ocsp;
+
+import javax.ejb.Local;
+
+/**
+ * Local interface for OcspResponseUpdaterSession
+ *
+ * @version $Id$
+ */
+@Local
+public interface OcspResponseUpdaterSessionLocal extends OcspResponseUpdaterSession {
+
+}
@@ -16,6 +16,8 @@ import org.cesecore.certificates.ca.CA;
 import org.cesecore.certificates.certificate.BaseCertificateData;
 
 import javax.ejb.Local;
+import java.math.BigInteger;
+import java.util.Collection;
 
 @Local
 public interface PreSigningOcspResponseSessionLocal {
@@ -45,4 +47,13 @@ public interface PreSigningOcspResponseSessionLocal {
 	 */
 	void preSignOcspResponse(CA ca, BaseCertificateData certData);
 
+	/**
+	 * Replaces the stored OCSP responses of certificates from a CA, by deleting them and pre-signing new ones if the CA pre-produces
+	 * OCSP responses upon issuance and revocation.
+	 *
+	 * @param ca the Certificate Authority.
+	 * @param serialNumbers serial numbers of the certificates.
+	 */
+	void preSignOcspResponses(CA ca, Collection<BigInteger> serialNumbers);
+
 }
@@ -22,6 +22,7 @@ import org.cesecore.certificates.endentity.EndEntityInformation;
 import org.cesecore.certificates.endentity.EndEntityType;
 import org.ejbca.core.EjbcaException;
 import org.ejbca.core.ejb.dto.CertRevocationDto;
+import org.ejbca.core.ejb.dto.CertRevocationResultDto;
 import org.ejbca.core.model.approval.ApprovalException;
 import org.ejbca.core.model.approval.WaitingForApprovalException;
 import org.ejbca.core.model.ra.AlreadyRevokedException;
@@ -477,6 +478,21 @@ public interface EndEntityManagementSession {
     void revokeCertWithMetadata(AuthenticationToken admin, CertRevocationDto certRevocationDto)
             throws AuthorizationDeniedException, NoSuchEndEntityException, ApprovalException, WaitingForApprovalException, AlreadyRevokedException,
             RevokeBackDateNotAllowedForProfileException, CertificateProfileDoesNotExistException;
+
+    /**
+     * Revokes (or un-revokes) a list of certificates, with the same checks as {@link #revokeCertWithMetadata(AuthenticationToken, CertRevocationDto)}.
+     * <p>
+     * The certificates are grouped per CA, and authorization to the CA is checked once per CA. The certificates of a CA are then revoked in
+     * chunks, each chunk in its own transaction, and a new CRL is generated upon revocation at most once per CA. A failure to revoke one
+     * certificate does not stop the revocation of the others.
+     *
+     * @param admin token of the administrator performing the action
+     * @param certRevocationDtos wrapper objects of the input parameters for each certificate to revoke.
+     * @return the result for each certificate, in the same order as the input list
+     * @throws AuthorizationDeniedException if the administrator is not authorized to revoke certificates at all
+     */
+    List<CertRevocationResultDto> revokeCertsWithMetadata(AuthenticationToken admin, List<CertRevocationDto> certRevocationDtos)
+            throws AuthorizationDeniedException;
     
     /**
      * Method that revokes a certificate for a user. It can also be used to
@@ -12,6 +12,8 @@
  *************************************************************************/
 package org.ejbca.core.ejb.ra;
 
+import java.util.List;
+
 import javax.ejb.Local;
 
 import org.cesecore.authentication.tokens.AuthenticationToken;
@@ -20,6 +22,8 @@ import org.cesecore.certificates.ca.CADoesntExistsException;
 import org.cesecore.certificates.ca.IllegalNameException;
 import org.cesecore.certificates.certificate.exception.CertificateSerialNumberException;
 import org.cesecore.certificates.endentity.EndEntityInformation;
+import org.ejbca.core.ejb.dto.CertRevocationDto;
+import org.ejbca.core.ejb.dto.CertRevocationResultDto;
 import org.ejbca.core.model.approval.ApprovalException;
 import org.ejbca.core.model.approval.WaitingForApprovalException;
 import org.ejbca.core.model.ra.CustomFieldException;
@@ -164,4 +168,16 @@ public interface EndEntityManagementSessionLocal extends EndEntityManagementSess
      */
     void suppressUnwantedUserDataChanges(String username);
 
+    /**
+     * Revokes a chunk of certificates issued by CAs that the administrator has already been checked to be authorized to,
+     * in a new transaction. Used by {@link #revokeCertsWithMetadata(AuthenticationToken, List)}.
+     *
+     * @param admin token of the administrator performing the action
+     * @param certRevocationDtos wrapper objects of the input parameters for each certificate to revoke.
+     * @return the result for each certificate, in the same order as the input list, or null if the transaction was rolled back
+     *      and the result of a certificate may depend on it
+     */
+    List<CertRevocationResultDto> revokeCertsWithMetadataInNewTransaction(AuthenticationToken admin, List<CertRevocationDto> certRevocationDtos);
+
+
 }
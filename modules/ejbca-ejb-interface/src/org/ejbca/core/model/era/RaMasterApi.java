@@ -54,6 +54,7 @@ import org.ejbca.core.EjbcaException;
 import org.ejbca.core.ejb.ca.auth.EndEntityAuthenticationSessionLocal;
 import org.ejbca.core.ejb.config.GlobalUpgradeConfiguration;
 import org.ejbca.core.ejb.dto.CertRevocationDto;
+import org.ejbca.core.ejb.dto.CertRevocationResultDto;
 import org.ejbca.core.ejb.ra.CouldNotRemoveEndEntityException;
 import org.ejbca.core.ejb.ra.EndEntityExistsException;
 import org.ejbca.core.ejb.ra.EndEntityManagementSessionLocal;
@@ -867,6 +868,23 @@ public interface RaMasterApi {
             RevokeBackDateNotAllowedForProfileException, AlreadyRevokedException, CADoesntExistsException, IllegalArgumentException,
             CertificateProfileDoesNotExistException;
 
+    /**
+     * Request status change of a list of certificates (revoke or reactivate), with the same input parameters as
+     * {@link #revokeCertWithMetadata(AuthenticationToken, CertRevocationDto)}.
+     * Requires authorization to '/ra_functionality/revoke_end_entity', and to the CA and EEP of each certificate.
+     * <p>
+     * The certificates are grouped per CA, and revoked in chunks with one transaction per chunk. Certificates of CAs
+     * that are not handled by this instance get the status {@link CertRevocationResultDto.Status#CA_NOT_FOUND}.
+     *
+     * @param authenticationToken of the requesting administrator or client
+     * @param certRevocationDtos wrapper objects for input parameters for the revocation of each certificate
+     * @return the result for each certificate, in the same order as the input list
+     * @throws AuthorizationDeniedException if not authorized to revoke certificates at all
+     * @since RA Master API version 18 (EJBCA 8.3.0)
+     */
+    List<CertRevocationResultDto> revokeCertsWithMetadata(AuthenticationToken authenticationToken, List<CertRevocationDto> certRevocationDtos)
+            throws AuthorizationDeniedException;
+
     /**
      * Revokes all of a user's certificates. A revocation must succeed at least on one instance, otherwise the operation fails with an exception.
      *
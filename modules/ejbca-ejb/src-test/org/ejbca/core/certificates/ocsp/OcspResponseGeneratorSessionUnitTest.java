@@ -22,8 +22,13 @@ import java.security.SecureRandom;
 import java.security.cert.CertificateParsingException;
 import java.security.cert.X509Certificate;
 import java.security.spec.PKCS8EncodedKeySpec;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Properties;
 
 import javax.ejb.Timer;
@@ -50,6 +55,7 @@ import org.bouncycastle.cert.ocsp.OCSPException;
 import org.bouncycastle.cert.ocsp.OCSPReqBuilder;
 import org.bouncycastle.cert.ocsp.OCSPResp;
 import org.bouncycastle.cert.ocsp.SingleResp;
+import org.bouncycastle.cert.ocsp.UnknownStatus;
 import org.bouncycastle.jce.provider.BouncyCastleProvider;
 import org.bouncycastle.operator.DigestCalculator;
 import org.bouncycastle.operator.OperatorCreationException;
@@ -506,6 +512,39 @@ public class OcspResponseGeneratorSessionUnitTest {
         assertGoodResponse(respInfo);
         log.trace("<uncachedIkbRequestWithSameSubjectDn");
     }
+
+    @Test
+    public void multipleCertIdsWithBatchedStatusLookup() throws Exception {
+        log.trace(">multipleCertIdsWithBatchedStatusLookup");
+        final BigInteger unknownSerial = REQUEST_SERIAL.add(BigInteger.TEN);
+        final List<BigInteger> serialNumbers = Arrays.asList(REQUEST_SERIAL, REQUEST_SERIAL.add(BigInteger.ONE), unknownSerial);
+        final byte[] req = makeOcspRequest(getIssuerCert(), serialNumbers);
+        expectLoggerChecks();
+        expectOcspConfigRead();
+        final Map<BigInteger, CertificateStatus> statuses = new LinkedHashMap<>();
+        statuses.put(serialNumbers.get(0), status);
+        statuses.put(serialNumbers.get(1), status);
+        statuses.put(unknownSerial, CertificateStatus.NOT_AVAILABLE);
+        // One query for all CertIDs, and no single status lookups
+        expect(certificateStoreSessionMock.getStatuses(ISSUER_CERT_DN, new LinkedHashSet<>(serialNumbers))).andReturn(statuses).once();
+        replay(auditLogger, transactionLogger, caSessionMock, certificateStoreSessionMock, cryptoTokenSessionMock,
+                internalKeyBindingDataSessionMock, globalConfigurationSessionMock, timerServiceMock);
+        prepareOcspCache();
+        final OcspResponseInformation respInfo = ocspResponseGeneratorSession.getOcspResponse(req, null, REQUEST_IP, null, null, auditLogger, transactionLogger, false, false, false);
+        assertNotNull(respInfo);
+        assertEquals(OCSPResp.SUCCESSFUL, respInfo.getStatus());
+        final SingleResp[] singleResps = ((BasicOCSPResp) new OCSPResp(respInfo.getOcspResponse()).getResponseObject()).getResponses();
+        assertEquals(3, singleResps.length);
+        for (final SingleResp singleResp : singleResps) {
+            if (singleResp.getCertID().getSerialNumber().equals(unknownSerial)) {
+                assertTrue("Status was not UNKNOWN.", singleResp.getCertStatus() instanceof UnknownStatus);
+            } else {
+                assertNull("Status was not GOOD (=null).", singleResp.getCertStatus());
+            }
+        }
+        verify(certificateStoreSessionMock);
+        log.trace("<multipleCertIdsWithBatchedStatusLookup");
+    }
     
     @Test
     public void nonceOk() throws Exception {
@@ -640,6 +679,20 @@ public class OcspResponseGeneratorSessionUnitTest {
                 getIssuerPrivKey(), BouncyCastleProvider.PROVIDER_NAME, ocspKeyBinding, ResponderIdType.KEYHASH));
     }
 
+    private byte[] makeOcspRequest(final X509Certificate issuerCert, final List<BigInteger> serialNumbers) {
+        try {
+            final X509CertificateHolder issuerCertHolder = new X509CertificateHolder(issuerCert.getEncoded());
+            final DigestCalculator digestCalc = new BcDigestCalculatorProvider().get(new AlgorithmIdentifier(OIWObjectIdentifiers.idSHA1));
+            final OCSPReqBuilder gen = new OCSPReqBuilder();
+            for (final BigInteger serialNumber : serialNumbers) {
+                gen.addRequest(new CertificateID(digestCalc, issuerCertHolder, serialNumber));
+            }
+            return gen.build().getEncoded();
+        } catch (IOException | GeneralSecurityException | OperatorCreationException | OCSPException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
     private byte[] makeOcspRequest(final X509Certificate issuerCert, final BigInteger serialNumber, final ASN1ObjectIdentifier digestAlgo, byte[] nonce) {
         try {
             final X509CertificateHolder issuerCertHolder = new X509CertificateHolder(issuerCert.getEncoded());
@@ -0,0 +1,210 @@
+/*************************************************************************
+ *                                                                       *
+ *  EJBCA Community: The OpenSource Certificate Authority                *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.ejbca.core.ejb.crl;
+
+import static org.easymock.EasyMock.anyObject;
+import static org.easymock.EasyMock.capture;
+import static org.easymock.EasyMock.eq;
+import static org.easymock.EasyMock.expect;
+import static org.easymock.EasyMock.expectLastCall;
+import static org.easymock.EasyMock.mock;
+import static org.easymock.EasyMock.replay;
+import static org.easymock.EasyMock.verify;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.math.BigInteger;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.KeyPair;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+
+import org.bouncycastle.asn1.x500.X500Name;
+import org.bouncycastle.cert.X509v2CRLBuilder;
+import org.bouncycastle.operator.jcajce.JcaContentSignerBuilder;
+import org.cesecore.authentication.tokens.AlwaysAllowLocalAuthenticationToken;
+import org.cesecore.authentication.tokens.AuthenticationToken;
+import org.cesecore.authentication.tokens.UsernamePrincipal;
+import org.cesecore.certificates.ca.CAInfo;
+import org.cesecore.certificates.certificate.CertificateConstants;
+import org.cesecore.certificates.certificate.CertificateDataSessionLocal;
+import org.cesecore.certificates.certificate.CertificateStatusInfo;
+import org.cesecore.certificates.certificate.CertificateStoreSessionLocal;
+import org.cesecore.certificates.crl.CrlImportException;
+import org.cesecore.certificates.crl.CrlStoreSessionLocal;
+import org.cesecore.certificates.crl.RevokedCertInfo;
+import org.easymock.Capture;
+import org.easymock.EasyMockRunner;
+import org.easymock.Mock;
+import org.easymock.TestSubject;
+import org.ejbca.core.ejb.ra.EndEntityManagementSessionLocal;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import com.keyfactor.util.CertTools;
+import com.keyfactor.util.CryptoProviderTools;
+import com.keyfactor.util.crypto.algorithm.AlgorithmConstants;
+import com.keyfactor.util.keys.KeyTools;
+
+/**
+ * Unit test of the batched application of CRL entries in {@link ImportCrlSessionBean}.
+ */
+@RunWith(EasyMockRunner.class)
+public class ImportCrlSessionBeanUnitTest {
+
+    private static final String ISSUER_DN = "CN=Import CRL Test";
+    private static final AuthenticationToken admin = new AlwaysAllowLocalAuthenticationToken(new UsernamePrincipal("ImportCrlSessionBeanUnitTest"));
+
+    @Mock
+    private CertificateDataSessionLocal certificateDataSession;
+    @Mock
+    private CertificateStoreSessionLocal certStoreSession;
+    @Mock
+    private CrlStoreSessionLocal crlStoreSession;
+    @Mock
+    private EndEntityManagementSessionLocal endentityManagementSession;
+
+    @TestSubject
+    private final ImportCrlSessionBean importCrlSession = new ImportCrlSessionBean();
+
+    @Test
+    public void applyBatchOfCrlEntries() throws Exception {
+        final CAInfo caInfo = mock(CAInfo.class);
+        expect(caInfo.getCAId()).andReturn(4711).anyTimes();
+        // 1 is unknown, 2 is a limited entry, 3 is already revoked as in the CRL and 4 is an active certificate
+        expect(certificateDataSession.findStatusesByIssuerDNAndSerialNumbers(eq(ISSUER_DN), eq(Arrays.asList("1", "2", "3", "4")))).andReturn(Arrays.asList(
+                status(2, CertificateConstants.CERT_REVOKED, 1000, RevokedCertInfo.REVOCATION_REASON_CERTIFICATEHOLD,
+                        CertTools.getFingerprintAsString((ISSUER_DN + ";2").getBytes())),
+                status(3, CertificateConstants.CERT_REVOKED, 3000, RevokedCertInfo.REVOCATION_REASON_KEYCOMPROMISE, "fp3"),
+                status(4, CertificateConstants.CERT_ACTIVE, -1, RevokedCertInfo.NOT_REVOKED, "fp4")));
+        final Capture<Collection<RevokedCertInfo>> limitedEntries = Capture.newInstance();
+        expect(certStoreSession.updateLimitedCertificateDataStatuses(eq(admin), eq(4711), eq(ISSUER_DN), eq("cafp"), capture(limitedEntries))).andReturn(2);
+        endentityManagementSession.revokeCert(admin, BigInteger.valueOf(4), new Date(4000), null, ISSUER_DN, RevokedCertInfo.REVOCATION_REASON_KEYCOMPROMISE,
+                false);
+        expectLastCall();
+        replay(caInfo, certificateDataSession, certStoreSession, endentityManagementSession);
+
+        final int changed = importCrlSession.importCrlEntries(admin, caInfo, ISSUER_DN, "cafp", Arrays.asList(
+                crlEntry(1, 1000, RevokedCertInfo.REVOCATION_REASON_UNSPECIFIED),
+                crlEntry(2, 2000, RevokedCertInfo.REVOCATION_REASON_KEYCOMPROMISE),
+                crlEntry(3, 3000, RevokedCertInfo.REVOCATION_REASON_KEYCOMPROMISE),
+                crlEntry(4, 4000, RevokedCertInfo.REVOCATION_REASON_KEYCOMPROMISE)));
+
+        verify(certificateDataSession, certStoreSession, endentityManagementSession);
+        assertEquals("The limited entries and the revoked certificate should be counted.", 3, changed);
+        final List<BigInteger> limitedSerialNumbers = new ArrayList<>();
+        for (final RevokedCertInfo revokedCertInfo : limitedEntries.getValue()) {
+            limitedSerialNumbers.add(revokedCertInfo.getUserCertificate());
+        }
+        assertEquals(Arrays.asList(BigInteger.valueOf(1), BigInteger.valueOf(2)), limitedSerialNumbers);
+    }
+
+    @Test
+    public void skipLimitedUpdateWhenAllCertificatesAreKnown() throws Exception {
+        expect(certificateDataSession.findStatusesByIssuerDNAndSerialNumbers(eq(ISSUER_DN), anyObject())).andReturn(Arrays.asList(
+                status(3, CertificateConstants.CERT_REVOKED, 3000, RevokedCertInfo.REVOCATION_REASON_KEYCOMPROMISE, "fp3")));
+        replay(certificateDataSession, certStoreSession, endentityManagementSession);
+        assertEquals("A certificate that is already revoked as in the CRL should be left as it is.", 0, importCrlSession.importCrlEntries(admin, null,
+                ISSUER_DN, "cafp", Arrays.asList(crlEntry(3, 3000, RevokedCertInfo.REVOCATION_REASON_KEYCOMPROMISE))));
+        verify(certificateDataSession, certStoreSession, endentityManagementSession);
+    }
+
+    @Test
+    public void revocationDatesAreComparedInWholeSeconds() throws Exception {
+        // The revocation date in the database has milliseconds, which are lost on the CRL
+        expect(certificateDataSession.findStatusesByIssuerDNAndSerialNumbers(eq(ISSUER_DN), anyObject())).andReturn(Arrays.asList(
+                status(3, CertificateConstants.CERT_REVOKED, 3456, RevokedCertInfo.REVOCATION_REASON_KEYCOMPROMISE, "fp3")));
+        replay(certificateDataSession, certStoreSession, endentityManagementSession);
+        assertEquals(0, importCrlSession.importCrlEntries(admin, null, ISSUER_DN, "cafp",
+                Arrays.asList(crlEntry(3, 3000, RevokedCertInfo.REVOCATION_REASON_KEYCOMPROMISE))));
+        verify(certificateDataSession, certStoreSession, endentityManagementSession);
+        assertFalse(ImportCrlSessionBean.isSameRevocationDate(3456, new Date(4000)));
+    }
+
+    @Test
+    public void onlyEntriesChangedSincePreviousCrlAreNew() throws Exception {
+        CryptoProviderTools.installBCProviderIfNotAvailable();
+        final KeyPair keyPair = KeyTools.genKeys("1024", AlgorithmConstants.KEYALGORITHM_RSA);
+        final X509v2CRLBuilder previousCrl = new X509v2CRLBuilder(new X500Name(ISSUER_DN), new Date(10000000));
+        previousCrl.addCRLEntry(BigInteger.valueOf(1), new Date(1000000), RevokedCertInfo.REVOCATION_REASON_UNSPECIFIED);
+        previousCrl.addCRLEntry(BigInteger.valueOf(2), new Date(2000000), RevokedCertInfo.REVOCATION_REASON_KEYCOMPROMISE, new Date(1500000));
+        previousCrl.addCRLEntry(BigInteger.valueOf(3), new Date(3000000), RevokedCertInfo.REVOCATION_REASON_CERTIFICATEHOLD);
+        final long[] previousEntries = ImportCrlSessionBean.getEntryHashes(new ByteArrayInputStream(
+                previousCrl.build(new JcaContentSignerBuilder("SHA256WithRSA").build(keyPair.getPrivate())).getEncoded()));
+        assertEquals(3, previousEntries.length);
+
+        final List<RevokedCertInfo> newEntries = ImportCrlSessionBean.getNewEntries(Arrays.asList(
+                crlEntry(1, 1000000, RevokedCertInfo.REVOCATION_REASON_UNSPECIFIED),
+                new RevokedCertInfo(null, BigInteger.valueOf(2).toByteArray(), 2000000, RevokedCertInfo.REVOCATION_REASON_KEYCOMPROMISE, 0, 1500000L),
+                crlEntry(3, 3000000, RevokedCertInfo.REVOCATION_REASON_KEYCOMPROMISE),
+                crlEntry(4, 4000000, RevokedCertInfo.REVOCATION_REASON_KEYCOMPROMISE)), previousEntries);
+        final List<BigInteger> newSerialNumbers = new ArrayList<>();
+        for (final RevokedCertInfo entry : newEntries) {
+            newSerialNumbers.add(entry.getUserCertificate());
+        }
+        assertEquals("The changed and the added entries should be new.", Arrays.asList(BigInteger.valueOf(3), BigInteger.valueOf(4)), newSerialNumbers);
+    }
+
+    @Test
+    public void crlFileChangedAfterVerificationIsNotImported() throws Exception {
+        CryptoProviderTools.installBCProviderIfNotAvailable();
+        final KeyPair keyPair = KeyTools.genKeys("1024", AlgorithmConstants.KEYALGORITHM_RSA);
+        final X509Certificate caCertificate = CertTools.genSelfCert(ISSUER_DN, 365, null, keyPair.getPrivate(), keyPair.getPublic(),
+                AlgorithmConstants.SIGALG_SHA256_WITH_RSA, true);
+        final X509v2CRLBuilder verifiedCrl = new X509v2CRLBuilder(new X500Name(ISSUER_DN), new Date(10000000));
+        verifiedCrl.addCRLEntry(BigInteger.valueOf(1), new Date(1000000), RevokedCertInfo.REVOCATION_REASON_UNSPECIFIED);
+        final X509v2CRLBuilder otherCrl = new X509v2CRLBuilder(new X500Name(ISSUER_DN), new Date(10000000));
+        otherCrl.addCRLEntry(BigInteger.valueOf(2), new Date(1000000), RevokedCertInfo.REVOCATION_REASON_KEYCOMPROMISE);
+        final KeyPair otherKeyPair = KeyTools.genKeys("1024", AlgorithmConstants.KEYALGORITHM_RSA);
+        final Path crlFile = Files.createTempFile("crl", ".der");
+        try {
+            Files.write(crlFile, verifiedCrl.build(new JcaContentSignerBuilder("SHA256WithRSA").build(keyPair.getPrivate())).getEncoded());
+            final CAInfo caInfo = mock(CAInfo.class);
+            expect(caInfo.getCertificateChain()).andReturn(Collections.singletonList(caCertificate)).anyTimes();
+            // The file is replaced by a CRL that is not signed by the CA, after the signature has been verified
+            expect(crlStoreSession.getLastCRLInfoLightWeight(CertTools.getSubjectDN(caCertificate), CertificateConstants.NO_CRL_PARTITION, false))
+                    .andAnswer(() -> {
+                        Files.write(crlFile, otherCrl.build(new JcaContentSignerBuilder("SHA256WithRSA").build(otherKeyPair.getPrivate())).getEncoded());
+                        return null;
+                    });
+            replay(caInfo, certificateDataSession, certStoreSession, crlStoreSession, endentityManagementSession);
+
+            try {
+                importCrlSession.importCrl(admin, caInfo, crlFile, CertificateConstants.NO_CRL_PARTITION);
+                fail("A CRL that was changed after it was verified should not be imported.");
+            } catch (CrlImportException e) {
+                assertEquals("The CRL was changed while it was imported.", e.getMessage());
+            }
+            verify(certificateDataSession, certStoreSession, crlStoreSession, endentityManagementSession);
+        } finally {
+            Files.deleteIfExists(crlFile);
+        }
+    }
+
+    private static RevokedCertInfo crlEntry(final int serialNumber, final long revocationDate, final int reason) {
+        return new RevokedCertInfo(null, BigInteger.valueOf(serialNumber).toByteArray(), revocationDate, reason, 0, null);
+    }
+
+    private static CertificateStatusInfo status(final int serialNumber, final int status, final long revocationDate, final int reason,
+            final String fingerprint) {
+        return new CertificateStatusInfo(fingerprint, String.valueOf(serialNumber), status, revocationDate, reason, null, Long.MAX_VALUE, null);
+    }
+}
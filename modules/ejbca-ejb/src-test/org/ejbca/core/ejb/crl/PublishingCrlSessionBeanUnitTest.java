@@ -0,0 +1,226 @@
+/*************************************************************************
+ *                                                                       *
+ *  EJBCA Community: The OpenSource Certificate Authority                *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.ejbca.core.ejb.crl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.math.BigInteger;
+import java.security.KeyPair;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.bouncycastle.asn1.x500.X500Name;
+import org.bouncycastle.cert.X509v2CRLBuilder;
+import org.bouncycastle.operator.jcajce.JcaContentSignerBuilder;
+import org.cesecore.certificates.ca.CAOfflineException;
+import org.cesecore.certificates.crl.RevokedCertInfo;
+import org.ejbca.config.EjbcaConfigurationHolder;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.keyfactor.util.CryptoProviderTools;
+import com.keyfactor.util.crypto.algorithm.AlgorithmConstants;
+import com.keyfactor.util.keys.KeyTools;
+import com.keyfactor.util.keys.token.CryptoTokenOfflineException;
+
+/**
+ * Unit tests of the parallel generation of CRL partitions, and of the incremental creation of base CRLs, in {@link PublishingCrlSessionBean}.
+ */
+public class PublishingCrlSessionBeanUnitTest {
+
+    private static final ExecutorService executor = Executors.newCachedThreadPool();
+
+    @BeforeClass
+    public static void beforeClass() {
+        CryptoProviderTools.installBCProviderIfNotAvailable();
+    }
+
+    @AfterClass
+    public static void afterClass() {
+        executor.shutdown();
+    }
+
+    @Test
+    public void createPartitionCrlsWithinConcurrencyLimit() throws Exception {
+        final AtomicInteger running = new AtomicInteger();
+        final AtomicInteger maxRunning = new AtomicInteger();
+        final Set<Integer> created = ConcurrentHashMap.newKeySet();
+        final boolean result = PublishingCrlSessionBean.createPartitionCrls(executor, new Semaphore(3), getCrlPartitionIndexes(64), crlPartitionIndex -> {
+            maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+            try {
+                Thread.sleep(5);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            running.decrementAndGet();
+            created.add(crlPartitionIndex);
+            return true;
+        });
+        assertTrue(result);
+        assertEquals("A CRL should have been created for every partition.", 64, created.size());
+        assertTrue("At most 3 CRLs should be generated at the same time, but was " + maxRunning.get(), maxRunning.get() <= 3);
+    }
+
+    @Test
+    public void createPartitionCrlsContinuesAfterFailure() throws Exception {
+        final Set<Integer> created = ConcurrentHashMap.newKeySet();
+        try {
+            PublishingCrlSessionBean.createPartitionCrls(executor, new Semaphore(4), getCrlPartitionIndexes(10), crlPartitionIndex -> {
+                if (crlPartitionIndex == 2) {
+                    throw new CryptoTokenOfflineException("Offline for partition 2");
+                } else if (crlPartitionIndex == 5) {
+                    throw new CAOfflineException("Offline for partition 5");
+                }
+                created.add(crlPartitionIndex);
+                return true;
+            });
+            fail("The failure of the first failed partition should be thrown.");
+        } catch (CryptoTokenOfflineException e) {
+            assertEquals("Offline for partition 2", e.getMessage());
+        }
+        assertEquals("The other partitions should be created.", 8, created.size());
+    }
+
+    @Test
+    public void createPartitionCrlsSequentially() throws Exception {
+        final List<Integer> order = new ArrayList<>();
+        final boolean result = PublishingCrlSessionBean.createPartitionCrls(null, new Semaphore(1), getCrlPartitionIndexes(5), crlPartitionIndex -> {
+            order.add(crlPartitionIndex);
+            return crlPartitionIndex != 3;
+        });
+        assertFalse("The result should be false when a partition has no new CRL.", result);
+        assertEquals(getCrlPartitionIndexes(5), order);
+    }
+
+    @Test
+    public void cryptoTokenPermitsFollowConfiguration() {
+        final int cryptoTokenId = 1234567;
+        try {
+            EjbcaConfigurationHolder.updateConfiguration("crlgeneration.concurrency." + cryptoTokenId, "2");
+            final Semaphore permits = PublishingCrlSessionBean.getCryptoTokenPermits(cryptoTokenId);
+            assertEquals(2, permits.availablePermits());
+            assertSame("The permits should be kept while the configuration is unchanged.", permits,
+                    PublishingCrlSessionBean.getCryptoTokenPermits(cryptoTokenId));
+            EjbcaConfigurationHolder.updateConfiguration("crlgeneration.concurrency." + cryptoTokenId, "5");
+            assertEquals("The permits should be recreated when the configuration changes.", 5,
+                    PublishingCrlSessionBean.getCryptoTokenPermits(cryptoTokenId).availablePermits());
+        } finally {
+            EjbcaConfigurationHolder.updateConfiguration("crlgeneration.concurrency." + cryptoTokenId, null);
+        }
+    }
+
+    @Test
+    public void fullCrlRebuildWhenPassingMultipleOfInterval() {
+        assertTrue("Every CRL should be rebuilt with interval 1.", PublishingCrlSessionBean.isFullCrlRebuild(7, 8, 1));
+        assertFalse(PublishingCrlSessionBean.isFullCrlRebuild(11, 12, 10));
+        assertTrue(PublishingCrlSessionBean.isFullCrlRebuild(19, 20, 10));
+        assertFalse(PublishingCrlSessionBean.isFullCrlRebuild(20, 21, 10));
+        assertTrue("A multiple passed by a delta CRL should rebuild the next base CRL.", PublishingCrlSessionBean.isFullCrlRebuild(18, 23, 10));
+    }
+
+    @Test
+    public void readRevokedCertificatesOfCrl() throws Exception {
+        final KeyPair keyPair = KeyTools.genKeys("1024", AlgorithmConstants.KEYALGORITHM_RSA);
+        final Date now = new Date(1700000000000L);
+        final X509v2CRLBuilder crlBuilder = new X509v2CRLBuilder(new X500Name("CN=Incremental CRL Test"), now);
+        crlBuilder.addCRLEntry(BigInteger.valueOf(1), new Date(now.getTime() - 60000), RevokedCertInfo.REVOCATION_REASON_UNSPECIFIED);
+        crlBuilder.addCRLEntry(BigInteger.valueOf(2), new Date(now.getTime() - 120000), RevokedCertInfo.REVOCATION_REASON_CERTIFICATEHOLD,
+                new Date(now.getTime() - 3600000));
+        final byte[] crl = crlBuilder.build(new JcaContentSignerBuilder("SHA256WithRSA").build(keyPair.getPrivate())).getEncoded();
+
+        final Map<BigInteger, RevokedCertInfo> revokedCertInfos = PublishingCrlSessionBean.getRevokedCertInfos(new ByteArrayInputStream(crl), true);
+        assertEquals(2, revokedCertInfos.size());
+        assertEquals(RevokedCertInfo.REVOCATION_REASON_UNSPECIFIED, revokedCertInfos.get(BigInteger.valueOf(1)).getReason());
+        assertNull(revokedCertInfos.get(BigInteger.valueOf(1)).getInvalidityDate());
+        final RevokedCertInfo onHold = revokedCertInfos.get(BigInteger.valueOf(2));
+        assertEquals(RevokedCertInfo.REVOCATION_REASON_CERTIFICATEHOLD, onHold.getReason());
+        assertEquals(now.getTime() - 120000, onHold.getRevocationDate().getTime());
+        assertEquals(now.getTime() - 3600000, onHold.getInvalidityDate().getTime());
+        assertNull("The invalidity date should be left out when not allowed.",
+                PublishingCrlSessionBean.getRevokedCertInfos(new ByteArrayInputStream(crl), false).get(BigInteger.valueOf(2)).getInvalidityDate());
+    }
+
+    @Test
+    public void applyChangedRevocations() {
+        final Map<BigInteger, RevokedCertInfo> revokedCertInfos = new HashMap<>();
+        revokedCertInfos.put(BigInteger.valueOf(1), revokedCertInfo(1, RevokedCertInfo.REVOCATION_REASON_CERTIFICATEHOLD, null));
+        revokedCertInfos.put(BigInteger.valueOf(2), revokedCertInfo(2, RevokedCertInfo.REVOCATION_REASON_CERTIFICATEHOLD, null));
+        revokedCertInfos.put(BigInteger.valueOf(3), revokedCertInfo(3, RevokedCertInfo.REVOCATION_REASON_SUPERSEDED, null));
+        // Released from hold, changed reason, and new revocation with invalidity date
+        PublishingCrlSessionBean.applyRevocationChange(revokedCertInfos, revokedCertInfo(1, RevokedCertInfo.REVOCATION_REASON_REMOVEFROMCRL, null), false);
+        PublishingCrlSessionBean.applyRevocationChange(revokedCertInfos, revokedCertInfo(2, RevokedCertInfo.REVOCATION_REASON_KEYCOMPROMISE, null), false);
+        PublishingCrlSessionBean.applyRevocationChange(revokedCertInfos, revokedCertInfo(4, RevokedCertInfo.REVOCATION_REASON_KEYCOMPROMISE, 1000L), false);
+        assertEquals(new HashSet<>(Arrays.asList(BigInteger.valueOf(2), BigInteger.valueOf(3), BigInteger.valueOf(4))), revokedCertInfos.keySet());
+        assertEquals(RevokedCertInfo.REVOCATION_REASON_KEYCOMPROMISE, revokedCertInfos.get(BigInteger.valueOf(2)).getReason());
+        assertNull("The invalidity date should be left out when not allowed.", revokedCertInfos.get(BigInteger.valueOf(4)).getInvalidityDate());
+        assertEquals("fp4", revokedCertInfos.get(BigInteger.valueOf(4)).getCertificateFingerprint());
+        PublishingCrlSessionBean.applyRevocationChange(revokedCertInfos, revokedCertInfo(4, RevokedCertInfo.REVOCATION_REASON_KEYCOMPROMISE, 1000L), true);
+        assertEquals(1000L, revokedCertInfos.get(BigInteger.valueOf(4)).getInvalidityDate().getTime());
+    }
+
+    @Test
+    public void compareCrlEntriesByHash() {
+        final List<RevokedCertInfo> full = Arrays.asList(revokedCertInfo(1, RevokedCertInfo.REVOCATION_REASON_UNSPECIFIED, null),
+                revokedCertInfo(2, RevokedCertInfo.REVOCATION_REASON_KEYCOMPROMISE, 5000L),
+                revokedCertInfo(3, RevokedCertInfo.REVOCATION_REASON_REMOVEFROMCRL, null));
+        // The revocation dates on a CRL are in whole seconds, and the fingerprints and expire dates are not on it
+        final long[] incremental = PublishingCrlSessionBean.getCrlEntryHashes(Arrays.asList(
+                new RevokedCertInfo(null, BigInteger.valueOf(1).toByteArray(), 1000, RevokedCertInfo.REVOCATION_REASON_UNSPECIFIED, 0),
+                new RevokedCertInfo(null, BigInteger.valueOf(2).toByteArray(), 2000, RevokedCertInfo.REVOCATION_REASON_KEYCOMPROMISE, 0, 5000L)));
+        assertEquals("Certificates that are not revoked should be left out.", 2, incremental.length);
+        final boolean[] matched = new boolean[incremental.length];
+        final List<BigInteger> examples = new ArrayList<>();
+        assertEquals(0, PublishingCrlSessionBean.getUnmatchedCrlEntries(full, incremental, matched, examples));
+        assertTrue(matched[0] && matched[1]);
+        // A changed reason and a missing certificate
+        final long[] differing = PublishingCrlSessionBean.getCrlEntryHashes(Arrays.asList(
+                new RevokedCertInfo(null, BigInteger.valueOf(2).toByteArray(), 2000, RevokedCertInfo.REVOCATION_REASON_CERTIFICATEHOLD, 0, 5000L),
+                revokedCertInfo(4, RevokedCertInfo.REVOCATION_REASON_UNSPECIFIED, null)));
+        final boolean[] differingMatched = new boolean[differing.length];
+        final List<BigInteger> differingExamples = new ArrayList<>();
+        assertEquals(2, PublishingCrlSessionBean.getUnmatchedCrlEntries(full, differing, differingMatched, differingExamples));
+        assertEquals(Arrays.asList(BigInteger.valueOf(1), BigInteger.valueOf(2)), differingExamples);
+        assertFalse("Entries only in the incremental result should not be matched.", differingMatched[0] || differingMatched[1]);
+    }
+
+    private static RevokedCertInfo revokedCertInfo(final int serialNumber, final int reason, final Long invalidityDate) {
+        return new RevokedCertInfo(("fp" + serialNumber).getBytes(), BigInteger.valueOf(serialNumber).toByteArray(), serialNumber * 1000L + 123, reason,
+                1900000000000L, invalidityDate);
+    }
+
+    private static List<Integer> getCrlPartitionIndexes(final int count) {
+        final List<Integer> crlPartitionIndexes = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            crlPartitionIndexes.add(i);
+        }
+        return crlPartitionIndexes;
+    }
+}
@@ -0,0 +1,68 @@
+/*************************************************************************
+ *                                                                       *
+ *  EJBCA Community: The OpenSource Certificate Authority                *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.ejbca.core.ejb.ocsp;
+
+import static org.easymock.EasyMock.createMock;
+import static org.easymock.EasyMock.expect;
+import static org.easymock.EasyMock.expectLastCall;
+import static org.easymock.EasyMock.replay;
+import static org.easymock.EasyMock.verify;
+
+import java.util.Arrays;
+
+import javax.persistence.EntityManager;
+
+import org.cesecore.oscp.OcspResponseData;
+import org.cesecore.util.JdbcBatching;
+import org.easymock.EasyMockRunner;
+import org.easymock.Mock;
+import org.easymock.TestSubject;
+import org.hibernate.Session;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/**
+ * Unit test of {@link OcspDataSessionBean}
+ */
+@RunWith(EasyMockRunner.class)
+public class OcspDataSessionBeanUnitTest {
+
+    @Mock
+    private EntityManager entityManager;
+    // Not a @Mock, since a Session is also an EntityManager and could be injected
+    private final Session session = createMock(Session.class);
+
+    @TestSubject
+    private final OcspDataSessionBean ocspDataSession = new OcspDataSessionBean();
+
+    @Test
+    public void shouldStoreBatchWithJdbcBatching() {
+        final OcspResponseData first = new OcspResponseData("id1", 123, "1", 1000L, 2000L, new byte[] { 1 });
+        final OcspResponseData second = new OcspResponseData("id2", 123, "2", 1000L, 2000L, new byte[] { 2 });
+        // Batching is enabled before anything is persisted, and only for this persistence context
+        expect(entityManager.unwrap(Session.class)).andReturn(session);
+        session.setJdbcBatchSize(JdbcBatching.DEFAULT_BATCH_SIZE);
+        expectLastCall();
+        entityManager.persist(first);
+        expectLastCall();
+        entityManager.persist(second);
+        expectLastCall();
+        entityManager.flush();
+        expectLastCall();
+        replay(entityManager, session);
+
+        ocspDataSession.storeOcspDataBatch(Arrays.asList(first, second));
+
+        verify(entityManager, session);
+    }
+}
@@ -0,0 +1,214 @@
+/*************************************************************************
+ *                                                                       *
+ *  EJBCA Community: The OpenSource Certificate Authority                *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.ejbca.core.ejb.ocsp;
+
+import static org.easymock.EasyMock.anyLong;
+import static org.easymock.EasyMock.anyObject;
+import static org.easymock.EasyMock.capture;
+import static org.easymock.EasyMock.eq;
+import static org.easymock.EasyMock.expect;
+import static org.easymock.EasyMock.expectLastCall;
+import static org.easymock.EasyMock.replay;
+import static org.easymock.EasyMock.verify;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.math.BigInteger;
+import java.security.KeyPair;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+import org.cesecore.authentication.tokens.AlwaysAllowLocalAuthenticationToken;
+import org.cesecore.authentication.tokens.AuthenticationToken;
+import org.cesecore.authentication.tokens.UsernamePrincipal;
+import org.cesecore.certificates.ca.CAConstants;
+import org.cesecore.certificates.ca.CaSessionLocal;
+import org.cesecore.certificates.ca.X509CAInfo;
+import org.cesecore.certificates.ca.X509CAInfo.X509CAInfoBuilder;
+import org.cesecore.certificates.certificate.CertificateConstants;
+import org.cesecore.certificates.certificate.CertificateDataSessionLocal;
+import org.cesecore.oscp.OcspResponseData;
+import org.easymock.Capture;
+import org.easymock.EasyMockRunner;
+import org.easymock.Mock;
+import org.easymock.TestSubject;
+import org.ejbca.core.ejb.ca.publisher.PublisherSessionLocal;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import com.keyfactor.util.CertTools;
+import com.keyfactor.util.CryptoProviderTools;
+import com.keyfactor.util.crypto.algorithm.AlgorithmConstants;
+import com.keyfactor.util.keys.KeyTools;
+
+/**
+ * Unit test of renewing the pre-produced OCSP responses of a CA in chunks in {@link OcspResponseUpdaterSessionBean}.
+ */
+@RunWith(EasyMockRunner.class)
+public class OcspResponseUpdaterSessionBeanUnitTest {
+
+    private static final String CA_DN = "CN=OcspResponseUpdaterSessionBeanUnitTest";
+    private static final int CA_ID = CA_DN.hashCode();
+    private static final long RENEW_BEFORE = 3600000L;
+    private static final AuthenticationToken admin = new AlwaysAllowLocalAuthenticationToken(new UsernamePrincipal("OcspResponseUpdaterSessionBeanUnitTest"));
+    private static X509Certificate caCertificate;
+
+    @Mock
+    private CaSessionLocal caSession;
+    @Mock
+    private CertificateDataSessionLocal certificateDataSession;
+    @Mock
+    private OcspDataSessionLocal ocspDataSession;
+    @Mock
+    private OcspResponseGeneratorSessionLocal ocspResponseGeneratorSession;
+    @Mock
+    private PublisherSessionLocal publisherSession;
+
+    @TestSubject
+    private final OcspResponseUpdaterSessionBean ocspResponseUpdaterSession = new OcspResponseUpdaterSessionBean();
+
+    @BeforeClass
+    public static void beforeClass() throws Exception {
+        CryptoProviderTools.installBCProviderIfNotAvailable();
+        final KeyPair keyPair = KeyTools.genKeys("1024", AlgorithmConstants.KEYALGORITHM_RSA);
+        caCertificate = CertTools.genSelfCert(CA_DN, 365, null, keyPair.getPrivate(), keyPair.getPublic(), AlgorithmConstants.SIGALG_SHA256_WITH_RSA,
+                true);
+    }
+
+    @Test
+    public void shouldRenewOnlyResponsesThatAreDue() throws Exception {
+        expect(caSession.getCAInfo(admin, CA_ID)).andReturn(caInfo(true));
+        expect(certificateDataSession.findFingerprintsAndSerialNumbersByIssuerDN(eq(CA_DN), anyLong(), eq("fp0"), eq(3))).andReturn(Arrays.asList(
+                new Object[] { "fp1", "1" }, new Object[] { "fp2", "2" }, new Object[] { "fp3", "3" }));
+        // 1 has no stored response, 2 has a response that is valid for long and 3 has a response that reaches nextUpdate soon
+        final Map<String, Long> nextUpdates = new HashMap<>();
+        nextUpdates.put("2", System.currentTimeMillis() + 10 * RENEW_BEFORE);
+        nextUpdates.put("3", System.currentTimeMillis() + RENEW_BEFORE / 2);
+        expect(ocspDataSession.findLatestNextUpdates(eq(CA_ID), eq(Arrays.asList("1", "2", "3")))).andReturn(nextUpdates);
+        expectSigning(1, response("1"));
+        expectSigning(3, response("3"));
+        final Capture<List<OcspResponseData>> stored = Capture.newInstance();
+        ocspDataSession.storeOcspDataBatch(capture(stored));
+        expectLastCall();
+        replay(caSession, certificateDataSession, ocspDataSession, ocspResponseGeneratorSession, publisherSession);
+
+        final OcspResponseUpdateResult result = ocspResponseUpdaterSession.updateOcspResponses(admin, CA_ID, RENEW_BEFORE, "fp0", 3);
+
+        verify(caSession, certificateDataSession, ocspDataSession, ocspResponseGeneratorSession, publisherSession);
+        assertEquals(3, result.getCertificatesChecked());
+        assertEquals(2, result.getResponsesRenewed());
+        assertEquals(0, result.getFailures());
+        assertEquals("The next chunk should start after the last certificate of this one.", "fp3", result.getLastFingerprint());
+        assertFalse("A full chunk may be followed by more certificates.", result.isDone());
+        final List<String> storedSerialNumbers = new ArrayList<>();
+        for (final OcspResponseData response : stored.getValue()) {
+            storedSerialNumbers.add(response.getSerialNumber());
+        }
+        assertEquals("The renewed responses should be stored in one batch.", Arrays.asList("1", "3"), storedSerialNumbers);
+    }
+
+    @Test
+    public void shouldCountFailedSignings() throws Exception {
+        expect(caSession.getCAInfo(admin, CA_ID)).andReturn(caInfo(true));
+        expect(certificateDataSession.findFingerprintsAndSerialNumbersByIssuerDN(eq(CA_DN), anyLong(), eq(""), eq(10))).andReturn(Arrays.asList(
+                new Object[] { "fp1", "1" }, new Object[] { "fp2", "2" }));
+        expect(ocspDataSession.findLatestNextUpdates(eq(CA_ID), anyObject())).andReturn(Collections.emptyMap());
+        expectSigning(1, response("1"));
+        final CompletableFuture<OcspResponseData> failed = new CompletableFuture<>();
+        failed.completeExceptionally(new IllegalStateException("Crypto token is offline"));
+        expect(ocspResponseGeneratorSession.createPreSignedOcspResponse(caCertificate, BigInteger.valueOf(2), false,
+                CertificateConstants.DEFAULT_CERTID_HASH_ALGORITHM)).andReturn(failed);
+        ocspDataSession.storeOcspDataBatch(anyObject());
+        expectLastCall();
+        replay(caSession, certificateDataSession, ocspDataSession, ocspResponseGeneratorSession, publisherSession);
+
+        final OcspResponseUpdateResult result = ocspResponseUpdaterSession.updateOcspResponses(admin, CA_ID, RENEW_BEFORE, null, 10);
+
+        verify(caSession, certificateDataSession, ocspDataSession, ocspResponseGeneratorSession, publisherSession);
+        assertEquals(1, result.getResponsesRenewed());
+        assertEquals(1, result.getFailures());
+        assertTrue("A chunk that isn't full is the last one.", result.isDone());
+    }
+
+    @Test
+    public void shouldCancelOutstandingSigningsWhenInterrupted() throws Exception {
+        expect(caSession.getCAInfo(admin, CA_ID)).andReturn(caInfo(true));
+        expect(certificateDataSession.findFingerprintsAndSerialNumbersByIssuerDN(eq(CA_DN), anyLong(), eq(""), eq(2))).andReturn(Arrays.asList(
+                new Object[] { "fp1", "1" }, new Object[] { "fp2", "2" }));
+        expect(ocspDataSession.findLatestNextUpdates(eq(CA_ID), anyObject())).andReturn(Collections.emptyMap());
+        final CompletableFuture<OcspResponseData> first = new CompletableFuture<>();
+        final CompletableFuture<OcspResponseData> second = new CompletableFuture<>();
+        expect(ocspResponseGeneratorSession.createPreSignedOcspResponse(caCertificate, BigInteger.valueOf(1), false,
+                CertificateConstants.DEFAULT_CERTID_HASH_ALGORITHM)).andReturn(first);
+        expect(ocspResponseGeneratorSession.createPreSignedOcspResponse(caCertificate, BigInteger.valueOf(2), false,
+                CertificateConstants.DEFAULT_CERTID_HASH_ALGORITHM)).andReturn(second);
+        replay(caSession, certificateDataSession, ocspDataSession, ocspResponseGeneratorSession, publisherSession);
+
+        final OcspResponseUpdateResult result;
+        Thread.currentThread().interrupt();
+        try {
+            result = ocspResponseUpdaterSession.updateOcspResponses(admin, CA_ID, RENEW_BEFORE, "", 2);
+            assertTrue("The interrupt flag should be kept.", Thread.currentThread().isInterrupted());
+        } finally {
+            Thread.interrupted();
+        }
+
+        verify(caSession, certificateDataSession, ocspDataSession, ocspResponseGeneratorSession, publisherSession);
+        assertTrue("Signings that were not collected should be cancelled.", first.isCancelled() && second.isCancelled());
+        assertEquals(0, result.getResponsesRenewed());
+        assertEquals(2, result.getFailures());
+        assertTrue("An interrupted run should not continue with the next chunk.", result.isDone());
+    }
+
+    @Test
+    public void shouldSkipCaWithoutPreProduction() throws Exception {
+        expect(caSession.getCAInfo(admin, CA_ID)).andReturn(caInfo(false));
+        replay(caSession, certificateDataSession, ocspDataSession, ocspResponseGeneratorSession, publisherSession);
+
+        final OcspResponseUpdateResult result = ocspResponseUpdaterSession.updateOcspResponses(admin, CA_ID, RENEW_BEFORE, "", 10);
+
+        verify(caSession, certificateDataSession, ocspDataSession, ocspResponseGeneratorSession, publisherSession);
+        assertTrue(result.isDone());
+        assertEquals(0, result.getCertificatesChecked());
+    }
+
+    private void expectSigning(final int serialNumber, final OcspResponseData response) {
+        expect(ocspResponseGeneratorSession.createPreSignedOcspResponse(caCertificate, BigInteger.valueOf(serialNumber), false,
+                CertificateConstants.DEFAULT_CERTID_HASH_ALGORITHM)).andReturn(CompletableFuture.completedFuture(response));
+    }
+
+    private static OcspResponseData response(final String serialNumber) {
+        return new OcspResponseData(serialNumber, CA_ID, serialNumber, System.currentTimeMillis(), System.currentTimeMillis() + 10 * RENEW_BEFORE,
+                new byte[] { 1 });
+    }
+
+    private static X509CAInfo caInfo(final boolean doPreProduceOcspResponses) {
+        return new X509CAInfoBuilder()
+                .setSubjectDn(CA_DN)
+                .setName("OcspResponseUpdaterTest")
+                .setCaId(CA_ID)
+                .setStatus(CAConstants.CA_ACTIVE)
+                .setCertificateChain(Collections.singletonList(caCertificate))
+                .setCrlPublishers(Collections.emptyList())
+                .setDoPreProduceOcspResponses(doPreProduceOcspResponses)
+                .build();
+    }
+}
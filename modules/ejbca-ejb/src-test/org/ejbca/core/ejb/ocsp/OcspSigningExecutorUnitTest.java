@@ -0,0 +1,108 @@
+/*************************************************************************
+ *                                                                       *
+ *  EJBCA Community: The OpenSource Certificate Authority                *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.ejbca.core.ejb.ocsp;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.cesecore.certificates.ocsp.exception.OcspSignerBusyException;
+import org.cesecore.config.ConfigurationHolder;
+import org.cesecore.config.OcspConfiguration;
+import org.junit.After;
+import org.junit.Test;
+
+/**
+ * Unit tests for {@link OcspSigningExecutor}.
+ *
+ * @version $Id$
+ */
+public class OcspSigningExecutorUnitTest {
+
+    private static final String SIGNING_KEY = "4711;OcspSigningExecutorUnitTest";
+
+    @After
+    public void tearDown() {
+        ConfigurationHolder.updateConfiguration(OcspConfiguration.SIGNING_THREADS, "16");
+        ConfigurationHolder.updateConfiguration(OcspConfiguration.SIGNING_QUEUE_SIZE, "1000");
+    }
+
+    private static OcspSigningExecutor.Statistics getStatistics(final String signingKey) {
+        for (final OcspSigningExecutor.Statistics statistics : OcspSigningExecutor.INSTANCE.getStatistics()) {
+            if (statistics.getSigningKey().equals(signingKey)) {
+                return statistics;
+            }
+        }
+        throw new AssertionError("No statistics for " + signingKey);
+    }
+
+    @Test
+    public void testFullQueueIsRejected() throws Exception {
+        ConfigurationHolder.updateConfiguration(OcspConfiguration.SIGNING_THREADS, "1");
+        ConfigurationHolder.updateConfiguration(OcspConfiguration.SIGNING_QUEUE_SIZE, "1");
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final Future<Integer> running = OcspSigningExecutor.INSTANCE.submit(SIGNING_KEY, () -> {
+            started.countDown();
+            release.await();
+            return 1;
+        });
+        started.await(10, TimeUnit.SECONDS);
+        final Future<Integer> queued = OcspSigningExecutor.INSTANCE.submit(SIGNING_KEY, () -> 2);
+        try {
+            OcspSigningExecutor.INSTANCE.submit(SIGNING_KEY, () -> 3);
+            fail("Signing should be rejected when the thread is busy and the queue is full");
+        } catch (OcspSignerBusyException e) {
+            // Expected
+        }
+        assertEquals("Other keys should not be affected", Integer.valueOf(4),
+                OcspSigningExecutor.INSTANCE.submit(SIGNING_KEY + "-other", () -> 4).get(10, TimeUnit.SECONDS));
+        OcspSigningExecutor.Statistics statistics = getStatistics(SIGNING_KEY);
+        assertEquals(1, statistics.getQueueDepth());
+        assertEquals(1, statistics.getRejected());
+        release.countDown();
+        assertEquals(Integer.valueOf(1), running.get(10, TimeUnit.SECONDS));
+        assertEquals(Integer.valueOf(2), queued.get(10, TimeUnit.SECONDS));
+        statistics = getStatistics(SIGNING_KEY);
+        assertEquals(2, statistics.getSubmitted());
+        assertEquals(2, statistics.getCompleted());
+        assertEquals(0, statistics.getQueueDepth());
+    }
+
+    @Test
+    public void testCancelledSigningLeavesQueue() throws Exception {
+        final String signingKey = SIGNING_KEY + "-cancel";
+        ConfigurationHolder.updateConfiguration(OcspConfiguration.SIGNING_THREADS, "1");
+        ConfigurationHolder.updateConfiguration(OcspConfiguration.SIGNING_QUEUE_SIZE, "1");
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final Future<Integer> running = OcspSigningExecutor.INSTANCE.submit(signingKey, () -> {
+            started.countDown();
+            release.await();
+            return 1;
+        });
+        started.await(10, TimeUnit.SECONDS);
+        final Future<Integer> timedOut = OcspSigningExecutor.INSTANCE.submit(signingKey, () -> 2);
+        // As done by the caller when it times out waiting for the response
+        timedOut.cancel(true);
+        assertEquals("A cancelled signing should not wait in the queue", 0, getStatistics(signingKey).getQueueDepth());
+        final Future<Integer> queued = OcspSigningExecutor.INSTANCE.submit(signingKey, () -> 3);
+        release.countDown();
+        assertEquals(Integer.valueOf(1), running.get(10, TimeUnit.SECONDS));
+        assertEquals(Integer.valueOf(3), queued.get(10, TimeUnit.SECONDS));
+        assertEquals(1, getStatistics(signingKey).getCancelled());
+    }
+}
@@ -0,0 +1,91 @@
+/*************************************************************************
+ *                                                                       *
+ *  EJBCA Community: The OpenSource Certificate Authority                *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.ejbca.core.ejb.ocsp;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+import java.lang.management.ManagementFactory;
+import java.math.BigInteger;
+import java.util.Arrays;
+
+import org.bouncycastle.asn1.ASN1Integer;
+import org.bouncycastle.asn1.DERNull;
+import org.bouncycastle.asn1.DEROctetString;
+import org.bouncycastle.asn1.ocsp.CertID;
+import org.bouncycastle.asn1.oiw.OIWObjectIdentifiers;
+import org.bouncycastle.asn1.x509.AlgorithmIdentifier;
+import org.bouncycastle.cert.ocsp.CertificateID;
+import org.bouncycastle.cert.ocsp.OCSPReq;
+import org.bouncycastle.cert.ocsp.OCSPReqBuilder;
+import org.junit.BeforeClass;
+import org.junit.Ignore;
+import org.junit.Test;
+
+/**
+ * Compares the heap allocation and time per request of decoding a single-CertID OCSP request with {@link SingleCertIdOcspRequestDecoder}
+ * and with the general BouncyCastle parser, reading the CertID of the decoded request as the responder does. The allocation is measured
+ * with the per-thread allocation counter of the HotSpot ThreadMXBean.
+ */
+@Ignore //Set to ignore as to not be run on a regular basis
+public class SingleCertIdOcspRequestDecoderPerformanceTest {
+
+    private static final int WARMUP_ITERATIONS = 200000;
+    private static final int ITERATIONS = 2000000;
+
+    private static byte[] request;
+
+    /** Decodes a request and returns its CertID */
+    private interface Decoder {
+        CertificateID decode(byte[] encoded) throws Exception;
+    }
+
+    @BeforeClass
+    public static void beforeClass() throws Exception {
+        final byte[] nameHash = new byte[20];
+        final byte[] keyHash = new byte[20];
+        Arrays.fill(nameHash, (byte) 0x11);
+        Arrays.fill(keyHash, (byte) 0x22);
+        final CertificateID certId = new CertificateID(new CertID(new AlgorithmIdentifier(OIWObjectIdentifiers.idSHA1, DERNull.INSTANCE),
+                new DEROctetString(nameHash), new DEROctetString(keyHash), new ASN1Integer(new BigInteger("7ffe4c9b1d3c0a5511223344", 16))));
+        request = new OCSPReqBuilder().addRequest(certId).build().getEncoded();
+    }
+
+    @Test
+    public void decodeSingleCertIdRequest() throws Exception {
+        measure("General parser", encoded -> new OCSPReq(encoded).getRequestList()[0].getCertID());
+        measure("Single CertID decoder", encoded -> SingleCertIdOcspRequestDecoder.decode(encoded).getRequestList()[0].getCertID());
+    }
+
+    private static void measure(final String description, final Decoder decoder) throws Exception {
+        final com.sun.management.ThreadMXBean threadMXBean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        final long threadId = Thread.currentThread().getId();
+        final BigInteger expectedSerialNumber = decoder.decode(request).getSerialNumber();
+        assertNotNull(expectedSerialNumber);
+        long serialNumberBits = 0;
+        for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+            serialNumberBits += decoder.decode(request).getSerialNumber().bitLength();
+        }
+        final long allocatedBefore = threadMXBean.getThreadAllocatedBytes(threadId);
+        final long start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) {
+            serialNumberBits += decoder.decode(request).getSerialNumber().bitLength();
+        }
+        final long time = System.nanoTime() - start;
+        final long allocated = threadMXBean.getThreadAllocatedBytes(threadId) - allocatedBefore;
+        // Use the result, so that the decoding can't be optimized away
+        assertEquals((long) (WARMUP_ITERATIONS + ITERATIONS) * expectedSerialNumber.bitLength(), serialNumberBits);
+        System.err.println(description + ": " + allocated / ITERATIONS + " bytes/op, " + time / ITERATIONS + " ns/op over " + ITERATIONS
+                + " requests.");
+    }
+}
@@ -0,0 +1,98 @@
+/*************************************************************************
+ *                                                                       *
+ *  EJBCA Community: The OpenSource Certificate Authority                *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.ejbca.core.ejb.ocsp;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.math.BigInteger;
+import java.util.Arrays;
+
+import org.bouncycastle.asn1.ASN1Integer;
+import org.bouncycastle.asn1.DERNull;
+import org.bouncycastle.asn1.DEROctetString;
+import org.bouncycastle.asn1.nist.NISTObjectIdentifiers;
+import org.bouncycastle.asn1.ocsp.CertID;
+import org.bouncycastle.asn1.ocsp.OCSPObjectIdentifiers;
+import org.bouncycastle.asn1.oiw.OIWObjectIdentifiers;
+import org.bouncycastle.asn1.x509.AlgorithmIdentifier;
+import org.bouncycastle.asn1.x509.Extension;
+import org.bouncycastle.asn1.x509.Extensions;
+import org.bouncycastle.cert.ocsp.CertificateID;
+import org.bouncycastle.cert.ocsp.OCSPReq;
+import org.bouncycastle.cert.ocsp.OCSPReqBuilder;
+import org.junit.Test;
+
+/**
+ * Unit tests for {@link SingleCertIdOcspRequestDecoder}, comparing the result with the general BouncyCastle parser.
+ *
+ * @version $Id$
+ */
+public class SingleCertIdOcspRequestDecoderUnitTest {
+
+    private static CertificateID createCertId(final AlgorithmIdentifier hashAlgorithm, final int hashLength, final BigInteger serialNumber) {
+        final byte[] nameHash = new byte[hashLength];
+        final byte[] keyHash = new byte[hashLength];
+        Arrays.fill(nameHash, (byte) 0x11);
+        Arrays.fill(keyHash, (byte) 0x22);
+        return new CertificateID(new CertID(hashAlgorithm, new DEROctetString(nameHash), new DEROctetString(keyHash), new ASN1Integer(serialNumber)));
+    }
+
+    private static void assertDecodedAsGeneralParser(final byte[] encoded) throws Exception {
+        final OCSPReq decoded = SingleCertIdOcspRequestDecoder.decode(encoded);
+        assertNotNull("Request should be decoded by the fast path", decoded);
+        final OCSPReq expected = new OCSPReq(encoded);
+        assertArrayEquals(expected.getEncoded(), decoded.getEncoded());
+        assertFalse(decoded.isSigned());
+        assertFalse(decoded.hasExtensions());
+        assertEquals(1, decoded.getRequestList().length);
+        assertEquals(expected.getRequestList()[0].getCertID(), decoded.getRequestList()[0].getCertID());
+    }
+
+    @Test
+    public void testSingleCertIdRequests() throws Exception {
+        assertDecodedAsGeneralParser(new OCSPReqBuilder().addRequest(createCertId(new AlgorithmIdentifier(OIWObjectIdentifiers.idSHA1, DERNull.INSTANCE),
+                20, new BigInteger("7ffe4c9b1d3c0a55", 16))).build().getEncoded());
+        assertDecodedAsGeneralParser(new OCSPReqBuilder().addRequest(createCertId(new AlgorithmIdentifier(OIWObjectIdentifiers.idSHA1),
+                20, BigInteger.ONE)).build().getEncoded());
+        assertDecodedAsGeneralParser(new OCSPReqBuilder().addRequest(createCertId(new AlgorithmIdentifier(NISTObjectIdentifiers.id_sha256),
+                32, new BigInteger("-80", 16))).build().getEncoded());
+        // 20 octet serial number with the high bit set, encoded as 21 octets
+        assertDecodedAsGeneralParser(new OCSPReqBuilder().addRequest(createCertId(new AlgorithmIdentifier(NISTObjectIdentifiers.id_sha256,
+                DERNull.INSTANCE), 32, new BigInteger("ff00112233445566778899aabbccddeeff001122", 16))).build().getEncoded());
+    }
+
+    @Test
+    public void testOtherRequestsAreLeftForGeneralParser() throws Exception {
+        final CertificateID certId = createCertId(new AlgorithmIdentifier(OIWObjectIdentifiers.idSHA1, DERNull.INSTANCE), 20, BigInteger.TEN);
+        final Extensions nonce = new Extensions(new Extension(OCSPObjectIdentifiers.id_pkix_ocsp_nonce, false, new DEROctetString(new byte[16])));
+        assertNull("Request extensions are not supported", SingleCertIdOcspRequestDecoder.decode(
+                new OCSPReqBuilder().addRequest(certId).setRequestExtensions(nonce).build().getEncoded()));
+        assertNull("Single request extensions are not supported", SingleCertIdOcspRequestDecoder.decode(
+                new OCSPReqBuilder().addRequest(certId, nonce).build().getEncoded()));
+        assertNull("Multiple CertIDs are not supported", SingleCertIdOcspRequestDecoder.decode(
+                new OCSPReqBuilder().addRequest(certId).addRequest(certId).build().getEncoded()));
+        assertNull("Other hash algorithms are not supported", SingleCertIdOcspRequestDecoder.decode(new OCSPReqBuilder()
+                .addRequest(createCertId(new AlgorithmIdentifier(NISTObjectIdentifiers.id_sha384), 48, BigInteger.TEN)).build().getEncoded()));
+        assertNull("Hash of wrong length is not supported", SingleCertIdOcspRequestDecoder.decode(new OCSPReqBuilder()
+                .addRequest(createCertId(new AlgorithmIdentifier(OIWObjectIdentifiers.idSHA1), 32, BigInteger.TEN)).build().getEncoded()));
+        final byte[] encoded = new OCSPReqBuilder().addRequest(certId).build().getEncoded();
+        assertNull("Trailing data is not supported", SingleCertIdOcspRequestDecoder.decode(Arrays.copyOf(encoded, encoded.length + 1)));
+        assertNull("Truncated request is not supported", SingleCertIdOcspRequestDecoder.decode(Arrays.copyOf(encoded, encoded.length - 1)));
+        assertNull(SingleCertIdOcspRequestDecoder.decode(new byte[0]));
+        assertNull(SingleCertIdOcspRequestDecoder.decode(new byte[] { 0x30, (byte) 0x80, 0x00, 0x00 }));
+    }
+}
@@ -0,0 +1,167 @@
+/*************************************************************************
+ *                                                                       *
+ *  EJBCA Community: The OpenSource Certificate Authority                *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.ejbca.core.ejb.ra;
+
+import static org.easymock.EasyMock.eq;
+import static org.easymock.EasyMock.expect;
+import static org.easymock.EasyMock.expectLastCall;
+import static org.easymock.EasyMock.replay;
+import static org.easymock.EasyMock.verify;
+import static org.junit.Assert.assertEquals;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import javax.ejb.EJBException;
+
+import org.cesecore.authentication.tokens.AlwaysAllowLocalAuthenticationToken;
+import org.cesecore.authentication.tokens.AuthenticationToken;
+import org.cesecore.authentication.tokens.UsernamePrincipal;
+import org.cesecore.authorization.AuthorizationDeniedException;
+import org.cesecore.authorization.AuthorizationSessionLocal;
+import org.cesecore.certificates.crl.RevocationReasons;
+import org.easymock.EasyMockRunner;
+import org.easymock.Mock;
+import org.easymock.TestSubject;
+import org.ejbca.core.ejb.ca.auth.EndEntityAuthenticationSessionLocal;
+import org.ejbca.core.ejb.ca.revoke.RevocationSessionLocal;
+import org.ejbca.core.ejb.dto.CertRevocationDto;
+import org.ejbca.core.ejb.dto.CertRevocationResultDto;
+import org.ejbca.core.ejb.dto.CertRevocationResultDto.Status;
+import org.ejbca.core.model.authorization.AccessRulesConstants;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/**
+ * Unit test of revoking a list of certificates in chunks per CA in {@link EndEntityManagementSessionBean}.
+ */
+@RunWith(EasyMockRunner.class)
+public class EndEntityManagementSessionBeanUnitTest {
+
+    private static final String CA_A = "CN=EndEntityManagementSessionBeanUnitTest A";
+    private static final String CA_B = "CN=EndEntityManagementSessionBeanUnitTest B";
+    private static final String CA_C = "CN=EndEntityManagementSessionBeanUnitTest C";
+    private static final AuthenticationToken admin = new AlwaysAllowLocalAuthenticationToken(new UsernamePrincipal("EndEntityManagementSessionBeanUnitTest"));
+
+    @Mock
+    private AuthorizationSessionLocal authorizationSession;
+    @Mock
+    private EndEntityAuthenticationSessionLocal endEntityAuthenticationSession;
+    @Mock
+    private EndEntityManagementSessionLocal endEntityManagementSessionLocal;
+    @Mock
+    private RevocationSessionLocal revocationSession;
+
+    @TestSubject
+    private final EndEntityManagementSessionBean endEntityManagementSession = new EndEntityManagementSessionBean();
+
+    @Before
+    public void setUp() {
+        expect(authorizationSession.isAuthorizedNoLogging(admin, AccessRulesConstants.REGULAR_REVOKEENDENTITY)).andReturn(true);
+    }
+
+    @Test
+    public void shouldRevokeCertificatesOfEachCaTogether() throws Exception {
+        final CertRevocationDto a1 = dto(CA_A, "a1");
+        final CertRevocationDto b1 = dto(CA_B, "b1");
+        final CertRevocationDto c1 = dto(CA_C, "c1");
+        final CertRevocationDto a2 = dto(CA_A, "a2");
+        endEntityAuthenticationSession.assertAuthorizedToCA(admin, CA_A.hashCode());
+        expectLastCall();
+        expect(endEntityManagementSessionLocal.revokeCertsWithMetadataInNewTransaction(admin, Arrays.asList(a1, a2)))
+                .andReturn(Arrays.asList(result(a1, Status.REVOKED), result(a2, Status.ALREADY_REVOKED)));
+        revocationSession.postRevokeCertificates(admin, CA_A.hashCode(), Collections.singletonList(new BigInteger("a1", 16)));
+        expectLastCall();
+        endEntityAuthenticationSession.assertAuthorizedToCA(admin, CA_B.hashCode());
+        expectLastCall();
+        expect(endEntityManagementSessionLocal.revokeCertsWithMetadataInNewTransaction(admin, Collections.singletonList(b1)))
+                .andReturn(Collections.singletonList(result(b1, Status.REVOKED)));
+        revocationSession.postRevokeCertificates(admin, CA_B.hashCode(), Collections.singletonList(new BigInteger("b1", 16)));
+        expectLastCall();
+        endEntityAuthenticationSession.assertAuthorizedToCA(admin, CA_C.hashCode());
+        expectLastCall().andThrow(new AuthorizationDeniedException("Not authorized to CA C"));
+        replay(authorizationSession, endEntityAuthenticationSession, endEntityManagementSessionLocal, revocationSession);
+
+        final List<CertRevocationResultDto> results = endEntityManagementSession.revokeCertsWithMetadata(admin, Arrays.asList(a1, b1, c1, a2));
+
+        verify(authorizationSession, endEntityAuthenticationSession, endEntityManagementSessionLocal, revocationSession);
+        assertEquals("The results should be in the order of the request.", Arrays.asList(Status.REVOKED, Status.REVOKED, Status.NOT_AUTHORIZED,
+                Status.ALREADY_REVOKED), getStatuses(results));
+        assertEquals(Arrays.asList("a1", "b1", "c1", "a2"), getSerialNumbers(results));
+    }
+
+    @Test
+    public void shouldRetryRolledBackChunkOneCertificateAtTheTime() throws Exception {
+        final CertRevocationDto a1 = dto(CA_A, "a1");
+        final CertRevocationDto a2 = dto(CA_A, "a2");
+        final CertRevocationDto a3 = dto(CA_A, "a3");
+        endEntityAuthenticationSession.assertAuthorizedToCA(admin, CA_A.hashCode());
+        expectLastCall();
+        expect(endEntityManagementSessionLocal.revokeCertsWithMetadataInNewTransaction(admin, Arrays.asList(a1, a2, a3)))
+                .andThrow(new EJBException("Deadlock"));
+        expect(endEntityManagementSessionLocal.revokeCertsWithMetadataInNewTransaction(admin, Collections.singletonList(a1)))
+                .andReturn(Collections.singletonList(result(a1, Status.REVOKED)));
+        expect(endEntityManagementSessionLocal.revokeCertsWithMetadataInNewTransaction(admin, Collections.singletonList(a2)))
+                .andReturn(Collections.singletonList(result(a2, Status.NOT_FOUND)));
+        expect(endEntityManagementSessionLocal.revokeCertsWithMetadataInNewTransaction(admin, Collections.singletonList(a3)))
+                .andReturn(null);
+        revocationSession.postRevokeCertificates(eq(admin), eq(CA_A.hashCode()), eq(Collections.singletonList(new BigInteger("a1", 16))));
+        expectLastCall();
+        replay(authorizationSession, endEntityAuthenticationSession, endEntityManagementSessionLocal, revocationSession);
+
+        final List<CertRevocationResultDto> results = endEntityManagementSession.revokeCertsWithMetadata(admin, Arrays.asList(a1, a2, a3));
+
+        verify(authorizationSession, endEntityAuthenticationSession, endEntityManagementSessionLocal, revocationSession);
+        assertEquals(Arrays.asList(Status.REVOKED, Status.NOT_FOUND, Status.FAILED), getStatuses(results));
+    }
+
+    @Test
+    public void shouldNotRevokeInvalidRequests() throws Exception {
+        final CertRevocationDto noReason = new CertRevocationDto(CA_A, "a1");
+        final CertRevocationDto notHex = dto(CA_A, "xyz");
+        replay(authorizationSession, endEntityAuthenticationSession, endEntityManagementSessionLocal, revocationSession);
+
+        final List<CertRevocationResultDto> results = endEntityManagementSession.revokeCertsWithMetadata(admin, Arrays.asList(noReason, notHex));
+
+        verify(authorizationSession, endEntityAuthenticationSession, endEntityManagementSessionLocal, revocationSession);
+        assertEquals(Arrays.asList(Status.FAILED, Status.FAILED), getStatuses(results));
+    }
+
+    private static CertRevocationDto dto(final String issuerDn, final String serialNumber) {
+        return new CertRevocationDto(issuerDn, serialNumber, RevocationReasons.KEYCOMPROMISE.getDatabaseValue());
+    }
+
+    private static CertRevocationResultDto result(final CertRevocationDto certRevocationDto, final Status status) {
+        return new CertRevocationResultDto(certRevocationDto, status, null);
+    }
+
+    private static List<Status> getStatuses(final List<CertRevocationResultDto> results) {
+        final List<Status> statuses = new ArrayList<>();
+        for (final CertRevocationResultDto result : results) {
+            statuses.add(result.getStatus());
+        }
+        return statuses;
+    }
+
+    private static List<String> getSerialNumbers(final List<CertRevocationResultDto> results) {
+        final List<String> serialNumbers = new ArrayList<>();
+        for (final CertRevocationResultDto result : results) {
+            serialNumbers.add(result.getCertificateSN());
+        }
+        return serialNumbers;
+    }
+}
@@ -0,0 +1,96 @@
+/*************************************************************************
+ *                                                                       *
+ *  EJBCA Community: The OpenSource Certificate Authority                *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.ejbca.core.model.era;
+
+import static org.easymock.EasyMock.createMock;
+import static org.easymock.EasyMock.expect;
+import static org.easymock.EasyMock.replay;
+import static org.easymock.EasyMock.verify;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.cesecore.authentication.tokens.AlwaysAllowLocalAuthenticationToken;
+import org.cesecore.authentication.tokens.AuthenticationToken;
+import org.cesecore.authentication.tokens.UsernamePrincipal;
+import org.cesecore.certificates.crl.RevocationReasons;
+import org.ejbca.core.ejb.dto.CertRevocationDto;
+import org.ejbca.core.ejb.dto.CertRevocationResultDto;
+import org.ejbca.core.ejb.dto.CertRevocationResultDto.Status;
+import org.junit.Test;
+
+/**
+ * Unit test of how {@link RaMasterApiProxyBean} forwards the certificates in a revocation of a list of certificates to the backends.
+ */
+public class RaMasterApiProxyBeanUnitTest {
+
+    private static final AuthenticationToken admin = new AlwaysAllowLocalAuthenticationToken(new UsernamePrincipal("RaMasterApiProxyBeanUnitTest"));
+
+    @Test
+    public void shouldForwardCertificatesOfUnknownCasToNextBackend() throws Exception {
+        final CertRevocationDto first = dto("CN=First CA", "1");
+        final CertRevocationDto second = dto("CN=Second CA", "2");
+        final CertRevocationDto unknown = dto("CN=Unknown CA", "3");
+        final RaMasterApi oldBackend = backend(17);
+        final RaMasterApi firstBackend = backend(18);
+        expect(firstBackend.revokeCertsWithMetadata(admin, Arrays.asList(first, second, unknown))).andReturn(Arrays.asList(
+                result(first, Status.REVOKED), result(second, Status.CA_NOT_FOUND), result(unknown, Status.CA_NOT_FOUND)));
+        final RaMasterApi secondBackend = backend(18);
+        final CertRevocationResultDto secondResult = result(second, Status.NOT_FOUND);
+        final CertRevocationResultDto unknownResult = result(unknown, Status.CA_NOT_FOUND);
+        expect(secondBackend.revokeCertsWithMetadata(admin, Arrays.asList(second, unknown))).andReturn(Arrays.asList(secondResult, unknownResult));
+        replay(oldBackend, firstBackend, secondBackend);
+        final RaMasterApiProxyBean raMasterApiProxyBean = new RaMasterApiProxyBean(null, null, null, oldBackend, firstBackend, secondBackend);
+
+        final List<CertRevocationResultDto> results = raMasterApiProxyBean.revokeCertsWithMetadata(admin, Arrays.asList(first, second, unknown));
+
+        verify(oldBackend, firstBackend, secondBackend);
+        assertEquals(Status.REVOKED, results.get(0).getStatus());
+        assertSame("The result of the backend that handles the CA should be used.", secondResult, results.get(1));
+        assertSame("Certificates of a CA that no backend handles should be reported as such.", unknownResult, results.get(2));
+    }
+
+    @Test
+    public void shouldNotForwardWhenAllCertificatesAreHandled() throws Exception {
+        final CertRevocationDto first = dto("CN=First CA", "1");
+        final RaMasterApi firstBackend = backend(18);
+        expect(firstBackend.revokeCertsWithMetadata(admin, Collections.singletonList(first)))
+                .andReturn(Collections.singletonList(result(first, Status.ALREADY_REVOKED)));
+        final RaMasterApi secondBackend = backend(18);
+        replay(firstBackend, secondBackend);
+        final RaMasterApiProxyBean raMasterApiProxyBean = new RaMasterApiProxyBean(null, null, null, firstBackend, secondBackend);
+
+        final List<CertRevocationResultDto> results = raMasterApiProxyBean.revokeCertsWithMetadata(admin, Collections.singletonList(first));
+
+        verify(firstBackend, secondBackend);
+        assertEquals(Status.ALREADY_REVOKED, results.get(0).getStatus());
+    }
+
+    private static RaMasterApi backend(final int apiVersion) {
+        final RaMasterApi raMasterApi = createMock(RaMasterApi.class);
+        expect(raMasterApi.isBackendAvailable()).andStubReturn(true);
+        expect(raMasterApi.getApiVersion()).andStubReturn(apiVersion);
+        return raMasterApi;
+    }
+
+    private static CertRevocationDto dto(final String issuerDn, final String serialNumber) {
+        return new CertRevocationDto(issuerDn, serialNumber, RevocationReasons.KEYCOMPROMISE.getDatabaseValue());
+    }
+
+    private static CertRevocationResultDto result(final CertRevocationDto certRevocationDto, final Status status) {
+        return new CertRevocationResultDto(certRevocationDto, status, null);
+    }
+}
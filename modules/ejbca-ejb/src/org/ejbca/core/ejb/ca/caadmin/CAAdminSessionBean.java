@@ -182,6 +182,9 @@ import org.ejbca.core.ejb.audit.enums.EjbcaServiceTypes;
 import org.ejbca.core.ejb.ca.publisher.PublisherSessionLocal;
 import org.ejbca.core.ejb.ca.revoke.RevocationSessionLocal;
 import org.ejbca.core.ejb.crl.PublishingCrlSessionLocal;
+import org.ejbca.core.ejb.ocsp.OcspDataSessionLocal;
+import org.ejbca.core.ejb.ocsp.OcspResponseUpdateResult;
+import org.ejbca.core.ejb.ocsp.OcspResponseUpdaterSessionLocal;
 import org.ejbca.core.ejb.ra.EndEntityAccessSessionLocal;
 import org.ejbca.core.ejb.ra.EndEntityManagementSessionLocal;
 import org.ejbca.core.ejb.ra.NoSuchEndEntityException;
@@ -235,6 +238,9 @@ public class CAAdminSessionBean implements CAAdminSessionLocal, CAAdminSessionRe
 
     private static final Logger log = Logger.getLogger(CAAdminSessionBean.class);
 
+    /** Number of certificates that OCSP responses are pre-produced for in each transaction after a CA has been revoked */
+    private static final int OCSP_PREPRODUCTION_BATCH_SIZE = 1000;
+
     @PersistenceContext(unitName = "ejbca")
     private EntityManager entityManager;
 
@@ -253,6 +259,10 @@ public class CAAdminSessionBean implements CAAdminSessionLocal, CAAdminSessionRe
     @EJB
     private CrlStoreSessionLocal crlStoreSession;
     @EJB
+    private OcspDataSessionLocal ocspDataSession;
+    @EJB
+    private OcspResponseUpdaterSessionLocal ocspResponseUpdaterSession;
+    @EJB
     private CryptoTokenManagementSessionLocal cryptoTokenManagementSession;
     @EJB
     private CryptoTokenSessionLocal cryptoTokenSession;
@@ -2551,6 +2561,9 @@ public class CAAdminSessionBean implements CAAdminSessionLocal, CAAdminSessionRe
             if (ca.getStatus() != CAConstants.CA_EXTERNAL) {
                 certificateStoreSession.revokeAllCertByCA(admin, ca.getSubjectDN(), reason);
                 publishingCrlSession.forceCRL(admin, ca.getCAId());
+                // Stored OCSP responses still say that the certificates are good, so produce them again with the revoked status
+                ocspDataSession.deleteOcspDataByCaId(ca.getCAId());
+                preProduceOcspResponses(admin, ca.getCAId());
             }
             ca.setRevocationReason(reason);
             ca.setRevocationDate(new Date());
@@ -2574,6 +2587,26 @@ public class CAAdminSessionBean implements CAAdminSessionLocal, CAAdminSessionRe
         }
     }
 
+    /**
+     * Pre-produces OCSP responses for all certificates of the CA that have no stored response, if pre-production is enabled for the CA.
+     * Each chunk is signed and stored in a transaction of its own.
+     */
+    private void preProduceOcspResponses(final AuthenticationToken admin, final int caId) throws AuthorizationDeniedException, CADoesntExistsException {
+        int renewed = 0;
+        int failures = 0;
+        String fingerprint = "";
+        OcspResponseUpdateResult result;
+        do {
+            result = ocspResponseUpdaterSession.updateOcspResponses(admin, caId, 0, fingerprint, OCSP_PREPRODUCTION_BATCH_SIZE);
+            fingerprint = result.getLastFingerprint();
+            renewed += result.getResponsesRenewed();
+            failures += result.getFailures();
+        } while (!result.isDone());
+        if (renewed > 0 || failures > 0) {
+            log.info("Pre-produced " + renewed + " OCSP responses for revoked CA with ID " + caId + ", " + failures + " responses could not be produced.");
+        }
+    }
+
     @Override
     public void importCAFromKeyStore(AuthenticationToken admin, String caname, byte[] p12file, String keystorepass, String privkeypass,
                                      String privateSignatureKeyAlias, String privateEncryptionKeyAlias) {
@@ -62,6 +62,7 @@ import javax.ejb.TransactionAttribute;
 import javax.ejb.TransactionAttributeType;
 import javax.persistence.EntityManager;
 import javax.persistence.PersistenceContext;
+import java.math.BigInteger;
 import java.security.cert.Certificate;
 import java.security.cert.CertificateParsingException;
 import java.util.ArrayList;
@@ -139,6 +140,14 @@ public class RevocationSessionBean implements RevocationSessionLocal, Revocation
     @Override
     public void revokeCertificate(final AuthenticationToken admin, final CertificateDataWrapper cdw, final Collection<Integer> publishers,
             Date revocationDate, Date invalidityDate, final int reason, final String userDataDN) throws CertificateRevokeException, AuthorizationDeniedException {
+        revokeCertificate(admin, cdw, publishers, revocationDate, invalidityDate, reason, userDataDN, true);
+    }
+
+    @TransactionAttribute(TransactionAttributeType.REQUIRED)
+    @Override
+    public void revokeCertificate(final AuthenticationToken admin, final CertificateDataWrapper cdw, final Collection<Integer> publishers,
+            Date revocationDate, Date invalidityDate, final int reason, final String userDataDN, final boolean postRevokeCertificate)
+            throws CertificateRevokeException, AuthorizationDeniedException {
     	final boolean waschanged = noConflictCertificateStoreSession.setRevokeStatus(admin, cdw, getRevocationDate(admin, cdw, revocationDate, reason), invalidityDate, reason);
     	// Only publish the revocation if it was actually performed
     	if (waschanged) {
@@ -169,9 +178,26 @@ public class RevocationSessionBean implements RevocationSessionLocal, Revocation
     			// revocation
                 publisherSession.storeCertificate(admin, publishers, cdw, password, userDataDN, null);
     		}
-            postRevokeCertificate(admin, cdw);
+            if (postRevokeCertificate) {
+                postRevokeCertificate(admin, cdw);
+            }
     	}
     }
+
+    @TransactionAttribute(TransactionAttributeType.REQUIRED)
+    @Override
+    public void postRevokeCertificates(final AuthenticationToken admin, final int caId, final Collection<BigInteger> serialNumbers)
+            throws AuthorizationDeniedException {
+        final CAInfo caInfo = caSession.getCAInfo(admin, caId);
+        if (caInfo != null) {
+            // The CA is loaded once for all certificates
+            final CA ca = (CA) caSession.getCANoLog(admin, caId, null);
+            if (ca != null) {
+                ocspResponseSigningSession.preSignOcspResponses(ca, serialNumbers);
+            }
+        }
+        generateCrlUponRevocation(admin, caInfo, caId);
+    }
     
     private AuthenticationToken getOrCreateAuthorizedTokenCreateCrl(final AuthenticationToken admin, String caName) {
         // ca_access permission is checked already
@@ -183,7 +209,7 @@ public class RevocationSessionBean implements RevocationSessionLocal, Revocation
     }
 
     /**
-     * Performs post-revocation actions. Currently, it only generates a new CRL, if CRL generation on revocation is configured.
+     * Performs post-revocation actions. Pre-signs an OCSP response, and generates a new CRL if CRL generation on revocation is configured.
      */
     private void postRevokeCertificate(final AuthenticationToken admin, final CertificateDataWrapper cdw) throws AuthorizationDeniedException {
         BaseCertificateData baseCertificateData = cdw.getBaseCertificateData();
@@ -192,6 +218,10 @@ public class RevocationSessionBean implements RevocationSessionLocal, Revocation
         final CAInfo caInfo = caSession.getCAInfo(admin, caId);
 
         preSignOcspResponse(admin, caInfo, cdw, caId);
+        generateCrlUponRevocation(admin, caInfo, caId);
+    }
+
+    private void generateCrlUponRevocation(final AuthenticationToken admin, final CAInfo caInfo, final int caId) {
         // ECA-9716 caInfo == null with self-signed certificates stored in DB before revoking
         // an end entity (found in EndEntityManagementSessionTest.testRevokeEndEntity)
         if (caInfo != null && caInfo.isGenerateCrlUponRevocation()) {
@@ -322,8 +352,15 @@ public class RevocationSessionBean implements RevocationSessionLocal, Revocation
             final CertificateProfile certProfile = certificateProfileSession.getCertificateProfile(incompleteIssuedCert.getCertificateProfileId());
             final List<Integer> publishers = certProfile.getPublisherList();
             try {
-                // Add certificate in revoked state
                 final Certificate cert = CertTools.getCertfromByteArray(incompleteIssuedCert.getCertBytes(), BouncyCastleProvider.PROVIDER_NAME, Certificate.class);
+                final CertificateDataWrapper storedCdw = certificateStoreSession.getCertificateData(CertTools.getFingerprintAsString(cert));
+                if (storedCdw != null) {
+                    // The certificate was stored in a transaction of its own, by a group commit, but the issuance was never completed
+                    revokeCertificate(admin, storedCdw, publishers, now, null, revocationReason.getDatabaseValue(), storedCdw.getBaseCertificateData().getSubjectDN());
+                    incompleteIssuanceJournalDataSession.removeFromJournal(incompleteIssuedCert.getCaId(), incompleteIssuedCert.getSerialNumber());
+                    continue;
+                }
+                // Add certificate in revoked state
                 final CertificateDataWrapper cdw = certificateStoreSession.storeCertificateRevokedNoAuth(admin, cert, incompleteIssuedCert.getUsername(),
                         incompleteIssuedCert.getCaFingerprint(), null, CertificateConstants.CERT_REVOKED, certProfile.getType(), incompleteIssuedCert.getCertificateProfileId(),
                         incompleteIssuedCert.getEndEntityProfileId(), incompleteIssuedCert.getCrlPartitionIndex(), CertificateConstants.CERT_TAG_PRECERT, now.getTime(),
@@ -335,7 +372,7 @@ public class RevocationSessionBean implements RevocationSessionLocal, Revocation
                 postRevokeCertificate(admin, cdw);
                 // The certificate is now in a meaningful state, so it can be removed from IncompleteIssuanceJournalData
                 incompleteIssuanceJournalDataSession.removeFromJournal(incompleteIssuedCert.getCaId(), incompleteIssuedCert.getSerialNumber());
-            } catch (CertificateParsingException e) {
+            } catch (CertificateParsingException | CertificateRevokeException e) {
                 log.error("Failed to revoke incompletely issued certificate, with CA ID " + incompleteIssuedCert.getCaId() + " and serial " + incompleteIssuedCert.getSerialNumber().toString(16));
             }
         }
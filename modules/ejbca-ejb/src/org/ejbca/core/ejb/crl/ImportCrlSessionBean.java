@@ -12,38 +12,53 @@
  *************************************************************************/
 package org.ejbca.core.ejb.crl;
 
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.math.BigInteger;
-import java.security.InvalidKeyException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
-import java.security.NoSuchProviderException;
 import java.security.SignatureException;
 import java.security.cert.CRLException;
-import java.security.cert.X509CRL;
-import java.security.cert.X509CRLEntry;
 import java.security.cert.X509Certificate;
-import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Date;
-import java.util.HashSet;
-import java.util.Set;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
+import javax.annotation.PostConstruct;
+import javax.annotation.Resource;
 import javax.ejb.EJB;
+import javax.ejb.SessionContext;
 import javax.ejb.Stateless;
 import javax.ejb.TransactionAttribute;
 import javax.ejb.TransactionAttributeType;
+import javax.security.auth.x500.X500Principal;
 
 import org.apache.log4j.Logger;
-import org.bouncycastle.asn1.ASN1GeneralizedTime;
+import org.bouncycastle.operator.OperatorCreationException;
 import org.cesecore.authentication.tokens.AuthenticationToken;
 import org.cesecore.authorization.AuthorizationDeniedException;
 import org.cesecore.certificates.ca.CAInfo;
 import org.cesecore.certificates.certificate.CertificateConstants;
-import org.cesecore.certificates.certificate.CertificateDataWrapper;
+import org.cesecore.certificates.certificate.CertificateDataSessionLocal;
+import org.cesecore.certificates.certificate.CertificateStatusInfo;
 import org.cesecore.certificates.certificate.CertificateStoreSessionLocal;
+import org.cesecore.certificates.crl.CRLInfo;
 import org.cesecore.certificates.crl.CrlImportException;
 import org.cesecore.certificates.crl.CrlStoreException;
 import org.cesecore.certificates.crl.CrlStoreSessionLocal;
-import org.cesecore.certificates.util.cert.CrlExtensions;
+import org.cesecore.certificates.crl.RevokedCertInfo;
+import org.cesecore.certificates.crl.StreamingCrlParser;
 import org.cesecore.jndi.JndiConstants;
+import org.ejbca.config.EjbcaConfiguration;
 import org.ejbca.core.ejb.ra.EndEntityManagementSessionLocal;
 import org.ejbca.core.ejb.ra.NoSuchEndEntityException;
 import org.ejbca.core.model.approval.ApprovalException;
@@ -59,28 +74,65 @@ public class ImportCrlSessionBean implements ImportCrlSessionLocal, ImportCrlSes
 
     private static final Logger log = Logger.getLogger(ImportCrlSessionBean.class);
 
+    /** The maximum number of serial numbers in the IN list of a query */
+    private static final int MAX_SERIALNUMBERS_IN_QUERY = 500;
+
+    @Resource
+    private SessionContext sessionContext;
+    @EJB
+    private CertificateDataSessionLocal certificateDataSession;
     @EJB
     private CertificateStoreSessionLocal certStoreSession;
     @EJB
     private CrlStoreSessionLocal crlStoreSession;
     @EJB
     private EndEntityManagementSessionLocal endentityManagementSession;
-    
+
+    private ImportCrlSessionLocal importCrlSession;
+
+    @PostConstruct
+    public void postConstruct() {
+        importCrlSession = sessionContext.getBusinessObject(ImportCrlSessionLocal.class);
+    }
+
     @Override
     public void importCrl(final AuthenticationToken authenticationToken, final CAInfo cainfo, final byte[] crlbytes, final int crlPartitionIndex)
             throws CrlImportException, CrlStoreException, CRLException, AuthorizationDeniedException {
+        importCrl(authenticationToken, cainfo, () -> new ByteArrayInputStream(crlbytes), () -> crlbytes, crlPartitionIndex);
+    }
 
-        X509CRL x509crl = CertTools.getCRLfromByteArray(crlbytes);
-        
+    @Override
+    public void importCrl(final AuthenticationToken authenticationToken, final CAInfo cainfo, final Path crlFile, final int crlPartitionIndex)
+            throws CrlImportException, CrlStoreException, CRLException, AuthorizationDeniedException {
+        importCrl(authenticationToken, cainfo, () -> Files.newInputStream(crlFile), () -> Files.readAllBytes(crlFile), crlPartitionIndex);
+    }
+
+    /**
+     * Where a CRL being imported is read from. The CRL is read more than once, and each read is checked against the SHA-256 hash of the first one,
+     * where the signature is verified, since a file may be changed between the reads.
+     */
+    private interface CrlSource<T> {
+        T open() throws IOException;
+    }
+
+    /**
+     * Verifies the CRL in a first pass over it, then reads its entries in a second pass and applies them in batches. Only a batch of entries is held in
+     * memory at a time. The last batch is applied, and the CRL is stored, only if the CRL that was read is the one that was verified.
+     */
+    private void importCrl(final AuthenticationToken authenticationToken, final CAInfo cainfo, final CrlSource<InputStream> crlStream,
+            final CrlSource<byte[]> crlBytes, final int crlPartitionIndex)
+            throws CrlImportException, CrlStoreException, CRLException, AuthorizationDeniedException {
         X509Certificate cacert = (X509Certificate) cainfo.getCertificateChain().iterator().next();
         final String caFingerprint = CertTools.getFingerprintAsString(cacert);
         final String issuerDn = CertTools.getSubjectDN(cacert);
         
-        verifyCrlIssuer(x509crl, issuerDn, cacert);
+        final MessageDigest crlDigest = getSha256Digest();
+        final StreamingCrlParser crl = verifyCrl(crlStream, crlDigest, issuerDn, cacert);
+        final byte[] crlHash = crlDigest.digest();
         
         // Check if the CRL is already stored locally
-        final boolean isDeltaCrl = CrlExtensions.getDeltaCRLIndicator(x509crl).intValue() != -1;
-        final int downloadedCrlNumber = CrlExtensions.getCrlNumber(x509crl).intValue();
+        final boolean isDeltaCrl = crl.isDeltaCrl();
+        final int downloadedCrlNumber = crl.getCrlNumber().intValue();
         if (log.isTraceEnabled()) {
             log.trace("Delta CRL:  " + isDeltaCrl);
             log.trace("IssuerDn:   " + issuerDn);
@@ -90,71 +142,52 @@ public class ImportCrlSessionBean implements ImportCrlSessionLocal, ImportCrlSes
             }
         }
         
-        X509CRL lastCrlOfSameType = getLastCrlOfSameType(x509crl, isDeltaCrl, issuerDn, crlPartitionIndex);
-        if (lastCrlOfSameType != null && !x509crl.getThisUpdate().after(lastCrlOfSameType.getThisUpdate())) {
+        final CRLInfo lastCrlOfSameType = crlStoreSession.getLastCRLInfoLightWeight(issuerDn, crlPartitionIndex, isDeltaCrl);
+        if (lastCrlOfSameType != null && !crl.getThisUpdate().after(lastCrlOfSameType.getCreateDate())) {
             log.info((isDeltaCrl ? "Delta" : "Full") + " CRL number " + downloadedCrlNumber + " for CA '" + cainfo.getName() +
                     "' is not newer than last known " + (isDeltaCrl ? "delta" : "full") + " CRL. Ignoring download.");
             return;
         }
         
         // If the CRL is newer than the last known or there wasn't any old one, loop through it
-        if (x509crl.getRevokedCertificates()==null) {
+        if (crl.getEntryCount() == 0) {
             log.info("No revoked certificates in " + (isDeltaCrl?"delta":"full") + " CRL for CA '" + cainfo.getName() + "'");
         } else {
-            final Set<X509CRLEntry> crlEntries = new HashSet<X509CRLEntry>();
-            crlEntries.addAll(x509crl.getRevokedCertificates());
             if (log.isDebugEnabled()) {
-                log.debug("Downloaded CRL contains " + crlEntries.size() + " entries.");
+                log.debug("Downloaded CRL contains " + crl.getEntryCount() + " entries.");
             }
-            
-            if(lastCrlOfSameType != null && lastCrlOfSameType.getRevokedCertificates()!=null) {
-                if (log.isDebugEnabled()) {
-                    log.debug("Last known CRL contains " + lastCrlOfSameType.getRevokedCertificates().size() + " entries.");
-                }
-                // Remove all entries that were processed last time
-                crlEntries.removeAll(lastCrlOfSameType.getRevokedCertificates());
-            }
-        
-            log.info("Found " + crlEntries.size() + " new entires in " + (isDeltaCrl?"delta":"full")+ " CRL number " + downloadedCrlNumber + " issued by '" + issuerDn + "' compared to previous.");
-            // For each entry that was updated after the last known CRL, create/update a new database entry with the new status
-            for (final X509CRLEntry crlEntry : crlEntries) {
-                final Date revocationDate = crlEntry.getRevocationDate();
-                final BigInteger serialNumber = crlEntry.getSerialNumber();
-                Date invalidityDate = null;
-                ASN1GeneralizedTime asn1GeneralizedTime = CrlExtensions.extractInvalidityDate(crlEntry);
-                if (asn1GeneralizedTime != null) {
-                    try {
-                        invalidityDate = asn1GeneralizedTime.getDate();
-                    } catch (ParseException e) {
-                        log.info("Failed to parse invalidityDate for crl entry with serial number " + serialNumber);
-                    }
-                }
-                final int reasonCode = CrlExtensions.extractReasonCode(crlEntry);
-                if (crlEntry.getCertificateIssuer()!=null) {
-                    final String entryIssuerDn = CertTools.stringToBCDNString(crlEntry.getCertificateIssuer().getName());
-                    if (!issuerDn.equals(entryIssuerDn)) {
-                        log.warn("CA's subjectDN does not match CRL entry's issuerDn '"+entryIssuerDn+"' and entry with serialNumber " + serialNumber + " will be ignored.");
+            // Create/update a database entry with the new status for each entry whose certificate does not already have the status.
+            // The entries are applied in batches, each in its own transaction. If the import fails, importing the CRL again
+            // skips the entries that were applied before the failure. Entries that are the same as on the previous CRL of the
+            // same type were applied when that CRL was imported, and are not looked up again.
+            final long[] previousEntries = getPreviousCrlEntries(issuerDn, crlPartitionIndex, lastCrlOfSameType);
+            final int batchSize = EjbcaConfiguration.getCrlImportBatchSize();
+            int changedEntries = 0;
+            int unchangedEntries = 0;
+            try (final DigestInputStream in = new DigestInputStream(crlStream.open(), getSha256Digest())) {
+                final StreamingCrlParser entries = new StreamingCrlParser(in, null);
+                List<RevokedCertInfo> batch = entries.readEntries(batchSize);
+                while (!batch.isEmpty()) {
+                    final List<RevokedCertInfo> nextBatch = entries.readEntries(batchSize);
+                    if (nextBatch.isEmpty()) {
+                        // A file that was changed after it was verified can't be detected before the whole file has been read, so
+                        // the last batch, which completes the import, waits for that
+                        entries.readTrailer();
+                        readToEnd(in);
+                        checkCrlHash(crlHash, in.getMessageDigest().digest());
                     }
-                }
-                
-                final CertificateDataWrapper cdw = certStoreSession.getCertificateDataByIssuerAndSerno(issuerDn, serialNumber);
-                if(isLimitedCertificate(issuerDn, serialNumber, cdw)) {
-                    // Store as much as possible about what we know about the certificate and its status (which is limited) in the database
-                    certStoreSession.updateLimitedCertificateDataStatus(authenticationToken, cainfo.getCAId(), issuerDn, serialNumber, revocationDate, reasonCode, caFingerprint, invalidityDate);
-                } else {
-                    final String serialHex = serialNumber.toString(16).toUpperCase();
-                    log.info("Revoking '" + serialHex + "' " + "(" + serialNumber.toString() + ")");
-                    try {
-                        //log.info("Reason code: " + reason);
-                        endentityManagementSession.revokeCert(authenticationToken, serialNumber, crlEntry.getRevocationDate(), invalidityDate, issuerDn, reasonCode, false);
-                    } catch (AlreadyRevokedException e) {
-                        log.warn("Failed to revoke '" + serialHex + "'. (Status might be 'Archived'.) Error message was: " + e.getMessage());
-                    } catch (ApprovalException | RevokeBackDateNotAllowedForProfileException | NoSuchEndEntityException | WaitingForApprovalException e) {
-                        throw new CrlImportException("Failed to revoke certificate with serial number " + serialHex, e);
+                    final List<RevokedCertInfo> newEntries = getNewEntries(batch, previousEntries);
+                    unchangedEntries += batch.size() - newEntries.size();
+                    if (!newEntries.isEmpty()) {
+                        changedEntries += importCrlSession.importCrlEntries(authenticationToken, cainfo, issuerDn, caFingerprint, newEntries);
                     }
-                    
+                    batch = nextBatch;
                 }
+            } catch (IOException | SignatureException e) {
+                throw new CrlImportException("Failed to read the entries of the CRL.", e);
             }
+            log.info("Found " + crl.getEntryCount() + " entires in " + (isDeltaCrl?"delta":"full")+ " CRL number " + downloadedCrlNumber + " issued by '" + issuerDn
+                    + "', of which " + unchangedEntries + " were unchanged since the previous CRL. Changed the status of " + changedEntries + " certificates.");
         }
         // Calculate (make up) the CRL Number if the number was not present
         final int newCrlNumber;
@@ -165,40 +198,185 @@ public class ImportCrlSessionBean implements ImportCrlSessionLocal, ImportCrlSes
             newCrlNumber = downloadedCrlNumber;
         }
         // Last of all, store the CRL if there were no errors during creation of database entries
-        crlStoreSession.storeCRL(authenticationToken, x509crl.getEncoded(), caFingerprint, newCrlNumber, issuerDn, crlPartitionIndex, x509crl.getThisUpdate(), x509crl.getNextUpdate(), isDeltaCrl?1:-1);
+        final byte[] encoded;
+        try {
+            encoded = crlBytes.open();
+        } catch (IOException e) {
+            throw new CrlImportException("Failed to read the CRL.", e);
+        }
+        checkCrlHash(crlHash, getSha256Digest().digest(encoded));
+        crlStoreSession.storeCRL(authenticationToken, encoded, caFingerprint, newCrlNumber, issuerDn, crlPartitionIndex, crl.getThisUpdate(), crl.getNextUpdate(), isDeltaCrl?1:-1);
     
     }
     
-    private void verifyCrlIssuer(final X509CRL crl, final String issuerDN, final X509Certificate cacert) throws CrlImportException {
-        log.info("CA: " + issuerDN);
-        // Read the supplied CRL and verify that it is issued by the specified CA
-        if (!crl.getIssuerX500Principal().equals(cacert.getSubjectX500Principal())) {
-            throw new CrlImportException("CRL wasn't issued by " + issuerDN);
+    @Override
+    @TransactionAttribute(TransactionAttributeType.REQUIRES_NEW)
+    public int importCrlEntries(final AuthenticationToken authenticationToken, final CAInfo cainfo, final String issuerDn, final String caFingerprint,
+            final List<RevokedCertInfo> crlEntries) throws CrlImportException, AuthorizationDeniedException {
+        // Read the statuses of the whole batch up front, instead of looking up each certificate
+        final Map<BigInteger, CertificateStatusInfo> statuses = new HashMap<>();
+        final List<String> serialNumbers = new ArrayList<>(crlEntries.size());
+        for (final RevokedCertInfo crlEntry : crlEntries) {
+            serialNumbers.add(crlEntry.getUserCertificate().toString());
         }
-        
+        for (int i = 0; i < serialNumbers.size(); i += MAX_SERIALNUMBERS_IN_QUERY) {
+            for (final CertificateStatusInfo statusInfo : certificateDataSession.findStatusesByIssuerDNAndSerialNumbers(issuerDn,
+                    serialNumbers.subList(i, Math.min(i + MAX_SERIALNUMBERS_IN_QUERY, serialNumbers.size())))) {
+                statuses.put(new BigInteger(statusInfo.getSerialNumber()), statusInfo);
+            }
+        }
+        final List<RevokedCertInfo> limitedEntries = new ArrayList<>();
+        int changed = 0;
+        for (final RevokedCertInfo crlEntry : crlEntries) {
+            final BigInteger serialNumber = crlEntry.getUserCertificate();
+            final CertificateStatusInfo status = statuses.get(serialNumber);
+            if (status == null || isLimitedCertificate(issuerDn, serialNumber, status.getFingerprint())) {
+                // Store as much as possible about what we know about the certificate and its status (which is limited) in the database
+                limitedEntries.add(crlEntry);
+            } else if (status.getStatus() == CertificateConstants.CERT_REVOKED && isSameRevocationDate(status.getRevocationDate(), crlEntry.getRevocationDate())
+                    && status.getRevocationReason() == crlEntry.getReason()) {
+                if (log.isDebugEnabled()) {
+                    log.debug("Certificate '" + serialNumber.toString(16).toUpperCase() + "' is already revoked as in the CRL.");
+                }
+            } else {
+                final String serialHex = serialNumber.toString(16).toUpperCase();
+                log.info("Revoking '" + serialHex + "' " + "(" + serialNumber.toString() + ")");
+                try {
+                    endentityManagementSession.revokeCert(authenticationToken, serialNumber, crlEntry.getRevocationDate(), crlEntry.getInvalidityDate(),
+                            issuerDn, crlEntry.getReason(), false);
+                    changed++;
+                } catch (AlreadyRevokedException e) {
+                    log.warn("Failed to revoke '" + serialHex + "'. (Status might be 'Archived'.) Error message was: " + e.getMessage());
+                } catch (ApprovalException | RevokeBackDateNotAllowedForProfileException | NoSuchEndEntityException | WaitingForApprovalException e) {
+                    throw new CrlImportException("Failed to revoke certificate with serial number " + serialHex, e);
+                }
+            }
+        }
+        if (!limitedEntries.isEmpty()) {
+            changed += certStoreSession.updateLimitedCertificateDataStatuses(authenticationToken, cainfo.getCAId(), issuerDn, caFingerprint, limitedEntries);
+        }
+        return changed;
+    }
+
+    /** @return true if a revocation date in the database is the same as on a CRL, where the dates are encoded in whole seconds */
+    static boolean isSameRevocationDate(final long revocationDate, final Date crlRevocationDate) {
+        return revocationDate / 1000 == crlRevocationDate.getTime() / 1000;
+    }
+
+    /**
+     * Reads the entries of the previous CRL of the same type that was imported, as a sorted array of entry hashes. Only the hashes are kept,
+     * so that the entries of a large CRL fit in memory.
+     *
+     * @return the hashes, or an empty array if there is no previous CRL or it could not be read
+     */
+    private long[] getPreviousCrlEntries(final String issuerDn, final int crlPartitionIndex, final CRLInfo previousCrl) {
+        if (previousCrl == null) {
+            return new long[0];
+        }
+        try (final InputStream in = crlStoreSession.getCRLStream(issuerDn, crlPartitionIndex, previousCrl.getLastCRLNumber())) {
+            return in == null ? new long[0] : getEntryHashes(in);
+        } catch (IOException | CRLException | SignatureException e) {
+            log.warn("Failed to read the entries of CRL number " + previousCrl.getLastCRLNumber() + " of '" + issuerDn
+                    + "'. All entries of the new CRL will be checked: " + e.getMessage());
+            return new long[0];
+        }
+    }
+
+    /** @return the sorted hashes of the entries of a CRL, see {@link #getEntryHash(MessageDigest, RevokedCertInfo)} */
+    static long[] getEntryHashes(final InputStream crl) throws CRLException, IOException, SignatureException {
+        final MessageDigest digest = getSha256Digest();
+        final StreamingCrlParser entries = new StreamingCrlParser(crl, null);
+        long[] hashes = new long[1024];
+        int count = 0;
+        for (List<RevokedCertInfo> batch = entries.readEntries(1024); !batch.isEmpty(); batch = entries.readEntries(1024)) {
+            if (count + batch.size() > hashes.length) {
+                hashes = Arrays.copyOf(hashes, Math.max(2 * hashes.length, count + batch.size()));
+            }
+            for (final RevokedCertInfo entry : batch) {
+                hashes[count++] = getEntryHash(digest, entry);
+            }
+        }
+        hashes = Arrays.copyOf(hashes, count);
+        Arrays.sort(hashes);
+        return hashes;
+    }
+
+    /** @return the entries that are not on the previous CRL, with the same revocation date, reason and invalidity date */
+    static List<RevokedCertInfo> getNewEntries(final List<RevokedCertInfo> entries, final long[] previousEntries) {
+        if (previousEntries.length == 0) {
+            return entries;
+        }
+        final MessageDigest digest = getSha256Digest();
+        final List<RevokedCertInfo> newEntries = new ArrayList<>(entries.size());
+        for (final RevokedCertInfo entry : entries) {
+            if (Arrays.binarySearch(previousEntries, getEntryHash(digest, entry)) < 0) {
+                newEntries.add(entry);
+            }
+        }
+        return newEntries;
+    }
+
+    /** @return the first 64 bits of a SHA-256 hash of the serial number, revocation date, reason and invalidity date of a CRL entry */
+    private static long getEntryHash(final MessageDigest digest, final RevokedCertInfo entry) {
+        // The fields after the serial number have a fixed length, so different entries can't give the same input
+        final ByteBuffer fields = ByteBuffer.allocate(Long.BYTES + Integer.BYTES + Long.BYTES);
+        fields.putLong(entry.getRevocationDate().getTime() / 1000);
+        fields.putInt(entry.getReason());
+        fields.putLong(entry.getInvalidityDate() == null ? -1 : entry.getInvalidityDate().getTime() / 1000);
+        digest.update(entry.getUserCertificate().toByteArray());
+        digest.update(fields.array());
+        return ByteBuffer.wrap(digest.digest()).getLong();
+    }
+
+    /** @throws CrlImportException if a read of the CRL being imported gave another CRL than the one that was verified */
+    private static void checkCrlHash(final byte[] verifiedHash, final byte[] hash) throws CrlImportException {
+        if (!MessageDigest.isEqual(verifiedHash, hash)) {
+            throw new CrlImportException("The CRL was changed while it was imported.");
+        }
+    }
+
+    /** Reads the rest of the CRL, which the parser may leave unread, so that its hash covers all of it */
+    private static void readToEnd(final InputStream in) throws IOException {
+        in.transferTo(OutputStream.nullOutputStream());
+    }
+
+    private static MessageDigest getSha256Digest() {
         try {
-            crl.verify(cacert.getPublicKey());
-        } catch (InvalidKeyException | CRLException | NoSuchAlgorithmException | NoSuchProviderException | SignatureException e) {
-            throw new CrlImportException("Failed to verify CRL signature.", e);
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
         }
     }
-    
-    private X509CRL getLastCrlOfSameType(final X509CRL crl, final boolean isDeltaCrl, final String issuerDN, final int crlPartitionIndex) {
-        X509CRL lastCrlOfSameType = null;
-        final byte[] lastCrl = crlStoreSession.getLastCRL(issuerDN, crlPartitionIndex, isDeltaCrl);
-        if(lastCrl != null) {
-            try {
-                lastCrlOfSameType = CertTools.getCRLfromByteArray(lastCrl);
-            } catch (CRLException e) {
-                log.warn("Could not retrieve an older CRL issued by " + issuerDN, e);
+
+    /**
+     * Reads the whole CRL, and verifies that it is issued by the specified CA
+     *
+     * @param digest updated with all bytes of the CRL
+     */
+    private StreamingCrlParser verifyCrl(final CrlSource<InputStream> crlStream, final MessageDigest digest, final String issuerDN,
+            final X509Certificate cacert) throws CrlImportException, CRLException {
+        log.info("CA: " + issuerDN);
+        final StreamingCrlParser crl;
+        try (final DigestInputStream in = new DigestInputStream(crlStream.open(), digest)) {
+            crl = new StreamingCrlParser(in, CertTools.genContentVerifierProvider(cacert.getPublicKey()));
+            crl.readHeader();
+            // Read the supplied CRL and verify that it is issued by the specified CA
+            if (!new X500Principal(crl.getIssuer().getEncoded()).equals(cacert.getSubjectX500Principal())) {
+                throw new CrlImportException("CRL wasn't issued by " + issuerDN);
             }
+            crl.readTrailer();
+            readToEnd(in);
+        } catch (OperatorCreationException | SignatureException e) {
+            throw new CrlImportException("Failed to verify CRL signature.", e);
+        } catch (IOException e) {
+            throw new CrlImportException("Failed to read the CRL.", e);
         }
-        return lastCrlOfSameType;
+        return crl;
     }
     
-    private boolean isLimitedCertificate(final String issuerDn, final BigInteger serialNumber, final CertificateDataWrapper cdw) {
+    private boolean isLimitedCertificate(final String issuerDn, final BigInteger serialNumber, final String fingerprint) {
         final String limitedFingerprint = CertTools.getFingerprintAsString((issuerDn+";"+serialNumber).getBytes());
-        return (cdw==null) || (limitedFingerprint.equals(cdw.getCertificateData().getFingerprint()));
+        return limitedFingerprint.equals(fingerprint);
     }
 
 }
@@ -13,21 +13,45 @@
 package org.ejbca.core.ejb.crl;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SignatureException;
 import java.security.cert.CRLException;
 import java.security.cert.Certificate;
 import java.security.cert.X509CRL;
 import java.security.cert.X509CRLEntry;
 import java.text.ParseException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
 
 import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 import javax.annotation.Resource;
 import javax.ejb.EJB;
 import javax.ejb.EJBException;
@@ -69,10 +93,12 @@ import org.cesecore.certificates.crl.CrlCreateSessionLocal;
 import org.cesecore.certificates.crl.CrlStoreSessionLocal;
 import org.cesecore.certificates.crl.RevocationReasons;
 import org.cesecore.certificates.crl.RevokedCertInfo;
+import org.cesecore.certificates.crl.RevokedCertInfoCollection;
+import org.cesecore.certificates.crl.StreamingCrlParser;
 import org.cesecore.internal.InternalResources;
 import org.cesecore.jndi.JndiConstants;
-import org.cesecore.util.CompressedCollection;
 import org.cesecore.util.LogRedactionUtils;
+import org.ejbca.config.EjbcaConfiguration;
 import org.ejbca.core.ejb.ca.publisher.PublisherSessionLocal;
 
 import com.keyfactor.CesecoreException;
@@ -91,6 +117,16 @@ public class PublishingCrlSessionBean implements PublishingCrlSessionLocal, Publ
     private static final Logger log = Logger.getLogger(PublishingCrlSessionBean.class);
     /** Internal localization of logs and errors */
     private static final InternalResources intres = InternalResources.getInstance();
+    private static final ReentrantLock executorServiceLock = new ReentrantLock(false);
+    private static final AtomicInteger beanInstanceCount = new AtomicInteger(0);
+    /** Number of entries of the last base CRL read at the time when a CRL is created incrementally */
+    private static final int CRL_READ_CHUNK_SIZE = 10000;
+    /** Generates the CRLs of whole CAs, see {@link EjbcaConfiguration#getCrlGenerationCaConcurrency()} */
+    private static volatile ThreadPoolExecutor caExecutorService = null;
+    /** Generates CRL partitions, or lets the thread of the CA do it when all threads are busy */
+    private static volatile ThreadPoolExecutor partitionExecutorService = null;
+    /** Limits the number of CRLs generated at the same time with the keys of a crypto token, by crypto token id */
+    private static final ConcurrentHashMap<Integer, CryptoTokenPermits> cryptoTokenPermits = new ConcurrentHashMap<>();
 
     @Resource
     private SessionContext sessionContext;
@@ -119,6 +155,111 @@ public class PublishingCrlSessionBean implements PublishingCrlSessionLocal, Publ
         publishingCrlSession = sessionContext.getBusinessObject(PublishingCrlSessionLocal.class);
         // Install BouncyCastle provider if not available
         CryptoProviderTools.installBCProviderIfNotAvailable();
+        // Keep track of number of instances of this bean, so we can free the thread pools when the last is destroyed
+        beanInstanceCount.incrementAndGet();
+    }
+
+    @PreDestroy
+    public void preDestroy() {
+        // Shut down the thread pools when the last instance of this SSB is destroyed
+        if (beanInstanceCount.decrementAndGet() == 0) {
+            executorServiceLock.lock();
+            try {
+                if (caExecutorService != null) {
+                    caExecutorService.shutdown();
+                    caExecutorService = null;
+                }
+                if (partitionExecutorService != null) {
+                    partitionExecutorService.shutdown();
+                    partitionExecutorService = null;
+                }
+            } finally {
+                executorServiceLock.unlock();
+            }
+        }
+    }
+
+    /**
+     * @return the thread pool that generates the CRLs of whole CAs (creating it if needed). CAs beyond the configured number of threads
+     *  wait in the queue. The number of threads follows the configuration when it is changed.
+     */
+    private ExecutorService getCaExecutorService() {
+        final int threads = EjbcaConfiguration.getCrlGenerationCaConcurrency();
+        if (caExecutorService == null) {
+            executorServiceLock.lock();
+            try {
+                if (caExecutorService == null) {
+                    caExecutorService = newThreadPool("CrlGeneration-CA-", threads, new LinkedBlockingQueue<>(),
+                            new ThreadPoolExecutor.AbortPolicy());
+                }
+            } finally {
+                executorServiceLock.unlock();
+            }
+        }
+        return resize(caExecutorService, threads);
+    }
+
+    /**
+     * @return the thread pool that generates CRL partitions (creating it if needed). It has no queue, so when all threads are busy
+     *  the partition is generated by the thread that submits it. This way a CA thread never waits for a partition that can't start.
+     */
+    private ExecutorService getPartitionExecutorService() {
+        final int threads = EjbcaConfiguration.getCrlGenerationPartitionThreads();
+        if (partitionExecutorService == null) {
+            executorServiceLock.lock();
+            try {
+                if (partitionExecutorService == null) {
+                    partitionExecutorService = newThreadPool("CrlGeneration-Partition-", threads, new SynchronousQueue<>(),
+                            new ThreadPoolExecutor.CallerRunsPolicy());
+                }
+            } finally {
+                executorServiceLock.unlock();
+            }
+        }
+        return resize(partitionExecutorService, threads);
+    }
+
+    private static ThreadPoolExecutor newThreadPool(final String threadNamePrefix, final int threads, final BlockingQueue<Runnable> queue,
+            final RejectedExecutionHandler rejectedExecutionHandler) {
+        final AtomicInteger threadNumber = new AtomicInteger();
+        final ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS, queue,
+                runnable -> new Thread(runnable, threadNamePrefix + threadNumber.incrementAndGet()), rejectedExecutionHandler);
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    /** Sets the number of threads of the pool, if the configuration has changed since it was created */
+    private static ThreadPoolExecutor resize(final ThreadPoolExecutor executor, final int threads) {
+        if (executor.getMaximumPoolSize() != threads) {
+            // The core size may not be larger than the maximum size at any time
+            if (threads > executor.getMaximumPoolSize()) {
+                executor.setMaximumPoolSize(threads);
+                executor.setCorePoolSize(threads);
+            } else {
+                executor.setCorePoolSize(threads);
+                executor.setMaximumPoolSize(threads);
+            }
+        }
+        return executor;
+    }
+
+    /** @return the permits limiting the CRLs generated at the same time with a crypto token, recreated if the configured limit has changed */
+    static Semaphore getCryptoTokenPermits(final int cryptoTokenId) {
+        final int concurrency = EjbcaConfiguration.getCrlGenerationConcurrency(cryptoTokenId);
+        // CRLs that are already running release their permits to the previous semaphore, which is then discarded
+        return cryptoTokenPermits.compute(cryptoTokenId, (id, permits) -> permits != null && permits.concurrency == concurrency ? permits
+                : new CryptoTokenPermits(concurrency)).semaphore;
+    }
+
+    /** The permits of a crypto token and the limit they were created with */
+    private static final class CryptoTokenPermits {
+        private final int concurrency;
+        private final Semaphore semaphore;
+
+        private CryptoTokenPermits(final int concurrency) {
+            this.concurrency = concurrency;
+            this.semaphore = new Semaphore(concurrency);
+        }
     }
 
     @Override
@@ -139,23 +280,43 @@ public class PublishingCrlSessionBean implements PublishingCrlSessionLocal, Publ
         } else {
             caIdsToProcess = caids;
         }
-        Set<Integer> createdcrls = new HashSet<>();
+        // The CAs are processed in parallel, a limited number at the time. The number of CRLs generated at the same time is also limited per crypto token.
+        final Map<Integer, Future<Boolean>> results = new LinkedHashMap<>();
         for (final int caid : caIdsToProcess) {
             if (log.isDebugEnabled()) {
                 log.debug("createCRLs for caid: " + caid);
             }
+            results.put(caid, submit(caIdsToProcess.size() > 1, () -> publishingCrlSession.createCRLNewConditioned(admin, caid, addtocrloverlaptime)));
+        }
+        Set<Integer> createdcrls = new HashSet<>();
+        RuntimeException firstUnexpectedFailure = null;
+        AuthorizationDeniedException firstAuthorizationFailure = null;
+        for (final Map.Entry<Integer, Future<Boolean>> result : results.entrySet()) {
+            final int caid = result.getKey();
             try {
-                if (publishingCrlSession.createCRLNewConditioned(admin, caid, addtocrloverlaptime)) {
+                if (getResult(result.getValue())) {
                     createdcrls.add(caid);
                 }
-            } catch (CryptoTokenOfflineException | CAOfflineException | CADoesntExistsException e) {
+            } catch (CesecoreException e) {
                 // Don't fail all generation just because one of the CAs had token offline or similar.
                 // Continue working with the others, but log an error message in system logs, use error logging
                 // since it might be something that should call for attention of the operators, CRL generation is important.
                 String msg = intres.getLocalizedMessage("createcrl.errorcreate", caid, e.getMessage());
                 log.error(msg, e);
+            } catch (AuthorizationDeniedException e) {
+                firstAuthorizationFailure = firstAuthorizationFailure == null ? e : firstAuthorizationFailure;
+            } catch (RuntimeException e) {
+                log.error(intres.getLocalizedMessage("createcrl.errorcreate", caid, e.getMessage()), e);
+                firstUnexpectedFailure = firstUnexpectedFailure == null ? e : firstUnexpectedFailure;
             }
         }
+        // The CRLs of the other CAs have been generated, now report failures that would have stopped the generation before
+        if (firstAuthorizationFailure != null) {
+            throw firstAuthorizationFailure;
+        }
+        if (firstUnexpectedFailure != null) {
+            throw firstUnexpectedFailure;
+        }
         return createdcrls;
     }
 
@@ -167,13 +328,20 @@ public class PublishingCrlSessionBean implements PublishingCrlSessionLocal, Publ
         } else {
             caIdsToProcess = caids;
         }
-        Set<Integer> createddeltacrls = new HashSet<>();
+        final Map<Integer, Future<Boolean>> results = new LinkedHashMap<>();
         for (final int caid : caIdsToProcess) {
             if (log.isDebugEnabled()) {
                 log.debug("createDeltaCRLs for caid: " + caid);
             }
+            results.put(caid, submit(caIdsToProcess.size() > 1, () -> publishingCrlSession.createDeltaCrlConditioned(admin, caid, crloverlaptime)));
+        }
+        Set<Integer> createddeltacrls = new HashSet<>();
+        RuntimeException firstUnexpectedFailure = null;
+        AuthorizationDeniedException firstAuthorizationFailure = null;
+        for (final Map.Entry<Integer, Future<Boolean>> result : results.entrySet()) {
+            final int caid = result.getKey();
             try {
-                if (publishingCrlSession.createDeltaCrlConditioned(admin, caid, crloverlaptime)) {
+                if (getResult(result.getValue())) {
                     createddeltacrls.add(caid);
                 }
             } catch (CesecoreException e) {
@@ -184,8 +352,19 @@ public class PublishingCrlSessionBean implements PublishingCrlSessionLocal, Publ
                 final Map<String, Object> details = new LinkedHashMap<>();
                 details.put("msg", msg);
                 logSession.log(EventTypes.CRL_CREATION, EventStatus.FAILURE, ModuleTypes.CRL, ServiceTypes.CORE, admin.toString(), String.valueOf(caid), null, null, details);
+            } catch (AuthorizationDeniedException e) {
+                firstAuthorizationFailure = firstAuthorizationFailure == null ? e : firstAuthorizationFailure;
+            } catch (RuntimeException e) {
+                log.error(intres.getLocalizedMessage("createcrl.errorcreate", caid, e.getMessage()), e);
+                firstUnexpectedFailure = firstUnexpectedFailure == null ? e : firstUnexpectedFailure;
             }
         }
+        if (firstAuthorizationFailure != null) {
+            throw firstAuthorizationFailure;
+        }
+        if (firstUnexpectedFailure != null) {
+            throw firstUnexpectedFailure;
+        }
         return createddeltacrls;
     }
 
@@ -222,14 +401,8 @@ public class PublishingCrlSessionBean implements PublishingCrlSessionLocal, Publ
                             String msg = intres.getLocalizedMessage("createcrl.caoffline", cainfo.getName(), Integer.valueOf(cainfo.getCAId()));
                             log.info(msg);
                         } else {
-                            boolean result = createCrlForActiveCa(admin, ca, cacert, CertificateConstants.NO_CRL_PARTITION, now, addToCrlOverlapTime);
-                            final IntRange crlPartitions = cainfo.getAllCrlPartitionIndexes();
-                            if (crlPartitions != null) {
-                                for (int crlPartitionIndex = crlPartitions.getMinimumInteger(); crlPartitionIndex <= crlPartitions.getMaximumInteger(); crlPartitionIndex++) {
-                                    result &= createCrlForActiveCa(admin, ca, cacert, crlPartitionIndex, now, addToCrlOverlapTime);
-                                }
-                            }
-                            return result;
+                            return createPartitionCrls(cainfo, crlPartitionIndex -> createCrlForActiveCa(admin,
+                                    getCaForCrlPartition(admin, ca, crlPartitionIndex), cacert, crlPartitionIndex, now, addToCrlOverlapTime));
                         }
                     } else if (log.isDebugEnabled() && cacert != null) {
                         log.debug("Not creating CRL for expired CA "+cainfo.getName()+". CA subjectDN='"+CertTools.getSubjectDN(cacert)+"', expired: "+CertTools.getNotAfter(cacert));
@@ -245,6 +418,132 @@ public class PublishingCrlSessionBean implements PublishingCrlSessionLocal, Publ
         }
     }
 
+    /**
+     * Creates the CRLs of the main CRL and all CRL partitions of a CA. The CRLs are generated in parallel, but never more at the same
+     * time than the concurrency configured for the crypto token of the CA, see {@link EjbcaConfiguration#getCrlGenerationConcurrency(int)}.
+     */
+    private boolean createPartitionCrls(final CAInfo cainfo, final CrlPartitionTask task)
+            throws CryptoTokenOfflineException, CAOfflineException, AuthorizationDeniedException {
+        final int cryptoTokenId = cainfo.getCAToken().getCryptoTokenId();
+        final Semaphore permits = getCryptoTokenPermits(cryptoTokenId);
+        final List<Integer> crlPartitionIndexes = new ArrayList<>();
+        crlPartitionIndexes.add(CertificateConstants.NO_CRL_PARTITION);
+        final IntRange crlPartitions = cainfo.getAllCrlPartitionIndexes();
+        if (crlPartitions != null) {
+            for (int crlPartitionIndex = crlPartitions.getMinimumInteger(); crlPartitionIndex <= crlPartitions.getMaximumInteger(); crlPartitionIndex++) {
+                crlPartitionIndexes.add(crlPartitionIndex);
+            }
+        }
+        final boolean parallel = crlPartitionIndexes.size() > 1 && EjbcaConfiguration.getCrlGenerationConcurrency(cryptoTokenId) > 1;
+        return createPartitionCrls(parallel ? getPartitionExecutorService() : null, permits, crlPartitionIndexes, task);
+    }
+
+    /**
+     * Runs a task for each CRL partition, holding a permit while it runs. A partition that fails doesn't stop the others, and
+     * the first failure is thrown when all partitions are done. Each partition is stored, and audit logged, on its own.
+     *
+     * @param executor executes the tasks in parallel, or null to run them one at the time in the calling thread
+     * @param permits limits the number of tasks running at the same time
+     * @return true if all tasks returned true
+     */
+    static boolean createPartitionCrls(final ExecutorService executor, final Semaphore permits, final List<Integer> crlPartitionIndexes,
+            final CrlPartitionTask task) throws CryptoTokenOfflineException, CAOfflineException, AuthorizationDeniedException {
+        final List<Future<Boolean>> results = new ArrayList<>();
+        for (final int crlPartitionIndex : crlPartitionIndexes) {
+            final Callable<Boolean> callable = () -> {
+                permits.acquire();
+                try {
+                    return task.createCrl(crlPartitionIndex);
+                } finally {
+                    permits.release();
+                }
+            };
+            if (executor == null) {
+                final FutureTask<Boolean> futureTask = new FutureTask<>(callable);
+                futureTask.run();
+                results.add(futureTask);
+            } else {
+                results.add(executor.submit(callable));
+            }
+        }
+        boolean ret = true;
+        Exception firstFailure = null;
+        for (int i = 0; i < results.size(); i++) {
+            try {
+                ret &= getResult(results.get(i));
+            } catch (CesecoreException | AuthorizationDeniedException | RuntimeException e) {
+                ret = false;
+                if (firstFailure == null) {
+                    firstFailure = e;
+                } else {
+                    log.error("Failed to create CRL for CRL partition " + crlPartitionIndexes.get(i) + ": " + e.getMessage());
+                }
+            }
+        }
+        if (firstFailure instanceof CryptoTokenOfflineException) {
+            throw (CryptoTokenOfflineException) firstFailure;
+        } else if (firstFailure instanceof CAOfflineException) {
+            throw (CAOfflineException) firstFailure;
+        } else if (firstFailure instanceof AuthorizationDeniedException) {
+            throw (AuthorizationDeniedException) firstFailure;
+        } else if (firstFailure instanceof RuntimeException) {
+            throw (RuntimeException) firstFailure;
+        } else if (firstFailure != null) {
+            throw new EJBException(firstFailure);
+        }
+        return ret;
+    }
+
+    /** @return the task as a future, running in parallel or already done */
+    private Future<Boolean> submit(final boolean parallel, final Callable<Boolean> task) {
+        if (parallel) {
+            return getCaExecutorService().submit(task);
+        }
+        final FutureTask<Boolean> futureTask = new FutureTask<>(task);
+        futureTask.run();
+        return futureTask;
+    }
+
+    /** @return the result of a CRL generation task, or throws the exception it failed with */
+    private static boolean getResult(final Future<Boolean> future) throws CesecoreException, AuthorizationDeniedException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new EJBException(e);
+        } catch (ExecutionException e) {
+            final Throwable cause = e.getCause();
+            if (cause instanceof CesecoreException) {
+                throw (CesecoreException) cause;
+            } else if (cause instanceof AuthorizationDeniedException) {
+                throw (AuthorizationDeniedException) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new EJBException((Exception) cause);
+        }
+    }
+
+    /**
+     * @return the CA instance to create the CRL of a CRL partition with. The main CRL uses the instance of the caller, and each CRL partition
+     *  reads its own, so that partitions created in parallel don't share the state of one CA object.
+     */
+    private CA getCaForCrlPartition(final AuthenticationToken admin, final CA ca, final int crlPartitionIndex) throws AuthorizationDeniedException {
+        if (crlPartitionIndex == CertificateConstants.NO_CRL_PARTITION) {
+            return ca;
+        }
+        final CA partitionCa = (CA) caSession.getCAForEdit(admin, ca.getCAId());
+        return partitionCa != null ? partitionCa : ca;
+    }
+
+    /** Creates the CRL of one CRL partition */
+    @FunctionalInterface
+    interface CrlPartitionTask {
+        boolean createCrl(int crlPartitionIndex) throws CryptoTokenOfflineException, CAOfflineException, AuthorizationDeniedException;
+    }
+
     /** Creates a CRL for a CRL partition. The CA is assumed to be active (no checks are performed) */
     private boolean createCrlForActiveCa(final AuthenticationToken admin, final CA ca, final Certificate cacert, final int crlPartitionIndex,
             final Date now, final long addToCrlOverlapTime) throws CryptoTokenOfflineException, CAOfflineException, AuthorizationDeniedException {
@@ -347,14 +646,8 @@ public class PublishingCrlSessionBean implements PublishingCrlSessionLocal, Publ
                                 String msg = intres.getLocalizedMessage("createcrl.caoffline", cainfo.getName(), Integer.valueOf(cainfo.getCAId()));
                                 log.info(msg);
                             } else {
-                                boolean result = createDeltaCrlForActiveCa(admin, ca, cacert, CertificateConstants.NO_CRL_PARTITION, now, addToCrlOverlapTime);
-                                final IntRange crlPartitions = cainfo.getAllCrlPartitionIndexes();
-                                if (crlPartitions != null) {
-                                    for (int crlPartitionIndex = crlPartitions.getMinimumInteger(); crlPartitionIndex <= crlPartitions.getMaximumInteger(); crlPartitionIndex++) {
-                                        result &= createDeltaCrlForActiveCa(admin, ca, cacert, crlPartitionIndex, now, addToCrlOverlapTime);
-                                    }
-                                }
-                                return result;
+                                return createPartitionCrls(cainfo, crlPartitionIndex -> createDeltaCrlForActiveCa(admin,
+                                        getCaForCrlPartition(admin, ca, crlPartitionIndex), cacert, crlPartitionIndex, now, addToCrlOverlapTime));
                             }
                         }
                     } else if (log.isDebugEnabled() && cacert != null) {
@@ -485,89 +778,98 @@ public class PublishingCrlSessionBean implements PublishingCrlSessionLocal, Publ
             }
             // We can not create a CRL for a CA that is waiting for certificate response
             if ( caCertSubjectDN!=null && cainfo.getStatus()==CAConstants.CA_ACTIVE )  {
-                // Find all revoked certificates for a complete CRL
-                if (log.isDebugEnabled()) {
-                    final long freeMemory = Runtime.getRuntime().maxMemory() - Runtime.getRuntime().totalMemory() + Runtime.getRuntime().freeMemory();
-                    log.debug("Listing revoked certificates. Free memory=" + freeMemory);
-                }
-                revokedCertificates = noConflictCertificateStoreSession.listRevokedCertInfo(caCertSubjectDN, false,
-                        crlPartitionIndex, lastBaseCrlCreationDate.getTime(), keepExpiredCertsOnCrl, getAllowInvalidityDate(cainfo));
+                final boolean allowInvalidityDate = getAllowInvalidityDate(cainfo);
+                // In incremental mode the revoked certificates on the last base CRL are the starting point. Expired certificates are then
+                // archived, and removed from the CRL, only once they have been on a base CRL. Every n:th base CRL is created from all
+                // revoked certificates, and is compared with the incremental result.
+                final boolean incrementalCrl = isIncrementalCrl(ca, lastBaseCrlInfo);
+                if (incrementalCrl && !isFullCrlRebuild(lastBaseCrlInfo.getLastCRLNumber(),
+                        getNextCrlNumber(caCertSubjectDN, crlPartitionIndex, lastBaseCrlInfo), EjbcaConfiguration.getCrlGenerationFullRebuildInterval())) {
+                    final Map<BigInteger, RevokedCertInfo> lastBaseCrlEntries = readLastBaseCrlEntries(lastBaseCrlInfo, allowInvalidityDate);
+                    if (log.isDebugEnabled()) {
+                        log.debug("Creating CRL incrementally from the " + lastBaseCrlEntries.size() + " revoked certificates on CRL number "
+                                + lastBaseCrlInfo.getLastCRLNumber() + ".");
+                    }
+                    revokedCertificates = getIncrementalRevokedCertInfos(caCertSubjectDN, crlPartitionIndex, lastBaseCrlEntries, lastBaseCrlCreationDate,
+                            keepExpiredCertsOnCrl, allowInvalidityDate, now);
+                } else {
+                    // The incremental result is computed before any certificates are archived, without changing the database. Only a hash
+                    // of each entry is kept while the full CRL is created, so that both don't have to be held in memory.
+                    final long[] incrementalEntryHashes = incrementalCrl ? getIncrementalCrlEntryHashes(caCertSubjectDN, crlPartitionIndex,
+                            lastBaseCrlInfo, allowInvalidityDate, now) : null;
+                    // Find all revoked certificates for a complete CRL
+                    if (log.isDebugEnabled()) {
+                        final long freeMemory = Runtime.getRuntime().maxMemory() - Runtime.getRuntime().totalMemory() + Runtime.getRuntime().freeMemory();
+                        log.debug("Listing revoked certificates. Free memory=" + freeMemory);
+                    }
+                    revokedCertificates = noConflictCertificateStoreSession.listRevokedCertInfo(caCertSubjectDN, false,
+                            crlPartitionIndex, lastBaseCrlCreationDate.getTime(), keepExpiredCertsOnCrl, allowInvalidityDate);
 
-                //if X509 CA is marked as it has gone through Name Change add certificates revoked with old names
-                if(ca.getCAType()==CAInfo.CATYPE_X509 && ((X509CA)ca).getNameChanged()){
-                    log.info("The CA with SubjectDN " + ca.getSubjectDN() + " has been gone through ICAO Name Change. Collecting all revocation information published by this CA with previous names has started.");
-                    Collection<Certificate> renewedCertificateChain = ca.getRenewedCertificateChain();
-                    Collection<RevokedCertInfo> revokedCertificatesBeforeLastCANameChange = new ArrayList<>();
-                    if(renewedCertificateChain != null){
-                        Collection<String> differentSubjectDNs = new HashSet<>();
-                        differentSubjectDNs.add(caCertSubjectDN);
-                        for(Certificate renewedCertificate : renewedCertificateChain){
-                            String renewedCertificateSubjectDN = CertTools.getSubjectDN(renewedCertificate);
-                            if(!differentSubjectDNs.contains(renewedCertificateSubjectDN)){
-                                log.info("Collecting revocation information for " + LogRedactionUtils.getSubjectDnLogSafe(renewedCertificateSubjectDN) + " and merging them with ones for " + caCertSubjectDN);
-                                differentSubjectDNs.add(renewedCertificateSubjectDN);
-                                Collection<RevokedCertInfo> revokedCertInfo = noConflictCertificateStoreSession.listRevokedCertInfo(renewedCertificateSubjectDN,
-                                        false, crlPartitionIndex, lastBaseCrlCreationDate.getTime(), keepExpiredCertsOnCrl, getAllowInvalidityDate(cainfo));
-                                for(RevokedCertInfo tmp : revokedCertInfo){ //for loop is necessary because revokedCertInfo.toArray is not supported...
-                                    revokedCertificatesBeforeLastCANameChange.add(tmp);
+                    //if X509 CA is marked as it has gone through Name Change add certificates revoked with old names
+                    if(ca.getCAType()==CAInfo.CATYPE_X509 && ((X509CA)ca).getNameChanged()){
+                        log.info("The CA with SubjectDN " + ca.getSubjectDN() + " has been gone through ICAO Name Change. Collecting all revocation information published by this CA with previous names has started.");
+                        Collection<Certificate> renewedCertificateChain = ca.getRenewedCertificateChain();
+                        Collection<RevokedCertInfo> revokedCertificatesBeforeLastCANameChange = new ArrayList<>();
+                        if(renewedCertificateChain != null){
+                            Collection<String> differentSubjectDNs = new HashSet<>();
+                            differentSubjectDNs.add(caCertSubjectDN);
+                            for(Certificate renewedCertificate : renewedCertificateChain){
+                                String renewedCertificateSubjectDN = CertTools.getSubjectDN(renewedCertificate);
+                                if(!differentSubjectDNs.contains(renewedCertificateSubjectDN)){
+                                    log.info("Collecting revocation information for " + LogRedactionUtils.getSubjectDnLogSafe(renewedCertificateSubjectDN) + " and merging them with ones for " + caCertSubjectDN);
+                                    differentSubjectDNs.add(renewedCertificateSubjectDN);
+                                    Collection<RevokedCertInfo> revokedCertInfo = noConflictCertificateStoreSession.listRevokedCertInfo(renewedCertificateSubjectDN,
+                                            false, crlPartitionIndex, lastBaseCrlCreationDate.getTime(), keepExpiredCertsOnCrl, allowInvalidityDate);
+                                    for(RevokedCertInfo tmp : revokedCertInfo){ //for loop is necessary because revokedCertInfo.toArray is not supported...
+                                        revokedCertificatesBeforeLastCANameChange.add(tmp);
+                                    }
                                 }
                             }
                         }
+                        //Make sure a new collection is created if revokedCertificatesBeforeLastCANameChange need to be added!
+                        Collection<RevokedCertInfo> revokedCertificatesAfterLastCANameChange = revokedCertificates;
+                        revokedCertificates = new RevokedCertInfoCollection();
+                        if(!revokedCertificatesBeforeLastCANameChange.isEmpty()){
+                            revokedCertificates.addAll(revokedCertificatesBeforeLastCANameChange);
+                        }
+                        revokedCertificates.addAll(revokedCertificatesAfterLastCANameChange);
                     }
-                    //Make sure new compressed collection is created if revokedCertificatesBeforeLastCANameChange need to be added!
-                    Collection<RevokedCertInfo> revokedCertificatesAfterLastCANameChange = revokedCertificates;
-                    revokedCertificates = new CompressedCollection<>(RevokedCertInfo.class);
-                    if(!revokedCertificatesBeforeLastCANameChange.isEmpty()){
-                        revokedCertificates.addAll(revokedCertificatesBeforeLastCANameChange);
-                    }
-                    revokedCertificates.addAll(revokedCertificatesAfterLastCANameChange);
-                }
 
-                if (log.isDebugEnabled()) {
-                    final long freeMemory = Runtime.getRuntime().maxMemory() - Runtime.getRuntime().totalMemory() + Runtime.getRuntime().freeMemory();
-                    log.debug("Found "+revokedCertificates.size()+" revoked certificates. Free memory=" + freeMemory);
-                }
-                // Go through them and create a CRL, at the same time archive expired certificates, unless configured not to do so (keep expired certificates on CRL)
-                //
-                // Archiving is only done for full CRLs, not delta CRLs.
-                // RFC5280, section 3.3, states that a certificate must not be removed from the CRL until it has appeared on at least one full CRL.
-                // RFC5280, section 5: A full and complete CRL lists all unexpired certificates issued by a CA that have been revoked for any reason.
-                // See RFC5280 section 5.2.4, specifically:
-                //  If a certificate revocation notice first appears on a delta CRL, then
-                //  it is possible for the certificate validity period to expire before
-                //  the next complete CRL for the same scope is issued.  In this case,
-                //  the revocation notice MUST be included in all subsequent delta CRLs
-                //  until the revocation notice is included on at least one explicitly
-                //  issued complete CRL for this scope
-                final AuthenticationToken archiveAdmin = new AlwaysAllowLocalAuthenticationToken(new UsernamePrincipal("CrlCreateSession.archive_expired"));
-                for (final RevokedCertInfo revokedCertInfo : revokedCertificates) {
-                    // We want to include certificates that were revoked after the last CRL was issued, but before this one
-                    // so the revoked certs are included in ONE CRL at least. See RFC5280 section 3.3.
-                    // If chosen to keep expired certificates on CRL, we will NOT do this but keep them (ISO 9594-8 par. 8.5.2.12)
-                    if ( !keepExpiredCertsOnCrl && revokedCertInfo.getExpireDate() != null && revokedCertInfo.getExpireDate().before(lastBaseCrlCreationDate) ) {
-                        // Certificate has expired, set status to archived in the database
-                        if (log.isDebugEnabled()) {
-                            final long freeMemory = Runtime.getRuntime().maxMemory() - Runtime.getRuntime().totalMemory() + Runtime.getRuntime().freeMemory();
-                            log.debug("Archiving certificate with fp="+revokedCertInfo.getCertificateFingerprint()+". Free memory=" + freeMemory);
-                        }
-                        noConflictCertificateStoreSession.setStatus(archiveAdmin, revokedCertInfo.getCertificateFingerprint(), CertificateConstants.CERT_ARCHIVED);
-                    } else {
-                        if (!revokedCertInfo.isRevocationDateSet()) {
-                            revokedCertInfo.setRevocationDate(now);
-                            /*
-                             * FIXME should use noConflictCertificateStoreSession (add a new method). the method there should also update to database. 
-                             * (or can we skip this code? when can isRevocationDateSet return false?)
-                             * ECA-7992
-                             */
-//                            noConflictCertificateStoreSession.setRevocationDate(revokedCertInfo.getCertificateFingerprint(), now);
-                            CertificateData certdata = certificateDataSession.findByFingerprint(revokedCertInfo.getCertificateFingerprint());
-                            if (certdata == null) {
-                                throw new FinderException("No certificate with fingerprint " + revokedCertInfo.getCertificateFingerprint());
+                    if (log.isDebugEnabled()) {
+                        final long freeMemory = Runtime.getRuntime().maxMemory() - Runtime.getRuntime().totalMemory() + Runtime.getRuntime().freeMemory();
+                        log.debug("Found "+revokedCertificates.size()+" revoked certificates. Free memory=" + freeMemory);
+                    }
+                    // Go through them and create a CRL, at the same time archive expired certificates, unless configured not to do so (keep expired certificates on CRL)
+                    //
+                    // Archiving is only done for full CRLs, not delta CRLs.
+                    // RFC5280, section 3.3, states that a certificate must not be removed from the CRL until it has appeared on at least one full CRL.
+                    // RFC5280, section 5: A full and complete CRL lists all unexpired certificates issued by a CA that have been revoked for any reason.
+                    // See RFC5280 section 5.2.4, specifically:
+                    //  If a certificate revocation notice first appears on a delta CRL, then
+                    //  it is possible for the certificate validity period to expire before
+                    //  the next complete CRL for the same scope is issued.  In this case,
+                    //  the revocation notice MUST be included in all subsequent delta CRLs
+                    //  until the revocation notice is included on at least one explicitly
+                    //  issued complete CRL for this scope
+                    final AuthenticationToken archiveAdmin = new AlwaysAllowLocalAuthenticationToken(new UsernamePrincipal("CrlCreateSession.archive_expired"));
+                    for (final RevokedCertInfo revokedCertInfo : revokedCertificates) {
+                        // We want to include certificates that were revoked after the last CRL was issued, but before this one
+                        // so the revoked certs are included in ONE CRL at least. See RFC5280 section 3.3.
+                        // If chosen to keep expired certificates on CRL, we will NOT do this but keep them (ISO 9594-8 par. 8.5.2.12)
+                        if ( !keepExpiredCertsOnCrl && revokedCertInfo.getExpireDate() != null && revokedCertInfo.getExpireDate().before(lastBaseCrlCreationDate) ) {
+                            // Certificate has expired, set status to archived in the database
+                            if (log.isDebugEnabled()) {
+                                final long freeMemory = Runtime.getRuntime().maxMemory() - Runtime.getRuntime().totalMemory() + Runtime.getRuntime().freeMemory();
+                                log.debug("Archiving certificate with fp="+revokedCertInfo.getCertificateFingerprint()+". Free memory=" + freeMemory);
                             }
-                            // Set revocation date in the database
-                            certdata.setRevocationDate(now);
+                            noConflictCertificateStoreSession.setStatus(archiveAdmin, revokedCertInfo.getCertificateFingerprint(), CertificateConstants.CERT_ARCHIVED);
+                        } else {
+                            setRevocationDateIfMissing(revokedCertInfo, now);
                         }
                     }
+                    if (incrementalEntryHashes != null) {
+                        verifyIncrementalCrl(admin, cainfo, crlPartitionIndex, revokedCertificates, incrementalEntryHashes);
+                    }
                 }
                 // a full CRL
                 final byte[] crlBytes = generateAndStoreCRL(admin, ca, crlPartitionIndex, revokedCertificates, lastBaseCrlInfo, false, validFrom);
@@ -587,12 +889,12 @@ public class PublishingCrlSessionBean implements PublishingCrlSessionLocal, Publ
                 log.info(msg);
                 throw new CAOfflineException(msg);
             }
-        } catch (FinderException e) {
+        } catch (FinderException | CRLException e) {
             // Should really not happen
             log.error(e);
             throw new EJBException(e);
         } finally {
-            // Special treatment of our CompressedCollection to ensure that we release all resources
+            // Special treatment of our RevokedCertInfoCollection to ensure that we release all resources
             if (revokedCertificates!=null) {
                 revokedCertificates.clear();
             }
@@ -637,7 +939,7 @@ public class PublishingCrlSessionBean implements PublishingCrlSessionLocal, Publ
         }
         byte[] crlBytes = null;
         Collection<RevokedCertInfo> revcertinfos = null;
-        CompressedCollection<RevokedCertInfo> certs = null;
+        RevokedCertInfoCollection certs = null;
         try {
             final Certificate cacert = getCaCertificate(cainfo);
             final String caCertSubjectDN = cacert==null ? null : CertTools.getSubjectDN(cacert);
@@ -651,7 +953,6 @@ public class PublishingCrlSessionBean implements PublishingCrlSessionLocal, Publ
                 if (getAllowInvalidityDate(cainfo)) {
                     Collection<RevokedCertInfo> filteredRevCertInfos = new ArrayList<>();
                     for (RevokedCertInfo revCertInfo : revcertinfos) {
-                        Date lastInvDate = null;                        
                         X509CRLEntry crlEntry = lastBaseCrlInfo.getCrl().getRevokedCertificate(revCertInfo.getUserCertificate());
                         // If the cert was not revoked before the last base CRL, then it needs to be included in the delta CRL
                         if (crlEntry == null) {
@@ -659,20 +960,7 @@ public class PublishingCrlSessionBean implements PublishingCrlSessionLocal, Publ
                             continue;
                         }
                         // The invalidity date of the certificate in the previous base CRL is determined in order to compare it to the current up to date invalidity date value
-                        if (crlEntry.hasExtensions()) {
-                            final byte[] extensionValue = crlEntry.getExtensionValue(Extension.invalidityDate.getId());
-                            if (extensionValue != null) {
-                                try {
-                                    final ASN1GeneralizedTime invalidityDateExtension = ASN1GeneralizedTime.getInstance(JcaX509ExtensionUtils.parseExtensionValue(extensionValue));
-                                    if (invalidityDateExtension != null) {
-                                        lastInvDate = invalidityDateExtension.getDate();
-                                    }
-                                } catch (IOException | ParseException e) {
-                                    log.debug("Failed to parse invalidity date of CRLEntry: " + e.getMessage());
-                                    throw new CRLException(e);
-                                }
-                            }
-                        }
+                        final Date lastInvDate = getInvalidityDate(crlEntry);
                         // Also include the revoked certificate entry in the delta CRL if invalidity date has changed since the last base CRL
                         if (revCertInfo.getInvalidityDate() != null && !revCertInfo.getInvalidityDate().equals(lastInvDate)) {
                             filteredRevCertInfos.add(revCertInfo);
@@ -708,9 +996,9 @@ public class PublishingCrlSessionBean implements PublishingCrlSessionLocal, Publ
                             }
                         }
                     }
-                    //Make sure new compressed collection is created if revokedCertificatesBeforeLastCANameChange need to be added!
+                    //Make sure a new collection is created if revokedCertificatesBeforeLastCANameChange need to be added!
                     Collection<RevokedCertInfo> revokedCertificatesAfterLastCANameChange = revcertinfos;
-                    revcertinfos = new CompressedCollection<>(RevokedCertInfo.class);
+                    revcertinfos = new RevokedCertInfoCollection();
                     if(!revokedCertificatesBeforeLastCANameChange.isEmpty()){
                         revcertinfos.addAll(revokedCertificatesBeforeLastCANameChange);
                     }
@@ -721,7 +1009,7 @@ public class PublishingCrlSessionBean implements PublishingCrlSessionLocal, Publ
                     log.debug("Found "+revcertinfos.size()+" revoked certificates.");
                 }
                 // Go through them and create a CRL, i.e. add to cert list to be included in CRL
-                certs = new CompressedCollection<>(RevokedCertInfo.class);
+                certs = new RevokedCertInfoCollection();
                 for (final RevokedCertInfo ci : revcertinfos) {
                     final boolean certificateIsReleasedFromHold = ci.getReason() == RevocationReasons.REMOVEFROMCRL.getDatabaseValue();
                     final boolean certificateAppearsOnBaseCrl = lastBaseCrlInfo.getCrl().getRevokedCertificate(ci.getUserCertificate()) != null;
@@ -756,7 +1044,7 @@ public class PublishingCrlSessionBean implements PublishingCrlSessionLocal, Publ
             log.error(e);
             throw new EJBException(e);
         } finally {
-            // Special treatment of our CompressedCollections to ensure that we release all resources
+            // Special treatment of our RevokedCertInfoCollections to ensure that we release all resources
             if (revcertinfos!=null) {
                 revcertinfos.clear();
             }
@@ -816,6 +1104,306 @@ public class PublishingCrlSessionBean implements PublishingCrlSessionLocal, Publ
         return crlBytes;
     }
 
+    /** @return true if a base CRL of the CA may be created incrementally from the last base CRL, if it's not time for a full rebuild */
+    private boolean isIncrementalCrl(final CA ca, final CRLInfo lastBaseCrlInfo) {
+        return EjbcaConfiguration.isCrlGenerationIncremental() && lastBaseCrlInfo != null && ca.getCAType() == CAInfo.CATYPE_X509
+                && !((X509CA) ca).getNameChanged() && ca.getCAInfo().isUseCertificateStorage();
+    }
+
+    /** @return the number of the next CRL, the same way as {@link #generateAndStoreCRL} for a CA that has not gone through a name change */
+    private int getNextCrlNumber(final String caCertSubjectDN, final int crlPartitionIndex, final CRLInfo lastBaseCrlInfo) {
+        return Math.max(lastBaseCrlInfo.getLastCRLNumber(), crlSession.getLastCRLNumber(caCertSubjectDN, crlPartitionIndex, true)) + 1;
+    }
+
+    /**
+     * Full CRLs are created when the CRL numbers pass a multiple of the rebuild interval. Base and delta CRLs share the series of
+     * CRL numbers, so a full CRL is created at least every rebuild interval CRL numbers, whether a multiple is reached by a base CRL or not.
+     *
+     * @return true if the base CRL with the next CRL number should be created from all revoked certificates
+     */
+    static boolean isFullCrlRebuild(final int lastBaseCrlNumber, final int nextCrlNumber, final int fullRebuildInterval) {
+        return nextCrlNumber / fullRebuildInterval != lastBaseCrlNumber / fullRebuildInterval;
+    }
+
+    /**
+     * Lists the revoked certificates of a base CRL from the revoked certificates on the last base CRL, and the revocations changed since
+     * it was issued. The changes are read the same way as for a delta CRL that includes invalidity dates, i.e. by update time, so that
+     * changed revocation reasons are included. Expired certificates are removed, and archived, once they have been on a base CRL.
+     * <p>
+     * The changes are read from {@link EjbcaConfiguration#getCrlGenerationIncrementalSafetyMargin()} before the last base CRL was issued,
+     * since a revocation that was committed after the last base CRL read the revoked certificates may have an earlier update time. Applying a
+     * change that is already on the CRL again gives the same entry.
+     *
+     * @param lastBaseCrlEntries the revoked certificates on the last base CRL by serial number. Updated to the revoked certificates of the new CRL.
+     * @return the revoked certificates of the new base CRL
+     */
+    private Collection<RevokedCertInfo> getIncrementalRevokedCertInfos(final String caCertSubjectDN, final int crlPartitionIndex,
+            final Map<BigInteger, RevokedCertInfo> lastBaseCrlEntries, final Date lastBaseCrlCreationDate, final boolean keepExpiredCertsOnCrl,
+            final boolean allowInvalidityDate, final Date now) throws FinderException, AuthorizationDeniedException {
+        final List<RevokedCertInfo> expired = new ArrayList<>();
+        if (!keepExpiredCertsOnCrl) {
+            final Collection<RevokedCertInfo> expiredRevokedCertInfos = certificateDataSession.getExpiredRevokedCertInfos(caCertSubjectDN, crlPartitionIndex,
+                    lastBaseCrlCreationDate.getTime());
+            for (final RevokedCertInfo revokedCertInfo : expiredRevokedCertInfos) {
+                // Certificates that expired before they appeared on a base CRL are kept until they have been on one, see RFC5280 section 3.3
+                if (lastBaseCrlEntries.containsKey(revokedCertInfo.getUserCertificate())) {
+                    expired.add(revokedCertInfo);
+                }
+            }
+            expiredRevokedCertInfos.clear();
+        }
+        final long changedAfter = lastBaseCrlCreationDate.getTime() - EjbcaConfiguration.getCrlGenerationIncrementalSafetyMargin();
+        final Collection<RevokedCertInfo> changes = noConflictCertificateStoreSession.listRevokedCertInfo(caCertSubjectDN, true, crlPartitionIndex,
+                changedAfter, true, true);
+        final int changeCount = changes.size();
+        try {
+            for (final RevokedCertInfo change : changes) {
+                if (change.isRevoked()) {
+                    setRevocationDateIfMissing(change, now);
+                }
+                applyRevocationChange(lastBaseCrlEntries, change, allowInvalidityDate);
+            }
+        } finally {
+            changes.clear();
+        }
+        final AuthenticationToken archiveAdmin = new AlwaysAllowLocalAuthenticationToken(new UsernamePrincipal("CrlCreateSession.archive_expired"));
+        for (final RevokedCertInfo revokedCertInfo : expired) {
+            lastBaseCrlEntries.remove(revokedCertInfo.getUserCertificate());
+            if (log.isDebugEnabled()) {
+                log.debug("Archiving certificate with fp=" + revokedCertInfo.getCertificateFingerprint());
+            }
+            noConflictCertificateStoreSession.setStatus(archiveAdmin, revokedCertInfo.getCertificateFingerprint(), CertificateConstants.CERT_ARCHIVED);
+        }
+        if (log.isDebugEnabled()) {
+            log.debug("Applied " + changeCount + " changed revocations and removed " + expired.size() + " expired certificates, giving "
+                    + lastBaseCrlEntries.size() + " revoked certificates.");
+        }
+        final RevokedCertInfoCollection revokedCertInfos = new RevokedCertInfoCollection(lastBaseCrlEntries.size());
+        revokedCertInfos.addAll(lastBaseCrlEntries.values());
+        revokedCertInfos.closeForWrite();
+        lastBaseCrlEntries.clear();
+        return revokedCertInfos;
+    }
+
+    /** @return the revoked certificates on the last base CRL by serial number */
+    private Map<BigInteger, RevokedCertInfo> readLastBaseCrlEntries(final CRLInfo lastBaseCrlInfo, final boolean allowInvalidityDate) throws CRLException {
+        try (final InputStream lastBaseCrl = lastBaseCrlInfo.getCrlStream()) {
+            return getRevokedCertInfos(lastBaseCrl, allowInvalidityDate);
+        } catch (IOException e) {
+            throw new CRLException("Failed to read CRL number " + lastBaseCrlInfo.getLastCRLNumber() + ".", e);
+        }
+    }
+
+    /**
+     * Computes the revoked certificates of a base CRL the same way as {@link #getIncrementalRevokedCertInfos}, to be compared with a CRL
+     * created from all revoked certificates. Nothing is changed in the database, and expired certificates are not removed, since the full
+     * CRL lists the expired certificates that are archived by it once more.
+     *
+     * @return the sorted hashes of the CRL entries, see {@link #getCrlEntryHashes}
+     */
+    private long[] getIncrementalCrlEntryHashes(final String caCertSubjectDN, final int crlPartitionIndex, final CRLInfo lastBaseCrlInfo,
+            final boolean allowInvalidityDate, final Date now) throws CRLException {
+        final Map<BigInteger, RevokedCertInfo> entries = readLastBaseCrlEntries(lastBaseCrlInfo, allowInvalidityDate);
+        final long changedAfter = lastBaseCrlInfo.getCreateDate().getTime() - EjbcaConfiguration.getCrlGenerationIncrementalSafetyMargin();
+        final Collection<RevokedCertInfo> changes = noConflictCertificateStoreSession.listRevokedCertInfo(caCertSubjectDN, true, crlPartitionIndex,
+                changedAfter, true, true);
+        try {
+            for (final RevokedCertInfo change : changes) {
+                if (change.isRevoked() && !change.isRevocationDateSet()) {
+                    change.setRevocationDate(now);
+                }
+                applyRevocationChange(entries, change, allowInvalidityDate);
+            }
+        } finally {
+            changes.clear();
+        }
+        final long[] entryHashes = getCrlEntryHashes(entries.values());
+        entries.clear();
+        return entryHashes;
+    }
+
+    /**
+     * Compares a base CRL created from all revoked certificates with the incremental result, and logs and audit logs an error if they
+     * differ. The entries are compared the way they are encoded on the CRL.
+     */
+    private void verifyIncrementalCrl(final AuthenticationToken admin, final CAInfo cainfo, final int crlPartitionIndex,
+            final Collection<RevokedCertInfo> revokedCertInfos, final long[] incrementalEntryHashes) {
+        final boolean[] matched = new boolean[incrementalEntryHashes.length];
+        final List<BigInteger> examples = new ArrayList<>();
+        final int missing = getUnmatchedCrlEntries(revokedCertInfos, incrementalEntryHashes, matched, examples);
+        int extra = 0;
+        for (final boolean entryMatched : matched) {
+            if (!entryMatched) {
+                extra++;
+            }
+        }
+        if (missing == 0 && extra == 0) {
+            if (log.isDebugEnabled()) {
+                log.debug("The incrementally created CRL of CA '" + cainfo.getName() + "' matches the full rebuild.");
+            }
+            return;
+        }
+        final List<String> exampleSerialNumbers = new ArrayList<>(examples.size());
+        for (final BigInteger serialNumber : examples) {
+            exampleSerialNumbers.add(serialNumber.toString(16).toUpperCase());
+        }
+        final String msg = intres.getLocalizedMessage("createcrl.incrementalmismatch", cainfo.getName(), crlPartitionIndex, missing,
+                exampleSerialNumbers, extra);
+        log.error(msg);
+        final Map<String, Object> details = new LinkedHashMap<>();
+        details.put("msg", msg);
+        logSession.log(EventTypes.CRL_CREATION, EventStatus.FAILURE, ModuleTypes.CRL, ServiceTypes.CORE, admin.toString(),
+                String.valueOf(cainfo.getCAId()), null, null, details);
+    }
+
+    /**
+     * @return the hashes of the CRL entries of the revoked certificates, sorted. Certificates that are not revoked, e.g. released from hold,
+     *  are not included on base CRLs and are left out.
+     */
+    static long[] getCrlEntryHashes(final Collection<RevokedCertInfo> revokedCertInfos) {
+        final MessageDigest digest = getSha256Digest();
+        final long[] entryHashes = new long[revokedCertInfos.size()];
+        int count = 0;
+        for (final RevokedCertInfo revokedCertInfo : revokedCertInfos) {
+            if (revokedCertInfo.isRevoked()) {
+                entryHashes[count++] = getCrlEntryHash(digest, revokedCertInfo);
+            }
+        }
+        final long[] sortedHashes = Arrays.copyOf(entryHashes, count);
+        Arrays.sort(sortedHashes);
+        return sortedHashes;
+    }
+
+    /**
+     * Looks up the CRL entries of the revoked certificates among the hashes of another set of entries.
+     *
+     * @param entryHashes sorted hashes from {@link #getCrlEntryHashes}
+     * @param matched set to true for each of the entry hashes that was found
+     * @param examples where the serial numbers of the first 10 entries that were not found are added
+     * @return the number of CRL entries of revoked certificates that were not found
+     */
+    static int getUnmatchedCrlEntries(final Collection<RevokedCertInfo> revokedCertInfos, final long[] entryHashes, final boolean[] matched,
+            final List<BigInteger> examples) {
+        final MessageDigest digest = getSha256Digest();
+        int unmatched = 0;
+        for (final RevokedCertInfo revokedCertInfo : revokedCertInfos) {
+            if (revokedCertInfo.isRevoked()) {
+                final int index = Arrays.binarySearch(entryHashes, getCrlEntryHash(digest, revokedCertInfo));
+                if (index >= 0) {
+                    matched[index] = true;
+                } else {
+                    if (examples.size() < 10) {
+                        examples.add(revokedCertInfo.getUserCertificate());
+                    }
+                    unmatched++;
+                }
+            }
+        }
+        return unmatched;
+    }
+
+    /** @return the first 64 bits of a hash of the fields of the CRL entry of a revoked certificate, with the dates in whole seconds as they are encoded */
+    private static long getCrlEntryHash(final MessageDigest digest, final RevokedCertInfo revokedCertInfo) {
+        final Date invalidityDate = revokedCertInfo.getInvalidityDate();
+        digest.update(revokedCertInfo.getUserCertificate().toByteArray());
+        digest.update(ByteBuffer.allocate(3 * Long.BYTES).putLong(revokedCertInfo.getRevocationDate().getTime() / 1000)
+                .putLong(revokedCertInfo.getReason()).putLong(invalidityDate == null ? Long.MIN_VALUE : invalidityDate.getTime() / 1000).array());
+        return ByteBuffer.wrap(digest.digest()).getLong();
+    }
+
+    private static MessageDigest getSha256Digest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available.", e);
+        }
+    }
+
+    /**
+     * Applies a revocation that changed since the last base CRL to the revoked certificates on it.
+     *
+     * @param revokedCertInfos revoked certificates by serial number
+     * @param change the revocation. A certificate that was released from hold is removed.
+     * @param allowInvalidityDate false if the invalidity date of the revocation should be left out
+     */
+    static void applyRevocationChange(final Map<BigInteger, RevokedCertInfo> revokedCertInfos, final RevokedCertInfo change, final boolean allowInvalidityDate) {
+        final BigInteger serialNumber = change.getUserCertificate();
+        if (!change.isRevoked()) {
+            revokedCertInfos.remove(serialNumber);
+        } else if (allowInvalidityDate || !change.isInvalidityDateSet()) {
+            revokedCertInfos.put(serialNumber, change);
+        } else {
+            final String fingerprint = change.getCertificateFingerprint();
+            revokedCertInfos.put(serialNumber, new RevokedCertInfo(fingerprint == null ? null : fingerprint.getBytes(), serialNumber.toByteArray(),
+                    change.getRevocationDate().getTime(), change.getReason(), change.getExpireDate() == null ? 0 : change.getExpireDate().getTime()));
+        }
+    }
+
+    /**
+     * Reads the revoked certificates on a CRL, a chunk at the time without decoding the whole CRL. The certificate fingerprints and expire
+     * dates are not known from the CRL.
+     *
+     * @param crl the DER encoded CRL
+     * @param allowInvalidityDate false if invalidity dates should be left out
+     * @return the revoked certificates by serial number
+     */
+    static Map<BigInteger, RevokedCertInfo> getRevokedCertInfos(final InputStream crl, final boolean allowInvalidityDate) throws CRLException, IOException {
+        final StreamingCrlParser crlParser = new StreamingCrlParser(crl, null);
+        final Map<BigInteger, RevokedCertInfo> revokedCertInfos = new HashMap<>();
+        try {
+            for (List<RevokedCertInfo> entries = crlParser.readEntries(CRL_READ_CHUNK_SIZE); !entries.isEmpty();
+                    entries = crlParser.readEntries(CRL_READ_CHUNK_SIZE)) {
+                for (final RevokedCertInfo entry : entries) {
+                    final RevokedCertInfo revokedCertInfo = allowInvalidityDate || !entry.isInvalidityDateSet() ? entry
+                            : new RevokedCertInfo(null, entry.getUserCertificate().toByteArray(), entry.getRevocationDate().getTime(), entry.getReason(), 0);
+                    revokedCertInfos.put(revokedCertInfo.getUserCertificate(), revokedCertInfo);
+                }
+            }
+        } catch (SignatureException e) {
+            // The signature is not verified when the CRL is read from the database
+            throw new CRLException(e);
+        }
+        return revokedCertInfos;
+    }
+
+    /** @return the invalidity date extension of a CRL entry, or null if it has none */
+    private static Date getInvalidityDate(final X509CRLEntry crlEntry) throws CRLException {
+        if (crlEntry.hasExtensions()) {
+            final byte[] extensionValue = crlEntry.getExtensionValue(Extension.invalidityDate.getId());
+            if (extensionValue != null) {
+                try {
+                    final ASN1GeneralizedTime invalidityDateExtension = ASN1GeneralizedTime.getInstance(JcaX509ExtensionUtils.parseExtensionValue(extensionValue));
+                    if (invalidityDateExtension != null) {
+                        return invalidityDateExtension.getDate();
+                    }
+                } catch (IOException | ParseException e) {
+                    log.debug("Failed to parse invalidity date of CRLEntry: " + e.getMessage());
+                    throw new CRLException(e);
+                }
+            }
+        }
+        return null;
+    }
+
+    /** Sets the revocation date of a revoked certificate to now, in the database as well, if it's missing. */
+    private void setRevocationDateIfMissing(final RevokedCertInfo revokedCertInfo, final Date now) throws FinderException {
+        if (!revokedCertInfo.isRevocationDateSet()) {
+            revokedCertInfo.setRevocationDate(now);
+            /*
+             * FIXME should use noConflictCertificateStoreSession (add a new method). the method there should also update to database. 
+             * (or can we skip this code? when can isRevocationDateSet return false?)
+             * ECA-7992
+             */
+//            noConflictCertificateStoreSession.setRevocationDate(revokedCertInfo.getCertificateFingerprint(), now);
+            CertificateData certdata = certificateDataSession.findByFingerprint(revokedCertInfo.getCertificateFingerprint());
+            if (certdata == null) {
+                throw new FinderException("No certificate with fingerprint " + revokedCertInfo.getCertificateFingerprint());
+            }
+            // Set revocation date in the database
+            certdata.setRevocationDate(now);
+        }
+    }
+
     private Certificate getCaCertificate(final CAInfo caInfo) {
         final Collection<Certificate> certificateChain = caInfo.getCertificateChain();
         return certificateChain.isEmpty() ? null : certificateChain.iterator().next();
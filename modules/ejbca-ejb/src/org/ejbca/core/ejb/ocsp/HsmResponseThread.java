@@ -16,6 +16,9 @@ import java.security.PrivateKey;
 import java.security.cert.CertificateEncodingException;
 import java.security.cert.X509Certificate;
 import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
 import java.util.concurrent.Callable;
 
 import org.bouncycastle.cert.jcajce.JcaX509CertificateHolder;
@@ -33,6 +36,9 @@ import com.keyfactor.util.CertTools;
 
 /**
  * This internal class exists for the sole purpose of catching deadlocks in the HSM hardware.
+ * <p>
+ * Tasks are run by the signing threads of {@link OcspSigningExecutor}, which keep the content signers they have built for reuse
+ * with the same key and algorithm.
  * 
  * @version $Id$
  */
@@ -40,6 +46,46 @@ public class HsmResponseThread implements Callable<BasicOCSPResp> {
 
     public static final long HSM_TIMEOUT_SECONDS = 30;
 
+    /** The maximum number of content signers kept by each signing thread */
+    private static final int MAX_CACHED_SIGNERS = 32;
+
+    /** Key of a cached content signer. Private keys are compared by identity, since a key object may not implement equals. */
+    private static final class SignerKey {
+        private final String signingAlgorithm;
+        private final String provider;
+        private final PrivateKey privateKey;
+
+        private SignerKey(final String signingAlgorithm, final String provider, final PrivateKey privateKey) {
+            this.signingAlgorithm = signingAlgorithm;
+            this.provider = provider;
+            this.privateKey = privateKey;
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+            if (!(o instanceof SignerKey)) {
+                return false;
+            }
+            final SignerKey other = (SignerKey) o;
+            return privateKey == other.privateKey && signingAlgorithm.equals(other.signingAlgorithm) && Objects.equals(provider, other.provider);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * System.identityHashCode(privateKey) + signingAlgorithm.hashCode();
+        }
+    }
+
+    private static final ThreadLocal<Map<SignerKey, ContentSigner>> contentSigners = ThreadLocal.withInitial(
+            () -> new LinkedHashMap<SignerKey, ContentSigner>(16, 0.75f, true) {
+                private static final long serialVersionUID = 1L;
+
+                @Override
+                protected boolean removeEldestEntry(final Map.Entry<SignerKey, ContentSigner> eldest) {
+                    return size() > MAX_CACHED_SIGNERS;
+                }
+            });
+
     private final BasicOCSPRespBuilder basicRes;
     private final String signingAlgorithm;
     private final PrivateKey signerKey;
@@ -63,6 +109,19 @@ public class HsmResponseThread implements Callable<BasicOCSPResp> {
 
     @Override
     public BasicOCSPResp call() throws OCSPException {
+        final SignerKey signerCacheKey = new SignerKey(signingAlgorithm, provider, signerKey);
+        final Map<SignerKey, ContentSigner> signers = contentSigners.get();
+        ContentSigner signer = signers.remove(signerCacheKey);
+        if (signer == null) {
+            signer = createContentSigner();
+        }
+        // The signer is only put back after a successful signing, since a failure may leave data in its buffer
+        final BasicOCSPResp response = basicRes.build(signer, chain, producedAt!=null? producedAt : new Date());
+        signers.put(signerCacheKey, signer);
+        return response;
+    }
+
+    private ContentSigner createContentSigner() {
         try {
             /*
              * BufferingContentSigner defaults to allocating a 4096 bytes buffer. Since a rather large OCSP response (e.g. signed with 4K
@@ -73,8 +132,7 @@ public class HsmResponseThread implements Callable<BasicOCSPResp> {
              * 
              * Lowering this allocation from 20480 to 4096 bytes under ECA-4084 which should still be plenty.
              */
-            final ContentSigner signer = new BufferingContentSigner(new JcaContentSignerBuilder(signingAlgorithm).setProvider(provider).build(signerKey), 20480);
-            return basicRes.build(signer, chain, producedAt!=null? producedAt : new Date());
+            return new BufferingContentSigner(new JcaContentSignerBuilder(signingAlgorithm).setProvider(provider).build(signerKey), 20480);
         } catch (OperatorCreationException e) {
             throw new OcspFailureException(e);
         }
@@ -12,7 +12,11 @@
  *************************************************************************/
 package org.ejbca.core.ejb.ocsp;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.stream.Collectors;
 
 import javax.ejb.Asynchronous;
@@ -28,6 +32,8 @@ import org.apache.log4j.Logger;
 import org.cesecore.config.CesecoreConfiguration;
 import org.cesecore.jndi.JndiConstants;
 import org.cesecore.oscp.OcspResponseData;
+import org.cesecore.util.JdbcBatching;
+import org.cesecore.util.ValueExtractor;
 
 /**
  * 
@@ -40,6 +46,8 @@ public class OcspDataSessionBean implements OcspDataSessionLocal, OcspDataSessio
 
     private static final Logger log = Logger.getLogger(OcspDataSessionBean.class);
 
+    private static final int MAX_SERIALNUMBERS_IN_QUERY = 500;
+
     @PersistenceContext(unitName = CesecoreConfiguration.PERSISTENCE_UNIT)
     private EntityManager entityManager;
 
@@ -51,6 +59,47 @@ public class OcspDataSessionBean implements OcspDataSessionLocal, OcspDataSessio
         log.trace("<persistOcspData");
     }
 
+    @Override
+    public void storeOcspDataBatch(final List<OcspResponseData> responseData) {
+        log.trace(">storeOcspDataBatch");
+        JdbcBatching.enable(entityManager);
+        for (final OcspResponseData ocspResponseData : responseData) {
+            this.entityManager.persist(ocspResponseData);
+        }
+        // Flush here so that the inserts are sent as JDBC batches within this transaction
+        this.entityManager.flush();
+        if (log.isTraceEnabled()) {
+            log.trace("<storeOcspDataBatch persisted " + responseData.size() + " responses.");
+        }
+    }
+
+    @Override
+    public Map<String, Long> findLatestNextUpdates(final Integer caId, final Collection<String> serialNumbers) {
+        log.trace(">findLatestNextUpdates");
+        final Map<String, Long> nextUpdates = new HashMap<>();
+        final Map<String, Long> producedAts = new HashMap<>();
+        final List<String> serialNumberList = new ArrayList<>(serialNumbers);
+        // Keep the IN clause within the limits of all supported databases
+        for (int i = 0; i < serialNumberList.size(); i += MAX_SERIALNUMBERS_IN_QUERY) {
+            final TypedQuery<Object[]> query = this.entityManager.createQuery(
+                    "SELECT a.serialNumber, a.producedAt, a.nextUpdate FROM OcspResponseData a WHERE a.caId = :caId AND a.serialNumber IN (:serialNumbers)",
+                    Object[].class);
+            query.setParameter("caId", caId);
+            query.setParameter("serialNumbers", serialNumberList.subList(i, Math.min(i + MAX_SERIALNUMBERS_IN_QUERY, serialNumberList.size())));
+            for (final Object[] row : query.getResultList()) {
+                final String serialNumber = (String) row[0];
+                final long producedAt = ValueExtractor.extractLongValue(row[1]);
+                final Long previousProducedAt = producedAts.get(serialNumber);
+                if (previousProducedAt == null || producedAt > previousProducedAt) {
+                    producedAts.put(serialNumber, producedAt);
+                    nextUpdates.put(serialNumber, row[2] == null ? null : ValueExtractor.extractLongValue(row[2]));
+                }
+            }
+        }
+        log.trace("<findLatestNextUpdates");
+        return nextUpdates;
+    }
+
     @Override
     public List<OcspResponseData> findOcspDataByCaId(final Integer caId) {
         log.trace(">findOcspDataByCaId");
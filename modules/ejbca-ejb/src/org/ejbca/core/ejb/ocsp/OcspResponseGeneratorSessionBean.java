@@ -58,6 +58,7 @@ import org.bouncycastle.cert.ocsp.OCSPResp;
 import org.bouncycastle.cert.ocsp.OCSPRespBuilder;
 import org.bouncycastle.cert.ocsp.Req;
 import org.bouncycastle.cert.ocsp.RevokedStatus;
+import org.bouncycastle.cert.ocsp.SingleResp;
 import org.bouncycastle.cert.ocsp.UnknownStatus;
 import org.bouncycastle.cert.ocsp.jcajce.JcaCertificateID;
 import org.bouncycastle.operator.OperatorCreationException;
@@ -79,10 +80,10 @@ import org.cesecore.certificates.ca.X509CAInfo;
 import org.cesecore.certificates.ca.catoken.CAToken;
 import org.cesecore.certificates.ca.catoken.CATokenConstants;
 import org.cesecore.certificates.ca.internal.CaCertificateCache;
-import org.cesecore.certificates.certificate.CertificateDataWrapper;
 import org.cesecore.certificates.certificate.CertificateInfo;
 import org.cesecore.certificates.certificate.CertificateStatus;
 import org.cesecore.certificates.certificate.CertificateStatusHolder;
+import org.cesecore.certificates.certificate.CertificateDataSessionLocal;
 import org.cesecore.certificates.certificate.CertificateStoreSessionLocal;
 import org.cesecore.certificates.certificate.HashID;
 import org.cesecore.certificates.certificateprofile.CertificateProfileConstants;
@@ -94,12 +95,16 @@ import org.cesecore.certificates.ocsp.cache.OcspDataConfigCache;
 import org.cesecore.certificates.ocsp.cache.OcspDataConfigCacheEntry;
 import org.cesecore.certificates.ocsp.cache.OcspExtensionsCache;
 import org.cesecore.certificates.ocsp.cache.OcspRequestSignerStatusCache;
+import org.cesecore.certificates.ocsp.cache.OcspResponseCache;
+import org.cesecore.certificates.ocsp.cache.OcspRevocationIndex;
 import org.cesecore.certificates.ocsp.cache.OcspSigningCache;
 import org.cesecore.certificates.ocsp.cache.OcspSigningCacheEntry;
+import org.cesecore.certificates.ocsp.cache.RevocationStatusIndex;
 import org.cesecore.certificates.ocsp.exception.CryptoProviderException;
 import org.cesecore.certificates.ocsp.exception.IllegalNonceException;
 import org.cesecore.certificates.ocsp.exception.MalformedRequestException;
 import org.cesecore.certificates.ocsp.exception.OcspFailureException;
+import org.cesecore.certificates.ocsp.exception.OcspSignerBusyException;
 import org.cesecore.certificates.ocsp.extension.OCSPExtension;
 import org.cesecore.certificates.ocsp.extension.OCSPExtensionType;
 import org.cesecore.certificates.ocsp.logging.AuditLogger;
@@ -107,6 +112,8 @@ import org.cesecore.certificates.ocsp.logging.GuidHolder;
 import org.cesecore.certificates.ocsp.logging.PatternLogger;
 import org.cesecore.certificates.ocsp.logging.TransactionCounter;
 import org.cesecore.certificates.ocsp.logging.TransactionLogger;
+import org.cesecore.certificates.ocsp.metrics.OcspMetrics;
+import org.cesecore.certificates.ocsp.metrics.OcspResponderMetrics;
 import org.cesecore.certificates.util.cert.CertificateUtils;
 import org.cesecore.config.AvailableExtendedKeyUsagesConfiguration;
 import org.cesecore.config.ConfigurationHolder;
@@ -133,6 +140,7 @@ import org.cesecore.keys.token.SoftCryptoToken;
 import org.cesecore.oscp.OcspResponseData;
 import org.cesecore.util.LogRedactionUtils;
 import org.cesecore.util.ValidityDate;
+import org.cesecore.util.ValueExtractor;
 import org.cesecore.util.log.ProbableErrorHandler;
 import org.cesecore.util.provider.EkuPKIXCertPathChecker;
 import org.ejbca.core.ejb.ca.publisher.PublisherSessionLocal;
@@ -140,6 +148,8 @@ import org.ejbca.core.model.ca.publisher.PublisherException;
 
 import javax.annotation.PostConstruct;
 import javax.annotation.Resource;
+import javax.ejb.AsyncResult;
+import javax.ejb.Asynchronous;
 import javax.ejb.EJB;
 import javax.ejb.EJBException;
 import javax.ejb.SessionContext;
@@ -185,6 +195,8 @@ import java.util.Date;
 import java.util.Enumeration;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
@@ -194,8 +206,6 @@ import java.util.TimeZone;
 import java.util.UUID;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
@@ -211,12 +221,14 @@ public class OcspResponseGeneratorSessionBean implements OcspResponseGeneratorSe
     private static final int MAX_REQUEST_SIZE = 100000;
     /** Timer identifiers */
     private static final int TIMERID_OCSPSIGNINGCACHE = 1;
+    private static final int TIMERID_REVOCATIONINDEX = 2;
+    /** Changes are re-read from this long before the last seen updateTime, to catch rows that were committed out of order */
+    private static final long REVOCATIONINDEX_OVERLAP_MS = 60000L;
 
     private static final Logger log = Logger.getLogger(OcspResponseGeneratorSessionBean.class);
 
     private static final InternalResources intres = InternalResources.getInstance();
     
-    private static volatile ExecutorService service = Executors.newCachedThreadPool();
     
     @Resource
     private SessionContext sessionContext;
@@ -230,6 +242,8 @@ public class OcspResponseGeneratorSessionBean implements OcspResponseGeneratorSe
     @EJB
     private CertificateStoreSessionLocal certificateStoreSession;
     @EJB
+    private CertificateDataSessionLocal certificateDataSession;
+    @EJB
     private CryptoTokenSessionLocal cryptoTokenSession;
     @EJB
     private CryptoTokenManagementSessionLocal cryptoTokenManagementSession;
@@ -270,6 +284,11 @@ public class OcspResponseGeneratorSessionBean implements OcspResponseGeneratorSe
         } else {
             log.info("Not initing OCSP reload timers, there are already some.");
         }
+        if (OcspConfiguration.isRevocationIndexEnabled() && getTimerCount(TIMERID_REVOCATIONINDEX)==0) {
+            // Load the index from the timer rather than here, so that deployment isn't held up by large CAs. Lookups go to the database
+            // until the index of an issuer has been fully loaded.
+            addTimer(1L, TIMERID_REVOCATIONINDEX);
+        }
     }
     
     @Override
@@ -375,7 +394,7 @@ public class OcspResponseGeneratorSessionBean implements OcspResponseGeneratorSe
                                 
                                 final String signatureProviderName = cryptoToken.getSignProviderName();
                                 if (!caCertificateChain.isEmpty()) {
-                                    generateOcspSigningCacheEntries(caCertificateChain, signatureProviderName, privateKey, ocspConfiguration, caToken);
+                                    generateOcspSigningCacheEntries(caId, caCertificateChain, signatureProviderName, privateKey, signKeyAlias, ocspConfiguration, caToken);
                                 } else {
                                     log.warn("CA with ID " + caId
                                             + " appears to lack a certificate in the database. This may be a serious error if not in a test environment.");
@@ -404,7 +423,7 @@ public class OcspResponseGeneratorSessionBean implements OcspResponseGeneratorSe
                             }
                             final String signatureProviderName = cryptoToken.getSignProviderName();
                             if (!caCertificateChain.isEmpty()) {
-                                generateOcspSigningCacheEntries(caCertificateChain, signatureProviderName, privateKey, ocspConfiguration, caToken);
+                                generateOcspSigningCacheEntries(caId, caCertificateChain, signatureProviderName, privateKey, keyPairAlias, ocspConfiguration, caToken);
                                 generateOcspConfigCacheEntry(caCertificateChain.get(0), caId, preProduceOcspResponse, storeOcspResponseOnDemand, isMsCaCompatible);
 
                             } else {
@@ -435,7 +454,7 @@ public class OcspResponseGeneratorSessionBean implements OcspResponseGeneratorSe
                                     + CertTools.getNotAfter(caCertificateChain.get(0)) + ".");
                         }
                         //Add an entry with just a chain and nothing else
-                        OcspSigningCache.INSTANCE.stagingAdd(new OcspSigningCacheEntry(caCertificateChain.get(0), caCertificateStatus, null, null,
+                        OcspSigningCache.INSTANCE.stagingAdd(caId, new OcspSigningCacheEntry(caCertificateChain.get(0), caCertificateStatus, null, null,
                                 null, null, null, ocspConfiguration.getOcspResponderIdType()));
                         OcspDataConfigCache.INSTANCE.stagingAdd(new OcspDataConfigCacheEntry(caCertificateChain.get(0), caId, preProduceOcspResponse,
                                 storeOcspResponseOnDemand, isMsCaCompatible));
@@ -456,44 +475,15 @@ public class OcspResponseGeneratorSessionBean implements OcspResponseGeneratorSe
                 // Add all potential InternalKeyBindings as OCSP responders to the staging area, overwriting CA entries from before
                 for (final int internalKeyBindingId : internalKeyBindingDataSession.getIds(OcspKeyBinding.IMPLEMENTATION_ALIAS)) {
                     final OcspKeyBinding ocspKeyBinding = (OcspKeyBinding) internalKeyBindingDataSession.getInternalKeyBinding(internalKeyBindingId);
-                    if (log.isDebugEnabled()) {
-                        log.debug("Processing " + ocspKeyBinding.getName() + " (" + ocspKeyBinding.getId() + ")");
-                    }
-                    if (!ocspKeyBinding.getStatus().equals(InternalKeyBindingStatus.ACTIVE)) {
-                        if (log.isDebugEnabled()) {
-                            log.debug("Ignoring OcspKeyBinding since it is not active.");
-                        }
-                        continue;
-                    }
-                    final X509Certificate ocspSigningCertificate = (X509Certificate) certificateStoreSession
-                            .findCertificateByFingerprint(ocspKeyBinding.getCertificateId());
-                    if (ocspSigningCertificate == null) {
-                        log.warn("OCSP signing certificate with referenced fingerprint " + ocspKeyBinding.getCertificateId()
-                                + " does not exist. Ignoring internalKeyBinding with id " + ocspKeyBinding.getId());
-                        continue;
-                    }
-                    //Make the same check as above 
-                    if (certificateStoreSession
-                            .getStatus(CertTools.getIssuerDN(ocspSigningCertificate), CertTools.getSerialNumber(ocspSigningCertificate))
-                            .equals(CertificateStatus.REVOKED)) {
-                        log.warn("OCSP Responder certificate with subject DN '" + CertTools.getSubjectDN(ocspSigningCertificate)
-                                + "' and serial number " + CertTools.getSerialNumber(ocspSigningCertificate) + " is revoked.");
-                    }
-                    final long warnBeforeExpirationTime = OcspConfiguration.getWarningBeforeExpirationTime();
-                    //Check if signing cert is expired
-                    if (!CertTools.isCertificateValid(ocspSigningCertificate, true, warnBeforeExpirationTime)) {
-                        log.warn("OCSP Responder certificate with subject DN '" + CertTools.getSubjectDN(ocspSigningCertificate)
-                                + "' and serial number " + CertTools.getSerialNumber(ocspSigningCertificate) + " is expired.");
-                    }
-
-                    OcspSigningCacheEntry ocspSigningCacheEntry = makeOcspSigningCacheEntry(ocspSigningCertificate, ocspKeyBinding);
+                    final OcspSigningCacheEntry ocspSigningCacheEntry = createOcspSigningCacheEntry(ocspKeyBinding);
                     if (ocspSigningCacheEntry != null) {
-                        addSignResponseOnBehalfCasToCacheEntry(ocspSigningCacheEntry, ocspKeyBinding);
                         OcspSigningCache.INSTANCE.stagingAdd(ocspSigningCacheEntry);
                     }
                 }
                 OcspSigningCache.INSTANCE.stagingCommit(ocspConfiguration.getOcspDefaultResponderReference());
                 OcspDataConfigCache.INSTANCE.stagingCommit();
+                // Cached responses may have been signed with keys or settings that are no longer in use
+                OcspResponseCache.INSTANCE.clear();
             } finally {
                 OcspSigningCache.INSTANCE.stagingRelease();
             }
@@ -503,6 +493,62 @@ public class OcspResponseGeneratorSessionBean implements OcspResponseGeneratorSe
         }
     }
     
+    @Override
+    @TransactionAttribute(TransactionAttributeType.NOT_SUPPORTED)
+    public void reloadOcspSigningCacheEntry(final int internalKeyBindingId) {
+        final OcspKeyBinding ocspKeyBinding = (OcspKeyBinding) internalKeyBindingDataSession.getInternalKeyBinding(internalKeyBindingId);
+        final OcspSigningCacheEntry ocspSigningCacheEntry = ocspKeyBinding == null ? null : createOcspSigningCacheEntry(ocspKeyBinding);
+        if (ocspSigningCacheEntry == null) {
+            OcspSigningCache.INSTANCE.removeKeyBindingEntry(internalKeyBindingId);
+        } else {
+            OcspSigningCache.INSTANCE.updateKeyBindingEntry(ocspSigningCacheEntry);
+        }
+        OcspResponseCache.INSTANCE.clear();
+    }
+
+    /**
+     * Creates the OcspSigningCacheEntry for an OcspKeyBinding, including the CAs it signs responses on behalf of.
+     * 
+     * @param ocspKeyBinding the key binding to create the entry for
+     * @return the entry, or null if the key binding is not active or could not be used for signing
+     */
+    private OcspSigningCacheEntry createOcspSigningCacheEntry(final OcspKeyBinding ocspKeyBinding) {
+        if (log.isDebugEnabled()) {
+            log.debug("Processing " + ocspKeyBinding.getName() + " (" + ocspKeyBinding.getId() + ")");
+        }
+        if (!ocspKeyBinding.getStatus().equals(InternalKeyBindingStatus.ACTIVE)) {
+            if (log.isDebugEnabled()) {
+                log.debug("Ignoring OcspKeyBinding since it is not active.");
+            }
+            return null;
+        }
+        final X509Certificate ocspSigningCertificate = (X509Certificate) certificateStoreSession
+                .findCertificateByFingerprint(ocspKeyBinding.getCertificateId());
+        if (ocspSigningCertificate == null) {
+            log.warn("OCSP signing certificate with referenced fingerprint " + ocspKeyBinding.getCertificateId()
+                    + " does not exist. Ignoring internalKeyBinding with id " + ocspKeyBinding.getId());
+            return null;
+        }
+        //Make the same check as for CAs
+        if (certificateStoreSession
+                .getStatus(CertTools.getIssuerDN(ocspSigningCertificate), CertTools.getSerialNumber(ocspSigningCertificate))
+                .equals(CertificateStatus.REVOKED)) {
+            log.warn("OCSP Responder certificate with subject DN '" + CertTools.getSubjectDN(ocspSigningCertificate)
+                    + "' and serial number " + CertTools.getSerialNumber(ocspSigningCertificate) + " is revoked.");
+        }
+        final long warnBeforeExpirationTime = OcspConfiguration.getWarningBeforeExpirationTime();
+        //Check if signing cert is expired
+        if (!CertTools.isCertificateValid(ocspSigningCertificate, true, warnBeforeExpirationTime)) {
+            log.warn("OCSP Responder certificate with subject DN '" + CertTools.getSubjectDN(ocspSigningCertificate)
+                    + "' and serial number " + CertTools.getSerialNumber(ocspSigningCertificate) + " is expired.");
+        }
+        final OcspSigningCacheEntry ocspSigningCacheEntry = makeOcspSigningCacheEntry(ocspSigningCertificate, ocspKeyBinding);
+        if (ocspSigningCacheEntry != null) {
+            addSignResponseOnBehalfCasToCacheEntry(ocspSigningCacheEntry, ocspKeyBinding);
+        }
+        return ocspSigningCacheEntry;
+    }
+
     private void addSignResponseOnBehalfCasToCacheEntry(OcspSigningCacheEntry ocspSigningCacheEntry, 
                                                                             OcspKeyBinding ocspKeyBinding) {
         Set<CertificateID> signedBehalfOfCaIds = ocspSigningCacheEntry.getSignedBehalfOfCaIds();
@@ -574,16 +620,17 @@ public class OcspResponseGeneratorSessionBean implements OcspResponseGeneratorSe
         throw new IllegalStateException("No key matching Subject Key Id '" + new String(Hex.encode(certificateSubjectKeyId)) + "' found.");
     }
     
-    private void generateOcspSigningCacheEntries(List<X509Certificate> caCertificateChain, String signatureProviderName, PrivateKey privateKey,
-            GlobalOcspConfiguration ocspConfiguration, CAToken caToken) {
+    private void generateOcspSigningCacheEntries(int caId, List<X509Certificate> caCertificateChain, String signatureProviderName, PrivateKey privateKey,
+            String keyAlias, GlobalOcspConfiguration ocspConfiguration, CAToken caToken) {
         X509Certificate caCertificate = caCertificateChain.get(0);
         final CertificateStatus caCertificateStatus = getRevocationStatusWhenCasPrivateKeyIsCompromised(caCertificate, false);
 
         OcspSigningCacheEntry signingCacheEntry = new OcspSigningCacheEntry(caCertificate, caCertificateStatus, caCertificateChain, null, privateKey,
                 signatureProviderName, null, ocspConfiguration.getOcspResponderIdType());
         signingCacheEntry.setCrlSigningAlgorithm(caToken.getSignatureAlgorithm());
+        signingCacheEntry.setSigningKeyReference(caToken.getCryptoTokenId(), keyAlias);
         
-        OcspSigningCache.INSTANCE.stagingAdd(signingCacheEntry);
+        OcspSigningCache.INSTANCE.stagingAdd(caId, signingCacheEntry);
         checkWarnings(caCertificateStatus, caCertificate);
     }
 
@@ -652,8 +699,10 @@ public class OcspResponseGeneratorSessionBean implements OcspResponseGeneratorSe
         } else {
             respIdType = OcspKeyBinding.ResponderIdType.KEYHASH;
         }
-        return new OcspSigningCacheEntry(caCertificateChain.get(0), certificateStatus, caCertificateChain, ocspSigningCertificate, privateKey,
-                signatureProviderName, ocspKeyBinding, respIdType);
+        final OcspSigningCacheEntry ocspSigningCacheEntry = new OcspSigningCacheEntry(caCertificateChain.get(0), certificateStatus, caCertificateChain,
+                ocspSigningCertificate, privateKey, signatureProviderName, ocspKeyBinding, respIdType);
+        ocspSigningCacheEntry.setSigningKeyReference(ocspKeyBinding.getCryptoTokenId(), ocspKeyBinding.getKeyPairAlias());
+        return ocspSigningCacheEntry;
     }
     
     /** 
@@ -956,11 +1005,14 @@ public class OcspResponseGeneratorSessionBean implements OcspResponseGeneratorSe
      */
     private OCSPReq translateRequestFromByteArray(byte[] request, String remoteAddress, TransactionLogger transactionLogger)
             throws MalformedRequestException, SignRequestException, SignRequestSignatureException, CertificateException, NoSuchAlgorithmException {
-        final OCSPReq ocspRequest;
-        try {
-            ocspRequest = new OCSPReq(request);
-        } catch (IOException e) {
-            throw new MalformedRequestException("Could not form OCSP request", LogRedactionUtils.getRedactedException(e));
+        // Most requests are for a single certificate without extensions, which can be decoded without the general ASN.1 parser
+        OCSPReq ocspRequest = SingleCertIdOcspRequestDecoder.decode(request);
+        if (ocspRequest == null) {
+            try {
+                ocspRequest = new OCSPReq(request);
+            } catch (IOException e) {
+                throw new MalformedRequestException("Could not form OCSP request", LogRedactionUtils.getRedactedException(e));
+            }
         }
         if (ocspRequest.getRequestorName() == null) {
             if (log.isDebugEnabled()) {
@@ -1244,13 +1296,317 @@ public class OcspResponseGeneratorSessionBean implements OcspResponseGeneratorSe
         if (log.isTraceEnabled()) {
             log.trace(">timeoutHandler: " + timer.getInfo().toString());
         }
-        // reloadTokenAndChainCache cancels old timers and adds a new timer
-        reloadOcspSigningCache();
+        // The reload methods cancel old timers and add a new timer
+        if (Integer.valueOf(TIMERID_REVOCATIONINDEX).equals(timer.getInfo())) {
+            refreshRevocationIndex();
+        } else {
+            reloadOcspSigningCache();
+        }
         if (log.isTraceEnabled()) {
             log.trace("<timeoutHandler");
         }
     }
 
+    /**
+     * Brings the in-memory revocation index up to date for all CAs that this responder answers for. Issuers that are
+     * not indexed yet are loaded from scratch, which may take a while for large CAs; until then their lookups go to the database.
+     */
+    private void refreshRevocationIndex() {
+        cancelTimers(TIMERID_REVOCATIONINDEX);
+        try {
+            if (!OcspConfiguration.isRevocationIndexEnabled()) {
+                OcspRevocationIndex.INSTANCE.clear();
+                return;
+            }
+            final Set<String> issuerDns = new HashSet<>();
+            for (final OcspSigningCacheEntry entry : OcspSigningCache.INSTANCE.getEntries()) {
+                if (entry.getIssuerCaCertificate() != null) {
+                    issuerDns.add(CertTools.getSubjectDN(entry.getIssuerCaCertificate()));
+                }
+                if (entry.getSignedBehalfOfCaCerticates() != null) {
+                    for (final X509Certificate caCertificate : entry.getSignedBehalfOfCaCerticates().values()) {
+                        issuerDns.add(CertTools.getSubjectDN(caCertificate));
+                    }
+                }
+            }
+            OcspRevocationIndex.INSTANCE.retainIssuers(issuerDns);
+            for (final String issuerDn : issuerDns) {
+                try {
+                    refreshRevocationIndex(issuerDn);
+                } catch (RuntimeException e) {
+                    log.warn("Failed to refresh the OCSP revocation index for issuer '" + issuerDn + "': " + e.getMessage());
+                    if (log.isDebugEnabled()) {
+                        log.debug("Failed to refresh the OCSP revocation index.", e);
+                    }
+                }
+            }
+            // Rebuild at most one index each time, the one that was rebuilt longest ago, so the refreshes of the other CAs are not held up for long
+            final long rebuildTime = OcspConfiguration.getRevocationIndexRebuildTimeInMilliseconds();
+            String rebuildIssuerDn = null;
+            for (final String issuerDn : issuerDns) {
+                final long lastRebuildTime = OcspRevocationIndex.INSTANCE.getRebuildTime(issuerDn);
+                if (rebuildTime > 0 && lastRebuildTime >= 0 && System.currentTimeMillis() - lastRebuildTime >= rebuildTime
+                        && (rebuildIssuerDn == null || lastRebuildTime < OcspRevocationIndex.INSTANCE.getRebuildTime(rebuildIssuerDn))) {
+                    rebuildIssuerDn = issuerDn;
+                }
+            }
+            if (rebuildIssuerDn != null) {
+                try {
+                    rebuildRevocationIndex(rebuildIssuerDn, true);
+                } catch (RuntimeException e) {
+                    log.warn("Failed to rebuild the OCSP revocation index for issuer '" + rebuildIssuerDn + "': " + e.getMessage());
+                    if (log.isDebugEnabled()) {
+                        log.debug("Failed to rebuild the OCSP revocation index.", e);
+                    }
+                }
+            }
+        } finally {
+            addTimer(OcspConfiguration.getRevocationIndexRefreshTimeInMilliseconds(), TIMERID_REVOCATIONINDEX);
+        }
+    }
+
+    /** Loads the index of the issuer if it isn't indexed yet, otherwise reads the rows that have changed since the last refresh into it. */
+    private void refreshRevocationIndex(final String issuerDn) {
+        final RevocationStatusIndex current = OcspRevocationIndex.INSTANCE.getIndex(issuerDn);
+        if (current == null) {
+            rebuildRevocationIndex(issuerDn, false);
+            return;
+        }
+        final long startTime = System.currentTimeMillis();
+        final RevocationStatusIndex.Updates updates = new RevocationStatusIndex.Updates();
+        final long highestUpdateTime = readRevocationIndexUpdates(issuerDn, current.getHighestUpdateTime() - REVOCATIONINDEX_OVERLAP_MS, updates, true);
+        if (!updates.isEmpty()) {
+            final RevocationStatusIndex updated = OcspRevocationIndex.INSTANCE.update(issuerDn, updates, highestUpdateTime);
+            if (updated != null && log.isDebugEnabled()) {
+                log.debug("Applied " + updates.size() + " rows to the OCSP revocation index for issuer '" + issuerDn + "' in "
+                        + (System.currentTimeMillis() - startTime) + " ms. Index size is now " + updated.getSize() + ".");
+            }
+        }
+    }
+
+    /**
+     * Reads the whole index of the issuer from the database. Rows that have been deleted, and changes that the refreshes have missed
+     * because they were committed long after their updateTime, are only corrected by this. The current index is used until the new one
+     * has been read.
+     *
+     * @param replacing true if there is an index for the issuer already
+     */
+    private void rebuildRevocationIndex(final String issuerDn, final boolean replacing) {
+        final int batchSize = OcspConfiguration.getRevocationIndexBatchSize();
+        final long startTime = System.currentTimeMillis();
+        final RevocationStatusIndex.Updates updates = new RevocationStatusIndex.Updates();
+        OcspRevocationIndex.INSTANCE.startRebuild(issuerDn);
+        boolean rebuilt = false;
+        try {
+            // Rows that have never been updated since the updateTime column was added can't be found by updateTime, so they are only
+            // read when the index is built. They get an updateTime when their status changes, and are then found by the refreshes.
+            String fingerprintAfter = "";
+            while (true) {
+                final List<Object[]> rows = certificateDataSession.findStatusesByIssuerDNWithoutUpdateTime(issuerDn, fingerprintAfter, batchSize);
+                for (final Object[] row : rows) {
+                    addRevocationIndexUpdate(updates, row);
+                    fingerprintAfter = (String) row[0];
+                }
+                if (rows.size() < batchSize) {
+                    break;
+                }
+            }
+            final long highestUpdateTime = readRevocationIndexUpdates(issuerDn, -1L, updates, false);
+            final RevocationStatusIndex index = OcspRevocationIndex.INSTANCE.finishRebuild(issuerDn,
+                    RevocationStatusIndex.EMPTY.withUpdates(updates, highestUpdateTime), startTime);
+            rebuilt = true;
+            if (replacing) {
+                // Cached responses may have been produced with a status that the rebuild has corrected
+                OcspResponseCache.INSTANCE.clear();
+            }
+            if (log.isDebugEnabled()) {
+                log.debug((replacing ? "Rebuilt" : "Built") + " the OCSP revocation index for issuer '" + issuerDn + "' from " + updates.size()
+                        + " rows in " + (System.currentTimeMillis() - startTime) + " ms. Index size is " + index.getSize() + ".");
+            }
+        } finally {
+            if (!rebuilt) {
+                OcspRevocationIndex.INSTANCE.cancelRebuild(issuerDn);
+            }
+        }
+    }
+
+    /**
+     * Reads the rows of the issuer that have been updated after the given time into the updates.
+     *
+     * @param evictCachedResponses true if cached OCSP responses for the read rows should be evicted, because the status may have changed
+     * @return the highest updateTime read, or -1 if no rows were read
+     */
+    private long readRevocationIndexUpdates(final String issuerDn, long updateTimeAfter, final RevocationStatusIndex.Updates updates,
+            final boolean evictCachedResponses) {
+        final int batchSize = OcspConfiguration.getRevocationIndexBatchSize();
+        String fingerprintAfter = "";
+        long highestUpdateTime = -1L;
+        while (true) {
+            final List<Object[]> rows = certificateDataSession.findStatusesByIssuerDNUpdatedAfter(issuerDn, updateTimeAfter, fingerprintAfter, batchSize);
+            for (final Object[] row : rows) {
+                final BigInteger serialNumber = addRevocationIndexUpdate(updates, row);
+                if (evictCachedResponses) {
+                    // The status may have changed on another node, so don't serve cached responses for it any longer
+                    OcspResponseCache.INSTANCE.remove(serialNumber);
+                }
+                fingerprintAfter = (String) row[0];
+                updateTimeAfter = ValueExtractor.extractLongValue(row[7]);
+                highestUpdateTime = Math.max(highestUpdateTime, updateTimeAfter);
+            }
+            if (rows.size() < batchSize) {
+                return highestUpdateTime;
+            }
+        }
+    }
+
+    /**
+     * Adds a row from {@link CertificateDataSessionLocal#findStatusesByIssuerDNUpdatedAfter} to the index updates.
+     * @return the serial number of the row
+     */
+    private BigInteger addRevocationIndexUpdate(final RevocationStatusIndex.Updates updates, final Object[] row) {
+        final Integer certificateProfileId = row[6] == null ? null : ValueExtractor.extractIntValue(row[6]);
+        final BigInteger serialNumber = new BigInteger((String) row[1]);
+        updates.add(serialNumber, ValueExtractor.extractIntValue(row[2]), ValueExtractor.extractIntValue(row[4]),
+                ValueExtractor.extractLongValue(row[3]), ValueExtractor.extractLongValue(row[5]),
+                certificateProfileId == null ? CertificateProfileConstants.CERTPROFILE_NO_PROFILE : certificateProfileId);
+        return serialNumber;
+    }
+
+    /**
+     * @param prefetchedStatuses statuses by issuer DN and serial number from {@link #prefetchStatuses}, or null
+     * @param metrics where the lookup is recorded, or null if it should not be recorded
+     * @return the status from the in-memory revocation index if the certificate is in there, otherwise from the prefetched
+     * statuses or the database
+     */
+    private CertificateStatus getStatus(final String issuerDn, final BigInteger serialNumber,
+            final Map<String, Map<BigInteger, CertificateStatus>> prefetchedStatuses, final OcspResponderMetrics metrics) {
+        final CertificateStatus indexedStatus = OcspRevocationIndex.INSTANCE.getStatus(issuerDn, serialNumber);
+        if (metrics != null) {
+            metrics.cacheLookup(OcspResponderMetrics.Cache.REVOCATION_STATUS, indexedStatus != null);
+        }
+        if (indexedStatus != null) {
+            return indexedStatus;
+        }
+        if (prefetchedStatuses != null) {
+            final Map<BigInteger, CertificateStatus> issuerStatuses = prefetchedStatuses.get(issuerDn);
+            final CertificateStatus prefetchedStatus = issuerStatuses == null ? null : issuerStatuses.get(serialNumber);
+            if (prefetchedStatus != null) {
+                return prefetchedStatus;
+            }
+        }
+        final long startNanos = System.nanoTime();
+        final CertificateStatus status = certificateStoreSession.getStatus(issuerDn, serialNumber);
+        if (metrics != null) {
+            metrics.databaseLatency(System.nanoTime() - startNanos);
+        }
+        return status;
+    }
+
+    /** @return the metrics of the CA and key binding of the cache entry, or of requests for unknown CAs if the entry is null */
+    private static OcspResponderMetrics getResponderMetrics(final OcspSigningCacheEntry ocspSigningCacheEntry) {
+        return ocspSigningCacheEntry == null ? OcspMetrics.INSTANCE.getUnknownResponderMetrics() : ocspSigningCacheEntry.getMetrics();
+    }
+
+    /**
+     * Looks up the issuers of all certificates in the request that may be answered on behalf of another CA, with one query.
+     *
+     * @return the issuer DNs by serial number, with an empty list for certificates that were not found, or null if no lookup was needed
+     */
+    private Map<BigInteger, List<String>> prefetchSignBehalfOfIssuerDns(final Req[] ocspRequests) {
+        final Set<BigInteger> serialNumbers = new LinkedHashSet<>();
+        for (final Req ocspRequest : ocspRequests) {
+            final OcspSigningCacheEntry ocspSigningCacheEntry = OcspSigningCache.INSTANCE.getEntry(ocspRequest.getCertID());
+            if (ocspSigningCacheEntry != null && !ocspSigningCacheEntry.getSignedBehalfOfCaIds().isEmpty()) {
+                serialNumbers.add(ocspRequest.getCertID().getSerialNumber());
+            }
+        }
+        if (serialNumbers.isEmpty()) {
+            return null;
+        }
+        final Map<BigInteger, List<String>> issuerDns = new HashMap<>(certificateStoreSession.getIssuerDNsBySernos(serialNumbers));
+        for (final BigInteger serialNumber : serialNumbers) {
+            issuerDns.putIfAbsent(serialNumber, Collections.emptyList());
+        }
+        return issuerDns;
+    }
+
+    /** @return the DNs of the issuers of certificates with the serial number, from the prefetched issuers or the database */
+    private List<String> getIssuerDns(final BigInteger serialNumber, final Map<BigInteger, List<String>> prefetchedIssuerDns) {
+        final List<String> issuerDns = prefetchedIssuerDns == null ? null : prefetchedIssuerDns.get(serialNumber);
+        if (issuerDns != null) {
+            return issuerDns;
+        }
+        return certificateStoreSession.getIssuerDNsBySernos(Collections.singletonList(serialNumber)).getOrDefault(serialNumber, Collections.emptyList());
+    }
+
+    /**
+     * @param issuerDns the DNs of the issuers of certificates with the requested serial number
+     * @return the CertID of the CA that the response should be signed on behalf of, or null if the response is signed for the CA of the cache entry
+     */
+    private static CertificateID getSignBehalfOfCaCertId(final OcspSigningCacheEntry ocspSigningCacheEntry, final String caCertificateSubjectDn,
+            final List<String> issuerDns) {
+        for (final String issuerDn : issuerDns) {
+            if (issuerDn.equals(caCertificateSubjectDn)) {
+                return null;
+            }
+            final CertificateID issuerCertId = ocspSigningCacheEntry.getSignBehalfOfCaCertId(issuerDn);
+            if (issuerCertId != null) {
+                return issuerCertId;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Looks up the statuses of the certificates in a request with several CertIDs, with one query per issuer instead of one per certificate.
+     * Only certificates whose status would be read from the database by {@link #getStatus} are included; the others, for example
+     * when the OCSP extensions need the whole certificate, are looked up one by one as before.
+     *
+     * @param prefetchedIssuerDns the result of {@link #prefetchSignBehalfOfIssuerDns}, or null
+     * @param recordMetrics true if the time of the queries should be recorded in the metrics of the responders
+     * @return statuses by issuer DN and serial number
+     */
+    private Map<String, Map<BigInteger, CertificateStatus>> prefetchStatuses(final Req[] ocspRequests,
+            final Map<BigInteger, List<String>> prefetchedIssuerDns, final boolean recordMetrics) {
+        final Map<String, Set<BigInteger>> serialNumbersByIssuer = new LinkedHashMap<>();
+        final Map<String, OcspSigningCacheEntry> signingCacheEntryByIssuer = new HashMap<>();
+        for (final Req ocspRequest : ocspRequests) {
+            final CertificateID certId = ocspRequest.getCertID();
+            final OcspSigningCacheEntry ocspSigningCacheEntry = OcspSigningCache.INSTANCE.getEntry(certId);
+            if (ocspSigningCacheEntry == null || ocspSigningCacheEntry.getIssuerCaCertificateStatus().equals(CertificateStatus.REVOKED)
+                    || (ocspSigningCacheEntry.getOcspKeyBinding() != null && !ocspSigningCacheEntry.getOcspKeyBinding().getOcspExtensions().isEmpty())) {
+                continue;
+            }
+            String issuerDn = CertTools.getSubjectDN(ocspSigningCacheEntry.getIssuerCaCertificate());
+            if (!ocspSigningCacheEntry.getSignedBehalfOfCaIds().isEmpty()) {
+                final CertificateID issuerCertId = getSignBehalfOfCaCertId(ocspSigningCacheEntry, issuerDn,
+                        getIssuerDns(certId.getSerialNumber(), prefetchedIssuerDns));
+                if (issuerCertId != null) {
+                    if (!CertificateStatus.OK.equals(ocspSigningCacheEntry.getSignedBehalfOfCaStatus().get(issuerCertId))) {
+                        continue;
+                    }
+                    issuerDn = CertTools.getSubjectDN(ocspSigningCacheEntry.getSignBehalfOfCaCertificate(issuerCertId));
+                }
+            }
+            if (OcspRevocationIndex.INSTANCE.getStatus(issuerDn, certId.getSerialNumber()) == null) {
+                serialNumbersByIssuer.computeIfAbsent(issuerDn, key -> new LinkedHashSet<>()).add(certId.getSerialNumber());
+                signingCacheEntryByIssuer.putIfAbsent(issuerDn, ocspSigningCacheEntry);
+            }
+        }
+        final Map<String, Map<BigInteger, CertificateStatus>> statuses = new HashMap<>();
+        for (final Map.Entry<String, Set<BigInteger>> entry : serialNumbersByIssuer.entrySet()) {
+            final long startNanos = System.nanoTime();
+            statuses.put(entry.getKey(), certificateStoreSession.getStatuses(entry.getKey(), entry.getValue()));
+            if (recordMetrics) {
+                signingCacheEntryByIssuer.get(entry.getKey()).getMetrics().databaseLatency(System.nanoTime() - startNanos);
+            }
+        }
+        if (log.isDebugEnabled()) {
+            log.debug("Prefetched the statuses of " + ocspRequests.length + " CertIDs with " + serialNumbersByIssuer.size() + " queries.");
+        }
+        return statuses;
+    }
+
     /**
      * This method cancels all timers associated with this bean.
      */
@@ -1352,6 +1708,33 @@ public class OcspResponseGeneratorSessionBean implements OcspResponseGeneratorSe
             String xForwardedFor, StringBuffer requestUrl, final AuditLogger auditLogger, final TransactionLogger transactionLogger,
             boolean isPreSigning, boolean issueFinalResponse, boolean includeExpiredCertificates)
             throws MalformedRequestException, OCSPException {
+        final long startNanos = System.nanoTime();
+        try {
+            return getOcspResponse(request, requestCertificates, remoteAddress, xForwardedFor, requestUrl, auditLogger, transactionLogger, isPreSigning,
+                    issueFinalResponse, includeExpiredCertificates, null);
+        } catch (MalformedRequestException e) {
+            if (!isPreSigning) {
+                OcspMetrics.INSTANCE.getUnknownResponderMetrics().response(OCSPRespBuilder.MALFORMED_REQUEST, System.nanoTime() - startNanos);
+            }
+            throw e;
+        } catch (OCSPException | RuntimeException e) {
+            // Responses are counted per CA when they are produced, but the CA is not known here
+            if (!isPreSigning) {
+                OcspMetrics.INSTANCE.getUnknownResponderMetrics().response(OCSPRespBuilder.INTERNAL_ERROR, System.nanoTime() - startNanos);
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * @param collectedResponses if not null, a response that should be stored as pre-produced is added to this collection
+     *      instead of being stored and published, so the caller can persist it in a batch.
+     * @see #getOcspResponse(byte[], X509Certificate[], String, String, StringBuffer, AuditLogger, TransactionLogger, boolean, boolean, boolean)
+     */
+    private OcspResponseInformation getOcspResponse(final byte[] request, final X509Certificate[] requestCertificates, String remoteAddress,
+            String xForwardedFor, StringBuffer requestUrl, final AuditLogger auditLogger, final TransactionLogger transactionLogger,
+            boolean isPreSigning, boolean issueFinalResponse, boolean includeExpiredCertificates, final Collection<OcspResponseData> collectedResponses)
+            throws MalformedRequestException, OCSPException {
         //Check parameters
         if (auditLogger == null) {
             throw new InvalidParameterException("Illegal to pass a null audit logger to OcspResponseSession.getOcspResponse");
@@ -1366,7 +1749,9 @@ public class OcspResponseGeneratorSessionBean implements OcspResponseGeneratorSe
         }
         byte[] respBytes = null;
         final Date startTime = new Date();
+        final long startNanos = System.nanoTime();
         OCSPResp ocspResponse = null;
+        OcspSigningCacheEntry ocspSigningCacheEntry = null;
         // Start logging process time after we have received the request
         if (!isPreSigning && transactionLogger.isEnabled()) {
             transactionLogger.paramPut(PatternLogger.PROCESS_TIME, PatternLogger.PROCESS_TIME);
@@ -1381,6 +1766,7 @@ public class OcspResponseGeneratorSessionBean implements OcspResponseGeneratorSe
         X509Certificate signerCert = null;
         String serialNrForResponseStore = null;
         int caIdForResponseStore = 0;
+        CertificateID certIdForResponseCache = null;
         try {
             req = translateRequestFromByteArray(request, remoteAddress, transactionLogger);
             // Get the certificate status requests that are inside this OCSP req
@@ -1406,7 +1792,6 @@ public class OcspResponseGeneratorSessionBean implements OcspResponseGeneratorSe
             if (!isPreSigning && auditLogger.isEnabled()) {
                 auditLogger.paramPut(AuditLogger.STATUS, OCSPRespBuilder.SUCCESSFUL);
             }
-            OcspSigningCacheEntry ocspSigningCacheEntry = null;
             long nextUpdate = OcspConfiguration.getUntilNextUpdate(CertificateProfileConstants.CERTPROFILE_NO_PROFILE);
             Map<ASN1ObjectIdentifier, Extension> responseExtensions = new HashMap<>();
             
@@ -1415,6 +1800,13 @@ public class OcspResponseGeneratorSessionBean implements OcspResponseGeneratorSe
             // If the Extended Revoked Definition should be added for certificates that we can not find in the database, see RFC6960 4.4.8
             boolean addExtendedRevokedExtension = false;
             Date producedAt = null;
+            // For requests with several CertIDs, look up the issuers and statuses of all the certificates with a few batched queries
+            Map<BigInteger, List<String>> prefetchedIssuerDns = null;
+            Map<String, Map<BigInteger, CertificateStatus>> prefetchedStatuses = null;
+            if (ocspRequests.length > 1) {
+                prefetchedIssuerDns = prefetchSignBehalfOfIssuerDns(ocspRequests);
+                prefetchedStatuses = prefetchStatuses(ocspRequests, prefetchedIssuerDns, !isPreSigning);
+            }
             
             for (Req ocspRequest : ocspRequests) {
                 CertificateID certId = ocspRequest.getCertID();
@@ -1435,15 +1827,18 @@ public class OcspResponseGeneratorSessionBean implements OcspResponseGeneratorSe
                     auditLogger.paramPut(AuditLogger.SERIAL_NOHEX, certId.getSerialNumber().toByteArray());
                     auditLogger.paramPut(AuditLogger.ISSUER_NAME_HASH, certId.getIssuerNameHash());
                 }
-                final String hash = StringTools.hex(certId.getIssuerNameHash());
-                if (xForwardedFor==null && !isPreSigning) {
-                    log.info(intres.getLocalizedMessage("ocsp.inforeceivedrequest", certId.getSerialNumber().toString(16), hash, remoteAddress));
-                } else if (!isPreSigning){
-                    log.info(intres.getLocalizedMessage("ocsp.inforeceivedrequestwxff", certId.getSerialNumber().toString(16), hash, remoteAddress, xForwardedFor));
+                if (!isPreSigning && log.isInfoEnabled()) {
+                    final String hash = StringTools.hex(certId.getIssuerNameHash());
+                    if (xForwardedFor == null) {
+                        log.info(intres.getLocalizedMessage("ocsp.inforeceivedrequest", certId.getSerialNumber().toString(16), hash, remoteAddress));
+                    } else {
+                        log.info(intres.getLocalizedMessage("ocsp.inforeceivedrequestwxff", certId.getSerialNumber().toString(16), hash, remoteAddress, xForwardedFor));
+                    }
                 }
                 
                 ocspSigningCacheEntry = OcspSigningCache.INSTANCE.getEntry(certId);
                 OcspDataConfigCacheEntry ocspDataConfig = OcspDataConfigCache.INSTANCE.getEntry(certId);
+                final boolean signingCacheHit = ocspSigningCacheEntry != null;
                 // Locate the CA which gave out the certificate
                 if (Objects.isNull(ocspSigningCacheEntry)) {
 
@@ -1470,11 +1865,60 @@ public class OcspResponseGeneratorSessionBean implements OcspResponseGeneratorSe
 
                     }
                 }
+                final OcspResponderMetrics responderMetrics = isPreSigning ? null : getResponderMetrics(ocspSigningCacheEntry);
+                if (responderMetrics != null) {
+                    responderMetrics.cacheLookup(OcspResponderMetrics.Cache.SIGNING, signingCacheHit);
+                }
                                 
+                // Serve identical requests for a single certificate from memory, as long as the response doesn't depend on the request
+                if (!isPreSigning && ocspRequests.length == 1 && ocspSigningCacheEntry != null && OcspConfiguration.isResponseCacheEnabled()
+                        && (ocspSigningCacheEntry.getOcspKeyBinding() == null || ocspSigningCacheEntry.getOcspKeyBinding().getOcspExtensions().isEmpty())
+                        && reqHasExtensionsOkToStoreResponse(req, ocspSigningCacheEntry)) {
+                    final OcspResponseCache.CachedResponse cachedResponse = OcspResponseCache.INSTANCE.get(certId);
+                    responderMetrics.cacheLookup(OcspResponderMetrics.Cache.RESPONSE, cachedResponse != null);
+                    if (cachedResponse != null) {
+                        if (log.isDebugEnabled()) {
+                            log.debug("Returning cached OCSP response for cert serial " + certId.getSerialNumber().toString(16));
+                        }
+                        if (auditLogger.isEnabled()) {
+                            auditLogger.paramPut(AuditLogger.OCSPRESPONSE, StringTools.hex(cachedResponse.getEncodedResponse()));
+                            auditLogger.writeln();
+                            auditLogger.flush();
+                        }
+                        if (transactionLogger.isEnabled()) {
+                            transactionLogger.paramPut(TransactionLogger.OCSP_CERT_ISSUER_NAME_DN, ocspSigningCacheEntry.getSigningCertificateIssuerDn());
+                            transactionLogger.paramPut(TransactionLogger.OCSP_CERT_ISSUER_NAME_DN_RAW,
+                                    ocspSigningCacheEntry.getSigningCertificateIssuerDnRaw());
+                            transactionLogger.paramPut(TransactionLogger.CERT_STATUS, cachedResponse.getCertificateStatus());
+                            if (cachedResponse.getRevocationReason() != RevokedCertInfo.NOT_REVOKED) {
+                                transactionLogger.paramPut(TransactionLogger.REV_REASON, cachedResponse.getRevocationReason());
+                            }
+                            transactionLogger.writeln();
+                            transactionLogger.flush();
+                        }
+                        try {
+                            final OcspResponseInformation responseInformation = new OcspResponseInformation(
+                                    new OCSPResp(cachedResponse.getEncodedResponse()), cachedResponse.getMaxAge(), cachedResponse.getSignerCertificate());
+                            responderMetrics.certificateStatus(cachedResponse.getCertificateStatus());
+                            responderMetrics.response(OCSPRespBuilder.SUCCESSFUL, System.nanoTime() - startNanos);
+                            return responseInformation;
+                        } catch (IOException e) {
+                            // Can't happen since we encoded the response ourselves, but produce a new one if it does
+                            log.warn("Cached OCSP response for certificate with serialNr '" + certId.getSerialNumber() + "' was malformed.");
+                            OcspResponseCache.INSTANCE.remove(certId.getSerialNumber());
+                        }
+                    }
+                    certIdForResponseCache = certId;
+                }
+
                 // We only store pre-produced single responses
                 if (ocspRequests.length == 1 && ocspDataConfig != null && ocspDataConfig.isPreProductionEnabled()) {
                     
+                    final long lookupStartNanos = System.nanoTime();
                     final OcspResponseData ocspResponseData = ocspDataSession.findOcspDataByCaIdSerialNumber(ocspDataConfig.getCaId(), certId.getSerialNumber().toString());
+                    if (responderMetrics != null) {
+                        responderMetrics.databaseLatency(System.nanoTime() - lookupStartNanos);
+                    }
 
                     // 1. If no stored response exists. Skip this, produce and new one and store it later on (if storing on-demand is enabled)
                     // 2. If a response is stored, still valid and request has only supported extensions: return it.
@@ -1519,12 +1963,20 @@ public class OcspResponseGeneratorSessionBean implements OcspResponseGeneratorSe
                                 transactionLogger.writeln();
                                 transactionLogger.flush();
                             }
+                            if (certIdForResponseCache != null) {
+                                addToResponseCache(certIdForResponseCache, ocspResp, maxAge, signerCert);
+                            }
+                            responderMetrics.cacheLookup(OcspResponderMetrics.Cache.PRE_PRODUCED, true);
+                            responderMetrics.response(OCSPRespBuilder.SUCCESSFUL, System.nanoTime() - startNanos);
                             return new OcspResponseInformation(ocspResp, maxAge, signerCert);
                         } catch (IOException e) {
                             log.warn("Pre-produced OCSP response for certificate with serialNr '" + certId.getSerialNumber()
                                     + "' was malformed. Producing new response.");
                         }
                     }
+                    if (responderMetrics != null) {
+                        responderMetrics.cacheLookup(OcspResponderMetrics.Cache.PRE_PRODUCED, false);
+                    }
                     // All prerequisites for pre-production are OK. However, no valid response is persisted. Setting the serialNrForResponseStore will
                     // result in the produced one to be stored. Don't store responses without nextUpdate set.
                     if ((ocspDataConfig.isStoreResponseOnDemand() || isPreSigning) && reqHasExtensionsOkToStoreResponse(req, ocspSigningCacheEntry)) {
@@ -1639,26 +2091,14 @@ public class OcspResponseGeneratorSessionBean implements OcspResponseGeneratorSe
                 
                 // only necessary if sign on behalf entries are present for corresponding cache entry
                 if(!ocspSigningCacheEntry.getSignedBehalfOfCaIds().isEmpty()) {
-                    List<CertificateDataWrapper> certificateWrappers = 
-                            certificateStoreSession.getCertificateDataBySerno(certId.getSerialNumber());
-                    
-                    for(CertificateDataWrapper certificateWrapper: certificateWrappers) {
-
-                        if(certificateWrapper.getCertificateData().getIssuerDN().equals(caCertificateSubjectDn)) {
-                            break;
-                        } else {
-                            CertificateID issuerCertId = ocspSigningCacheEntry.getSignBehalfOfCaCertId(
-                                                        certificateWrapper.getCertificateData().getIssuerDN());
-    
-                            if(issuerCertId!=null) {
-                                shouldSignOnBehalfCaCert = ocspSigningCacheEntry.getSignBehalfOfCaCertificate(issuerCertId);
-                                signedBehalfOfCaSubjectDn = CertTools.getSubjectDN(shouldSignOnBehalfCaCert);
-                                onBehalfOfCaStatus = ocspSigningCacheEntry.getSignedBehalfOfCaStatus().get(issuerCertId);
-                                log.debug("ocsp will be signed behalf of: \"" + signedBehalfOfCaSubjectDn 
-                                                    + "\" by:\"" + caCertificateSubjectDn + "\"");
-                                break;
-                            }
-                        }
+                    final CertificateID issuerCertId = getSignBehalfOfCaCertId(ocspSigningCacheEntry, caCertificateSubjectDn,
+                            getIssuerDns(certId.getSerialNumber(), prefetchedIssuerDns));
+                    if(issuerCertId!=null) {
+                        shouldSignOnBehalfCaCert = ocspSigningCacheEntry.getSignBehalfOfCaCertificate(issuerCertId);
+                        signedBehalfOfCaSubjectDn = CertTools.getSubjectDN(shouldSignOnBehalfCaCert);
+                        onBehalfOfCaStatus = ocspSigningCacheEntry.getSignedBehalfOfCaStatus().get(issuerCertId);
+                        log.debug("ocsp will be signed behalf of: \"" + signedBehalfOfCaSubjectDn 
+                                            + "\" by:\"" + caCertificateSubjectDn + "\"");
                     }
                 }
                 
@@ -1722,10 +2162,14 @@ public class OcspResponseGeneratorSessionBean implements OcspResponseGeneratorSe
                         // we will also use certificate profile settings for issuing certificate
                     }
                     if (extensionOids.isEmpty()) {
-                        status = certificateStoreSession.getStatus(issuerDnOcspRequest, certId.getSerialNumber());
+                        status = getStatus(issuerDnOcspRequest, certId.getSerialNumber(), prefetchedStatuses, responderMetrics);
                     } else {
+                        final long lookupStartNanos = System.nanoTime();
                         certificateStatusHolder = certificateStoreSession.getCertificateAndStatus(issuerDnOcspRequest, certId.getSerialNumber());
                         status = certificateStatusHolder.getCertificateStatus();
+                        if (responderMetrics != null) {
+                            responderMetrics.databaseLatency(System.nanoTime() - lookupStartNanos);
+                        }
                     }
                     if(status.getExpirationDate()<System.currentTimeMillis() && isPreSigning && !includeExpiredCertificates) {
                         return null; // do not store response for expired certificates
@@ -1755,6 +2199,8 @@ public class OcspResponseGeneratorSessionBean implements OcspResponseGeneratorSe
                     final String sStatus;
                     if (status.equals(CertificateStatus.NOT_AVAILABLE)) {
                         // No revocation info available for this cert, handle it
+                        // Don't cache these responses, the certificate may be issued or published at any time
+                        certIdForResponseCache = null;
                         if (log.isDebugEnabled()) {
                             log.debug("Unable to find revocation information for certificate with serial '" + certId.getSerialNumber().toString(16)
                                     + "'" + " from issuer '" + issuerDnOcspRequest + "'");
@@ -1862,7 +2308,7 @@ public class OcspResponseGeneratorSessionBean implements OcspResponseGeneratorSe
                         log.debug("Set nextUpdate=" + nextUpdate + ", and maxAge=" + maxAge + " for certificateProfileId="
                                 + status.certificateProfileId);
                     }
-                    if (!isPreSigning) {
+                    if (!isPreSigning && log.isInfoEnabled()) {
                         log.info(intres.getLocalizedMessage("ocsp.infoaddedstatusinfo", sStatus, "0x" + certId.getSerialNumber().toString(16), caCertificateSubjectDn));
                     }
                     // Issue a final OCSP Response (EN 319 411-2)
@@ -1924,7 +2370,15 @@ public class OcspResponseGeneratorSessionBean implements OcspResponseGeneratorSe
                 // Add responseExtensions
                 Extensions exts = new Extensions(responseExtensions.values().toArray(new Extension[0]));
                 // generate the signed response object
+                final long signingStartNanos = System.nanoTime();
                 BasicOCSPResp basicresp = signOcspResponse(req, responseList, exts, ocspSigningCacheEntry, producedAt);
+                if (!isPreSigning) {
+                    final OcspResponderMetrics responderMetrics = ocspSigningCacheEntry.getMetrics();
+                    responderMetrics.signingLatency(System.nanoTime() - signingStartNanos);
+                    for (final OCSPResponseItem responseItem : responseList) {
+                        responderMetrics.certificateStatus(responseItem.getCertStatus());
+                    }
+                }
                 signerCert = ocspSigningCacheEntry.getSigningCertificate();
                 ocspResponse = responseGenerator.build(OCSPRespBuilder.SUCCESSFUL, basicresp);
                 if (!isPreSigning && auditLogger.isEnabled()) {
@@ -2014,6 +2468,22 @@ public class OcspResponseGeneratorSessionBean implements OcspResponseGeneratorSe
             if (!isPreSigning && auditLogger.isEnabled()) {
                 auditLogger.paramPut(AuditLogger.STATUS, OCSPRespBuilder.MALFORMED_REQUEST);
             }
+        } catch (OcspSignerBusyException e) {
+            if (!isPreSigning && transactionLogger.isEnabled()) {
+                transactionLogger.paramPut(PatternLogger.PROCESS_TIME, PatternLogger.PROCESS_TIME);
+            }
+            if (!isPreSigning && auditLogger.isEnabled()) {
+                auditLogger.paramPut(PatternLogger.PROCESS_TIME, PatternLogger.PROCESS_TIME);
+            }
+            log.info(e.getMessage()); // No need to log the full exception here
+            // RFC 2560: responseBytes are not set on error.
+            ocspResponse = responseGenerator.build(OCSPRespBuilder.TRY_LATER, null);
+            if (!isPreSigning && transactionLogger.isEnabled()) {
+                transactionLogger.paramPut(TransactionLogger.STATUS, OCSPRespBuilder.TRY_LATER);
+            }
+            if (!isPreSigning && auditLogger.isEnabled()) {
+                auditLogger.paramPut(AuditLogger.STATUS, OCSPRespBuilder.TRY_LATER);
+            }
         } catch (NoSuchAlgorithmException | CertificateException | CryptoTokenOfflineException e) {
             ocspResponse = processDefaultError(isPreSigning, responseGenerator, transactionLogger, auditLogger, e);
         }
@@ -2052,15 +2522,43 @@ public class OcspResponseGeneratorSessionBean implements OcspResponseGeneratorSe
         if (serialNrForResponseStore != null && caIdForResponseStore != 0 && 
                 ocspResponse.getStatus() == OCSPRespBuilder.SUCCESSFUL) { 
             try {
-                storeOcspResponse(caIdForResponseStore, serialNrForResponseStore, ocspResponse);
+                final OcspResponseData responseData = createOcspResponseData(caIdForResponseStore, serialNrForResponseStore, ocspResponse);
+                if (responseData != null) {
+                    if (collectedResponses != null) {
+                        collectedResponses.add(responseData);
+                    } else {
+                        ocspDataSession.storeOcspData(responseData);
+                        publishOcspResponse(caIdForResponseStore, responseData);
+                    }
+                }
             } catch (OCSPException | IOException e) {
                 // Log the error and reply anyway
                 log.warn("Error storing OCSP response for certificate with serialNr '" + serialNrForResponseStore);
             }
         }
+        if (certIdForResponseCache != null && ocspResponse.getStatus() == OCSPRespBuilder.SUCCESSFUL) {
+            addToResponseCache(certIdForResponseCache, ocspResponse, maxAge, signerCert);
+        }
+        if (!isPreSigning) {
+            getResponderMetrics(ocspSigningCacheEntry).response(ocspResponse.getStatus(), System.nanoTime() - startNanos);
+        }
         return new OcspResponseInformation(ocspResponse, maxAge, signerCert);
     }
 
+    private void addToResponseCache(final CertificateID certId, final OCSPResp ocspResponse, final long maxAge, final X509Certificate signerCert) {
+        try {
+            final SingleResp singleResponse = ((BasicOCSPResp) ocspResponse.getResponseObject()).getResponses()[0];
+            final org.bouncycastle.cert.ocsp.CertificateStatus status = singleResponse.getCertStatus();
+            final int revocationReason = status instanceof RevokedStatus && ((RevokedStatus) status).hasRevocationReason()
+                    ? ((RevokedStatus) status).getRevocationReason() : RevokedCertInfo.NOT_REVOKED;
+            OcspResponseCache.INSTANCE.put(certId, ocspResponse.getEncoded(), maxAge,
+                    singleResponse.getNextUpdate() == null ? null : singleResponse.getNextUpdate().getTime(), signerCert, fetchCertStatus(status),
+                    revocationReason);
+        } catch (OCSPException | IOException e) {
+            log.warn("Could not cache OCSP response for certificate with serialNr '" + certId.getSerialNumber() + "': " + e.getMessage());
+        }
+    }
+
     private int fetchCertStatus(org.bouncycastle.cert.ocsp.CertificateStatus certStatus) {
         if (Objects.isNull(certStatus)) {
             return OCSPResponseItem.OCSP_GOOD;
@@ -2071,7 +2569,8 @@ public class OcspResponseGeneratorSessionBean implements OcspResponseGeneratorSe
         }
     }
 
-    private void storeOcspResponse(final int caId, final String serialNr, final OCSPResp ocspResponse) throws OCSPException, IOException {
+    /** @return the response as an entity to persist, or null if the response has no nextUpdate and should not be stored */
+    private OcspResponseData createOcspResponseData(final int caId, final String serialNr, final OCSPResp ocspResponse) throws OCSPException, IOException {
         // Redundantly storing producedAt and nextUpdate, next to the canned response itself for faster querying. 
         // Assuming this is a single response (we don't store it otherwise), we can safely pick nextUpdate from first index.
         long producedAt = ((BasicOCSPResp)ocspResponse.getResponseObject()).getProducedAt().getTime();
@@ -2079,12 +2578,10 @@ public class OcspResponseGeneratorSessionBean implements OcspResponseGeneratorSe
         final Date nextUpdateDate = ((BasicOCSPResp)ocspResponse.getResponseObject()).getResponses()[0].getNextUpdate();
         if (nextUpdateDate == null) {
             log.debug("Not persisting OCSP Response. nextUpdate is set to null");
-            return;
+            return null;
         }
         nextUpdate = nextUpdateDate.getTime();
-        final OcspResponseData responseData = new OcspResponseData(UUID.randomUUID().toString(), caId, serialNr, producedAt, nextUpdate, ocspResponse.getEncoded());
-        ocspDataSession.storeOcspData(responseData);
-        publishOcspResponse(caId, responseData);
+        return new OcspResponseData(UUID.randomUUID().toString(), caId, serialNr, producedAt, nextUpdate, ocspResponse.getEncoded());
     }
     
     private void publishOcspResponse(final int caId, final OcspResponseData responseData) {
@@ -2303,6 +2800,20 @@ public class OcspResponseGeneratorSessionBean implements OcspResponseGeneratorSe
     
     @Override
     public void preSignOcspResponse(X509Certificate cacert, final BigInteger serialNr, boolean issueFinalResponse, boolean includeExpiredCertificates, String certIDHashAlgorithm) {
+        preSignOcspResponse(cacert, serialNr, issueFinalResponse, includeExpiredCertificates, certIDHashAlgorithm, null);
+    }
+
+    @Override
+    @Asynchronous
+    public Future<OcspResponseData> createPreSignedOcspResponse(final X509Certificate cacert, final BigInteger serialNr, final boolean includeExpiredCertificates,
+            final String certIDHashAlgorithm) {
+        final List<OcspResponseData> collectedResponses = new ArrayList<>(1);
+        preSignOcspResponse(cacert, serialNr, false, includeExpiredCertificates, certIDHashAlgorithm, collectedResponses);
+        return new AsyncResult<>(collectedResponses.isEmpty() ? null : collectedResponses.get(0));
+    }
+
+    private void preSignOcspResponse(X509Certificate cacert, final BigInteger serialNr, boolean issueFinalResponse, boolean includeExpiredCertificates,
+            String certIDHashAlgorithm, final Collection<OcspResponseData> collectedResponses) {
         final OCSPReq req;
         final OCSPReqBuilder gen = new OCSPReqBuilder();
         final int localTransactionId = TransactionCounter.INSTANCE.getTransactionNumber();
@@ -2325,7 +2836,8 @@ public class OcspResponseGeneratorSessionBean implements OcspResponseGeneratorSe
 
             gen.addRequest(certId);
             req = gen.build();
-            getOcspResponse(req.getEncoded(), null, remoteAddress, null, null, auditLogger, transactionLogger, true, issueFinalResponse, includeExpiredCertificates);
+            getOcspResponse(req.getEncoded(), null, remoteAddress, null, null, auditLogger, transactionLogger, true, issueFinalResponse, includeExpiredCertificates,
+                    collectedResponses);
         } catch (Throwable e) {
             final String errMsg = intres.getLocalizedMessage("ocsp.errorprocessreq", LogRedactionUtils.getRedactedMessage(e.getMessage()));
             log.info(errMsg);
@@ -2392,14 +2904,17 @@ public class OcspResponseGeneratorSessionBean implements OcspResponseGeneratorSe
             log.debug("The response certificate chain contains " + chain.length + " certificates");
         }
         /*
-         * The below code breaks the EJB standard by creating its own thread pool and creating a single thread (of the HsmResponseThread 
-         * type). The reason for this is that the HSM may deadlock when requesting an OCSP response, which we need to guard against. Since 
+         * The below code breaks the EJB standard by using its own thread pools (one bounded pool per signing key, see OcspSigningExecutor).
+         * The reason for this is that the HSM may deadlock when requesting an OCSP response, which we need to guard against. Since 
          * there is no way of performing this action within the EJB3.0 standard, we are consciously creating threads here. 
          * 
          * Note that this does in no way break the spirit of the EJB standard, which is to not interrupt EJB's transaction handling by 
          * competing with its own thread pool, since these operations have no database impact.
          */
-        final Future<BasicOCSPResp> task = service.submit(new HsmResponseThread(basicRes, sigAlg, signerKey, chain, provider, producedAt));
+        // Entries created before the key was known are grouped by provider, which is still one pool per HSM slot
+        final String signingKey = ocspSigningCacheEntry.getSigningKeyReference() != null ? ocspSigningCacheEntry.getSigningKeyReference() : provider;
+        final Future<BasicOCSPResp> task = OcspSigningExecutor.INSTANCE.submit(signingKey,
+                new HsmResponseThread(basicRes, sigAlg, signerKey, chain, provider, producedAt));
         try {
             returnval = task.get(HsmResponseThread.HSM_TIMEOUT_SECONDS, TimeUnit.SECONDS);
         } catch (InterruptedException e) {
@@ -0,0 +1,185 @@
+/*************************************************************************
+ *                                                                       *
+ *  EJBCA Community: The OpenSource Certificate Authority                *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.ejbca.core.ejb.ocsp;
+
+import java.math.BigInteger;
+import java.security.cert.Certificate;
+import java.security.cert.X509Certificate;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+import javax.ejb.EJB;
+import javax.ejb.Stateless;
+import javax.ejb.TransactionAttribute;
+import javax.ejb.TransactionAttributeType;
+
+import org.apache.commons.collections4.CollectionUtils;
+import org.apache.log4j.Logger;
+import org.cesecore.authentication.tokens.AuthenticationToken;
+import org.cesecore.authorization.AuthorizationDeniedException;
+import org.cesecore.certificates.ca.CADoesntExistsException;
+import org.cesecore.certificates.ca.CAInfo;
+import org.cesecore.certificates.ca.CaSessionLocal;
+import org.cesecore.certificates.ca.X509CAInfo;
+import org.cesecore.certificates.certificate.CertificateConstants;
+import org.cesecore.certificates.certificate.CertificateDataSessionLocal;
+import org.cesecore.config.OcspConfiguration;
+import org.cesecore.jndi.JndiConstants;
+import org.cesecore.oscp.OcspResponseData;
+import org.ejbca.core.ejb.ca.publisher.PublisherSessionLocal;
+import org.ejbca.core.model.ca.publisher.PublisherException;
+
+import com.keyfactor.util.CertTools;
+
+/**
+ * Pre-produces OCSP responses for all certificates of a CA in chunks. The certificates are paged through in fingerprint order,
+ * responses are signed in parallel by a bounded number of asynchronous calls to the OCSP response generator, and each chunk is
+ * persisted in one transaction.
+ *
+ * @version $Id$
+ */
+@Stateless(mappedName = JndiConstants.APP_JNDI_PREFIX + "OcspResponseUpdaterSessionRemote")
+@TransactionAttribute(TransactionAttributeType.NOT_SUPPORTED)
+public class OcspResponseUpdaterSessionBean implements OcspResponseUpdaterSessionLocal, OcspResponseUpdaterSessionRemote {
+
+    private static final Logger log = Logger.getLogger(OcspResponseUpdaterSessionBean.class);
+
+    @EJB
+    private CaSessionLocal caSession;
+    @EJB
+    private CertificateDataSessionLocal certificateDataSession;
+    @EJB
+    private OcspDataSessionLocal ocspDataSession;
+    @EJB
+    private OcspResponseGeneratorSessionLocal ocspResponseGeneratorSession;
+    @EJB
+    private PublisherSessionLocal publisherSession;
+
+    @Override
+    public OcspResponseUpdateResult updateOcspResponses(final AuthenticationToken admin, final int caId, final long renewBefore,
+            final String fingerprintAfter, final int maxCertificates) throws AuthorizationDeniedException, CADoesntExistsException {
+        final CAInfo caInfo = caSession.getCAInfo(admin, caId);
+        if (caInfo == null) {
+            throw new CADoesntExistsException("CA with ID " + caId + " does not exist.");
+        }
+        if (!(caInfo instanceof X509CAInfo) || !((X509CAInfo) caInfo).isDoPreProduceOcspResponses() || CollectionUtils.isEmpty(caInfo.getCertificateChain())) {
+            if (log.isDebugEnabled()) {
+                log.debug("Pre-production of OCSP responses is not enabled for CA '" + caInfo.getName() + "'.");
+            }
+            return new OcspResponseUpdateResult(0, 0, 0, fingerprintAfter, true);
+        }
+        final Certificate caCertificate = caInfo.getCertificateChain().get(0);
+        final String issuerDn = CertTools.getSubjectDN(caCertificate);
+        final long now = System.currentTimeMillis();
+        final List<Object[]> rows = certificateDataSession.findFingerprintsAndSerialNumbersByIssuerDN(issuerDn, now,
+                fingerprintAfter == null ? "" : fingerprintAfter, maxCertificates);
+        if (rows.isEmpty()) {
+            return new OcspResponseUpdateResult(0, 0, 0, fingerprintAfter, true);
+        }
+        final List<String> serialNumbers = new ArrayList<>(rows.size());
+        for (final Object[] row : rows) {
+            serialNumbers.add((String) row[1]);
+        }
+        final Map<String, Long> nextUpdates = ocspDataSession.findLatestNextUpdates(caId, serialNumbers);
+        final long renewIfNextUpdateBefore = now + renewBefore;
+        final List<String> dueSerialNumbers = new ArrayList<>();
+        for (final String serialNumber : serialNumbers) {
+            final Long nextUpdate = nextUpdates.get(serialNumber);
+            if (!nextUpdates.containsKey(serialNumber) || (nextUpdate != null && nextUpdate <= renewIfNextUpdateBefore)) {
+                dueSerialNumbers.add(serialNumber);
+            }
+        }
+        final List<OcspResponseData> responses = signOcspResponses((X509Certificate) caCertificate, dueSerialNumbers);
+        if (!responses.isEmpty()) {
+            ocspDataSession.storeOcspDataBatch(responses);
+            publishOcspResponses(admin, caInfo.getCRLPublishers(), responses);
+        }
+        final String lastFingerprint = (String) rows.get(rows.size() - 1)[0];
+        if (log.isDebugEnabled()) {
+            log.debug("Checked " + rows.size() + " certificates of CA '" + caInfo.getName() + "' up to fingerprint " + lastFingerprint + ", "
+                    + dueSerialNumbers.size() + " were due for renewal and " + responses.size() + " OCSP responses were stored.");
+        }
+        // An interrupted run ends here, the responses that were not signed are counted as failures
+        return new OcspResponseUpdateResult(rows.size(), responses.size(), dueSerialNumbers.size() - responses.size(), lastFingerprint,
+                rows.size() < maxCertificates || Thread.currentThread().isInterrupted());
+    }
+
+    /** Signs responses for the given certificates, with at most ocsp.responseupdater.threads signings in progress at a time. */
+    private List<OcspResponseData> signOcspResponses(final X509Certificate caCertificate, final List<String> serialNumbers) {
+        final int maxOutstanding = OcspConfiguration.getResponseUpdaterThreads();
+        final List<OcspResponseData> responses = new ArrayList<>(serialNumbers.size());
+        final Deque<Future<OcspResponseData>> outstanding = new ArrayDeque<>(maxOutstanding);
+        for (final String serialNumber : serialNumbers) {
+            if (outstanding.size() >= maxOutstanding && !collectResponse(outstanding.poll(), responses)) {
+                cancelResponses(outstanding);
+                return responses;
+            }
+            outstanding.add(ocspResponseGeneratorSession.createPreSignedOcspResponse(caCertificate, new BigInteger(serialNumber), false,
+                    CertificateConstants.DEFAULT_CERTID_HASH_ALGORITHM));
+        }
+        while (!outstanding.isEmpty()) {
+            if (!collectResponse(outstanding.poll(), responses)) {
+                cancelResponses(outstanding);
+                break;
+            }
+        }
+        return responses;
+    }
+
+    /** @return false if the thread was interrupted while waiting, in which case no more responses should be collected */
+    private boolean collectResponse(final Future<OcspResponseData> future, final Collection<OcspResponseData> responses) {
+        try {
+            final OcspResponseData response = future.get();
+            if (response != null) {
+                responses.add(response);
+            }
+        } catch (ExecutionException e) {
+            log.warn("Failed to pre-produce OCSP response: " + e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            future.cancel(true);
+            log.warn("Interrupted while waiting for pre-produced OCSP response.");
+            return false;
+        }
+        return true;
+    }
+
+    private void cancelResponses(final Deque<Future<OcspResponseData>> outstanding) {
+        if (log.isDebugEnabled()) {
+            log.debug("Cancelling " + outstanding.size() + " outstanding OCSP response signings.");
+        }
+        for (final Future<OcspResponseData> future : outstanding) {
+            future.cancel(true);
+        }
+        outstanding.clear();
+    }
+
+    private void publishOcspResponses(final AuthenticationToken admin, final Collection<Integer> publisherIds, final List<OcspResponseData> responses) {
+        if (CollectionUtils.isEmpty(publisherIds)) {
+            return;
+        }
+        for (final OcspResponseData response : responses) {
+            try {
+                publisherSession.storeOcspResponses(admin, publisherIds, response);
+            } catch (PublisherException | AuthorizationDeniedException e) {
+                log.warn("Error publishing OCSP response data for certificate with serial number " + response.getSerialNumber(), e);
+            }
+        }
+    }
+}
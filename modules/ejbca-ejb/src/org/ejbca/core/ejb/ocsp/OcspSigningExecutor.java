@@ -0,0 +1,215 @@
+/*************************************************************************
+ *                                                                       *
+ *  EJBCA Community: The OpenSource Certificate Authority                *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.ejbca.core.ejb.ocsp;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.apache.log4j.Logger;
+import org.cesecore.certificates.ocsp.cache.OcspSigningCacheEntry;
+import org.cesecore.certificates.ocsp.exception.OcspSignerBusyException;
+import org.cesecore.certificates.ocsp.metrics.OcspMetrics;
+import org.cesecore.config.OcspConfiguration;
+
+/**
+ * Schedules OCSP response signing on a bounded pool of threads per signing key, identified by the ID of its crypto token and its alias.
+ * This limits the number of concurrent signings to what the HSM can handle, keeps a slow or hanging HSM from starving the
+ * responders of other keys, and answers with tryLater instead of queuing requests without bound when a key is overloaded.
+ * <p>
+ * A signing that is cancelled, for example because the caller timed out waiting for it, is removed from the queue right away,
+ * so that it doesn't take the place of a new request.
+ * <p>
+ * The number of threads and the queue size of each pool are read from {@link OcspConfiguration#getSigningThreads()} and
+ * {@link OcspConfiguration#getSigningQueueSize()} when the pool is created.
+ *
+ * @version $Id$
+ */
+public enum OcspSigningExecutor {
+    INSTANCE;
+
+    private static final Logger log = Logger.getLogger(OcspSigningExecutor.class);
+
+    /** Signing statistics of the pool of one signing key. */
+    public static final class Statistics {
+        private final String signingKey;
+        private final long submitted;
+        private final long rejected;
+        private final long completed;
+        private final long cancelled;
+        private final long totalLatencyNanos;
+        private final long maxLatencyNanos;
+        private final int queueDepth;
+        private final int activeThreads;
+
+        private Statistics(final String signingKey, final long submitted, final long rejected, final long completed, final long cancelled,
+                final long totalLatencyNanos, final long maxLatencyNanos, final int queueDepth, final int activeThreads) {
+            this.signingKey = signingKey;
+            this.submitted = submitted;
+            this.rejected = rejected;
+            this.completed = completed;
+            this.cancelled = cancelled;
+            this.totalLatencyNanos = totalLatencyNanos;
+            this.maxLatencyNanos = maxLatencyNanos;
+            this.queueDepth = queueDepth;
+            this.activeThreads = activeThreads;
+        }
+
+        /** @return the ID of the crypto token and the alias of the key, separated by ';' */
+        public String getSigningKey() {
+            return signingKey;
+        }
+
+        /** @return the number of signings accepted into the queue */
+        public long getSubmitted() {
+            return submitted;
+        }
+
+        /** @return the number of signings rejected because the queue was full */
+        public long getRejected() {
+            return rejected;
+        }
+
+        /** @return the number of signings that have finished, successfully or not */
+        public long getCompleted() {
+            return completed;
+        }
+
+        /** @return the number of signings that were cancelled, usually because the caller timed out */
+        public long getCancelled() {
+            return cancelled;
+        }
+
+        /** @return the average time from submission until the signing finished in milliseconds, including the time in the queue */
+        public double getAverageLatencyMillis() {
+            return completed == 0 ? 0 : totalLatencyNanos / (completed * 1000000.0);
+        }
+
+        /** @return the longest time from submission until a signing finished in milliseconds */
+        public double getMaxLatencyMillis() {
+            return maxLatencyNanos / 1000000.0;
+        }
+
+        /** @return the number of signings waiting for a thread */
+        public int getQueueDepth() {
+            return queueDepth;
+        }
+
+        /** @return the number of threads currently signing */
+        public int getActiveThreads() {
+            return activeThreads;
+        }
+    }
+
+    private static final class SigningPool {
+        private final String signingKey;
+        private final ThreadPoolExecutor executor;
+        private final LongAdder submitted = new LongAdder();
+        private final LongAdder rejected = new LongAdder();
+        private final LongAdder completed = new LongAdder();
+        private final LongAdder cancelled = new LongAdder();
+        private final LongAdder totalLatencyNanos = new LongAdder();
+        private final LongAccumulator maxLatencyNanos = new LongAccumulator(Math::max, 0);
+
+        private SigningPool(final String signingKey) {
+            this.signingKey = signingKey;
+            final int threads = OcspConfiguration.getSigningThreads();
+            final AtomicInteger threadNumber = new AtomicInteger();
+            this.executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS, new ArrayBlockingQueue<>(OcspConfiguration.getSigningQueueSize()),
+                    runnable -> {
+                        final Thread thread = new Thread(runnable, "OcspSigner-" + signingKey + "-" + threadNumber.incrementAndGet());
+                        thread.setDaemon(true);
+                        return thread;
+                    });
+            this.executor.allowCoreThreadTimeOut(true);
+            OcspMetrics.INSTANCE.setSigningQueueDepth(signingKey, () -> executor.getQueue().size());
+        }
+
+        private <T> Future<T> submit(final Callable<T> task) {
+            final long submitTime = System.nanoTime();
+            final FutureTask<T> future = new FutureTask<T>(() -> {
+                try {
+                    return task.call();
+                } finally {
+                    final long latency = System.nanoTime() - submitTime;
+                    completed.increment();
+                    totalLatencyNanos.add(latency);
+                    maxLatencyNanos.accumulate(latency);
+                }
+            }) {
+                @Override
+                public boolean cancel(final boolean mayInterruptIfRunning) {
+                    final boolean wasCancelled = super.cancel(mayInterruptIfRunning);
+                    if (wasCancelled) {
+                        cancelled.increment();
+                        // Free the place in the queue if the signing hasn't started
+                        executor.remove(this);
+                    }
+                    return wasCancelled;
+                }
+            };
+            try {
+                executor.execute(future);
+                submitted.increment();
+                return future;
+            } catch (RejectedExecutionException e) {
+                rejected.increment();
+                throw new OcspSignerBusyException("Too many OCSP responses are waiting to be signed with key '" + signingKey + "'.", e);
+            }
+        }
+
+        private Statistics getStatistics() {
+            return new Statistics(signingKey, submitted.sum(), rejected.sum(), completed.sum(), cancelled.sum(), totalLatencyNanos.sum(),
+                    maxLatencyNanos.get(), executor.getQueue().size(), executor.getActiveCount());
+        }
+    }
+
+    private final Map<String, SigningPool> pools = new ConcurrentHashMap<>();
+
+    /**
+     * Queue a signing task on the pool of the given signing key.
+     *
+     * @param signingKey the ID of the crypto token and the alias of the signing key, see {@link OcspSigningCacheEntry#getSigningKeyReference()}
+     * @param task the signing task
+     * @return the future result of the task. Cancelling it removes the task from the queue if it hasn't started.
+     * @throws OcspSignerBusyException if the queue of the signing key is full
+     */
+    public <T> Future<T> submit(final String signingKey, final Callable<T> task) throws OcspSignerBusyException {
+        return pools.computeIfAbsent(signingKey, key -> {
+            if (log.isDebugEnabled()) {
+                log.debug("Creating OCSP signing pool for key '" + key + "'.");
+            }
+            return new SigningPool(key);
+        }).submit(task);
+    }
+
+    /** @return the signing statistics of each signing key that has signed responses */
+    public List<Statistics> getStatistics() {
+        final List<Statistics> statistics = new ArrayList<>();
+        for (final SigningPool pool : pools.values()) {
+            statistics.add(pool.getStatistics());
+        }
+        return statistics;
+    }
+}
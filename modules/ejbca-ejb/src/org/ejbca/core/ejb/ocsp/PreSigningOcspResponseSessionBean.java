@@ -22,6 +22,7 @@ import javax.ejb.TransactionAttributeType;
 import java.math.BigInteger;
 import java.security.cert.Certificate;
 import java.security.cert.X509Certificate;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 import java.util.function.Consumer;
@@ -54,6 +55,22 @@ public class PreSigningOcspResponseSessionBean implements PreSigningOcspResponse
 		}
 	}
 
+	@Override
+	public void preSignOcspResponses(final CA ca, final Collection<BigInteger> serialNumbers) {
+		final boolean preSign = isDoPreProduceOcspResponses(ca) && isDoPreProduceOcspResponsesUponIssuanceAndRevocation(ca);
+		final List<Certificate> certificateChain = ca.getCertificateChain();
+		final Certificate caCertificate = certificateChain.isEmpty() ? null : certificateChain.get(0);
+		for (final BigInteger serialNumber : serialNumbers) {
+			if (isOcspExists(ca.getCAId(), serialNumber.toString())) {
+				deleteOcspDataByCaIdSerialNumber(ca.getCAId(), serialNumber.toString());
+			}
+			if (preSign && caCertificate instanceof X509Certificate) {
+				ocspResponseGeneratorSession.preSignOcspResponse((X509Certificate) caCertificate, serialNumber, true, true,
+						DEFAULT_CERTID_HASH_ALGORITHM);
+			}
+		}
+	}
+
 	private void preSign(CA ca, BaseCertificateData certData) {
 		List<Certificate> certificateChain = ca.getCertificateChain();
 		if (!certificateChain.isEmpty()) {
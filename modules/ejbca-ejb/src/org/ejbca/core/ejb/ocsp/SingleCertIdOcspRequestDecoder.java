@@ -0,0 +1,178 @@
+/*************************************************************************
+ *                                                                       *
+ *  EJBCA Community: The OpenSource Certificate Authority                *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.ejbca.core.ejb.ocsp;
+
+import java.math.BigInteger;
+import java.util.Arrays;
+
+import org.bouncycastle.asn1.ASN1Integer;
+import org.bouncycastle.asn1.DERNull;
+import org.bouncycastle.asn1.DEROctetString;
+import org.bouncycastle.asn1.DERSequence;
+import org.bouncycastle.asn1.nist.NISTObjectIdentifiers;
+import org.bouncycastle.asn1.ocsp.CertID;
+import org.bouncycastle.asn1.ocsp.OCSPRequest;
+import org.bouncycastle.asn1.ocsp.Request;
+import org.bouncycastle.asn1.ocsp.TBSRequest;
+import org.bouncycastle.asn1.oiw.OIWObjectIdentifiers;
+import org.bouncycastle.asn1.x509.AlgorithmIdentifier;
+import org.bouncycastle.asn1.x509.Extensions;
+import org.bouncycastle.cert.ocsp.OCSPReq;
+
+/**
+ * Decoder for the most common shape of OCSP request: unsigned, without version, requestor name or extensions, and with a single
+ * CertID hashed with SHA-1 or SHA-256. The DER encoding is read directly from the byte array, which avoids most of the
+ * intermediate objects created when parsing with a general ASN.1 stream.
+ * <p>
+ * Anything else, including BER encodings and requests with a nonce, is left for the general parser.
+ *
+ * @version $Id$
+ */
+public final class SingleCertIdOcspRequestDecoder {
+
+    private static final int TAG_SEQUENCE = 0x30;
+    private static final int TAG_INTEGER = 0x02;
+    private static final int TAG_OCTET_STRING = 0x04;
+    private static final int TAG_NULL = 0x05;
+    private static final int TAG_OID = 0x06;
+
+    /** Serial numbers are at most 20 octets (RFC 5280 4.1.2.2), but we allow some slack for non-compliant CAs */
+    private static final int MAX_SERIAL_NUMBER_LENGTH = 64;
+
+    /** DER encoded contents of the OID 1.3.14.3.2.26 (SHA-1) */
+    private static final byte[] SHA1_OID = { 0x2b, 0x0e, 0x03, 0x02, 0x1a };
+    /** DER encoded contents of the OID 2.16.840.1.101.3.4.2.1 (SHA-256) */
+    private static final byte[] SHA256_OID = { 0x60, (byte) 0x86, 0x48, 0x01, 0x65, 0x03, 0x04, 0x02, 0x01 };
+
+    // The algorithm identifiers are reused, with and without NULL parameters, so that the CertID in the response is encoded as in the request
+    private static final AlgorithmIdentifier SHA1 = new AlgorithmIdentifier(OIWObjectIdentifiers.idSHA1);
+    private static final AlgorithmIdentifier SHA1_WITH_NULL = new AlgorithmIdentifier(OIWObjectIdentifiers.idSHA1, DERNull.INSTANCE);
+    private static final AlgorithmIdentifier SHA256 = new AlgorithmIdentifier(NISTObjectIdentifiers.id_sha256);
+    private static final AlgorithmIdentifier SHA256_WITH_NULL = new AlgorithmIdentifier(NISTObjectIdentifiers.id_sha256, DERNull.INSTANCE);
+
+    private final byte[] data;
+    private int pos = 0;
+
+    private SingleCertIdOcspRequestDecoder(final byte[] data) {
+        this.data = data;
+    }
+
+    /**
+     * @param request the DER encoded OCSP request
+     * @return the decoded request, or null if the request does not have the supported shape and must be parsed by {@link OCSPReq#OCSPReq(byte[])}
+     */
+    public static OCSPReq decode(final byte[] request) {
+        if (request == null) {
+            return null;
+        }
+        return new SingleCertIdOcspRequestDecoder(request).decode();
+    }
+
+    private OCSPReq decode() {
+        // OCSPRequest without optionalSignature
+        final int requestEnd = readHeader(TAG_SEQUENCE);
+        if (requestEnd != data.length) {
+            return null;
+        }
+        // TBSRequest without version, requestorName and requestExtensions
+        final int tbsRequestEnd = readHeader(TAG_SEQUENCE);
+        if (tbsRequestEnd != requestEnd) {
+            return null;
+        }
+        // requestList with a single Request without singleRequestExtensions
+        final int requestListEnd = readHeader(TAG_SEQUENCE);
+        if (requestListEnd != tbsRequestEnd || readHeader(TAG_SEQUENCE) != requestListEnd) {
+            return null;
+        }
+        // CertID
+        final int certIdEnd = readHeader(TAG_SEQUENCE);
+        if (certIdEnd != requestListEnd) {
+            return null;
+        }
+        final int algorithmEnd = readHeader(TAG_SEQUENCE);
+        final int oidEnd = readHeader(TAG_OID);
+        if (algorithmEnd < 0 || oidEnd < 0) {
+            return null;
+        }
+        final boolean sha1;
+        if (contentEquals(oidEnd, SHA1_OID)) {
+            sha1 = true;
+        } else if (contentEquals(oidEnd, SHA256_OID)) {
+            sha1 = false;
+        } else {
+            return null;
+        }
+        pos = oidEnd;
+        final boolean nullParameters = pos != algorithmEnd;
+        if (nullParameters && (readHeader(TAG_NULL) != pos || pos != algorithmEnd)) {
+            return null;
+        }
+        final int hashLength = sha1 ? 20 : 32;
+        final int issuerNameHashEnd = readHeader(TAG_OCTET_STRING);
+        if (issuerNameHashEnd - pos != hashLength) {
+            return null;
+        }
+        final byte[] issuerNameHash = Arrays.copyOfRange(data, pos, issuerNameHashEnd);
+        pos = issuerNameHashEnd;
+        final int issuerKeyHashEnd = readHeader(TAG_OCTET_STRING);
+        if (issuerKeyHashEnd - pos != hashLength) {
+            return null;
+        }
+        final byte[] issuerKeyHash = Arrays.copyOfRange(data, pos, issuerKeyHashEnd);
+        pos = issuerKeyHashEnd;
+        final int serialNumberEnd = readHeader(TAG_INTEGER);
+        final int serialNumberLength = serialNumberEnd - pos;
+        if (serialNumberEnd != certIdEnd || serialNumberLength < 1 || serialNumberLength > MAX_SERIAL_NUMBER_LENGTH) {
+            return null;
+        }
+        if (serialNumberLength > 1 && ((data[pos] == 0 && data[pos + 1] >= 0) || (data[pos] == -1 && data[pos + 1] < 0))) {
+            // Not minimally encoded, let the general parser reject it
+            return null;
+        }
+        final BigInteger serialNumber = new BigInteger(data, pos, serialNumberLength);
+        final AlgorithmIdentifier hashAlgorithm = sha1 ? (nullParameters ? SHA1_WITH_NULL : SHA1) : (nullParameters ? SHA256_WITH_NULL : SHA256);
+        final CertID certId = new CertID(hashAlgorithm, new DEROctetString(issuerNameHash), new DEROctetString(issuerKeyHash),
+                new ASN1Integer(serialNumber));
+        return new OCSPReq(new OCSPRequest(new TBSRequest(null, new DERSequence(new Request(certId, null)), (Extensions) null), null));
+    }
+
+    /**
+     * Reads a tag and a definite length at the current position and moves to the start of the contents.
+     *
+     * @return the position after the contents, or -1 if the tag is not the expected one or the length is not supported
+     */
+    private int readHeader(final int expectedTag) {
+        if (pos + 2 > data.length || (data[pos] & 0xff) != expectedTag) {
+            return -1;
+        }
+        pos++;
+        int length = data[pos++] & 0xff;
+        if (length > 0x7f) {
+            // Long form. Indefinite length (0x80) is not DER, and requests are never larger than 3 length octets can express
+            final int lengthOctets = length & 0x7f;
+            if (lengthOctets == 0 || lengthOctets > 3 || pos + lengthOctets > data.length) {
+                return -1;
+            }
+            length = 0;
+            for (int i = 0; i < lengthOctets; i++) {
+                length = (length << 8) | (data[pos++] & 0xff);
+            }
+        }
+        final int end = pos + length;
+        return end > data.length ? -1 : end;
+    }
+
+    private boolean contentEquals(final int end, final byte[] expected) {
+        return end - pos == expected.length && Arrays.equals(data, pos, end, expected, 0, expected.length);
+    }
+}
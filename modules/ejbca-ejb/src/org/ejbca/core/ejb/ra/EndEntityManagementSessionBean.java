@@ -25,9 +25,11 @@ import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Random;
+import java.util.Set;
 
 import javax.annotation.PostConstruct;
 import javax.annotation.Resource;
@@ -101,6 +103,7 @@ import org.cesecore.keys.validation.KeyValidatorSessionLocal;
 import org.cesecore.keys.validation.ValidationException;
 import org.cesecore.keys.validation.ValidationResult;
 import org.cesecore.roles.member.RoleMemberData;
+import org.cesecore.util.JdbcBatching;
 import org.cesecore.util.LogRedactionUtils;
 import org.cesecore.util.PrintableStringNameStyle;
 import org.cesecore.util.ValidityDate;
@@ -121,6 +124,7 @@ import org.ejbca.core.ejb.ca.store.CertReqHistoryData;
 import org.ejbca.core.ejb.ca.store.CertReqHistorySessionLocal;
 import org.ejbca.core.ejb.config.GlobalUpgradeConfiguration;
 import org.ejbca.core.ejb.dto.CertRevocationDto;
+import org.ejbca.core.ejb.dto.CertRevocationResultDto;
 import org.ejbca.core.ejb.keyrecovery.KeyRecoveryData;
 import org.ejbca.core.ejb.keyrecovery.KeyRecoverySessionLocal;
 import org.ejbca.core.ejb.ra.raadmin.EndEntityProfileSessionLocal;
@@ -1889,7 +1893,7 @@ public class EndEntityManagementSessionBean implements EndEntityManagementSessio
                     serialNumber = CertTools.getSerialNumber(certificate);
                 }
                 try {
-                    revokeCert(authenticationToken, serialNumber, null, /*invalidityDate*/ null, cdw.getCertificateData().getIssuerDN(), reason, false, endEntityInformation, 0, lastApprovingAdmin, null);
+                    revokeCert(authenticationToken, serialNumber, null, /*invalidityDate*/ null, cdw.getCertificateData().getIssuerDN(), reason, false, endEntityInformation, 0, lastApprovingAdmin, null, null, false);
                 } catch (RevokeBackDateNotAllowedForProfileException e) {
                     throw new IllegalStateException("This should not happen since there is no back dating.",e);
                 } catch (CertificateProfileDoesNotExistException e) {
@@ -1928,6 +1932,9 @@ public class EndEntityManagementSessionBean implements EndEntityManagementSessio
         }
     }
 
+    /** Number of certificates revoked in each transaction by {@link #revokeCertsWithMetadata} */
+    private static final int REVOCATION_BATCH_SIZE = 100;
+
     private static final ApprovalOveradableClassName[] NONAPPROVABLECLASSNAMES_REVOKECERT = {
             new ApprovalOveradableClassName(
                     org.ejbca.core.model.approval.approvalrequests.RevocationApprovalRequest.class.getName(),
@@ -1955,7 +1962,7 @@ public class EndEntityManagementSessionBean implements EndEntityManagementSessio
     ) throws AuthorizationDeniedException, NoSuchEndEntityException, ApprovalException, WaitingForApprovalException,
             AlreadyRevokedException {
         try {
-            revokeCert(authenticationToken, certSerNo, revocationDate, invalidityDate, issuerDn, reason, false, null, approvalRequestID, lastApprovingAdmin, null);
+            revokeCert(authenticationToken, certSerNo, revocationDate, invalidityDate, issuerDn, reason, false, null, approvalRequestID, lastApprovingAdmin, null, null, false);
         } catch (RevokeBackDateNotAllowedForProfileException e) {
             throw new IllegalStateException("Back dating is not allowed in Certificate Profile",e);
         } catch (CertificateProfileDoesNotExistException e) {
@@ -1970,7 +1977,7 @@ public class EndEntityManagementSessionBean implements EndEntityManagementSessio
     ) throws AuthorizationDeniedException, NoSuchEndEntityException, ApprovalException, WaitingForApprovalException,
             RevokeBackDateNotAllowedForProfileException, AlreadyRevokedException {
         try {
-            revokeCert(authenticationToken, certSerNo, revocationDate, invalidityDate, issuerDn, reason, checkDate, null, 0, null, null);
+            revokeCert(authenticationToken, certSerNo, revocationDate, invalidityDate, issuerDn, reason, checkDate, null, 0, null, null, null, false);
         } catch (CertificateProfileDoesNotExistException e) {
             throw new IllegalStateException("This should not happen since this method overload does not support certificateProfileId input parameter.",e);
         }
@@ -1985,31 +1992,200 @@ public class EndEntityManagementSessionBean implements EndEntityManagementSessio
         
         revokeCert(authenticationToken, certificateSn, certRevocationDto.getRevocationDate(), certRevocationDto.getInvalidityDate(), 
                 certRevocationDto.getIssuerDN(), certRevocationDto.getReason(), certRevocationDto.isCheckDate(), null, 0, null, 
-                certRevocationDto.getCertificateProfileId());
+                certRevocationDto.getCertificateProfileId(), null, false);
     }
 
-    private void revokeCert(
-            AuthenticationToken authenticationToken, BigInteger certSerNo, Date revocationDate, Date invalidityDate, String issuerDn,
-            int reason, boolean checkDate, final EndEntityInformation endEntityInformationParam, final int approvalRequestID,
-            final AuthenticationToken lastApprovingAdmin, final Integer certificateProfileIdParam
-    ) throws AuthorizationDeniedException, NoSuchEndEntityException, ApprovalException, WaitingForApprovalException,
-            RevokeBackDateNotAllowedForProfileException, AlreadyRevokedException, CertificateProfileDoesNotExistException {
-        if (log.isTraceEnabled()) {
-            log.trace(">revokeCert(" + certSerNo.toString(16) + ", IssuerDN: " + issuerDn + ")");
+    @Override
+    @TransactionAttribute(TransactionAttributeType.NOT_SUPPORTED)
+    public List<CertRevocationResultDto> revokeCertsWithMetadata(final AuthenticationToken authenticationToken,
+            final List<CertRevocationDto> certRevocationDtos) throws AuthorizationDeniedException {
+        // Check that the admin has revocation rights, once for all certificates
+        assertAuthorizedToRevoke(authenticationToken, null);
+        final CertRevocationResultDto[] results = new CertRevocationResultDto[certRevocationDtos.size()];
+        // Group the certificates per CA, keeping track of their position in the list
+        final Map<String, List<Integer>> indexesByIssuerDn = new LinkedHashMap<>();
+        for (int i = 0; i < certRevocationDtos.size(); i++) {
+            final CertRevocationDto certRevocationDto = certRevocationDtos.get(i);
+            if (StringUtils.isEmpty(certRevocationDto.getIssuerDN()) || StringUtils.isEmpty(certRevocationDto.getCertificateSN())
+                    || certRevocationDto.getReason() == null) {
+                results[i] = new CertRevocationResultDto(certRevocationDto, CertRevocationResultDto.Status.FAILED,
+                        "Issuer DN, serial number and revocation reason are required.");
+                continue;
+            }
+            try {
+                new BigInteger(certRevocationDto.getCertificateSN(), 16);
+            } catch (NumberFormatException e) {
+                results[i] = new CertRevocationResultDto(certRevocationDto, CertRevocationResultDto.Status.FAILED,
+                        "Invalid hexadecimal serial number: " + certRevocationDto.getCertificateSN());
+                continue;
+            }
+            indexesByIssuerDn.computeIfAbsent(CertTools.stringToBCDNString(certRevocationDto.getIssuerDN()), issuerDn -> new ArrayList<>()).add(i);
+        }
+        for (final Map.Entry<String, List<Integer>> entry : indexesByIssuerDn.entrySet()) {
+            final String issuerDn = entry.getKey();
+            final List<Integer> indexes = entry.getValue();
+            final int caId = issuerDn.hashCode();
+            try {
+                endEntityAuthenticationSession.assertAuthorizedToCA(authenticationToken, caId);
+            } catch (AuthorizationDeniedException e) {
+                for (final int index : indexes) {
+                    results[index] = new CertRevocationResultDto(certRevocationDtos.get(index), CertRevocationResultDto.Status.NOT_AUTHORIZED, e.getMessage());
+                }
+                continue;
+            }
+            final List<BigInteger> revokedSerialNumbers = new ArrayList<>();
+            for (int fromIndex = 0; fromIndex < indexes.size(); fromIndex += REVOCATION_BATCH_SIZE) {
+                final List<Integer> chunk = indexes.subList(fromIndex, Math.min(fromIndex + REVOCATION_BATCH_SIZE, indexes.size()));
+                revokeCertsInNewTransaction(authenticationToken, certRevocationDtos, chunk, results, revokedSerialNumbers);
+            }
+            log.info(intres.getLocalizedMessage("ra.revokedcertsbatch", revokedSerialNumbers.size(), indexes.size(), issuerDn));
+            // OCSP responses were not pre-signed and the CRL was not generated for each certificate, so do it once for all of them
+            if (!revokedSerialNumbers.isEmpty()) {
+                try {
+                    revocationSession.postRevokeCertificates(authenticationToken, caId, revokedSerialNumbers);
+                } catch (AuthorizationDeniedException e) {
+                    log.info("Not authorized to CA '" + issuerDn + "' to perform post-revocation actions: " + e.getMessage());
+                }
+            }
+        }
+        return Arrays.asList(results);
+    }
+
+    /**
+     * Revokes the certificates at the given indexes in a new transaction, and stores the result of each certificate.
+     * If the transaction is rolled back, the certificates are revoked one by one, each in its own transaction.
+     *
+     * @param revokedSerialNumbers list that the serial numbers of the revoked certificates are added to
+     */
+    private void revokeCertsInNewTransaction(final AuthenticationToken authenticationToken, final List<CertRevocationDto> certRevocationDtos,
+            final List<Integer> indexes, final CertRevocationResultDto[] results, final List<BigInteger> revokedSerialNumbers) {
+        final List<CertRevocationDto> chunk = new ArrayList<>(indexes.size());
+        for (final int index : indexes) {
+            chunk.add(certRevocationDtos.get(index));
+        }
+        List<CertRevocationResultDto> chunkResults;
+        try {
+            chunkResults = endEntityManagementSession.revokeCertsWithMetadataInNewTransaction(authenticationToken, chunk);
+        } catch (EJBException e) {
+            if (log.isDebugEnabled()) {
+                log.debug("Failed to revoke " + chunk.size() + " certificates in one transaction: " + e.getMessage());
+            }
+            chunkResults = null;
+        }
+        if (chunkResults == null) {
+            if (indexes.size() > 1) {
+                for (final int index : indexes) {
+                    revokeCertsInNewTransaction(authenticationToken, certRevocationDtos, Collections.singletonList(index), results, revokedSerialNumbers);
+                }
+                return;
+            }
+            chunkResults = Collections.singletonList(new CertRevocationResultDto(chunk.get(0), CertRevocationResultDto.Status.FAILED,
+                    "The revocation could not be committed."));
         }
-        // Check that the admin has revocation rights.
+        for (int i = 0; i < indexes.size(); i++) {
+            results[indexes.get(i)] = chunkResults.get(i);
+            if (chunkResults.get(i).isRevoked()) {
+                revokedSerialNumbers.add(new BigInteger(chunk.get(i).getCertificateSN(), 16));
+            }
+        }
+    }
+
+    @Override
+    @TransactionAttribute(TransactionAttributeType.REQUIRES_NEW)
+    public List<CertRevocationResultDto> revokeCertsWithMetadataInNewTransaction(final AuthenticationToken authenticationToken,
+            final List<CertRevocationDto> certRevocationDtos) {
+        // The status updates, audit records and publisher queue rows of all certificates are sent in JDBC batches
+        JdbcBatching.enable(entityManager);
+        // Fetch the certificates of each CA with one query rather than one query per certificate
+        final Map<String, Set<BigInteger>> serialNumbersByIssuerDn = new LinkedHashMap<>();
+        for (final CertRevocationDto certRevocationDto : certRevocationDtos) {
+            serialNumbersByIssuerDn.computeIfAbsent(CertTools.stringToBCDNString(certRevocationDto.getIssuerDN()), issuerDn -> new LinkedHashSet<>())
+                    .add(new BigInteger(certRevocationDto.getCertificateSN(), 16));
+        }
+        final Map<String, Map<BigInteger, CertificateDataWrapper>> cdwsByIssuerDn = new HashMap<>();
+        for (final Map.Entry<String, Set<BigInteger>> entry : serialNumbersByIssuerDn.entrySet()) {
+            cdwsByIssuerDn.put(entry.getKey(), certificateStoreSession.getCertificateDatasByIssuerAndSernos(entry.getKey(), entry.getValue()));
+        }
+        final List<CertRevocationResultDto> results = new ArrayList<>(certRevocationDtos.size());
+        for (final CertRevocationDto certRevocationDto : certRevocationDtos) {
+            final BigInteger serialNumber = new BigInteger(certRevocationDto.getCertificateSN(), 16);
+            final CertificateDataWrapper cdw = cdwsByIssuerDn.get(CertTools.stringToBCDNString(certRevocationDto.getIssuerDN())).get(serialNumber);
+            results.add(revokeCertInBatch(authenticationToken, certRevocationDto, serialNumber, cdw));
+        }
+        if (registry.getRollbackOnly()) {
+            // Some operation marked the transaction for rollback, so none of the changes will be committed. A single certificate that was
+            // not revoked still has its result, since the failure that caused the rollback is what the result reports.
+            if (results.size() == 1 && !results.get(0).isRevoked() && results.get(0).getStatus() != CertRevocationResultDto.Status.WAITING_FOR_APPROVAL) {
+                return results;
+            }
+            return null;
+        }
+        return results;
+    }
+
+    /**
+     * @param cdw the certificate, or null to look it up with {@link NoConflictCertificateStoreSessionLocal#getCertificateDataByIssuerAndSerno}
+     *      since it may be a limited certificate of a throw away CA
+     */
+    private CertRevocationResultDto revokeCertInBatch(final AuthenticationToken authenticationToken, final CertRevocationDto certRevocationDto,
+            final BigInteger serialNumber, final CertificateDataWrapper cdw) {
+        try {
+            revokeCert(authenticationToken, serialNumber, certRevocationDto.getRevocationDate(), certRevocationDto.getInvalidityDate(),
+                    certRevocationDto.getIssuerDN(), certRevocationDto.getReason(), certRevocationDto.isCheckDate(), null, 0, null,
+                    certRevocationDto.getCertificateProfileId(), cdw, true);
+            return new CertRevocationResultDto(certRevocationDto, CertRevocationResultDto.Status.REVOKED, null);
+        } catch (NoSuchEndEntityException e) {
+            return new CertRevocationResultDto(certRevocationDto, CertRevocationResultDto.Status.NOT_FOUND, e.getMessage());
+        } catch (AlreadyRevokedException e) {
+            return new CertRevocationResultDto(certRevocationDto, CertRevocationResultDto.Status.ALREADY_REVOKED, e.getMessage());
+        } catch (AuthorizationDeniedException e) {
+            return new CertRevocationResultDto(certRevocationDto, CertRevocationResultDto.Status.NOT_AUTHORIZED, e.getMessage());
+        } catch (WaitingForApprovalException e) {
+            return new CertRevocationResultDto(certRevocationDto, CertRevocationResultDto.Status.WAITING_FOR_APPROVAL,
+                    e.getMessage() + " Request ID: " + e.getRequestId());
+        } catch (ApprovalException e) {
+            return new CertRevocationResultDto(certRevocationDto, CertRevocationResultDto.Status.APPROVAL_EXISTS, e.getMessage());
+        } catch (RevokeBackDateNotAllowedForProfileException e) {
+            return new CertRevocationResultDto(certRevocationDto, CertRevocationResultDto.Status.BACKDATING_NOT_ALLOWED, e.getMessage());
+        } catch (CertificateProfileDoesNotExistException e) {
+            return new CertRevocationResultDto(certRevocationDto, CertRevocationResultDto.Status.CERTIFICATE_PROFILE_NOT_FOUND, e.getMessage());
+        }
+    }
+
+    /** Checks that the admin has revocation rights */
+    private void assertAuthorizedToRevoke(final AuthenticationToken authenticationToken, final BigInteger certSerNo) throws AuthorizationDeniedException {
         if (!authorizationSession.isAuthorizedNoLogging(authenticationToken, AccessRulesConstants.REGULAR_REVOKEENDENTITY)) {
             final String msg = intres.getLocalizedMessage("ra.errorauthrevoke");
             logAuditEvent(
                     EventTypes.ACCESS_CONTROL, EventStatus.FAILURE,
-                    authenticationToken, null, certSerNo.toString(16).toUpperCase(), null,
+                    authenticationToken, null, certSerNo == null ? null : certSerNo.toString(16).toUpperCase(), null,
                     SecurityEventProperties.builder().withMsg(msg).build()
             );
             throw new AuthorizationDeniedException(msg);
         }
+    }
+
+    /**
+     * @param cdwParam the certificate if it has already been fetched, or null to look it up
+     * @param batchRevocation true if called from {@link #revokeCertsWithMetadata}, where authorization to revoke and to the CA has already been
+     *      checked, and the post-revocation actions are performed after all certificates of the CA have been revoked.
+     */
+    private void revokeCert(
+            AuthenticationToken authenticationToken, BigInteger certSerNo, Date revocationDate, Date invalidityDate, String issuerDn,
+            int reason, boolean checkDate, final EndEntityInformation endEntityInformationParam, final int approvalRequestID,
+            final AuthenticationToken lastApprovingAdmin, final Integer certificateProfileIdParam, final CertificateDataWrapper cdwParam,
+            final boolean batchRevocation
+    ) throws AuthorizationDeniedException, NoSuchEndEntityException, ApprovalException, WaitingForApprovalException,
+            RevokeBackDateNotAllowedForProfileException, AlreadyRevokedException, CertificateProfileDoesNotExistException {
+        if (log.isTraceEnabled()) {
+            log.trace(">revokeCert(" + certSerNo.toString(16) + ", IssuerDN: " + issuerDn + ")");
+        }
+        if (!batchRevocation) {
+            assertAuthorizedToRevoke(authenticationToken, certSerNo);
+        }
 
         // To be fully backwards compatible we just use the first fingerprint found..
-        final CertificateDataWrapper cdw = noConflictCertificateStoreSession.getCertificateDataByIssuerAndSerno(issuerDn, certSerNo);
+        final CertificateDataWrapper cdw = cdwParam != null ? cdwParam : noConflictCertificateStoreSession.getCertificateDataByIssuerAndSerno(issuerDn, certSerNo);
         if (cdw == null) {
             final String msg = intres.getLocalizedMessage("ra.errorfindentitycert", issuerDn, certSerNo.toString(16));
             log.info(msg);
@@ -2018,7 +2194,9 @@ public class EndEntityManagementSessionBean implements EndEntityManagementSessio
         final BaseCertificateData certificateData = cdw.getBaseCertificateData();
         final int caId = certificateData.getIssuerDN().hashCode();
         final String username = certificateData.getUsername();
-        endEntityAuthenticationSession.assertAuthorizedToCA(authenticationToken, caId);
+        if (!batchRevocation) {
+            endEntityAuthenticationSession.assertAuthorizedToCA(authenticationToken, caId);
+        }
         final int revocationReason = certificateData.getRevocationReason();
 
         if (certificateProfileIdParam != null) {
@@ -2179,7 +2357,8 @@ public class EndEntityManagementSessionBean implements EndEntityManagementSessio
 
         // Revoke certificate in database and all publishers
         try {
-            revocationSession.revokeCertificate(authenticationToken, cdw, publishers, revocationDate!=null ? revocationDate : new Date(), invalidityDate, reason, certificateSubjectDN);
+            revocationSession.revokeCertificate(authenticationToken, cdw, publishers, revocationDate!=null ? revocationDate : new Date(), invalidityDate, reason,
+                    certificateSubjectDN, !batchRevocation);
         } catch (CertificateRevokeException e) {
             final String msg = intres.getLocalizedMessage("ra.errorfindentitycert", issuerDn, certSerNo.toString(16));
             log.info(msg);
@@ -49,6 +49,7 @@ import org.ejbca.core.ejb.crl.PublishingCrlSessionLocal;
 import org.ejbca.core.ejb.keyrecovery.KeyRecoverySessionLocal;
 import org.ejbca.core.ejb.ocsp.OcspDataSessionLocal;
 import org.ejbca.core.ejb.ocsp.OcspResponseGeneratorSessionLocal;
+import org.ejbca.core.ejb.ocsp.OcspResponseUpdaterSessionLocal;
 import org.ejbca.core.ejb.ra.CertificateRequestSessionLocal;
 import org.ejbca.core.ejb.ra.EndEntityAccessSessionLocal;
 import org.ejbca.core.ejb.ra.EndEntityManagementSessionLocal;
@@ -189,6 +190,8 @@ public class ServiceSessionBean implements ServiceSessionLocal, ServiceSessionRe
     @EJB
     private OcspDataSessionLocal ocspDataSessionLocal;
     @EJB
+    private OcspResponseUpdaterSessionLocal ocspResponseUpdaterSession;
+    @EJB
     private RevocationSessionLocal revocationSession;
 
 
@@ -594,6 +597,7 @@ public class ServiceSessionBean implements ServiceSessionLocal, ServiceSessionRe
         ejbs.put(InternalKeyBindingMgmtSessionLocal.class, internalKeyBindingMgmtSession);
         ejbs.put(OcspResponseGeneratorSessionLocal.class, ocspGeneratorResponseSessionLocal);
         ejbs.put(OcspDataSessionLocal.class, ocspDataSessionLocal);
+        ejbs.put(OcspResponseUpdaterSessionLocal.class, ocspResponseUpdaterSession);
         ejbs.put(RevocationSessionLocal.class, revocationSession);
         try {
             if (worker != null) {
@@ -797,6 +801,7 @@ public class ServiceSessionBean implements ServiceSessionLocal, ServiceSessionRe
             ejbs.put(InternalKeyBindingMgmtSessionLocal.class, internalKeyBindingMgmtSession);
             ejbs.put(OcspResponseGeneratorSessionLocal.class, ocspGeneratorResponseSessionLocal);
             ejbs.put(OcspDataSessionLocal.class, ocspDataSessionLocal);
+            ejbs.put(OcspResponseUpdaterSessionLocal.class, ocspResponseUpdaterSession);
             ejbs.put(RevocationSessionLocal.class, revocationSession);
             ServiceExecutionResult result = worker.work(ejbs);
             final String msg = intres.getLocalizedMessage("services.serviceexecuted", serviceName, result.getResult().getOutput(), result.getMessage());
@@ -845,6 +850,7 @@ public class ServiceSessionBean implements ServiceSessionLocal, ServiceSessionRe
             ejbs.put(InternalKeyBindingMgmtSessionLocal.class, internalKeyBindingMgmtSession);
             ejbs.put(OcspResponseGeneratorSessionLocal.class, ocspGeneratorResponseSessionLocal);
             ejbs.put(OcspDataSessionLocal.class, ocspDataSessionLocal);
+            ejbs.put(OcspResponseUpdaterSessionLocal.class, ocspResponseUpdaterSession);
             ejbs.put(RevocationSessionLocal.class, revocationSession);
             ServiceExecutionResult result = worker.work(ejbs);            
             final String msg = intres.getLocalizedMessage("services.serviceexecuted", serviceName, result.getResult().getOutput(), result.getMessage());
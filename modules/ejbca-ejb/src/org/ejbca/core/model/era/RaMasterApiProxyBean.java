@@ -107,6 +107,7 @@ import org.cesecore.util.LogRedactionUtils;
 import org.ejbca.config.GlobalConfiguration;
 import org.ejbca.core.EjbcaException;
 import org.ejbca.core.ejb.dto.CertRevocationDto;
+import org.ejbca.core.ejb.dto.CertRevocationResultDto;
 import org.ejbca.core.ejb.keyrecovery.KeyRecoverySessionLocal;
 import org.ejbca.core.ejb.ra.CouldNotRemoveEndEntityException;
 import org.ejbca.core.ejb.ra.EndEntityExistsException;
@@ -2084,6 +2085,53 @@ public class RaMasterApiProxyBean implements RaMasterApiProxyBeanLocal {
         }
     }
 
+    @Override
+    public List<CertRevocationResultDto> revokeCertsWithMetadata(final AuthenticationToken authenticationToken,
+            final List<CertRevocationDto> certRevocationDtos) throws AuthorizationDeniedException {
+        // Try remote first, since the certificates might be present in the RA database but the admin might not authorized to revoke them there
+        final CertRevocationResultDto[] results = new CertRevocationResultDto[certRevocationDtos.size()];
+        AuthorizationDeniedException authorizationDeniedException = null;
+        for (final RaMasterApi raMasterApi : raMasterApis) {
+            if (raMasterApi.isBackendAvailable() && raMasterApi.getApiVersion() >= 18) {
+                // Only send the certificates that no previous implementation has handled
+                final List<CertRevocationDto> pendingDtos = new ArrayList<>();
+                final List<Integer> pendingIndexes = new ArrayList<>();
+                for (int i = 0; i < results.length; i++) {
+                    if (results[i] == null || results[i].getStatus() == CertRevocationResultDto.Status.CA_NOT_FOUND) {
+                        pendingDtos.add(certRevocationDtos.get(i));
+                        pendingIndexes.add(i);
+                    }
+                }
+                if (pendingDtos.isEmpty()) {
+                    break;
+                }
+                try {
+                    final List<CertRevocationResultDto> pendingResults = raMasterApi.revokeCertsWithMetadata(authenticationToken, pendingDtos);
+                    for (int i = 0; i < pendingIndexes.size(); i++) {
+                        results[pendingIndexes.get(i)] = pendingResults.get(i);
+                    }
+                } catch (AuthorizationDeniedException e) {
+                    if (authorizationDeniedException == null) {
+                        authorizationDeniedException = e;
+                    }
+                    // Just try next implementation
+                } catch (UnsupportedOperationException | RaMasterBackendUnavailableException e) {
+                    // Just try next implementation
+                }
+            }
+        }
+        for (int i = 0; i < results.length; i++) {
+            if (results[i] == null) {
+                if (authorizationDeniedException != null) {
+                    throw authorizationDeniedException;
+                }
+                results[i] = new CertRevocationResultDto(certRevocationDtos.get(i), CertRevocationResultDto.Status.FAILED,
+                        "No available backend supports revocation of a list of certificates.");
+            }
+        }
+        return Arrays.asList(results);
+    }
+
     @Override
     public void revokeUser(final AuthenticationToken authenticationToken, final String username, final int reason, final boolean deleteUser)
             throws AuthorizationDeniedException, CADoesntExistsException, WaitingForApprovalException, NoSuchEndEntityException,
@@ -133,6 +133,7 @@ import org.ejbca.core.ejb.ca.sign.SignSessionLocal;
 import org.ejbca.core.ejb.ca.store.CertReqHistorySessionLocal;
 import org.ejbca.core.ejb.config.GlobalUpgradeConfiguration;
 import org.ejbca.core.ejb.dto.CertRevocationDto;
+import org.ejbca.core.ejb.dto.CertRevocationResultDto;
 import org.ejbca.core.ejb.its.EtsiEcaOperationsSessionLocal;
 import org.ejbca.core.ejb.keyrecovery.KeyRecoverySessionLocal;
 import org.ejbca.core.ejb.ra.CertificateRequestSessionLocal;
@@ -367,9 +368,10 @@ public class RaMasterApiSessionBean implements RaMasterApiSessionLocal {
      * <tr><th>15<td>=<td>7.11.0
      * <tr><th>16<td>=<td>8.1.0
      * <tr><th>17<td>=<td>8.2.0
+     * <tr><th>18<td>=<td>8.3.0
      * </table>
      */
-    private static final int RA_MASTER_API_VERSION = 17;
+    private static final int RA_MASTER_API_VERSION = 18;
 
     /**
      * Cached value of an active CA, so we don't have to list through all CAs every time as this is a critical path executed every time
@@ -3066,6 +3068,36 @@ public class RaMasterApiSessionBean implements RaMasterApiSessionLocal {
         endEntityManagementSession.revokeCertWithMetadata(authenticationToken, certRevocationDto);
     }
 
+    @Override
+    public List<CertRevocationResultDto> revokeCertsWithMetadata(final AuthenticationToken authenticationToken,
+            final List<CertRevocationDto> certRevocationDtos) throws AuthorizationDeniedException {
+        // Only revoke certificates of CAs that we handle, and let the caller try the others on another instance
+        final CertRevocationResultDto[] results = new CertRevocationResultDto[certRevocationDtos.size()];
+        final List<CertRevocationDto> handledDtos = new ArrayList<>();
+        final List<Integer> handledIndexes = new ArrayList<>();
+        final Map<Integer, Boolean> existingCas = new HashMap<>();
+        for (int i = 0; i < certRevocationDtos.size(); i++) {
+            final CertRevocationDto certRevocationDto = certRevocationDtos.get(i);
+            if (certRevocationDto.getIssuerDN() != null) {
+                final int caId = CertTools.stringToBCDNString(certRevocationDto.getIssuerDN()).hashCode();
+                if (!existingCas.computeIfAbsent(caId, id -> caSession.existsCa(id))) {
+                    results[i] = new CertRevocationResultDto(certRevocationDto, CertRevocationResultDto.Status.CA_NOT_FOUND,
+                            "CA with DN '" + certRevocationDto.getIssuerDN() + "' does not exist.");
+                    continue;
+                }
+            }
+            handledDtos.add(certRevocationDto);
+            handledIndexes.add(i);
+        }
+        if (!handledDtos.isEmpty()) {
+            final List<CertRevocationResultDto> handledResults = endEntityManagementSession.revokeCertsWithMetadata(authenticationToken, handledDtos);
+            for (int i = 0; i < handledIndexes.size(); i++) {
+                results[handledIndexes.get(i)] = handledResults.get(i);
+            }
+        }
+        return Arrays.asList(results);
+    }
+
     @Override
     public void revokeUser(final AuthenticationToken authenticationToken, final String username, final int reason, final boolean deleteUser) throws AuthorizationDeniedException, CADoesntExistsException,
             WaitingForApprovalException, NoSuchEndEntityException, CouldNotRemoveEndEntityException, EjbcaException {
@@ -30,12 +30,15 @@ import java.io.IOException;
 import java.math.BigInteger;
 import java.security.cert.Certificate;
 import java.text.DateFormat;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Date;
+import java.util.List;
 
 import javax.servlet.http.HttpServletRequest;
 import javax.ws.rs.client.Entity;
 import javax.ws.rs.client.Invocation;
+import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
 import javax.ws.rs.core.Response.Status;
 
@@ -51,10 +54,12 @@ import org.easymock.Mock;
 import org.easymock.TestSubject;
 import org.ejbca.config.GlobalConfiguration;
 import org.ejbca.core.ejb.dto.CertRevocationDto;
+import org.ejbca.core.ejb.dto.CertRevocationResultDto;
 import org.ejbca.core.model.era.RaMasterApiProxyBeanLocal;
 import org.ejbca.ui.web.rest.api.InMemoryRestServer;
 import org.ejbca.ui.web.rest.api.config.JsonDateSerializer;
 import org.ejbca.ui.web.rest.api.resource.swagger.CertificateRestResourceSwagger;
+import org.json.simple.JSONArray;
 import org.json.simple.JSONObject;
 import org.json.simple.parser.JSONParser;
 import org.junit.AfterClass;
@@ -335,6 +340,41 @@ public class CertificateRestResourceUnitTest {
         verify(raMasterApiProxy);
     }
 
+    @Test
+    public void shouldReturnResultOfEachCertificateOnBulkRevoke() throws Exception {
+        // given
+        final String requestBody = "{\"certificates\":["
+                + "{\"issuer_dn\":\"CN=TestCa\",\"serial_number\":\"0x1a2b3c\",\"reason\":\"KEY_COMPROMISE\"},"
+                + "{\"issuer_dn\":\"CN=TestCa\",\"serial_number\":\"qwerty\",\"reason\":\"KEY_COMPROMISE\"},"
+                + "{\"issuer_dn\":\"CN=TestCa\",\"serial_number\":\"4d5e\",\"reason\":\"SUPERSEDED\"}]}";
+        final Capture<List<CertRevocationDto>> capturedDtos = EasyMock.newCapture();
+        expect(raMasterApiProxy.revokeCertsWithMetadata(anyObject(AuthenticationToken.class), capture(capturedDtos))).andReturn(Arrays.asList(
+                new CertRevocationResultDto("CN=TestCa", "1a2b3c", CertRevocationResultDto.Status.REVOKED, null),
+                new CertRevocationResultDto("CN=TestCa", "4d5e", CertRevocationResultDto.Status.ALREADY_REVOKED, "Already revoked")));
+        replay(raMasterApiProxy);
+        // when
+        final Response actualResponse = server.newRequest("/v1/certificate/revoke").request()
+                .post(Entity.entity(requestBody, MediaType.APPLICATION_JSON));
+        final String actualJsonString = actualResponse.readEntity(String.class);
+        final JSONObject actualJsonObject = (JSONObject) jsonParser.parse(actualJsonString);
+        final JSONArray actualResults = (JSONArray) actualJsonObject.get("results");
+        // then
+        assertEquals(Status.OK.getStatusCode(), actualResponse.getStatus());
+        verify(raMasterApiProxy);
+        assertEquals(3, actualResults.size());
+        assertEquals("REVOKED", ((JSONObject) actualResults.get(0)).get("status"));
+        assertEquals("0x1a2b3c", ((JSONObject) actualResults.get(0)).get("serial_number"));
+        assertEquals("Invalid serial number should fail without revoking the others.", "FAILED", ((JSONObject) actualResults.get(1)).get("status"));
+        assertEquals("ALREADY_REVOKED", ((JSONObject) actualResults.get(2)).get("status"));
+        assertEquals("Already revoked", ((JSONObject) actualResults.get(2)).get("message"));
+        final List<CertRevocationDto> certRevocationDtos = capturedDtos.getValue();
+        assertEquals(2, certRevocationDtos.size());
+        assertEquals("1a2b3c", certRevocationDtos.get(0).getCertificateSN());
+        assertEquals(Integer.valueOf(RevocationReasons.KEYCOMPROMISE.getDatabaseValue()), certRevocationDtos.get(0).getReason());
+        assertEquals(Integer.valueOf(RevocationReasons.SUPERSEDED.getDatabaseValue()), certRevocationDtos.get(1).getReason());
+        assertTrue(certRevocationDtos.get(1).isCheckDate());
+    }
+
     @Test
     public void inputBadSerialNrShouldReturnBadRequest() throws Exception {
         final String nonHexSerialNumberRequest = "/v1/certificate/testca/qwerty/revocationstatus";
@@ -35,10 +35,12 @@ import org.ejbca.ui.web.rest.api.io.request.CertificateRequestRestRequest;
 import org.ejbca.ui.web.rest.api.io.request.EnrollCertificateRestRequest;
 import org.ejbca.ui.web.rest.api.io.request.FinalizeRestRequest;
 import org.ejbca.ui.web.rest.api.io.request.KeyStoreRestRequest;
+import org.ejbca.ui.web.rest.api.io.request.RevokeCertificatesRestRequest;
 import org.ejbca.ui.web.rest.api.io.request.SearchCertificatesRestRequest;
 import org.ejbca.ui.web.rest.api.io.response.CertificateRestResponse;
 import org.ejbca.ui.web.rest.api.io.response.ExpiringCertificatesRestResponse;
 import org.ejbca.ui.web.rest.api.io.response.RestResourceStatusRestResponse;
+import org.ejbca.ui.web.rest.api.io.response.RevokeCertificatesRestResponse;
 import org.ejbca.ui.web.rest.api.io.response.RevokeStatusRestResponse;
 import org.ejbca.ui.web.rest.api.io.response.SearchCertificatesRestResponse;
 import org.ejbca.ui.web.rest.api.resource.BaseRestResource;
@@ -183,6 +185,22 @@ public class CertificateRestResourceSwagger extends CertificateRestResource {
         return super.revokeCertificate(requestContext, issuerDN, serialNumber, reason, date, invalidityDate);
     }
 
+    @POST
+    @Path("/revoke")
+    @Consumes(MediaType.APPLICATION_JSON)
+    @Produces(MediaType.APPLICATION_JSON)
+    @ApiOperation(value = "Revokes a list of certificates",
+                  notes = "Revokes the specified certificates or changes revocation reason for already revoked certificates. "
+                          + "The certificates are revoked in batches per CA, and the result of each certificate is returned in the same order as in the request.",
+                  response = RevokeCertificatesRestResponse.class)
+    public Response revokeCertificates(
+            @Context HttpServletRequest requestContext,
+            @ApiParam(value = "Issuer DN, hex serial number, RFC5280 revocation reason and optional ISO 8601 revocation and invalidity dates of each certificate.")
+            final RevokeCertificatesRestRequest revokeCertificatesRestRequest)
+            throws AuthorizationDeniedException, RestException {
+        return super.revokeCertificates(requestContext, revokeCertificatesRestRequest);
+    }
+
     @GET
     @Path("/expire")
     @Produces(MediaType.APPLICATION_JSON)
@@ -38,6 +38,7 @@ import org.cesecore.certificates.endentity.ExtendedInformation;
 import org.cesecore.util.LogRedactionUtils;
 import org.ejbca.core.EjbcaException;
 import org.ejbca.core.ejb.dto.CertRevocationDto;
+import org.ejbca.core.ejb.dto.CertRevocationResultDto;
 import org.ejbca.core.ejb.ra.NoSuchEndEntityException;
 import org.ejbca.core.model.InternalEjbcaResources;
 import org.ejbca.core.model.SecConst;
@@ -63,11 +64,15 @@ import org.ejbca.ui.web.rest.api.io.request.CertificateRequestRestRequest;
 import org.ejbca.ui.web.rest.api.io.request.EnrollCertificateRestRequest;
 import org.ejbca.ui.web.rest.api.io.request.FinalizeRestRequest;
 import org.ejbca.ui.web.rest.api.io.request.KeyStoreRestRequest;
+import org.ejbca.ui.web.rest.api.io.request.RevokeCertificateRestRequest;
+import org.ejbca.ui.web.rest.api.io.request.RevokeCertificatesRestRequest;
 import org.ejbca.ui.web.rest.api.io.request.SearchCertificatesRestRequest;
 import org.ejbca.ui.web.rest.api.io.response.CertificateRestResponse;
 import org.ejbca.ui.web.rest.api.io.response.CertificatesRestResponse;
 import org.ejbca.ui.web.rest.api.io.response.ExpiringCertificatesRestResponse;
 import org.ejbca.ui.web.rest.api.io.response.PaginationRestResponseComponent;
+import org.ejbca.ui.web.rest.api.io.response.RevokeCertificateResultRestResponse;
+import org.ejbca.ui.web.rest.api.io.response.RevokeCertificatesRestResponse;
 import org.ejbca.ui.web.rest.api.io.response.RevokeStatusRestResponse;
 import org.ejbca.ui.web.rest.api.io.response.SearchCertificatesRestResponse;
 
@@ -94,6 +99,7 @@ import java.security.cert.CertificateException;
 import java.security.cert.X509Certificate;
 import java.security.spec.InvalidKeySpecException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Date;
@@ -333,6 +339,74 @@ public class CertificateRestResource extends BaseRestResource {
         return Response.ok(result).build();
     }
 
+    /**
+     * Revokes a list of certificates. The certificates are revoked in batches per CA, and the result of each certificate is returned,
+     * so that a certificate that can not be revoked does not prevent the others from being revoked.
+     *
+     * @param requestContext HttpServletRequest
+     * @param revokeCertificatesRestRequest the issuer DN, serial number, reason and optional dates of each certificate to revoke
+     * @return JSON representation of the result of each certificate, in the same order as in the request.
+     */
+    public Response revokeCertificates(final HttpServletRequest requestContext, final RevokeCertificatesRestRequest revokeCertificatesRestRequest)
+            throws AuthorizationDeniedException, RestException {
+        final AuthenticationToken admin = getAdmin(requestContext, false);
+        if (revokeCertificatesRestRequest == null || revokeCertificatesRestRequest.getCertificates() == null
+                || revokeCertificatesRestRequest.getCertificates().isEmpty()) {
+            throw new RestException(Response.Status.BAD_REQUEST.getStatusCode(), "No certificates to revoke.");
+        }
+        final List<RevokeCertificateRestRequest> requests = revokeCertificatesRestRequest.getCertificates();
+        final RevokeCertificateResultRestResponse[] results = new RevokeCertificateResultRestResponse[requests.size()];
+        // Validate all certificates first, and only send the valid ones
+        final List<CertRevocationDto> certRevocationDtos = new ArrayList<>();
+        final List<Integer> indexes = new ArrayList<>();
+        for (int i = 0; i < requests.size(); i++) {
+            final RevokeCertificateRestRequest request = requests.get(i);
+            if (request == null) {
+                results[i] = new RevokeCertificateResultRestResponse(null, null, CertRevocationResultDto.Status.FAILED.name(),
+                        "Missing certificate to revoke.");
+                continue;
+            }
+            try {
+                certRevocationDtos.add(toCertRevocationDto(request));
+                indexes.add(i);
+            } catch (RestException e) {
+                results[i] = new RevokeCertificateResultRestResponse(request.getIssuerDn(), request.getSerialNumber(),
+                        CertRevocationResultDto.Status.FAILED.name(), e.getMessage());
+            }
+        }
+        if (!certRevocationDtos.isEmpty()) {
+            final List<CertRevocationResultDto> revocationResults = raMasterApi.revokeCertsWithMetadata(admin, certRevocationDtos);
+            for (int i = 0; i < indexes.size(); i++) {
+                final RevokeCertificateRestRequest request = requests.get(indexes.get(i));
+                results[indexes.get(i)] = RevokeCertificateResultRestResponse.converter().toRestResponse(revocationResults.get(i),
+                        request.getIssuerDn(), request.getSerialNumber());
+            }
+        }
+        return Response.ok(new RevokeCertificatesRestResponse(Arrays.asList(results))).build();
+    }
+
+    private CertRevocationDto toCertRevocationDto(final RevokeCertificateRestRequest request) throws RestException {
+        if (StringUtils.isEmpty(request.getIssuerDn()) || StringUtils.isEmpty(request.getSerialNumber())) {
+            throw new RestException(Response.Status.BAD_REQUEST.getStatusCode(), "Missing issuer DN or serial number.");
+        }
+        final BigInteger serialNr;
+        try {
+            serialNr = StringTools.getBigIntegerFromHexString(request.getSerialNumber());
+        } catch (NumberFormatException e) {
+            throw new RestException(Response.Status.BAD_REQUEST.getStatusCode(), "Invalid serial number format. Should be "
+                    + "HEX encoded (optionally with '0x' prefix) e.g. '0x10782a83eef170d4'");
+        }
+        final RevocationReasons reason = RevocationReasons.getFromCliValue(request.getReason());
+        if (reason == null) {
+            throw new RestException(Response.Status.BAD_REQUEST.getStatusCode(), "Invalid revocation reason.");
+        }
+        final CertRevocationDto certRevocationDto = new CertRevocationDto(request.getIssuerDn(), serialNr.toString(16), reason.getDatabaseValue());
+        certRevocationDto.setRevocationDate(getValidatedDate(request.getDate()));
+        certRevocationDto.setInvalidityDate(getValidatedDate(request.getInvalidityDate()));
+        certRevocationDto.setCheckDate(true);
+        return certRevocationDto;
+    }
+
     // TODO Replace with @ValidRevocationDate annotation
     private Date getValidatedDate(String sDate) throws RestException {
         Date date = null;
@@ -0,0 +1,84 @@
+/*************************************************************************
+ *                                                                       *
+ *  EJBCA Community: The OpenSource Certificate Authority                *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.ejbca.ui.web.rest.api.io.request;
+
+import io.swagger.annotations.ApiModelProperty;
+
+/**
+ * JSON input representation of one certificate in a revocation request for a list of certificates through REST API.
+ *
+ * @see RevokeCertificatesRestRequest
+ */
+public class RevokeCertificateRestRequest {
+
+    @ApiModelProperty(value = "Subject DN of the issuing CA", example = "CN=ExampleCA")
+    private String issuerDn;
+    @ApiModelProperty(value = "Hex serial number (optionally with '0x' prefix)", example = "1234567890ABCDEF")
+    private String serialNumber;
+    @ApiModelProperty(value = "RFC5280 revocation reason", example = "KEY_COMPROMISE",
+            allowableValues = "NOT_REVOKED, UNSPECIFIED, KEY_COMPROMISE, CA_COMPROMISE, AFFILIATION_CHANGED, SUPERSEDED, CESSATION_OF_OPERATION, "
+                    + "CERTIFICATE_HOLD, REMOVE_FROM_CRL, PRIVILEGES_WITHDRAWN, AA_COMPROMISE")
+    private String reason;
+    @ApiModelProperty(value = "Revocation date (optional), ISO 8601 Date string", example = "2018-06-15T14:07:09Z")
+    private String date;
+    @ApiModelProperty(value = "Invalidity date (optional), ISO 8601 Date string", example = "2018-06-15T14:07:09Z")
+    private String invalidityDate;
+
+    public RevokeCertificateRestRequest() {}
+
+    public RevokeCertificateRestRequest(final String issuerDn, final String serialNumber, final String reason) {
+        this.issuerDn = issuerDn;
+        this.serialNumber = serialNumber;
+        this.reason = reason;
+    }
+
+    public String getIssuerDn() {
+        return issuerDn;
+    }
+
+    public void setIssuerDn(String issuerDn) {
+        this.issuerDn = issuerDn;
+    }
+
+    public String getSerialNumber() {
+        return serialNumber;
+    }
+
+    public void setSerialNumber(String serialNumber) {
+        this.serialNumber = serialNumber;
+    }
+
+    public String getReason() {
+        return reason;
+    }
+
+    public void setReason(String reason) {
+        this.reason = reason;
+    }
+
+    public String getDate() {
+        return date;
+    }
+
+    public void setDate(String date) {
+        this.date = date;
+    }
+
+    public String getInvalidityDate() {
+        return invalidityDate;
+    }
+
+    public void setInvalidityDate(String invalidityDate) {
+        this.invalidityDate = invalidityDate;
+    }
+}
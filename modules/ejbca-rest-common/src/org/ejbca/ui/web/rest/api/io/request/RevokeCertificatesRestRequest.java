@@ -0,0 +1,41 @@
+/*************************************************************************
+ *                                                                       *
+ *  EJBCA Community: The OpenSource Certificate Authority                *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.ejbca.ui.web.rest.api.io.request;
+
+import io.swagger.annotations.ApiModelProperty;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * JSON input representation of a revocation request for a list of certificates through REST API.
+ */
+public class RevokeCertificatesRestRequest {
+
+    @ApiModelProperty(value = "A list of certificates to revoke")
+    private List<RevokeCertificateRestRequest> certificates = new ArrayList<>();
+
+    public RevokeCertificatesRestRequest() {}
+
+    public RevokeCertificatesRestRequest(final List<RevokeCertificateRestRequest> certificates) {
+        this.certificates = certificates;
+    }
+
+    public List<RevokeCertificateRestRequest> getCertificates() {
+        return certificates;
+    }
+
+    public void setCertificates(List<RevokeCertificateRestRequest> certificates) {
+        this.certificates = certificates;
+    }
+}
@@ -0,0 +1,90 @@
+/*************************************************************************
+ *                                                                       *
+ *  EJBCA Community: The OpenSource Certificate Authority                *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.ejbca.ui.web.rest.api.io.response;
+
+import io.swagger.annotations.ApiModelProperty;
+
+import org.ejbca.core.ejb.dto.CertRevocationResultDto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+/**
+ * JSON output holder for the result of revoking one certificate in a revocation request for a list of certificates.
+ */
+public class RevokeCertificateResultRestResponse {
+
+    @ApiModelProperty(value = "Issuer Distinguished Name", example = "CN=ExampleCA")
+    private String issuerDn;
+    @ApiModelProperty(value = "Hex Serial Number", example = "1234567890ABCDEF")
+    private String serialNumber;
+    @ApiModelProperty(value = "Result of the revocation", example = "REVOKED",
+            allowableValues = "REVOKED, NOT_FOUND, ALREADY_REVOKED, NOT_AUTHORIZED, WAITING_FOR_APPROVAL, APPROVAL_EXISTS, CA_NOT_FOUND, "
+                    + "BACKDATING_NOT_ALLOWED, CERTIFICATE_PROFILE_NOT_FOUND, FAILED")
+    private String status;
+    @ApiModelProperty(value = "Message", example = "Certificate with issuer: CN=ExampleCA and serial number: 1234567890ABCDEF has previously been revoked.")
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private String message;
+
+    public RevokeCertificateResultRestResponse() {}
+
+    public RevokeCertificateResultRestResponse(final String issuerDn, final String serialNumber, final String status, final String message) {
+        this.issuerDn = issuerDn;
+        this.serialNumber = serialNumber;
+        this.status = status;
+        this.message = message;
+    }
+
+    /**
+     * Returns a converter instance for this class.
+     *
+     * @return instance of converter for this class.
+     */
+    public static RevokeCertificateResultRestResponseConverter converter() {
+        return new RevokeCertificateResultRestResponseConverter();
+    }
+
+    public static class RevokeCertificateResultRestResponseConverter {
+
+        public RevokeCertificateResultRestResponse toRestResponse(final CertRevocationResultDto result, final String issuerDn, final String serialNumber) {
+            return new RevokeCertificateResultRestResponse(issuerDn, serialNumber, result.getStatus().name(), result.getMessage());
+        }
+    }
+
+    /**
+     * @return subject DN of the certificates issuing CA
+     */
+    public String getIssuerDn() {
+        return issuerDn;
+    }
+
+    /**
+     * @return HEX encoded certificate serial number, as given in the request
+     */
+    public String getSerialNumber() {
+        return serialNumber;
+    }
+
+    /**
+     * @return result of the revocation, e.g. "REVOKED" or "ALREADY_REVOKED"
+     */
+    public String getStatus() {
+        return status;
+    }
+
+    /**
+     * @return message describing why the certificate was not revoked, or null
+     */
+    public String getMessage() {
+        return message;
+    }
+}
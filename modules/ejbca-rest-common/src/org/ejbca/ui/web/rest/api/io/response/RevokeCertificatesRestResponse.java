@@ -0,0 +1,40 @@
+/*************************************************************************
+ *                                                                       *
+ *  EJBCA Community: The OpenSource Certificate Authority                *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.ejbca.ui.web.rest.api.io.response;
+
+import java.util.List;
+
+import io.swagger.annotations.ApiModelProperty;
+
+/**
+ * JSON output holder for the results of a revocation request for a list of certificates.
+ */
+public class RevokeCertificatesRestResponse {
+
+    @ApiModelProperty(value = "The result for each certificate, in the same order as in the request")
+    private List<RevokeCertificateResultRestResponse> results;
+
+    public RevokeCertificatesRestResponse() {}
+
+    public RevokeCertificatesRestResponse(final List<RevokeCertificateResultRestResponse> results) {
+        this.results = results;
+    }
+
+    public List<RevokeCertificateResultRestResponse> getResults() {
+        return results;
+    }
+
+    public void setResults(List<RevokeCertificateResultRestResponse> results) {
+        this.results = results;
+    }
+}
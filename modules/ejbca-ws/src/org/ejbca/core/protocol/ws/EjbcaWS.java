@@ -29,6 +29,7 @@ import java.security.cert.CertificateParsingException;
 import java.security.cert.X509Certificate;
 import java.security.spec.InvalidKeySpecException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Date;
 import java.util.List;
@@ -95,6 +96,7 @@ import org.ejbca.core.ejb.EnterpriseEditionWSBridgeSessionLocal;
 import org.ejbca.core.ejb.audit.enums.EjbcaEventTypes;
 import org.ejbca.core.ejb.crl.PublishingCrlSessionLocal;
 import org.ejbca.core.ejb.dto.CertRevocationDto;
+import org.ejbca.core.ejb.dto.CertRevocationResultDto;
 import org.ejbca.core.ejb.keyrecovery.KeyRecoverySessionLocal;
 import org.ejbca.core.ejb.ra.CertificateRequestSessionLocal;
 import org.ejbca.core.ejb.ra.CouldNotRemoveEndEntityException;
@@ -139,6 +141,8 @@ import org.ejbca.core.protocol.ws.objects.Certificate;
 import org.ejbca.core.protocol.ws.objects.CertificateResponse;
 import org.ejbca.core.protocol.ws.objects.KeyStore;
 import org.ejbca.core.protocol.ws.objects.NameAndId;
+import org.ejbca.core.protocol.ws.objects.RevokeCertRequest;
+import org.ejbca.core.protocol.ws.objects.RevokeCertResult;
 import org.ejbca.core.protocol.ws.objects.RevokeStatus;
 import org.ejbca.core.protocol.ws.objects.SshRequestMessageWs;
 import org.ejbca.core.protocol.ws.objects.TokenCertificateResponseWS;
@@ -1486,6 +1490,73 @@ public class EjbcaWS implements IEjbcaWS {
         }
 	}
 
+    /**
+     * Revokes or unrevokes a list of certificates, in the same way as {@link #revokeCertWithMetadata(String, String, List)}.
+     * The certificates are revoked in batches per CA, and a certificate that can not be revoked does not prevent the
+     * others from being revoked.
+     *
+     * Authorization requirements:<pre>
+     * - /administrator
+     * - /ra_functionality/revoke_end_entity
+     * - /endentityprofilesrules/&lt;end entity profile of the user owning the certificate&gt;/revoke_end_entity
+     * - /ca/&lt;ca of certificate&gt;
+     * </pre>
+     *
+     * <p>Certificates of CAs that do not exist on the local system are forwarded to upstream peer systems (if any).</p>
+     *
+     * @param revocations the issuer DN, hex serial number, reason, and optional revocation date and certificate profile ID of each certificate
+     * @return the result of each certificate, in the same order as the revocations. The status is one of REVOKED, NOT_FOUND, ALREADY_REVOKED,
+     *      NOT_AUTHORIZED, WAITING_FOR_APPROVAL, APPROVAL_EXISTS, CA_NOT_FOUND, BACKDATING_NOT_ALLOWED, CERTIFICATE_PROFILE_NOT_FOUND or FAILED.
+     * @throws AuthorizationDeniedException if client isn't authorized to revoke certificates.
+     * @throws EjbcaException internal error
+     */
+    @WebMethod
+    @Action(input="http://ws.protocol.core.ejbca.org/revokeCertsWithMetadata")
+    public List<RevokeCertResult> revokeCertsWithMetadata(final List<RevokeCertRequest> revocations)
+            throws AuthorizationDeniedException, EjbcaException {
+        final IPatternLogger logger = TransactionLogger.getPatternLogger();
+        try {
+            final AuthenticationToken admin = getAdmin();
+            logAdminName(admin, logger);
+            final RevokeCertResult[] results = new RevokeCertResult[revocations == null ? 0 : revocations.size()];
+            final List<CertRevocationDto> certRevocationDtos = new ArrayList<>();
+            final List<Integer> indexes = new ArrayList<>();
+            for (int i = 0; i < results.length; i++) {
+                final RevokeCertRequest revocation = revocations.get(i);
+                if (revocation == null) {
+                    results[i] = new RevokeCertResult(null, null, CertRevocationResultDto.Status.FAILED.name(), "Revocation request is missing.");
+                    continue;
+                }
+                try {
+                    final CertRevocationDto certRevocationDto = new CertRevocationDto(revocation.getIssuerDN(), revocation.getCertificateSN(),
+                            revocation.getReason());
+                    certRevocationDto.setRevocationDate(getValidatedDate(revocation.getRevocationDate()));
+                    certRevocationDto.setCertificateProfileId(revocation.getCertificateProfileId());
+                    certRevocationDto.setCheckDate(true);
+                    certRevocationDtos.add(certRevocationDto);
+                    indexes.add(i);
+                } catch (DateNotValidException e) {
+                    results[i] = new RevokeCertResult(revocation.getIssuerDN(), revocation.getCertificateSN(),
+                            CertRevocationResultDto.Status.FAILED.name(), e.getMessage());
+                }
+            }
+            if (!certRevocationDtos.isEmpty()) {
+                final List<CertRevocationResultDto> revocationResults = raMasterApiProxyBean.revokeCertsWithMetadata(admin, certRevocationDtos);
+                for (int i = 0; i < indexes.size(); i++) {
+                    final CertRevocationResultDto revocationResult = revocationResults.get(i);
+                    results[indexes.get(i)] = new RevokeCertResult(revocationResult.getIssuerDN(), revocationResult.getCertificateSN(),
+                            revocationResult.getStatus().name(), revocationResult.getMessage());
+                }
+            }
+            return Arrays.asList(results);
+        } catch (RuntimeException e) {	// EJBException, ClassCastException, ...
+            throw getEjbcaException(e, logger);
+        } finally {
+            logger.writeln();
+            logger.flush();
+        }
+    }
+
     CertRevocationDto parseRevocationMetadata(CertRevocationDto certRevocationDto, final List<KeyValuePair> metadata)
             throws DateNotValidException {
         final String REASON_KEY = "reason";
@@ -0,0 +1,103 @@
+/*************************************************************************
+ *                                                                       *
+ *  EJBCA Community: The OpenSource Certificate Authority                *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.ejbca.core.protocol.ws.objects;
+
+import java.io.Serializable;
+
+import javax.xml.bind.annotation.XmlType;
+
+/**
+ * Value object holding one certificate to revoke with revokeCertsWithMetadata.
+ *
+ * Contains the following data:
+ *   IssuerDN
+ *   CertificateSN (hex)
+ *   Reason (One of the RevokeStatus.REVOKATION_REASON constants)
+ *   RevocationDate (optional ISO 8601 date string, as the revocationdate metadata of revokeCertWithMetadata)
+ *   CertificateProfileId (optional, as the certificateprofileid metadata of revokeCertWithMetadata)
+ */
+@XmlType(name = "revokeCertRequest", propOrder = {
+        "issuerDN",
+        "certificateSN",
+        "reason",
+        "revocationDate",
+        "certificateProfileId"
+})
+public class RevokeCertRequest implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private String issuerDN;
+    private String certificateSN;
+    private int reason;
+    private String revocationDate;
+    private Integer certificateProfileId;
+
+    /** Default Web Service Constructor */
+    public RevokeCertRequest() {}
+
+    public RevokeCertRequest(final String issuerDN, final String certificateSN, final int reason) {
+        this.issuerDN = issuerDN;
+        this.certificateSN = certificateSN;
+        this.reason = reason;
+    }
+
+    public String getIssuerDN() {
+        return issuerDN;
+    }
+
+    public void setIssuerDN(String issuerDN) {
+        this.issuerDN = issuerDN;
+    }
+
+    /**
+     * @return Returns the certificateSN in hex format.
+     */
+    public String getCertificateSN() {
+        return certificateSN;
+    }
+
+    public void setCertificateSN(String certificateSN) {
+        this.certificateSN = certificateSN;
+    }
+
+    public int getReason() {
+        return reason;
+    }
+
+    public void setReason(int reason) {
+        this.reason = reason;
+    }
+
+    /**
+     * @return the revocation date as an ISO 8601 string, or null to use the current time
+     */
+    public String getRevocationDate() {
+        return revocationDate;
+    }
+
+    public void setRevocationDate(String revocationDate) {
+        this.revocationDate = revocationDate;
+    }
+
+    /**
+     * @return the ID of the certificate profile to set on the certificate, or null to keep the current one
+     */
+    public Integer getCertificateProfileId() {
+        return certificateProfileId;
+    }
+
+    public void setCertificateProfileId(Integer certificateProfileId) {
+        this.certificateProfileId = certificateProfileId;
+    }
+}
@@ -0,0 +1,87 @@
+/*************************************************************************
+ *                                                                       *
+ *  EJBCA Community: The OpenSource Certificate Authority                *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.ejbca.core.protocol.ws.objects;
+
+import java.io.Serializable;
+
+import javax.xml.bind.annotation.XmlType;
+
+/**
+ * Value object holding the result of revoking one certificate with revokeCertsWithMetadata.
+ *
+ * Contains the following data:
+ *   IssuerDN
+ *   CertificateSN (hex)
+ *   Status, e.g. REVOKED or ALREADY_REVOKED
+ *   Message, describing why the certificate was not revoked
+ */
+@XmlType(name = "revokeCertResult", propOrder = {
+        "issuerDN",
+        "certificateSN",
+        "status",
+        "message"
+})
+public class RevokeCertResult implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private String issuerDN;
+    private String certificateSN;
+    private String status;
+    private String message;
+
+    /** Default Web Service Constructor */
+    public RevokeCertResult() {}
+
+    public RevokeCertResult(final String issuerDN, final String certificateSN, final String status, final String message) {
+        this.issuerDN = issuerDN;
+        this.certificateSN = certificateSN;
+        this.status = status;
+        this.message = message;
+    }
+
+    public String getIssuerDN() {
+        return issuerDN;
+    }
+
+    public void setIssuerDN(String issuerDN) {
+        this.issuerDN = issuerDN;
+    }
+
+    /**
+     * @return Returns the certificateSN in hex format.
+     */
+    public String getCertificateSN() {
+        return certificateSN;
+    }
+
+    public void setCertificateSN(String certificateSN) {
+        this.certificateSN = certificateSN;
+    }
+
+    public String getStatus() {
+        return status;
+    }
+
+    public void setStatus(String status) {
+        this.status = status;
+    }
+
+    public String getMessage() {
+        return message;
+    }
+
+    public void setMessage(String message) {
+        this.message = message;
+    }
+}
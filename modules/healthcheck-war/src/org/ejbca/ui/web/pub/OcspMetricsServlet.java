@@ -0,0 +1,76 @@
+/*************************************************************************
+ *                                                                       *
+ *  EJBCA Community: The OpenSource Certificate Authority                *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+
+package org.ejbca.ui.web.pub;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.apache.commons.lang.ArrayUtils;
+import org.apache.log4j.Logger;
+import org.cesecore.certificates.ocsp.metrics.OcspMetrics;
+import org.ejbca.config.EjbcaConfiguration;
+
+/**
+ * <p>Servlet exposing the metrics of the OCSP responder in the Prometheus text exposition format, for scraping by a
+ * monitoring system. The metrics are kept in memory, so a request doesn't perform any database queries. The same
+ * metrics are available through JMX as <code>org.cesecore:type=OcspMetrics</code>.</p>
+ *
+ * <p>Example of request and response:</p>
+ * <pre>
+ * curl -s http://localhost:8080/ejbca/publicweb/healthcheck/ocspmetrics
+ * # HELP ocsp_responses_total OCSP responses by CA, key binding and response status.
+ * # TYPE ocsp_responses_total counter
+ * ocsp_responses_total{ca="CN=ManagementCA,O=EJBCA Sample,C=SE",keybinding="",status="successful"} 1432
+ * ...
+ * </pre>
+ *
+ * <p>Authentication to the servlet is controlled by the property <code>healthcheck.authorizedips</code>.</p>
+ *
+ * <p>The servlet is responding with the following HTTP status codes:</p>
+ * <ul>
+ *     <li>HTTP status code 200 (OK) with the metrics.</li>
+ *     <li>HTTP status code 401 (Not Authorized) if the IP address of the requester is not authorized according to
+ *     <code>healthcheck.authorizedips.</code></li>
+ * </ul>
+ */
+public class OcspMetricsServlet extends HttpServlet {
+    private static final Logger log = Logger.getLogger(OcspMetricsServlet.class);
+    private static final long serialVersionUID = 1L;
+
+    @Override
+    public void doGet(final HttpServletRequest request, final HttpServletResponse response) throws IOException {
+        if (!isAuthorized(request)) {
+            log.error("The IP " + request.getRemoteAddr() + " is not authorized.");
+            response.sendError(HttpServletResponse.SC_UNAUTHORIZED, "Requests from " + request.getRemoteAddr() + " are not authorized.");
+            return;
+        }
+        response.setContentType("text/plain; version=0.0.4");
+        response.setCharacterEncoding("UTF-8");
+        response.setHeader("Cache-Control", "no-cache");
+        response.getWriter().write(OcspMetrics.INSTANCE.getPrometheusText());
+    }
+
+    private boolean isAuthorized(final HttpServletRequest request) {
+        final String[] authorizedIps = EjbcaConfiguration.getHealthCheckAuthorizedIps().split(";");
+        if (log.isDebugEnabled()) {
+            log.debug("Performing authorisation check for " + request.getRemoteAddr() +
+                    ". The following IPs are authorized to this servlet: " + Arrays.toString(authorizedIps));
+        }
+        return ArrayUtils.contains(authorizedIps, "ANY") || ArrayUtils.contains(authorizedIps, request.getRemoteAddr());
+    }
+}
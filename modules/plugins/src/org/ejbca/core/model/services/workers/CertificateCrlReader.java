@@ -17,12 +17,12 @@ import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.math.BigInteger;
 import java.security.SignatureException;
 import java.security.cert.CRLException;
 import java.security.cert.Certificate;
 import java.security.cert.CertificateException;
-import java.security.cert.X509CRL;
 import java.security.cert.X509Certificate;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -39,7 +39,6 @@ import org.apache.commons.collections4.BidiMap;
 import org.apache.commons.collections4.bidimap.TreeBidiMap;
 import org.apache.commons.lang.StringUtils;
 import org.apache.log4j.Logger;
-import org.bouncycastle.asn1.x509.Extension;
 import org.bouncycastle.cert.X509CertificateHolder;
 import org.bouncycastle.cert.jcajce.JcaX509CertificateConverter;
 import org.bouncycastle.cms.CMSException;
@@ -61,8 +60,8 @@ import org.cesecore.certificates.certificate.CertificateRevokeException;
 import org.cesecore.certificates.certificate.CertificateStoreSessionLocal;
 import org.cesecore.certificates.crl.CrlStoreException;
 import org.cesecore.certificates.crl.CrlStoreSessionLocal;
+import org.cesecore.certificates.crl.StreamingCrlParser;
 import org.cesecore.certificates.endentity.EndEntityConstants;
-import org.cesecore.certificates.util.cert.CrlExtensions;
 import org.cesecore.internal.UpgradeableDataHashMap;
 import org.cesecore.util.LookAheadObjectInputStream;
 import org.ejbca.core.model.services.BaseWorker;
@@ -237,16 +236,8 @@ public class CertificateCrlReader extends BaseWorker implements CustomServiceWor
             }
             for (final File file : crlDirectory.listFiles()) {
                 final String fileName = file.getName();
-                byte[] crlData = null;
                 try {
-                    crlData = getFileFromDisk(file);
-                } catch (IOException e) {
-                    log.error("File '" + fileName + "' could not be read.");
-                    failedFiles.add(fileName);
-                    continue;
-                }
-                try {
-                    storeCrl(ejbs, crlData);
+                    storeCrl(ejbs, file);
                     readCrls++;
                     file.delete();
                 } catch (CRLException e) {
@@ -256,6 +247,10 @@ public class CertificateCrlReader extends BaseWorker implements CustomServiceWor
                 } catch (CADoesntExistsException e) {
                     log.error("CA that issued imported CRL does not exist on this CRL stored in file " + fileName, e);
                     continue;
+                } catch (IOException e) {
+                    log.error("File '" + fileName + "' could not be read.");
+                    failedFiles.add(fileName);
+                    continue;
                 } catch(ServiceExecutionFailedException e) {
                     log.error("Could not store CRL " + fileName + " in the database.", e);
                     failedFiles.add(fileName);
@@ -348,31 +343,39 @@ public class CertificateCrlReader extends BaseWorker implements CustomServiceWor
     }
 
     /**
-     * Stores an imported CRL to the database. 
-     * log.error("CRL from file " + fileName + " couldn't be read.");
-     * @param ejbs
-     * @param crlData
-     * @throws CRLException if the CRL specified by the byte array couldn't be read
+     * Stores an imported CRL to the database. The CRL file is first read as a stream, without decoding its entries, and only read into memory if
+     * the CRL is to be stored.
+     * @param ejbs a map of EJB Session Beans
+     * @param crlFile the DER encoded CRL
+     * @throws CRLException if the CRL in the file couldn't be read
      * @throws CADoesntExistsException if the CA that issued the CRL hasn't been imported on this machine 
+     * @throws IOException if the file couldn't be read
      * @throws ServiceExecutionFailedException if the CRL could not be stored on the database
      */
-    private void storeCrl(final Map<Class<?>, Object> ejbs, final byte[] crlData) throws CRLException, CADoesntExistsException, ServiceExecutionFailedException {
+    private void storeCrl(final Map<Class<?>, Object> ejbs, final File crlFile)
+            throws CRLException, CADoesntExistsException, IOException, ServiceExecutionFailedException {
         CrlStoreSessionLocal crlStoreSession = (CrlStoreSessionLocal) ejbs.get(CrlStoreSessionLocal.class);
-        X509CRL crl = CertTools.getCRLfromByteArray(crlData);
+        final StreamingCrlParser crl;
+        try (final InputStream in = new FileInputStream(crlFile)) {
+            crl = new StreamingCrlParser(in, null).parse();
+        } catch (SignatureException e) {
+            // Not thrown when the signature isn't verified
+            throw new CRLException(e.getMessage(), e);
+        }
 
+        final String issuerDn = CertTools.stringToBCDNString(crl.getIssuer().toString());
         final CaSessionLocal caSession = (CaSessionLocal) ejbs.get(CaSessionLocal.class);
-        CAInfo caInfo = caSession.getCAInfoInternal(CertTools.getIssuerDN(crl).hashCode());
+        CAInfo caInfo = caSession.getCAInfoInternal(issuerDn.hashCode());
         if(caInfo == null) {
-            throw new CADoesntExistsException("CA with subject DN " + CertTools.getIssuerDN(crl) + " does not exist, cannot import CRL for it.");
+            throw new CADoesntExistsException("CA with subject DN " + issuerDn + " does not exist, cannot import CRL for it.");
         }
         final String caFingerprint = CertTools.getFingerprintAsString(caInfo.getCertificateChain().iterator().next());
-        BigInteger crlnumber = CrlExtensions.getCrlNumber(crl);
-        final String issuerDn = CertTools.getIssuerDN(crl);
-        final int crlPartitionIndex = caInfo.determineCrlPartitionIndex(crl);
-        int isDeltaCrl = (crl.getExtensionValue(Extension.deltaCRLIndicator.getId()) == null ? -1 : 1);
+        BigInteger crlnumber = crl.getCrlNumber();
+        final int crlPartitionIndex = caInfo.determineCrlPartitionIndex(crl.getIssuingDistributionPointUris());
+        int isDeltaCrl = (crl.isDeltaCrl() ? 1 : -1);
         if(crlStoreSession.getCRL(issuerDn, crlPartitionIndex, crlnumber.intValue()) == null) {
             try {
-                crlStoreSession.storeCRL(admin, crlData, caFingerprint, crlnumber.intValue(), issuerDn, crlPartitionIndex, crl.getThisUpdate(), crl.getNextUpdate(), isDeltaCrl);
+                crlStoreSession.storeCRL(admin, getFileFromDisk(crlFile), caFingerprint, crlnumber.intValue(), issuerDn, crlPartitionIndex, crl.getThisUpdate(), crl.getNextUpdate(), isDeltaCrl);
             } catch (CrlStoreException e) {
                 throw new ServiceExecutionFailedException("An error occurred while storing the CRL.", e);
             } catch (AuthorizationDeniedException e) {
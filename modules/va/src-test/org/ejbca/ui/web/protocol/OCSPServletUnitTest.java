@@ -0,0 +1,261 @@
+/*************************************************************************
+ *                                                                       *
+ *  EJBCA Community: The OpenSource Certificate Authority                *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.ejbca.ui.web.protocol;
+
+import static org.easymock.EasyMock.anyObject;
+import static org.easymock.EasyMock.aryEq;
+import static org.easymock.EasyMock.capture;
+import static org.easymock.EasyMock.createNiceMock;
+import static org.easymock.EasyMock.eq;
+import static org.easymock.EasyMock.expect;
+import static org.easymock.EasyMock.expectLastCall;
+import static org.easymock.EasyMock.replay;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.lang.reflect.Field;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.AsyncListener;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.bouncycastle.cert.ocsp.OCSPRespBuilder;
+import org.cesecore.config.ConfigurationHolder;
+import org.cesecore.config.GlobalOcspConfiguration;
+import org.cesecore.config.OcspConfiguration;
+import org.cesecore.configuration.GlobalConfigurationSessionLocal;
+import org.easymock.Capture;
+import org.easymock.EasyMockRunner;
+import org.easymock.Mock;
+import org.easymock.MockType;
+import org.easymock.TestSubject;
+import org.ejbca.core.ejb.ocsp.OcspResponseGeneratorSessionLocal;
+import org.ejbca.core.ejb.ocsp.OcspResponseInformation;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/**
+ * Unit test of how {@link OCSPServlet} answers OCSP requests in async mode, and falls back to answering them on the container thread.
+ */
+@RunWith(EasyMockRunner.class)
+public class OCSPServletUnitTest {
+
+    private static final byte[] OCSP_REQUEST = { 1, 2, 3 };
+    private static final String CONTEXT_PATH = "/ejbca/publicweb/status";
+    private static final String SERVLET_PATH = "/ocsp";
+
+    @Mock
+    private OcspResponseGeneratorSessionLocal ocspResponseGeneratorSession;
+    @Mock(MockType.NICE)
+    private GlobalConfigurationSessionLocal globalConfigurationSession;
+
+    @TestSubject
+    private final OCSPServlet servlet = new OCSPServlet();
+
+    private final CapturingOutputStream out = new CapturingOutputStream();
+    private final AtomicInteger completions = new AtomicInteger();
+    private final Capture<AsyncListener> asyncListener = Capture.newInstance();
+    /** Names of the threads that read from the request */
+    private final Set<String> requestReaders = ConcurrentHashMap.newKeySet();
+
+    @Before
+    public void setUp() {
+        expect(globalConfigurationSession.getCachedConfiguration(GlobalOcspConfiguration.OCSP_CONFIGURATION_ID)).andStubReturn(new GlobalOcspConfiguration());
+        replay(globalConfigurationSession);
+    }
+
+    @After
+    public void tearDown() {
+        servlet.destroy();
+        ConfigurationHolder.updateConfiguration(OcspConfiguration.ASYNC_ENABLED, "false");
+    }
+
+    @Test
+    public void shouldAnswerGetRequestAsynchronously() throws Exception {
+        ConfigurationHolder.updateConfiguration(OcspConfiguration.ASYNC_ENABLED, "true");
+        final OcspResponseInformation ocspResponse = ocspResponse(OCSPRespBuilder.UNAUTHORIZED);
+        expect(ocspResponseGeneratorSession.getOcspResponse(aryEq(OCSP_REQUEST), anyObject(), anyObject(), anyObject(), anyObject(), anyObject(),
+                anyObject(), eq(false), eq(false), eq(false))).andReturn(ocspResponse);
+        replay(ocspResponseGeneratorSession);
+
+        final HttpServletResponse response = response();
+        servlet.doGet(getRequest(true, response), response);
+
+        assertTrue("The response should be written with a WriteListener.", out.writeListenerSet.await(10, TimeUnit.SECONDS));
+        assertEquals("Nothing should be written before the container is ready.", 0, out.size());
+        out.writeListener.onWritePossible();
+        assertArrayEquals(ocspResponse.getOcspResponse(), out.toByteArray());
+        assertEquals("The request should be completed once the response is written.", 1, completions.get());
+        assertEquals("The request should only be read on the container thread.", Collections.singleton(Thread.currentThread().getName()),
+                requestReaders);
+    }
+
+    @Test
+    public void shouldAnswerTryLaterOnTimeout() throws Exception {
+        ConfigurationHolder.updateConfiguration(OcspConfiguration.ASYNC_ENABLED, "true");
+        final CountDownLatch generating = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        expect(ocspResponseGeneratorSession.getOcspResponse(aryEq(OCSP_REQUEST), anyObject(), anyObject(), anyObject(), anyObject(), anyObject(),
+                anyObject(), eq(false), eq(false), eq(false))).andAnswer(() -> {
+                    generating.countDown();
+                    release.await();
+                    return ocspResponse(OCSPRespBuilder.UNAUTHORIZED);
+                });
+        replay(ocspResponseGeneratorSession);
+
+        final HttpServletResponse response = response();
+        servlet.doGet(getRequest(true, response), response);
+        assertTrue(generating.await(10, TimeUnit.SECONDS));
+        asyncListener.getValue().onTimeout(null);
+
+        assertArrayEquals("The client should be told to try later.", ocspResponse(OCSPRespBuilder.TRY_LATER).getOcspResponse(), out.toByteArray());
+        assertEquals(1, completions.get());
+        // The response that is generated after the timeout must not be written to the completed request
+        release.countDown();
+        final ThreadPoolExecutor asyncExecutor = getAsyncExecutor();
+        asyncExecutor.shutdown();
+        assertTrue(asyncExecutor.awaitTermination(10, TimeUnit.SECONDS));
+        assertNull("The late response should be dropped.", out.writeListener);
+        assertEquals(1, completions.get());
+        assertEquals("The request may be recycled after the timeout, so it must not be read by the worker.",
+                Collections.singleton(Thread.currentThread().getName()), requestReaders);
+    }
+
+    @Test
+    public void shouldFallBackToSyncModeWhenAsyncIsNotSupported() throws Exception {
+        ConfigurationHolder.updateConfiguration(OcspConfiguration.ASYNC_ENABLED, "true");
+        assertAnsweredSynchronously(false);
+    }
+
+    @Test
+    public void shouldAnswerSynchronouslyWhenAsyncIsDisabled() throws Exception {
+        ConfigurationHolder.updateConfiguration(OcspConfiguration.ASYNC_ENABLED, "false");
+        assertAnsweredSynchronously(true);
+    }
+
+    private void assertAnsweredSynchronously(final boolean asyncSupported) throws Exception {
+        final OcspResponseInformation ocspResponse = ocspResponse(OCSPRespBuilder.UNAUTHORIZED);
+        expect(ocspResponseGeneratorSession.getOcspResponse(aryEq(OCSP_REQUEST), anyObject(), anyObject(), anyObject(), anyObject(), anyObject(),
+                anyObject(), eq(false), eq(false), eq(false))).andReturn(ocspResponse);
+        replay(ocspResponseGeneratorSession);
+
+        final HttpServletResponse response = response();
+        servlet.doGet(getRequest(asyncSupported, response), response);
+
+        assertArrayEquals("The response should be written before doGet returns.", ocspResponse.getOcspResponse(), out.toByteArray());
+        assertNull(out.writeListener);
+        assertEquals(0, completions.get());
+    }
+
+    private HttpServletRequest getRequest(final boolean asyncSupported, final HttpServletResponse response) {
+        final HttpServletRequest request = createNiceMock(HttpServletRequest.class);
+        expect(request.getMethod()).andStubAnswer(() -> read("GET"));
+        expect(request.getRequestURI()).andStubAnswer(() -> read(CONTEXT_PATH + SERVLET_PATH + "/AQID"));
+        expect(request.getContextPath()).andStubAnswer(() -> read(CONTEXT_PATH));
+        expect(request.getServletPath()).andStubAnswer(() -> read(SERVLET_PATH));
+        expect(request.getRequestURL()).andStubAnswer(() -> read(new StringBuffer("http://localhost:8080" + CONTEXT_PATH + SERVLET_PATH + "/AQID")));
+        expect(request.getRemoteAddr()).andStubAnswer(() -> read("127.0.0.1"));
+        expect(request.getContentLength()).andStubAnswer(() -> read(-1));
+        expect(request.isAsyncSupported()).andStubReturn(asyncSupported);
+        if (asyncSupported) {
+            final AsyncContext asyncContext = createNiceMock(AsyncContext.class);
+            expect(asyncContext.getRequest()).andStubReturn(request);
+            expect(asyncContext.getResponse()).andStubReturn(response);
+            asyncContext.addListener(capture(asyncListener));
+            asyncContext.complete();
+            expectLastCall().andStubAnswer(() -> {
+                completions.incrementAndGet();
+                return null;
+            });
+            replay(asyncContext);
+            expect(request.startAsync(request, response)).andStubReturn(asyncContext);
+        } else {
+            expect(request.startAsync(anyObject(), anyObject())).andStubThrow(new IllegalStateException("Async is not supported"));
+        }
+        replay(request);
+        return request;
+    }
+
+    private <T> T read(final T value) {
+        requestReaders.add(Thread.currentThread().getName());
+        return value;
+    }
+
+    private HttpServletResponse response() throws Exception {
+        final HttpServletResponse response = createNiceMock(HttpServletResponse.class);
+        expect(response.getOutputStream()).andStubReturn(out);
+        replay(response);
+        return response;
+    }
+
+    private ThreadPoolExecutor getAsyncExecutor() throws ReflectiveOperationException {
+        final Field field = OCSPServlet.class.getDeclaredField("asyncExecutor");
+        field.setAccessible(true);
+        return (ThreadPoolExecutor) field.get(servlet);
+    }
+
+    private static OcspResponseInformation ocspResponse(final int status) throws Exception {
+        return new OcspResponseInformation(new OCSPRespBuilder().build(status, null), 0, null);
+    }
+
+    /** Output stream of the mocked response, which keeps what is written and the WriteListener set by an async request */
+    private static final class CapturingOutputStream extends ServletOutputStream {
+        private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        private final CountDownLatch writeListenerSet = new CountDownLatch(1);
+        private volatile WriteListener writeListener;
+
+        @Override
+        public boolean isReady() {
+            return true;
+        }
+
+        @Override
+        public void setWriteListener(final WriteListener writeListener) {
+            this.writeListener = writeListener;
+            writeListenerSet.countDown();
+        }
+
+        @Override
+        public synchronized void write(final int b) {
+            bytes.write(b);
+        }
+
+        @Override
+        public synchronized void write(final byte[] b, final int off, final int len) {
+            bytes.write(b, off, len);
+        }
+
+        private synchronized int size() {
+            return bytes.size();
+        }
+
+        private synchronized byte[] toByteArray() {
+            return bytes.toByteArray();
+        }
+    }
+}
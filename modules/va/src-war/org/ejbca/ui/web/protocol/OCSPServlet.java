@@ -15,16 +15,19 @@ package org.ejbca.ui.web.protocol;
 
 import org.apache.commons.lang.StringUtils;
 import org.apache.log4j.Logger;
+import org.bouncycastle.cert.ocsp.OCSPException;
 import org.bouncycastle.cert.ocsp.OCSPResp;
 import org.bouncycastle.cert.ocsp.OCSPRespBuilder;
 import org.cesecore.certificates.certificateprofile.CertificateProfileConstants;
 import org.cesecore.certificates.ocsp.cache.OcspConfigurationCache;
 import org.cesecore.certificates.ocsp.exception.MalformedRequestException;
+import org.cesecore.certificates.ocsp.logging.AsyncPatternLogWriter;
 import org.cesecore.certificates.ocsp.logging.AuditLogger;
 import org.cesecore.certificates.ocsp.logging.GuidHolder;
 import org.cesecore.certificates.ocsp.logging.PatternLogger;
 import org.cesecore.certificates.ocsp.logging.TransactionCounter;
 import org.cesecore.certificates.ocsp.logging.TransactionLogger;
+import org.cesecore.certificates.ocsp.metrics.OcspMetrics;
 import org.cesecore.config.ConfigurationHolder;
 import org.cesecore.config.GlobalOcspConfiguration;
 import org.cesecore.config.OcspConfiguration;
@@ -45,16 +48,31 @@ import com.keyfactor.util.StringTools;
 import com.keyfactor.util.keys.token.CryptoTokenOfflineException;
 
 import javax.ejb.EJB;
+import javax.servlet.AsyncContext;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.ReadListener;
 import javax.servlet.ServletException;
 import javax.servlet.ServletInputStream;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
 import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.net.URLDecoder;
 import java.security.InvalidKeyException;
 import java.security.cert.X509Certificate;
 import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /** 
  * Servlet implementing server side of the Online Certificate Status Protocol (OCSP)
@@ -66,8 +84,12 @@ public class OCSPServlet extends HttpServlet {
     private static final Logger log = Logger.getLogger(OCSPServlet.class);
     private static final InternalEjbcaResources intres = InternalEjbcaResources.getInstance();
     
+    /** The time an asynchronous request may take, including the time waiting for a processing thread and the 30 second HSM timeout */
+    private static final long ASYNC_TIMEOUT_MILLIS = 60000L;
+
     private final String sessionID = GUIDGenerator.generateGUID(this);
     private enum HttpMethod { GET, POST, OTHER};
+    private transient volatile ThreadPoolExecutor asyncExecutor;
     
     @EJB
     private OcspResponseGeneratorSessionLocal integratedOcspResponseGeneratorSession;
@@ -220,20 +242,212 @@ public class OCSPServlet extends HttpServlet {
         }
     }
 
-    private void processOcspRequest(HttpServletRequest request, HttpServletResponse response, final HttpMethod httpMethod) throws ServletException {
-        final String remoteAddress = request.getRemoteAddr();
-        final String xForwardedFor = StringTools.getCleanXForwardedFor(request.getHeader("X-Forwarded-For"));
-        StringBuffer requestUrl = request.getRequestURL();
-        
-        if (request.getQueryString() != null) {
-            requestUrl = requestUrl.append("?" + request.getQueryString());
+    private void processOcspRequest(HttpServletRequest request, HttpServletResponse response, final HttpMethod httpMethod) throws IOException {
+        final OcspTransaction transaction = new OcspTransaction(request);
+        if (OcspConfiguration.isAsyncEnabled() && request.isAsyncSupported()) {
+            processOcspRequestAsync(request, response, httpMethod, transaction);
+            return;
+        }
+        try {
+            final OcspResponseInformation ocspResponseInformation = generateResponse(transaction,
+                    () -> checkAndGetRequestBytes(request, httpMethod, null));
+            byte[] ocspResponseBytes = ocspResponseInformation.getOcspResponse();
+            addResponseHeaders(response, httpMethod, ocspResponseInformation);
+            response.getOutputStream().write(ocspResponseBytes);
+            response.getOutputStream().flush();
+            transaction.responded(httpMethod, ocspResponseInformation.getStatus());
+        } catch (Exception e) {
+            log.error("", e);
+            transaction.transactionLogger.flush();
+            transaction.auditLogger.flush();
+        }
+    }
+
+    /**
+     * Answers the request without holding the container thread. The request body is read with a ReadListener, the response is generated
+     * on the thread pool returned by {@link #getAsyncExecutor()} and written with a WriteListener.
+     */
+    private void processOcspRequestAsync(final HttpServletRequest request, final HttpServletResponse response, final HttpMethod httpMethod,
+            final OcspTransaction transaction) throws IOException {
+        final AsyncContext asyncContext = request.startAsync(request, response);
+        final AsyncOcspRequest asyncRequest = new AsyncOcspRequest(asyncContext, httpMethod, transaction);
+        asyncContext.setTimeout(ASYNC_TIMEOUT_MILLIS);
+        asyncContext.addListener(asyncRequest);
+        if (HttpMethod.POST.equals(httpMethod)) {
+            final ServletInputStream in = request.getInputStream();
+            in.setReadListener(new ReadListener() {
+                private final ByteArrayOutputStream body = new ByteArrayOutputStream();
+                private final byte[] buffer = new byte[2048];
+
+                @Override
+                public void onDataAvailable() throws IOException {
+                    int len;
+                    while (in.isReady() && (len = in.read(buffer)) != -1) {
+                        // Keep reading, but stop buffering, if the client sends more than any valid request. The request is rejected later.
+                        if (body.size() <= LimitLengthASN1Reader.MAX_REQUEST_SIZE) {
+                            body.write(buffer, 0, len);
+                        }
+                    }
+                }
+
+                @Override
+                public void onAllDataRead() {
+                    asyncRequest.dispatch(body.toByteArray());
+                }
+
+                @Override
+                public void onError(final Throwable t) {
+                    log.info("Failed to read OCSP request from " + request.getRemoteAddr() + ": " + t.getMessage());
+                    asyncRequest.abort();
+                }
+            });
+        } else {
+            asyncRequest.dispatch(null);
+        }
+    }
+
+    /** Creates the thread pool for asynchronous requests the first time it is needed, since async mode can be enabled at runtime. */
+    private ThreadPoolExecutor getAsyncExecutor() {
+        ThreadPoolExecutor executor = asyncExecutor;
+        if (executor == null) {
+            synchronized (this) {
+                executor = asyncExecutor;
+                if (executor == null) {
+                    final int threads = OcspConfiguration.getAsyncThreads();
+                    final AtomicInteger threadNumber = new AtomicInteger();
+                    executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                            new ArrayBlockingQueue<>(OcspConfiguration.getAsyncQueueSize()), runnable -> {
+                                final Thread thread = new Thread(runnable, "OcspRequest-" + threadNumber.incrementAndGet());
+                                thread.setDaemon(true);
+                                return thread;
+                            });
+                    executor.allowCoreThreadTimeOut(true);
+                    asyncExecutor = executor;
+                }
+            }
+        }
+        return executor;
+    }
+
+    @Override
+    public void init() throws ServletException {
+        super.init();
+        // The log writer is shut down when the servlet is destroyed, e.g. before a redeploy
+        AsyncPatternLogWriter.INSTANCE.start();
+    }
+
+    @Override
+    public void destroy() {
+        final ThreadPoolExecutor executor = asyncExecutor;
+        if (executor != null) {
+            executor.shutdownNow();
         }
+        AsyncPatternLogWriter.INSTANCE.shutdown();
+        super.destroy();
+    }
 
-        final int localTransactionId = TransactionCounter.INSTANCE.getTransactionNumber();
-        final GlobalOcspConfiguration configuration = (GlobalOcspConfiguration) globalConfigurationSession.getCachedConfiguration(GlobalOcspConfiguration.OCSP_CONFIGURATION_ID);
-        TransactionLogger transactionLogger = new TransactionLogger(localTransactionId, GuidHolder.INSTANCE.getGlobalUid(), remoteAddress, configuration);
-        AuditLogger auditLogger = new AuditLogger("", localTransactionId, GuidHolder.INSTANCE.getGlobalUid(), remoteAddress, configuration);
+    /**
+     * Looks up and signs the response to an OCSP request. Errors are returned as unsigned OCSP error responses.
+     *
+     * @param transaction the logging state of the request
+     * @param requestBytesReader reads and validates the DER encoded OCSP request
+     * @return the response to send to the client
+     */
+    private OcspResponseInformation generateResponse(final OcspTransaction transaction, final RequestBytesReader requestBytesReader) {
+        final TransactionLogger transactionLogger = transaction.transactionLogger;
+        final AuditLogger auditLogger = transaction.auditLogger;
         try {
+            final byte[] requestBytes = requestBytesReader.read();
+            return integratedOcspResponseGeneratorSession.getOcspResponse(requestBytes, transaction.requestCertificates, transaction.remoteAddress,
+                    transaction.xForwardedFor, transaction.requestUrl, auditLogger, transactionLogger, false, false, false);
+        } catch (MalformedRequestException e) {
+            String errMsg = intres.getLocalizedMessage("ocsp.errorprocessreq", e.getMessage());
+            log.info(errMsg);
+            if (log.isDebugEnabled()) {
+                log.debug(errMsg, e);
+            }
+            return buildErrorResponse(transaction, OCSPRespBuilder.MALFORMED_REQUEST);
+        } catch (Throwable e) { // NOPMD, we really want to catch everything here to return internal error on unexpected errors
+            final String errMsg = intres.getLocalizedMessage("ocsp.errorprocessreq", e.getMessage());
+            log.info(errMsg);
+            if (log.isDebugEnabled()) {
+                log.debug(errMsg, e);
+            }
+            return buildErrorResponse(transaction, OCSPRespBuilder.INTERNAL_ERROR);
+        }
+    }
+
+    private OcspResponseInformation buildErrorResponse(final OcspTransaction transaction, final int status) {
+        final TransactionLogger transactionLogger = transaction.transactionLogger;
+        final AuditLogger auditLogger = transaction.auditLogger;
+        if (transactionLogger.isEnabled()) {
+            transactionLogger.paramPut(IPatternLogger.PROCESS_TIME, IPatternLogger.PROCESS_TIME);
+        }
+        if (auditLogger.isEnabled()) {
+            auditLogger.paramPut(IPatternLogger.PROCESS_TIME, IPatternLogger.PROCESS_TIME);
+        }
+        final OcspResponseInformation ocspResponseInformation;
+        try {
+            // RFC 2560: responseBytes are not set on error.
+            ocspResponseInformation = new OcspResponseInformation(new OCSPRespBuilder().build(status, null),
+                    OcspConfiguration.getMaxAge(CertificateProfileConstants.CERTPROFILE_NO_PROFILE), null);
+        } catch (OCSPException e) {
+            throw new IllegalStateException("Unable to build an OCSP response without response bytes.", e);
+        }
+        if (transactionLogger.isEnabled()) {
+            transactionLogger.paramPut(TransactionLogger.STATUS, status);
+            transactionLogger.writeln();
+        }
+        if (auditLogger.isEnabled()) {
+            auditLogger.paramPut(AuditLogger.STATUS, status);
+        }
+        return ocspResponseInformation;
+    }
+
+    private void addResponseHeaders(final HttpServletResponse response, final HttpMethod httpMethod, final OcspResponseInformation ocspResponseInformation)
+            throws IOException, OCSPException {
+        response.setContentType("application/ocsp-response");
+        response.setContentLength(ocspResponseInformation.getOcspResponse().length);
+
+        GlobalOcspConfiguration ocspConfig = (GlobalOcspConfiguration) globalConfigurationSession
+            .getCachedConfiguration(GlobalOcspConfiguration.OCSP_CONFIGURATION_ID);
+        if (ocspResponseInformation.getStatus() == OCSPResp.UNAUTHORIZED && ocspConfig.getExplicitNoCacheUnauthorizedResponsesEnabled()) {
+            addHeaderNoCache(response);
+        }
+        addRfc5019CacheHeaders(response, ocspResponseInformation);
+
+        if (HttpMethod.POST.equals(httpMethod)) {
+            addOcspPostHeaders(response, ocspResponseInformation);
+        }
+    }
+
+    /** Reads the request bytes, which may throw the same exceptions as {@link OCSPServlet#checkAndGetRequestBytes}. */
+    private interface RequestBytesReader {
+        byte[] read() throws IOException, MalformedRequestException;
+    }
+
+    /** The request information and loggers of one OCSP request, captured on the container thread. */
+    private final class OcspTransaction {
+        private final String remoteAddress;
+        private final String xForwardedFor;
+        private final StringBuffer requestUrl;
+        private final X509Certificate[] requestCertificates;
+        private final TransactionLogger transactionLogger;
+        private final AuditLogger auditLogger;
+        private final long startNanos = System.nanoTime();
+
+        private OcspTransaction(final HttpServletRequest request) {
+            remoteAddress = request.getRemoteAddr();
+            xForwardedFor = StringTools.getCleanXForwardedFor(request.getHeader("X-Forwarded-For"));
+            requestUrl = request.getRequestURL();
+            if (request.getQueryString() != null) {
+                requestUrl.append("?" + request.getQueryString());
+            }
+            requestCertificates = (X509Certificate[]) request.getAttribute("javax.servlet.request.X509Certificate");
+            final int localTransactionId = TransactionCounter.INSTANCE.getTransactionNumber();
+            final GlobalOcspConfiguration configuration = (GlobalOcspConfiguration) globalConfigurationSession.getCachedConfiguration(GlobalOcspConfiguration.OCSP_CONFIGURATION_ID);
+            transactionLogger = new TransactionLogger(localTransactionId, GuidHolder.INSTANCE.getGlobalUid(), remoteAddress, configuration);
+            auditLogger = new AuditLogger("", localTransactionId, GuidHolder.INSTANCE.getGlobalUid(), remoteAddress, configuration);
             if (auditLogger.isEnabled()) {
                 auditLogger.paramPut(PatternLogger.LOG_ID, Integer.valueOf(localTransactionId));
                 auditLogger.paramPut(PatternLogger.SESSION_ID, sessionID);
@@ -245,92 +459,141 @@ public class OCSPServlet extends HttpServlet {
                 transactionLogger.paramPut(PatternLogger.CLIENT_IP, remoteAddress);
                 transactionLogger.paramPut(TransactionLogger.FORWARDED_FOR, xForwardedFor);
             }
-            OCSPRespBuilder responseGenerator = new OCSPRespBuilder();
-            OcspResponseInformation ocspResponseInformation = null;
+        }
+
+        /** Records the response in the OCSP metrics */
+        private void responded(final HttpMethod httpMethod, final int status) {
+            OcspMetrics.INSTANCE.httpResponse(httpMethod.name(), status, System.nanoTime() - startNanos);
+        }
+    }
+
+    /**
+     * An OCSP request processed in async mode. Exactly one response is written, either the generated one or tryLater if the
+     * request times out or can't be queued.
+     */
+    private final class AsyncOcspRequest implements AsyncListener {
+        private final AsyncContext asyncContext;
+        private final HttpMethod httpMethod;
+        private final OcspTransaction transaction;
+        private final AtomicBoolean responded = new AtomicBoolean();
+
+        private AsyncOcspRequest(final AsyncContext asyncContext, final HttpMethod httpMethod, final OcspTransaction transaction) {
+            this.asyncContext = asyncContext;
+            this.httpMethod = httpMethod;
+            this.transaction = transaction;
+        }
+
+        /**
+         * Hands the request over to the thread pool. Must be called on a container thread, since the request is read here: the container
+         * may recycle the request object once the request has timed out, while the response is still being generated.
+         *
+         * @param postBody the body of a POST request, or null for a GET request
+         */
+        private void dispatch(final byte[] postBody) {
+            final RequestBytesReader requestBytesReader = readRequestBytes((HttpServletRequest) asyncContext.getRequest(), postBody);
             try {
-                byte[] requestBytes = checkAndGetRequestBytes(request, httpMethod);
-                X509Certificate[] requestCertificates = (X509Certificate[]) request.getAttribute("javax.servlet.request.X509Certificate");
-                ocspResponseInformation = integratedOcspResponseGeneratorSession.getOcspResponse(
-                        requestBytes, requestCertificates, remoteAddress, xForwardedFor, requestUrl, auditLogger, transactionLogger, false, false, false);
-            } catch (MalformedRequestException e) {
-                if (transactionLogger.isEnabled()) {
-                    transactionLogger.paramPut(PatternLogger.PROCESS_TIME, PatternLogger.PROCESS_TIME);
-                }
-                if (auditLogger.isEnabled()) {
-                    auditLogger.paramPut(PatternLogger.PROCESS_TIME, PatternLogger.PROCESS_TIME);
-                }
-                String errMsg = intres.getLocalizedMessage("ocsp.errorprocessreq", e.getMessage());
-                log.info(errMsg);
-                if (log.isDebugEnabled()) {
-                    log.debug(errMsg, e);
-                }
+                getAsyncExecutor().execute(() -> respond(generateResponse(transaction, requestBytesReader)));
+            } catch (RejectedExecutionException e) {
+                log.info("Too many OCSP requests are waiting to be processed, answering request from " + transaction.remoteAddress + " with tryLater.");
+                respond(buildErrorResponse(transaction, OCSPRespBuilder.TRY_LATER));
+            }
+        }
 
-                // RFC 2560: responseBytes are not set on error.
-                ocspResponseInformation = new OcspResponseInformation(
-                    responseGenerator.build(OCSPRespBuilder.MALFORMED_REQUEST, null),
-                    OcspConfiguration.getMaxAge(CertificateProfileConstants.CERTPROFILE_NO_PROFILE),
-                    null
-                );
-                if (transactionLogger.isEnabled()) {
-                    transactionLogger.paramPut(TransactionLogger.STATUS, OCSPRespBuilder.MALFORMED_REQUEST);
-                    transactionLogger.writeln();
-                }
-                if (auditLogger.isEnabled()) {
-                    auditLogger.paramPut(AuditLogger.STATUS, OCSPRespBuilder.MALFORMED_REQUEST);
-                }
-            } catch (Throwable e) { // NOPMD, we really want to catch everything here to return internal error on unexpected errors
-                if (transactionLogger.isEnabled()) {
-                    transactionLogger.paramPut(IPatternLogger.PROCESS_TIME, IPatternLogger.PROCESS_TIME);
-                }
-                if (auditLogger.isEnabled()) {
-                    auditLogger.paramPut(IPatternLogger.PROCESS_TIME, IPatternLogger.PROCESS_TIME);
-                }
-                final String errMsg = intres.getLocalizedMessage("ocsp.errorprocessreq", e.getMessage());
-                log.info(errMsg);
-                if (log.isDebugEnabled()) {
-                    log.debug(errMsg, e);
-                }
+        /** @return a reader returning the request bytes, or throwing the exception that reading them failed with */
+        private RequestBytesReader readRequestBytes(final HttpServletRequest request, final byte[] postBody) {
+            try {
+                final byte[] requestBytes = checkAndGetRequestBytes(request, httpMethod, postBody);
+                return () -> requestBytes;
+            } catch (IOException | MalformedRequestException | RuntimeException e) {
+                return () -> {
+                    throw e;
+                };
+            }
+        }
 
-                // RFC 2560: responseBytes are not set on error.
-                ocspResponseInformation = new OcspResponseInformation(
-                    responseGenerator.build(OCSPRespBuilder.INTERNAL_ERROR, null),
-                    OcspConfiguration.getMaxAge(CertificateProfileConstants.CERTPROFILE_NO_PROFILE),
-                    null
-                );
-                if (transactionLogger.isEnabled()) {
-                    transactionLogger.paramPut(TransactionLogger.STATUS, OCSPRespBuilder.INTERNAL_ERROR);
-                    transactionLogger.writeln();
-                }
-                if (auditLogger.isEnabled()) {
-                    auditLogger.paramPut(AuditLogger.STATUS, OCSPRespBuilder.INTERNAL_ERROR);
-                }
+        private void respond(final OcspResponseInformation ocspResponseInformation) {
+            if (!responded.compareAndSet(false, true)) {
+                // The request timed out and has already been answered
+                return;
             }
+            transaction.responded(httpMethod, ocspResponseInformation.getStatus());
+            try {
+                addResponseHeaders((HttpServletResponse) asyncContext.getResponse(), httpMethod, ocspResponseInformation);
+                final byte[] ocspResponseBytes = ocspResponseInformation.getOcspResponse();
+                final ServletOutputStream out = asyncContext.getResponse().getOutputStream();
+                out.setWriteListener(new WriteListener() {
+                    private boolean written = false;
 
-            byte[] ocspResponseBytes = ocspResponseInformation.getOcspResponse();
-            response.setContentType("application/ocsp-response");
-            response.setContentLength(ocspResponseBytes.length);
+                    @Override
+                    public void onWritePossible() throws IOException {
+                        if (!written) {
+                            written = true;
+                            out.write(ocspResponseBytes);
+                            if (!out.isReady()) {
+                                // Called again when the container has sent the buffered bytes
+                                return;
+                            }
+                        }
+                        asyncContext.complete();
+                    }
 
-            GlobalOcspConfiguration ocspConfig = (GlobalOcspConfiguration) globalConfigurationSession
-                .getCachedConfiguration(GlobalOcspConfiguration.OCSP_CONFIGURATION_ID);
-            if (ocspResponseInformation.getStatus() == OCSPResp.UNAUTHORIZED && ocspConfig.getExplicitNoCacheUnauthorizedResponsesEnabled()) {
-                addHeaderNoCache(response);
+                    @Override
+                    public void onError(final Throwable t) {
+                        log.info("Failed to write OCSP response to " + transaction.remoteAddress + ": " + t.getMessage());
+                        asyncContext.complete();
+                    }
+                });
+            } catch (Exception e) {
+                log.error("", e);
+                transaction.transactionLogger.flush();
+                transaction.auditLogger.flush();
+                asyncContext.complete();
             }
-            addRfc5019CacheHeaders(request, response, ocspResponseInformation);
-      
-            
-            if (HttpMethod.POST.equals(httpMethod)) {
-                addOcspPostHeaders(response, ocspResponseInformation);
+        }
+
+        private void abort() {
+            if (responded.compareAndSet(false, true)) {
+                asyncContext.complete();
+            }
+        }
+
+        @Override
+        public void onTimeout(final AsyncEvent event) throws IOException {
+            if (!responded.compareAndSet(false, true)) {
+                return;
+            }
+            log.info("OCSP request from " + transaction.remoteAddress + " was not answered within " + ASYNC_TIMEOUT_MILLIS + " ms, answering with tryLater.");
+            final OcspResponseInformation ocspResponseInformation = buildErrorResponse(transaction, OCSPRespBuilder.TRY_LATER);
+            transaction.responded(httpMethod, OCSPRespBuilder.TRY_LATER);
+            try {
+                addResponseHeaders((HttpServletResponse) asyncContext.getResponse(), httpMethod, ocspResponseInformation);
+                asyncContext.getResponse().getOutputStream().write(ocspResponseInformation.getOcspResponse());
+            } catch (OCSPException | IllegalStateException e) {
+                log.info("Failed to answer OCSP request that timed out: " + e.getMessage());
+            } finally {
+                asyncContext.complete();
             }
-            
-            response.getOutputStream().write(ocspResponseBytes);
-            response.getOutputStream().flush();
-        } catch (Exception e) {
-            log.error("", e);
-            transactionLogger.flush();
-            auditLogger.flush();
+        }
+
+        @Override
+        public void onError(final AsyncEvent event) {
+            if (log.isDebugEnabled()) {
+                log.debug("Asynchronous OCSP request from " + transaction.remoteAddress + " failed.", event.getThrowable());
+            }
+            abort();
+        }
+
+        @Override
+        public void onComplete(final AsyncEvent event) {
+            // Nothing to clean up
+        }
+
+        @Override
+        public void onStartAsync(final AsyncEvent event) {
+            // Not restarted
         }
     }
-    
+
     private void addOcspPostHeaders(HttpServletResponse response, OcspResponseInformation ocspResponseInformation) {
         
         if (!ocspResponseInformation.shouldAddCacheHeaders()) {
@@ -361,12 +624,11 @@ public class OCSPServlet extends HttpServlet {
      * RFC 2560 does not specify how cache headers should be used, but RFC 5019 does. Therefore we will only
      * add the headers if the requirements of RFC 5019 is fulfilled: A GET-request, a single embedded response,
      * the response contains a nextUpdate and no nonce is present.
-     * @param request is the incoming HttpServletRequest
      * @param response is the outgoing HttpServletResponse
      * @param ocspResponseInformation is the previously parsed data carrier that wraps the contents of an OCSPResp
      * @throws IOException, org.bouncycastle.cert.ocsp.OCSPException 
      */
-    private void addRfc5019CacheHeaders(HttpServletRequest request, HttpServletResponse response, OcspResponseInformation ocspResponseInformation) 
+    private void addRfc5019CacheHeaders(HttpServletResponse response, OcspResponseInformation ocspResponseInformation) 
                 throws IOException, org.bouncycastle.cert.ocsp.OCSPException {
         if (!ocspResponseInformation.shouldAddCacheHeaders()) {
             return;
@@ -433,11 +695,12 @@ public class OCSPServlet extends HttpServlet {
      * 
      * @param request
      * @param httpMethod
+     * @param postBody the already read body of a POST request, or null to read it from the request
      * @return the request bytes or null if an error occured.
      * @throws IOException In case there is no stream to read
      * @throws MalformedRequestException 
      */
-    private byte[] checkAndGetRequestBytes(HttpServletRequest request, HttpMethod httpMethod) throws IOException, MalformedRequestException {
+    private byte[] checkAndGetRequestBytes(HttpServletRequest request, HttpMethod httpMethod, byte[] postBody) throws IOException, MalformedRequestException {
         final byte[] ret;
         // Get the request data
         final int n = request.getContentLength();
@@ -453,7 +716,8 @@ public class OCSPServlet extends HttpServlet {
         // So we passed basic tests, now we can read the bytes, but still keep an eye on the size
         // we can not fully trust the sent content length.
         if (HttpMethod.POST.equals(httpMethod)) {
-            final ServletInputStream in = request.getInputStream(); // ServletInputStream does not have to be closed, container handles this
+            // ServletInputStream does not have to be closed, container handles this
+            final InputStream in = postBody != null ? new ByteArrayInputStream(postBody) : request.getInputStream();
             LimitLengthASN1Reader limitLengthASN1Reader = new LimitLengthASN1Reader(in, n);
             try {
                 ret = limitLengthASN1Reader.readFirstASN1Object();